@@ -0,0 +1,301 @@
+import { css, html, LitElement } from 'lit';
+import { customElement, state } from 'lit/decorators.js';
+
+/**
+ * Monitor dei parametri vitali in tempo reale.
+ *
+ * Riceve dal server (LiveMonitor.java) un frame JSON per intervallo con i soli cambiamenti:
+ * - "c": elenco dei parametri [etichetta, unità, colore], solo quando cambia;
+ * - "v": valori mostrati cambiati, per indice del parametro;
+ * - "a": livelli di allarme cambiati (0 normale, 1 attenzione, 2 critico);
+ * - "w": campioni delle forme d'onda, Int16 little endian in base64, uno per canale;
+ * - "g": presente se le forme d'onda del frame sono state scartate per il limite di banda.
+ *
+ * Le forme d'onda vengono disegnate a scorrimento su canvas a ogni animation frame, con un ritardo
+ * di riproduzione pari a un frame del server per assorbire la consegna a blocchi.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+
+interface Channel {
+  label: string;
+  unit: string;
+  color: string;
+  value: string;
+  alarm: number;
+}
+
+interface Wave {
+  name: string;
+  rate: number;
+  scale: number;
+  unit: string;
+  buffer: Float32Array;
+  written: number;
+  min: number;
+  max: number;
+  stroke: string;
+}
+
+/** Secondi di traccia visibili. */
+const VISIBLE_SECONDS = 6;
+
+/** Proprietà CSS del colore delle tracce, per canale. */
+const WAVE_COLORS: Record<string, string> = {
+  ECG: '--lumo-success-color',
+  PLETH: '--lumo-primary-color',
+  CAPNO: '--lumo-warning-color',
+};
+
+@customElement('sim-live-monitor')
+export class SimLiveMonitor extends LitElement {
+  static styles = css`
+    :host {
+      display: block;
+      background-color: var(--lumo-shade-5pct);
+      border-radius: var(--lumo-border-radius-l);
+      border: 2px solid var(--lumo-contrast-10pct);
+      box-shadow: 0 4px 8px rgba(0, 0, 0, 0.1);
+      padding: var(--lumo-space-m);
+      box-sizing: border-box;
+    }
+    header {
+      display: flex;
+      justify-content: space-between;
+      align-items: center;
+    }
+    h3 {
+      margin: 0;
+      color: var(--lumo-primary-color);
+      font-weight: 600;
+    }
+    .led {
+      width: 12px;
+      height: 12px;
+      border-radius: 50%;
+      background-color: var(--lumo-success-color);
+      box-shadow: 0 0 5px var(--lumo-success-color);
+    }
+    .led.gap {
+      background-color: var(--lumo-warning-color);
+      box-shadow: 0 0 5px var(--lumo-warning-color);
+    }
+    .wave {
+      position: relative;
+      margin-top: var(--lumo-space-s);
+    }
+    .wave span {
+      position: absolute;
+      left: var(--lumo-space-xs);
+      top: 0;
+      font-size: var(--lumo-font-size-xs);
+      color: var(--lumo-secondary-text-color);
+    }
+    canvas {
+      width: 100%;
+      height: 64px;
+      display: block;
+      background-color: var(--lumo-base-color);
+      border-radius: var(--lumo-border-radius-m);
+    }
+    .boxes {
+      display: flex;
+      flex-wrap: wrap;
+      justify-content: center;
+      margin-top: var(--lumo-space-s);
+    }
+    .box {
+      min-width: 90px;
+      margin: var(--lumo-space-xs);
+      padding: var(--lumo-space-s);
+      border-radius: var(--lumo-border-radius-m);
+      border: 1px solid var(--lumo-contrast-10pct);
+      background-color: var(--lumo-base-color);
+      text-align: center;
+    }
+    .box.warning {
+      border-color: var(--lumo-warning-color);
+    }
+    .box.critical {
+      border-color: var(--lumo-error-color);
+      animation: flash 1.2s infinite;
+    }
+    .label {
+      font-size: var(--lumo-font-size-s);
+      color: var(--lumo-secondary-text-color);
+    }
+    .value {
+      font-size: var(--lumo-font-size-xl);
+      font-weight: 600;
+    }
+    .unit {
+      font-size: var(--lumo-font-size-xs);
+      color: var(--lumo-tertiary-text-color);
+    }
+    @keyframes flash {
+      50% {
+        outline: 3px solid var(--lumo-error-color);
+        outline-offset: 2px;
+      }
+    }
+  `;
+
+  @state() private channels: Channel[] = [];
+  @state() private gap = false;
+
+  private waves: Wave[] = [];
+  private animation = 0;
+  private lastFrameAt = 0;
+  private frameInterval = 100;
+
+  /** Chiamato dal server all'apertura con i canali delle forme d'onda: [nome, Hz, scala, unità]. */
+  setWaveforms(json: string) {
+    const layout = JSON.parse(json) as [string, number, number, string][];
+    this.waves = layout.map(([name, rate, scale, unit]) => ({
+      name,
+      rate,
+      scale,
+      unit,
+      buffer: new Float32Array(rate * VISIBLE_SECONDS),
+      written: 0,
+      min: 0,
+      max: 0,
+      stroke: '',
+    }));
+    this.requestUpdate();
+  }
+
+  /** Chiamato dal server a ogni frame. */
+  applyFrame(json: string) {
+    const frame = JSON.parse(json);
+    const now = performance.now();
+    if (this.lastFrameAt > 0) {
+      this.frameInterval = 0.8 * this.frameInterval + 0.2 * (now - this.lastFrameAt);
+    }
+    this.lastFrameAt = now;
+
+    let channels = this.channels;
+    if (frame.c) {
+      channels = (frame.c as [string, string, string][]).map(([label, unit, color]) => ({
+        label,
+        unit,
+        color,
+        value: '-',
+        alarm: 0,
+      }));
+    }
+    if (frame.v || frame.a || frame.c) {
+      channels = channels.map((channel, i) => ({
+        ...channel,
+        value: frame.v?.[i] ?? channel.value,
+        alarm: frame.a?.[i] ?? channel.alarm,
+      }));
+      this.channels = channels;
+    }
+    if (frame.w) {
+      (frame.w as string[]).forEach((chunk, i) => this.appendSamples(this.waves[i], chunk));
+    }
+    this.gap = frame.g === 1;
+  }
+
+  connectedCallback() {
+    super.connectedCallback();
+    const draw = () => {
+      this.drawWaves();
+      this.animation = requestAnimationFrame(draw);
+    };
+    this.animation = requestAnimationFrame(draw);
+  }
+
+  disconnectedCallback() {
+    cancelAnimationFrame(this.animation);
+    super.disconnectedCallback();
+  }
+
+  render() {
+    return html`
+      <header>
+        <h3>Parametri Vitali</h3>
+        <div class="led ${this.gap ? 'gap' : ''}" title=${this.gap ? 'Forme d\'onda ridotte per banda limitata' : 'In linea'}></div>
+      </header>
+      ${this.waves.map(
+        (wave) => html`<div class="wave"><span>${wave.name} ${wave.unit}</span><canvas data-wave=${wave.name}></canvas></div>`
+      )}
+      <div class="boxes">
+        ${this.channels.map(
+          (channel) => html`
+            <div class="box ${channel.alarm === 2 ? 'critical' : channel.alarm === 1 ? 'warning' : ''}">
+              <div class="label">${channel.label}</div>
+              <div class="value" style="color: ${channel.value === '-' ? 'var(--lumo-secondary-text-color)' : channel.color}">
+                ${channel.value}
+              </div>
+              <div class="unit">${channel.unit}</div>
+            </div>
+          `
+        )}
+      </div>
+    `;
+  }
+
+  /** Decodifica un blocco di campioni e lo accoda al buffer circolare della traccia. */
+  private appendSamples(wave: Wave | undefined, chunk: string) {
+    if (!wave || !chunk) {
+      return;
+    }
+    const bytes = Uint8Array.from(atob(chunk), (c) => c.charCodeAt(0));
+    const samples = new Int16Array(bytes.buffer, 0, bytes.length >> 1);
+    for (let i = 0; i < samples.length; i++) {
+      const value = samples[i] / wave.scale;
+      wave.buffer[wave.written % wave.buffer.length] = value;
+      wave.written++;
+      wave.min = Math.min(wave.min * 0.9999, value);
+      wave.max = Math.max(wave.max * 0.9999, value);
+    }
+  }
+
+  /** Disegna le tracce, riproducendo i campioni con un frame di ritardo per uno scorrimento continuo. */
+  private drawWaves() {
+    const sinceFrame = Math.min(performance.now() - this.lastFrameAt, this.frameInterval);
+    for (const wave of this.waves) {
+      const canvas = this.renderRoot.querySelector<HTMLCanvasElement>(`canvas[data-wave="${wave.name}"]`);
+      const context = canvas?.getContext('2d');
+      if (!canvas || !context || wave.written === 0) {
+        continue;
+      }
+      if (canvas.width !== canvas.clientWidth || canvas.height !== canvas.clientHeight) {
+        canvas.width = canvas.clientWidth;
+        canvas.height = canvas.clientHeight;
+      }
+      const lag = Math.round(((this.frameInterval - sinceFrame) / 1000) * wave.rate);
+      const end = Math.max(0, wave.written - lag);
+      const count = Math.min(wave.buffer.length, end);
+      const range = wave.max - wave.min || 1;
+      context.clearRect(0, 0, canvas.width, canvas.height);
+      if (!wave.stroke) {
+        const property = WAVE_COLORS[wave.name] ?? '--lumo-body-text-color';
+        wave.stroke = getComputedStyle(this).getPropertyValue(property).trim() || '#2e7d32';
+      }
+      context.strokeStyle = wave.stroke;
+      context.lineWidth = 1.5;
+      context.beginPath();
+      for (let i = 0; i < count; i++) {
+        const value = wave.buffer[(end - count + i) % wave.buffer.length];
+        const x = ((i + wave.buffer.length - count) / wave.buffer.length) * canvas.width;
+        const y = canvas.height - 4 - ((value - wave.min) / range) * (canvas.height - 8);
+        if (i === 0) {
+          context.moveTo(x, y);
+        } else {
+          context.lineTo(x, y);
+        }
+      }
+      context.stroke();
+    }
+  }
+}
+
+declare global {
+  interface HTMLElementTagNameMap {
+    'sim-live-monitor': SimLiveMonitor;
+  }
+}
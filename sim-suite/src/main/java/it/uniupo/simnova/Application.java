@@ -1,10 +1,14 @@
 package it.uniupo.simnova;
 
 import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.server.AppShellSettings;
 import com.vaadin.flow.server.PWA;
 import com.vaadin.flow.theme.Theme;
+import it.uniupo.simnova.service.scenario.search.ScenarioFullTextIndex;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.views.common.components.LiveMonitor;
+import jakarta.annotation.PreDestroy;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -19,12 +23,14 @@ import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
  * Classe principale dell'applicazione Spring Boot per SIM Suite.
  * Questa classe avvia l'applicazione, inizializza la connessione al database SQLite
  * e configura le impostazioni principali della pagina web, come titolo, favicon e PWA.
+ * Abilita il push dal server, usato dal monitor in tempo reale delle simulazioni in esecuzione.
  *
  * @author Alessandro Zappatore
- * @version 1.1
+ * @version 1.3
  */
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class})
 @Theme(value = "sim.suite") // Specifica il tema Vaadin utilizzato dall'applicazione
+@Push // Consente di inviare al browser gli aggiornamenti generati fuori dalle richieste
 @PWA(
         name = "Sim Suite", // Nome completo dell'applicazione per la PWA
         shortName = "SimSuite", // Nome breve per la PWA (es. icona nella schermata home)
@@ -55,14 +61,30 @@ public class Application implements AppShellConfigurator {
         SpringApplication.run(Application.class, args); // Avvia l'applicazione Spring Boot
     }
 
+    /**
+     * Arresta il thread dei frame dei monitor in tempo reale alla chiusura del contesto Spring.
+     */
+    @PreDestroy
+    public void stopLiveMonitors() {
+        LiveMonitor.shutdown();
+    }
+
     /**
      * Inizializza il database SQLite verificando la connessione.
-     * Registra nel logger il successo o il fallimento della connessione.
+     * Applica le migrazioni dello schema non ancora eseguite e allinea l'indice full-text degli scenari,
+     * registra nel logger il successo o il fallimento della connessione e registra un hook di spegnimento che chiude il pool di connessioni.
      */
     private static void initializeDatabase() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> DBConnect.getInstance().shutdown(), "db-shutdown"));
+        try {
+            DBConnect.getInstance().migrateSchema();
+        } catch (SQLException e) {
+            logger.error("❌ Errore durante la migrazione dello schema del database: {}", e.getMessage(), e);
+        }
+        ScenarioFullTextIndex.syncPending(); // Indicizza gli scenari aggiunti o modificati prima dell'avvio.
         try (Connection connection = DBConnect.getInstance().getConnection()) {
             if (connection != null) {
-                logger.info("✅ Connessione a SQLite avviata con successo!");
+                logger.info("✅ Connessione a SQLite avviata con successo! {}", DBConnect.getInstance().getPoolStats());
             } else {
                 logger.error("⚠️ Errore: impossibile connettersi al database SQLite.");
             }
@@ -5,7 +5,7 @@ package it.uniupo.simnova.domain.common;
  * Definisce le proprietà chiave di un accesso, come tipologia, posizione, lato e misura.
  *
  * @author Alessandro Zappatore
- * @version 2.0
+ * @version 2.1
  */
 public class Accesso {
     /**
@@ -47,6 +47,15 @@ public class Accesso {
         this.misura = misura;
     }
 
+    /**
+     * Costruttore di copia: crea un accesso indipendente con gli stessi valori di <code>other</code>.
+     *
+     * @param other L'accesso da copiare.
+     */
+    public Accesso(Accesso other) {
+        this(other.idAccesso, other.tipologia, other.posizione, other.lato, other.misura);
+    }
+
     /**
      * Restituisce l'<strong>identificativo univoco</strong> di questo accesso.
      *
@@ -6,7 +6,7 @@ package it.uniupo.simnova.domain.common;
  * tempi di uno scenario per arricchire la simulazione con dati extra (es. parametri vitali personalizzati, valori di laboratorio).
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 public class ParametroAggiuntivo {
     /**
@@ -68,6 +68,15 @@ public class ParametroAggiuntivo {
         this.unitaMisura = unita;
     }
 
+    /**
+     * Costruttore di copia: crea un parametro indipendente con gli stessi valori di <code>other</code>.
+     *
+     * @param other Il parametro da copiare.
+     */
+    public ParametroAggiuntivo(ParametroAggiuntivo other) {
+        this(other.id, other.tempoId, other.scenarioId, other.nome, other.valore, other.unitaMisura);
+    }
+
     /**
      * Restituisce l'<strong>identificativo univoco</strong> del parametro.
      *
@@ -1,6 +1,8 @@
 package it.uniupo.simnova.domain.common;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 
 /**
@@ -9,9 +11,14 @@ import java.util.List;
  * della simulazione in quel preciso istante o fase.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.2
  */
 public class Tempo {
+    /**
+     * Formato della pressione arteriosa "sistolica/diastolica", compilato una sola volta per tutte le istanze.
+     */
+    private static final Pattern PA_PATTERN = Pattern.compile("^\\s*\\d+\\s*/\\s*\\d+\\s*$");
+
     /**
      * Identificativo univoco del tempo, assegnato dal database.
      */
@@ -114,7 +121,7 @@ public class Tempo {
         // Validazione e impostazione PA
         if (PA != null) {
             String trimmedPA = PA.trim();
-            if (!trimmedPA.matches("^\\s*\\d+\\s*/\\s*\\d+\\s*$")) {
+            if (!PA_PATTERN.matcher(trimmedPA).matches()) {
                 throw new IllegalArgumentException("Formato PA non valido, atteso 'sistolica/diastolica' (es. '120/80')");
             }
             this.PA = trimmedPA;
@@ -180,6 +187,37 @@ public class Tempo {
         this.ruoloGenitore = ruoloGenitore;
     }
 
+    /**
+     * Costruttore di copia: crea un tempo indipendente con gli stessi valori di <code>other</code>,
+     * copiando anche i singoli parametri aggiuntivi. I valori sono già stati validati alla creazione dell'originale.
+     *
+     * @param other Il tempo da copiare.
+     */
+    public Tempo(Tempo other) {
+        this.idTempo = other.idTempo;
+        this.advancedScenario = other.advancedScenario;
+        this.PA = other.PA;
+        this.FC = other.FC;
+        this.RR = other.RR;
+        this.T = other.T;
+        this.SpO2 = other.SpO2;
+        this.FiO2 = other.FiO2;
+        this.LitriO2 = other.LitriO2;
+        this.EtCO2 = other.EtCO2;
+        this.Azione = other.Azione;
+        this.TSi = other.TSi;
+        this.TNo = other.TNo;
+        this.altriDettagli = other.altriDettagli;
+        this.timerTempo = other.timerTempo;
+        this.ruoloGenitore = other.ruoloGenitore;
+        if (other.parametriAggiuntivi != null) {
+            this.parametriAggiuntivi = new ArrayList<>(other.parametriAggiuntivi.size());
+            for (ParametroAggiuntivo parametro : other.parametriAggiuntivi) {
+                this.parametriAggiuntivi.add(new ParametroAggiuntivo(parametro));
+            }
+        }
+    }
+
     /**
      * Restituisce l'<strong>identificativo univoco</strong> del tempo.
      *
@@ -207,7 +245,7 @@ public class Tempo {
     public void setPA(String PA) {
         if (PA != null) {
             String trimmedPA = PA.trim();
-            if (!trimmedPA.matches("^\\s*\\d+\\s*/\\s*\\d+\\s*$")) {
+            if (!PA_PATTERN.matcher(trimmedPA).matches()) {
                 throw new IllegalArgumentException("Formato PA non valido, atteso 'sistolica/diastolica' (es. '120/80').");
             }
             this.PA = trimmedPA;
@@ -9,7 +9,7 @@ import java.util.Map;
  * con ogni sezione che può avere una descrizione testuale dei risultati.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @SuppressWarnings("NonAsciiCharacters") // Sopprime l'avviso per caratteri non-ASCII
 public class EsameFisico {
@@ -59,6 +59,16 @@ public class EsameFisico {
         sections.put("FAST", fast);
     }
 
+    /**
+     * Costruttore di copia: crea un esame fisico indipendente con le stesse sezioni di <code>other</code>.
+     *
+     * @param other L'esame fisico da copiare.
+     */
+    public EsameFisico(EsameFisico other) {
+        this.idEsameFisico = other.idEsameFisico;
+        this.sections = new HashMap<>(other.sections);
+    }
+
     /**
      * Recupera la <strong>mappa completa</strong> di tutte le sezioni dell'esame fisico
      * con i rispettivi risultati testuali.
@@ -2,6 +2,7 @@ package it.uniupo.simnova.domain.paziente;
 
 import it.uniupo.simnova.domain.common.Accesso;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -9,7 +10,7 @@ import java.util.List;
  * Contiene i parametri vitali principali e le liste degli accessi venosi e arteriosi.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 public class PazienteT0 {
     /**
@@ -143,6 +144,44 @@ public class PazienteT0 {
         this.accessiArteriosi = accessiArteriosi;
     }
 
+    /**
+     * Costruttore di copia: crea un paziente indipendente con gli stessi valori di <code>other</code>,
+     * copiando anche i singoli accessi. I valori sono già stati validati alla creazione dell'originale.
+     *
+     * @param other Il paziente da copiare.
+     */
+    public PazienteT0(PazienteT0 other) {
+        this.idPaziente = other.idPaziente;
+        this.PA = other.PA;
+        this.FC = other.FC;
+        this.RR = other.RR;
+        this.T = other.T;
+        this.SpO2 = other.SpO2;
+        this.FiO2 = other.FiO2;
+        this.LitriO2 = other.LitriO2;
+        this.EtCO2 = other.EtCO2;
+        this.Monitor = other.Monitor;
+        this.accessiVenosi = copyAccessi(other.accessiVenosi);
+        this.accessiArteriosi = copyAccessi(other.accessiArteriosi);
+    }
+
+    /**
+     * Copia una lista di accessi elemento per elemento.
+     *
+     * @param accessi La lista da copiare; può essere <code>null</code>.
+     * @return Una nuova lista con copie degli accessi; <code>null</code> se <code>accessi</code> è <code>null</code>.
+     */
+    private static List<Accesso> copyAccessi(List<Accesso> accessi) {
+        if (accessi == null) {
+            return null;
+        }
+        List<Accesso> copy = new ArrayList<>(accessi.size());
+        for (Accesso accesso : accessi) {
+            copy.add(new Accesso(accesso));
+        }
+        return copy;
+    }
+
     /**
      * Restituisce la <strong>pressione arteriosa</strong> del paziente.
      *
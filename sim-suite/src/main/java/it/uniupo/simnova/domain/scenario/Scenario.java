@@ -7,7 +7,7 @@ package it.uniupo.simnova.domain.scenario;
  * timer generale, autori, tipologia, informazioni per i genitori e target.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.2
  */
 public class Scenario {
     /**
@@ -70,6 +70,11 @@ public class Scenario {
      * <strong>Target</strong> di riferimento dello scenario (es. "Medici Specialisti").
      */
     private String target;
+    /**
+     * <strong>Tipo</strong> dello scenario ("Quick Scenario", "Advanced Scenario", "Patient Simulated Scenario"),
+     * valorizzato solo dalle query che lo calcolano.
+     */
+    private String scenarioType;
 
     /**
      * Costruttore completo per creare un nuovo oggetto <strong><code>Scenario</code></strong> con tutti i campi.
@@ -150,6 +155,31 @@ public class Scenario {
         this.target = null;
     }
 
+    /**
+     * Costruttore di copia: crea uno scenario indipendente con gli stessi campi di <code>other</code>.
+     * Copia solo i campi di {@link Scenario}, non quelli delle eventuali sottoclassi.
+     *
+     * @param other Lo scenario da copiare.
+     */
+    public Scenario(Scenario other) {
+        this.id = other.id;
+        this.titolo = other.titolo;
+        this.nome_paziente = other.nome_paziente;
+        this.patologia = other.patologia;
+        this.descrizione = other.descrizione;
+        this.briefing = other.briefing;
+        this.patto_aula = other.patto_aula;
+        this.obiettivo = other.obiettivo;
+        this.moulage = other.moulage;
+        this.liquidi = other.liquidi;
+        this.timer_generale = other.timer_generale;
+        this.autori = other.autori;
+        this.tipologia = other.tipologia;
+        this.infoGenitore = other.infoGenitore;
+        this.target = other.target;
+        this.scenarioType = other.scenarioType;
+    }
+
     /**
      * Restituisce l'<strong>identificativo univoco</strong> dello scenario.
      *
@@ -376,13 +406,31 @@ public class Scenario {
         this.target = target;
     }
 
+    /**
+     * Restituisce il <strong>tipo</strong> dello scenario.
+     *
+     * @return Il tipo dello scenario (es. "Quick Scenario"); <code>null</code> se non è stato caricato.
+     */
+    public String getScenarioType() {
+        return scenarioType;
+    }
+
+    /**
+     * Imposta il <strong>tipo</strong> dello scenario.
+     *
+     * @param scenarioType Il tipo dello scenario.
+     */
+    public void setScenarioType(String scenarioType) {
+        this.scenarioType = scenarioType;
+    }
+
     /**
      * Fornisce una rappresentazione in formato stringa dell'oggetto <strong><code>Scenario</code></strong>,
      * utile per il debugging e la registrazione.
      *
      * @return Una stringa che descrive l'ID, il titolo, il nome del paziente, la patologia,
      * la descrizione, il briefing, il patto d'aula, l'obiettivo, il moulage, i liquidi,
-     * il timer generale, gli autori, la tipologia, le info genitore e il target.
+     * il timer generale, gli autori, la tipologia, le info genitore, il target e il tipo.
      */
     @Override
     public String toString() {
@@ -402,6 +450,7 @@ public class Scenario {
                 ", tipologia='" + tipologia + '\'' +
                 ", infoGenitore='" + infoGenitore + '\'' +
                 ", target='" + target + '\'' +
+                ", scenarioType='" + scenarioType + '\'' +
                 '}';
     }
 }
\ No newline at end of file
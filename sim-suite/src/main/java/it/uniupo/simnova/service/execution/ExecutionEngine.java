@@ -0,0 +1,787 @@
+package it.uniupo.simnova.service.execution;
+
+import it.uniupo.simnova.domain.paziente.PazienteT0;
+import it.uniupo.simnova.domain.scenario.Scenario;
+import it.uniupo.simnova.service.execution.alarm.AlarmEvaluator;
+import it.uniupo.simnova.service.execution.alarm.AlarmThresholdService;
+import it.uniupo.simnova.service.execution.clock.SessionClock;
+import it.uniupo.simnova.service.execution.clock.VirtualClock;
+import it.uniupo.simnova.service.execution.clock.WallClock;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief;
+import it.uniupo.simnova.service.execution.journal.JournalEvent;
+import it.uniupo.simnova.service.execution.journal.JournalReader;
+import it.uniupo.simnova.service.execution.journal.JournalStore;
+import it.uniupo.simnova.service.execution.journal.SessionJournal;
+import it.uniupo.simnova.service.execution.trend.TrendEngine;
+import it.uniupo.simnova.service.execution.trend.VitalTrend;
+import it.uniupo.simnova.service.execution.waveform.WaveformEngine;
+import it.uniupo.simnova.service.execution.waveform.WaveformGenerator;
+import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.components.PazienteT0Service;
+import it.uniupo.simnova.service.scenario.timeline.CompiledTimeline;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
+import it.uniupo.simnova.utils.timer.TimingWheel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Motore di esecuzione delle simulazioni: avvia e ospita le {@link ExecutionSession}, una per sala.
+ * <p>
+ * Tutte le sessioni condividono un'unica {@link TimingWheel}, che si limita a segnalare le scadenze dei timer,
+ * e un esecutore a thread virtuali che svuota le code dei comandi: il numero di sessioni contemporanee
+ * non è legato al numero di thread della piattaforma. Allo stesso modo un solo thread di sintesi genera
+ * le forme d'onda di tutte le sessioni, e un piccolo pool condiviso fa avanzare l'andamento dei loro parametri vitali.
+ * Le soglie di allarme di ogni sessione sono quelle predefinite con le personalizzazioni dello scenario.
+ * </p>
+ * <p>
+ * Ogni sessione riceve un budget di memoria ({@code simsuite.execution.session.max-bytes}) che comprende
+ * il grafo dei tempi, i buffer delle forme d'onda, la coda dei comandi e lo storico dei tempi visitati:
+ * lo storico viene dimensionato con la memoria residua, e gli scenari troppo grandi per il budget non vengono avviati.
+ * </p>
+ * <p>
+ * Gli eventi di ogni sessione vengono registrati nel suo diario ({@code simsuite.execution.journal.dir}), da cui
+ * la sessione può essere riletta per il debriefing o riprodotta nel motore con {@link #replay(Path, boolean)}.
+ * Il riepilogo per il debriefing delle sessioni attive e delle ultime terminate è sempre disponibile
+ * con {@link #getDebrief(long)}.
+ * </p>
+ * <p>
+ * Con {@link #dryRun(int, double)} uno scenario viene provato in tempo virtuale, più velocemente del tempo reale
+ * o alla velocità massima: gli autori verificano i timer dei tempi e il timer generale senza attenderli.
+ * Le prove non vengono registrate nei diari e hanno un limite proprio ({@code simsuite.execution.max-dry-runs}):
+ * non occupano i posti delle sessioni in tempo reale ({@code simsuite.execution.max-sessions}).
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.9
+ */
+@Service
+public class ExecutionEngine {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare avvii, rifiuti e arresti delle sessioni.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionEngine.class);
+
+    /**
+     * Numero massimo di sessioni contemporanee, configurabile con la proprietà di sistema <code>simsuite.execution.max-sessions</code>.
+     */
+    private static final int MAX_SESSIONS = Integer.getInteger("simsuite.execution.max-sessions", 64);
+
+    /**
+     * Numero massimo di prove in tempo virtuale contemporanee, configurabile con la proprietà di sistema
+     * <code>simsuite.execution.max-dry-runs</code>.
+     */
+    private static final int MAX_DRY_RUNS = Integer.getInteger("simsuite.execution.max-dry-runs", 8);
+
+    /**
+     * Budget di memoria di una sessione in byte, configurabile con la proprietà di sistema <code>simsuite.execution.session.max-bytes</code>.
+     */
+    private static final long SESSION_MAX_BYTES = Long.getLong("simsuite.execution.session.max-bytes", 2L * 1024 * 1024);
+
+    /**
+     * Capacità della coda dei comandi di una sessione, configurabile con la proprietà di sistema <code>simsuite.execution.mailbox.size</code>.
+     */
+    private static final int MAILBOX_SIZE = Integer.getInteger("simsuite.execution.mailbox.size", 256);
+
+    /**
+     * Numero massimo di voci dello storico di una sessione, configurabile con la proprietà di sistema <code>simsuite.execution.history.size</code>.
+     */
+    private static final int HISTORY_SIZE = Integer.getInteger("simsuite.execution.history.size", 4096);
+
+    /**
+     * Numero minimo di voci dello storico perché una sessione venga avviata.
+     */
+    private static final int MIN_HISTORY_SIZE = 16;
+
+    /**
+     * Numero di riepiloghi delle sessioni terminate conservati per il debriefing, configurabile con la proprietà
+     * di sistema <code>simsuite.execution.debrief.recent</code>.
+     */
+    private static final int RECENT_DEBRIEFS = Integer.getInteger("simsuite.execution.debrief.recent", 64);
+
+    /**
+     * Durata massima di una prova in tempo virtuale, in minuti, configurabile con la proprietà di sistema
+     * <code>simsuite.execution.dry-run.max-minutes</code>: ferma le prove di scenari con cicli senza timer generale.
+     */
+    private static final long DRY_RUN_MAX_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong("simsuite.execution.dry-run.max-minutes", 4 * 60L));
+
+    /**
+     * Intervallo massimo di attesa tra due controlli durante una riproduzione alla velocità originale.
+     */
+    private static final long PACING_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Cartella dei diari delle sessioni, configurabile con la proprietà di sistema <code>simsuite.execution.journal.dir</code>.
+     */
+    private static final String JOURNAL_DIR = System.getProperty("simsuite.execution.journal.dir", "journal");
+
+    /**
+     * Capacità di un segmento dei diari in byte, configurabile con la proprietà di sistema <code>simsuite.execution.journal.segment-bytes</code>.
+     */
+    private static final int JOURNAL_SEGMENT_BYTES = Integer.getInteger("simsuite.execution.journal.segment-bytes", 1024 * 1024);
+
+    /**
+     * Il servizio dei tempi, da cui si ottiene il grafo compilato.
+     */
+    private final AdvancedScenarioService advancedScenarioService;
+
+    /**
+     * Il servizio degli scenari, per il timer generale.
+     */
+    private final ScenarioService scenarioService;
+
+    /**
+     * Il servizio del paziente al tempo zero.
+     */
+    private final PazienteT0Service pazienteT0Service;
+
+    /**
+     * Il servizio delle soglie di allarme personalizzate degli scenari.
+     */
+    private final AlarmThresholdService alarmThresholdService;
+
+    /**
+     * La ruota dei timer condivisa che segnala le scadenze; ogni sessione vi ha un proprio gruppo.
+     */
+    private final TimingWheel timers = new TimingWheel("sim-execution-timer");
+
+    /**
+     * Il thread di sintesi condiviso che genera le forme d'onda delle sessioni attive.
+     */
+    private final WaveformEngine waveforms = new WaveformEngine("sim-waveform");
+
+    /**
+     * Il pool condiviso che fa avanzare i parametri vitali delle sessioni attive verso i valori del tempo corrente.
+     */
+    private final TrendEngine trends = new TrendEngine("sim-trend");
+
+    /**
+     * L'archivio dei diari delle sessioni.
+     */
+    private final JournalStore journals = new JournalStore(Path.of(JOURNAL_DIR), JOURNAL_SEGMENT_BYTES, "sim-journal");
+
+    /**
+     * L'esecutore a thread virtuali che applica i comandi delle sessioni.
+     */
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Le sessioni attive, per ID.
+     */
+    private final Map<Long, ExecutionSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * I riepiloghi delle sessioni terminate più recenti, per ID, dal meno recente. Protetto da sé stesso.
+     */
+    private final Map<Long, SessionDebrief> recentDebriefs = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SessionDebrief> eldest) {
+            return size() > RECENT_DEBRIEFS;
+        }
+    };
+
+    /**
+     * Generatore degli ID delle sessioni.
+     */
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+
+    /**
+     * Numero di sessioni avviate.
+     */
+    private final AtomicLong started = new AtomicLong();
+
+    /**
+     * Posti occupati dalle sessioni in tempo reale, registrate o riprodotte, comprese quelle in costruzione.
+     */
+    private final AtomicInteger liveSlots = new AtomicInteger();
+
+    /**
+     * Posti occupati dalle prove in tempo virtuale, comprese quelle in costruzione.
+     */
+    private final AtomicInteger dryRunSlots = new AtomicInteger();
+
+    /**
+     * Numero di avvii rifiutati.
+     */
+    private final AtomicLong rejectedSessions = new AtomicLong();
+
+    /**
+     * Numero di comandi scartati per coda piena.
+     */
+    private final AtomicLong rejectedCommands = new AtomicLong();
+
+    /**
+     * Memoria stimata riservata dalle sessioni attive.
+     */
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Latenza tra lo scadere di un timer o un comando e il cambio di stato applicato.
+     */
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    /**
+     * Costruisce il motore di esecuzione.
+     *
+     * @param advancedScenarioService Il servizio dei tempi degli scenari.
+     * @param scenarioService         Il servizio degli scenari.
+     * @param pazienteT0Service       Il servizio del paziente al tempo zero.
+     * @param alarmThresholdService   Il servizio delle soglie di allarme degli scenari.
+     */
+    public ExecutionEngine(AdvancedScenarioService advancedScenarioService, ScenarioService scenarioService,
+                           PazienteT0Service pazienteT0Service, AlarmThresholdService alarmThresholdService) {
+        this.advancedScenarioService = advancedScenarioService;
+        this.scenarioService = scenarioService;
+        this.pazienteT0Service = pazienteT0Service;
+        this.alarmThresholdService = alarmThresholdService;
+    }
+
+    /**
+     * Avvia una sessione di esecuzione di uno scenario, entrando nel tempo T0.
+     *
+     * @param scenarioId L'ID dello scenario da eseguire.
+     * @return La sessione avviata; <code>null</code> se lo scenario non ha tempi, se è stato raggiunto il numero
+     * massimo di sessioni o se lo scenario non rientra nel budget di memoria.
+     */
+    public ExecutionSession startSession(int scenarioId) {
+        long now = System.nanoTime();
+        WallClock clock = new WallClock(timers.newGroup(), workers);
+        return launch(scenarioId, now, clock, () -> createSession(scenarioId, false, now, clock));
+    }
+
+    /**
+     * Prova uno scenario in tempo virtuale: la sessione parte da T0 e segue le scadenze dei timer senza attenderle
+     * in tempo reale. Senza comandi dell'istruttore, ogni tempo scaduto segue la transizione "se NO".
+     * <p>
+     * La prova termina come una sessione normale, alla fine dei tempi o del timer generale. Termina inoltre quando,
+     * alla velocità massima, raggiunge un tempo senza timer (la sessione attenderebbe l'istruttore), oppure quando
+     * il tempo virtuale supera il limite della prova. Il riepilogo finale è disponibile con
+     * {@link ExecutionSession#whenEnded()}.
+     * </p>
+     *
+     * @param scenarioId L'ID dello scenario da provare.
+     * @param speed      Il rapporto tra tempo virtuale e reale, ad esempio da <code>10</code> a <code>1000</code>;
+     *                   {@link VirtualClock#MAX_SPEED} per eseguire la prova il più velocemente possibile.
+     * @return La sessione di prova; <code>null</code> se la velocità non è valida o la sessione non può essere avviata.
+     */
+    public ExecutionSession dryRun(int scenarioId, double speed) {
+        VirtualClock clock = new VirtualClock();
+        return startDryRun(scenarioId, speed, clock, () -> createSession(scenarioId, false, clock.nanoTime(), clock));
+    }
+
+    /**
+     * Prova in tempo virtuale un grafo dei tempi già compilato, senza leggere scenario e paziente dal database.
+     * Usato nei test; le soglie di allarme personalizzate vengono comunque richieste al servizio.
+     *
+     * @param timeline        Il grafo dei tempi.
+     * @param patient         Il paziente al tempo zero; <code>null</code> se lo scenario non lo definisce.
+     * @param generaleSeconds Il timer generale in secondi; <code>0</code> se non è impostato.
+     * @param speed           Il rapporto tra tempo virtuale e reale, o {@link VirtualClock#MAX_SPEED}.
+     * @return La sessione di prova; <code>null</code> se la velocità non è valida o la sessione non può essere avviata.
+     */
+    ExecutionSession dryRun(CompiledTimeline timeline, PazienteT0 patient, long generaleSeconds, double speed) {
+        int scenarioId = timeline.frame().scenarioId();
+        VirtualClock clock = new VirtualClock();
+        return startDryRun(scenarioId, speed, clock, () -> isRunnable(scenarioId, timeline)
+                ? newSession(timeline, patient, generaleSeconds, false, clock.nanoTime(), clock)
+                : null);
+    }
+
+    /**
+     * Avvia una prova in tempo virtuale e ne affida l'avanzamento a un worker.
+     *
+     * @param scenarioId L'ID dello scenario da provare.
+     * @param speed      Il rapporto tra tempo virtuale e reale.
+     * @param clock      L'orologio virtuale della prova, non ancora avanzato.
+     * @param factory    La costruzione della sessione, eseguita dopo aver riservato il posto.
+     * @return La sessione di prova, o <code>null</code>.
+     */
+    private ExecutionSession startDryRun(int scenarioId, double speed, VirtualClock clock, Supplier<ExecutionSession> factory) {
+        if (!(speed > 0)) {
+            logger.warn("Impossibile provare lo scenario {}: velocità {} non valida.", scenarioId, speed);
+            return null;
+        }
+        ExecutionSession session = launch(scenarioId, clock.nanoTime(), clock, factory);
+        if (session != null) {
+            logger.info("Sessione {}: prova dello scenario {} in tempo virtuale ({}).", session.getId(), scenarioId,
+                    speed < VirtualClock.MAX_SPEED ? speed + "x" : "velocità massima");
+            workers.execute(() -> drive(session, clock, speed));
+        }
+        return session;
+    }
+
+    /**
+     * Riproduce nel motore una sessione registrata: avvia una nuova sessione dello stesso scenario e le consegna
+     * i comandi del diario, scadenze dei timer comprese, con i loro istanti relativi. Se lo scenario non è cambiato
+     * la sessione riprodotta percorre gli stessi tempi di quella registrata. Un diario senza evento di fine,
+     * lasciato da un'interruzione, viene chiuso all'istante dell'ultimo evento.
+     *
+     * @param journalDir La cartella del diario, da {@link #getJournals()}.
+     * @param paced      <code>true</code> per consegnare i comandi alla velocità originale, ad esempio per seguirli
+     *                   sul monitor; <code>false</code> per consegnarli subito.
+     * @return La sessione riprodotta; <code>null</code> se il diario non può essere letto o la sessione non può essere avviata.
+     */
+    public ExecutionSession replay(Path journalDir, boolean paced) {
+        List<JournalEvent> events;
+        try {
+            events = JournalReader.readAll(journalDir);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Impossibile leggere il diario {}", journalDir, e);
+            return null;
+        }
+        JournalEvent.Started started = null;
+        for (JournalEvent event : events) {
+            if (event instanceof JournalEvent.Started s) {
+                started = s;
+                break;
+            }
+        }
+        if (started == null) {
+            logger.warn("Il diario {} non contiene l'avvio della sessione.", journalDir);
+            return null;
+        }
+        long origin = System.nanoTime();
+        int scenarioId = started.scenarioId();
+        WallClock clock = new WallClock(timers.newGroup(), workers);
+        ExecutionSession session = launch(scenarioId, origin + started.offsetNanos(), clock,
+                () -> createSession(scenarioId, true, origin, clock));
+        if (session != null) {
+            logger.info("Sessione {}: riproduzione del diario {} ({} eventi).", session.getId(), journalDir, events.size());
+            workers.execute(() -> feed(session, events, origin, paced));
+        }
+        return session;
+    }
+
+    /**
+     * Restituisce le cartelle dei diari registrati, dalla più vecchia.
+     *
+     * @return Le cartelle, da leggere con {@link JournalReader} o da passare a {@link #replay(Path, boolean)}.
+     */
+    public List<Path> getJournals() {
+        return journals.list();
+    }
+
+    /**
+     * Avvia una sessione, registrata o riprodotta. Il posto della sessione viene riservato prima di costruirla,
+     * così un avvio rifiutato per il limite di sessioni non crea diario, forme d'onda né andamento.
+     *
+     * @param scenarioId  L'ID dello scenario da eseguire.
+     * @param issuedNanos L'istante di avvio, nel tempo dell'orologio.
+     * @param clock       L'orologio della sessione.
+     * @param factory     La costruzione della sessione, eseguita dopo aver riservato il posto; restituisce
+     *                    <code>null</code> se lo scenario non può essere eseguito.
+     * @return La sessione avviata, o <code>null</code>.
+     */
+    private ExecutionSession launch(int scenarioId, long issuedNanos, SessionClock clock, Supplier<ExecutionSession> factory) {
+        boolean dryRun = clock.isVirtual();
+        if (!reserveSlot(dryRun)) {
+            logger.warn("Impossibile avviare l'esecuzione dello scenario {}: raggiunto il limite di {} {}.", scenarioId,
+                    dryRun ? MAX_DRY_RUNS : MAX_SESSIONS, dryRun ? "prove" : "sessioni");
+            rejectedSessions.incrementAndGet();
+            return null;
+        }
+        ExecutionSession session = null;
+        try {
+            session = factory.get();
+        } finally {
+            if (session == null) {
+                releaseSlot(dryRun); // Avvio rifiutato o fallito: il posto torna libero.
+            }
+        }
+        if (session == null) {
+            return null;
+        }
+        sessions.put(session.getId(), session);
+        reservedBytes.addAndGet(session.getReservedBytes());
+        started.incrementAndGet();
+        session.start(issuedNanos);
+        logger.info("Avviata la sessione {} dello scenario {} ({} tempi, {} KB riservati).",
+                session.getId(), scenarioId, session.getTimeline().stateCount(), session.getReservedBytes() / 1024);
+        return session;
+    }
+
+    /**
+     * Legge lo scenario dal database e ne costruisce una sessione, dopo aver verificato che abbia tempi e rientri
+     * nel budget di memoria.
+     *
+     * @param scenarioId  L'ID dello scenario da eseguire.
+     * @param replay      <code>true</code> per una riproduzione.
+     * @param originNanos L'istante di riferimento degli eventi della sessione.
+     * @param clock       L'orologio della sessione.
+     * @return La sessione, non ancora avviata; <code>null</code> se lo scenario non può essere eseguito.
+     */
+    private ExecutionSession createSession(int scenarioId, boolean replay, long originNanos, SessionClock clock) {
+        CompiledTimeline timeline = advancedScenarioService.getCompiledTimeline(scenarioId);
+        if (!isRunnable(scenarioId, timeline)) {
+            return null;
+        }
+        Scenario scenario = scenarioService.getScenarioById(scenarioId);
+        long generaleSeconds = scenario != null ? Math.round(scenario.getTimerGenerale() * 60.0) : 0L; // Il timer generale è in minuti.
+        PazienteT0 patient = pazienteT0Service.getPazienteT0ById(scenarioId);
+        return newSession(timeline, patient, generaleSeconds, replay, originNanos, clock);
+    }
+
+    /**
+     * Verifica che un grafo dei tempi abbia uno stato iniziale e rientri nel budget di memoria di una sessione.
+     *
+     * @param scenarioId L'ID dello scenario, per i log.
+     * @param timeline   Il grafo dei tempi.
+     * @return <code>true</code> se la sessione può essere costruita; altrimenti l'avvio viene contato come rifiutato.
+     */
+    private boolean isRunnable(int scenarioId, CompiledTimeline timeline) {
+        if (timeline.startState() < 0) {
+            logger.warn("Impossibile avviare l'esecuzione dello scenario {}: nessun tempo definito.", scenarioId);
+            rejectedSessions.incrementAndGet();
+            return false;
+        }
+        if (!timeline.isExecutable()) {
+            logger.warn("Lo scenario {} ha transizioni non valide o cicli senza uscita: {}", scenarioId, timeline);
+        }
+
+        if (historyCapacityFor(timeline) < MIN_HISTORY_SIZE) {
+            logger.warn("Impossibile avviare l'esecuzione dello scenario {}: {} tempi superano il budget di {} byte per sessione.",
+                    scenarioId, timeline.stateCount(), SESSION_MAX_BYTES);
+            rejectedSessions.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Costruisce una sessione da un grafo dei tempi già verificato con {@link #isRunnable(int, CompiledTimeline)}.
+     *
+     * @param timeline        Il grafo dei tempi.
+     * @param patient         Il paziente al tempo zero, o <code>null</code>.
+     * @param generaleSeconds Il timer generale in secondi; <code>0</code> se non è impostato.
+     * @param replay          <code>true</code> per una riproduzione.
+     * @param originNanos     L'istante di riferimento degli eventi della sessione.
+     * @param clock           L'orologio della sessione.
+     * @return La sessione, non ancora avviata.
+     */
+    private ExecutionSession newSession(CompiledTimeline timeline, PazienteT0 patient, long generaleSeconds, boolean replay,
+                                        long originNanos, SessionClock clock) {
+        return new ExecutionSession(nextSessionId.getAndIncrement(), timeline, patient, generaleSeconds,
+                this, clock, MAILBOX_SIZE, historyCapacityFor(timeline), originNanos, replay);
+    }
+
+    /**
+     * Riserva il posto di una nuova sessione, se il limite del suo tipo non è stato raggiunto.
+     *
+     * @param dryRun <code>true</code> per una prova in tempo virtuale.
+     * @return <code>true</code> se il posto è stato riservato.
+     */
+    private boolean reserveSlot(boolean dryRun) {
+        AtomicInteger slots = dryRun ? dryRunSlots : liveSlots;
+        int limit = dryRun ? MAX_DRY_RUNS : MAX_SESSIONS;
+        int current;
+        do {
+            current = slots.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!slots.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Libera il posto di una sessione terminata o di un avvio non riuscito.
+     *
+     * @param dryRun <code>true</code> per una prova in tempo virtuale.
+     */
+    private void releaseSlot(boolean dryRun) {
+        (dryRun ? dryRunSlots : liveSlots).decrementAndGet();
+    }
+
+    /**
+     * Restituisce una sessione attiva.
+     *
+     * @param sessionId L'ID della sessione.
+     * @return La sessione, o <code>null</code> se non esiste o è terminata.
+     */
+    public ExecutionSession getSession(long sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Restituisce il riepilogo per il debriefing di una sessione attiva o terminata di recente.
+     * Il riepilogo è aggiornato durante la sessione, quindi è disponibile subito.
+     *
+     * @param sessionId L'ID della sessione.
+     * @return Il riepilogo, o <code>null</code> se la sessione non è attiva né tra le ultime terminate.
+     */
+    public SessionDebrief getDebrief(long sessionId) {
+        ExecutionSession session = sessions.get(sessionId);
+        if (session != null) {
+            return session.getDebrief();
+        }
+        synchronized (recentDebriefs) {
+            return recentDebriefs.get(sessionId);
+        }
+    }
+
+    /**
+     * Restituisce le sessioni attive.
+     *
+     * @return Una copia dell'elenco delle sessioni non ancora terminate.
+     */
+    public List<ExecutionSession> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Restituisce gli indicatori del motore.
+     *
+     * @return Un'istantanea delle statistiche.
+     */
+    public ExecutionStats getStats() {
+        return new ExecutionStats(sessions.size(), started.get(), rejectedSessions.get(), rejectedCommands.get(),
+                reservedBytes.get(), latency.getStats(), timers.getStats());
+    }
+
+    /**
+     * Arresta tutte le sessioni e i thread del motore alla chiusura dell'applicazione.
+     */
+    @PreDestroy
+    public void shutdown() {
+        getSessions().forEach(ExecutionSession::stop);
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Alcune sessioni non hanno terminato l'arresto entro 5 secondi.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timers.close();
+        waveforms.close();
+        trends.close();
+        journals.close();
+        logger.info("Motore di esecuzione arrestato. {}", getStats());
+    }
+
+    /**
+     * Calcola la capacità dello storico che rientra nel budget di memoria.
+     *
+     * @param timeline Il grafo dei tempi.
+     * @return Il numero di voci dello storico; inferiore a {@link #MIN_HISTORY_SIZE} se lo scenario non rientra nel budget.
+     */
+    private static int historyCapacityFor(CompiledTimeline timeline) {
+        long available = SESSION_MAX_BYTES - ExecutionSession.estimateBytes(timeline, MAILBOX_SIZE, 0);
+        if (available <= 0) {
+            return 0;
+        }
+        return (int) Math.min(HISTORY_SIZE, available / ExecutionSession.HISTORY_ENTRY_BYTES);
+    }
+
+    /**
+     * Consegna a una sessione riprodotta gli eventi del diario che la guidano. Gli eventi prodotti dalla sessione
+     * stessa (ingressi nei tempi, allarmi) vengono ignorati: la riproduzione li genera di nuovo.
+     *
+     * @param session La sessione riprodotta.
+     * @param events  Gli eventi del diario.
+     * @param origin  L'istante corrispondente all'inizio del diario.
+     * @param paced   <code>true</code> per attendere l'istante di ogni evento.
+     */
+    private void feed(ExecutionSession session, List<JournalEvent> events, long origin, boolean paced) {
+        long last = 0;
+        boolean ended = false;
+        for (JournalEvent event : events) {
+            long at = origin + event.offsetNanos();
+            last = Math.max(last, event.offsetNanos());
+            if (paced) {
+                for (long wait; (wait = at - System.nanoTime()) > 0; ) {
+                    if (getSession(session.getId()) == null) {
+                        return; // Sessione arrestata durante l'attesa.
+                    }
+                    LockSupport.parkNanos(Math.min(wait, PACING_CHECK_NANOS));
+                }
+            }
+            boolean delivered = switch (event) {
+                case JournalEvent.Command c -> deliver(session, c.type(), at, c.argument(), Double.NaN, null);
+                case JournalEvent.KeyAction k -> deliver(session, ExecutionSession.CommandType.KEY_ACTION, at, 0L, Double.NaN, k.name());
+                case JournalEvent.VitalOverride v -> deliver(session, ExecutionSession.CommandType.VITAL_OVERRIDE, at, v.channel(), v.value(), null);
+                case JournalEvent.Ended ignored -> {
+                    ended = true;
+                    yield true;
+                }
+                default -> true;
+            };
+            if (!delivered) {
+                return;
+            }
+        }
+        if (!ended) {
+            deliver(session, ExecutionSession.CommandType.STOP, origin + last, 0L, Double.NaN, null);
+        }
+    }
+
+    /**
+     * Fa avanzare il tempo virtuale di una prova fino alla sua fine. Se l'orologio si ferma prima che la sessione
+     * sia terminata, la prova viene chiusa indicandone il motivo.
+     *
+     * @param session La sessione di prova.
+     * @param clock   L'orologio virtuale della sessione.
+     * @param speed   Il rapporto tra tempo virtuale e reale.
+     */
+    private void drive(ExecutionSession session, VirtualClock clock, double speed) {
+        VirtualClock.Outcome outcome = clock.run(speed, clock.nanoTime() + DRY_RUN_MAX_NANOS, () -> getSession(session.getId()) == null);
+        switch (outcome) {
+            case IDLE -> session.stop("prova in attesa dell'istruttore");
+            case HORIZON -> session.stop("limite di durata della prova");
+            case STOPPED -> {
+                return;
+            }
+        }
+        clock.runPending();
+    }
+
+    /**
+     * Accoda un comando a una sessione riprodotta, attendendo che la coda abbia spazio.
+     *
+     * @param session     La sessione.
+     * @param type        Il tipo di comando.
+     * @param issuedNanos L'istante del comando.
+     * @param argument    L'argomento.
+     * @param value       Il valore, per i parametri vitali.
+     * @param text        Il testo, per le azioni chiave.
+     * @return <code>false</code> se la sessione è terminata o la riproduzione è stata interrotta.
+     */
+    private boolean deliver(ExecutionSession session, ExecutionSession.CommandType type, long issuedNanos, long argument,
+                            double value, String text) {
+        while (!session.offerReplayed(type, issuedNanos, argument, value, text)) {
+            if (getSession(session.getId()) == null) {
+                return false;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Crea il diario di una nuova sessione.
+     *
+     * @param sessionId  L'ID della sessione.
+     * @param scenarioId  L'ID dello scenario.
+     * @param originNanos L'istante di riferimento degli eventi; per una riproduzione, l'inizio del diario riprodotto.
+     * @param record      <code>false</code> per una sessione riprodotta o una prova, che non vengono registrate.
+     * @return Il diario.
+     */
+    SessionJournal newJournal(long sessionId, int scenarioId, long originNanos, boolean record) {
+        return record ? journals.open(sessionId, scenarioId, originNanos) : SessionJournal.disabled(sessionId, scenarioId, originNanos);
+    }
+
+    /**
+     * Crea l'andamento dei parametri vitali di una nuova sessione.
+     *
+     * @param frame     I tempi dello scenario.
+     * @param generator Le forme d'onda della sessione, guidate dai parametri.
+     * @return L'andamento, con la configurazione del pool condiviso.
+     */
+    VitalTrend newTrend(TimelineFrame frame, WaveformGenerator generator) {
+        return trends.newTrend(frame, generator);
+    }
+
+    /**
+     * Crea il valutatore degli allarmi di una nuova sessione.
+     *
+     * @param scenarioId L'ID dello scenario, per le soglie personalizzate.
+     * @param trend      L'andamento dei parametri della sessione.
+     * @return Il valutatore, con un canale per ciascun canale dell'andamento.
+     */
+    AlarmEvaluator newAlarms(int scenarioId, VitalTrend trend) {
+        return AlarmEvaluator.forTrend(trend, alarmThresholdService.getOverrides(scenarioId));
+    }
+
+    /**
+     * Avvia la sintesi delle forme d'onda e l'avanzamento dei parametri vitali di una sessione.
+     * In una prova i parametri avanzano ai tick dell'orologio virtuale, con il periodo del pool, e le forme d'onda,
+     * che seguono il tempo reale, non vengono sintetizzate.
+     *
+     * @param generator Il generatore della sessione.
+     * @param trend     L'andamento dei parametri della sessione.
+     * @param clock     L'orologio della sessione.
+     */
+    void startWaveforms(WaveformGenerator generator, VitalTrend trend, SessionClock clock) {
+        if (clock instanceof VirtualClock virtual) {
+            virtual.setTicker(TimeUnit.MILLISECONDS.toNanos(trends.getTickMillis()), trend::advanceTo);
+            return;
+        }
+        trends.register(trend);
+        waveforms.register(generator);
+    }
+
+    /**
+     * Interrompe la sintesi delle forme d'onda e l'avanzamento dei parametri vitali di una sessione terminata.
+     *
+     * @param generator Il generatore della sessione.
+     * @param trend     L'andamento dei parametri della sessione.
+     * @param clock     L'orologio della sessione.
+     */
+    void stopWaveforms(WaveformGenerator generator, VitalTrend trend, SessionClock clock) {
+        if (clock instanceof VirtualClock virtual) {
+            virtual.setTicker(0L, null);
+            return;
+        }
+        waveforms.unregister(generator);
+        trends.unregister(trend);
+    }
+
+    /**
+     * Registra la latenza di un cambio di stato.
+     *
+     * @param nanos La latenza in nanosecondi.
+     */
+    void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Conta un comando scartato per coda piena.
+     *
+     * @param session La sessione.
+     * @param type    Il tipo di comando.
+     */
+    void commandRejected(ExecutionSession session, ExecutionSession.CommandType type) {
+        rejectedCommands.incrementAndGet();
+        logger.warn("Sessione {}: comando {} scartato, coda dei comandi piena.", session.getId(), type);
+    }
+
+    /**
+     * Rimuove una sessione terminata e ne libera il budget.
+     *
+     * @param session La sessione terminata.
+     */
+    void sessionEnded(ExecutionSession session) {
+        if (sessions.remove(session.getId(), session)) {
+            releaseSlot(session.isDryRun());
+            reservedBytes.addAndGet(-session.getReservedBytes());
+            SessionDebrief debrief = session.getDebrief();
+            synchronized (recentDebriefs) {
+                recentDebriefs.put(session.getId(), debrief);
+            }
+        }
+    }
+}
@@ -0,0 +1,1020 @@
+package it.uniupo.simnova.service.execution;
+
+import it.uniupo.simnova.domain.paziente.PazienteT0;
+import it.uniupo.simnova.service.execution.alarm.AlarmEvaluator;
+import it.uniupo.simnova.service.execution.alarm.AlarmEvent;
+import it.uniupo.simnova.service.execution.clock.SessionClock;
+import it.uniupo.simnova.service.execution.debrief.DebriefAggregator;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief;
+import it.uniupo.simnova.service.execution.journal.SessionJournal;
+import it.uniupo.simnova.service.execution.trend.VitalTrend;
+import it.uniupo.simnova.service.execution.waveform.WaveformGenerator;
+import it.uniupo.simnova.service.scenario.timeline.CompiledTimeline;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Una simulazione in corso in una sala: percorre il grafo dei tempi di uno scenario a partire da T0,
+ * fa scorrere il timer di ciascun tempo e il timer generale, e applica le transizioni TSi/TNo.
+ * <p>
+ * Lo stato della sessione è confinato: viene modificato solo dal worker che svuota la coda dei comandi,
+ * un thread virtuale alla volta. I comandi dell'istruttore vengono accodati e le scadenze dei timer segnalate
+ * al worker, quindi non servono lock e l'ordine di applicazione è quello di arrivo. Dopo ogni comando la sessione
+ * pubblica una {@link SessionSnapshot} leggibile da qualunque thread.
+ * </p>
+ * <p>
+ * Allo scadere del timer di un tempo senza che l'istruttore abbia confermato l'azione viene seguita la
+ * transizione "se NO". Allo scadere del timer generale la sessione termina.
+ * </p>
+ * <p>
+ * La memoria della sessione è limitata: la coda dei comandi ha capacità fissa e lo storico dei tempi
+ * visitati è un buffer circolare che scarta le voci più vecchie, entrambi dimensionati dall'{@link ExecutionEngine}.
+ * </p>
+ * <p>
+ * Per tutta la durata della sessione un {@link WaveformGenerator} sintetizza ECG, pletismografia e capnografia
+ * del paziente. A ogni ingresso in un tempo i parametri vitali non cambiano di colpo: il {@link VitalTrend}
+ * della sessione li porta gradualmente ai valori del tempo e guida con essi le forme d'onda.
+ * Ogni volta che l'andamento cambia, l'{@link AlarmEvaluator} della sessione confronta i valori con le soglie
+ * di allarme dello scenario.
+ * </p>
+ * <p>
+ * Comandi, azioni chiave, ingressi nei tempi e allarmi vengono registrati nel {@link SessionJournal} della sessione
+ * con l'istante in cui sono stati applicati. Una sessione riprodotta da un diario non programma timer e non legge
+ * l'orologio per le transizioni: riceve gli stessi comandi, scadenze comprese, con gli stessi istanti relativi,
+ * e percorre quindi gli stessi tempi della sessione registrata. Gli stessi eventi aggiornano il riepilogo
+ * per il debriefing della sessione.
+ * </p>
+ * <p>
+ * La sessione legge il tempo, programma i timer ed esegue il proprio lavoro solo attraverso il suo {@link SessionClock}.
+ * Con un orologio virtuale la stessa sessione diventa una prova dello scenario: il tempo avanza più velocemente
+ * di quello reale, o salta da una scadenza alla successiva, e le transizioni sono deterministiche.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.9
+ */
+public final class ExecutionSession {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le transizioni e le anomalie.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionSession.class);
+
+    /**
+     * Byte stimati per un comando in coda: riferimento nella coda e record.
+     */
+    static final long COMMAND_BYTES = 56;
+
+    /**
+     * Byte stimati per una voce dello storico: ID del tempo e istante di ingresso, più il passo del percorso nel riepilogo.
+     */
+    static final long HISTORY_ENTRY_BYTES = Integer.BYTES + Long.BYTES + 40;
+
+    /**
+     * Byte stimati per gli oggetti fissi della sessione, esclusi coda, storico e grafo dei tempi.
+     */
+    static final long FIXED_BYTES = 1024;
+
+    /**
+     * L'ID della sessione.
+     */
+    private final long id;
+
+    /**
+     * Il grafo dei tempi eseguito, fissato all'avvio.
+     */
+    private final CompiledTimeline timeline;
+
+    /**
+     * Il paziente al tempo zero; <code>null</code> se lo scenario non lo definisce.
+     */
+    private final PazienteT0 patient;
+
+    /**
+     * Durata del timer generale in nanosecondi; <code>0</code> se lo scenario non ne ha uno.
+     */
+    private final long generaleNanos;
+
+    /**
+     * Il motore che ospita la sessione: forme d'onda, andamento, diari e metriche condivisi.
+     */
+    private final ExecutionEngine engine;
+
+    /**
+     * L'orologio della sessione: istante corrente, timer sospesi e anticipati insieme, esecuzione del lavoro.
+     */
+    private final SessionClock clock;
+
+    /**
+     * Il generatore delle forme d'onda del paziente.
+     */
+    private final WaveformGenerator waveforms = new WaveformGenerator();
+
+    /**
+     * L'andamento dei parametri vitali tra un tempo e l'altro.
+     */
+    private final VitalTrend trend;
+
+    /**
+     * Il valutatore degli allarmi sui parametri dell'andamento.
+     */
+    private final AlarmEvaluator alarms;
+
+    /**
+     * Rivaluta gli allarmi a ogni cambiamento dell'andamento.
+     */
+    private final Runnable alarmCheck;
+
+    /**
+     * Il diario degli eventi della sessione.
+     */
+    private final SessionJournal journal;
+
+    /**
+     * Registra nel diario i cambi di livello degli allarmi.
+     */
+    private final Consumer<AlarmEvent> alarmJournal;
+
+    /**
+     * Il riepilogo per il debriefing, aggiornato a ogni evento del diario.
+     */
+    private final DebriefAggregator debrief;
+
+    /**
+     * I nomi dei canali degli allarmi, registrati nel diario all'avvio.
+     */
+    private final String[] channelNames;
+
+    /**
+     * Indica se la sessione è riprodotta da un diario: gli istanti vengono dai comandi e non si programmano timer.
+     */
+    private final boolean replay;
+
+    /**
+     * Completata con il riepilogo finale quando la sessione termina.
+     */
+    private final CompletableFuture<SessionDebrief> completion = new CompletableFuture<>();
+
+    /**
+     * La coda dei comandi da applicare.
+     */
+    private final BlockingQueue<Command> mailbox;
+
+    /**
+     * Indica se un worker sta svuotando la coda.
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Indica se un timer è scaduto e non è ancora stato gestito dal worker.
+     */
+    private final AtomicBoolean timerPending = new AtomicBoolean();
+
+    /**
+     * Chi riceve le istantanee dopo ogni cambiamento, sul thread del worker.
+     */
+    private final List<Consumer<SessionSnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * ID dei tempi visitati, in un buffer circolare.
+     */
+    private final int[] historyTempo;
+
+    /**
+     * Millisecondi di esecuzione all'ingresso in ciascun tempo visitato.
+     */
+    private final long[] historyMillis;
+
+    /**
+     * Memoria stimata riservata dalla sessione, in byte.
+     */
+    private final long reservedBytes;
+
+    /**
+     * L'ultima istantanea pubblicata.
+     */
+    private volatile SessionSnapshot snapshot;
+
+    // Stato confinato al worker della sessione.
+    private SessionStatus status = SessionStatus.RUNNING;
+    private int state = CompiledTimeline.END;
+    private long stateDeadlineNanos;        // 0 se il tempo corrente non ha un timer.
+    private long generaleDeadlineNanos;     // 0 se lo scenario non ha un timer generale.
+    private long pausedAtNanos;
+    private long startedNanos;
+    private long pausedTotalNanos;
+    private int transitions;
+    private int historyStart;
+    private int historySize;
+    private long historyDropped;
+    private SessionClock.Cancellable timer;
+
+    /**
+     * Crea una sessione; viene avviata da {@link ExecutionEngine#startSession(int)}, da {@link ExecutionEngine#replay(java.nio.file.Path, boolean)}
+     * o da {@link ExecutionEngine#dryRun(int, double)}.
+     *
+     * @param id               L'ID della sessione.
+     * @param timeline         Il grafo dei tempi dello scenario.
+     * @param patient          Il paziente al tempo zero, o <code>null</code>.
+     * @param generaleSeconds  Durata del timer generale in secondi; <code>0</code> se assente.
+     * @param engine           Il motore che ospita la sessione.
+     * @param clock            L'orologio della sessione.
+     * @param mailboxCapacity  Capacità della coda dei comandi.
+     * @param historyCapacity  Capacità dello storico dei tempi visitati.
+     * @param originNanos      L'istante di riferimento degli eventi del diario.
+     * @param replay           <code>true</code> se la sessione è riprodotta da un diario.
+     */
+    ExecutionSession(long id, CompiledTimeline timeline, PazienteT0 patient, long generaleSeconds, ExecutionEngine engine,
+                     SessionClock clock, int mailboxCapacity, int historyCapacity, long originNanos, boolean replay) {
+        this.id = id;
+        this.timeline = timeline;
+        this.patient = patient;
+        this.generaleNanos = TimeUnit.SECONDS.toNanos(Math.max(0L, generaleSeconds));
+        this.engine = engine;
+        this.clock = clock;
+        this.trend = engine.newTrend(timeline.frame(), waveforms);
+        this.alarms = engine.newAlarms(timeline.frame().scenarioId(), trend);
+        this.alarmCheck = () -> alarms.evaluate(trend, clock.nanoTime());
+        trend.addListener(alarmCheck);
+        this.replay = replay;
+        this.journal = engine.newJournal(id, timeline.frame().scenarioId(), originNanos, !replay && !clock.isVirtual());
+        this.alarmJournal = event -> journal.alarm(event.channel(), event.previousLevel(), event.level(), event.value(), event.atNanos());
+        alarms.addListener(alarmJournal);
+        this.channelNames = new String[alarms.channelCount()];
+        Arrays.setAll(channelNames, alarms::channelName);
+        this.debrief = new DebriefAggregator(channelNames, historyCapacity);
+        journal.addListener(debrief);
+        this.mailbox = new ArrayBlockingQueue<>(mailboxCapacity);
+        this.historyTempo = new int[historyCapacity];
+        this.historyMillis = new long[historyCapacity];
+        this.reservedBytes = estimateBytes(timeline, mailboxCapacity, historyCapacity);
+    }
+
+    /**
+     * Stima la memoria di una sessione. Il grafo dei tempi è contato per intero perché la sessione
+     * lo trattiene anche dopo che la cache lo ha rimosso; forme d'onda, andamento e allarmi contano i loro array preallocati.
+     *
+     * @param timeline        Il grafo dei tempi.
+     * @param mailboxCapacity Capacità della coda dei comandi.
+     * @param historyCapacity Capacità dello storico.
+     * @return I byte stimati.
+     */
+    static long estimateBytes(CompiledTimeline timeline, int mailboxCapacity, int historyCapacity) {
+        return FIXED_BYTES + estimateTimelineBytes(timeline) + WaveformGenerator.estimateBytes() + VitalTrend.estimateBytes(timeline.frame())
+                + AlarmEvaluator.estimateBytes(VitalTrend.FIXED_CHANNELS + timeline.frame().paramCount())
+                + mailboxCapacity * COMMAND_BYTES + historyCapacity * HISTORY_ENTRY_BYTES;
+    }
+
+    /**
+     * Stima la memoria del grafo dei tempi: colonne del frame, parametri e tabelle di compilazione.
+     *
+     * @param timeline Il grafo dei tempi.
+     * @return I byte stimati.
+     */
+    static long estimateTimelineBytes(CompiledTimeline timeline) {
+        TimelineFrame frame = timeline.frame();
+        return frame.size() * 160L + frame.paramCount() * 48L;
+    }
+
+    /**
+     * Restituisce l'ID della sessione.
+     *
+     * @return L'ID.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Restituisce l'ID dello scenario eseguito.
+     *
+     * @return L'ID dello scenario.
+     */
+    public int getScenarioId() {
+        return timeline.frame().scenarioId();
+    }
+
+    /**
+     * Restituisce il grafo dei tempi eseguito.
+     *
+     * @return Il grafo fissato all'avvio della sessione.
+     */
+    public CompiledTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Restituisce il paziente al tempo zero.
+     *
+     * @return Il paziente, o <code>null</code> se lo scenario non lo definisce.
+     */
+    public PazienteT0 getPatient() {
+        return patient;
+    }
+
+    /**
+     * Restituisce il generatore delle forme d'onda, da cui il monitor legge i campioni.
+     *
+     * @return Il generatore della sessione.
+     */
+    public WaveformGenerator getWaveforms() {
+        return waveforms;
+    }
+
+    /**
+     * Restituisce l'andamento dei parametri vitali, da cui il monitor legge i valori correnti.
+     *
+     * @return L'andamento della sessione.
+     */
+    public VitalTrend getTrend() {
+        return trend;
+    }
+
+    /**
+     * Restituisce il valutatore degli allarmi, a cui il monitor si registra per i cambi di livello.
+     *
+     * @return Il valutatore della sessione.
+     */
+    public AlarmEvaluator getAlarms() {
+        return alarms;
+    }
+
+    /**
+     * Restituisce il diario della sessione, da cui leggere gli eventi registrati.
+     *
+     * @return Il diario; disattivato per le sessioni riprodotte.
+     */
+    public SessionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Restituisce il riepilogo della sessione per il debriefing, aggiornato all'istante corrente.
+     * Il riepilogo è mantenuto a ogni evento, quindi la chiamata non rilegge il diario.
+     *
+     * @return Il riepilogo.
+     */
+    public SessionDebrief getDebrief() {
+        return debrief.snapshot(journal.offsetOf(clock.nanoTime()));
+    }
+
+    /**
+     * Restituisce il riepilogo finale della sessione quando termina, ad esempio per attendere la fine di una prova.
+     *
+     * @return Il futuro completato con il riepilogo alla fine della sessione.
+     */
+    public CompletableFuture<SessionDebrief> whenEnded() {
+        return completion;
+    }
+
+    /**
+     * Indica se la sessione è riprodotta da un diario.
+     *
+     * @return <code>true</code> per una riproduzione.
+     */
+    public boolean isReplay() {
+        return replay;
+    }
+
+    /**
+     * Indica se la sessione è una prova in tempo virtuale.
+     *
+     * @return <code>true</code> per una prova avviata con {@link ExecutionEngine#dryRun(int, double)}.
+     */
+    public boolean isDryRun() {
+        return clock.isVirtual();
+    }
+
+    /**
+     * Restituisce l'orologio della sessione.
+     *
+     * @return L'orologio; i suoi istanti sono quelli delle istantanee e del diario.
+     */
+    public SessionClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Restituisce l'ultima istantanea pubblicata.
+     *
+     * @return Lo stato corrente della sessione.
+     */
+    public SessionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Restituisce la memoria stimata riservata dalla sessione.
+     *
+     * @return I byte riservati.
+     */
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Registra chi riceve le istantanee dopo ogni cambiamento di stato.
+     * Il listener è chiamato sul worker della sessione e non deve bloccare.
+     *
+     * @param listener Il destinatario delle istantanee.
+     */
+    public void addListener(Consumer<SessionSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Rimuove un listener.
+     *
+     * @param listener Il listener da rimuovere.
+     */
+    public void removeListener(Consumer<SessionSnapshot> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * L'istruttore conferma che l'azione del tempo corrente è stata eseguita: segue la transizione "se SI".
+     *
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    public boolean actionPerformed() {
+        return offer(CommandType.ACTION_PERFORMED, clock.nanoTime());
+    }
+
+    /**
+     * L'istruttore indica che l'azione del tempo corrente non è stata eseguita: segue la transizione "se NO".
+     *
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    public boolean actionMissed() {
+        return offer(CommandType.ACTION_MISSED, clock.nanoTime());
+    }
+
+    /**
+     * Sospende la sessione, fermando i timer.
+     *
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    public boolean pause() {
+        return offer(CommandType.PAUSE, clock.nanoTime());
+    }
+
+    /**
+     * Riprende una sessione sospesa.
+     *
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    public boolean resume() {
+        return offer(CommandType.RESUME, clock.nanoTime());
+    }
+
+    /**
+     * Anticipa i timer della sessione, ad esempio per saltare un'attesa durante una prova.
+     * I timer che scadono nell'intervallo vengono gestiti subito.
+     *
+     * @param millis I millisecondi di cui avanzare.
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    public boolean fastForward(long millis) {
+        return offer(CommandType.FAST_FORWARD, clock.nanoTime(), millis);
+    }
+
+    /**
+     * Termina la sessione.
+     *
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    public boolean stop() {
+        return offer(CommandType.STOP, clock.nanoTime());
+    }
+
+    /**
+     * L'istruttore segna come eseguita un'azione chiave dello scenario. L'azione viene solo registrata nel diario,
+     * per il debriefing, e non cambia il tempo corrente.
+     *
+     * @param name Il nome dell'azione chiave.
+     * @return <code>false</code> se il nome è vuoto o il comando è stato scartato perché la coda è piena.
+     */
+    public boolean checkKeyAction(String name) {
+        if (name == null || name.isBlank()) {
+            return false;
+        }
+        return offer(new Command(CommandType.KEY_ACTION, clock.nanoTime(), 0L, Double.NaN, name));
+    }
+
+    /**
+     * L'istruttore imposta a mano il valore di un parametro vitale, che resta tale fino al prossimo tempo
+     * che lo specifica.
+     *
+     * @param channel Il canale dell'andamento, da {@link VitalTrend#channelName(int)}.
+     * @param value   Il valore.
+     * @return <code>false</code> se il canale non esiste, il valore non è un numero o il comando è stato scartato.
+     */
+    public boolean overrideVital(int channel, double value) {
+        if (channel < 0 || channel >= trend.channelCount() || Double.isNaN(value)) {
+            return false;
+        }
+        return offer(new Command(CommandType.VITAL_OVERRIDE, clock.nanoTime(), channel, value, null));
+    }
+
+    /**
+     * Restituisce gli ID dei tempi visitati ancora nello storico, dal più vecchio.
+     * Va chiamato dopo la fine della sessione o da un listener, sul worker.
+     *
+     * @return Gli ID dei tempi visitati.
+     */
+    public int[] getVisitedTempi() {
+        int[] result = new int[historySize];
+        for (int k = 0; k < historySize; k++) {
+            result[k] = historyTempo[(historyStart + k) % historyTempo.length];
+        }
+        return result;
+    }
+
+    /**
+     * Restituisce il numero di voci scartate dallo storico per rispettare il limite di memoria.
+     *
+     * @return Le voci scartate.
+     */
+    public long getHistoryDropped() {
+        return historyDropped;
+    }
+
+    /**
+     * Termina la sessione indicando il motivo, ad esempio la fine di una prova rimasta in attesa.
+     *
+     * @param reason Il motivo, registrato nel diario e nel riepilogo.
+     * @return <code>false</code> se il comando è stato scartato perché la coda è piena.
+     */
+    boolean stop(String reason) {
+        return offer(new Command(CommandType.STOP, clock.nanoTime(), 0L, Double.NaN, reason));
+    }
+
+    /**
+     * Avvia la sessione entrando nello stato iniziale. Chiamato dal motore una sola volta.
+     *
+     * @param issuedNanos L'istante di avvio; per una riproduzione quello registrato, riportato all'orologio corrente.
+     */
+    void start(long issuedNanos) {
+        offer(CommandType.START, issuedNanos);
+    }
+
+    /**
+     * Accoda un comando e, se nessun worker è attivo, ne avvia uno.
+     *
+     * @param type       Il tipo di comando.
+     * @param issuedNanos L'istante da cui misurare la latenza del comando.
+     * @return <code>false</code> se la coda è piena.
+     */
+    boolean offer(CommandType type, long issuedNanos) {
+        return offer(type, issuedNanos, 0L);
+    }
+
+    /**
+     * Accoda un comando con un argomento numerico.
+     *
+     * @param type        Il tipo di comando.
+     * @param issuedNanos L'istante da cui misurare la latenza del comando.
+     * @param argument    L'argomento del comando.
+     * @return <code>false</code> se la coda è piena.
+     */
+    private boolean offer(CommandType type, long issuedNanos, long argument) {
+        return offer(new Command(type, issuedNanos, argument, Double.NaN, null));
+    }
+
+    /**
+     * Accoda un comando già costruito.
+     *
+     * @param command Il comando.
+     * @return <code>false</code> se la coda è piena.
+     */
+    private boolean offer(Command command) {
+        if (!enqueue(command)) {
+            engine.commandRejected(this, command.type());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Accoda un comando letto dal diario durante una riproduzione. Chi riproduce riprova quando la coda è piena,
+     * quindi il rifiuto non viene contato.
+     *
+     * @param type        Il tipo di comando.
+     * @param issuedNanos L'istante registrato, riportato all'orologio corrente.
+     * @param argument    L'argomento del comando.
+     * @param value       Il valore, per i parametri vitali.
+     * @param text        Il testo, per le azioni chiave.
+     * @return <code>false</code> se la coda è piena.
+     */
+    boolean offerReplayed(CommandType type, long issuedNanos, long argument, double value, String text) {
+        return enqueue(new Command(type, issuedNanos, argument, value, text));
+    }
+
+    /**
+     * Inserisce un comando nella coda e, se nessun worker è attivo, ne avvia uno.
+     *
+     * @param command Il comando.
+     * @return <code>false</code> se la coda è piena.
+     */
+    private boolean enqueue(Command command) {
+        if (!mailbox.offer(command)) {
+            return false;
+        }
+        if (draining.compareAndSet(false, true)) {
+            clock.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * Segnala lo scadere di un timer. La scadenza non passa dalla coda limitata, così non può essere scartata:
+     * più scadenze in attesa vengono accorpate in una sola verifica.
+     */
+    void timerExpired() {
+        timerPending.set(true);
+        if (draining.compareAndSet(false, true)) {
+            clock.execute(this::drain);
+        }
+    }
+
+    /**
+     * Svuota la coda dei comandi. Un solo worker alla volta esegue questo metodo per la sessione.
+     */
+    private void drain() {
+        do {
+            while (true) {
+                Command command;
+                if (timerPending.getAndSet(false)) {
+                    // La latenza si misura dalla scadenza corrente, non da quella programmata: pause e avanzamenti
+                    // rapidi spostano le scadenze senza riprogrammare il timer sospeso o anticipato.
+                    command = new Command(CommandType.TIMER, earliest(stateDeadlineNanos, generaleDeadlineNanos), 0L, Double.NaN, null);
+                } else if ((command = mailbox.poll()) == null) {
+                    break;
+                }
+                try {
+                    apply(command);
+                } catch (RuntimeException e) {
+                    logger.error("Errore nell'applicazione del comando {} alla sessione {}.", command.type(), id, e);
+                }
+            }
+            draining.set(false);
+        } while ((timerPending.get() || !mailbox.isEmpty()) && draining.compareAndSet(false, true)); // Lavoro arrivato dopo l'ultimo controllo.
+    }
+
+    /**
+     * Applica un comando allo stato della sessione e pubblica la nuova istantanea.
+     *
+     * @param command Il comando.
+     */
+    private void apply(Command command) {
+        if (status == SessionStatus.ENDED) {
+            return;
+        }
+        long now = replay ? command.issuedNanos() : clock.nanoTime();
+        record(command, now);
+        boolean changed = switch (command.type()) {
+            case START -> {
+                startedNanos = now;
+                generaleDeadlineNanos = generaleNanos > 0 ? now + generaleNanos : 0;
+                initVitals();
+                engine.startWaveforms(waveforms, trend, clock);
+                enter(timeline.startState(), now);
+                yield true;
+            }
+            case TIMER -> onTimer(now);
+            case ACTION_PERFORMED -> status == SessionStatus.RUNNING && advance(true, now);
+            case ACTION_MISSED -> status == SessionStatus.RUNNING && advance(false, now);
+            case PAUSE -> pauseTimers(now);
+            case RESUME -> resumeTimers(now);
+            case FAST_FORWARD -> fastForwardTimers(command.argument());
+            case STOP -> {
+                end(now, command.text() != null ? command.text() : "arresto dell'istruttore");
+                yield true;
+            }
+            case KEY_ACTION -> false; // Solo registrata nel diario.
+            case VITAL_OVERRIDE -> {
+                if (command.argument() >= 0 && command.argument() < trend.channelCount()) { // Un diario può venire da uno scenario modificato.
+                    trend.set((int) command.argument(), command.value());
+                }
+                yield false;
+            }
+        };
+        if (changed) {
+            if (command.type() != CommandType.START && !replay && !clock.isVirtual()) {
+                engine.recordLatency(now - command.issuedNanos());
+            }
+            publish(now);
+        }
+    }
+
+    /**
+     * Registra nel diario un comando che sta per essere applicato. Le scadenze dei timer vengono registrate
+     * da {@link #onTimer(long)} solo quando causano una transizione, così la riproduzione non dipende
+     * dalla granularità della ruota dei timer.
+     *
+     * @param command Il comando.
+     * @param now     L'istante di applicazione.
+     */
+    private void record(Command command, long now) {
+        switch (command.type()) {
+            case START -> journal.started(System.currentTimeMillis(), channelNames, now);
+            case TIMER -> {
+            }
+            case KEY_ACTION -> journal.keyAction(command.text(), now);
+            case VITAL_OVERRIDE -> journal.vitalOverride((int) command.argument(), command.value(), now);
+            default -> journal.command(command.type(), command.argument(), now);
+        }
+    }
+
+    /**
+     * Gestisce lo scadere di un timer. Le scadenze superate da una pausa o da una transizione sono ignorate.
+     *
+     * @param now L'istante corrente.
+     * @return <code>true</code> se lo stato è cambiato.
+     */
+    private boolean onTimer(long now) {
+        if (status != SessionStatus.RUNNING) {
+            return false;
+        }
+        if (generaleDeadlineNanos != 0 && now >= generaleDeadlineNanos) {
+            journal.command(CommandType.TIMER, 0L, now);
+            end(now, "scadenza del timer generale");
+            return true;
+        }
+        if (stateDeadlineNanos != 0 && now >= stateDeadlineNanos) {
+            journal.command(CommandType.TIMER, 0L, now);
+            return advance(false, now); // Tempo scaduto senza conferma dell'azione.
+        }
+        scheduleTimer();
+        return false;
+    }
+
+    /**
+     * Segue una transizione dal tempo corrente.
+     *
+     * @param performed <code>true</code> per la transizione "se SI".
+     * @param now       L'istante corrente.
+     * @return <code>true</code>: la transizione cambia sempre lo stato.
+     */
+    private boolean advance(boolean performed, long now) {
+        int next = timeline.next(state, performed);
+        transitions++;
+        if (next == CompiledTimeline.END) {
+            end(now, "fine dei tempi");
+        } else if (next == CompiledTimeline.DANGLING) {
+            logger.warn("Sessione {}: il tempo T{} rimanda a un tempo inesistente ({}), la sessione termina.",
+                    id, timeline.tempoIdOf(state), performed ? "se SI" : "se NO");
+            end(now, "transizione non valida");
+        } else {
+            enter(next, now);
+        }
+        return true;
+    }
+
+    /**
+     * Entra in uno stato, avviandone il timer.
+     *
+     * @param next Lo stato.
+     * @param now  L'istante corrente.
+     */
+    private void enter(int next, long now) {
+        state = next;
+        long seconds = timeline.frame().timerAt(next);
+        stateDeadlineNanos = seconds > 0 ? now + TimeUnit.SECONDS.toNanos(seconds) : 0;
+        remember(timeline.tempoIdOf(next), TimeUnit.NANOSECONDS.toMillis(elapsedNanos(now)));
+        journal.entered(timeline.tempoIdOf(next), now);
+        trend.retarget(next, now, TimeUnit.SECONDS.toNanos(Math.max(0L, seconds)));
+        logger.debug("Sessione {}: ingresso in T{}.", id, timeline.tempoIdOf(next));
+        scheduleTimer();
+    }
+
+    /**
+     * Imposta i parametri iniziali dal paziente al tempo zero, per i canali che il primo tempo non specifica.
+     */
+    private void initVitals() {
+        if (patient == null) {
+            return;
+        }
+        if (patient.getFC() != null) trend.set(VitalTrend.FC, patient.getFC());
+        if (patient.getRR() != null) trend.set(VitalTrend.RR, patient.getRR());
+        if (patient.getSpO2() != null) trend.set(VitalTrend.SPO2, patient.getSpO2());
+        if (patient.getEtCO2() != null) trend.set(VitalTrend.ETCO2, patient.getEtCO2());
+        if (patient.getT() > 0) trend.set(VitalTrend.TEMPERATURE, patient.getT());
+    }
+
+    /**
+     * Sospende i timer, conservando il tempo rimanente nelle scadenze relative.
+     *
+     * @param now L'istante corrente.
+     * @return <code>true</code> se la sessione era in corso.
+     */
+    private boolean pauseTimers(long now) {
+        if (status != SessionStatus.RUNNING) {
+            return false;
+        }
+        status = SessionStatus.PAUSED;
+        pausedAtNanos = now;
+        clock.pause();
+        trend.pause();
+        return true;
+    }
+
+    /**
+     * Riprende i timer spostando le scadenze in avanti della durata della pausa.
+     *
+     * @param now L'istante corrente.
+     * @return <code>true</code> se la sessione era sospesa.
+     */
+    private boolean resumeTimers(long now) {
+        if (status != SessionStatus.PAUSED) {
+            return false;
+        }
+        long paused = now - pausedAtNanos;
+        pausedTotalNanos += paused;
+        if (stateDeadlineNanos != 0) stateDeadlineNanos += paused;
+        if (generaleDeadlineNanos != 0) generaleDeadlineNanos += paused;
+        status = SessionStatus.RUNNING;
+        clock.resume(); // Il timer sospeso riparte dal tempo mancante, come le scadenze spostate sopra.
+        trend.resume(now);
+        return true;
+    }
+
+    /**
+     * Anticipa le scadenze e il tempo trascorso della sessione, e i timer sulla ruota.
+     *
+     * @param millis I millisecondi di cui avanzare.
+     * @return <code>true</code> se l'avanzamento è stato applicato.
+     */
+    private boolean fastForwardTimers(long millis) {
+        if (millis <= 0) {
+            return false;
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        if (stateDeadlineNanos != 0) stateDeadlineNanos -= nanos;
+        if (generaleDeadlineNanos != 0) generaleDeadlineNanos -= nanos;
+        startedNanos -= nanos;
+        clock.fastForward(millis);
+        trend.fastForward(nanos);
+        return true;
+    }
+
+    /**
+     * Termina la sessione e la rimuove dal motore.
+     *
+     * @param now    L'istante corrente.
+     * @param reason Il motivo, per il log.
+     */
+    private void end(long now, String reason) {
+        if (status == SessionStatus.PAUSED) {
+            pausedTotalNanos += now - pausedAtNanos;
+        }
+        status = SessionStatus.ENDED;
+        clock.cancelAll();
+        timer = null;
+        engine.stopWaveforms(waveforms, trend, clock);
+        trend.removeListener(alarmCheck);
+        alarms.removeListener(alarmJournal);
+        journal.ended(reason, now);
+        journal.close();
+        engine.sessionEnded(this);
+        completion.complete(getDebrief());
+        logger.info("Sessione {} dello scenario {} terminata per {} dopo {} transizioni.", id, getScenarioId(), reason, transitions);
+    }
+
+    /**
+     * Programma sulla ruota dei timer la prossima scadenza tra il timer del tempo e quello generale.
+     */
+    private void scheduleTimer() {
+        cancelTimer();
+        if (replay) {
+            return; // Le scadenze arrivano dal diario.
+        }
+        long deadline = earliest(stateDeadlineNanos, generaleDeadlineNanos);
+        if (deadline != 0) {
+            timer = clock.schedule(deadline, this::timerExpired);
+        }
+    }
+
+    /**
+     * Annulla la scadenza programmata, se presente.
+     */
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Aggiunge un tempo visitato allo storico, scartando la voce più vecchia se il buffer è pieno.
+     *
+     * @param tempoId L'ID del tempo.
+     * @param millis  I millisecondi di esecuzione all'ingresso.
+     */
+    private void remember(int tempoId, long millis) {
+        if (historyTempo.length == 0) {
+            historyDropped++;
+            return;
+        }
+        int slot;
+        if (historySize < historyTempo.length) {
+            slot = (historyStart + historySize++) % historyTempo.length;
+        } else {
+            slot = historyStart;
+            historyStart = (historyStart + 1) % historyTempo.length;
+            historyDropped++;
+        }
+        historyTempo[slot] = tempoId;
+        historyMillis[slot] = millis;
+    }
+
+    /**
+     * Pubblica l'istantanea corrente e la consegna ai listener.
+     *
+     * @param now L'istante corrente.
+     */
+    private void publish(long now) {
+        boolean running = status != SessionStatus.ENDED;
+        long reference = status == SessionStatus.PAUSED ? pausedAtNanos : now;
+        SessionSnapshot current = new SessionSnapshot(id, getScenarioId(), status,
+                running ? timeline.tempoIdOf(state) : -1,
+                running ? remainingMillis(stateDeadlineNanos, reference) : -1,
+                running ? remainingMillis(generaleDeadlineNanos, reference) : -1,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos(now)), transitions, System.currentTimeMillis());
+        snapshot = current;
+        for (Consumer<SessionSnapshot> listener : listeners) {
+            try {
+                listener.accept(current);
+            } catch (RuntimeException e) {
+                logger.warn("Listener della sessione {} fallito: {}", id, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Calcola il tempo di esecuzione effettivo, escluse le pause.
+     *
+     * @param now L'istante corrente.
+     * @return I nanosecondi trascorsi dall'avvio.
+     */
+    private long elapsedNanos(long now) {
+        long paused = pausedTotalNanos + (status == SessionStatus.PAUSED ? now - pausedAtNanos : 0);
+        return now - startedNanos - paused;
+    }
+
+    /**
+     * Converte una scadenza in millisecondi rimanenti.
+     *
+     * @param deadline  La scadenza; <code>0</code> se assente.
+     * @param reference L'istante di riferimento.
+     * @return I millisecondi rimanenti, o <code>-1</code> se la scadenza è assente.
+     */
+    private static long remainingMillis(long deadline, long reference) {
+        return deadline == 0 ? -1 : Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - reference));
+    }
+
+    /**
+     * Restituisce la prima di due scadenze, ignorando quelle assenti.
+     *
+     * @param a Una scadenza o <code>0</code>.
+     * @param b Una scadenza o <code>0</code>.
+     * @return La scadenza più vicina, o <code>0</code> se entrambe sono assenti.
+     */
+    private static long earliest(long a, long b) {
+        if (a == 0) return b;
+        if (b == 0) return a;
+        return a - b < 0 ? a : b;
+    }
+
+    /**
+     * I comandi accodati alla sessione. Gli ordinali sono registrati nei diari delle sessioni:
+     * i nuovi tipi vanno aggiunti in fondo.
+     */
+    public enum CommandType {
+        START, TIMER, ACTION_PERFORMED, ACTION_MISSED, PAUSE, RESUME, FAST_FORWARD, STOP, KEY_ACTION, VITAL_OVERRIDE
+    }
+
+    /**
+     * Un comando in coda.
+     *
+     * @param type        Il tipo di comando.
+     * @param issuedNanos L'istante da cui misurare la latenza: la scadenza per i timer, l'invio per i comandi dell'istruttore.
+     *                    In riproduzione è l'istante di applicazione.
+     * @param argument    L'argomento del comando, se previsto; il canale per i parametri vitali.
+     * @param value       Il valore, per i parametri vitali.
+     * @param text        Il nome, per le azioni chiave.
+     */
+    private record Command(CommandType type, long issuedNanos, long argument, double value, String text) {
+    }
+}
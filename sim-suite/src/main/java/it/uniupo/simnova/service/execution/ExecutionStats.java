@@ -0,0 +1,26 @@
+package it.uniupo.simnova.service.execution;
+
+import it.uniupo.simnova.utils.timer.TimerStats;
+
+/**
+ * Istantanea immutabile degli indicatori dell'{@link ExecutionEngine}.
+ *
+ * @param activeSessions   Numero di sessioni non ancora terminate.
+ * @param startedSessions  Numero di sessioni avviate.
+ * @param rejectedSessions Numero di avvii rifiutati per limite di sessioni o di memoria.
+ * @param rejectedCommands Numero di comandi scartati perché la coda della sessione era piena.
+ * @param reservedBytes    Memoria stimata riservata dalle sessioni attive, in byte.
+ * @param latency          Latenza tra lo scadere di un timer o un comando dell'istruttore e il cambio di stato applicato.
+ * @param timers           Gli indicatori della ruota dei timer condivisa.
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public record ExecutionStats(int activeSessions, long startedSessions, long rejectedSessions, long rejectedCommands,
+                             long reservedBytes, LatencyStats latency, TimerStats timers) {
+
+    @Override
+    public String toString() {
+        return String.format("ExecutionStats{attive=%d, avviate=%d, rifiutate=%d, comandi scartati=%d, memoria=%d KB, latenza=%s, timer=%s}",
+                activeSessions, startedSessions, rejectedSessions, rejectedCommands, reservedBytes / 1024, latency, timers);
+    }
+}
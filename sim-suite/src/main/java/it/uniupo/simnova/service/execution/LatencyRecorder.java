@@ -0,0 +1,87 @@
+package it.uniupo.simnova.service.execution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Istogramma concorrente delle latenze, con bucket a potenze di due di microsecondi.
+ * La registrazione non alloca e non prende lock, quindi può essere chiamata da tutti i worker delle sessioni.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class LatencyRecorder {
+
+    /**
+     * Numero di bucket: il bucket <code>b</code> contiene le latenze minori di <code>2^b</code> microsecondi.
+     */
+    private static final int BUCKETS = 40;
+
+    /**
+     * I contatori dei bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Numero di campioni.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Somma delle latenze, in nanosecondi.
+     */
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * Latenza massima, in nanosecondi.
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Registra una latenza.
+     *
+     * @param nanos La latenza in nanosecondi; i valori negativi sono registrati come zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        long micros = value / 1_000L;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Restituisce un'istantanea delle latenze registrate.
+     *
+     * @return Le statistiche correnti.
+     */
+    public LatencyStats getStats() {
+        long n = count.get();
+        return new LatencyStats(n, n == 0 ? 0 : totalNanos.get() / 1_000.0 / n,
+                percentile(n, 0.50), percentile(n, 0.99), maxNanos.get() / 1_000L);
+    }
+
+    /**
+     * Calcola un percentile dall'istogramma.
+     *
+     * @param n        Il numero di campioni.
+     * @param quantile Il quantile richiesto, tra <code>0</code> e <code>1</code>.
+     * @return Il limite superiore, in microsecondi, del bucket che contiene il quantile.
+     */
+    private long percentile(long n, double quantile) {
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * quantile);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(b);
+            if (seen >= target) {
+                return 1L << b;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,22 @@
+package it.uniupo.simnova.service.execution;
+
+/**
+ * Istantanea immutabile delle latenze registrate da un {@link LatencyRecorder}.
+ * I percentili sono approssimati per eccesso al limite superiore del bucket che li contiene.
+ *
+ * @param count      Numero di campioni registrati.
+ * @param meanMicros Latenza media, in microsecondi.
+ * @param p50Micros  Mediana, in microsecondi.
+ * @param p99Micros  Novantanovesimo percentile, in microsecondi.
+ * @param maxMicros  Latenza massima, in microsecondi.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record LatencyStats(long count, double meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+
+    @Override
+    public String toString() {
+        return String.format("LatencyStats{campioni=%d, media=%.1f µs, p50≤%d µs, p99≤%d µs, max=%d µs}",
+                count, meanMicros, p50Micros, p99Micros, maxMicros);
+    }
+}
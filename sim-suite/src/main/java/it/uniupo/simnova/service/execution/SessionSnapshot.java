@@ -0,0 +1,28 @@
+package it.uniupo.simnova.service.execution;
+
+/**
+ * Istantanea immutabile di una sessione di esecuzione, pubblicata dopo ogni cambiamento di stato.
+ * Le viste la leggono senza sincronizzarsi con il worker della sessione.
+ *
+ * @param sessionId               L'ID della sessione.
+ * @param scenarioId              L'ID dello scenario eseguito.
+ * @param status                  Lo stato della sessione.
+ * @param tempoId                 L'ID del tempo corrente; <code>-1</code> se la sessione è terminata.
+ * @param remainingTempoMillis    Millisecondi rimanenti del timer del tempo corrente; <code>-1</code> se il tempo non ha un timer.
+ * @param remainingGeneraleMillis Millisecondi rimanenti del timer generale; <code>-1</code> se lo scenario non ha un timer generale.
+ * @param elapsedMillis           Millisecondi di esecuzione effettiva, escluse le pause.
+ * @param transitions             Numero di transizioni eseguite dall'avvio.
+ * @param capturedAtMillis        Istante della cattura, in millisecondi dall'epoca, per far scorrere i timer lato client.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record SessionSnapshot(long sessionId, int scenarioId, SessionStatus status, int tempoId,
+                              long remainingTempoMillis, long remainingGeneraleMillis, long elapsedMillis,
+                              int transitions, long capturedAtMillis) {
+
+    @Override
+    public String toString() {
+        return String.format("SessionSnapshot{sessione=%d, scenario=%d, stato=%s, tempo=T%d, timer tempo=%d ms, timer generale=%d ms, trascorso=%d ms, transizioni=%d}",
+                sessionId, scenarioId, status, tempoId, remainingTempoMillis, remainingGeneraleMillis, elapsedMillis, transitions);
+    }
+}
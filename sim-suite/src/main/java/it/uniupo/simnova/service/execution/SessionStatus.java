@@ -0,0 +1,22 @@
+package it.uniupo.simnova.service.execution;
+
+/**
+ * Stato di una sessione di esecuzione.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public enum SessionStatus {
+    /**
+     * La sessione è in corso e i timer scorrono.
+     */
+    RUNNING,
+    /**
+     * La sessione è sospesa dall'istruttore: i timer sono fermi.
+     */
+    PAUSED,
+    /**
+     * La sessione è terminata per fine dei tempi, scadenza del timer generale o arresto dell'istruttore.
+     */
+    ENDED
+}
@@ -0,0 +1,94 @@
+package it.uniupo.simnova.service.execution.alarm;
+
+import java.util.Map;
+
+/**
+ * Le soglie di allarme di un parametro vitale. Una soglia assente vale {@link Double#NaN}.
+ * <p>
+ * Un valore sotto la soglia inferiore o sopra quella superiore di attenzione porta il parametro in
+ * {@link AlarmEvaluator#WARNING}; oltre le soglie critiche in {@link AlarmEvaluator#CRITICAL}. Per uscire da un livello
+ * il valore deve rientrare di almeno {@code hysteresis} rispetto alla soglia, così un valore che oscilla attorno
+ * al limite non fa lampeggiare l'allarme. Un allarme con {@code latching} resta segnalato al livello più alto
+ * raggiunto finché non viene riconosciuto.
+ * </p>
+ *
+ * @param criticalLow  Soglia critica inferiore.
+ * @param warningLow   Soglia di attenzione inferiore.
+ * @param warningHigh  Soglia di attenzione superiore.
+ * @param criticalHigh Soglia critica superiore.
+ * @param hysteresis   Margine di rientro per uscire da un livello, nell'unità del parametro.
+ * @param latching     Se l'allarme resta segnalato fino al riconoscimento.
+ * @param zeroIsNormal Se il valore <code>0</code> è considerato normale (es. EtCO₂ senza capnografo).
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record AlarmBand(double criticalLow, double warningLow, double warningHigh, double criticalHigh,
+                        double hysteresis, boolean latching, boolean zeroIsNormal) {
+
+    /**
+     * Nessuna soglia: il parametro non genera allarmi.
+     */
+    public static final AlarmBand NONE = new AlarmBand(Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0, false, false);
+
+    /**
+     * Le soglie predefinite, per nome del canale dell'andamento; gli stessi limiti con cui MonitorSupport colora i box.
+     */
+    public static final Map<String, AlarmBand> DEFAULTS = Map.of(
+            "FC", new AlarmBand(40, 50, 110, 130, 2, false, false),
+            "T", new AlarmBand(35, 36, 37.5, 39, 0.2, false, false),
+            "RR", new AlarmBand(10, 12, 25, 30, 1, false, false),
+            "SpO₂", new AlarmBand(90, 94, Double.NaN, Double.NaN, 1, false, false),
+            "EtCO₂", new AlarmBand(25, 35, 45, 60, 1, false, true)
+    );
+
+    /**
+     * Restituisce le soglie predefinite di un parametro.
+     *
+     * @param name Il nome del canale.
+     * @return Le soglie; {@link #NONE} se il parametro non ne ha.
+     */
+    public static AlarmBand defaultFor(String name) {
+        return DEFAULTS.getOrDefault(name, NONE);
+    }
+
+    /**
+     * Applica una personalizzazione a queste soglie: ogni soglia impostata nella personalizzazione sostituisce
+     * quella corrispondente, le altre restano invariate.
+     *
+     * @param override La personalizzazione, o <code>null</code>.
+     * @return Le soglie risultanti.
+     */
+    public AlarmBand overriddenBy(AlarmBand override) {
+        if (override == null) {
+            return this;
+        }
+        return new AlarmBand(
+                pick(override.criticalLow, criticalLow),
+                pick(override.warningLow, warningLow),
+                pick(override.warningHigh, warningHigh),
+                pick(override.criticalHigh, criticalHigh),
+                pick(override.hysteresis, hysteresis),
+                override.latching,
+                zeroIsNormal);
+    }
+
+    /**
+     * Indica se almeno una soglia è impostata.
+     *
+     * @return <code>true</code> se il parametro può andare in allarme.
+     */
+    public boolean isActive() {
+        return !Double.isNaN(criticalLow) || !Double.isNaN(warningLow) || !Double.isNaN(warningHigh) || !Double.isNaN(criticalHigh);
+    }
+
+    /**
+     * Sceglie il valore personalizzato se impostato.
+     *
+     * @param override Il valore personalizzato.
+     * @param base     Il valore di partenza.
+     * @return Il valore personalizzato, o quello di partenza se il primo è {@link Double#NaN}.
+     */
+    private static double pick(double override, double base) {
+        return Double.isNaN(override) ? base : override;
+    }
+}
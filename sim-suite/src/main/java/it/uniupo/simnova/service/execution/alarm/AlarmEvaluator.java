@@ -0,0 +1,341 @@
+package it.uniupo.simnova.service.execution.alarm;
+
+import it.uniupo.simnova.service.execution.trend.VitalTrend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Valuta le soglie di allarme su un flusso di valori dei parametri vitali, un canale per parametro.
+ * <p>
+ * Le {@link AlarmBand} sono compilate una sola volta in un array di soglie contiguo per canale, con le soglie assenti
+ * sostituite da infiniti e quelle di permanenza (ridotte dell'isteresi) già calcolate: la valutazione di un canale
+ * è una manciata di confronti senza salti condizionati sui dati, un {@link Double#NaN} (parametro non specificato)
+ * risulta normale senza casi particolari, e l'unico ramo è quello, raro, del cambio di livello.
+ * </p>
+ * <p>
+ * Per ogni canale si tengono due livelli: quello del valore, con isteresi, e quello segnalato, che per i canali con
+ * latch resta al massimo raggiunto fino a {@link #acknowledge(int, long)}. Un {@link AlarmEvent} viene emesso solo
+ * quando il livello segnalato cambia.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class AlarmEvaluator {
+
+    /**
+     * Livello normale.
+     */
+    public static final int NORMAL = 0;
+
+    /**
+     * Livello di attenzione.
+     */
+    public static final int WARNING = 1;
+
+    /**
+     * Livello critico.
+     */
+    public static final int CRITICAL = 2;
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare gli errori degli ascoltatori.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AlarmEvaluator.class);
+
+    /**
+     * Soglie per canale: attenzione inferiore e superiore, critica inferiore e superiore, poi le stesse ridotte dell'isteresi.
+     */
+    private static final int STRIDE = 8;
+
+    /**
+     * Bit di {@link #flags}: il canale trattiene il livello fino al riconoscimento.
+     */
+    private static final byte LATCHING = 1;
+
+    /**
+     * Bit di {@link #flags}: il valore <code>0</code> è normale.
+     */
+    private static final byte ZERO_IS_NORMAL = 2;
+
+    /**
+     * I nomi dei canali.
+     */
+    private final String[] names;
+
+    /**
+     * Le soglie compilate, {@link #STRIDE} valori per canale.
+     */
+    private final double[] thresholds;
+
+    /**
+     * Le opzioni dei canali.
+     */
+    private final byte[] flags;
+
+    /**
+     * Il livello del valore corrente di ciascun canale, con isteresi.
+     */
+    private final byte[] levels;
+
+    /**
+     * Il livello segnalato di ciascun canale, trattenuto per i canali con latch.
+     */
+    private final byte[] signaled;
+
+    /**
+     * Buffer riusato per leggere i valori di un {@link VitalTrend}.
+     */
+    private final double[] scratch;
+
+    /**
+     * Chi riceve gli eventi di allarme.
+     */
+    private final List<Consumer<AlarmEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Compila le soglie dei canali.
+     *
+     * @param names I nomi dei canali.
+     * @param bands Le soglie, una per canale; <code>null</code> equivale a {@link AlarmBand#NONE}.
+     */
+    public AlarmEvaluator(String[] names, AlarmBand[] bands) {
+        if (names.length != bands.length) {
+            throw new IllegalArgumentException("Numero di nomi e di soglie diverso: " + names.length + " e " + bands.length);
+        }
+        int channels = names.length;
+        this.names = names.clone();
+        this.thresholds = new double[channels * STRIDE];
+        this.flags = new byte[channels];
+        this.levels = new byte[channels];
+        this.signaled = new byte[channels];
+        this.scratch = new double[channels];
+        for (int c = 0; c < channels; c++) {
+            compile(c, bands[c] != null ? bands[c] : AlarmBand.NONE);
+        }
+    }
+
+    /**
+     * Crea il valutatore per i canali di un andamento, con le soglie predefinite e le personalizzazioni dello scenario.
+     *
+     * @param trend     L'andamento della sessione.
+     * @param overrides Le personalizzazioni per nome del parametro, anche per i parametri aggiuntivi.
+     * @return Il valutatore, con un canale per ciascun canale dell'andamento.
+     */
+    public static AlarmEvaluator forTrend(VitalTrend trend, Map<String, AlarmBand> overrides) {
+        int channels = trend.channelCount();
+        String[] names = new String[channels];
+        AlarmBand[] bands = new AlarmBand[channels];
+        for (int c = 0; c < channels; c++) {
+            names[c] = trend.channelName(c);
+            bands[c] = AlarmBand.defaultFor(names[c]).overriddenBy(overrides.get(names[c]));
+        }
+        return new AlarmEvaluator(names, bands);
+    }
+
+    /**
+     * Stima la memoria di un valutatore.
+     *
+     * @param channels Il numero di canali.
+     * @return I byte stimati.
+     */
+    public static long estimateBytes(int channels) {
+        return 128L + channels * (STRIDE * Double.BYTES + Double.BYTES + 3L + 8L);
+    }
+
+    /**
+     * Restituisce il numero di canali.
+     *
+     * @return Il numero di canali valutati.
+     */
+    public int channelCount() {
+        return names.length;
+    }
+
+    /**
+     * Restituisce il nome di un canale.
+     *
+     * @param channel Il canale.
+     * @return Il nome del parametro.
+     */
+    public String channelName(int channel) {
+        return names[channel];
+    }
+
+    /**
+     * Restituisce il livello segnalato di un canale.
+     *
+     * @param channel Il canale.
+     * @return {@link #NORMAL}, {@link #WARNING} o {@link #CRITICAL}.
+     */
+    public synchronized int level(int channel) {
+        return signaled[channel];
+    }
+
+    /**
+     * Restituisce il livello segnalato più alto tra tutti i canali.
+     *
+     * @return La priorità dell'allarme più grave in corso.
+     */
+    public synchronized int highest() {
+        int highest = NORMAL;
+        for (byte level : signaled) {
+            highest = Math.max(highest, level);
+        }
+        return highest;
+    }
+
+    /**
+     * Registra chi riceve gli eventi di allarme. L'ascoltatore è chiamato sul thread della valutazione,
+     * con il lock del valutatore, e non deve bloccare.
+     *
+     * @param listener Il destinatario degli eventi.
+     */
+    public void addListener(Consumer<AlarmEvent> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Rimuove un ascoltatore.
+     *
+     * @param listener L'ascoltatore da rimuovere.
+     */
+    public void removeListener(Consumer<AlarmEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Valuta i valori correnti di un andamento.
+     *
+     * @param trend Un andamento con lo stesso numero di canali.
+     * @param now   L'istante corrente.
+     * @return Il numero di eventi emessi.
+     */
+    public synchronized int evaluate(VitalTrend trend, long now) {
+        trend.copyValues(scratch);
+        return evaluate(scratch, now);
+    }
+
+    /**
+     * Valuta un campione per canale ed emette un evento per ogni canale il cui livello segnalato cambia.
+     *
+     * @param values I valori, uno per canale; {@link Double#NaN} se il parametro non è specificato.
+     * @param now    L'istante corrente.
+     * @return Il numero di eventi emessi.
+     */
+    public synchronized int evaluate(double[] values, long now) {
+        int events = 0;
+        double[] t = thresholds;
+        for (int c = 0, base = 0; c < signaled.length; c++, base += STRIDE) {
+            double v = values[c];
+            int raw = (v < t[base] | v > t[base + 1] ? 1 : 0) + (v < t[base + 2] | v > t[base + 3] ? 1 : 0);
+            int hold = (v < t[base + 4] | v > t[base + 5] ? 1 : 0) + (v < t[base + 6] | v > t[base + 7] ? 1 : 0);
+            int level = Math.max(raw, Math.min(levels[c], hold)); // Si esce da un livello solo rientrando oltre l'isteresi.
+            level &= (v == 0 & (flags[c] & ZERO_IS_NORMAL) != 0) ? 0 : 3;
+            levels[c] = (byte) level;
+            int shown = (flags[c] & LATCHING) != 0 ? Math.max(level, signaled[c]) : level;
+            if (shown != signaled[c]) {
+                events++;
+                signal(c, shown, level, v, now);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Riconosce l'allarme di un canale: il livello segnalato torna a quello del valore corrente.
+     *
+     * @param channel Il canale.
+     * @param now     L'istante corrente.
+     * @return <code>true</code> se il livello segnalato è cambiato.
+     */
+    public synchronized boolean acknowledge(int channel, long now) {
+        if (signaled[channel] == levels[channel]) {
+            return false;
+        }
+        signal(channel, levels[channel], levels[channel], Double.NaN, now);
+        return true;
+    }
+
+    /**
+     * Riconosce gli allarmi di tutti i canali.
+     *
+     * @param now L'istante corrente.
+     * @return Il numero di canali il cui livello segnalato è cambiato.
+     */
+    public synchronized int acknowledgeAll(long now) {
+        int changed = 0;
+        for (int c = 0; c < signaled.length; c++) {
+            if (acknowledge(c, now)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Aggiorna il livello segnalato di un canale e avvisa gli ascoltatori.
+     *
+     * @param channel Il canale.
+     * @param shown   Il nuovo livello segnalato.
+     * @param level   Il livello del valore.
+     * @param value   Il valore, o {@link Double#NaN}.
+     * @param now     L'istante del cambio.
+     */
+    private void signal(int channel, int shown, int level, double value, long now) {
+        int previous = signaled[channel];
+        signaled[channel] = (byte) shown;
+        if (listeners.isEmpty()) {
+            return;
+        }
+        AlarmEvent event = new AlarmEvent(channel, names[channel], previous, shown, value, shown > level, now);
+        for (Consumer<AlarmEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                logger.warn("Ascoltatore degli allarmi fallito per {}: {}", event, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Compila le soglie di un canale. Una soglia di attenzione assente o più larga di quella critica coincide con
+     * quest'ultima, così un valore critico è sempre anche di attenzione e la somma dei due confronti dà il livello.
+     *
+     * @param channel Il canale.
+     * @param band    Le soglie.
+     */
+    private void compile(int channel, AlarmBand band) {
+        double criticalLow = orElse(band.criticalLow(), Double.NEGATIVE_INFINITY);
+        double criticalHigh = orElse(band.criticalHigh(), Double.POSITIVE_INFINITY);
+        double warningLow = Math.max(orElse(band.warningLow(), criticalLow), criticalLow);
+        double warningHigh = Math.min(orElse(band.warningHigh(), criticalHigh), criticalHigh);
+        double h = Double.isNaN(band.hysteresis()) ? 0 : Math.abs(band.hysteresis());
+        int base = channel * STRIDE;
+        thresholds[base] = warningLow;
+        thresholds[base + 1] = warningHigh;
+        thresholds[base + 2] = criticalLow;
+        thresholds[base + 3] = criticalHigh;
+        thresholds[base + 4] = warningLow + h; // Infinito resta infinito.
+        thresholds[base + 5] = warningHigh - h;
+        thresholds[base + 6] = criticalLow + h;
+        thresholds[base + 7] = criticalHigh - h;
+        flags[channel] = (byte) ((band.latching() ? LATCHING : 0) | (band.zeroIsNormal() ? ZERO_IS_NORMAL : 0));
+    }
+
+    /**
+     * Sostituisce una soglia assente.
+     *
+     * @param value    La soglia.
+     * @param fallback Il valore da usare se la soglia è {@link Double#NaN}.
+     * @return La soglia o il sostituto.
+     */
+    private static double orElse(double value, double fallback) {
+        return Double.isNaN(value) ? fallback : value;
+    }
+}
@@ -0,0 +1,23 @@
+package it.uniupo.simnova.service.execution.alarm;
+
+/**
+ * Cambio del livello di allarme segnalato per un parametro, emesso da {@link AlarmEvaluator} solo quando il livello cambia.
+ *
+ * @param channel       Il canale del parametro.
+ * @param name          Il nome del parametro.
+ * @param previousLevel Il livello segnalato prima del cambio.
+ * @param level         Il nuovo livello segnalato.
+ * @param value         Il valore che ha causato il cambio; {@link Double#NaN} se il cambio deriva da un riconoscimento.
+ * @param latched       Se il livello segnalato è trattenuto in attesa di riconoscimento, più alto di quello del valore.
+ * @param atNanos       L'istante del cambio, da {@link System#nanoTime()}.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record AlarmEvent(int channel, String name, int previousLevel, int level, double value, boolean latched, long atNanos) {
+
+    @Override
+    public String toString() {
+        return String.format("AlarmEvent{parametro=%s, livello=%d->%d, valore=%.2f%s}",
+                name, previousLevel, level, value, latched ? ", trattenuto" : "");
+    }
+}
@@ -0,0 +1,160 @@
+package it.uniupo.simnova.service.execution.alarm;
+
+import it.uniupo.simnova.utils.DBConnect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Servizio per le soglie di allarme personalizzate degli scenari, memorizzate nella tabella <code>SogliaAllarme</code>.
+ * Una riga per parametro (vitale o aggiuntivo, per nome) sostituisce le soglie predefinite che imposta;
+ * le colonne <code>NULL</code> lasciano invariate quelle di {@link AlarmBand#DEFAULTS}.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+@Service
+public class AlarmThresholdService {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare informazioni ed errori relativi alle soglie di allarme.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AlarmThresholdService.class);
+
+    /**
+     * Costruttore del servizio.
+     */
+    public AlarmThresholdService() {
+        // Costruttore vuoto: il servizio non ha stato.
+    }
+
+    /**
+     * Recupera le soglie personalizzate di uno scenario.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @return Le soglie per nome del parametro; una mappa vuota se non ce ne sono o in caso di errore.
+     */
+    public Map<String, AlarmBand> getOverrides(int scenarioId) {
+        final String sql = "SELECT * FROM SogliaAllarme WHERE id_scenario = ?";
+        Map<String, AlarmBand> overrides = new HashMap<>();
+
+        try (Connection conn = DBConnect.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, scenarioId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                overrides.put(rs.getString("parametro"), new AlarmBand(
+                        getDouble(rs, "critico_min"),
+                        getDouble(rs, "attenzione_min"),
+                        getDouble(rs, "attenzione_max"),
+                        getDouble(rs, "critico_max"),
+                        getDouble(rs, "isteresi"),
+                        rs.getInt("latch") != 0,
+                        false));
+            }
+            logger.debug("Recuperate {} soglie di allarme personalizzate per lo scenario con ID {}.", overrides.size(), scenarioId);
+        } catch (SQLException e) {
+            logger.error("Errore durante il recupero delle soglie di allarme per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
+        }
+        return overrides;
+    }
+
+    /**
+     * Salva le soglie personalizzate di un parametro di uno scenario, sostituendo quelle già presenti.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @param parametro  Il nome del parametro (es. "FC" o il nome di un parametro aggiuntivo).
+     * @param band       Le soglie; quelle {@link Double#NaN} restano quelle predefinite.
+     * @return <code>true</code> se il salvataggio è riuscito; <code>false</code> altrimenti.
+     */
+    public boolean saveOverride(int scenarioId, String parametro, AlarmBand band) {
+        final String sql = "INSERT OR REPLACE INTO SogliaAllarme (id_scenario, parametro, critico_min, attenzione_min, " +
+                "attenzione_max, critico_max, isteresi, latch) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try {
+            DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, scenarioId);
+                    stmt.setString(2, parametro);
+                    setDouble(stmt, 3, band.criticalLow());
+                    setDouble(stmt, 4, band.warningLow());
+                    setDouble(stmt, 5, band.warningHigh());
+                    setDouble(stmt, 6, band.criticalHigh());
+                    setDouble(stmt, 7, band.hysteresis());
+                    stmt.setInt(8, band.latching() ? 1 : 0);
+                    return stmt.executeUpdate();
+                }
+            });
+            logger.info("Soglie di allarme di '{}' salvate per lo scenario con ID {}.", parametro, scenarioId);
+            return true;
+        } catch (SQLException e) {
+            logger.error("Errore durante il salvataggio delle soglie di allarme di '{}' per lo scenario con ID {}: {}",
+                    parametro, scenarioId, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Elimina le soglie personalizzate di un parametro di uno scenario, che torna a quelle predefinite.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @param parametro  Il nome del parametro.
+     * @return <code>true</code> se l'eliminazione è riuscita; <code>false</code> altrimenti.
+     */
+    public boolean deleteOverride(int scenarioId, String parametro) {
+        final String sql = "DELETE FROM SogliaAllarme WHERE id_scenario = ? AND parametro = ?";
+        try {
+            int deleted = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, scenarioId);
+                    stmt.setString(2, parametro);
+                    return stmt.executeUpdate();
+                }
+            });
+            logger.info("Eliminate {} soglie di allarme di '{}' per lo scenario con ID {}.", deleted, parametro, scenarioId);
+            return true;
+        } catch (SQLException e) {
+            logger.error("Errore durante l'eliminazione delle soglie di allarme di '{}' per lo scenario con ID {}: {}",
+                    parametro, scenarioId, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Legge una colonna numerica che può essere <code>NULL</code>.
+     *
+     * @param rs     Il risultato della query.
+     * @param column Il nome della colonna.
+     * @return Il valore, o {@link Double#NaN} se <code>NULL</code>.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private static double getDouble(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    /**
+     * Imposta un parametro numerico, scrivendo <code>NULL</code> per {@link Double#NaN}.
+     *
+     * @param stmt  La query.
+     * @param index La posizione del parametro.
+     * @param value Il valore.
+     * @throws SQLException se l'impostazione fallisce.
+     */
+    private static void setDouble(PreparedStatement stmt, int index, double value) throws SQLException {
+        if (Double.isNaN(value)) {
+            stmt.setNull(index, Types.REAL);
+        } else {
+            stmt.setDouble(index, value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package it.uniupo.simnova.service.execution.clock;
+
+/**
+ * L'orologio di una sessione di esecuzione: fornisce l'istante corrente, programma i timer della sessione
+ * e ne esegue il lavoro.
+ * <p>
+ * Una sessione normale usa un {@link WallClock}, con il tempo reale, la ruota dei timer condivisa e i worker del motore.
+ * Una prova usa un {@link VirtualClock}, in cui il tempo avanza solo da una scadenza alla successiva:
+ * lo scenario può essere percorso più velocemente del tempo reale e, a parità di comandi, sempre allo stesso modo.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public interface SessionClock {
+
+    /**
+     * Restituisce l'istante corrente.
+     *
+     * @return L'istante in nanosecondi, confrontabile solo con altri istanti dello stesso orologio.
+     */
+    long nanoTime();
+
+    /**
+     * Programma un timer.
+     *
+     * @param deadlineNanos La scadenza, nel tempo di questo orologio.
+     * @param task          L'attività da eseguire alla scadenza; non deve bloccare.
+     * @return Il timer, per annullarlo.
+     */
+    Cancellable schedule(long deadlineNanos, Runnable task);
+
+    /**
+     * Sospende tutti i timer, conservando il tempo mancante di ciascuno.
+     */
+    void pause();
+
+    /**
+     * Riprende i timer dal tempo mancante al momento della sospensione.
+     */
+    void resume();
+
+    /**
+     * Anticipa tutti i timer, anche se sospesi.
+     *
+     * @param millis I millisecondi di cui avanzare.
+     */
+    void fastForward(long millis);
+
+    /**
+     * Annulla tutti i timer.
+     */
+    void cancelAll();
+
+    /**
+     * Esegue un'attività della sessione, ad esempio lo svuotamento della coda dei comandi.
+     *
+     * @param task L'attività.
+     */
+    void execute(Runnable task);
+
+    /**
+     * Indica se il tempo dell'orologio è virtuale.
+     *
+     * @return <code>true</code> se il tempo non è quello reale.
+     */
+    boolean isVirtual();
+
+    /**
+     * Un timer programmato.
+     */
+    @FunctionalInterface
+    interface Cancellable {
+
+        /**
+         * Annulla il timer.
+         *
+         * @return <code>true</code> se il timer era in attesa.
+         */
+        boolean cancel();
+    }
+}
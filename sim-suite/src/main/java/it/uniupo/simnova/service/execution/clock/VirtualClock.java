@@ -0,0 +1,447 @@
+package it.uniupo.simnova.service.execution.clock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Orologio a tempo virtuale per le prove degli scenari: il tempo non scorre da solo, ma viene fatto avanzare
+ * da {@link #run(double, long, BooleanSupplier)} sul thread che la chiama.
+ * <p>
+ * Il thread che fa avanzare l'orologio esegue anche tutto il lavoro della sessione, in ordine: prima le attività
+ * accodate, poi il prossimo evento tra le scadenze dei timer e il tick periodico. Alla velocità massima il tempo
+ * salta da un evento al successivo, quindi un'intera sessione dura quanto il calcolo delle sue transizioni;
+ * senza comandi esterni l'esecuzione è deterministica, perché gli eventi allo stesso istante vengono gestiti
+ * nell'ordine in cui sono stati programmati. A velocità finita il tempo virtuale scorre come quello reale moltiplicato
+ * per la velocità, e i comandi inviati durante l'attesa ricevono l'istante virtuale corrente.
+ * </p>
+ * <p>
+ * Il tempo parte da {@link #ORIGIN_NANOS} e non da zero, che le sessioni usano per indicare una scadenza assente.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class VirtualClock implements SessionClock {
+
+    /**
+     * Velocità con cui il tempo salta direttamente al prossimo evento.
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    /**
+     * L'istante iniziale del tempo virtuale.
+     */
+    public static final long ORIGIN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le attività fallite.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(VirtualClock.class);
+
+    /**
+     * Attesa massima tra due controlli durante un'esecuzione a velocità finita.
+     */
+    private static final long PACING_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Come è terminata un'esecuzione.
+     */
+    public enum Outcome {
+        /**
+         * La condizione di arresto si è verificata.
+         */
+        STOPPED,
+        /**
+         * Alla velocità massima non restavano attività né timer: la sessione attende un comando.
+         */
+        IDLE,
+        /**
+         * Il tempo virtuale ha raggiunto il limite.
+         */
+        HORIZON
+    }
+
+    /**
+     * I timer in attesa, dalla prima scadenza. Protetti dal monitor.
+     */
+    private final PriorityQueue<Entry> timers = new PriorityQueue<>();
+
+    /**
+     * I timer sospesi. Protetti dal monitor.
+     */
+    private final List<Entry> suspended = new ArrayList<>();
+
+    /**
+     * Le attività da eseguire prima del prossimo evento. Protette dal monitor.
+     */
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    /**
+     * L'istante virtuale corrente; scritto con il monitor, leggibile da qualunque thread.
+     */
+    private volatile long now = ORIGIN_NANOS;
+
+    /**
+     * Il thread che fa avanzare l'orologio, da risvegliare quando arriva lavoro.
+     */
+    private volatile Thread driver;
+
+    // Stato protetto dal monitor.
+    private long sequence;
+    private boolean paused;
+    private LongConsumer ticker;
+    private long tickNanos;
+    private long nextTick;
+    private long events;
+
+    /**
+     * Restituisce l'istante virtuale corrente.
+     *
+     * @return L'istante, da {@link #ORIGIN_NANOS}.
+     */
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Programma un timer alla scadenza indicata, o all'istante corrente se la scadenza è già passata.
+     *
+     * @param deadlineNanos La scadenza, nel tempo virtuale.
+     * @param task          L'attività da eseguire, sul thread dell'orologio.
+     * @return Il timer.
+     */
+    @Override
+    public Cancellable schedule(long deadlineNanos, Runnable task) {
+        Entry entry;
+        synchronized (this) {
+            entry = new Entry(Math.max(now, deadlineNanos), sequence++, task);
+            if (paused) {
+                entry.remaining = entry.deadline - now;
+                suspended.add(entry);
+            } else {
+                timers.add(entry);
+            }
+        }
+        LockSupport.unpark(driver);
+        return entry;
+    }
+
+    /**
+     * Sospende i timer, conservando il tempo mancante di ciascuno.
+     */
+    @Override
+    public synchronized void pause() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        for (Entry entry : timers) {
+            entry.remaining = Math.max(0L, entry.deadline - now);
+            suspended.add(entry);
+        }
+        timers.clear();
+    }
+
+    /**
+     * Riprende i timer dall'istante corrente.
+     */
+    @Override
+    public void resume() {
+        synchronized (this) {
+            if (!paused) {
+                return;
+            }
+            paused = false;
+            for (Entry entry : suspended) {
+                entry.deadline = now + entry.remaining;
+                timers.add(entry);
+            }
+            suspended.clear();
+        }
+        LockSupport.unpark(driver);
+    }
+
+    /**
+     * Anticipa i timer; quelli che scadono nell'intervallo scadono all'istante corrente.
+     *
+     * @param millis I millisecondi di cui avanzare.
+     */
+    @Override
+    public void fastForward(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        synchronized (this) {
+            if (paused) {
+                for (Entry entry : suspended) {
+                    entry.remaining = Math.max(0L, entry.remaining - nanos);
+                }
+                return;
+            }
+            List<Entry> moved = new ArrayList<>(timers);
+            timers.clear();
+            for (Entry entry : moved) {
+                entry.deadline = Math.max(now, entry.deadline - nanos);
+                timers.add(entry);
+            }
+        }
+        LockSupport.unpark(driver);
+    }
+
+    /**
+     * Annulla tutti i timer, sospesi compresi.
+     */
+    @Override
+    public synchronized void cancelAll() {
+        timers.forEach(entry -> entry.pending = false);
+        suspended.forEach(entry -> entry.pending = false);
+        timers.clear();
+        suspended.clear();
+    }
+
+    /**
+     * Accoda un'attività, eseguita dal thread dell'orologio prima del prossimo evento.
+     *
+     * @param task L'attività.
+     */
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            tasks.add(task);
+        }
+        LockSupport.unpark(driver);
+    }
+
+    /**
+     * Indica che il tempo è virtuale.
+     *
+     * @return <code>true</code>.
+     */
+    @Override
+    public boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Imposta un'attività periodica, ad esempio l'avanzamento dei parametri vitali. Il tick non tiene attivo
+     * l'orologio: alla velocità massima viene eseguito solo fino all'ultima scadenza dei timer.
+     *
+     * @param periodNanos Il periodo, nel tempo virtuale.
+     * @param task        L'attività, che riceve l'istante del tick; <code>null</code> per rimuovere il tick.
+     */
+    public synchronized void setTicker(long periodNanos, LongConsumer task) {
+        this.ticker = task;
+        this.tickNanos = Math.max(1L, periodNanos);
+        this.nextTick = now + tickNanos;
+    }
+
+    /**
+     * Restituisce il numero di eventi gestiti: scadenze dei timer e tick.
+     *
+     * @return Gli eventi gestiti dall'avvio.
+     */
+    public synchronized long getEvents() {
+        return events;
+    }
+
+    /**
+     * Fa avanzare l'orologio sul thread corrente, eseguendo attività, timer e tick, finché si verifica
+     * la condizione di arresto o il tempo raggiunge il limite.
+     *
+     * @param speed        Il rapporto tra tempo virtuale e tempo reale, ad esempio <code>10</code>;
+     *                     {@link #MAX_SPEED} per saltare da un evento al successivo.
+     * @param horizonNanos L'istante virtuale oltre il quale l'esecuzione si ferma.
+     * @param stopped      La condizione di arresto, controllata prima di ogni passo.
+     * @return Come è terminata l'esecuzione.
+     */
+    public Outcome run(double speed, long horizonNanos, BooleanSupplier stopped) {
+        boolean paced = speed < MAX_SPEED;
+        long realStart = System.nanoTime();
+        long virtualStart = now;
+        driver = Thread.currentThread();
+        try {
+            while (!stopped.getAsBoolean()) {
+                Runnable task;
+                LongConsumer tick = null;
+                long waitNanos = 0;
+                synchronized (this) {
+                    long target = paced ? virtualStart + (long) ((System.nanoTime() - realStart) * speed) : Long.MAX_VALUE;
+                    Entry timer = timers.peek();
+                    long next = timer != null ? timer.deadline : Long.MAX_VALUE;
+                    boolean ticking = ticker != null && (paced || timer != null);
+                    if (ticking && nextTick - next <= 0) {
+                        next = nextTick;
+                    }
+                    boolean hasNext = timer != null || ticking;
+
+                    task = tasks.poll();
+                    if (task == null) {
+                        if (!hasNext && !paced) {
+                            return Outcome.IDLE;
+                        }
+                        if (paced ? target - horizonNanos >= 0 : next - horizonNanos > 0) {
+                            now = Math.max(now, horizonNanos);
+                            return Outcome.HORIZON;
+                        }
+                        if (hasNext && target - next >= 0) {
+                            now = Math.max(now, next);
+                            events++;
+                            if (ticking && next == nextTick) {
+                                tick = ticker;
+                                nextTick += tickNanos;
+                            } else {
+                                timers.poll().pending = false;
+                                task = timer.task;
+                            }
+                        } else {
+                            now = Math.max(now, target); // Tempo virtuale che scorre durante l'attesa.
+                            waitNanos = hasNext ? (long) Math.ceil((next - target) / speed) : PACING_CHECK_NANOS;
+                        }
+                    } else if (paced) {
+                        now = Math.max(now, Math.min(target, next));
+                    }
+                }
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(this, Math.min(waitNanos, PACING_CHECK_NANOS));
+                } else if (tick != null) {
+                    runSafely(tick, now);
+                } else {
+                    runSafely(task);
+                }
+            }
+            return Outcome.STOPPED;
+        } finally {
+            driver = null;
+        }
+    }
+
+    /**
+     * Esegue tutte le attività accodate senza far avanzare il tempo, ad esempio l'arresto di una sessione
+     * dopo che {@link #run(double, long, BooleanSupplier)} è terminato.
+     */
+    public void runPending() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+            }
+            if (task == null) {
+                return;
+            }
+            runSafely(task);
+        }
+    }
+
+    /**
+     * Esegue un'attività, registrando le eccezioni senza interrompere l'orologio.
+     *
+     * @param task L'attività.
+     */
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.error("Attività fallita sull'orologio virtuale", e);
+        }
+    }
+
+    /**
+     * Esegue il tick, registrando le eccezioni senza interrompere l'orologio.
+     *
+     * @param tick Il tick.
+     * @param at   L'istante del tick.
+     */
+    private static void runSafely(LongConsumer tick, long at) {
+        try {
+            tick.accept(at);
+        } catch (RuntimeException e) {
+            logger.error("Tick fallito sull'orologio virtuale", e);
+        }
+    }
+
+    /**
+     * Un timer programmato, ordinato per scadenza e poi per ordine di programmazione.
+     */
+    private final class Entry implements Cancellable, Comparable<Entry> {
+
+        /**
+         * L'ordine di programmazione, per gli eventi allo stesso istante.
+         */
+        private final long sequence;
+
+        /**
+         * L'attività da eseguire.
+         */
+        private final Runnable task;
+
+        /**
+         * La scadenza, nel tempo virtuale.
+         */
+        private long deadline;
+
+        /**
+         * I nanosecondi mancanti mentre l'orologio è sospeso.
+         */
+        private long remaining;
+
+        /**
+         * Indica se il timer è ancora in attesa.
+         */
+        private boolean pending = true;
+
+        /**
+         * Crea un timer.
+         *
+         * @param deadline La scadenza.
+         * @param sequence L'ordine di programmazione.
+         * @param task     L'attività.
+         */
+        private Entry(long deadline, long sequence, Runnable task) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        /**
+         * Annulla il timer.
+         *
+         * @return <code>true</code> se il timer era in attesa.
+         */
+        @Override
+        public boolean cancel() {
+            synchronized (VirtualClock.this) {
+                if (!pending) {
+                    return false;
+                }
+                pending = false;
+                if (!timers.remove(this)) {
+                    suspended.remove(this);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Confronta due timer per scadenza e ordine di programmazione.
+         *
+         * @param other L'altro timer.
+         * @return Il risultato del confronto.
+         */
+        @Override
+        public int compareTo(Entry other) {
+            int byDeadline = Long.compare(deadline, other.deadline);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package it.uniupo.simnova.service.execution.clock;
+
+import it.uniupo.simnova.utils.timer.TimerGroup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * L'orologio delle sessioni normali: tempo reale da {@link System#nanoTime()}, timer su un gruppo della ruota
+ * condivisa e lavoro sui worker del motore.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class WallClock implements SessionClock {
+
+    /**
+     * Un millisecondo in nanosecondi, la risoluzione della ruota.
+     */
+    private static final long MILLI_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * I timer della sessione sulla ruota condivisa.
+     */
+    private final TimerGroup timers;
+
+    /**
+     * L'esecutore del lavoro delle sessioni.
+     */
+    private final Executor workers;
+
+    /**
+     * Crea l'orologio di una sessione.
+     *
+     * @param timers  Il gruppo di timer della sessione.
+     * @param workers L'esecutore del lavoro delle sessioni.
+     */
+    public WallClock(TimerGroup timers, Executor workers) {
+        this.timers = timers;
+        this.workers = workers;
+    }
+
+    /**
+     * Restituisce il tempo reale.
+     *
+     * @return {@link System#nanoTime()}.
+     */
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Programma un timer sulla ruota, arrotondando il ritardo al millisecondo per eccesso: il timer non scade
+     * mai prima della scadenza.
+     *
+     * @param deadlineNanos La scadenza, in {@link System#nanoTime()}.
+     * @param task          L'attività da eseguire, sul thread della ruota.
+     * @return Il timer.
+     */
+    @Override
+    public Cancellable schedule(long deadlineNanos, Runnable task) {
+        long delayMillis = Math.ceilDiv(Math.max(0L, deadlineNanos - System.nanoTime()), MILLI_NANOS);
+        return timers.schedule(delayMillis, task)::cancel;
+    }
+
+    /**
+     * Sospende i timer del gruppo sulla ruota.
+     */
+    @Override
+    public void pause() {
+        timers.pause();
+    }
+
+    /**
+     * Riprende i timer del gruppo sulla ruota.
+     */
+    @Override
+    public void resume() {
+        timers.resume();
+    }
+
+    /**
+     * Anticipa i timer del gruppo sulla ruota.
+     *
+     * @param millis I millisecondi di cui avanzare.
+     */
+    @Override
+    public void fastForward(long millis) {
+        timers.fastForward(millis);
+    }
+
+    /**
+     * Annulla i timer del gruppo sulla ruota.
+     */
+    @Override
+    public void cancelAll() {
+        timers.cancelAll();
+    }
+
+    /**
+     * Esegue l'attività su un worker del motore.
+     *
+     * @param task L'attività.
+     */
+    @Override
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Indica che il tempo è quello reale.
+     *
+     * @return <code>false</code>.
+     */
+    @Override
+    public boolean isVirtual() {
+        return false;
+    }
+}
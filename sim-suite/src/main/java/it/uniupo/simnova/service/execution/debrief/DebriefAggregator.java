@@ -0,0 +1,298 @@
+package it.uniupo.simnova.service.execution.debrief;
+
+import it.uniupo.simnova.service.execution.ExecutionSession.CommandType;
+import it.uniupo.simnova.service.execution.alarm.AlarmEvaluator;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.AlarmTime;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.KeyActionTime;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.PathStep;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.TempoTime;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.Transition;
+import it.uniupo.simnova.service.execution.journal.JournalEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Calcola incrementalmente il riepilogo di una sessione dagli eventi del suo diario.
+ * <p>
+ * Ogni evento aggiorna in tempo costante gli aggregati: tempo all'azione delle azioni chiave, tempo e ingressi
+ * per tempo, percorso seguito e tempo in allarme per parametro. Lo stesso aggregatore riceve gli eventi di una
+ * sessione in corso, come ascoltatore del suo diario, o quelli letti da un diario registrato: il riepilogo
+ * di una sessione attiva è quindi disponibile in ogni momento senza rileggere il diario.
+ * </p>
+ * <p>
+ * Il tempo effettivo riproduce quello della sessione: le pause lo fermano e gli avanzamenti rapidi lo anticipano,
+ * con le stesse regole con cui la sessione applica i comandi.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class DebriefAggregator implements Consumer<JournalEvent> {
+
+    /**
+     * I nomi dei canali degli allarmi; i canali oltre l'ultimo nome vengono indicati con il loro numero.
+     */
+    private final String[] channelNames;
+
+    /**
+     * Numero massimo di passi del percorso conservati.
+     */
+    private final int maxPath;
+
+    /**
+     * Primo istante di esecuzione delle azioni chiave, in nanosecondi effettivi, per nome.
+     */
+    private final Map<String, Long> keyActions = new LinkedHashMap<>();
+
+    /**
+     * Ingressi e nanosecondi trascorsi per tempo, nell'ordine della prima visita.
+     */
+    private final Map<Integer, long[]> tempi = new LinkedHashMap<>();
+
+    /**
+     * Il percorso seguito.
+     */
+    private final List<PathStep> path = new ArrayList<>();
+
+    // Stato degli allarmi per canale, esteso quando arriva un canale nuovo.
+    private byte[] alarmLevels = new byte[0];
+    private long[] alarmSince = new long[0];
+    private long[] warningNanos = new long[0];
+    private long[] criticalNanos = new long[0];
+    private int[] episodes = new int[0];
+
+    // Stato della sessione ricostruito dagli eventi.
+    private long sessionId;
+    private int scenarioId;
+    private long startedEpochMillis;
+    private long startOffset = -1;       // -1 finché l'avvio non è stato ricevuto.
+    private long lastOffset;
+    private boolean running;
+    private boolean paused;
+    private long pausedAt;
+    private long pausedTotal;
+    private long forwarded;
+    private boolean ended;
+    private String endReason;
+    private long endEffective;
+    private boolean inTempo;
+    private int currentTempo;
+    private long currentSince;
+    private Transition pendingVia = Transition.START;
+    private long pathDropped;
+
+    /**
+     * Crea un aggregatore.
+     *
+     * @param channelNames I nomi dei canali degli allarmi, come in {@link AlarmEvaluator#channelName(int)}.
+     * @param maxPath      Il numero massimo di passi del percorso da conservare; i successivi vengono solo contati.
+     */
+    public DebriefAggregator(String[] channelNames, int maxPath) {
+        this.channelNames = channelNames.clone();
+        this.maxPath = maxPath;
+    }
+
+    /**
+     * Aggiorna gli aggregati con un evento. Gli eventi vanno consegnati nell'ordine del diario;
+     * quelli successivi alla fine della sessione vengono ignorati.
+     *
+     * @param event L'evento.
+     */
+    @Override
+    public synchronized void accept(JournalEvent event) {
+        if (ended) {
+            return;
+        }
+        long offset = event.offsetNanos();
+        lastOffset = Math.max(lastOffset, offset);
+        switch (event) {
+            case JournalEvent.Started s -> {
+                sessionId = s.sessionId();
+                scenarioId = s.scenarioId();
+                startedEpochMillis = s.epochMillis();
+                startOffset = offset;
+                running = true;
+            }
+            case JournalEvent.Entered e -> enter(e.tempoId(), effective(offset));
+            case JournalEvent.Command c -> command(c.type(), c.argument(), offset);
+            case JournalEvent.KeyAction k -> keyActions.putIfAbsent(k.name(), effective(offset));
+            case JournalEvent.Alarm a -> alarm(a.channel(), a.level(), effective(offset));
+            case JournalEvent.Ended e -> {
+                endEffective = effective(offset);
+                ended = true;
+                endReason = e.reason();
+            }
+            case JournalEvent.VitalOverride ignored -> {
+            }
+        }
+    }
+
+    /**
+     * Restituisce il riepilogo all'ultimo evento ricevuto.
+     *
+     * @return Il riepilogo; per una sessione in corso, i tempi sono fermi all'ultimo evento.
+     */
+    public synchronized SessionDebrief snapshot() {
+        return snapshot(lastOffset);
+    }
+
+    /**
+     * Restituisce il riepilogo a un istante, chiudendo a quell'istante il tempo corrente e gli allarmi in corso.
+     * Il costo dipende dal numero di tempi, parametri e passi, non dalla lunghezza del diario.
+     *
+     * @param offsetNanos L'istante, in nanosecondi dall'inizio della sessione; ignorato se la sessione è terminata.
+     * @return Il riepilogo.
+     */
+    public synchronized SessionDebrief snapshot(long offsetNanos) {
+        long now = ended ? endEffective : effective(Math.max(offsetNanos, lastOffset));
+
+        List<KeyActionTime> actions = new ArrayList<>(keyActions.size());
+        keyActions.forEach((name, at) -> actions.add(new KeyActionTime(name, millis(at))));
+
+        List<TempoTime> times = new ArrayList<>(tempi.size());
+        tempi.forEach((tempoId, stats) -> {
+            long nanos = stats[1] + (inTempo && tempoId == currentTempo ? now - currentSince : 0);
+            times.add(new TempoTime(tempoId, (int) stats[0], millis(nanos)));
+        });
+
+        List<AlarmTime> alarmTimes = new ArrayList<>();
+        for (int c = 0; c < alarmLevels.length; c++) {
+            long warning = warningNanos[c] + (alarmLevels[c] == AlarmEvaluator.WARNING ? now - alarmSince[c] : 0);
+            long critical = criticalNanos[c] + (alarmLevels[c] == AlarmEvaluator.CRITICAL ? now - alarmSince[c] : 0);
+            if (episodes[c] > 0) {
+                alarmTimes.add(new AlarmTime(c, channelName(c), millis(warning), millis(critical), episodes[c]));
+            }
+        }
+
+        return new SessionDebrief(sessionId, scenarioId, startedEpochMillis, millis(now), ended, endReason,
+                List.copyOf(actions), List.copyOf(times), List.copyOf(path), pathDropped, List.copyOf(alarmTimes));
+    }
+
+    /**
+     * Applica un comando: aggiorna pause e avanzamenti e ricorda la causa della prossima transizione.
+     *
+     * @param type     Il tipo di comando.
+     * @param argument L'argomento.
+     * @param offset   L'istante del comando.
+     */
+    private void command(CommandType type, long argument, long offset) {
+        switch (type) {
+            case ACTION_PERFORMED -> pendingVia = Transition.SI;
+            case ACTION_MISSED -> pendingVia = Transition.NO;
+            case TIMER -> pendingVia = Transition.TIMEOUT;
+            case PAUSE -> {
+                if (running && !paused) {
+                    paused = true;
+                    pausedAt = offset;
+                }
+            }
+            case RESUME -> {
+                if (paused) {
+                    paused = false;
+                    pausedTotal += offset - pausedAt;
+                }
+            }
+            case FAST_FORWARD -> {
+                if (argument > 0) {
+                    forwarded += TimeUnit.MILLISECONDS.toNanos(argument);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Registra l'ingresso in un tempo, chiudendo il tempo precedente.
+     *
+     * @param tempoId   L'ID del tempo.
+     * @param effective L'istante effettivo dell'ingresso.
+     */
+    private void enter(int tempoId, long effective) {
+        if (inTempo) {
+            tempi.get(currentTempo)[1] += effective - currentSince;
+        }
+        long[] stats = tempi.computeIfAbsent(tempoId, id -> new long[2]);
+        stats[0]++;
+        inTempo = true;
+        currentTempo = tempoId;
+        currentSince = effective;
+        if (path.size() < maxPath) {
+            path.add(new PathStep(tempoId, path.isEmpty() && pathDropped == 0 ? Transition.START : pendingVia, millis(effective)));
+        } else {
+            pathDropped++;
+        }
+    }
+
+    /**
+     * Registra un cambio del livello di allarme di un canale.
+     *
+     * @param channel   Il canale.
+     * @param level     Il nuovo livello.
+     * @param effective L'istante effettivo del cambio.
+     */
+    private void alarm(int channel, int level, long effective) {
+        if (channel < 0) {
+            return;
+        }
+        if (channel >= alarmLevels.length) {
+            int size = Math.max(channel + 1, alarmLevels.length * 2);
+            alarmLevels = Arrays.copyOf(alarmLevels, size);
+            alarmSince = Arrays.copyOf(alarmSince, size);
+            warningNanos = Arrays.copyOf(warningNanos, size);
+            criticalNanos = Arrays.copyOf(criticalNanos, size);
+            episodes = Arrays.copyOf(episodes, size);
+        }
+        long held = Math.max(0L, effective - alarmSince[channel]); // Gli allarmi arrivano da un altro thread.
+        if (alarmLevels[channel] == AlarmEvaluator.WARNING) {
+            warningNanos[channel] += held;
+        } else if (alarmLevels[channel] == AlarmEvaluator.CRITICAL) {
+            criticalNanos[channel] += held;
+        }
+        if (alarmLevels[channel] == AlarmEvaluator.NORMAL && level > AlarmEvaluator.NORMAL) {
+            episodes[channel]++;
+        }
+        alarmLevels[channel] = (byte) level;
+        alarmSince[channel] = effective;
+    }
+
+    /**
+     * Converte un istante del diario in tempo effettivo dall'avvio.
+     *
+     * @param offset L'istante, in nanosecondi dall'inizio della sessione.
+     * @return I nanosecondi effettivi dall'avvio, pause escluse e avanzamenti inclusi.
+     */
+    private long effective(long offset) {
+        if (startOffset < 0) {
+            return 0;
+        }
+        long pausedNow = pausedTotal + (paused ? offset - pausedAt : 0);
+        return Math.max(0L, offset - startOffset - pausedNow + forwarded);
+    }
+
+    /**
+     * Restituisce il nome di un canale.
+     *
+     * @param channel Il canale.
+     * @return Il nome, o il numero del canale se il nome non è noto.
+     */
+    private String channelName(int channel) {
+        return channel < channelNames.length ? channelNames[channel] : "Canale " + channel;
+    }
+
+    /**
+     * Converte nanosecondi in millisecondi.
+     *
+     * @param nanos I nanosecondi.
+     * @return I millisecondi.
+     */
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
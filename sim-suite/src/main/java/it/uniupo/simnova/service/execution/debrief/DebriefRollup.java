@@ -0,0 +1,251 @@
+package it.uniupo.simnova.service.execution.debrief;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collector;
+
+/**
+ * Statistiche aggregate su un insieme di sessioni: tutte quelle di uno scenario, o un gruppo scelto dall'istruttore
+ * come le sessioni di un corso. Viene calcolato con {@link #collector()}, anche da uno stream parallelo:
+ * ogni thread aggrega una parte delle sessioni e i parziali vengono poi uniti.
+ *
+ * @param sessions           Il numero di sessioni.
+ * @param completed          Il numero di sessioni terminate.
+ * @param meanDurationMillis La durata media delle sessioni terminate.
+ * @param keyActions         Le statistiche delle azioni chiave, per nome.
+ * @param tempi              Le statistiche dei tempi, per ID.
+ * @param paths              Le firme dei percorsi seguiti con il numero di sessioni, dal più frequente.
+ * @param alarms             Le statistiche degli allarmi, per nome del parametro.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record DebriefRollup(int sessions, int completed, long meanDurationMillis, List<KeyActionStats> keyActions,
+                            List<TempoStats> tempi, Map<String, Integer> paths, List<AlarmStats> alarms) {
+
+    /**
+     * Statistiche di un'azione chiave.
+     *
+     * @param name         Il nome dell'azione chiave.
+     * @param performed    Il numero di sessioni in cui l'azione è stata eseguita.
+     * @param meanMillis   Il tempo all'azione medio, sulle sessioni in cui è stata eseguita.
+     * @param medianMillis Il tempo all'azione mediano.
+     * @param maxMillis    Il tempo all'azione massimo.
+     */
+    public record KeyActionStats(String name, int performed, long meanMillis, long medianMillis, long maxMillis) {
+    }
+
+    /**
+     * Statistiche di un tempo.
+     *
+     * @param tempoId    L'ID del tempo.
+     * @param sessions   Il numero di sessioni che lo hanno visitato.
+     * @param visits     Il numero totale di ingressi.
+     * @param meanMillis Il tempo medio trascorso nel tempo, sulle sessioni che lo hanno visitato.
+     * @param maxMillis  Il tempo massimo trascorso nel tempo in una sessione.
+     */
+    public record TempoStats(int tempoId, int sessions, long visits, long meanMillis, long maxMillis) {
+    }
+
+    /**
+     * Statistiche degli allarmi di un parametro.
+     *
+     * @param name               Il nome del parametro.
+     * @param sessions           Il numero di sessioni in cui il parametro è andato in allarme.
+     * @param episodes           Il numero totale di ingressi in allarme.
+     * @param meanWarningMillis  Il tempo medio al livello di attenzione, sulle sessioni con allarmi del parametro.
+     * @param meanCriticalMillis Il tempo medio al livello critico.
+     */
+    public record AlarmStats(String name, int sessions, long episodes, long meanWarningMillis, long meanCriticalMillis) {
+    }
+
+    /**
+     * Restituisce il collettore che aggrega i riepiloghi delle sessioni.
+     *
+     * @return Il collettore, utilizzabile anche in parallelo.
+     */
+    public static Collector<SessionDebrief, ?, DebriefRollup> collector() {
+        return Collector.of(Accumulator::new, Accumulator::add, Accumulator::merge, Accumulator::finish);
+    }
+
+    /**
+     * Aggregato parziale di un gruppo di sessioni.
+     */
+    private static final class Accumulator {
+
+        // Totali delle sessioni.
+        private int sessions;
+        private int completed;
+        private long durationTotal;
+
+        /**
+         * Tempi all'azione, per nome dell'azione.
+         */
+        private final Map<String, LongList> keyActions = new LinkedHashMap<>();
+
+        /**
+         * Per tempo: sessioni, ingressi, somma e massimo dei millisecondi.
+         */
+        private final Map<Integer, long[]> tempi = new HashMap<>();
+
+        /**
+         * Sessioni per firma del percorso.
+         */
+        private final Map<String, Integer> paths = new HashMap<>();
+
+        /**
+         * Per parametro: sessioni, episodi, somma dei millisecondi di attenzione e critici.
+         */
+        private final Map<String, long[]> alarms = new LinkedHashMap<>();
+
+        /**
+         * Aggiunge una sessione.
+         *
+         * @param debrief Il riepilogo della sessione.
+         */
+        private void add(SessionDebrief debrief) {
+            sessions++;
+            if (debrief.ended()) {
+                completed++;
+                durationTotal += debrief.elapsedMillis();
+            }
+            for (SessionDebrief.KeyActionTime action : debrief.keyActions()) {
+                LongList times = keyActions.computeIfAbsent(action.name(), name -> new LongList());
+                if (action.millis() >= 0) {
+                    times.add(action.millis());
+                }
+            }
+            for (SessionDebrief.TempoTime tempo : debrief.tempi()) {
+                long[] stats = tempi.computeIfAbsent(tempo.tempoId(), id -> new long[4]);
+                stats[0]++;
+                stats[1] += tempo.visits();
+                stats[2] += tempo.millis();
+                stats[3] = Math.max(stats[3], tempo.millis());
+            }
+            paths.merge(debrief.pathSignature(), 1, Integer::sum);
+            for (SessionDebrief.AlarmTime alarm : debrief.alarms()) {
+                long[] stats = alarms.computeIfAbsent(alarm.name(), name -> new long[4]);
+                stats[0]++;
+                stats[1] += alarm.episodes();
+                stats[2] += alarm.warningMillis();
+                stats[3] += alarm.criticalMillis();
+            }
+        }
+
+        /**
+         * Unisce un altro parziale a questo.
+         *
+         * @param other Il parziale da unire.
+         * @return Questo parziale.
+         */
+        private Accumulator merge(Accumulator other) {
+            sessions += other.sessions;
+            completed += other.completed;
+            durationTotal += other.durationTotal;
+            other.keyActions.forEach((name, times) -> keyActions.computeIfAbsent(name, n -> new LongList()).addAll(times));
+            other.tempi.forEach((id, stats) -> tempi.merge(id, stats, (a, b) -> {
+                a[0] += b[0];
+                a[1] += b[1];
+                a[2] += b[2];
+                a[3] = Math.max(a[3], b[3]);
+                return a;
+            }));
+            other.paths.forEach((signature, count) -> paths.merge(signature, count, Integer::sum));
+            other.alarms.forEach((name, stats) -> alarms.merge(name, stats, (a, b) -> {
+                for (int k = 0; k < a.length; k++) {
+                    a[k] += b[k];
+                }
+                return a;
+            }));
+            return this;
+        }
+
+        /**
+         * Calcola le statistiche finali.
+         *
+         * @return Le statistiche del gruppo.
+         */
+        private DebriefRollup finish() {
+            List<KeyActionStats> actionStats = new ArrayList<>(keyActions.size());
+            keyActions.forEach((name, times) -> actionStats.add(times.stats(name)));
+
+            List<TempoStats> tempoStats = new ArrayList<>(tempi.size());
+            tempi.forEach((id, s) -> tempoStats.add(new TempoStats(id, (int) s[0], s[1], s[2] / s[0], s[3])));
+            tempoStats.sort(Comparator.comparingInt(TempoStats::tempoId));
+
+            Map<String, Integer> pathCounts = new LinkedHashMap<>();
+            paths.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .forEach(entry -> pathCounts.put(entry.getKey(), entry.getValue()));
+
+            List<AlarmStats> alarmStats = new ArrayList<>(alarms.size());
+            alarms.forEach((name, s) -> alarmStats.add(new AlarmStats(name, (int) s[0], s[1], s[2] / s[0], s[3] / s[0])));
+
+            return new DebriefRollup(sessions, completed, completed > 0 ? durationTotal / completed : 0,
+                    List.copyOf(actionStats), List.copyOf(tempoStats), Collections.unmodifiableMap(pathCounts), List.copyOf(alarmStats));
+        }
+    }
+
+    /**
+     * Elenco di <code>long</code> senza boxing, per le mediane dei tempi all'azione.
+     */
+    private static final class LongList {
+
+        /**
+         * I valori.
+         */
+        private long[] values = new long[8];
+
+        /**
+         * Il numero di valori.
+         */
+        private int size;
+
+        /**
+         * Aggiunge un valore.
+         *
+         * @param value Il valore.
+         */
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Aggiunge i valori di un altro elenco.
+         *
+         * @param other L'altro elenco.
+         */
+        private void addAll(LongList other) {
+            for (int k = 0; k < other.size; k++) {
+                add(other.values[k]);
+            }
+        }
+
+        /**
+         * Calcola le statistiche dei tempi all'azione.
+         *
+         * @param name Il nome dell'azione.
+         * @return Le statistiche; a zero se l'azione non è mai stata eseguita.
+         */
+        private KeyActionStats stats(String name) {
+            if (size == 0) {
+                return new KeyActionStats(name, 0, 0, 0, 0);
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            return new KeyActionStats(name, size, total / size, sorted[size / 2], sorted[size - 1]);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package it.uniupo.simnova.service.execution.debrief;
+
+import it.uniupo.simnova.service.execution.ExecutionEngine;
+import it.uniupo.simnova.service.execution.journal.JournalEvent;
+import it.uniupo.simnova.service.execution.journal.JournalReader;
+import it.uniupo.simnova.service.scenario.components.AzioneChiaveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Servizio per il debriefing delle sessioni di simulazione: riepilogo di una singola sessione e statistiche
+ * su più sessioni, per scenario o per un gruppo di sessioni scelto dall'istruttore.
+ * <p>
+ * Il riepilogo di una sessione attiva o appena terminata viene dal motore di esecuzione, che lo mantiene
+ * durante la sessione. Per le sessioni registrate il diario viene riletto una volta e il riepilogo conservato
+ * in una cache limitata. Le statistiche su più sessioni leggono i diari in parallelo su tutti i core.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+@Service
+public class DebriefService {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare i diari non leggibili.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DebriefService.class);
+
+    /**
+     * Numero di riepiloghi di sessioni registrate conservati, configurabile con la proprietà di sistema
+     * <code>simsuite.execution.debrief.cache-size</code>.
+     */
+    private static final int CACHE_SIZE = Integer.getInteger("simsuite.execution.debrief.cache-size", 1024);
+
+    /**
+     * Numero massimo di passi del percorso conservati per una sessione registrata.
+     */
+    private static final int MAX_PATH = 4096;
+
+    /**
+     * Il motore di esecuzione, per le sessioni attive e i diari registrati.
+     */
+    private final ExecutionEngine executionEngine;
+
+    /**
+     * Il servizio delle azioni chiave, per completare i riepiloghi con le azioni non eseguite.
+     */
+    private final AzioneChiaveService azioneChiaveService;
+
+    /**
+     * I riepiloghi delle sessioni registrate già terminate, per cartella del diario, dal meno recente.
+     * Protetto da sé stesso.
+     */
+    private final Map<Path, SessionDebrief> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, SessionDebrief> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Costruisce il servizio.
+     *
+     * @param executionEngine     Il motore di esecuzione.
+     * @param azioneChiaveService Il servizio delle azioni chiave.
+     */
+    public DebriefService(ExecutionEngine executionEngine, AzioneChiaveService azioneChiaveService) {
+        this.executionEngine = executionEngine;
+        this.azioneChiaveService = azioneChiaveService;
+    }
+
+    /**
+     * Restituisce il riepilogo di una sessione attiva o terminata di recente, con tutte le azioni chiave
+     * dello scenario.
+     *
+     * @param sessionId L'ID della sessione.
+     * @return Il riepilogo; <code>null</code> se la sessione non è disponibile nel motore.
+     */
+    public SessionDebrief getDebrief(long sessionId) {
+        SessionDebrief debrief = executionEngine.getDebrief(sessionId);
+        return debrief != null ? debrief.withExpectedActions(azioneChiaveService.getNomiAzioniChiaveByScenarioId(debrief.scenarioId())) : null;
+    }
+
+    /**
+     * Restituisce il riepilogo di una sessione registrata, con tutte le azioni chiave dello scenario.
+     *
+     * @param journalDir La cartella del diario della sessione.
+     * @return Il riepilogo; <code>null</code> se il diario non può essere letto.
+     */
+    public SessionDebrief getDebrief(Path journalDir) {
+        SessionDebrief debrief = read(journalDir);
+        return debrief != null ? debrief.withExpectedActions(azioneChiaveService.getNomiAzioniChiaveByScenarioId(debrief.scenarioId())) : null;
+    }
+
+    /**
+     * Calcola le statistiche di tutte le sessioni registrate, per scenario.
+     * Le azioni chiave mai eseguite compaiono con zero esecuzioni.
+     *
+     * @return Le statistiche per ID dello scenario.
+     */
+    public Map<Integer, DebriefRollup> rollupByScenario() {
+        Map<Integer, List<String>> expected = new ConcurrentHashMap<>();
+        return executionEngine.getJournals().parallelStream()
+                .map(this::read)
+                .filter(Objects::nonNull)
+                .map(debrief -> debrief.withExpectedActions(expected.computeIfAbsent(debrief.scenarioId(), azioneChiaveService::getNomiAzioniChiaveByScenarioId)))
+                .collect(Collectors.groupingByConcurrent(SessionDebrief::scenarioId, DebriefRollup.collector()));
+    }
+
+    /**
+     * Calcola le statistiche di un gruppo di sessioni registrate, ad esempio quelle di un corso.
+     *
+     * @param journalDirs Le cartelle dei diari delle sessioni del gruppo.
+     * @return Le statistiche del gruppo.
+     */
+    public DebriefRollup rollup(Collection<Path> journalDirs) {
+        Map<Integer, List<String>> expected = new ConcurrentHashMap<>();
+        return journalDirs.parallelStream()
+                .map(this::read)
+                .filter(Objects::nonNull)
+                .map(debrief -> debrief.withExpectedActions(expected.computeIfAbsent(debrief.scenarioId(), azioneChiaveService::getNomiAzioniChiaveByScenarioId)))
+                .collect(DebriefRollup.collector());
+    }
+
+    /**
+     * Calcola il riepilogo di una sessione registrata rileggendone il diario, o lo prende dalla cache.
+     * I riepiloghi delle sessioni non terminate non vengono conservati, perché il diario può ancora crescere.
+     *
+     * I nomi dei canali degli allarmi sono quelli registrati nel diario all'avvio, quindi restano corretti
+     * anche se lo scenario viene poi modificato o eliminato.
+     *
+     * @param journalDir La cartella del diario.
+     * @return Il riepilogo, o <code>null</code> se il diario non può essere letto.
+     */
+    private SessionDebrief read(Path journalDir) {
+        synchronized (cache) {
+            SessionDebrief cached = cache.get(journalDir);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        try {
+            List<JournalEvent> events = JournalReader.readAll(journalDir);
+            if (events.isEmpty() || !(events.getFirst() instanceof JournalEvent.Started started)) {
+                logger.warn("Il diario {} non contiene l'avvio della sessione.", journalDir);
+                return null;
+            }
+            DebriefAggregator aggregator = new DebriefAggregator(started.channels().toArray(String[]::new), MAX_PATH);
+            events.forEach(aggregator);
+            SessionDebrief debrief = aggregator.snapshot();
+            if (debrief.ended()) {
+                synchronized (cache) {
+                    cache.put(journalDir, debrief);
+                }
+            }
+            return debrief;
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Impossibile leggere il diario {}", journalDir, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package it.uniupo.simnova.service.execution.debrief;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Il riepilogo di una sessione per il debriefing, calcolato da {@link DebriefAggregator}.
+ * Tutti i tempi sono millisecondi di esecuzione effettiva dall'avvio: le pause sono escluse e gli avanzamenti
+ * rapidi inclusi, come nel tempo trascorso della sessione.
+ *
+ * @param sessionId          L'ID della sessione.
+ * @param scenarioId         L'ID dello scenario eseguito.
+ * @param startedEpochMillis L'ora di avvio, in millisecondi dall'epoca; <code>0</code> se l'avvio non è stato registrato.
+ * @param elapsedMillis      La durata della sessione, o il tempo trascorso finora se è ancora in corso.
+ * @param ended              <code>true</code> se la sessione è terminata.
+ * @param endReason          Il motivo della fine; <code>null</code> se la sessione è in corso.
+ * @param keyActions         Le azioni chiave, nell'ordine in cui sono state eseguite.
+ * @param tempi              Il tempo trascorso in ciascun tempo, nell'ordine della prima visita.
+ * @param path               Il percorso seguito, dal primo tempo.
+ * @param pathDropped        I passi del percorso non conservati perché oltre il limite.
+ * @param alarms             Il tempo in allarme dei parametri che sono stati almeno una volta in allarme.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record SessionDebrief(long sessionId, int scenarioId, long startedEpochMillis, long elapsedMillis, boolean ended,
+                             String endReason, List<KeyActionTime> keyActions, List<TempoTime> tempi, List<PathStep> path,
+                             long pathDropped, List<AlarmTime> alarms) {
+
+    /**
+     * Come si è arrivati in un tempo.
+     */
+    public enum Transition {
+        /**
+         * Primo tempo della sessione.
+         */
+        START,
+        /**
+         * Azione confermata dall'istruttore: transizione "se SI".
+         */
+        SI,
+        /**
+         * Azione non eseguita secondo l'istruttore: transizione "se NO".
+         */
+        NO,
+        /**
+         * Timer del tempo scaduto senza conferma: transizione "se NO".
+         */
+        TIMEOUT
+    }
+
+    /**
+     * Tempo all'azione di un'azione chiave.
+     *
+     * @param name   Il nome dell'azione chiave.
+     * @param millis I millisecondi dall'avvio alla prima esecuzione; <code>-1</code> se l'azione non è stata eseguita.
+     */
+    public record KeyActionTime(String name, long millis) {
+    }
+
+    /**
+     * Tempo trascorso in un tempo dello scenario.
+     *
+     * @param tempoId L'ID del tempo.
+     * @param visits  Il numero di ingressi.
+     * @param millis  I millisecondi trascorsi nel tempo, sommati su tutti gli ingressi.
+     */
+    public record TempoTime(int tempoId, int visits, long millis) {
+    }
+
+    /**
+     * Un passo del percorso.
+     *
+     * @param tempoId       L'ID del tempo.
+     * @param via           La transizione che ha portato nel tempo.
+     * @param enteredMillis I millisecondi dall'avvio all'ingresso.
+     */
+    public record PathStep(int tempoId, Transition via, long enteredMillis) {
+    }
+
+    /**
+     * Tempo in allarme di un parametro.
+     *
+     * @param channel        Il canale del parametro.
+     * @param name           Il nome del parametro.
+     * @param warningMillis  I millisecondi al livello di attenzione.
+     * @param criticalMillis I millisecondi al livello critico.
+     * @param episodes       Il numero di volte in cui il parametro è entrato in allarme.
+     */
+    public record AlarmTime(int channel, String name, long warningMillis, long criticalMillis, int episodes) {
+    }
+
+    /**
+     * Restituisce il percorso in forma compatta, ad esempio <code>T0 → T1 (NO) → T3 (SI)</code>.
+     * Due sessioni hanno la stessa firma se hanno percorso gli stessi tempi con le stesse transizioni.
+     *
+     * @return La firma del percorso.
+     */
+    public String pathSignature() {
+        StringBuilder sb = new StringBuilder(pathDropped > 0 ? "…" : "");
+        for (PathStep step : path) {
+            if (!sb.isEmpty()) {
+                sb.append(" → ");
+            }
+            sb.append('T').append(step.tempoId());
+            if (step.via() != Transition.START) {
+                sb.append(" (").append(step.via()).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Completa le azioni chiave con quelle dello scenario non eseguite, in fondo all'elenco.
+     *
+     * @param expected I nomi delle azioni chiave dello scenario.
+     * @return Il riepilogo con un {@link KeyActionTime} per ogni azione, eseguita o no.
+     */
+    public SessionDebrief withExpectedActions(List<String> expected) {
+        Map<String, KeyActionTime> byName = new LinkedHashMap<>();
+        for (KeyActionTime action : keyActions) {
+            byName.put(action.name(), action);
+        }
+        for (String name : expected) {
+            byName.putIfAbsent(name, new KeyActionTime(name, -1));
+        }
+        return new SessionDebrief(sessionId, scenarioId, startedEpochMillis, elapsedMillis, ended, endReason,
+                List.copyOf(new ArrayList<>(byName.values())), tempi, path, pathDropped, alarms);
+    }
+}
@@ -0,0 +1,101 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import it.uniupo.simnova.service.execution.ExecutionSession.CommandType;
+
+import java.util.List;
+
+/**
+ * Un evento del diario di una sessione, letto da {@link JournalReader}.
+ * Ogni evento riporta i nanosecondi trascorsi dalla creazione della sessione, pause comprese.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public sealed interface JournalEvent {
+
+    /**
+     * Restituisce l'istante dell'evento.
+     *
+     * @return I nanosecondi dall'inizio della sessione.
+     */
+    long offsetNanos();
+
+    /**
+     * Avvio della sessione.
+     *
+     * @param offsetNanos Istante dell'evento.
+     * @param sessionId   L'ID della sessione.
+     * @param scenarioId  L'ID dello scenario eseguito.
+     * @param epochMillis L'ora di avvio, in millisecondi dall'epoca.
+     * @param channels    I nomi dei canali degli allarmi al momento dell'avvio, nell'ordine dei canali; possono mancare
+     *                    gli ultimi se troppo lunghi, e sono assenti nei diari registrati prima che venissero salvati.
+     */
+    record Started(long offsetNanos, long sessionId, int scenarioId, long epochMillis, List<String> channels) implements JournalEvent {
+
+        /**
+         * Copia l'elenco dei nomi, così l'evento resta immutabile.
+         */
+        public Started {
+            channels = List.copyOf(channels);
+        }
+    }
+
+    /**
+     * Ingresso in un tempo, per l'avvio o per una transizione.
+     *
+     * @param offsetNanos Istante dell'evento.
+     * @param tempoId     L'ID del tempo.
+     */
+    record Entered(long offsetNanos, int tempoId) implements JournalEvent {
+    }
+
+    /**
+     * Comando applicato alla sessione: un comando dell'istruttore o lo scadere di un timer.
+     *
+     * @param offsetNanos Istante dell'evento.
+     * @param type        Il tipo di comando.
+     * @param argument    L'argomento del comando, se previsto.
+     */
+    record Command(long offsetNanos, CommandType type, long argument) implements JournalEvent {
+    }
+
+    /**
+     * Azione chiave segnata come eseguita dall'istruttore.
+     *
+     * @param offsetNanos Istante dell'evento.
+     * @param name        Il nome dell'azione chiave.
+     */
+    record KeyAction(long offsetNanos, String name) implements JournalEvent {
+    }
+
+    /**
+     * Parametro vitale impostato a mano dall'istruttore.
+     *
+     * @param offsetNanos Istante dell'evento.
+     * @param channel     Il canale dell'andamento.
+     * @param value       Il valore impostato.
+     */
+    record VitalOverride(long offsetNanos, int channel, double value) implements JournalEvent {
+    }
+
+    /**
+     * Cambio del livello di allarme segnalato di un parametro.
+     *
+     * @param offsetNanos   Istante dell'evento.
+     * @param channel       Il canale del parametro.
+     * @param previousLevel Il livello precedente.
+     * @param level         Il nuovo livello.
+     * @param value         Il valore che ha causato il cambio.
+     */
+    record Alarm(long offsetNanos, int channel, int previousLevel, int level, double value) implements JournalEvent {
+    }
+
+    /**
+     * Fine della sessione.
+     *
+     * @param offsetNanos Istante dell'evento.
+     * @param reason      Il motivo.
+     */
+    record Ended(long offsetNanos, String reason) implements JournalEvent {
+    }
+}
@@ -0,0 +1,335 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Formato binario dei segmenti del diario di sessione.
+ * <p>
+ * Un segmento inizia con un'intestazione fissa di {@link #HEADER_BYTES} byte (magic, versione, capacità, ID della
+ * sessione e dello scenario, indice del segmento) seguita dai record, little endian. Ogni record è:
+ * </p>
+ * <pre>
+ * int  lunghezza del record, intestazione compresa
+ * int  CRC32C dei byte dal tipo alla fine del record
+ * byte tipo
+ * var  nanosecondi dall'inizio della sessione
+ * ...  campi del tipo: interi a lunghezza variabile, double a 8 byte, stringhe UTF-8 precedute dalla lunghezza
+ * </pre>
+ * <p>
+ * Un segmento viene creato già della sua capacità, quindi azzerato: una lunghezza nulla, fuori dal segmento o un CRC
+ * che non corrisponde segnano la fine dei record validi.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+final class JournalFormat {
+
+    /**
+     * Magic dei segmenti: "SSJ1".
+     */
+    static final int MAGIC = 0x314A5353;
+
+    /**
+     * Versione del formato.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Byte dell'intestazione del segmento.
+     */
+    static final int HEADER_BYTES = 32;
+
+    /**
+     * Byte fissi di un record prima del tipo: lunghezza e CRC.
+     */
+    static final int RECORD_PREFIX = 8;
+
+    /**
+     * Lunghezza massima di una stringa codificata, in byte; le stringhe più lunghe vengono troncate.
+     */
+    static final int MAX_STRING_BYTES = 1024;
+
+    /**
+     * Byte massimi di un record esclusi lunghezza, CRC e il contenuto di una stringa: tipo, istante e campi fissi.
+     */
+    static final int MAX_FIXED_BYTES = 64;
+
+    /**
+     * Lunghezza massima di un record.
+     */
+    static final int MAX_RECORD_BYTES = RECORD_PREFIX + MAX_FIXED_BYTES + MAX_STRING_BYTES;
+
+    /**
+     * Estensione dei file di segmento.
+     */
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    // Tipi di record.
+    static final byte STARTED = 1;
+    static final byte ENTERED = 2;
+    static final byte COMMAND = 3;
+    static final byte KEY_ACTION = 4;
+    static final byte VITAL_OVERRIDE = 5;
+    static final byte ALARM = 6;
+    static final byte ENDED = 7;
+
+    /**
+     * Costruttore privato: la classe espone solo costanti e metodi statici.
+     */
+    private JournalFormat() {
+    }
+
+    /**
+     * Restituisce il nome del file di un segmento.
+     *
+     * @param index L'indice del segmento.
+     * @return Il nome, ordinabile alfabeticamente come l'indice.
+     */
+    static String segmentName(int index) {
+        return String.format("%06d%s", index, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Scrive l'intestazione di un segmento.
+     *
+     * @param buffer     Il segmento mappato.
+     * @param capacity   La capacità del segmento.
+     * @param sessionId  L'ID della sessione.
+     * @param scenarioId L'ID dello scenario.
+     * @param index      L'indice del segmento.
+     */
+    static void writeHeader(ByteBuffer buffer, int capacity, long sessionId, int scenarioId, int index) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putLong(12, sessionId);
+        buffer.putInt(20, scenarioId);
+        buffer.putInt(24, index);
+    }
+
+    /**
+     * Verifica l'intestazione di un segmento.
+     *
+     * @param buffer Il segmento mappato.
+     * @return La capacità dichiarata; <code>-1</code> se il file non è un segmento valido.
+     */
+    static int readCapacity(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            return -1;
+        }
+        return buffer.getInt(8);
+    }
+
+    /**
+     * Legge l'indice del segmento da un'intestazione già verificata con {@link #readCapacity(ByteBuffer)}.
+     *
+     * @param buffer Il segmento.
+     * @return L'indice del segmento nella sessione.
+     */
+    static int readIndex(ByteBuffer buffer) {
+        return buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(24);
+    }
+
+    /**
+     * Controlla il record che inizia in una posizione.
+     *
+     * @param buffer   Il segmento.
+     * @param position La posizione del record.
+     * @param crc      Il calcolatore del CRC, riusato.
+     * @return La lunghezza del record; <code>0</code> se nella posizione non c'è un record completo e integro.
+     */
+    static int validRecordLength(ByteBuffer buffer, int position, CRC32C crc) {
+        if (position + RECORD_PREFIX + 2 > buffer.limit()) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length < RECORD_PREFIX + 2 || length > MAX_RECORD_BYTES || position + length > buffer.limit()) {
+            return 0;
+        }
+        crc.reset();
+        crc.update(buffer.slice(position + RECORD_PREFIX, length - RECORD_PREFIX));
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? length : 0;
+    }
+
+    /**
+     * Trova la fine dell'ultimo record valido di un segmento.
+     *
+     * @param buffer Il segmento.
+     * @return La posizione successiva all'ultimo record valido.
+     */
+    static int scanValidEnd(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        int position = HEADER_BYTES;
+        int length;
+        while ((length = validRecordLength(buffer, position, crc)) > 0) {
+            position += length;
+        }
+        return position;
+    }
+
+    /**
+     * Scrive un intero a lunghezza variabile, 7 bit per byte.
+     *
+     * @param buffer Il buffer.
+     * @param value  Il valore, trattato come senza segno.
+     */
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Legge un intero a lunghezza variabile.
+     *
+     * @param buffer Il buffer.
+     * @return Il valore.
+     */
+    static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Intero a lunghezza variabile non valido");
+    }
+
+    /**
+     * Scrive un intero con segno, codificato zigzag perché i valori piccoli negativi restino brevi.
+     *
+     * @param buffer Il buffer.
+     * @param value  Il valore.
+     */
+    static void putSignedVarLong(ByteBuffer buffer, long value) {
+        putVarLong(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Legge un intero con segno codificato zigzag.
+     *
+     * @param buffer Il buffer.
+     * @return Il valore.
+     */
+    static long getSignedVarLong(ByteBuffer buffer) {
+        long raw = getVarLong(buffer);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Codifica una stringa in UTF-8, troncata a {@link #MAX_STRING_BYTES}.
+     *
+     * @param value La stringa; <code>null</code> è codificata vuota.
+     * @return I byte da passare a {@link #putString(ByteBuffer, byte[])}.
+     */
+    static byte[] encodeString(String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        return bytes.length > MAX_STRING_BYTES ? Arrays.copyOf(bytes, MAX_STRING_BYTES) : bytes;
+    }
+
+    /**
+     * Scrive una stringa già codificata, preceduta dalla lunghezza.
+     *
+     * @param buffer Il buffer.
+     * @param utf8   I byte della stringa, da {@link #encodeString(String)}.
+     */
+    static void putString(ByteBuffer buffer, byte[] utf8) {
+        putVarLong(buffer, utf8.length);
+        buffer.put(utf8);
+    }
+
+    /**
+     * Legge una stringa UTF-8 preceduta dalla lunghezza.
+     *
+     * @param buffer Il buffer.
+     * @return La stringa.
+     */
+    static String getString(ByteBuffer buffer) {
+        long length = getVarLong(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("Stringa più lunga del record: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Codifica un elenco di stringhe in UTF-8. L'elenco viene troncato prima della stringa che porterebbe
+     * il totale, lunghezze comprese, oltre {@link #MAX_STRING_BYTES}.
+     *
+     * @param values Le stringhe; <code>null</code> è codificata vuota.
+     * @return I byte delle stringhe da passare a {@link #putStrings(ByteBuffer, byte[][])}.
+     */
+    static byte[][] encodeStrings(String[] values) {
+        List<byte[]> encoded = new ArrayList<>(values.length);
+        int total = 0;
+        for (String value : values) {
+            byte[] utf8 = encodeString(value);
+            total += utf8.length + 2; // La lunghezza di una stringa troncata occupa al più due byte.
+            if (total > MAX_STRING_BYTES) {
+                break;
+            }
+            encoded.add(utf8);
+        }
+        return encoded.toArray(byte[][]::new);
+    }
+
+    /**
+     * Calcola i byte occupati da un elenco di stringhe già codificate, lunghezze comprese.
+     *
+     * @param utf8 Le stringhe, da {@link #encodeStrings(String[])}.
+     * @return I byte, da passare come spazio per le stringhe del record.
+     */
+    static int stringsBytes(byte[][] utf8) {
+        int total = 0;
+        for (byte[] bytes : utf8) {
+            total += bytes.length + 2;
+        }
+        return total;
+    }
+
+    /**
+     * Scrive un elenco di stringhe già codificate, preceduto dal numero di stringhe.
+     *
+     * @param buffer Il buffer.
+     * @param utf8   Le stringhe, da {@link #encodeStrings(String[])}.
+     */
+    static void putStrings(ByteBuffer buffer, byte[][] utf8) {
+        putVarLong(buffer, utf8.length);
+        for (byte[] bytes : utf8) {
+            putString(buffer, bytes);
+        }
+    }
+
+    /**
+     * Legge un elenco di stringhe UTF-8 preceduto dal numero di stringhe.
+     *
+     * @param buffer Il buffer.
+     * @return Le stringhe.
+     */
+    static List<String> getStrings(ByteBuffer buffer) {
+        long count = getVarLong(buffer);
+        if (count > buffer.remaining()) {
+            throw new IllegalStateException("Elenco più lungo del record: " + count);
+        }
+        List<String> values = new ArrayList<>((int) count);
+        for (long i = 0; i < count; i++) {
+            values.add(getString(buffer));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,218 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import it.uniupo.simnova.service.execution.ExecutionSession.CommandType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * Legge in sequenza gli eventi del diario di una sessione, per il debriefing e la riproduzione.
+ * <p>
+ * I segmenti vengono mappati in sola lettura uno alla volta, nell'ordine dell'indice. La lettura di un segmento
+ * si ferma al primo record incompleto o con CRC errato: è quello che resta di un'interruzione, oppure la coda
+ * di un segmento ancora in scrittura. I record di tipo sconosciuto vengono saltati.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class JournalReader implements Iterator<JournalEvent> {
+
+    /**
+     * I tipi di comando, per decodificare gli ordinali registrati.
+     */
+    private static final CommandType[] COMMAND_TYPES = CommandType.values();
+
+    /**
+     * I segmenti della sessione, in ordine.
+     */
+    private final List<Path> segments;
+
+    /**
+     * Il calcolatore del CRC, riusato per tutti i record.
+     */
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * L'indice del prossimo segmento da aprire.
+     */
+    private int nextSegment;
+
+    /**
+     * Il segmento in lettura; <code>null</code> prima del primo.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * La posizione del prossimo record nel segmento in lettura.
+     */
+    private int position;
+
+    /**
+     * Il prossimo evento, già decodificato; <code>null</code> se va ancora cercato.
+     */
+    private JournalEvent next;
+
+    /**
+     * Crea un lettore sui segmenti indicati.
+     *
+     * @param segments I file dei segmenti, in ordine.
+     */
+    private JournalReader(List<Path> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Apre il diario di una sessione.
+     *
+     * @param directory La cartella della sessione, da {@link SessionJournal#getDirectory()} o {@link JournalStore#list()}.
+     * @return Il lettore, posizionato sul primo evento.
+     * @throws IOException se la cartella non può essere letta.
+     */
+    public static JournalReader open(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + JournalFormat.SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(null); // I nomi hanno l'indice a larghezza fissa.
+        return new JournalReader(segments);
+    }
+
+    /**
+     * Legge tutti gli eventi del diario di una sessione.
+     *
+     * @param directory La cartella della sessione.
+     * @return Gli eventi, in ordine di scrittura.
+     * @throws IOException se un segmento non può essere letto.
+     */
+    public static List<JournalEvent> readAll(Path directory) throws IOException {
+        JournalReader reader = open(directory);
+        List<JournalEvent> events = new ArrayList<>();
+        while (reader.hasNext()) {
+            events.add(reader.next());
+        }
+        return events;
+    }
+
+    /**
+     * Indica se ci sono altri eventi.
+     *
+     * @return <code>true</code> se {@link #next()} restituirà un evento.
+     * @throws UncheckedIOException se un segmento non può essere letto.
+     */
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (buffer != null) {
+                next = readRecord();
+                if (next != null) {
+                    return true;
+                }
+            }
+            if (nextSegment >= segments.size()) {
+                return false;
+            }
+            openSegment(segments.get(nextSegment++));
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce il prossimo evento.
+     *
+     * @return L'evento.
+     * @throws NoSuchElementException se il diario è terminato.
+     */
+    @Override
+    public JournalEvent next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        JournalEvent event = next;
+        next = null;
+        return event;
+    }
+
+    /**
+     * Mappa un segmento e si posiziona sul primo record. I file non riconosciuti vengono saltati.
+     *
+     * @param segment Il file del segmento.
+     */
+    private void openSegment(Path segment) {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer = JournalFormat.readCapacity(mapped) >= 0 ? mapped : null;
+            position = JournalFormat.HEADER_BYTES;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile leggere il segmento " + segment, e);
+        }
+    }
+
+    /**
+     * Decodifica il prossimo record del segmento in lettura.
+     *
+     * @return L'evento; <code>null</code> alla fine dei record validi del segmento.
+     */
+    private JournalEvent readRecord() {
+        while (true) {
+            int length = JournalFormat.validRecordLength(buffer, position, crc);
+            if (length == 0) {
+                buffer = null;
+                return null;
+            }
+            ByteBuffer record = buffer.slice(position + JournalFormat.RECORD_PREFIX, length - JournalFormat.RECORD_PREFIX)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            position += length;
+            try {
+                JournalEvent event = decode(record);
+                if (event != null) {
+                    return event;
+                }
+            } catch (BufferUnderflowException | IllegalStateException e) {
+                buffer = null; // Record integro ma malformato: il resto del segmento non è affidabile.
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Decodifica il contenuto di un record.
+     *
+     * @param record Il record dal tipo in poi.
+     * @return L'evento; <code>null</code> se il tipo non è riconosciuto.
+     */
+    private static JournalEvent decode(ByteBuffer record) {
+        byte type = record.get();
+        long offset = JournalFormat.getVarLong(record);
+        return switch (type) {
+            case JournalFormat.STARTED -> new JournalEvent.Started(offset, JournalFormat.getVarLong(record),
+                    (int) JournalFormat.getVarLong(record), record.getLong(),
+                    record.hasRemaining() ? JournalFormat.getStrings(record) : List.of()); // I diari precedenti non hanno i nomi dei canali.
+            case JournalFormat.ENTERED -> new JournalEvent.Entered(offset, (int) JournalFormat.getVarLong(record));
+            case JournalFormat.COMMAND -> {
+                int ordinal = record.get();
+                long argument = JournalFormat.getSignedVarLong(record);
+                yield ordinal >= 0 && ordinal < COMMAND_TYPES.length
+                        ? new JournalEvent.Command(offset, COMMAND_TYPES[ordinal], argument) : null;
+            }
+            case JournalFormat.KEY_ACTION -> new JournalEvent.KeyAction(offset, JournalFormat.getString(record));
+            case JournalFormat.VITAL_OVERRIDE -> new JournalEvent.VitalOverride(offset, (int) JournalFormat.getVarLong(record), record.getDouble());
+            case JournalFormat.ALARM -> new JournalEvent.Alarm(offset, (int) JournalFormat.getVarLong(record), record.get(), record.get(), record.getDouble());
+            case JournalFormat.ENDED -> new JournalEvent.Ended(offset, JournalFormat.getString(record));
+            default -> null;
+        };
+    }
+}
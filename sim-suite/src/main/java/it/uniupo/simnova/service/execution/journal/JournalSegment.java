@@ -0,0 +1,175 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un file di segmento del diario, mappato in memoria per tutta la sua capacità.
+ * <p>
+ * Chi scrive riserva un intervallo con un'unica operazione atomica sulla coda e vi copia il record già codificato,
+ * senza lock né chiamate di sistema. Il contatore degli scrittori in corso permette a chi chiude il segmento di
+ * aspettare che le copie iniziate siano terminate prima di troncare il file.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+final class JournalSegment {
+
+    /**
+     * Il file del segmento.
+     */
+    private final Path path;
+
+    /**
+     * L'indice del segmento nella sessione.
+     */
+    private final int index;
+
+    /**
+     * Il contenuto mappato.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * La capacità del segmento in byte.
+     */
+    private final int capacity;
+
+    /**
+     * La prima posizione non ancora riservata; può superare la capacità quando il segmento è pieno.
+     */
+    private final AtomicInteger tail = new AtomicInteger(JournalFormat.HEADER_BYTES);
+
+    /**
+     * Il numero di scrittori che stanno copiando un record nel segmento.
+     */
+    private final AtomicInteger writers = new AtomicInteger();
+
+    /**
+     * Indica se il segmento non accetta più scrittori.
+     */
+    private volatile boolean sealed;
+
+    /**
+     * Crea il file di un segmento, lo mappa e ne scrive l'intestazione.
+     *
+     * @param path       Il file, che non deve esistere.
+     * @param index      L'indice del segmento.
+     * @param capacity   La capacità in byte.
+     * @param sessionId  L'ID della sessione.
+     * @param scenarioId L'ID dello scenario.
+     * @return Il segmento.
+     * @throws IOException se il file non può essere creato o mappato.
+     */
+    static JournalSegment create(Path path, int index, int capacity, long sessionId, int scenarioId) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity); // Il file è esteso, ma resta sparso.
+            JournalFormat.writeHeader(buffer, capacity, sessionId, scenarioId, index);
+            return new JournalSegment(path, index, buffer, capacity);
+        }
+    }
+
+    /**
+     * Costruisce un segmento già mappato.
+     *
+     * @param path     Il file.
+     * @param index    L'indice.
+     * @param buffer   Il contenuto mappato.
+     * @param capacity La capacità.
+     */
+    private JournalSegment(Path path, int index, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.index = index;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Restituisce il file del segmento.
+     *
+     * @return Il percorso.
+     */
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Restituisce l'indice del segmento.
+     *
+     * @return L'indice, da <code>0</code>.
+     */
+    int index() {
+        return index;
+    }
+
+    /**
+     * Prova a scrivere un record nel segmento.
+     *
+     * @param record Il record codificato.
+     * @param length La lunghezza del record.
+     * @return <code>true</code> se il record è stato scritto; <code>false</code> se il segmento è pieno o chiuso.
+     */
+    boolean tryAppend(byte[] record, int length) {
+        writers.incrementAndGet();
+        try {
+            if (sealed) {
+                return false; // Chi chiude il segmento potrebbe già aver visto zero scrittori.
+            }
+            int position = tail.getAndAdd(length);
+            if (position < 0 || position > capacity - length) {
+                return false;
+            }
+            buffer.put(position, record, 0, length);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Impedisce nuove scritture.
+     */
+    void seal() {
+        sealed = true;
+    }
+
+    /**
+     * Attende che gli scrittori in corso abbiano terminato, quindi scrive il segmento su disco e tronca il file
+     * alla fine dell'ultimo record. Va chiamato dopo {@link #seal()}, fuori dal thread delle sessioni.
+     * Alcuni sistemi non permettono di troncare un file ancora mappato: in quel caso il file resta della sua capacità,
+     * la coda azzerata viene ignorata dalla lettura e troncata dal recupero al riavvio.
+     *
+     * @return La dimensione finale del file.
+     * @throws IOException se il segmento non può essere scritto su disco.
+     */
+    int finish() throws IOException {
+        while (writers.get() != 0) {
+            Thread.onSpinWait();
+        }
+        int end = JournalFormat.scanValidEnd(buffer);
+        buffer.force();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        } catch (IOException e) {
+            return capacity;
+        }
+        return end;
+    }
+
+    /**
+     * Elimina il file di un segmento rimasto vuoto.
+     *
+     * @throws IOException se il file non può essere eliminato.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,279 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * L'archivio dei diari di sessione: una cartella per sessione, con i segmenti numerati in ordine di scrittura.
+ * <p>
+ * Tutte le operazioni sui file che possono bloccare (creazione del segmento di riserva, scrittura su disco e
+ * troncamento dei segmenti pieni o chiusi) avvengono su un unico thread dell'archivio, mai su quelli delle sessioni.
+ * All'avvio l'archivio recupera i diari lasciati da un'interruzione: ogni segmento viene troncato all'ultimo record
+ * integro, i segmenti di riserva mai usati e i file non riconosciuti vengono eliminati.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class JournalStore implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare il recupero e gli errori sui file.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(JournalStore.class);
+
+    /**
+     * La cartella dei diari.
+     */
+    private final Path root;
+
+    /**
+     * La capacità di un segmento in byte.
+     */
+    private final int segmentBytes;
+
+    /**
+     * Il thread dell'archivio.
+     */
+    private final ExecutorService io;
+
+    /**
+     * Indica se la cartella dei diari è utilizzabile.
+     */
+    private final boolean available;
+
+    /**
+     * Crea l'archivio e recupera i diari esistenti.
+     *
+     * @param root         La cartella dei diari, creata se non esiste.
+     * @param segmentBytes La capacità di un segmento; viene alzata al minimo necessario per un record.
+     * @param threadName   Il nome del thread dell'archivio.
+     */
+    public JournalStore(Path root, int segmentBytes, String threadName) {
+        this.root = root.toAbsolutePath();
+        this.segmentBytes = Math.max(segmentBytes, JournalFormat.HEADER_BYTES + JournalFormat.MAX_RECORD_BYTES);
+        this.available = recover();
+        this.io = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Apre il diario di una nuova sessione. Il primo segmento viene creato subito, il segmento di riserva
+     * sul thread dell'archivio.
+     *
+     * @param sessionId   L'ID della sessione.
+     * @param scenarioId  L'ID dello scenario.
+     * @param originNanos L'istante di riferimento degli eventi, da {@link System#nanoTime()}.
+     * @return Il diario; un diario disattivato se la cartella non può essere creata.
+     */
+    public SessionJournal open(long sessionId, int scenarioId, long originNanos) {
+        if (!available) {
+            return SessionJournal.disabled(sessionId, scenarioId, originNanos);
+        }
+        Path directory = root.resolve(System.currentTimeMillis() + "-" + sessionId); // Gli ID ripartono a ogni avvio dell'applicazione.
+        try {
+            Files.createDirectories(directory);
+            JournalSegment first = JournalSegment.create(directory.resolve(JournalFormat.segmentName(0)), 0, segmentBytes, sessionId, scenarioId);
+            SessionJournal journal = new SessionJournal(this, directory, sessionId, scenarioId, originNanos);
+            journal.install(first);
+            prepareSpare(journal);
+            return journal;
+        } catch (IOException e) {
+            logger.error("Impossibile creare il diario della sessione {} in {}: la sessione non verrà registrata.", sessionId, directory, e);
+            return SessionJournal.disabled(sessionId, scenarioId, originNanos);
+        }
+    }
+
+    /**
+     * Restituisce le cartelle dei diari registrati, dalla più vecchia.
+     *
+     * @return Le cartelle delle sessioni; vuoto se non ce ne sono.
+     */
+    public List<Path> list() {
+        List<Path> sessions = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return sessions;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, Files::isDirectory)) {
+            stream.forEach(sessions::add);
+        } catch (IOException e) {
+            logger.error("Impossibile elencare i diari in {}", root, e);
+        }
+        sessions.sort(null);
+        return sessions;
+    }
+
+    /**
+     * Arresta il thread dell'archivio dopo aver completato le chiusure dei segmenti in attesa.
+     */
+    @Override
+    public void close() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Alcuni segmenti dei diari non sono stati chiusi entro 5 secondi.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Crea in background il prossimo segmento di un diario, che lo userà quando quello corrente sarà pieno.
+     *
+     * @param journal Il diario.
+     */
+    void prepareSpare(SessionJournal journal) {
+        submit(() -> {
+            int index = journal.reserveIndex();
+            if (index < 0) {
+                return; // Diario chiuso.
+            }
+            Path path = journal.getDirectory().resolve(JournalFormat.segmentName(index));
+            try {
+                JournalSegment spare = JournalSegment.create(path, index, segmentBytes, journal.sessionId(), journal.scenarioId());
+                if (!journal.offerSpare(spare)) {
+                    spare.delete();
+                }
+            } catch (IOException e) {
+                logger.error("Impossibile creare il segmento {} del diario della sessione {}.", path, journal.sessionId(), e);
+            }
+        });
+    }
+
+    /**
+     * Chiude in background un segmento pieno o di un diario chiuso: lo scrive su disco e lo tronca all'ultimo record.
+     *
+     * @param segment Il segmento, già sigillato.
+     */
+    void retire(JournalSegment segment) {
+        submit(() -> {
+            try {
+                segment.finish();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Impossibile chiudere il segmento {} del diario.", segment.path(), e);
+            }
+        });
+    }
+
+    /**
+     * Elimina in background un segmento di riserva mai usato.
+     *
+     * @param segment Il segmento.
+     */
+    void discard(JournalSegment segment) {
+        submit(() -> {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                logger.debug("Segmento di riserva {} non eliminato, verrà rimosso al riavvio: {}", segment.path(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Esegue un'operazione sul thread dell'archivio; dopo la chiusura la esegue sul thread chiamante,
+     * così i segmenti delle ultime sessioni vengono comunque chiusi.
+     *
+     * @param task L'operazione.
+     */
+    private void submit(Runnable task) {
+        try {
+            io.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Recupera i diari esistenti, troncando ogni segmento all'ultimo record integro.
+     *
+     * @return <code>true</code> se la cartella dei diari è utilizzabile.
+     */
+    private boolean recover() {
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            logger.error("Impossibile creare la cartella dei diari {}: le sessioni non verranno registrate.", root, e);
+            return false;
+        }
+        int truncated = 0;
+        int deleted = 0;
+        for (Path session : list()) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(session, "*" + JournalFormat.SEGMENT_SUFFIX)) {
+                for (Path segment : stream) {
+                    switch (recoverSegment(segment)) {
+                        case 1 -> truncated++;
+                        case 2 -> deleted++;
+                        default -> {
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Impossibile recuperare il diario {}", session, e);
+            }
+        }
+        if (truncated > 0 || deleted > 0) {
+            logger.info("Recupero dei diari in {}: {} segmenti troncati all'ultimo record integro, {} eliminati.", root, truncated, deleted);
+        }
+        return true;
+    }
+
+    /**
+     * Recupera un segmento. Un segmento chiuso correttamente è già troncato alla fine dei record, quindi
+     * vengono esaminati solo i file lunghi quanto la capacità dichiarata. Il file viene letto e non mappato,
+     * perché un file mappato non può essere troncato su tutti i sistemi.
+     *
+     * @param segment Il file del segmento.
+     * @return <code>1</code> se il segmento è stato troncato, <code>2</code> se è stato eliminato, <code>0</code> altrimenti.
+     * @throws IOException se il file non può essere letto o modificato.
+     */
+    private static int recoverSegment(Path segment) throws IOException {
+        boolean delete;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(JournalFormat.HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            int capacity = JournalFormat.readCapacity(header);
+            if (capacity < 0) {
+                delete = true;
+            } else if (size != capacity) {
+                return 0;
+            } else {
+                ByteBuffer content = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                while (content.hasRemaining() && channel.read(content, content.position()) > 0) {
+                    // Lettura completa del segmento.
+                }
+                content.flip();
+                int end = JournalFormat.scanValidEnd(content);
+                int index = JournalFormat.readIndex(content);
+                delete = end == JournalFormat.HEADER_BYTES && index > 0; // Segmento di riserva mai usato.
+                if (!delete) {
+                    channel.truncate(end);
+                    return 1;
+                }
+            }
+        }
+        Files.delete(segment);
+        return 2;
+    }
+}
@@ -0,0 +1,529 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import it.uniupo.simnova.service.execution.ExecutionSession.CommandType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Il diario di una sessione: registra in sola aggiunta gli eventi della simulazione in segmenti mappati in memoria.
+ * <p>
+ * Gli eventi arrivano dal worker della sessione, dal thread degli andamenti (allarmi) e dall'interfaccia.
+ * Ogni record viene codificato in un piccolo buffer della dimensione del record e copiato nel segmento corrente
+ * con una riserva atomica: la scrittura non prende lock e non esegue I/O. Il buffer non è legato al thread perché
+ * i worker delle sessioni sono thread virtuali di breve durata. Il segmento successivo viene creato in anticipo
+ * dal {@link JournalStore}, quindi il passaggio a un nuovo segmento è solo uno scambio di riferimenti; se il segmento
+ * di riserva non è ancora pronto l'evento viene scartato e contato, senza mai attendere.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.3
+ */
+public final class SessionJournal {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare gli errori degli ascoltatori.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SessionJournal.class);
+
+    /**
+     * Tentativi di scrittura di un record prima di scartarlo.
+     */
+    private static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * L'archivio che crea e chiude i segmenti.
+     */
+    private final JournalStore store;
+
+    /**
+     * La cartella della sessione.
+     */
+    private final Path directory;
+
+    /**
+     * L'ID della sessione.
+     */
+    private final long sessionId;
+
+    /**
+     * L'ID dello scenario eseguito.
+     */
+    private final int scenarioId;
+
+    /**
+     * L'istante di riferimento degli eventi, da {@link System#nanoTime()}.
+     */
+    private final long originNanos;
+
+    /**
+     * Record scritti.
+     */
+    private final LongAdder appended = new LongAdder();
+
+    /**
+     * Record scartati perché il segmento di riserva non era pronto.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Chi riceve gli eventi registrati.
+     */
+    private final List<Consumer<JournalEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Il segmento in scrittura; <code>null</code> se il diario è chiuso o non è stato possibile crearlo.
+     */
+    private volatile JournalSegment current;
+
+    /**
+     * Il prossimo segmento, già creato; <code>null</code> mentre l'archivio lo prepara. Protetto da <code>this</code>.
+     */
+    private JournalSegment spare;
+
+    /**
+     * Indice del prossimo segmento da creare. Protetto da <code>this</code>.
+     */
+    private int nextIndex;
+
+    /**
+     * Indica se il diario è stato chiuso. Protetto da <code>this</code>.
+     */
+    private boolean closed;
+
+    /**
+     * Crea il diario; il primo segmento viene installato da {@link JournalStore#open(long, int, long)}.
+     *
+     * @param store       L'archivio.
+     * @param directory   La cartella della sessione.
+     * @param sessionId   L'ID della sessione.
+     * @param scenarioId  L'ID dello scenario.
+     * @param originNanos L'istante di riferimento degli eventi.
+     */
+    SessionJournal(JournalStore store, Path directory, long sessionId, int scenarioId, long originNanos) {
+        this.store = store;
+        this.directory = directory;
+        this.sessionId = sessionId;
+        this.scenarioId = scenarioId;
+        this.originNanos = originNanos;
+    }
+
+    /**
+     * Crea un diario che non scrive su disco, per le sessioni riprodotte o quando l'archivio non è disponibile.
+     * Gli eventi vengono comunque consegnati agli ascoltatori.
+     *
+     * @param sessionId   L'ID della sessione.
+     * @param scenarioId  L'ID dello scenario.
+     * @param originNanos L'istante di riferimento degli eventi.
+     * @return Il diario, già chiuso.
+     */
+    public static SessionJournal disabled(long sessionId, int scenarioId, long originNanos) {
+        SessionJournal journal = new SessionJournal(null, null, sessionId, scenarioId, originNanos);
+        journal.closed = true;
+        return journal;
+    }
+
+    /**
+     * Restituisce la cartella dei segmenti, da passare a {@link JournalReader#open(Path)}.
+     *
+     * @return La cartella della sessione; <code>null</code> se il diario è disattivato.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Restituisce il numero di record scritti.
+     *
+     * @return I record scritti.
+     */
+    public long getAppended() {
+        return appended.sum();
+    }
+
+    /**
+     * Restituisce il numero di record scartati.
+     *
+     * @return I record scartati.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Registra l'avvio della sessione.
+     *
+     * @param epochMillis L'ora di avvio, in millisecondi dall'epoca.
+     * @param channels    I nomi dei canali degli allarmi, così il debriefing non dipende dallo scenario attuale.
+     * @param now         L'istante dell'evento.
+     */
+    public void started(long epochMillis, String[] channels, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            byte[][] names = JournalFormat.encodeStrings(channels);
+            Encoder e = begin(JournalFormat.STARTED, offset, JournalFormat.stringsBytes(names));
+            JournalFormat.putVarLong(e.buffer, sessionId);
+            JournalFormat.putVarLong(e.buffer, scenarioId);
+            e.buffer.putLong(epochMillis);
+            JournalFormat.putStrings(e.buffer, names);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.Started(offset, sessionId, scenarioId, epochMillis, Arrays.stream(channels).map(name -> Objects.requireNonNullElse(name, "")).toList()));
+        }
+    }
+
+    /**
+     * Registra l'ingresso in un tempo.
+     *
+     * @param tempoId L'ID del tempo.
+     * @param now     L'istante dell'evento.
+     */
+    public void entered(int tempoId, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            Encoder e = begin(JournalFormat.ENTERED, offset, 0);
+            JournalFormat.putVarLong(e.buffer, tempoId);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.Entered(offset, tempoId));
+        }
+    }
+
+    /**
+     * Registra un comando applicato alla sessione.
+     *
+     * @param type     Il tipo di comando.
+     * @param argument L'argomento del comando.
+     * @param now      L'istante dell'evento.
+     */
+    public void command(CommandType type, long argument, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            Encoder e = begin(JournalFormat.COMMAND, offset, 0);
+            e.buffer.put((byte) type.ordinal());
+            JournalFormat.putSignedVarLong(e.buffer, argument);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.Command(offset, type, argument));
+        }
+    }
+
+    /**
+     * Registra un'azione chiave segnata come eseguita.
+     *
+     * @param name Il nome dell'azione chiave.
+     * @param now  L'istante dell'evento.
+     */
+    public void keyAction(String name, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            byte[] utf8 = JournalFormat.encodeString(name);
+            Encoder e = begin(JournalFormat.KEY_ACTION, offset, utf8.length);
+            JournalFormat.putString(e.buffer, utf8);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.KeyAction(offset, name));
+        }
+    }
+
+    /**
+     * Registra un parametro vitale impostato dall'istruttore.
+     *
+     * @param channel Il canale dell'andamento.
+     * @param value   Il valore.
+     * @param now     L'istante dell'evento.
+     */
+    public void vitalOverride(int channel, double value, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            Encoder e = begin(JournalFormat.VITAL_OVERRIDE, offset, 0);
+            JournalFormat.putVarLong(e.buffer, channel);
+            e.buffer.putDouble(value);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.VitalOverride(offset, channel, value));
+        }
+    }
+
+    /**
+     * Registra un cambio del livello di allarme.
+     *
+     * @param channel       Il canale del parametro.
+     * @param previousLevel Il livello precedente.
+     * @param level         Il nuovo livello.
+     * @param value         Il valore che ha causato il cambio.
+     * @param now           L'istante dell'evento.
+     */
+    public void alarm(int channel, int previousLevel, int level, double value, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            Encoder e = begin(JournalFormat.ALARM, offset, 0);
+            JournalFormat.putVarLong(e.buffer, channel);
+            e.buffer.put((byte) previousLevel);
+            e.buffer.put((byte) level);
+            e.buffer.putDouble(value);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.Alarm(offset, channel, previousLevel, level, value));
+        }
+    }
+
+    /**
+     * Registra la fine della sessione.
+     *
+     * @param reason Il motivo.
+     * @param now    L'istante dell'evento.
+     */
+    public void ended(String reason, long now) {
+        long offset = offsetOf(now);
+        if (current != null) {
+            byte[] utf8 = JournalFormat.encodeString(reason);
+            Encoder e = begin(JournalFormat.ENDED, offset, utf8.length);
+            JournalFormat.putString(e.buffer, utf8);
+            append(e);
+        }
+        if (!listeners.isEmpty()) {
+            notifyListeners(new JournalEvent.Ended(offset, reason));
+        }
+    }
+
+    /**
+     * Converte un istante nell'offset registrato negli eventi.
+     *
+     * @param now Un istante, da {@link System#nanoTime()}.
+     * @return I nanosecondi dall'inizio della sessione.
+     */
+    public long offsetOf(long now) {
+        return Math.max(0L, now - originNanos);
+    }
+
+    /**
+     * Registra chi riceve gli eventi mentre vengono scritti, ad esempio per aggiornare statistiche in tempo reale.
+     * Gli eventi vengono consegnati anche da un diario disattivato. L'ascoltatore è chiamato sul thread che
+     * registra l'evento e non deve bloccare.
+     *
+     * @param listener Il destinatario degli eventi.
+     */
+    public void addListener(Consumer<JournalEvent> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Rimuove un ascoltatore.
+     *
+     * @param listener L'ascoltatore da rimuovere.
+     */
+    public void removeListener(Consumer<JournalEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Chiude il diario: il segmento corrente viene troncato all'ultimo record e quello di riserva eliminato,
+     * sul thread dell'archivio. Gli eventi successivi vengono ignorati.
+     */
+    public void close() {
+        JournalSegment last;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = current;
+            current = null;
+            if (spare != null) {
+                store.discard(spare);
+                spare = null;
+            }
+        }
+        if (last != null) {
+            last.seal();
+            store.retire(last);
+        }
+    }
+
+    /**
+     * Installa il primo segmento.
+     *
+     * @param first Il segmento di indice <code>0</code>.
+     */
+    synchronized void install(JournalSegment first) {
+        current = first;
+        nextIndex = first.index() + 1;
+    }
+
+    /**
+     * Riserva l'indice del prossimo segmento da preparare.
+     *
+     * @return L'indice, o <code>-1</code> se il diario è chiuso.
+     */
+    synchronized int reserveIndex() {
+        return closed ? -1 : nextIndex++;
+    }
+
+    /**
+     * Riceve dall'archivio il segmento di riserva appena creato.
+     *
+     * @param segment Il segmento.
+     * @return <code>false</code> se il diario è stato chiuso nel frattempo e il segmento va eliminato.
+     */
+    synchronized boolean offerSpare(JournalSegment segment) {
+        if (closed) {
+            return false;
+        }
+        spare = segment;
+        return true;
+    }
+
+    /**
+     * Indica se il segmento di riserva è pronto, quindi se il prossimo passaggio di segmento non scarterà eventi.
+     * Usato nei test.
+     *
+     * @return <code>true</code> se l'archivio ha già consegnato il segmento di riserva.
+     */
+    synchronized boolean hasSpare() {
+        return spare != null;
+    }
+
+    /**
+     * Restituisce l'ID della sessione.
+     *
+     * @return L'ID.
+     */
+    long sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Restituisce l'ID dello scenario.
+     *
+     * @return L'ID.
+     */
+    int scenarioId() {
+        return scenarioId;
+    }
+
+    /**
+     * Prepara la codifica di un record: lascia spazio per lunghezza e CRC, poi scrive tipo e istante.
+     *
+     * @param type        Il tipo di record.
+     * @param offset      I nanosecondi dall'inizio della sessione.
+     * @param stringBytes I byte delle stringhe del record, oltre ai campi fissi.
+     * @return Il codificatore, posizionato dopo l'istante.
+     */
+    private Encoder begin(byte type, long offset, int stringBytes) {
+        Encoder e = new Encoder(JournalFormat.RECORD_PREFIX + JournalFormat.MAX_FIXED_BYTES + stringBytes);
+        e.buffer.position(JournalFormat.RECORD_PREFIX);
+        e.buffer.put(type);
+        JournalFormat.putVarLong(e.buffer, offset);
+        return e;
+    }
+
+    /**
+     * Completa il record con lunghezza e CRC e lo copia nel segmento corrente, passando al segmento di riserva
+     * quando quello corrente è pieno.
+     *
+     * @param e Il codificatore con il record.
+     */
+    private void append(Encoder e) {
+        int length = e.buffer.position();
+        e.crc.reset();
+        e.crc.update(e.bytes, JournalFormat.RECORD_PREFIX, length - JournalFormat.RECORD_PREFIX);
+        e.buffer.putInt(0, length);
+        e.buffer.putInt(4, (int) e.crc.getValue());
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            JournalSegment segment = current;
+            if (segment == null) {
+                return; // Diario chiuso o mai aperto.
+            }
+            if (segment.tryAppend(e.bytes, length)) {
+                appended.increment();
+                return;
+            }
+            roll(segment);
+            Thread.onSpinWait();
+        }
+        dropped.increment();
+    }
+
+    /**
+     * Sostituisce il segmento pieno con quello di riserva, se è pronto e nessun altro thread lo ha già fatto.
+     * Il lock protegge solo lo scambio dei riferimenti: chiusura del vecchio segmento e creazione del prossimo
+     * sono affidate al thread dell'archivio.
+     *
+     * @param full Il segmento pieno.
+     */
+    private void roll(JournalSegment full) {
+        synchronized (this) {
+            if (current != full || spare == null) {
+                return;
+            }
+            current = spare;
+            spare = null;
+        }
+        full.seal();
+        store.prepareSpare(this); // Prima della chiusura del segmento pieno, che scrive su disco.
+        store.retire(full);
+    }
+
+    /**
+     * Consegna un evento agli ascoltatori.
+     *
+     * @param event L'evento.
+     */
+    private void notifyListeners(JournalEvent event) {
+        for (Consumer<JournalEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                logger.warn("Ascoltatore del diario della sessione {} fallito: {}", sessionId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Buffer di codifica di un record.
+     */
+    private static final class Encoder {
+
+        /**
+         * I byte del record in codifica.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Il buffer che scrive in {@link #bytes}.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Il calcolatore del CRC.
+         */
+        private final CRC32C crc = new CRC32C();
+
+        /**
+         * Crea un buffer di codifica.
+         *
+         * @param capacity La dimensione massima del record.
+         */
+        private Encoder(int capacity) {
+            this.bytes = new byte[capacity];
+            this.buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
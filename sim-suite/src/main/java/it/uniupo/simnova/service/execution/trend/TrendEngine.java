@@ -0,0 +1,212 @@
+package it.uniupo.simnova.service.execution.trend;
+
+import it.uniupo.simnova.service.execution.waveform.WaveformGenerator;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool di thread condiviso che fa avanzare gli andamenti dei parametri vitali di tutte le sessioni.
+ * <p>
+ * Le sessioni sono ripartite a turno su un numero fisso di gruppi, uno per thread: ogni gruppo viene fatto
+ * avanzare a frequenza fissa da un proprio task periodico, creato una sola volta. I gruppi sono array sostituiti
+ * solo all'avvio e al termine delle sessioni, quindi il tick li scorre senza allocare; il numero di thread
+ * non dipende dal numero di sessioni.
+ * </p>
+ * <p>
+ * Andamento, costante di tempo, periodo del tick e numero di thread si configurano con le proprietà di sistema
+ * {@code simsuite.execution.trend.shape}, {@code simsuite.execution.trend.time-constant-ms},
+ * {@code simsuite.execution.trend.tick-ms} e {@code simsuite.execution.trend.threads}.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class TrendEngine implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare la configurazione e gli errori dei tick.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TrendEngine.class);
+
+    /**
+     * Periodo del tick in millisecondi.
+     */
+    private static final long TICK_MILLIS = Math.max(1L, Long.getLong("simsuite.execution.trend.tick-ms", 100L));
+
+    /**
+     * Numero di thread del pool.
+     */
+    private static final int THREADS = Math.max(1, Integer.getInteger("simsuite.execution.trend.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 4)));
+
+    /**
+     * Costante di tempo predefinita delle transizioni in millisecondi.
+     */
+    private static final long TIME_CONSTANT_MILLIS = Long.getLong("simsuite.execution.trend.time-constant-ms", 10_000L);
+
+    /**
+     * L'andamento delle nuove sessioni.
+     */
+    private final TrendShape shape;
+
+    /**
+     * Il pool che esegue i tick.
+     */
+    private final ScheduledThreadPoolExecutor pool;
+
+    /**
+     * Gli andamenti registrati, un gruppo per thread.
+     */
+    private final AtomicReferenceArray<VitalTrend[]> stripes = new AtomicReferenceArray<>(THREADS);
+
+    /**
+     * Contatore per la ripartizione a turno degli andamenti nei gruppi.
+     */
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    /**
+     * Numero di tick eseguiti, sommati su tutti i gruppi.
+     */
+    private final AtomicLong ticks = new AtomicLong();
+
+    /**
+     * Crea il pool e avvia i tick.
+     *
+     * @param threadName Il prefisso dei nomi dei thread.
+     */
+    public TrendEngine(String threadName) {
+        this.shape = parseShape(System.getProperty("simsuite.execution.trend.shape"));
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.pool = new ScheduledThreadPoolExecutor(THREADS, r -> {
+            Thread thread = new Thread(r, threadName + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        for (int i = 0; i < THREADS; i++) {
+            final int stripe = i;
+            stripes.set(stripe, new VitalTrend[0]);
+            pool.scheduleAtFixedRate(() -> tick(stripe), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Andamento dei parametri vitali: {}, costante di tempo {} ms, tick di {} ms su {} thread.",
+                shape, TIME_CONSTANT_MILLIS, TICK_MILLIS, THREADS);
+    }
+
+    /**
+     * Crea l'andamento di una nuova sessione con la configurazione del pool.
+     *
+     * @param frame     I tempi dello scenario.
+     * @param waveforms Le forme d'onda guidate dai parametri, o <code>null</code>.
+     * @return Il nuovo andamento, da registrare con {@link #register(VitalTrend)}.
+     */
+    public VitalTrend newTrend(TimelineFrame frame, WaveformGenerator waveforms) {
+        return new VitalTrend(frame, shape, TIME_CONSTANT_MILLIS, waveforms);
+    }
+
+    /**
+     * Aggiunge un andamento ai tick.
+     *
+     * @param trend L'andamento.
+     */
+    public synchronized void register(VitalTrend trend) {
+        int stripe = Math.floorMod(nextStripe.getAndIncrement(), THREADS);
+        VitalTrend[] trends = stripes.get(stripe);
+        VitalTrend[] updated = Arrays.copyOf(trends, trends.length + 1);
+        updated[trends.length] = trend;
+        stripes.set(stripe, updated);
+    }
+
+    /**
+     * Rimuove un andamento dai tick.
+     *
+     * @param trend L'andamento.
+     */
+    public synchronized void unregister(VitalTrend trend) {
+        for (int stripe = 0; stripe < THREADS; stripe++) {
+            VitalTrend[] trends = stripes.get(stripe);
+            for (int i = 0; i < trends.length; i++) {
+                if (trends[i] == trend) {
+                    VitalTrend[] updated = new VitalTrend[trends.length - 1];
+                    System.arraycopy(trends, 0, updated, 0, i);
+                    System.arraycopy(trends, i + 1, updated, i, trends.length - i - 1);
+                    stripes.set(stripe, updated);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce il periodo dei tick, usato anche per far avanzare i parametri delle prove in tempo virtuale.
+     *
+     * @return Il periodo in millisecondi.
+     */
+    public long getTickMillis() {
+        return TICK_MILLIS;
+    }
+
+    /**
+     * Restituisce il numero di andamenti registrati.
+     *
+     * @return Il numero di sessioni i cui parametri vengono fatti avanzare.
+     */
+    public int size() {
+        int size = 0;
+        for (int stripe = 0; stripe < THREADS; stripe++) {
+            size += stripes.get(stripe).length;
+        }
+        return size;
+    }
+
+    /**
+     * Arresta il pool.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        logger.info("Andamento dei parametri vitali arrestato dopo {} tick.", ticks.get());
+    }
+
+    /**
+     * Fa avanzare un gruppo di andamenti all'istante corrente.
+     *
+     * @param stripe L'indice del gruppo.
+     */
+    private void tick(int stripe) {
+        long now = System.nanoTime();
+        for (VitalTrend trend : stripes.get(stripe)) {
+            try {
+                trend.advanceTo(now);
+            } catch (RuntimeException e) {
+                logger.error("Errore durante l'avanzamento dei parametri vitali", e); // Un'eccezione fermerebbe il task periodico.
+            }
+        }
+        ticks.incrementAndGet();
+    }
+
+    /**
+     * Interpreta l'andamento configurato.
+     *
+     * @param value Il valore della proprietà, o <code>null</code>.
+     * @return L'andamento; {@link TrendShape#EXPONENTIAL} se assente o non valido.
+     */
+    private static TrendShape parseShape(String value) {
+        if (value == null || value.isBlank()) {
+            return TrendShape.EXPONENTIAL;
+        }
+        try {
+            return TrendShape.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Andamento dei parametri vitali '{}' non valido, uso {}.", value, TrendShape.EXPONENTIAL);
+            return TrendShape.EXPONENTIAL;
+        }
+    }
+}
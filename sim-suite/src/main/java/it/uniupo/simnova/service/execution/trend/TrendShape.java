@@ -0,0 +1,20 @@
+package it.uniupo.simnova.service.execution.trend;
+
+/**
+ * L'andamento con cui un parametro vitale passa dal valore corrente a quello del nuovo tempo.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public enum TrendShape {
+    /**
+     * Variazione a velocità costante, che raggiunge il valore di destinazione dopo la costante di tempo
+     * o, se più breve, allo scadere del timer del tempo.
+     */
+    LINEAR,
+    /**
+     * Avvicinamento esponenziale: dopo una costante di tempo resta il 37% della differenza iniziale,
+     * come nella risposta di un parametro fisiologico a un intervento.
+     */
+    EXPONENTIAL
+}
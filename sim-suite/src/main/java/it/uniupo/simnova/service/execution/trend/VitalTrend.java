@@ -0,0 +1,481 @@
+package it.uniupo.simnova.service.execution.trend;
+
+import it.uniupo.simnova.service.execution.waveform.WaveformGenerator;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * L'andamento dei parametri vitali di una sessione, che raggiungono gradualmente i valori di ciascun tempo
+ * invece di cambiare di colpo.
+ * <p>
+ * Ogni parametro è un canale: pressione sistolica e diastolica, FC, RR, SpO₂, temperatura, EtCO₂ e, a seguire,
+ * un canale per ogni nome di {@link it.uniupo.simnova.domain.common.ParametroAggiuntivo parametro aggiuntivo}
+ * con valore numerico in almeno un tempo. Un canale vale <code>NaN</code> finché nessun tempo lo specifica,
+ * e al primo valore lo assume subito senza transizione.
+ * </p>
+ * <p>
+ * Lo stato è fatto solo di array primitivi allocati alla creazione: il {@link TrendEngine} lo fa avanzare
+ * a ogni tick a partire dal valore corrente, senza allocare. I metodi sono sincronizzati perché il worker
+ * della sessione cambia la destinazione, il {@link TrendEngine} fa avanzare i valori e il monitor li legge
+ * da thread diversi; l'accesso è quasi sempre senza contesa. Chi mostra i valori può registrarsi con
+ * {@link #addListener(Runnable)} per essere avvisato quando cambiano, invece di interrogarli periodicamente.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.2
+ */
+public final class VitalTrend {
+
+    /**
+     * Canale della pressione sistolica (mmHg).
+     */
+    public static final int SYSTOLIC = 0;
+
+    /**
+     * Canale della pressione diastolica (mmHg).
+     */
+    public static final int DIASTOLIC = 1;
+
+    /**
+     * Canale della frequenza cardiaca (bpm).
+     */
+    public static final int FC = 2;
+
+    /**
+     * Canale della frequenza respiratoria (atti/min).
+     */
+    public static final int RR = 3;
+
+    /**
+     * Canale della saturazione (%).
+     */
+    public static final int SPO2 = 4;
+
+    /**
+     * Canale della temperatura (°C).
+     */
+    public static final int TEMPERATURE = 5;
+
+    /**
+     * Canale dell'EtCO₂ (mmHg).
+     */
+    public static final int ETCO2 = 6;
+
+    /**
+     * Numero di canali dei parametri vitali fissi; i parametri aggiuntivi seguono.
+     */
+    public static final int FIXED_CHANNELS = 7;
+
+    /**
+     * I nomi dei canali fissi, come mostrati nel monitor.
+     */
+    private static final String[] FIXED_NAMES = {"PA sistolica", "PA diastolica", "FC", "RR", "SpO₂", "T", "EtCO₂"};
+
+    /**
+     * Le unità di misura dei canali fissi.
+     */
+    private static final String[] FIXED_UNITS = {"mmHg", "mmHg", "bpm", "rpm", "%", "°C", "mmHg"};
+
+    /**
+     * Differenza sotto la quale l'avvicinamento esponenziale si considera concluso.
+     */
+    private static final double SETTLE_EPSILON = 1e-3;
+
+    /**
+     * I tempi dello scenario, da cui si leggono i valori di destinazione.
+     */
+    private final TimelineFrame frame;
+
+    /**
+     * L'andamento delle transizioni.
+     */
+    private final TrendShape shape;
+
+    /**
+     * La costante di tempo, in nanosecondi.
+     */
+    private final long timeConstantNanos;
+
+    /**
+     * Il canale di ciascun nome della tabella dei nomi del frame; <code>-1</code> per i nomi senza valori numerici.
+     */
+    private final int[] channelOfName;
+
+    /**
+     * I nomi dei canali.
+     */
+    private final String[] channelNames;
+
+    /**
+     * Le unità di misura dei canali; vuote se assenti.
+     */
+    private final String[] channelUnits;
+
+    /**
+     * Chi viene avvisato quando i valori correnti o le destinazioni cambiano.
+     */
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Il valore corrente di ciascun canale.
+     */
+    private final double[] current;
+
+    /**
+     * Il valore di destinazione di ciascun canale.
+     */
+    private final double[] target;
+
+    /**
+     * Le forme d'onda guidate da FC, SpO₂, RR ed EtCO₂; <code>null</code> se assenti.
+     */
+    private final WaveformGenerator waveforms;
+
+    // Stato della transizione in corso.
+    private long remainingNanos;            // Durata residua della transizione lineare.
+    private long lastNanos;                 // Istante dell'ultimo avanzamento.
+    private boolean paused;
+    private long revision;                  // Incrementata a ogni cambiamento dei valori.
+
+    /**
+     * Crea l'andamento dei parametri vitali di una sessione.
+     *
+     * @param frame              I tempi dello scenario.
+     * @param shape              L'andamento delle transizioni.
+     * @param timeConstantMillis La costante di tempo, in millisecondi.
+     * @param waveforms          Le forme d'onda da aggiornare a ogni tick, o <code>null</code>.
+     */
+    public VitalTrend(TimelineFrame frame, TrendShape shape, long timeConstantMillis, WaveformGenerator waveforms) {
+        this.frame = frame;
+        this.shape = shape;
+        this.timeConstantNanos = Math.max(1L, timeConstantMillis) * 1_000_000L;
+        this.waveforms = waveforms;
+
+        int maxNameId = -1;
+        for (int p = 0; p < frame.paramCount(); p++) {
+            maxNameId = Math.max(maxNameId, frame.paramNameId(p));
+        }
+        this.channelOfName = new int[maxNameId + 1];
+        Arrays.fill(channelOfName, -1);
+        int channels = FIXED_CHANNELS;
+        for (int p = 0; p < frame.paramCount(); p++) {
+            if (!Double.isNaN(frame.paramNumericValue(p)) && channelOfName[frame.paramNameId(p)] < 0) {
+                channelOfName[frame.paramNameId(p)] = channels++;
+            }
+        }
+        this.channelNames = Arrays.copyOf(FIXED_NAMES, channels);
+        this.channelUnits = new String[channels];
+        System.arraycopy(FIXED_UNITS, 0, channelUnits, 0, FIXED_CHANNELS);
+        for (int nameId = 0; nameId < channelOfName.length; nameId++) {
+            if (channelOfName[nameId] >= 0) {
+                channelNames[channelOfName[nameId]] = frame.name(nameId);
+            }
+        }
+        for (int p = 0; p < frame.paramCount(); p++) {
+            int channel = channelOfName[frame.paramNameId(p)];
+            if (channel >= 0 && channelUnits[channel] == null) {
+                channelUnits[channel] = frame.paramUnit(p) != null ? frame.paramUnit(p) : ""; // La prima unità indicata per il nome.
+            }
+        }
+        this.current = new double[channels];
+        this.target = new double[channels];
+        Arrays.fill(current, Double.NaN);
+        Arrays.fill(target, Double.NaN);
+    }
+
+    /**
+     * Stima la memoria dell'andamento di uno scenario, con un canale per ogni parametro aggiuntivo nel caso peggiore.
+     *
+     * @param frame I tempi dello scenario.
+     * @return I byte stimati.
+     */
+    public static long estimateBytes(TimelineFrame frame) {
+        return 256L + (FIXED_CHANNELS + frame.paramCount()) * (2L * Double.BYTES + Integer.BYTES + 16L);
+    }
+
+    /**
+     * Restituisce il numero di canali.
+     *
+     * @return I canali fissi più quelli dei parametri aggiuntivi numerici.
+     */
+    public int channelCount() {
+        return current.length;
+    }
+
+    /**
+     * Restituisce il nome di un canale.
+     *
+     * @param channel Il canale.
+     * @return Il nome del parametro.
+     */
+    public String channelName(int channel) {
+        return channelNames[channel];
+    }
+
+    /**
+     * Restituisce l'unità di misura di un canale.
+     *
+     * @param channel Il canale.
+     * @return L'unità; vuota se il parametro non ne ha una.
+     */
+    public String channelUnit(int channel) {
+        return channelUnits[channel];
+    }
+
+    /**
+     * Restituisce il numero di cambiamenti dei valori dalla creazione: se non è variato, i valori letti sono ancora attuali.
+     *
+     * @return La revisione corrente.
+     */
+    public synchronized long revision() {
+        return revision;
+    }
+
+    /**
+     * Registra chi deve essere avvisato quando i valori cambiano. L'avviso arriva sul thread che ha causato
+     * il cambiamento, quindi deve limitarsi a segnare i valori come da rileggere.
+     *
+     * @param listener L'azione da eseguire.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Rimuove un ascoltatore registrato con {@link #addListener(Runnable)}.
+     *
+     * @param listener L'azione da rimuovere.
+     */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Restituisce l'andamento delle transizioni.
+     *
+     * @return L'andamento.
+     */
+    public TrendShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Restituisce il valore corrente di un canale.
+     *
+     * @param channel Il canale.
+     * @return Il valore; <code>NaN</code> se nessun tempo lo ha ancora specificato.
+     */
+    public synchronized double value(int channel) {
+        return current[channel];
+    }
+
+    /**
+     * Restituisce il valore di destinazione di un canale.
+     *
+     * @param channel Il canale.
+     * @return Il valore del tempo corrente; <code>NaN</code> se nessun tempo lo ha ancora specificato.
+     */
+    public synchronized double target(int channel) {
+        return target[channel];
+    }
+
+    /**
+     * Copia i valori correnti di tutti i canali, in modo coerente, senza allocare.
+     *
+     * @param dst L'array di destinazione, lungo almeno {@link #channelCount()}.
+     */
+    public synchronized void copyValues(double[] dst) {
+        System.arraycopy(current, 0, dst, 0, current.length);
+    }
+
+    /**
+     * Imposta subito il valore di un canale, senza transizione. Usato per i valori iniziali del paziente.
+     *
+     * @param channel Il canale.
+     * @param value   Il valore.
+     */
+    public void set(int channel, double value) {
+        synchronized (this) {
+            current[channel] = value;
+            target[channel] = value;
+            revision++;
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Avvia la transizione verso i valori di un tempo. I canali che il tempo non specifica mantengono la destinazione precedente.
+     *
+     * @param state      La posizione del tempo nel frame.
+     * @param now        L'istante corrente, nel tempo della sessione.
+     * @param timerNanos La durata del timer del tempo; <code>0</code> se il tempo non ne ha uno.
+     */
+    public void retarget(int state, long now, long timerNanos) {
+        synchronized (this) {
+            retargetState(state, now, timerNanos);
+            revision++;
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Imposta le destinazioni dei canali specificati da un tempo.
+     *
+     * @param state      La posizione del tempo nel frame.
+     * @param now        L'istante corrente.
+     * @param timerNanos La durata del timer del tempo; <code>0</code> se assente.
+     */
+    private void retargetState(int state, long now, long timerNanos) {
+        if (frame.hasPa(state)) {
+            retargetChannel(SYSTOLIC, frame.systolicAt(state));
+            retargetChannel(DIASTOLIC, frame.diastolicAt(state));
+        }
+        if (frame.hasFc(state)) retargetChannel(FC, frame.fcAt(state));
+        if (frame.hasRr(state)) retargetChannel(RR, frame.rrAt(state));
+        if (frame.hasSpo2(state)) retargetChannel(SPO2, frame.spo2At(state));
+        if (frame.temperatureAt(state) > 0) retargetChannel(TEMPERATURE, frame.temperatureAt(state)); // 0 indica una temperatura non specificata.
+        if (frame.hasEtco2(state)) retargetChannel(ETCO2, frame.etco2At(state));
+        for (int p = frame.paramStart(state); p < frame.paramEnd(state); p++) {
+            double value = frame.paramNumericValue(p);
+            if (!Double.isNaN(value)) {
+                retargetChannel(channelOfName[frame.paramNameId(p)], value);
+            }
+        }
+        remainingNanos = timerNanos > 0 ? Math.min(timeConstantNanos, timerNanos) : timeConstantNanos;
+        lastNanos = now;
+        updateWaveforms();
+    }
+
+    /**
+     * Fa avanzare i valori fino all'istante indicato. Chiamato dal {@link TrendEngine} a ogni tick,
+     * o dall'orologio virtuale di una prova con i suoi istanti.
+     *
+     * @param now L'istante corrente, nel tempo della sessione.
+     */
+    public void advanceTo(long now) {
+        boolean changed = false;
+        synchronized (this) {
+            if (paused || lastNanos == 0) {
+                return;
+            }
+            long elapsed = now - lastNanos;
+            lastNanos = now;
+            if (elapsed > 0 && step(elapsed)) {
+                updateWaveforms();
+                revision++;
+                changed = true;
+            }
+        }
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Sospende le transizioni.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Riprende le transizioni dall'istante indicato, escludendo la durata della pausa.
+     *
+     * @param now L'istante corrente, nel tempo della sessione.
+     */
+    public synchronized void resume(long now) {
+        paused = false;
+        lastNanos = now;
+    }
+
+    /**
+     * Anticipa le transizioni della durata indicata.
+     *
+     * @param nanos I nanosecondi di cui avanzare.
+     */
+    public void fastForward(long nanos) {
+        boolean changed = false;
+        synchronized (this) {
+            if (nanos > 0 && step(nanos)) {
+                updateWaveforms();
+                revision++;
+                changed = true;
+            }
+        }
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Imposta la destinazione di un canale; un canale ancora senza valore la assume subito.
+     *
+     * @param channel Il canale.
+     * @param value   Il valore di destinazione.
+     */
+    private void retargetChannel(int channel, double value) {
+        target[channel] = value;
+        if (Double.isNaN(current[channel])) {
+            current[channel] = value;
+        }
+    }
+
+    /**
+     * Avvicina i valori correnti alle destinazioni per l'intervallo indicato.
+     *
+     * @param elapsed I nanosecondi trascorsi.
+     * @return <code>true</code> se almeno un valore è cambiato.
+     */
+    private boolean step(long elapsed) {
+        double fraction;
+        if (shape == TrendShape.LINEAR) {
+            fraction = elapsed >= remainingNanos ? 1.0 : (double) elapsed / remainingNanos; // Della differenza residua.
+            remainingNanos = Math.max(0L, remainingNanos - elapsed);
+        } else {
+            fraction = -Math.expm1(-(double) elapsed / timeConstantNanos);
+        }
+        boolean changed = false;
+        for (int c = 0; c < current.length; c++) {
+            double delta = target[c] - current[c];
+            if (delta != 0 && !Double.isNaN(delta)) {
+                current[c] = Math.abs(delta) < SETTLE_EPSILON ? target[c] : current[c] + delta * fraction;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Avvisa gli ascoltatori di un cambiamento, fuori dal lock.
+     */
+    private void notifyListeners() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Passa alle forme d'onda i valori correnti di FC, SpO₂, RR ed EtCO₂.
+     */
+    private void updateWaveforms() {
+        if (waveforms != null) {
+            waveforms.setVitals(orZero(current[FC]), orZero(current[SPO2]), orZero(current[RR]), orZero(current[ETCO2]));
+        }
+    }
+
+    /**
+     * Converte un valore per le forme d'onda, dove un parametro assente produce una linea piatta.
+     *
+     * @param value Il valore.
+     * @return Il valore, o <code>0</code> se è <code>NaN</code>.
+     */
+    private static float orZero(double value) {
+        return Double.isNaN(value) ? 0f : (float) value;
+    }
+}
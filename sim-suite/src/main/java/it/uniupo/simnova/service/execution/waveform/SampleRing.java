@@ -0,0 +1,177 @@
+package it.uniupo.simnova.service.execution.waveform;
+
+/**
+ * Buffer circolare di campioni <code>float</code> preallocato, con un solo scrittore e più lettori.
+ * <p>
+ * Ogni campione ha un numero di sequenza crescente. Lo scrittore pubblica la sequenza dopo aver scritto
+ * i campioni; un lettore copia i campioni a partire dall'ultima sequenza letta e verifica alla fine che
+ * lo scrittore non li abbia sovrascritti nel frattempo. Lo scrittore può avere in corso un blocco non ancora
+ * pubblicato, lungo al più metà della capacità: per questo ai lettori è esposta solo l'ultima metà del buffer.
+ * Scrittura e lettura non allocano.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class SampleRing {
+
+    /**
+     * I campioni.
+     */
+    private final float[] samples;
+
+    /**
+     * Maschera dell'indice: la capacità è una potenza di due.
+     */
+    private final int mask;
+
+    /**
+     * Campioni leggibili a ritroso dall'ultima pubblicazione: metà della capacità.
+     */
+    private final int window;
+
+    /**
+     * Sequenza del prossimo campione da scrivere, pubblicata dopo ogni blocco.
+     */
+    private volatile long published;
+
+    /**
+     * Sequenza del prossimo campione da scrivere, usata solo dallo scrittore.
+     */
+    private long cursor;
+
+    /**
+     * Crea un buffer.
+     *
+     * @param capacity La capacità, arrotondata alla potenza di due successiva.
+     */
+    public SampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.samples = new float[size];
+        this.mask = size - 1;
+        this.window = size / 2;
+    }
+
+    /**
+     * Aggiunge un campione. Visibile ai lettori solo dopo {@link #publish()}, da chiamare al più
+     * ogni {@link #window()} campioni.
+     *
+     * @param value Il campione.
+     */
+    void put(float value) {
+        samples[(int) (cursor++ & mask)] = value;
+    }
+
+    /**
+     * Rende visibili ai lettori i campioni aggiunti.
+     */
+    void publish() {
+        published = cursor;
+    }
+
+    /**
+     * Restituisce la sequenza del prossimo campione che verrà pubblicato.
+     *
+     * @return Il numero di campioni pubblicati dall'inizio.
+     */
+    public long sequence() {
+        return published;
+    }
+
+    /**
+     * Restituisce la capacità del buffer.
+     *
+     * @return Il numero di campioni allocati.
+     */
+    public int capacity() {
+        return samples.length;
+    }
+
+    /**
+     * Restituisce quanti campioni un lettore può recuperare a ritroso dall'ultima pubblicazione.
+     *
+     * @return Metà della capacità.
+     */
+    public int window() {
+        return window;
+    }
+
+    /**
+     * Crea un cursore di lettura posizionato sui prossimi campioni che verranno pubblicati.
+     *
+     * @return Il cursore, da riusare per tutte le letture dello stesso consumatore.
+     */
+    public Cursor newCursor() {
+        return new Cursor(published);
+    }
+
+    /**
+     * Copia i campioni pubblicati dopo l'ultima lettura del cursore e lo fa avanzare.
+     * Se il lettore è rimasto indietro oltre la {@link #window() finestra leggibile}, i campioni sovrascritti
+     * vengono saltati e conteggiati in {@link Cursor#lost()}.
+     *
+     * @param cursor Il cursore del lettore.
+     * @param dst    L'array di destinazione.
+     * @param offset La posizione di partenza in <code>dst</code>.
+     * @param max    Il numero massimo di campioni da copiare.
+     * @return Il numero di campioni copiati.
+     */
+    public int read(Cursor cursor, float[] dst, int offset, int max) {
+        while (true) {
+            long end = published;
+            long start = Math.max(cursor.position, end - window);
+            int count = (int) Math.min(max, end - start);
+            for (int k = 0; k < count; k++) {
+                dst[offset + k] = samples[(int) ((start + k) & mask)];
+            }
+            if (published - window <= start) { // Nessun campione copiato è stato sovrascritto durante la lettura.
+                cursor.lost += start - cursor.position;
+                cursor.position = start + count;
+                return count;
+            }
+        }
+    }
+
+    /**
+     * La posizione di lettura di un consumatore in un {@link SampleRing}.
+     */
+    public static final class Cursor {
+
+        /**
+         * La sequenza del prossimo campione da leggere.
+         */
+        private long position;
+
+        /**
+         * Numero di campioni sovrascritti prima di essere letti.
+         */
+        private long lost;
+
+        /**
+         * Crea un cursore.
+         *
+         * @param position La sequenza iniziale.
+         */
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Restituisce la sequenza del prossimo campione da leggere.
+         *
+         * @return La posizione del cursore.
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Restituisce il numero di campioni persi perché il lettore è rimasto troppo indietro.
+         *
+         * @return I campioni persi.
+         */
+        public long lost() {
+            return lost;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package it.uniupo.simnova.service.execution.waveform;
+
+/**
+ * I canali di forma d'onda sintetizzati per il monitor di una sessione.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public enum WaveformChannel {
+    /**
+     * Elettrocardiogramma, in mV, guidato dalla frequenza cardiaca.
+     */
+    ECG(Integer.getInteger("simsuite.execution.waveform.ecg-hz", 250), "mV"),
+    /**
+     * Pletismografia del saturimetro, normalizzata tra <code>0</code> e <code>1</code>, guidata da frequenza cardiaca e SpO₂.
+     */
+    PLETH(125, ""),
+    /**
+     * Capnografia, in mmHg, guidata da frequenza respiratoria ed EtCO₂.
+     */
+    CAPNO(125, "mmHg");
+
+    /**
+     * Secondi di segnale leggibili dal buffer circolare di ogni canale.
+     */
+    private static final int BUFFER_SECONDS = 8;
+
+    /**
+     * Frequenza di campionamento, in Hz.
+     */
+    private final int sampleRate;
+
+    /**
+     * L'unità di misura dei campioni.
+     */
+    private final String unit;
+
+    /**
+     * Crea un canale.
+     *
+     * @param sampleRate La frequenza di campionamento, in Hz.
+     * @param unit       L'unità di misura.
+     */
+    WaveformChannel(int sampleRate, String unit) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.unit = unit;
+    }
+
+    /**
+     * Restituisce la frequenza di campionamento.
+     *
+     * @return I campioni al secondo.
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Restituisce l'unità di misura dei campioni.
+     *
+     * @return L'unità, vuota per i segnali normalizzati.
+     */
+    public String unit() {
+        return unit;
+    }
+
+    /**
+     * Restituisce la capacità del buffer circolare del canale: la potenza di due la cui metà leggibile
+     * contiene almeno {@value #BUFFER_SECONDS} secondi di segnale.
+     *
+     * @return Il numero di campioni del buffer.
+     */
+    public int bufferCapacity() {
+        return Integer.highestOneBit(2 * sampleRate * BUFFER_SECONDS - 1) << 1;
+    }
+}
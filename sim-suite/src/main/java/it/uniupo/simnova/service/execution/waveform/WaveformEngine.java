@@ -0,0 +1,157 @@
+package it.uniupo.simnova.service.execution.waveform;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread di sintesi condiviso che fa avanzare le forme d'onda di tutte le sessioni a blocchi.
+ * <p>
+ * Un solo thread demone genera, ogni {@code simsuite.execution.waveform.frame-ms} millisecondi, i campioni
+ * maturati da ciascun {@link WaveformGenerator} registrato. Il ritmo si basa sul tempo trascorso dall'avvio,
+ * quindi un blocco in ritardo non si accumula sui successivi; i campioni generati dipendono solo dal tempo
+ * reale trascorso, non dal numero di blocchi eseguiti.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class WaveformEngine implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare avvio e arresto del thread di sintesi.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WaveformEngine.class);
+
+    /**
+     * Durata di un blocco di sintesi in millisecondi, configurabile con la proprietà di sistema <code>simsuite.execution.waveform.frame-ms</code>.
+     */
+    private static final long FRAME_MILLIS = Math.max(1, Long.getLong("simsuite.execution.waveform.frame-ms", 20L));
+
+    /**
+     * I generatori registrati; l'elenco cambia solo all'avvio e al termine delle sessioni.
+     */
+    private final CopyOnWriteArrayList<WaveformGenerator> generators = new CopyOnWriteArrayList<>();
+
+    /**
+     * Il thread di sintesi.
+     */
+    private final Thread thread;
+
+    /**
+     * L'istante di avvio, base del ritmo dei blocchi.
+     */
+    private final long originNanos = System.nanoTime();
+
+    /**
+     * Numero di blocchi eseguiti.
+     */
+    private final AtomicLong frames = new AtomicLong();
+
+    /**
+     * Tempo totale speso nella sintesi, in nanosecondi.
+     */
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * Indica se il motore è stato chiuso.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Crea il motore e ne avvia il thread di sintesi.
+     *
+     * @param threadName Il nome del thread.
+     */
+    public WaveformEngine(String threadName) {
+        thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Aggiunge un generatore alla sintesi, a partire dal blocco successivo.
+     *
+     * @param generator Il generatore.
+     */
+    public void register(WaveformGenerator generator) {
+        generators.addIfAbsent(generator);
+    }
+
+    /**
+     * Rimuove un generatore dalla sintesi. I campioni già pubblicati restano leggibili.
+     *
+     * @param generator Il generatore.
+     */
+    public void unregister(WaveformGenerator generator) {
+        generators.remove(generator);
+    }
+
+    /**
+     * Restituisce il numero di generatori registrati.
+     *
+     * @return Il numero di generatori attivi.
+     */
+    public int size() {
+        return generators.size();
+    }
+
+    /**
+     * Restituisce la frazione del tempo trascorso spesa nella sintesi.
+     *
+     * @return Un valore tra <code>0</code> e <code>1</code>.
+     */
+    public double getLoad() {
+        long elapsed = System.nanoTime() - originNanos;
+        return elapsed <= 0 ? 0.0 : Math.min(1.0, (double) busyNanos.get() / elapsed);
+    }
+
+    /**
+     * Arresta il thread di sintesi.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        generators.clear();
+        logger.info("Sintesi delle forme d'onda arrestata dopo {} blocchi (carico {}%).", frames.get(),
+                String.format("%.2f", getLoad() * 100));
+    }
+
+    /**
+     * Ciclo del thread di sintesi.
+     */
+    private void run() {
+        final long frameNanos = TimeUnit.MILLISECONDS.toNanos(FRAME_MILLIS);
+        long frame = 0;
+        while (!closed) {
+            long target = originNanos + (frame + 1) * frameNanos;
+            long wait = target - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue; // Risveglio anticipato o spurio: ricontrolla la scadenza.
+            }
+            frame = (System.nanoTime() - originNanos) / frameNanos; // Salta i blocchi persi invece di recuperarli.
+
+            long now = System.nanoTime();
+            for (WaveformGenerator generator : generators) {
+                try {
+                    generator.advanceTo(now);
+                } catch (RuntimeException e) {
+                    logger.error("Errore durante la sintesi delle forme d'onda", e);
+                }
+            }
+            busyNanos.addAndGet(System.nanoTime() - now);
+            frames.incrementAndGet();
+        }
+    }
+}
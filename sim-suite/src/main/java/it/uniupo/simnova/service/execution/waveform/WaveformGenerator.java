@@ -0,0 +1,162 @@
+package it.uniupo.simnova.service.execution.waveform;
+
+/**
+ * Sintetizza le forme d'onda di un paziente simulato nei buffer circolari dei {@link WaveformChannel canali}.
+ * <p>
+ * I parametri vitali che guidano i segnali vengono impostati dal worker della sessione e letti dal thread di
+ * sintesi del {@link WaveformEngine}; la sintesi lavora solo su campi primitivi e tabelle precalcolate, quindi
+ * non alloca nulla per campione. Ogni canale conserva la posizione nel ciclo corrente: un cambio di frequenza
+ * modifica la durata dei cicli successivi senza discontinuità nel segnale.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class WaveformGenerator {
+
+    /**
+     * I canali, nell'ordine degli indici usati dagli array interni.
+     */
+    private static final WaveformChannel[] CHANNELS = WaveformChannel.values();
+
+    /**
+     * Limite ai campioni generati in un solo avanzamento, per non riempire più volte il buffer dopo una lunga sospensione.
+     */
+    private static final double MAX_SECONDS_PER_ADVANCE = 1.0;
+
+    /**
+     * I buffer dei canali.
+     */
+    private final SampleRing[] rings = new SampleRing[CHANNELS.length];
+
+    /**
+     * Secondi trascorsi nel ciclo corrente di ciascun canale.
+     */
+    private final double[] cycleTime = new double[CHANNELS.length];
+
+    /**
+     * Frazione di campione non ancora generata di ciascun canale.
+     */
+    private final double[] carry = new double[CHANNELS.length];
+
+    // Parametri vitali correnti, scritti dalla sessione e letti dal thread di sintesi.
+    private volatile float heartRate;
+    private volatile float spo2;
+    private volatile float respiratoryRate;
+    private volatile float etco2;
+
+    /**
+     * L'istante dell'ultimo avanzamento; <code>0</code> prima del primo. Usato solo dal thread di sintesi.
+     */
+    private long lastNanos;
+
+    /**
+     * Crea un generatore con i buffer preallocati di tutti i canali.
+     */
+    public WaveformGenerator() {
+        for (WaveformChannel channel : CHANNELS) {
+            rings[channel.ordinal()] = new SampleRing(channel.bufferCapacity());
+        }
+    }
+
+    /**
+     * Stima la memoria dei buffer di un generatore.
+     *
+     * @return I byte occupati dai campioni di tutti i canali.
+     */
+    public static long estimateBytes() {
+        long bytes = 0;
+        for (WaveformChannel channel : CHANNELS) {
+            bytes += (long) channel.bufferCapacity() * Float.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Imposta i parametri vitali che guidano i segnali. I valori non positivi producono una linea piatta.
+     *
+     * @param heartRate       Frequenza cardiaca, in bpm.
+     * @param spo2            Saturazione, in percentuale.
+     * @param respiratoryRate Frequenza respiratoria, in atti al minuto.
+     * @param etco2           EtCO₂, in mmHg.
+     */
+    public void setVitals(float heartRate, float spo2, float respiratoryRate, float etco2) {
+        this.heartRate = heartRate;
+        this.spo2 = spo2;
+        this.respiratoryRate = respiratoryRate;
+        this.etco2 = etco2;
+    }
+
+    /**
+     * Restituisce il buffer di un canale, da cui i monitor leggono i campioni.
+     *
+     * @param channel Il canale.
+     * @return Il buffer circolare del canale.
+     */
+    public SampleRing ring(WaveformChannel channel) {
+        return rings[channel.ordinal()];
+    }
+
+    /**
+     * Genera i campioni di tutti i canali fino all'istante indicato. Chiamato solo dal thread di sintesi.
+     *
+     * @param nowNanos L'istante corrente, in {@link System#nanoTime()}.
+     */
+    void advanceTo(long nowNanos) {
+        if (lastNanos == 0) {
+            lastNanos = nowNanos;
+            return;
+        }
+        double seconds = Math.min(MAX_SECONDS_PER_ADVANCE, (nowNanos - lastNanos) / 1e9);
+        lastNanos = nowNanos;
+        if (seconds <= 0) {
+            return;
+        }
+        float hr = heartRate;
+        double beat = hr > 0 ? 60.0 / hr : 0;
+        float rr = respiratoryRate;
+        double breath = rr > 0 ? 60.0 / rr : 0;
+        float saturation = spo2;
+        float pulseAmplitude = saturation > 0 ? Math.max(0.2f, Math.min(1f, (saturation - 50f) / 50f)) : 0f;
+
+        synthesize(WaveformChannel.ECG, seconds, beat, WaveformTemplates.ECG, WaveformTemplates.ECG_SECONDS, 1f);
+        synthesize(WaveformChannel.PLETH, seconds, beat, WaveformTemplates.PLETH, WaveformTemplates.PLETH_SECONDS, pulseAmplitude);
+        synthesize(WaveformChannel.CAPNO, seconds, breath, WaveformTemplates.CAPNO, breath, Math.max(0f, etco2));
+    }
+
+    /**
+     * Genera i campioni di un canale per l'intervallo indicato.
+     *
+     * @param channel         Il canale.
+     * @param seconds         La durata dell'intervallo.
+     * @param period          La durata del ciclo in secondi; <code>0</code> per una linea piatta.
+     * @param table           La forma del ciclo.
+     * @param templateSeconds La durata descritta dalla tabella, compressa se supera il ciclo.
+     * @param amplitude       Il fattore di scala dei campioni.
+     */
+    private void synthesize(WaveformChannel channel, double seconds, double period, float[] table,
+                            double templateSeconds, float amplitude) {
+        final int c = channel.ordinal();
+        final double dt = 1.0 / channel.sampleRate();
+        double exact = carry[c] + seconds * channel.sampleRate();
+        int count = (int) exact;
+        carry[c] = exact - count;
+
+        SampleRing ring = rings[c];
+        double t = cycleTime[c];
+        double span = period > 0 ? Math.min(templateSeconds, period) : 1;
+        for (int k = 0; k < count; k++) {
+            float value = 0f;
+            if (period > 0) {
+                t += dt;
+                if (t >= period) {
+                    t %= period;
+                }
+                value = WaveformTemplates.sample(table, t / span) * amplitude;
+            }
+            ring.put(value);
+        }
+        cycleTime[c] = t;
+        ring.publish();
+    }
+}
@@ -0,0 +1,122 @@
+package it.uniupo.simnova.service.execution.waveform;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Tabelle precalcolate della forma di un ciclo di ciascun segnale, lette per interpolazione lineare.
+ * <p>
+ * ECG e pletismografia descrivono un battito di durata fissa ({@link #ECG_SECONDS}, {@link #PLETH_SECONDS}):
+ * a frequenze alte il battito viene compresso, a frequenze basse il resto del ciclo resta sulla linea di base,
+ * come nel segnale reale dove si accorcia soprattutto la diastole. La capnografia descrive invece un atto
+ * respiratorio intero e viene scalata sulla sua durata.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+final class WaveformTemplates {
+
+    /**
+     * Durata in secondi del complesso P-QRS-T descritto da {@link #ECG}.
+     */
+    static final double ECG_SECONDS = 0.6;
+
+    /**
+     * Durata in secondi dell'onda di polso descritta da {@link #PLETH}.
+     */
+    static final double PLETH_SECONDS = 0.8;
+
+    /**
+     * Un complesso P-QRS-T, in mV.
+     */
+    static final float[] ECG = build(512, x -> {
+        double t = x * ECG_SECONDS;
+        return gauss(t, 0.10, 0.025, 0.15)   // Onda P.
+                + gauss(t, 0.21, 0.008, -0.10)  // Q.
+                + gauss(t, 0.23, 0.010, 1.00)   // R.
+                + gauss(t, 0.25, 0.008, -0.25)  // S.
+                + gauss(t, 0.45, 0.040, 0.30);  // Onda T.
+    });
+
+    /**
+     * Un'onda di polso normalizzata, con picco sistolico e incisura dicrota.
+     */
+    static final float[] PLETH = build(256, x -> {
+        double t = x * PLETH_SECONDS;
+        return gauss(t, 0.15, 0.06, 1.0) + gauss(t, 0.40, 0.08, 0.35);
+    });
+
+    /**
+     * Un atto respiratorio normalizzato: inspirazione a zero, salita espiratoria, plateau alveolare
+     * in lieve crescita e discesa rapida all'inizio dell'inspirazione successiva.
+     */
+    static final float[] CAPNO = build(256, x -> {
+        if (x < 0.40) return 0.0;
+        if (x < 0.50) return 0.9 * smoothstep((x - 0.40) / 0.10);
+        if (x < 0.92) return 0.9 + 0.1 * (x - 0.50) / 0.42;
+        return 1.0 - smoothstep((x - 0.92) / 0.08);
+    });
+
+    /**
+     * Costruttore privato: la classe espone solo tabelle e metodi statici.
+     */
+    private WaveformTemplates() {
+    }
+
+    /**
+     * Legge una tabella in una posizione del ciclo, interpolando tra i due campioni adiacenti.
+     *
+     * @param table    La tabella.
+     * @param position La posizione nel ciclo, tra <code>0</code> e <code>1</code>; fuori dall'intervallo restituisce la linea di base.
+     * @return Il valore del segnale.
+     */
+    static float sample(float[] table, double position) {
+        if (position < 0 || position >= 1) {
+            return 0f;
+        }
+        double index = position * (table.length - 1);
+        int i = (int) index;
+        float frac = (float) (index - i);
+        return table[i] + (table[i + 1] - table[i]) * frac;
+    }
+
+    /**
+     * Campiona una funzione del ciclo in una tabella.
+     *
+     * @param size  Il numero di campioni.
+     * @param shape La forma, in funzione della posizione nel ciclo tra <code>0</code> e <code>1</code>.
+     * @return La tabella.
+     */
+    private static float[] build(int size, DoubleUnaryOperator shape) {
+        float[] table = new float[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = (float) shape.applyAsDouble((double) i / (size - 1));
+        }
+        return table;
+    }
+
+    /**
+     * Una gaussiana, componente elementare delle onde ECG e di polso.
+     *
+     * @param t         Il tempo.
+     * @param center    Il centro.
+     * @param width     La deviazione standard.
+     * @param amplitude L'ampiezza al centro.
+     * @return Il valore in <code>t</code>.
+     */
+    private static double gauss(double t, double center, double width, double amplitude) {
+        double z = (t - center) / width;
+        return amplitude * Math.exp(-0.5 * z * z);
+    }
+
+    /**
+     * Raccordo cubico tra <code>0</code> e <code>1</code>.
+     *
+     * @param x La posizione, limitata all'intervallo <code>[0, 1]</code>.
+     * @return Il valore raccordato.
+     */
+    private static double smoothstep(double x) {
+        double c = Math.max(0.0, Math.min(1.0, x));
+        return c * c * (3 - 2 * c);
+    }
+}
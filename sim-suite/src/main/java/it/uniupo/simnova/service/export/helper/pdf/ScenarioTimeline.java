@@ -27,7 +27,7 @@ import static it.uniupo.simnova.service.export.helper.pdf.SectionDrawer.drawWrap
  * con tutti i relativi parametri vitali, eventuali parametri aggiuntivi, dettagli specifici e azioni.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 public class ScenarioTimeline {
 
@@ -116,8 +116,8 @@ public class ScenarioTimeline {
             drawWrappedText(FONTREGULAR, BODY_FONT_SIZE, paramsIndent, String.format("EtCO2: %d mmHg", tempo.getEtCO2() != null ? tempo.getEtCO2() : 0));
 
             // Parametri aggiuntivi (se presenti).
-            List<ParametroAggiuntivo> parametriAggiuntivo = advancedScenarioService.getParametriAggiuntiviByTempoId(tempo.getIdTempo(), scenario.getId());
-            if (!parametriAggiuntivo.isEmpty()) {
+            List<ParametroAggiuntivo> parametriAggiuntivo = tempo.getParametriAggiuntivi(); // Già caricati con i tempi.
+            if (parametriAggiuntivo != null && !parametriAggiuntivo.isEmpty()) {
                 for (ParametroAggiuntivo parametro : parametriAggiuntivo) {
                     checkForNewPage(LEADING * 2);
                     // Applica la sostituzione dei caratteri speciali ai nomi e unità di misura dei parametri aggiuntivi.
@@ -1,23 +1,42 @@
 package it.uniupo.simnova.service.scenario;
 
 import it.uniupo.simnova.domain.scenario.Scenario;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatchResult;
+import it.uniupo.simnova.service.scenario.search.ScenarioCursor;
+import it.uniupo.simnova.service.scenario.search.ScenarioFilter;
+import it.uniupo.simnova.service.scenario.search.ScenarioFullTextIndex;
+import it.uniupo.simnova.service.scenario.search.ScenarioPage;
+import it.uniupo.simnova.service.scenario.search.ScenarioSort;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
+import it.uniupo.simnova.utils.db.WriteBehindKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Servizio per la gestione degli scenari.
  * Fornisce metodi per recuperare, creare e aggiornare i dati degli scenari nel database.
  * Questo servizio gestisce le operazioni CRUD di base per gli scenari, inclusa
  * la determinazione del tipo di scenario (Quick, Advanced, Patient Simulated).
+ * Le letture usano le connessioni del pool, mentre le modifiche vengono eseguite tramite
+ * {@link DBConnect#write(it.uniupo.simnova.utils.db.WriteTask)} sullo scrittore singolo.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.8
  */
 @SuppressWarnings({"LoggingSimilarMessage"}) // Sopprime l'avviso di PMD per messaggi di log simili, usato con cautela.
 @Service
@@ -28,6 +47,45 @@ public class ScenarioService {
      */
     private static final Logger logger = LoggerFactory.getLogger(ScenarioService.class);
 
+    /**
+     * Espressione SQL che classifica uno scenario in base alle righe collegate in <code>AdvancedScenario</code>
+     * e <code>PatientSimulatedScenario</code>. Richiede gli alias <code>a</code> e <code>p</code> di {@link #SCENARIO_TYPE_JOIN}.
+     */
+    private static final String SCENARIO_TYPE_CASE = "CASE " +
+            "WHEN a.id_advanced_scenario IS NULL THEN 'Quick Scenario' " +
+            "WHEN p.id_patient_simulated_scenario IS NULL THEN 'Advanced Scenario' " +
+            "ELSE 'Patient Simulated Scenario' END";
+
+    /**
+     * Join esterni sulla tabella <code>Scenario</code> (alias <code>s</code>) necessari a {@link #SCENARIO_TYPE_CASE}.
+     */
+    private static final String SCENARIO_TYPE_JOIN =
+            "LEFT JOIN AdvancedScenario a ON a.id_advanced_scenario = s.id_scenario " +
+            "LEFT JOIN PatientSimulatedScenario p ON p.id_patient_simulated_scenario = s.id_scenario ";
+
+    /**
+     * Join con l'indice full-text, aggiunto alla ricerca quando il filtro contiene un testo.
+     */
+    private static final String FULL_TEXT_JOIN = "JOIN ScenarioFts ON ScenarioFts.rowid = s.id_scenario ";
+
+    /**
+     * Estratto del contenuto che corrisponde al testo cercato, con i termini delimitati dai marcatori di {@link ScenarioFullTextIndex}.
+     */
+    private static final String FULL_TEXT_SNIPPET = "snippet(ScenarioFts, -1, char(" + (int) ScenarioFullTextIndex.HIGHLIGHT_START + "), char(" +
+            (int) ScenarioFullTextIndex.HIGHLIGHT_END + "), '…', 16)";
+
+    /**
+     * Numero massimo di ID passati in una singola clausola <code>IN</code> da {@link #getScenarioTypes(Collection)}.
+     */
+    private static final int TYPE_LOOKUP_CHUNK_SIZE = 500;
+
+    /**
+     * Campi testuali dello scenario modificabili dagli editor in linea con {@link #updateScenarioFieldDeferred}.
+     * L'elenco chiuso impedisce che il nome della colonna, concatenato nella query, provenga da input arbitrario.
+     */
+    private static final Set<String> DEFERRED_FIELDS = Set.of(
+            "descrizione", "briefing", "info_genitore", "patto_aula", "obiettivo", "moulage", "liquidi");
+
     /**
      * Costruttore privato per prevenire l'istanza diretta del servizio.
      * Utilizzare il contesto Spring per ottenere un'istanza di questo servizio.
@@ -45,6 +103,23 @@ public class ScenarioService {
      * o in caso di errore SQL.
      */
     public Scenario getScenarioById(Integer id) {
+        DBConnect.getInstance().flushWriteBehind(id).join(); // Il dettaglio deve riflettere le modifiche differite.
+        try {
+            return ScenarioCache.getInstance().get(ScenarioCache.Region.SCENARIO, id, () -> loadScenario(id), Scenario::new);
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante il recupero dello scenario con ID {}: {}", id, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Legge dal database i dati completi di uno scenario, senza passare dalla cache.
+     *
+     * @param id L'identificativo dello scenario.
+     * @return Lo scenario; <code>null</code> se non esiste.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private Scenario loadScenario(int id) throws SQLException {
         final String sql = "SELECT * FROM Scenario WHERE id_scenario = ?";
         Scenario scenario = null;
 
@@ -77,8 +152,6 @@ public class ScenarioService {
             } else {
                 logger.warn("Nessuno scenario trovato con ID {}.", id);
             }
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante il recupero dello scenario con ID {}: {}", id, e.getMessage(), e);
         }
         return scenario;
     }
@@ -86,12 +159,14 @@ public class ScenarioService {
     /**
      * Recupera una lista di tutti gli scenari presenti nel database.
      * Per motivi di performance e di visualizzazione, vengono recuperati solo i campi essenziali.
+     * Il tipo di ciascuno scenario è calcolato nella stessa query ed è disponibile tramite {@link Scenario#getScenarioType()}.
      *
      * @return Una {@link List} di oggetti {@link Scenario} contenente gli scenari principali.
      * Restituisce una lista vuota in caso di errore o se non sono presenti scenari.
      */
     public List<Scenario> getAllScenarios() {
-        final String sql = "SELECT id_scenario, titolo, autori, patologia, descrizione, tipologia_paziente FROM Scenario";
+        final String sql = "SELECT s.id_scenario, s.titolo, s.autori, s.patologia, s.descrizione, s.tipologia_paziente, " +
+                SCENARIO_TYPE_CASE + " AS tipo_scenario FROM Scenario s " + SCENARIO_TYPE_JOIN;
         List<Scenario> scenarios = new ArrayList<>();
 
         try (Connection conn = DBConnect.getInstance().getConnection();
@@ -107,6 +182,7 @@ public class ScenarioService {
                         rs.getString("patologia"),
                         rs.getString("descrizione"),
                         rs.getString("tipologia_paziente"));
+                scenario.setScenarioType(rs.getString("tipo_scenario"));
                 scenarios.add(scenario);
             }
             logger.info("Recuperati {} scenari dal database.", scenarios.size());
@@ -131,61 +207,67 @@ public class ScenarioService {
      * @return L'ID (<code>int</code>) dello scenario creato o aggiornato; <code>-1</code> in caso di errore.
      */
     public int startQuickScenario(Integer scenarioId, String titolo, String nomePaziente, String patologia, String autori, float timerGenerale, String tipologia) {
-        try (Connection conn = DBConnect.getInstance().getConnection()) {
-            // Verifica se lo scenario esiste per determinare se fare un UPDATE o un INSERT.
-            if (scenarioId != null && existScenario(scenarioId)) {
-                // Aggiorna uno scenario esistente.
-                final String updateSql = "UPDATE Scenario SET titolo=?, nome_paziente=?, patologia=?, autori=?, timer_generale=?, tipologia_paziente=? WHERE id_scenario=?";
-                try (PreparedStatement stmt = conn.prepareStatement(updateSql)) {
-                    stmt.setString(1, titolo);
-                    stmt.setString(2, nomePaziente);
-                    stmt.setString(3, patologia);
-                    stmt.setString(4, autori);
-                    stmt.setFloat(5, timerGenerale);
-                    stmt.setString(6, tipologia);
-                    stmt.setInt(7, scenarioId);
-
-                    int affectedRows = stmt.executeUpdate();
-                    if (affectedRows > 0) {
-                        logger.info("Scenario con ID {} aggiornato con successo.", scenarioId);
-                        return scenarioId;
-                    } else {
-                        logger.warn("Nessun scenario aggiornato con ID {}. Potrebbe non esistere o il valore è lo stesso.", scenarioId);
-                        return -1;
+        try {
+            int savedId = DBConnect.getInstance().write(conn -> {
+                // Verifica se lo scenario esiste per determinare se fare un UPDATE o un INSERT.
+                if (scenarioId != null && existScenario(scenarioId)) {
+                    // Aggiorna uno scenario esistente.
+                    final String updateSql = "UPDATE Scenario SET titolo=?, nome_paziente=?, patologia=?, autori=?, timer_generale=?, tipologia_paziente=? WHERE id_scenario=?";
+                    try (PreparedStatement stmt = conn.prepareStatement(updateSql)) {
+                        stmt.setString(1, titolo);
+                        stmt.setString(2, nomePaziente);
+                        stmt.setString(3, patologia);
+                        stmt.setString(4, autori);
+                        stmt.setFloat(5, timerGenerale);
+                        stmt.setString(6, tipologia);
+                        stmt.setInt(7, scenarioId);
+
+                        int affectedRows = stmt.executeUpdate();
+                        if (affectedRows > 0) {
+                            logger.info("Scenario con ID {} aggiornato con successo.", scenarioId);
+                            return scenarioId;
+                        } else {
+                            logger.warn("Nessun scenario aggiornato con ID {}. Potrebbe non esistere o il valore è lo stesso.", scenarioId);
+                            return -1;
+                        }
                     }
-                }
-            } else {
-                // Crea un nuovo scenario.
-                final String insertSql = "INSERT INTO Scenario (titolo, nome_paziente, patologia, autori, timer_generale, tipologia_paziente) VALUES (?,?,?,?,?,?)";
-                // Specifica Statement.RETURN_GENERATED_KEYS per recuperare l'ID generato automaticamente.
-                try (PreparedStatement stmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-                    stmt.setString(1, titolo);
-                    stmt.setString(2, nomePaziente);
-                    stmt.setString(3, patologia);
-                    stmt.setString(4, autori);
-                    stmt.setFloat(5, timerGenerale);
-                    stmt.setString(6, tipologia);
-
-                    int affectedRows = stmt.executeUpdate();
-                    logger.debug("Tentativo di inserimento scenario: {} righe interessate.", affectedRows);
-
-                    if (affectedRows > 0) {
-                        try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                int generatedId = generatedKeys.getInt(1);
-                                logger.info("Nuovo scenario creato con ID: {}.", generatedId);
-                                return generatedId;
-                            } else {
-                                logger.error("Creazione scenario fallita: nessun ID generato restituito.");
-                                return -1;
+                } else {
+                    // Crea un nuovo scenario.
+                    final String insertSql = "INSERT INTO Scenario (titolo, nome_paziente, patologia, autori, timer_generale, tipologia_paziente) VALUES (?,?,?,?,?,?)";
+                    // Specifica Statement.RETURN_GENERATED_KEYS per recuperare l'ID generato automaticamente.
+                    try (PreparedStatement stmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                        stmt.setString(1, titolo);
+                        stmt.setString(2, nomePaziente);
+                        stmt.setString(3, patologia);
+                        stmt.setString(4, autori);
+                        stmt.setFloat(5, timerGenerale);
+                        stmt.setString(6, tipologia);
+
+                        int affectedRows = stmt.executeUpdate();
+                        logger.debug("Tentativo di inserimento scenario: {} righe interessate.", affectedRows);
+
+                        if (affectedRows > 0) {
+                            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                                if (generatedKeys.next()) {
+                                    int generatedId = generatedKeys.getInt(1);
+                                    logger.info("Nuovo scenario creato con ID: {}.", generatedId);
+                                    return generatedId;
+                                } else {
+                                    logger.error("Creazione scenario fallita: nessun ID generato restituito.");
+                                    return -1;
+                                }
                             }
+                        } else {
+                            logger.warn("Creazione scenario fallita: nessuna riga inserita.");
+                            return -1;
                         }
-                    } else {
-                        logger.warn("Creazione scenario fallita: nessuna riga inserita.");
-                        return -1;
                     }
                 }
+            });
+            if (savedId > 0) {
+                ScenarioCache.getInstance().invalidate(ScenarioCache.Region.SCENARIO, savedId); // Anche un nuovo ID può essere in cache come scenario assente.
             }
+            return savedId;
         } catch (SQLException e) {
             logger.error("Errore SQL durante l'inserimento/aggiornamento dello scenario: {}", e.getMessage(), e);
         }
@@ -200,7 +282,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioDescription(int scenarioId, String descrizione) {
-        return updateScenarioField(scenarioId, "descrizione", descrizione);
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.DESCRIZIONE, descrizione);
     }
 
     /**
@@ -211,7 +293,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioBriefing(int scenarioId, String briefing) {
-        return updateScenarioField(scenarioId, "briefing", briefing);
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.BRIEFING, briefing);
     }
 
     /**
@@ -222,7 +304,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioPattoAula(int scenarioId, String patto_aula) {
-        return updateScenarioField(scenarioId, "patto_aula", patto_aula);
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.PATTO_AULA, patto_aula);
     }
 
     /**
@@ -233,7 +315,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioObiettiviDidattici(int scenarioId, String obiettivo) {
-        return updateScenarioField(scenarioId, "obiettivo", obiettivo);
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.OBIETTIVO, obiettivo);
     }
 
     /**
@@ -244,7 +326,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioMoulage(int scenarioId, String moulage) {
-        return updateScenarioField(scenarioId, "moulage", moulage);
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.MOULAGE, moulage);
     }
 
     /**
@@ -255,67 +337,561 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioLiquidi(int scenarioId, String liquidi) {
-        return updateScenarioField(scenarioId, "liquidi", liquidi);
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.LIQUIDI, liquidi);
     }
 
     /**
-     * Aggiorna un campo generico dello scenario nel database.
+     * Aggiorna un singolo campo dello scenario tramite {@link #applyPatch(int, ScenarioPatch)}.
      * Questo è un metodo helper privato utilizzato dagli altri metodi <code>updateScenarioXxx</code>.
      *
      * @param scenarioId L'ID (<code>int</code>) dello scenario da aggiornare.
-     * @param fieldName  Il nome della colonna nel database da aggiornare. **Deve essere validato per prevenire SQL Injection.**
-     *                   In questo contesto, si assume che <code>fieldName</code> sia passato da metodi che garantiscono la sua sicurezza.
+     * @param field      Il campo da aggiornare.
      * @param value      Il nuovo valore (<code>String</code>) da impostare per il campo.
-     * @return <code>true</code> se l'aggiornamento è avvenuto con successo (almeno una riga modificata); <code>false</code> altrimenti.
+     * @return <code>true</code> se lo scenario esiste e l'aggiornamento è stato confermato; <code>false</code> altrimenti.
      */
-    private boolean updateScenarioField(int scenarioId, String fieldName, String value) {
-        final String sql = "UPDATE Scenario SET " + fieldName + " = ? WHERE id_scenario = ?";
+    private boolean updateScenarioField(int scenarioId, ScenarioPatch.Field field, String value) {
+        return applyPatch(scenarioId, ScenarioPatch.of(field, value)).success();
+    }
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Applica a uno scenario tutte le modifiche di una {@link ScenarioPatch} con un solo <code>UPDATE</code>,
+     * all'interno di un'unica transazione.
+     * I valori correnti vengono letti nella stessa transazione: i campi che non cambiano sono esclusi
+     * dall'<code>UPDATE</code>, che non viene eseguito affatto se nessun campo cambia.
+     *
+     * @param scenarioId L'ID (<code>int</code>) dello scenario da aggiornare.
+     * @param patch      Le modifiche da applicare.
+     * @return Un {@link ScenarioPatchResult} con i campi effettivamente cambiati;
+     * {@link ScenarioPatchResult#FAILED} se lo scenario non esiste o in caso di errore SQL.
+     */
+    @SuppressWarnings("SqlSourceToSinkFlow") // I nomi delle colonne provengono dall'enum ScenarioPatch.Field.
+    public ScenarioPatchResult applyPatch(int scenarioId, ScenarioPatch patch) {
+        Map<ScenarioPatch.Field, String> values = patch.values();
+        if (values.isEmpty()) {
+            return new ScenarioPatchResult(getScenarioById(scenarioId) != null, Set.of());
+        }
+        List<ScenarioPatch.Field> fields = new ArrayList<>(values.keySet());
+        StringBuilder select = new StringBuilder("SELECT ");
+        for (int i = 0; i < fields.size(); i++) {
+            select.append(i > 0 ? ", " : "").append(fields.get(i).column());
+        }
+        select.append(" FROM Scenario WHERE id_scenario = ?");
+        DBConnect.getInstance().flushWriteBehind(scenarioId); // Una modifica differita più vecchia non deve sovrascrivere questa.
 
-            stmt.setString(1, value);
-            stmt.setInt(2, scenarioId);
+        try {
+            Set<ScenarioPatch.Field> changed = DBConnect.getInstance().write(conn -> {
+                Set<ScenarioPatch.Field> diff = EnumSet.noneOf(ScenarioPatch.Field.class);
+                try (PreparedStatement stmt = conn.prepareStatement(select.toString())) {
+                    stmt.setInt(1, scenarioId);
+                    ResultSet rs = stmt.executeQuery();
+                    if (!rs.next()) {
+                        return null; // Scenario inesistente.
+                    }
+                    for (int i = 0; i < fields.size(); i++) {
+                        if (!Objects.equals(rs.getString(i + 1), values.get(fields.get(i)))) {
+                            diff.add(fields.get(i));
+                        }
+                    }
+                }
+                if (diff.isEmpty()) {
+                    return diff;
+                }
 
-            boolean result = stmt.executeUpdate() > 0;
-            if (result) {
-                logger.info("Campo '{}' dello scenario con ID {} aggiornato con successo.", fieldName, scenarioId);
+                StringBuilder update = new StringBuilder("UPDATE Scenario SET ");
+                int index = 0;
+                for (ScenarioPatch.Field field : diff) {
+                    update.append(index++ > 0 ? ", " : "").append(field.column()).append(" = ?");
+                }
+                update.append(" WHERE id_scenario = ?");
+                try (PreparedStatement stmt = conn.prepareStatement(update.toString())) {
+                    int parameterIndex = 1;
+                    for (ScenarioPatch.Field field : diff) {
+                        stmt.setString(parameterIndex++, values.get(field));
+                    }
+                    stmt.setInt(parameterIndex, scenarioId);
+                    stmt.executeUpdate();
+                }
+                return diff;
+            });
+            if (changed == null) {
+                logger.warn("Nessuna modifica applicata: lo scenario con ID {} non esiste.", scenarioId);
+                return ScenarioPatchResult.FAILED;
+            }
+            if (changed.isEmpty()) {
+                logger.info("Nessun campo modificato per lo scenario con ID {}: i valori di {} sono invariati.", scenarioId, values.keySet());
             } else {
-                logger.warn("Nessun campo '{}' dello scenario con ID {} aggiornato. Potrebbe non esistere o il valore è lo stesso.", fieldName, scenarioId);
+                ScenarioCache.getInstance().invalidate(ScenarioCache.Region.SCENARIO, scenarioId);
+                logger.info("Campi {} dello scenario con ID {} aggiornati con successo.", changed, scenarioId);
             }
-            return result;
+            return new ScenarioPatchResult(true, Collections.unmodifiableSet(changed));
         } catch (SQLException e) {
-            logger.error("Errore SQL durante l'aggiornamento del campo '{}' dello scenario con ID {}: {}", fieldName, scenarioId, e.getMessage(), e);
-            return false;
+            logger.error("Errore SQL durante l'applicazione di {} allo scenario con ID {}: {}", patch, scenarioId, e.getMessage(), e);
+            return ScenarioPatchResult.FAILED;
+        }
+    }
+
+    /**
+     * Aggiorna in modo differito un campo testuale dello scenario, per gli editor in linea.
+     * Le modifiche allo stesso campo che arrivano entro la finestra di accorpamento producono un solo
+     * <code>UPDATE</code> con l'ultimo valore; gli errori di scrittura vengono registrati nel log e
+     * comunicati tramite il futuro restituito.
+     *
+     * @param scenarioId L'ID (<code>int</code>) dello scenario da aggiornare.
+     * @param fieldName  Il nome della colonna; deve essere uno dei campi in {@link #DEFERRED_FIELDS}.
+     * @param value      Il nuovo valore (<code>String</code>) da impostare.
+     * @return Un {@link CompletableFuture} completato quando il valore è salvato; fallisce se la scrittura non va a buon fine.
+     * @throws IllegalArgumentException se il campo non può essere aggiornato in modo differito.
+     */
+    public CompletableFuture<Void> updateScenarioFieldDeferred(int scenarioId, String fieldName, String value) {
+        if (!DEFERRED_FIELDS.contains(fieldName)) {
+            throw new IllegalArgumentException("Campo non aggiornabile in modo differito: " + fieldName);
         }
+        final String sql = "UPDATE Scenario SET " + fieldName + " = ? WHERE id_scenario = ?";
+        CompletableFuture<Void> saved = DBConnect.getInstance().writeBehind(new WriteBehindKey(scenarioId, 0, "Scenario." + fieldName), conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, value);
+                stmt.setInt(2, scenarioId);
+                if (stmt.executeUpdate() > 0) {
+                    logger.info("Campo '{}' dello scenario con ID {} aggiornato con successo.", fieldName, scenarioId);
+                } else {
+                    logger.warn("Nessun campo '{}' dello scenario con ID {} aggiornato. Lo scenario potrebbe non esistere.", fieldName, scenarioId);
+                }
+                return null;
+            }
+        });
+        // Invalidata ora e di nuovo dopo il COMMIT: una lettura concorrente può aver memorizzato la riga precedente.
+        ScenarioCache.getInstance().invalidate(ScenarioCache.Region.SCENARIO, scenarioId);
+        saved.whenComplete((ignored, error) -> ScenarioCache.getInstance().invalidate(ScenarioCache.Region.SCENARIO, scenarioId));
+        return saved;
+    }
+
+    /**
+     * Scrive subito le modifiche differite di uno scenario e ne attende la conferma.
+     * Da invocare quando l'utente lascia la vista di dettaglio dello scenario.
+     *
+     * @param scenarioId L'ID (<code>int</code>) dello scenario.
+     */
+    public void flushPendingEdits(int scenarioId) {
+        DBConnect.getInstance().flushWriteBehind(scenarioId).join();
     }
 
 
     /**
      * Determina il tipo di scenario (Quick, Advanced, o Patient Simulated) in base alla sua presenza
      * nelle tabelle specifiche (<code>Scenario</code>, <code>AdvancedScenario</code>, <code>PatientSimulatedScenario</code>).
+     * Il tipo viene calcolato con un'unica query tramite join esterni.
      *
      * @param idScenario L'ID (<code>int</code>) dello scenario di cui determinare il tipo.
      * @return Una {@link String} che rappresenta il tipo di scenario (es. "Quick Scenario", "Advanced Scenario", "Patient Simulated Scenario").
-     * Restituisce "ScenarioNotFound" se l'ID non è presente in nessuna delle tabelle pertinenti.
+     * Restituisce "ScenarioNotFound" se l'ID non è presente nella tabella <code>Scenario</code> o in caso di errore.
      */
     public String getScenarioType(int idScenario) {
-        // Uno scenario Quick è presente solo nella tabella Scenario, non in AdvancedScenario.
-        if (isPresentInTable(idScenario, "Scenario") &&
-                !isPresentInTable(idScenario, "AdvancedScenario")) {
-            return "Quick Scenario";
+        final String sql = "SELECT " + SCENARIO_TYPE_CASE + " AS tipo_scenario FROM Scenario s " +
+                SCENARIO_TYPE_JOIN + "WHERE s.id_scenario = ?";
+
+        try (Connection conn = DBConnect.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, idScenario);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("tipo_scenario");
+            }
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante la determinazione del tipo dello scenario con ID {}: {}", idScenario, e.getMessage(), e);
+        }
+        // Se lo scenario non è presente o la query fallisce, il tipo è sconosciuto.
+        return "ScenarioNotFound";
+    }
+
+    /**
+     * Determina il tipo di più scenari con una query per ogni blocco di {@value #TYPE_LOOKUP_CHUNK_SIZE} ID.
+     *
+     * @param scenarioIds Gli ID degli scenari di cui determinare il tipo; eventuali <code>null</code> vengono ignorati.
+     * @return Una {@link Map} che associa a ciascun ID il tipo di scenario, con gli stessi valori di {@link #getScenarioType(int)}.
+     * Gli ID non presenti nel database sono associati a "ScenarioNotFound".
+     * In caso di errore SQL restituisce i tipi determinati fino a quel momento.
+     */
+    public Map<Integer, String> getScenarioTypes(Collection<Integer> scenarioIds) {
+        Map<Integer, String> types = new HashMap<>();
+        List<Integer> ids = scenarioIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return types;
         }
 
-        // Se è un Advanced Scenario (e quindi anche in Scenario), verifica se è anche un Patient Simulated Scenario.
-        if (isPresentInTable(idScenario, "AdvancedScenario")) {
-            if (isPresentInTable(idScenario, "PatientSimulatedScenario")) {
-                return "Patient Simulated Scenario";
+        try (Connection conn = DBConnect.getInstance().getConnection()) {
+            for (int from = 0; from < ids.size(); from += TYPE_LOOKUP_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + TYPE_LOOKUP_CHUNK_SIZE, ids.size()));
+                final String sql = "SELECT s.id_scenario, " + SCENARIO_TYPE_CASE + " AS tipo_scenario FROM Scenario s " +
+                        SCENARIO_TYPE_JOIN + "WHERE s.id_scenario IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+
+                //noinspection SqlSourceToSinkFlow
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        types.put(rs.getInt("id_scenario"), rs.getString("tipo_scenario"));
+                    }
+                }
+                for (Integer id : chunk) {
+                    types.putIfAbsent(id, "ScenarioNotFound");
+                }
             }
-            return "Advanced Scenario";
+            logger.debug("Determinato il tipo di {} scenari.", types.size());
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante la determinazione del tipo di {} scenari: {}", ids.size(), e.getMessage(), e);
         }
+        return types;
+    }
 
-        // Se non rientra in nessuna delle categorie precedenti, lo scenario non è stato trovato o è di tipo sconosciuto.
-        return "ScenarioNotFound";
+    /**
+     * Cerca gli scenari che soddisfano il filtro, ordinati e paginati lato database.
+     * La paginazione è per chiave: ogni pagina prosegue dal cursore della precedente invece di
+     * saltare un numero di righe, quindi il costo di una pagina non dipende dalla sua posizione.
+     * Il tipo di ciascuno scenario è disponibile tramite {@link Scenario#getScenarioType()}.
+     * Se il filtro contiene un testo, la ricerca usa l'indice full-text e restituisce anche gli estratti corrispondenti.
+     *
+     * @param filter I criteri di ricerca; {@link ScenarioFilter#NONE} per non filtrare.
+     * @param sort   L'ordinamento dei risultati.
+     * @param cursor Il cursore restituito con la pagina precedente; <code>null</code> per la prima pagina.
+     * @param limit  Il numero massimo di scenari della pagina.
+     * @return La {@link ScenarioPage} richiesta; {@link ScenarioPage#EMPTY} in caso di errore o se il cursore
+     * non appartiene all'ordinamento richiesto.
+     */
+    public ScenarioPage searchScenarios(ScenarioFilter filter, ScenarioSort sort, ScenarioCursor cursor, int limit) {
+        boolean fullText = hasFullText(filter);
+        if (fullText) {
+            ScenarioFullTextIndex.syncPending();
+        }
+        ScenarioSort effectiveSort = effectiveSort(filter, sort);
+        StringBuilder sql = new StringBuilder("SELECT s.id_scenario, s.titolo, s.autori, s.patologia, s.descrizione, s.tipologia_paziente, ")
+                .append(SCENARIO_TYPE_CASE).append(" AS tipo_scenario, ")
+                .append(sortExpression(effectiveSort.field())).append(" AS sort_key")
+                .append(fullText ? ", " + FULL_TEXT_SNIPPET + " AS snippet " : " ");
+        appendFrom(filter, sql);
+        List<Object> params = new ArrayList<>();
+        appendFilter(filter, sql, params);
+        if (cursor != null && !appendKeyset(effectiveSort, cursor, sql, params)) {
+            logger.warn("Cursore {} non valido per l'ordinamento {}: pagina rifiutata.", cursor, effectiveSort);
+            return ScenarioPage.EMPTY;
+        }
+        appendOrderBy(effectiveSort, sql);
+        sql.append(" LIMIT ?");
+        params.add(limit + 1); // Una riga in più indica se esiste una pagina successiva.
+
+        List<Scenario> scenarios = new ArrayList<>();
+        Map<Integer, String> snippets = new HashMap<>();
+        ScenarioCursor nextCursor = null;
+        //noinspection SqlSourceToSinkFlow
+        try (Connection conn = DBConnect.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            bindParameters(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+            String lastSortKey = null;
+            while (rs.next()) {
+                if (scenarios.size() == limit) {
+                    Scenario last = scenarios.getLast();
+                    nextCursor = new ScenarioCursor(lastSortKey, last.getId());
+                    break;
+                }
+                Scenario scenario = new Scenario(
+                        rs.getInt("id_scenario"),
+                        rs.getString("titolo"),
+                        rs.getString("autori"),
+                        rs.getString("patologia"),
+                        rs.getString("descrizione"),
+                        rs.getString("tipologia_paziente"));
+                scenario.setScenarioType(rs.getString("tipo_scenario"));
+                scenarios.add(scenario);
+                lastSortKey = readSortKey(rs);
+                if (fullText) {
+                    snippets.put(scenario.getId(), rs.getString("snippet"));
+                }
+            }
+            logger.debug("Ricerca scenari: {} risultati, pagina successiva: {}.", scenarios.size(), nextCursor != null);
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante la ricerca degli scenari: {}", e.getMessage(), e);
+            return ScenarioPage.EMPTY;
+        }
+        return new ScenarioPage(scenarios, nextCursor, snippets);
+    }
+
+    /**
+     * Conta gli scenari che soddisfano il filtro.
+     *
+     * @param filter I criteri di ricerca; {@link ScenarioFilter#NONE} per contare tutti gli scenari.
+     * @return Il numero di scenari trovati; <code>0</code> in caso di errore.
+     */
+    public int countScenarios(ScenarioFilter filter) {
+        if (hasFullText(filter)) {
+            ScenarioFullTextIndex.syncPending();
+        }
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) ");
+        appendFrom(filter, sql);
+        List<Object> params = new ArrayList<>();
+        appendFilter(filter, sql, params);
+
+        //noinspection SqlSourceToSinkFlow
+        try (Connection conn = DBConnect.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            bindParameters(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante il conteggio degli scenari: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Calcola il cursore da cui inizia la pagina alla posizione indicata, per raggiungere una pagina
+     * senza scorrere quelle precedenti (ad esempio l'ultima). Legge solo la chiave della riga che precede la posizione.
+     * <p>
+     * A differenza di {@link #searchScenarios(ScenarioFilter, ScenarioSort, ScenarioCursor, int)}, la posizione
+     * si raggiunge saltando righe: la riga viene cercata dall'estremità più vicina, nell'ordinamento inverso se
+     * la posizione è nella seconda metà, quindi si scorrono al più metà dei risultati. È pensato per i salti
+     * diretti tra pagine; la navigazione tra pagine adiacenti deve proseguire dai cursori delle pagine.
+     * </p>
+     *
+     * @param filter I criteri di ricerca.
+     * @param sort   L'ordinamento dei risultati.
+     * @param offset La posizione (a partire da <code>0</code>) del primo scenario della pagina.
+     * @param total  Il numero di scenari che soddisfano il filtro, come restituito da {@link #countScenarios(ScenarioFilter)}.
+     * @return Il cursore da passare a {@link #searchScenarios(ScenarioFilter, ScenarioSort, ScenarioCursor, int)};
+     * <code>null</code> se <code>offset</code> è <code>0</code>, oltre la fine dei risultati o in caso di errore.
+     */
+    public ScenarioCursor getCursorAt(ScenarioFilter filter, ScenarioSort sort, int offset, int total) {
+        if (offset <= 0 || offset > total) {
+            return null;
+        }
+        ScenarioSort effectiveSort = effectiveSort(filter, sort);
+        // La riga cercata è la (offset - 1)-esima dall'inizio, cioè la (total - offset)-esima dalla fine.
+        boolean fromEnd = offset - 1 > total - offset;
+        StringBuilder sql = new StringBuilder("SELECT s.id_scenario, ").append(sortExpression(effectiveSort.field())).append(" AS sort_key ");
+        appendFrom(filter, sql);
+        List<Object> params = new ArrayList<>();
+        appendFilter(filter, sql, params);
+        appendOrderBy(fromEnd ? new ScenarioSort(effectiveSort.field(), !effectiveSort.ascending()) : effectiveSort, sql);
+        sql.append(" LIMIT 1 OFFSET ?");
+        params.add(fromEnd ? total - offset : offset - 1);
+
+        //noinspection SqlSourceToSinkFlow
+        try (Connection conn = DBConnect.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            bindParameters(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? new ScenarioCursor(readSortKey(rs), rs.getInt("id_scenario")) : null;
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante il calcolo del cursore alla posizione {}: {}", offset, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Restituisce l'espressione SQL su cui ordinare per il campo indicato.
+     * Le espressioni testuali coincidono con quelle degli indici creati da
+     * {@link it.uniupo.simnova.utils.db.SchemaMigrator}, così da poter essere servite da un indice.
+     *
+     * @param field Il campo di ordinamento.
+     * @return L'espressione SQL, riferita all'alias <code>s</code> della tabella <code>Scenario</code>.
+     */
+    private static String sortExpression(ScenarioSort.Field field) {
+        return switch (field) {
+            case ID -> "NULL";
+            case TITOLO -> "IFNULL(s.titolo, '') COLLATE NOCASE";
+            case AUTORI -> "IFNULL(s.autori, '') COLLATE NOCASE";
+            case PATOLOGIA -> "IFNULL(s.patologia, '') COLLATE NOCASE";
+            case TIPOLOGIA_PAZIENTE -> "IFNULL(s.tipologia_paziente, '') COLLATE NOCASE";
+            case TIPO_SCENARIO -> SCENARIO_TYPE_CASE;
+            case RILEVANZA -> "ScenarioFts.rank";
+        };
+    }
+
+    /**
+     * Restituisce l'ordinamento effettivamente applicabile: la pertinenza richiede un testo da cercare.
+     *
+     * @param filter I criteri di ricerca.
+     * @param sort   L'ordinamento richiesto.
+     * @return L'ordinamento richiesto, oppure {@link ScenarioSort#DEFAULT} se è per pertinenza senza testo.
+     */
+    private static ScenarioSort effectiveSort(ScenarioFilter filter, ScenarioSort sort) {
+        return sort.field() == ScenarioSort.Field.RILEVANZA && !hasFullText(filter) ? ScenarioSort.DEFAULT : sort;
+    }
+
+    /**
+     * Verifica se il filtro contiene parole da cercare nell'indice full-text.
+     *
+     * @param filter I criteri di ricerca.
+     * @return <code>true</code> se la ricerca deve usare l'indice full-text.
+     */
+    private static boolean hasFullText(ScenarioFilter filter) {
+        return ScenarioFullTextIndex.toMatchQuery(filter.testo()) != null;
+    }
+
+    /**
+     * Aggiunge alla query la clausola <code>FROM</code>, con l'indice full-text se il filtro contiene un testo.
+     *
+     * @param filter I criteri di ricerca.
+     * @param sql    La query in costruzione.
+     */
+    private static void appendFrom(ScenarioFilter filter, StringBuilder sql) {
+        sql.append("FROM Scenario s ").append(SCENARIO_TYPE_JOIN);
+        if (hasFullText(filter)) {
+            sql.append(FULL_TEXT_JOIN);
+        }
+    }
+
+    /**
+     * Legge la chiave di ordinamento di una riga come testo.
+     * La pertinenza è un numero reale: {@link String#valueOf(Object)} ne conserva tutte le cifre, così il cursore
+     * riproduce esattamente il valore nel confronto successivo.
+     *
+     * @param rs Il risultato posizionato sulla riga.
+     * @return La chiave di ordinamento; <code>null</code> se si ordina per ID.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private static String readSortKey(ResultSet rs) throws SQLException {
+        Object value = rs.getObject("sort_key");
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    /**
+     * Aggiunge alla query la clausola <code>WHERE</code> corrispondente al filtro.
+     *
+     * @param filter I criteri di ricerca.
+     * @param sql    La query in costruzione.
+     * @param params I parametri della query, a cui vengono aggiunti quelli del filtro.
+     */
+    private static void appendFilter(ScenarioFilter filter, StringBuilder sql, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (isNotBlank(filter.tipologiaPaziente())) {
+            conditions.add("s.tipologia_paziente = ? COLLATE NOCASE");
+            params.add(filter.tipologiaPaziente().trim());
+        }
+        if (isNotBlank(filter.titolo())) {
+            conditions.add("s.titolo LIKE ? ESCAPE '\\'");
+            params.add(containsPattern(filter.titolo()));
+        }
+        if (isNotBlank(filter.autori())) {
+            conditions.add("s.autori LIKE ? ESCAPE '\\'");
+            params.add(containsPattern(filter.autori()));
+        }
+        if (isNotBlank(filter.tipoScenario())) {
+            conditions.add(SCENARIO_TYPE_CASE + " = ?");
+            params.add(filter.tipoScenario().trim());
+        }
+        if (isNotBlank(filter.patologia())) {
+            conditions.add("s.patologia LIKE ? ESCAPE '\\'");
+            params.add(containsPattern(filter.patologia()));
+        }
+        String match = ScenarioFullTextIndex.toMatchQuery(filter.testo());
+        if (match != null) {
+            conditions.add("ScenarioFts MATCH ?");
+            params.add(match);
+        }
+        if (!conditions.isEmpty()) {
+            sql.append("WHERE ").append(String.join(" AND ", conditions)).append(' ');
+        }
+    }
+
+    /**
+     * Aggiunge alla query la condizione che seleziona gli scenari successivi al cursore.
+     * La condizione sul solo valore ordinato (<code>&gt;=</code> o <code>&lt;=</code>) delimita l'intervallo dell'indice;
+     * quella composta con l'ID risolve i valori uguali.
+     *
+     * @param sort   L'ordinamento dei risultati.
+     * @param cursor Il cursore della pagina precedente.
+     * @param sql    La query in costruzione, eventualmente già con una clausola <code>WHERE</code>.
+     * @param params I parametri della query.
+     * @return <code>false</code>, senza modificare la query, se il cursore ordinato per pertinenza non contiene
+     * un valore numerico: proviene da un altro ordinamento e non indica una posizione in questo.
+     */
+    private static boolean appendKeyset(ScenarioSort sort, ScenarioCursor cursor, StringBuilder sql, List<Object> params) {
+        Object sortValue = null;
+        if (sort.field() == ScenarioSort.Field.RILEVANZA) {
+            if (cursor.sortValue() == null) {
+                return false;
+            }
+            try {
+                sortValue = Double.valueOf(cursor.sortValue()); // Confronto numerico: un parametro testuale seguirebbe ogni numero.
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        } else if (sort.field() != ScenarioSort.Field.ID) {
+            sortValue = cursor.sortValue() != null ? cursor.sortValue() : "";
+        }
+        String after = sort.ascending() ? ">" : "<";
+        sql.append(sql.indexOf("WHERE ") >= 0 ? "AND " : "WHERE ");
+        if (sort.field() == ScenarioSort.Field.ID) {
+            sql.append("s.id_scenario ").append(after).append(" ? ");
+            params.add(cursor.id());
+            return true;
+        }
+        String key = sortExpression(sort.field());
+        sql.append(key).append(' ').append(after).append("= ? AND (")
+                .append(key).append(' ').append(after).append(" ? OR s.id_scenario ").append(after).append(" ?) ");
+        params.add(sortValue);
+        params.add(sortValue);
+        params.add(cursor.id());
+        return true;
+    }
+
+    /**
+     * Aggiunge alla query la clausola <code>ORDER BY</code> dell'ordinamento, con l'ID come criterio di parità.
+     *
+     * @param sort L'ordinamento dei risultati.
+     * @param sql  La query in costruzione.
+     */
+    private static void appendOrderBy(ScenarioSort sort, StringBuilder sql) {
+        String direction = sort.ascending() ? "ASC" : "DESC";
+        sql.append("ORDER BY ");
+        if (sort.field() != ScenarioSort.Field.ID) {
+            sql.append(sortExpression(sort.field())).append(' ').append(direction).append(", ");
+        }
+        sql.append("s.id_scenario ").append(direction);
+    }
+
+    /**
+     * Imposta i parametri posizionali di uno statement.
+     *
+     * @param stmt   Lo statement da valorizzare.
+     * @param params I valori dei parametri, nell'ordine in cui compaiono nella query.
+     * @throws SQLException se l'impostazione di un parametro fallisce.
+     */
+    private static void bindParameters(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /**
+     * Costruisce il pattern <code>LIKE</code> che cerca il testo in qualsiasi posizione,
+     * trattando letteralmente i caratteri jolly digitati dall'utente.
+     *
+     * @param text Il testo da cercare.
+     * @return Il pattern da usare con <code>ESCAPE '\'</code>.
+     */
+    private static String containsPattern(String text) {
+        String escaped = text.trim()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /**
+     * Verifica che una stringa contenga almeno un carattere non bianco.
+     *
+     * @param value La stringa da verificare.
+     * @return <code>true</code> se la stringa non è <code>null</code> né vuota.
+     */
+    private static boolean isNotBlank(String value) {
+        return value != null && !value.isBlank();
     }
 
     /**
@@ -407,24 +983,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioGenitoriInfo(Integer scenarioId, String value) {
-        final String sql = "UPDATE Scenario SET info_genitore = ? WHERE id_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, value);
-            stmt.setInt(2, scenarioId);
-
-            boolean result = stmt.executeUpdate() > 0;
-            if (result) {
-                logger.info("Informazioni per i genitori aggiornate con successo per lo scenario con ID {}.", scenarioId);
-            } else {
-                logger.warn("Nessuna informazione aggiornata per i genitori dello scenario con ID {}. Potrebbe non esistere o il valore è lo stesso.", scenarioId);
-            }
-            return result;
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante l'aggiornamento delle informazioni per i genitori dello scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-            return false;
-        }
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.INFO_GENITORE, value);
     }
 
     /**
@@ -436,24 +995,7 @@ public class ScenarioService {
      * @return <code>true</code> se l'aggiornamento è avvenuto con successo; <code>false</code> altrimenti.
      */
     public boolean updateScenarioTarget(Integer scenarioId, String target) {
-        final String sql = "UPDATE Scenario SET target = ? WHERE id_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, target);
-            stmt.setInt(2, scenarioId);
-
-            boolean result = stmt.executeUpdate() > 0;
-            if (result) {
-                logger.info("Target aggiornato con successo per lo scenario con ID {}.", scenarioId);
-            } else {
-                logger.warn("Nessun target aggiornato per lo scenario con ID {}. Potrebbe non esistere o il valore è lo stesso.", scenarioId);
-            }
-            return result;
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante l'aggiornamento del target dello scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-            return false;
-        }
+        return updateScenarioField(scenarioId, ScenarioPatch.Field.TARGET, target);
     }
 
     /**
@@ -465,14 +1007,16 @@ public class ScenarioService {
      */
     public void updateScenarioTitleAndAuthors(Integer scenarioId, String newTitle, String newAuthors) {
         final String sql = "UPDATE Scenario SET titolo = ?, autori = ? WHERE id_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, newTitle);
-            stmt.setString(2, newAuthors);
-            stmt.setInt(3, scenarioId);
-
-            boolean result = stmt.executeUpdate() > 0;
+        try {
+            boolean result = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, newTitle);
+                    stmt.setString(2, newAuthors);
+                    stmt.setInt(3, scenarioId);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            ScenarioCache.getInstance().invalidate(ScenarioCache.Region.SCENARIO, scenarioId);
             if (result) {
                 logger.info("Titolo e autori aggiornati con successo per lo scenario con ID {}. Nuovo titolo: '{}', Nuovi autori: '{}'.", scenarioId, newTitle, newAuthors);
             } else {
@@ -513,13 +1057,15 @@ public class ScenarioService {
             }
         }
         String sql = "UPDATE Scenario SET " + dbLabel + " = ? WHERE id_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, newValue);
-            stmt.setInt(2, id);
-
-            boolean result = stmt.executeUpdate() > 0;
+        try {
+            boolean result = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, newValue);
+                    stmt.setInt(2, id);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            ScenarioCache.getInstance().invalidate(ScenarioCache.Region.SCENARIO, id);
             if (result) {
                 logger.info("Campo '{}' aggiornato con successo per lo scenario con ID {}. Nuovo valore: '{}'.", label, id, newValue);
             } else {
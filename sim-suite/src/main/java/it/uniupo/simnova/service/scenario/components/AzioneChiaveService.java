@@ -15,7 +15,7 @@ import java.util.List;
  * interagendo direttamente con il database.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @Service
 public class AzioneChiaveService {
@@ -88,82 +88,61 @@ public class AzioneChiaveService {
      * @return <code>true</code> se l'aggiornamento è stato completato con successo; <code>false</code> altrimenti.
      */
     public boolean updateAzioniChiaveForScenario(Integer scenarioId, List<String> nomiAzioniDaSalvare) {
-        Connection conn = null;
-        boolean success = false;
-
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Inizia la transazione.
-
-            List<Integer> idAzioniFinali = new ArrayList<>();
-            // Itera sui nomi delle azioni da salvare, ottenendo o creando l'ID per ciascuna.
-            if (nomiAzioniDaSalvare != null) {
-                for (String nomeAzione : nomiAzioniDaSalvare) {
-                    // Salta i nomi delle azioni vuoti o nulli.
-                    if (nomeAzione == null || nomeAzione.trim().isEmpty()) {
-                        continue;
+            // Tutte le operazioni vengono eseguite nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                List<Integer> idAzioniFinali = new ArrayList<>();
+                // Itera sui nomi delle azioni da salvare, ottenendo o creando l'ID per ciascuna.
+                if (nomiAzioniDaSalvare != null) {
+                    for (String nomeAzione : nomiAzioniDaSalvare) {
+                        // Salta i nomi delle azioni vuoti o nulli.
+                        if (nomeAzione == null || nomeAzione.trim().isEmpty()) {
+                            continue;
+                        }
+                        Integer idAzione = getOrCreateAzioneChiaveId(conn, nomeAzione.trim());
+                        idAzioniFinali.add(idAzione);
                     }
-                    Integer idAzione = getOrCreateAzioneChiaveId(conn, nomeAzione.trim());
-                    idAzioniFinali.add(idAzione);
                 }
-            }
 
-            // Elimina tutte le associazioni esistenti per lo scenario.
-            final String deleteSql = "DELETE FROM AzioneScenario WHERE id_scenario = ?";
-            try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
-                deleteStmt.setInt(1, scenarioId);
-                int deletedRows = deleteStmt.executeUpdate();
-                logger.info("Rimosse {} associazioni azione-scenario esistenti per lo scenario con ID: {}", deletedRows, scenarioId);
-            }
+                // Elimina tutte le associazioni esistenti per lo scenario.
+                final String deleteSql = "DELETE FROM AzioneScenario WHERE id_scenario = ?";
+                try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+                    deleteStmt.setInt(1, scenarioId);
+                    int deletedRows = deleteStmt.executeUpdate();
+                    logger.info("Rimosse {} associazioni azione-scenario esistenti per lo scenario con ID: {}", deletedRows, scenarioId);
+                }
 
-            // Inserisce le nuove associazioni azione-scenario, se presenti.
-            if (!idAzioniFinali.isEmpty()) {
-                final String insertSql = "INSERT INTO AzioneScenario (id_scenario, id_azione) VALUES (?, ?)";
-                try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
-                    for (Integer idAzione : idAzioniFinali) {
-                        insertStmt.setInt(1, scenarioId);
-                        insertStmt.setInt(2, idAzione);
-                        insertStmt.addBatch(); // Aggiunge al batch per un'esecuzione più efficiente.
+                // Inserisce le nuove associazioni azione-scenario, se presenti.
+                if (!idAzioniFinali.isEmpty()) {
+                    final String insertSql = "INSERT INTO AzioneScenario (id_scenario, id_azione) VALUES (?, ?)";
+                    try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+                        for (Integer idAzione : idAzioniFinali) {
+                            insertStmt.setInt(1, scenarioId);
+                            insertStmt.setInt(2, idAzione);
+                            insertStmt.addBatch(); // Aggiunge al batch per un'esecuzione più efficiente.
+                        }
+                        int[] batchResult = insertStmt.executeBatch(); // Esegue tutte le operazioni in batch.
+                        logger.info("Inserite {} nuove associazioni azione-scenario per lo scenario con ID: {}", batchResult.length, scenarioId);
                     }
-                    int[] batchResult = insertStmt.executeBatch(); // Esegue tutte le operazioni in batch.
-                    logger.info("Inserite {} nuove associazioni azione-scenario per lo scenario con ID: {}", batchResult.length, scenarioId);
+                } else {
+                    logger.info("Nessuna nuova azione chiave da associare per lo scenario con ID: {}. Tutte le associazioni precedenti sono state rimosse.", scenarioId);
                 }
-            } else {
-                logger.info("Nessuna nuova azione chiave da associare per lo scenario con ID: {}. Tutte le associazioni precedenti sono state rimosse.", scenarioId);
-            }
-
-            conn.commit(); // Conferma la transazione.
-            success = true;
+                return null;
+            });
             logger.info("Azioni chiave per lo scenario con ID {} aggiornate con successo.", scenarioId);
-
+            return true;
         } catch (SQLException e) {
+            // Le modifiche del task sono già state annullate dalla coda di scrittura.
             logger.error("Errore SQL durante l'aggiornamento delle azioni chiave per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Esegue il rollback in caso di errore.
-                    logger.warn("Rollback della transazione eseguito per lo scenario con ID {}", scenarioId);
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback della transazione per lo scenario con ID {}: {}", scenarioId, ex.getMessage(), ex);
-                }
-            }
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-                }
-            }
+            return false;
         }
-        return success;
     }
 
     /**
      * Recupera l'ID di un'azione chiave esistente o ne crea una nuova se non è presente nel database.
-     * Questa è una transazione parziale all'interno di una transazione più grande e non deve commettere.
+     * Va eseguito all'interno del task di scrittura che aggiorna le azioni chiave.
      *
-     * @param conn       La {@link Connection} al database già aperta e gestita transazionalmente.
+     * @param conn       La connessione ricevuta dal task di scrittura.
      * @param nomeAzione Il nome dell'azione chiave da cercare o creare. Non deve essere <code>null</code> o vuoto.
      * @return L'ID dell'azione chiave (<code>Integer</code>).
      * @throws SQLException Se si verifica un errore SQL durante l'accesso o la modifica del database.
@@ -218,76 +197,59 @@ public class AzioneChiaveService {
             return;
         }
 
-        Connection conn = null;
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Inizia la transazione.
-
-            Integer idAzione = null;
-            // Cerca l'ID dell'azione chiave basandosi sul nome.
-            final String selectSql = "SELECT id_azione FROM AzioniChiave WHERE nome = ?";
-            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
-                selectStmt.setString(1, nome);
-                ResultSet rs = selectStmt.executeQuery();
-                if (rs.next()) {
-                    idAzione = rs.getInt("id_azione");
+            // Ricerca ed eliminazioni vengono eseguite nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                Integer idAzione = null;
+                // Cerca l'ID dell'azione chiave basandosi sul nome.
+                final String selectSql = "SELECT id_azione FROM AzioniChiave WHERE nome = ?";
+                try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+                    selectStmt.setString(1, nome);
+                    ResultSet rs = selectStmt.executeQuery();
+                    if (rs.next()) {
+                        idAzione = rs.getInt("id_azione");
+                    }
                 }
-            }
 
-            if (idAzione != null) {
-                // Elimina l'associazione tra l'azione chiave e lo scenario specifico.
-                final String deleteAssociationSql = "DELETE FROM AzioneScenario WHERE id_azione = ? AND id_scenario = ?";
-                try (PreparedStatement deleteAssocStmt = conn.prepareStatement(deleteAssociationSql)) {
-                    deleteAssocStmt.setInt(1, idAzione);
-                    deleteAssocStmt.setInt(2, scenarioId);
-                    int assocRowsDeleted = deleteAssocStmt.executeUpdate();
-                    logger.info("Rimosse {} associazioni dell'azione chiave '{}' con lo scenario ID {}", assocRowsDeleted, nome, scenarioId);
-                }
+                if (idAzione != null) {
+                    // Elimina l'associazione tra l'azione chiave e lo scenario specifico.
+                    final String deleteAssociationSql = "DELETE FROM AzioneScenario WHERE id_azione = ? AND id_scenario = ?";
+                    try (PreparedStatement deleteAssocStmt = conn.prepareStatement(deleteAssociationSql)) {
+                        deleteAssocStmt.setInt(1, idAzione);
+                        deleteAssocStmt.setInt(2, scenarioId);
+                        int assocRowsDeleted = deleteAssocStmt.executeUpdate();
+                        logger.info("Rimosse {} associazioni dell'azione chiave '{}' con lo scenario ID {}", assocRowsDeleted, nome, scenarioId);
+                    }
 
-                // Controlla se l'azione chiave è ancora associata a qualsiasi altro scenario.
-                final String checkAssociationSql = "SELECT COUNT(*) FROM AzioneScenario WHERE id_azione = ?";
-                try (PreparedStatement checkAssocStmt = conn.prepareStatement(checkAssociationSql)) {
-                    checkAssocStmt.setInt(1, idAzione);
-                    ResultSet rs = checkAssocStmt.executeQuery();
-                    // Se non ci sono più associazioni, elimina l'azione chiave dalla tabella principale.
-                    if (rs.next() && rs.getInt(1) == 0) {
-                        final String deleteActionSql = "DELETE FROM AzioniChiave WHERE id_azione = ?";
-                        try (PreparedStatement deleteActionStmt = conn.prepareStatement(deleteActionSql)) {
-                            deleteActionStmt.setInt(1, idAzione);
-                            int actionRowsDeleted = deleteActionStmt.executeUpdate();
-                            if (actionRowsDeleted > 0) {
-                                logger.info("Azione chiave '{}' con ID {} eliminata con successo in quanto non più associata ad alcuno scenario.", nome, idAzione);
-                            } else {
-                                logger.warn("L'azione chiave '{}' con ID {} non è stata trovata per l'eliminazione finale, ma l'associazione è stata rimossa.", nome, idAzione);
+                    // Controlla se l'azione chiave è ancora associata a qualsiasi altro scenario.
+                    final String checkAssociationSql = "SELECT COUNT(*) FROM AzioneScenario WHERE id_azione = ?";
+                    try (PreparedStatement checkAssocStmt = conn.prepareStatement(checkAssociationSql)) {
+                        checkAssocStmt.setInt(1, idAzione);
+                        ResultSet rs = checkAssocStmt.executeQuery();
+                        // Se non ci sono più associazioni, elimina l'azione chiave dalla tabella principale.
+                        if (rs.next() && rs.getInt(1) == 0) {
+                            final String deleteActionSql = "DELETE FROM AzioniChiave WHERE id_azione = ?";
+                            try (PreparedStatement deleteActionStmt = conn.prepareStatement(deleteActionSql)) {
+                                deleteActionStmt.setInt(1, idAzione);
+                                int actionRowsDeleted = deleteActionStmt.executeUpdate();
+                                if (actionRowsDeleted > 0) {
+                                    logger.info("Azione chiave '{}' con ID {} eliminata con successo in quanto non più associata ad alcuno scenario.", nome, idAzione);
+                                } else {
+                                    logger.warn("L'azione chiave '{}' con ID {} non è stata trovata per l'eliminazione finale, ma l'associazione è stata rimossa.", nome, idAzione);
+                                }
                             }
+                        } else {
+                            logger.info("L'azione chiave '{}' con ID {} è ancora associata ad altri scenari, quindi non è stata eliminata dalla tabella principale.", nome, idAzione);
                         }
-                    } else {
-                        logger.info("L'azione chiave '{}' con ID {} è ancora associata ad altri scenari, quindi non è stata eliminata dalla tabella principale.", nome, idAzione);
                     }
+                } else {
+                    logger.warn("Nessuna azione chiave trovata con il nome '{}'. Nessuna operazione di eliminazione eseguita.", nome);
                 }
-                conn.commit(); // Conferma la transazione.
-            } else {
-                logger.warn("Nessuna azione chiave trovata con il nome '{}'. Nessuna operazione di eliminazione eseguita.", nome);
-            }
+                return null;
+            });
         } catch (SQLException e) {
+            // Le modifiche del task sono già state annullate dalla coda di scrittura.
             logger.error("Errore SQL durante l'eliminazione dell'azione chiave '{}' per lo scenario ID {}: {}", nome, scenarioId, e.getMessage(), e);
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Esegue il rollback in caso di errore.
-                    logger.warn("Eseguito rollback dell'operazione di eliminazione dell'azione chiave '{}' per lo scenario ID {}", nome, scenarioId);
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback: {}", ex.getMessage(), ex);
-                }
-            }
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione nel finally: {}", e.getMessage(), e);
-                }
-            }
         }
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package it.uniupo.simnova.service.scenario.components;
 
 import it.uniupo.simnova.domain.paziente.EsameFisico;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -18,7 +19,7 @@ import java.util.Map;
  * Fornisce metodi per recuperare, aggiungere o aggiornare i dettagli di un esame fisico.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.3
  */
 @Service
 public class EsameFisicoService {
@@ -44,6 +45,22 @@ public class EsameFisicoService {
      * o se si verifica un errore SQL.
      */
     public EsameFisico getEsameFisicoById(Integer id) {
+        try {
+            return ScenarioCache.getInstance().get(ScenarioCache.Region.ESAME_FISICO, id, () -> loadEsameFisico(id), EsameFisico::new);
+        } catch (SQLException e) {
+            logger.error("Errore durante il recupero dell'esame fisico con ID {}: {}", id, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Legge dal database l'esame fisico di uno scenario, senza passare dalla cache.
+     *
+     * @param id L'ID dell'esame fisico, uguale a quello dello scenario.
+     * @return L'esame fisico; <code>null</code> se non esiste.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private EsameFisico loadEsameFisico(int id) throws SQLException {
         final String sql = "SELECT * FROM EsameFisico WHERE id_esame_fisico = ?";
         EsameFisico esameFisico = null;
 
@@ -73,8 +90,6 @@ public class EsameFisicoService {
             } else {
                 logger.warn("Nessun esame fisico trovato con ID {}.", id);
             }
-        } catch (SQLException e) {
-            logger.error("Errore durante il recupero dell'esame fisico con ID {}: {}", id, e.getMessage(), e);
         }
         return esameFisico;
     }
@@ -108,35 +123,39 @@ public class EsameFisicoService {
                         "cuore, addome, retto, cute, estremità, neurologico, FAST) " +
                         "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            int paramIndex = 1;
-            // Se è un INSERT, il primo parametro è l'id_esame_fisico.
-            if (!exists) {
-                stmt.setInt(paramIndex++, scenarioId);
-            }
-
-            // Imposta i valori per tutte le colonne dell'esame fisico, usando valori di default vuoti se non presenti nella mappa.
-            stmt.setString(paramIndex++, examData.getOrDefault("Generale", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Pupille", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Collo", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Torace", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Cuore", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Addome", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Retto", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Cute", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Estremità", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("Neurologico", ""));
-            stmt.setString(paramIndex++, examData.getOrDefault("FAST", ""));
-
-            // Se è un UPDATE, l'ultimo parametro è l'id_esame_fisico per la clausola WHERE.
-            if (exists) {
-                stmt.setInt(paramIndex, scenarioId);
-            }
-
-            // Esegue l'aggiornamento o l'inserimento e verifica il risultato.
-            boolean result = stmt.executeUpdate() > 0;
+        final Map<String, String> values = examData;
+        try {
+            boolean result = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    int paramIndex = 1;
+                    // Se è un INSERT, il primo parametro è l'id_esame_fisico.
+                    if (!exists) {
+                        stmt.setInt(paramIndex++, scenarioId);
+                    }
+
+                    // Imposta i valori per tutte le colonne dell'esame fisico, usando valori di default vuoti se non presenti nella mappa.
+                    stmt.setString(paramIndex++, values.getOrDefault("Generale", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Pupille", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Collo", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Torace", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Cuore", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Addome", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Retto", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Cute", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Estremità", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("Neurologico", ""));
+                    stmt.setString(paramIndex++, values.getOrDefault("FAST", ""));
+
+                    // Se è un UPDATE, l'ultimo parametro è l'id_esame_fisico per la clausola WHERE.
+                    if (exists) {
+                        stmt.setInt(paramIndex, scenarioId);
+                    }
+
+                    // Esegue l'aggiornamento o l'inserimento e verifica il risultato.
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            ScenarioCache.getInstance().invalidate(ScenarioCache.Region.ESAME_FISICO, scenarioId);
             if (result) {
                 logger.info("Esame fisico {} con ID {} con successo.", exists ? "aggiornato" : "inserito", scenarioId);
             } else {
@@ -180,16 +199,18 @@ public class EsameFisicoService {
         // ma è stata validata contro una lista fissa per prevenire SQL Injection.
         final String sql = "UPDATE EsameFisico SET " + name + "=? WHERE id_esame_fisico=?";
 
-        // Utilizza try-with-resources per assicurare la chiusura automatica di Connection e PreparedStatement.
-        //noinspection SqlSourceToSinkFlow
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, value);    // Imposta il nuovo valore per la colonna.
-            stmt.setInt(2, scenarioId); // Imposta l'ID dello scenario per la clausola WHERE.
-
-            // Esegue l'aggiornamento e verifica il risultato.
-            boolean result = stmt.executeUpdate() > 0;
+        try {
+            boolean result = DBConnect.getInstance().write(conn -> {
+                //noinspection SqlSourceToSinkFlow
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, value);    // Imposta il nuovo valore per la colonna.
+                    stmt.setInt(2, scenarioId); // Imposta l'ID dello scenario per la clausola WHERE.
+
+                    // Esegue l'aggiornamento e verifica il risultato.
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            ScenarioCache.getInstance().invalidate(ScenarioCache.Region.ESAME_FISICO, scenarioId);
             if (result) {
                 logger.info("Colonna '{}' dell'esame fisico con ID {} aggiornata con successo al valore: '{}'.", name, scenarioId, value);
             } else {
@@ -20,7 +20,7 @@ import java.util.List;
  * inclusa la gestione dei file multimediali a essi collegati.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @Service
 public class EsameRefertoService {
@@ -56,39 +56,37 @@ public class EsameRefertoService {
      * @return <code>true</code> se il salvataggio è avvenuto con successo per tutti i referti; <code>false</code> altrimenti.
      */
     public boolean saveEsamiReferti(int scenarioId, List<EsameReferto> esamiData) {
-        // Tenta di eliminare tutti i referti esistenti per lo scenario. Se fallisce, interrompe l'operazione.
-        if (!deleteEsamiReferti(scenarioId)) {
-            logger.warn("Impossibile eliminare i referti esistenti per lo scenario con ID {}. Salvataggio annullato.", scenarioId);
-            return false;
-        }
-
         // Query SQL per l'inserimento dei referti.
         final String sql = "INSERT INTO EsameReferto (id_esame, id_scenario, tipo, media, referto_testuale) VALUES (?, ?, ?, ?, ?)";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            // Prepara tutti gli statement di inserimento in batch.
-            for (EsameReferto esame : esamiData) {
-                stmt.setInt(1, esame.getIdEsame());
-                stmt.setInt(2, scenarioId);
-                stmt.setString(3, esame.getTipo());
-                stmt.setString(4, esame.getMedia());
-                stmt.setString(5, esame.getRefertoTestuale());
-                stmt.addBatch(); // Aggiunge l'operazione al batch.
-            }
-
-            // Esegue tutte le operazioni in batch.
-            int[] results = stmt.executeBatch();
-            // Verifica che tutte le righe siano state inserite correttamente.
-            for (int result : results) {
-                if (result <= 0) {
-                    logger.warn("Fallimento parziale nel salvataggio dei referti per lo scenario con ID {}. Alcuni referti potrebbero non essere stati salvati.", scenarioId);
-                    return false;
+        try {
+            // Eliminazione e reinserimento vengono eseguiti nello stesso task di scrittura, quindi in un'unica transazione.
+            return DBConnect.getInstance().write(conn -> {
+                deleteEsamiReferti(conn, scenarioId);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    // Prepara tutti gli statement di inserimento in batch.
+                    for (EsameReferto esame : esamiData) {
+                        stmt.setInt(1, esame.getIdEsame());
+                        stmt.setInt(2, scenarioId);
+                        stmt.setString(3, esame.getTipo());
+                        stmt.setString(4, esame.getMedia());
+                        stmt.setString(5, esame.getRefertoTestuale());
+                        stmt.addBatch(); // Aggiunge l'operazione al batch.
+                    }
+
+                    // Esegue tutte le operazioni in batch.
+                    int[] results = stmt.executeBatch();
+                    // Verifica che tutte le righe siano state inserite correttamente.
+                    for (int result : results) {
+                        if (result <= 0) {
+                            logger.warn("Fallimento parziale nel salvataggio dei referti per lo scenario con ID {}. Alcuni referti potrebbero non essere stati salvati.", scenarioId);
+                            return false;
+                        }
+                    }
+                    logger.info("Referti salvati con successo per lo scenario con ID {}. Totale referti salvati: {}.", scenarioId, results.length);
+                    return true;
                 }
-            }
-            logger.info("Referti salvati con successo per lo scenario con ID {}. Totale referti salvati: {}.", scenarioId, results.length);
-            return true;
+            });
         } catch (SQLException e) {
             logger.error("Errore SQL durante il salvataggio dei referti per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
             return false;
@@ -133,30 +131,19 @@ public class EsameRefertoService {
 
     /**
      * Elimina tutti i referti degli esami associati a uno scenario specifico dal database.
-     * Questa operazione è di supporto per il salvataggio di nuovi set di referti.
+     * Questa operazione è di supporto per il salvataggio di nuovi set di referti e va eseguita nello stesso task di scrittura.
      *
+     * @param conn       La connessione ricevuta dal task di scrittura.
      * @param scenarioId L'ID dello scenario di cui eliminare tutti i referti.
-     * @return <code>true</code> se l'eliminazione è avvenuta con successo (anche se non c'erano referti da eliminare); <code>false</code> altrimenti.
+     * @throws SQLException se l'eliminazione fallisce; il task viene annullato.
      */
-    private boolean deleteEsamiReferti(int scenarioId) {
+    private void deleteEsamiReferti(Connection conn, int scenarioId) throws SQLException {
         final String sql = "DELETE FROM EsameReferto WHERE id_scenario = ?";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, scenarioId);
             int rowsAffected = stmt.executeUpdate(); // Numero di righe eliminate.
-            // Se rowsAffected >= 0, significa che la query è stata eseguita senza errori.
-            if (rowsAffected >= 0) {
-                logger.info("Eliminati {} referti esami per lo scenario con ID {}.", rowsAffected, scenarioId);
-            } else {
-                // Questo caso è raro, ma indica un problema nell'esecuzione della query.
-                logger.warn("Nessun referto esami eliminato per lo scenario con ID {}. Potrebbe esserci stato un problema con la query.", scenarioId);
-            }
-            return true;
-        } catch (SQLException e) {
-            logger.error("Errore durante l'eliminazione dei referti esami per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-            return false;
+            logger.info("Eliminati {} referti esami per lo scenario con ID {}.", rowsAffected, scenarioId);
         }
     }
 
@@ -180,12 +167,14 @@ public class EsameRefertoService {
         // Query SQL per eliminare il referto dal database.
         final String sql = "DELETE FROM EsameReferto WHERE id_esame = ? AND id_scenario = ?";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idEsameReferto);
-            stmt.setInt(2, scenarioId);
-            int rowsAffected = stmt.executeUpdate(); // Esegue l'eliminazione.
+        try {
+            int rowsAffected = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, idEsameReferto);
+                    stmt.setInt(2, scenarioId);
+                    return stmt.executeUpdate(); // Esegue l'eliminazione.
+                }
+            });
             if (rowsAffected > 0) {
                 logger.info("Referto esame con ID {} eliminato con successo per lo scenario con ID {}.", idEsameReferto, scenarioId);
                 return true;
@@ -237,13 +226,15 @@ public class EsameRefertoService {
     public boolean updateMedia(int idEsame, Integer scenarioId, String newMediaFileName) {
         final String sql = "UPDATE EsameReferto SET media = ? WHERE id_esame = ? AND id_scenario = ?";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, newMediaFileName);
-            stmt.setInt(2, idEsame);
-            stmt.setInt(3, scenarioId);
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, newMediaFileName);
+                    stmt.setInt(2, idEsame);
+                    stmt.setInt(3, scenarioId);
+                    return stmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 logger.info("Media aggiornato con successo per l'esame con ID {} nello scenario con ID {}. Nuovo file: '{}'.", idEsame, scenarioId, newMediaFileName);
@@ -269,13 +260,15 @@ public class EsameRefertoService {
     public boolean updateRefertoTestuale(int idEsame, Integer scenarioId, String nuovoReferto) {
         final String sql = "UPDATE EsameReferto SET referto_testuale = ? WHERE id_esame = ? AND id_scenario = ?";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, nuovoReferto);
-            stmt.setInt(2, idEsame);
-            stmt.setInt(3, scenarioId);
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, nuovoReferto);
+                    stmt.setInt(2, idEsame);
+                    stmt.setInt(3, scenarioId);
+                    return stmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 logger.info("Referto testuale aggiornato con successo per l'esame con ID {} nello scenario con ID {}.", idEsame, scenarioId);
@@ -2,6 +2,7 @@ package it.uniupo.simnova.service.scenario.components;
 
 import it.uniupo.simnova.domain.common.Materiale;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -9,13 +10,14 @@ import org.springframework.stereotype.Service;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * Servizio per la gestione dei materiali necessari all'interno degli scenari.
  * Fornisce metodi per recuperare, salvare, associare ed eliminare i materiali nel database.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.3
  */
 @Service
 public class MaterialeService {
@@ -74,9 +76,27 @@ public class MaterialeService {
      * Restituisce una lista vuota in caso di errore o se non ci sono materiali associati.
      */
     public List<Materiale> getMaterialiByScenarioId(int scenarioId) {
+        try {
+            return ScenarioCache.getInstance().get(ScenarioCache.Region.MATERIALI, scenarioId, () -> loadMateriali(scenarioId),
+                    ScenarioCache.listCopier(UnaryOperator.identity())); // I materiali sono immutabili.
+        } catch (SQLException e) {
+            logger.error("Errore durante il recupero dei materiali per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Legge dal database i materiali associati a uno scenario, senza passare dalla cache.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @return I materiali associati; una lista vuota se non ce ne sono.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private List<Materiale> loadMateriali(int scenarioId) throws SQLException {
+        // CROSS JOIN fissa l'ordine di join: si parte dall'indice per scenario invece di scorrere il catalogo dei materiali.
         final String sql = "SELECT m.id_materiale, m.nome, m.descrizione " +
-                "FROM Materiale m " +
-                "JOIN MaterialeScenario sm ON m.id_materiale = sm.id_materiale " +
+                "FROM MaterialeScenario sm " +
+                "CROSS JOIN Materiale m ON m.id_materiale = sm.id_materiale " +
                 "WHERE sm.id_scenario = ?";
 
         List<Materiale> materiali = new ArrayList<>();
@@ -97,8 +117,6 @@ public class MaterialeService {
                 }
             }
             logger.info("Recuperati {} materiali per lo scenario con ID {}.", materiali.size(), scenarioId);
-        } catch (SQLException e) {
-            logger.error("Errore durante il recupero dei materiali per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
         }
         return materiali;
     }
@@ -115,24 +133,29 @@ public class MaterialeService {
     public Materiale saveMateriale(Materiale materiale) {
         final String sql = "INSERT INTO Materiale (nome, descrizione) VALUES (?, ?)";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setString(1, materiale.getNome());
-            stmt.setString(2, materiale.getDescrizione());
+        try {
+            Materiale saved = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, materiale.getNome());
+                    stmt.setString(2, materiale.getDescrizione());
 
-            int affectedRows = stmt.executeUpdate();
+                    int affectedRows = stmt.executeUpdate();
 
-            if (affectedRows > 0) {
-                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        int id = generatedKeys.getInt(1);
-                        logger.info("Materiale '{}' salvato con successo con ID: {}.", materiale.getNome(), id);
-                        return new Materiale(id, materiale.getNome(), materiale.getDescrizione());
+                    if (affectedRows > 0) {
+                        try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                            if (generatedKeys.next()) {
+                                return new Materiale(generatedKeys.getInt(1), materiale.getNome(), materiale.getDescrizione());
+                            }
+                        }
                     }
+                    logger.warn("Nessun materiale salvato. Affected rows: {}.", affectedRows);
+                    return null;
                 }
+            });
+            if (saved != null) {
+                logger.info("Materiale '{}' salvato con successo con ID: {}.", saved.getNome(), saved.getId());
             }
-            logger.warn("Nessun materiale salvato. Affected rows: {}.", affectedRows);
+            return saved;
         } catch (SQLException e) {
             logger.error("Errore durante il salvataggio del materiale '{}': {}", materiale.getNome(), e.getMessage(), e);
         }
@@ -150,58 +173,40 @@ public class MaterialeService {
      * @return <code>true</code> se l'associazione è avvenuta con successo; <code>false</code> altrimenti.
      */
     public boolean associaMaterialiToScenario(int scenarioId, List<Integer> idsMateriali) {
-        Connection conn = null;
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Inizia la transazione.
-
-            // Elimina tutte le associazioni esistenti tra lo scenario e i materiali.
-            final String deleteSQL = "DELETE FROM MaterialeScenario WHERE id_scenario = ?";
-            try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSQL)) {
-                deleteStmt.setInt(1, scenarioId);
-                int deletedRows = deleteStmt.executeUpdate();
-                logger.info("Rimosse {} associazioni materiali esistenti per lo scenario con ID {}.", deletedRows, scenarioId);
-            }
+            // Eliminazione e reinserimento vengono eseguiti nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                // Elimina tutte le associazioni esistenti tra lo scenario e i materiali.
+                final String deleteSQL = "DELETE FROM MaterialeScenario WHERE id_scenario = ?";
+                try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSQL)) {
+                    deleteStmt.setInt(1, scenarioId);
+                    int deletedRows = deleteStmt.executeUpdate();
+                    logger.info("Rimosse {} associazioni materiali esistenti per lo scenario con ID {}.", deletedRows, scenarioId);
+                }
 
-            // Inserisce le nuove associazioni, se la lista non è vuota.
-            if (!idsMateriali.isEmpty()) {
-                final String insertSQL = "INSERT INTO MaterialeScenario (id_scenario, id_materiale) VALUES (?, ?)";
-                try (PreparedStatement insertStmt = conn.prepareStatement(insertSQL)) {
-                    for (Integer idMateriale : idsMateriali) {
-                        insertStmt.setInt(1, scenarioId);
-                        insertStmt.setInt(2, idMateriale);
-                        insertStmt.addBatch(); // Aggiunge l'operazione al batch.
+                // Inserisce le nuove associazioni, se la lista non è vuota.
+                if (!idsMateriali.isEmpty()) {
+                    final String insertSQL = "INSERT INTO MaterialeScenario (id_scenario, id_materiale) VALUES (?, ?)";
+                    try (PreparedStatement insertStmt = conn.prepareStatement(insertSQL)) {
+                        for (Integer idMateriale : idsMateriali) {
+                            insertStmt.setInt(1, scenarioId);
+                            insertStmt.setInt(2, idMateriale);
+                            insertStmt.addBatch(); // Aggiunge l'operazione al batch.
+                        }
+                        int[] insertedRows = insertStmt.executeBatch(); // Esegue tutte le operazioni in batch.
+                        logger.info("Inserite {} nuove associazioni materiali per lo scenario con ID {}.", insertedRows.length, scenarioId);
                     }
-                    int[] insertedRows = insertStmt.executeBatch(); // Esegue tutte le operazioni in batch.
-                    logger.info("Inserite {} nuove associazioni materiali per lo scenario con ID {}.", insertedRows.length, scenarioId);
+                } else {
+                    logger.info("Nessun materiale da associare allo scenario con ID {}. Tutte le associazioni precedenti sono state rimosse.", scenarioId);
                 }
-            } else {
-                logger.info("Nessun materiale da associare allo scenario con ID {}. Tutte le associazioni precedenti sono state rimosse.", scenarioId);
-            }
-
-            conn.commit(); // Conferma la transazione.
+                return null;
+            });
+            ScenarioCache.getInstance().invalidate(ScenarioCache.Region.MATERIALI, scenarioId);
             logger.info("Materiali per lo scenario con ID {} associati con successo.", scenarioId);
             return true;
         } catch (SQLException e) {
             logger.error("Errore SQL durante l'associazione dei materiali allo scenario {}: {}", scenarioId, e.getMessage(), e);
-            try {
-                if (conn != null) {
-                    conn.rollback(); // Esegue il rollback in caso di errore.
-                    logger.warn("Rollback della transazione eseguito per lo scenario con ID {}.", scenarioId);
-                }
-            } catch (SQLException ex) {
-                logger.error("Errore durante il rollback della transazione per lo scenario con ID {}: {}", scenarioId, ex.getMessage(), ex);
-            }
             return false;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione nel finally per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-                }
-            }
         }
     }
 
@@ -214,53 +219,37 @@ public class MaterialeService {
      * @return <code>true</code> se l'eliminazione è avvenuta con successo; <code>false</code> altrimenti.
      */
     public boolean deleteMateriale(Integer idMateriale) {
-        Connection conn = null;
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Inizia la transazione.
-
-            // Elimina tutte le associazioni del materiale con gli scenari.
-            final String deleteAssociazioniSQL = "DELETE FROM MaterialeScenario WHERE id_materiale = ?";
-            try (PreparedStatement deleteAssociazioniStmt = conn.prepareStatement(deleteAssociazioniSQL)) {
-                deleteAssociazioniStmt.setInt(1, idMateriale);
-                int deletedAssocRows = deleteAssociazioniStmt.executeUpdate();
-                logger.info("Rimosse {} associazioni per il materiale con ID {}.", deletedAssocRows, idMateriale);
-            }
-
-            // Elimina il materiale dalla tabella principale.
-            final String deleteMaterialeSQL = "DELETE FROM Materiale WHERE id_materiale = ?";
-            try (PreparedStatement deleteMaterialeStmt = conn.prepareStatement(deleteMaterialeSQL)) {
-                deleteMaterialeStmt.setInt(1, idMateriale);
-                int rowsDeleted = deleteMaterialeStmt.executeUpdate();
+            // Le due eliminazioni vengono eseguite nello stesso task di scrittura, quindi in un'unica transazione.
+            int rowsDeleted = DBConnect.getInstance().write(conn -> {
+                // Elimina tutte le associazioni del materiale con gli scenari.
+                final String deleteAssociazioniSQL = "DELETE FROM MaterialeScenario WHERE id_materiale = ?";
+                try (PreparedStatement deleteAssociazioniStmt = conn.prepareStatement(deleteAssociazioniSQL)) {
+                    deleteAssociazioniStmt.setInt(1, idMateriale);
+                    int deletedAssocRows = deleteAssociazioniStmt.executeUpdate();
+                    logger.info("Rimosse {} associazioni per il materiale con ID {}.", deletedAssocRows, idMateriale);
+                }
 
-                conn.commit(); // Conferma la transazione.
-                if (rowsDeleted > 0) {
-                    logger.info("Materiale con ID {} eliminato con successo dal database.", idMateriale);
-                } else {
-                    logger.warn("Nessun materiale eliminato con ID {}. Potrebbe non esistere.", idMateriale);
+                // Elimina il materiale dalla tabella principale.
+                final String deleteMaterialeSQL = "DELETE FROM Materiale WHERE id_materiale = ?";
+                try (PreparedStatement deleteMaterialeStmt = conn.prepareStatement(deleteMaterialeSQL)) {
+                    deleteMaterialeStmt.setInt(1, idMateriale);
+                    return deleteMaterialeStmt.executeUpdate();
                 }
-                return rowsDeleted > 0;
+            });
+            if (rowsDeleted > 0) {
+                logger.info("Materiale con ID {} eliminato con successo dal database.", idMateriale);
+            } else {
+                logger.warn("Nessun materiale eliminato con ID {}. Potrebbe non esistere.", idMateriale);
             }
+            return rowsDeleted > 0;
         } catch (SQLException e) {
+            // Le modifiche del task sono già state annullate dalla coda di scrittura.
             logger.error("Errore SQL durante l'eliminazione del materiale con ID {}: {}", idMateriale, e.getMessage(), e);
-            try {
-                if (conn != null) {
-                    conn.rollback(); // Esegue il rollback in caso di errore.
-                    logger.warn("Rollback della transazione eseguito per il materiale con ID {}.", idMateriale);
-                }
-            } catch (SQLException ex) {
-                logger.error("Errore durante il rollback della transazione per il materiale con ID {}: {}", idMateriale, ex.getMessage(), ex);
-            }
             return false;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione nel finally per il materiale con ID {}: {}", idMateriale, e.getMessage(), e);
-                }
-            }
+            // Il materiale poteva essere associato a qualunque scenario.
+            ScenarioCache.getInstance().invalidateAll(ScenarioCache.Region.MATERIALI);
         }
     }
 
@@ -3,6 +3,7 @@ package it.uniupo.simnova.service.scenario.components;
 import it.uniupo.simnova.domain.common.Accesso;
 import it.uniupo.simnova.domain.paziente.PazienteT0;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -16,7 +17,7 @@ import java.util.List;
  * Gestisce i parametri vitali del paziente e gli accessi vascolari (venosi e arteriosi).
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.3
  */
 @Service
 public class PazienteT0Service {
@@ -43,6 +44,23 @@ public class PazienteT0Service {
      * o in caso di errore SQL.
      */
     public PazienteT0 getPazienteT0ById(Integer scenarioId) {
+        DBConnect.getInstance().flushWriteBehind(scenarioId).join(); // I parametri vitali del tempo 0 possono essere in scrittura differita.
+        try {
+            return ScenarioCache.getInstance().get(ScenarioCache.Region.PAZIENTE_T0, scenarioId, () -> loadPazienteT0(scenarioId), PazienteT0::new);
+        } catch (SQLException e) {
+            logger.error("Errore durante il recupero del paziente T0 con ID {}: {}", scenarioId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Legge dal database il paziente T0 di uno scenario con i suoi accessi, senza passare dalla cache.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @return Il paziente T0; <code>null</code> se non esiste.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private PazienteT0 loadPazienteT0(int scenarioId) throws SQLException {
         final String sqlPaziente = "SELECT * FROM PazienteT0 WHERE id_paziente = ?";
         final String sqlAccessiVenosi = "SELECT a.* FROM Accesso a JOIN AccessoVenoso av ON a.id_accesso = av.accesso_id WHERE av.paziente_t0_id = ?";
         final String sqlAccessiArteriosi = "SELECT a.* FROM Accesso a JOIN AccessoArterioso aa ON a.id_accesso = aa.accesso_id WHERE aa.paziente_t0_id = ?";
@@ -79,8 +97,6 @@ public class PazienteT0Service {
             } else {
                 logger.warn("Nessun paziente T0 trovato con ID {}.", scenarioId);
             }
-        } catch (SQLException e) {
-            logger.error("Errore durante il recupero del paziente T0 con ID {}: {}", scenarioId, e.getMessage(), e);
         }
         return pazienteT0;
     }
@@ -109,7 +125,6 @@ public class PazienteT0Service {
                                   int spo2, int fio2, float litrio2, int etco2, String monitor,
                                   List<Accesso> venosiData,
                                   List<Accesso> arteriosiData) {
-        Connection conn = null;
         logger.debug("Tentativo di salvare Paziente T0 per scenario ID {}. PA: {}", scenarioId, pa);
 
         // Validazione dei parametri in input.
@@ -143,55 +158,31 @@ public class PazienteT0Service {
         }
 
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Disabilita l'autocommit per gestire la transazione manualmente.
-
-            // 1. Salva i parametri vitali del paziente.
-            if (!savePazienteParams(conn, scenarioId, pa, fc, rr, temp, spo2, fio2, litrio2, etco2, monitor)) {
-                conn.rollback(); // Esegue il rollback in caso di errore.
-                logger.warn("Rollback della transazione: impossibile salvare i parametri vitali per lo scenario con ID {}.", scenarioId);
-                return false;
-            }
+            // Parametri e accessi vengono salvati nello stesso task di scrittura: un errore li annulla tutti.
+            DBConnect.getInstance().write(conn -> {
+                // 1. Salva i parametri vitali del paziente.
+                if (!savePazienteParams(conn, scenarioId, pa, fc, rr, temp, spo2, fio2, litrio2, etco2, monitor)) {
+                    throw new SQLException("impossibile salvare i parametri vitali");
+                }
 
-            // 2. Salva gli accessi venosi.
-            if (!venosiData.isEmpty()) {
-                if (saveAccessi(conn, scenarioId, venosiData, true)) {
-                    conn.rollback();
-                    logger.warn("Rollback della transazione: impossibile salvare gli accessi venosi per lo scenario con ID {}.", scenarioId);
-                    return false;
+                // 2. Salva gli accessi venosi.
+                if (!venosiData.isEmpty() && saveAccessi(conn, scenarioId, venosiData, true)) {
+                    throw new SQLException("impossibile salvare gli accessi venosi");
                 }
-            }
-            //3. Salva gli accessi arteriosi.
-            if (!arteriosiData.isEmpty()) {
-                if (saveAccessi(conn, scenarioId, arteriosiData, false)) {
-                    conn.rollback();
-                    logger.warn("Rollback della transazione: impossibile salvare gli accessi arteriosi per lo scenario con ID {}.", scenarioId);
-                    return false;
+                // 3. Salva gli accessi arteriosi.
+                if (!arteriosiData.isEmpty() && saveAccessi(conn, scenarioId, arteriosiData, false)) {
+                    throw new SQLException("impossibile salvare gli accessi arteriosi");
                 }
-            }
-
-            conn.commit(); // Conferma la transazione se tutte le operazioni sono riuscite.
+                return null;
+            });
             logger.info("Paziente T0 con ID {} salvato con successo (inclusi parametri e accessi).", scenarioId);
             return true;
         } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Esegue il rollback in caso di errore SQL.
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback per lo scenario con ID {}: {}", scenarioId, ex.getMessage(), ex);
-                }
-            }
+            // Le modifiche del task sono già state annullate dalla coda di scrittura.
             logger.error("Errore SQL durante il salvataggio del paziente T0 con ID {}: {}", scenarioId, e.getMessage(), e);
             return false;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit, indipendentemente dal successo.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione o il ripristino dell'autocommit per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-                }
-            }
+            ScenarioCache.getInstance().invalidate(ScenarioCache.Region.PAZIENTE_T0, scenarioId); // Dopo il commit o il rollback.
         }
     }
 
@@ -234,7 +225,7 @@ public class PazienteT0Service {
      * Se un paziente T0 con l'<code>scenarioId</code> specificato esiste già, i suoi parametri verranno aggiornati;
      * altrimenti, un nuovo record verrà inserito.
      *
-     * @param conn       La {@link Connection} al database (gestita esternamente).
+     * @param conn       La connessione ricevuta dal task di scrittura.
      * @param scenarioId L'ID dello scenario a cui i parametri del paziente T0 sono associati.
      * @param pa         La pressione arteriosa (es. "120/80").
      * @param fc         La frequenza cardiaca.
@@ -252,8 +243,14 @@ public class PazienteT0Service {
     private boolean savePazienteParams(Connection conn, int scenarioId,
                                        String pa, int fc, int rr, double temp,
                                        int spo2, int fio2, float litrio2, int etco2, String monitor) throws SQLException {
-        // Verifica se un record PazienteT0 con questo ID esiste già.
-        boolean exists = getPazienteT0ById(scenarioId) != null;
+        // Verifica se un record PazienteT0 con questo ID esiste già, sulla connessione del task.
+        boolean exists;
+        try (PreparedStatement check = conn.prepareStatement("SELECT 1 FROM PazienteT0 WHERE id_paziente = ?")) {
+            check.setInt(1, scenarioId);
+            try (ResultSet rs = check.executeQuery()) {
+                exists = rs.next();
+            }
+        }
 
         // Le validazioni sui parametri sono già state fatte nel metodo chiamante,
         // ma è buona pratica mantenerle anche qui se questo metodo potesse essere chiamato direttamente.
@@ -326,12 +323,12 @@ public class PazienteT0Service {
      * Questa operazione comporta la rimozione degli accessi esistenti del tipo specificato
      * per lo scenario, seguita dall'inserimento dei nuovi accessi.
      *
-     * @param conn        La {@link Connection} al database (gestita esternamente).
+     * @param conn        La connessione ricevuta dal task di scrittura.
      * @param scenarioId  L'ID dello scenario a cui gli accessi sono associati (corrisponde all'ID del paziente T0).
      * @param accessiData Una {@link List} di oggetti {@link Accesso} da salvare.
      * @param isVenoso    <code>true</code> se gli accessi da salvare sono venosi; <code>false</code> se sono arteriosi.
      * @return <code>true</code> se si è verificato un errore durante il salvataggio; <code>false</code> altrimenti.
-     * La logica di ritorno è invertita rispetto a un tipico "successo/fallimento" per facilitare il rollback nel chiamante.
+     * La logica di ritorno è invertita rispetto a un tipico "successo/fallimento"; il chiamante annulla il task.
      * @throws SQLException Se si verifica un errore SQL durante l'esecuzione delle query.
      */
     private boolean saveAccessi(Connection conn, int scenarioId,
@@ -398,12 +395,14 @@ public class PazienteT0Service {
      */
     public void saveMonitor(int scenarioId, String monitor) {
         final String sql = "UPDATE PazienteT0 SET Monitor=? WHERE id_paziente=?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, monitor);
-            stmt.setInt(2, scenarioId);
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, monitor);
+                    stmt.setInt(2, scenarioId);
+                    return stmt.executeUpdate();
+                }
+            });
             if (rowsAffected > 0) {
                 logger.info("Monitor del paziente T0 per lo scenario con ID {} aggiornato a: '{}'.", scenarioId, monitor);
             } else {
@@ -412,6 +411,7 @@ public class PazienteT0Service {
         } catch (SQLException e) {
             logger.error("Errore durante l'aggiornamento del monitor per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
         }
+        ScenarioCache.getInstance().invalidate(ScenarioCache.Region.PAZIENTE_T0, scenarioId);
     }
 
     /**
@@ -428,31 +428,36 @@ public class PazienteT0Service {
                 "DELETE FROM AccessoVenoso WHERE paziente_t0_id=? AND accesso_id=?" :
                 "DELETE FROM AccessoArterioso WHERE paziente_t0_id=? AND accesso_id=?";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmtRel = conn.prepareStatement(deleteRelSql);
-             PreparedStatement stmtAccesso = conn.prepareStatement(deleteAccessoSql)) {
-
-            // 1. Elimina la relazione tra l'accesso e il paziente T0.
-            stmtRel.setInt(1, scenarioId);
-            stmtRel.setInt(2, accessoId);
-            int relRowsAffected = stmtRel.executeUpdate();
-            if (relRowsAffected > 0) {
-                logger.info("Relazione accesso {} con ID {} eliminata per lo scenario con ID {}.", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId);
-            } else {
-                logger.warn("Nessuna relazione accesso {} trovata con ID {} per lo scenario con ID {}. Potrebbe essere già stata eliminata.", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId);
-            }
+        try {
+            // Le due eliminazioni vengono eseguite nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmtRel = conn.prepareStatement(deleteRelSql);
+                     PreparedStatement stmtAccesso = conn.prepareStatement(deleteAccessoSql)) {
+                    // 1. Elimina la relazione tra l'accesso e il paziente T0.
+                    stmtRel.setInt(1, scenarioId);
+                    stmtRel.setInt(2, accessoId);
+                    int relRowsAffected = stmtRel.executeUpdate();
+                    if (relRowsAffected > 0) {
+                        logger.info("Relazione accesso {} con ID {} eliminata per lo scenario con ID {}.", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId);
+                    } else {
+                        logger.warn("Nessuna relazione accesso {} trovata con ID {} per lo scenario con ID {}. Potrebbe essere già stata eliminata.", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId);
+                    }
 
-            // 2. Elimina l'accesso dalla tabella principale `Accesso`.
-            stmtAccesso.setInt(1, accessoId);
-            int accRowsAffected = stmtAccesso.executeUpdate();
-            if (accRowsAffected > 0) {
-                logger.info("Accesso con ID {} eliminato dalla tabella Accesso.", accessoId);
-            } else {
-                logger.warn("Nessun accesso con ID {} trovato nella tabella Accesso. Potrebbe essere già stato eliminato.", accessoId);
-            }
+                    // 2. Elimina l'accesso dalla tabella principale `Accesso`.
+                    stmtAccesso.setInt(1, accessoId);
+                    int accRowsAffected = stmtAccesso.executeUpdate();
+                    if (accRowsAffected > 0) {
+                        logger.info("Accesso con ID {} eliminato dalla tabella Accesso.", accessoId);
+                    } else {
+                        logger.warn("Nessun accesso con ID {} trovato nella tabella Accesso. Potrebbe essere già stato eliminato.", accessoId);
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
             logger.error("Errore durante l'eliminazione dell'accesso {} con ID {} per lo scenario con ID {}: {}", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId, e.getMessage(), e);
         }
+        ScenarioCache.getInstance().invalidate(ScenarioCache.Region.PAZIENTE_T0, scenarioId);
     }
 
     /**
@@ -470,35 +475,40 @@ public class PazienteT0Service {
                 "INSERT INTO AccessoVenoso (paziente_t0_id, accesso_id) VALUES (?, ?)" :
                 "INSERT INTO AccessoArterioso (paziente_t0_id, accesso_id) VALUES (?, ?)";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmtAccesso = conn.prepareStatement(insertAccessoSql, Statement.RETURN_GENERATED_KEYS);
-             PreparedStatement stmtRel = conn.prepareStatement(insertRelSql)) {
-
-            // Inserisce il nuovo accesso e recupera l'ID generato.
-            stmtAccesso.setString(1, accesso.getTipologia());
-            stmtAccesso.setString(2, accesso.getPosizione());
-            stmtAccesso.setString(3, accesso.getLato());
-            stmtAccesso.setInt(4, accesso.getMisura());
-            int rowsAffected = stmtAccesso.executeUpdate();
-
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmtAccesso.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        int accessoId = rs.getInt(1);
-                        // Crea la relazione tra il paziente T0 e il nuovo accesso.
-                        stmtRel.setInt(1, scenarioId);
-                        stmtRel.setInt(2, accessoId);
-                        stmtRel.executeUpdate();
-                        logger.info("Accesso {} con ID {} aggiunto per lo scenario con ID {}.", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId);
+        try {
+            // Accesso e relazione vengono inseriti nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmtAccesso = conn.prepareStatement(insertAccessoSql, Statement.RETURN_GENERATED_KEYS);
+                     PreparedStatement stmtRel = conn.prepareStatement(insertRelSql)) {
+                    // Inserisce il nuovo accesso e recupera l'ID generato.
+                    stmtAccesso.setString(1, accesso.getTipologia());
+                    stmtAccesso.setString(2, accesso.getPosizione());
+                    stmtAccesso.setString(3, accesso.getLato());
+                    stmtAccesso.setInt(4, accesso.getMisura());
+                    int rowsAffected = stmtAccesso.executeUpdate();
+
+                    if (rowsAffected > 0) {
+                        try (ResultSet rs = stmtAccesso.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                int accessoId = rs.getInt(1);
+                                // Crea la relazione tra il paziente T0 e il nuovo accesso.
+                                stmtRel.setInt(1, scenarioId);
+                                stmtRel.setInt(2, accessoId);
+                                stmtRel.executeUpdate();
+                                logger.info("Accesso {} con ID {} aggiunto per lo scenario con ID {}.", isVenoso ? "venoso" : "arterioso", accessoId, scenarioId);
+                            } else {
+                                logger.warn("Impossibile ottenere l'ID generato per l'accesso. Il nuovo accesso potrebbe non essere stato salvato correttamente.");
+                            }
+                        }
                     } else {
-                        logger.warn("Impossibile ottenere l'ID generato per l'accesso. Il nuovo accesso potrebbe non essere stato salvato correttamente.");
+                        logger.warn("Nessuna riga modificata durante l'inserimento del nuovo accesso. Il salvataggio potrebbe essere fallito.");
                     }
                 }
-            } else {
-                logger.warn("Nessuna riga modificata durante l'inserimento del nuovo accesso. Il salvataggio potrebbe essere fallito.");
-            }
+                return null;
+            });
         } catch (SQLException e) {
             logger.error("Errore durante l'aggiunta dell'accesso {} per lo scenario con ID {}: {}", isVenoso ? "venoso" : "arterioso", scenarioId, e.getMessage(), e);
         }
+        ScenarioCache.getInstance().invalidate(ScenarioCache.Region.PAZIENTE_T0, scenarioId);
     }
 }
\ No newline at end of file
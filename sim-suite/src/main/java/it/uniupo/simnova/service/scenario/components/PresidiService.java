@@ -8,6 +8,7 @@ import org.springframework.stereotype.Service;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
@@ -138,55 +139,49 @@ public class PresidiService {
      * @return <code>true</code> se l'operazione di salvataggio/aggiornamento è riuscita per tutti i presidi; <code>false</code> altrimenti.
      */
     public boolean savePresidi(Integer scenarioId, Set<String> value) {
-        boolean success = true;
-
-        try (Connection conn = DBConnect.getInstance().getConnection()) {
-            conn.setAutoCommit(false); // Inizia la transazione.
-
-            // 1. Elimina tutte le associazioni esistenti per lo scenario.
-            final String deleteSQL = "DELETE FROM PresidioScenario WHERE id_scenario = ?";
-            try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSQL)) {
-                deleteStmt.setInt(1, scenarioId);
-                int deletedRows = deleteStmt.executeUpdate();
-                logger.info("Rimosse {} associazioni presidio-scenario esistenti per lo scenario con ID {}.", deletedRows, scenarioId);
-            }
+        try {
+            // Eliminazione e reinserimento vengono eseguiti nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                // 1. Elimina tutte le associazioni esistenti per lo scenario.
+                final String deleteSQL = "DELETE FROM PresidioScenario WHERE id_scenario = ?";
+                try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSQL)) {
+                    deleteStmt.setInt(1, scenarioId);
+                    int deletedRows = deleteStmt.executeUpdate();
+                    logger.info("Rimosse {} associazioni presidio-scenario esistenti per lo scenario con ID {}.", deletedRows, scenarioId);
+                }
 
-            // 2. Inserisce le nuove associazioni basate sul set di nomi dei presidi.
-            final String insertSQL = "INSERT INTO PresidioScenario (id_presidio, id_scenario) VALUES (?, ?)";
-            try (PreparedStatement insertStmt = conn.prepareStatement(insertSQL)) {
-                for (String presidio : value) {
-                    Integer presidioId = getPresidiId(presidio); // Recupera l'ID del presidio.
-                    if (presidioId != null) {
-                        insertStmt.setInt(1, presidioId);
-                        insertStmt.setInt(2, scenarioId);
-                        insertStmt.addBatch(); // Aggiunge l'operazione al batch.
-                    } else {
-                        logger.warn("Presidio con nome '{}' non trovato nel database. Non sarà associato allo scenario {}.", presidio, scenarioId);
+                // 2. Inserisce le nuove associazioni basate sul set di nomi dei presidi.
+                final String insertSQL = "INSERT INTO PresidioScenario (id_presidio, id_scenario) VALUES (?, ?)";
+                try (PreparedStatement insertStmt = conn.prepareStatement(insertSQL)) {
+                    for (String presidio : value) {
+                        Integer presidioId = getPresidiId(presidio); // Recupera l'ID del presidio.
+                        if (presidioId != null) {
+                            insertStmt.setInt(1, presidioId);
+                            insertStmt.setInt(2, scenarioId);
+                            insertStmt.addBatch(); // Aggiunge l'operazione al batch.
+                        } else {
+                            logger.warn("Presidio con nome '{}' non trovato nel database. Non sarà associato allo scenario {}.", presidio, scenarioId);
+                        }
                     }
-                }
 
-                // Esegue tutte le operazioni di inserimento in batch.
-                int[] result = insertStmt.executeBatch();
-                for (int r : result) {
-                    if (r == Statement.EXECUTE_FAILED) {
-                        success = false; // Se anche una sola operazione fallisce, l'intero processo non è un successo.
-                        break;
+                    // Esegue tutte le operazioni di inserimento in batch.
+                    int[] result = insertStmt.executeBatch();
+                    for (int r : result) {
+                        if (r == Statement.EXECUTE_FAILED) {
+                            // Se anche una sola operazione fallisce, l'eccezione annulla l'intero task.
+                            logger.warn("Rollback della transazione per il salvataggio dei presidi dello scenario con ID {}.", scenarioId);
+                            throw new SQLException("Inserimento dei presidi fallito per lo scenario con ID " + scenarioId + ".");
+                        }
                     }
+                    logger.info("Inserite {} nuove associazioni presidio-scenario per lo scenario con ID {}.", result.length, scenarioId);
                 }
-                logger.info("Inserite {} nuove associazioni presidio-scenario per lo scenario con ID {}.", result.length, scenarioId);
-            }
-
-            if (success) {
-                conn.commit(); // Conferma la transazione se tutto è andato a buon fine.
-                logger.info("Presidi per lo scenario con ID {} salvati con successo.", scenarioId);
-            } else {
-                conn.rollback(); // Esegue il rollback in caso di fallimento.
-                logger.warn("Rollback della transazione per il salvataggio dei presidi dello scenario con ID {}.", scenarioId);
-            }
+                return null;
+            });
+            logger.info("Presidi per lo scenario con ID {} salvati con successo.", scenarioId);
+            return true;
         } catch (Exception e) {
             logger.error("Errore durante il salvataggio dei presidi per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-            success = false;
+            return false;
         }
-        return success;
     }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import it.uniupo.simnova.service.scenario.helper.MediaHelper;
 import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -19,7 +20,7 @@ import java.util.List;
  * correlati da diverse tabelle del database, inclusi i file multimediali associati.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.3
  */
 @Service
 public class ScenarioDeletionService {
@@ -60,34 +61,35 @@ public class ScenarioDeletionService {
      * @return <code>true</code> se l'eliminazione è avvenuta con successo; <code>false</code> altrimenti.
      */
     public boolean deleteScenario(int scenarioId) {
-        Connection conn = null;
+        // Le modifiche differite vanno scritte prima: un parametro aggiuntivo inserito dopo resterebbe orfano.
+        DBConnect.getInstance().flushWriteBehind(scenarioId).join();
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Inizia la transazione.
-
             // 1. Recupera i nomi dei file multimediali associati allo scenario prima dell'eliminazione dal DB.
             List<String> mediaFiles = MediaHelper.getMediaFilesForScenario(scenarioId);
             logger.debug("Trovati {} file media da eliminare per lo scenario con ID {}", mediaFiles.size(), scenarioId);
 
-            // 2. Elimina i dati correlati in ordine inverso di dipendenza.
-            deleteAccessi(conn, scenarioId, "AccessoVenoso");
-            deleteAccessi(conn, scenarioId, "AccessoArterioso");
-            deleteRelatedMaterial(conn, scenarioId);
-            deleteRelatedPresidi(conn, scenarioId);
-            deleteRelatedAzioniChiave(conn, scenarioId);
-            // Delega la cancellazione dei tempi al servizio specifico AdvancedScenarioService.
-            advancedScenarioService.deleteTempi(conn, scenarioId);
-            deletePatientSimulatedScenario(conn, scenarioId);
-            deleteAdvancedScenario(conn, scenarioId);
-            deleteEsamiReferti(conn, scenarioId);
-            deleteEsameFisico(conn, scenarioId);
-            deletePazienteT0(conn, scenarioId);
-            deleteScenarioPrincipale(conn, scenarioId);
-
-            // 3. Elimina gli accessi orfani, ovvero quelli non più referenziati da alcun paziente T0.
-            deleteRelatedAccessi(conn);
+            // 2. Tutte le eliminazioni vengono eseguite nello stesso task di scrittura, quindi in un'unica transazione.
+            DBConnect.getInstance().write(conn -> {
+                // Elimina i dati correlati in ordine inverso di dipendenza.
+                deleteAccessi(conn, scenarioId, "AccessoVenoso");
+                deleteAccessi(conn, scenarioId, "AccessoArterioso");
+                deleteRelatedMaterial(conn, scenarioId);
+                deleteRelatedPresidi(conn, scenarioId);
+                deleteRelatedAzioniChiave(conn, scenarioId);
+                deleteAlarmThresholds(conn, scenarioId);
+                // Delega la cancellazione dei tempi al servizio specifico AdvancedScenarioService.
+                advancedScenarioService.deleteTempi(conn, scenarioId);
+                deletePatientSimulatedScenario(conn, scenarioId);
+                deleteAdvancedScenario(conn, scenarioId);
+                deleteEsamiReferti(conn, scenarioId);
+                deleteEsameFisico(conn, scenarioId);
+                deletePazienteT0(conn, scenarioId);
+                deleteScenarioPrincipale(conn, scenarioId);
 
-            conn.commit(); // Conferma la transazione se tutte le operazioni DB sono riuscite.
+                // 3. Elimina gli accessi orfani, ovvero quelli non più referenziati da alcun paziente T0.
+                deleteRelatedAccessi(conn);
+                return null;
+            });
             logger.info("Dati database per lo scenario con ID {} eliminati con successo.", scenarioId);
 
             // 4. Elimina i file multimediali dallo storage solo dopo il successo del DB.
@@ -96,25 +98,11 @@ public class ScenarioDeletionService {
 
             return true;
         } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Esegue il rollback in caso di errore SQL.
-                    logger.error("Rollback della transazione eseguito per lo scenario con ID {} a causa di un errore SQL: {}", scenarioId, e.getMessage());
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback della transazione per lo scenario con ID {}: {}", scenarioId, ex.getMessage(), ex);
-                }
-            }
+            // Le modifiche del task sono già state annullate dalla coda di scrittura.
             logger.error("Errore durante l'eliminazione dello scenario con ID {}: {}", scenarioId, e.getMessage(), e);
             return false;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit, indipendentemente dal successo.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione o il ripristino dell'autocommit per lo scenario con ID {}: {}", scenarioId, e.getMessage(), e);
-                }
-            }
+            ScenarioCache.getInstance().invalidate(scenarioId); // Anche dopo un rollback: la copia in memoria viene ricaricata alla prossima lettura.
         }
     }
 
@@ -146,6 +134,22 @@ public class ScenarioDeletionService {
         }
     }
 
+    /**
+     * Elimina le soglie di allarme personalizzate dello scenario specificato dalla tabella <code>SogliaAllarme</code>.
+     *
+     * @param conn       La {@link Connection} al database.
+     * @param scenarioId L'ID dello scenario.
+     * @throws SQLException se si verifica un errore SQL durante l'esecuzione della query.
+     */
+    private void deleteAlarmThresholds(Connection conn, int scenarioId) throws SQLException {
+        final String sql = "DELETE FROM SogliaAllarme WHERE id_scenario = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, scenarioId);
+            int count = stmt.executeUpdate();
+            logger.debug("Eliminate {} soglie di allarme per lo scenario ID {}.", count, scenarioId);
+        }
+    }
+
     /**
      * Elimina tutte le associazioni dei presidi con lo scenario specificato dalla tabella <code>PresidioScenario</code>.
      *
@@ -10,6 +10,8 @@ import it.uniupo.simnova.domain.common.Tempo;
 import it.uniupo.simnova.domain.paziente.EsameReferto;
 import it.uniupo.simnova.service.scenario.ScenarioService;
 import it.uniupo.simnova.service.scenario.components.*;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatchResult;
 import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
 import it.uniupo.simnova.service.scenario.types.PatientSimulatedScenarioService;
 import it.uniupo.simnova.service.storage.FileStorageService;
@@ -31,7 +33,7 @@ import java.util.stream.Collectors;
  * che includono il JSON e i relativi file multimediali (esami, referti).
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @SuppressWarnings("ALL") // Sopprime tutti gli avvisi del compilatore.
 @Service
@@ -341,31 +343,21 @@ public class ScenarioImportService {
             return;
         }
 
-        // Salva i vari campi dello scenario principale.
-        if (!scenarioService.updateScenarioTarget(scenarioId, (String) scenario.get("target"))) {
-            throw new RuntimeException("Errore durante il salvataggio del target per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioDescription(scenarioId, (String) scenario.get("descrizione"))) {
-            throw new RuntimeException("Errore durante il salvataggio della descrizione per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioBriefing(scenarioId, (String) scenario.get("briefing"))) {
-            throw new RuntimeException("Errore durante il salvataggio del briefing per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioPattoAula(scenarioId, (String) scenario.get("patto_aula"))) {
-            throw new RuntimeException("Errore durante il salvataggio del patto aula per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioObiettiviDidattici(scenarioId, (String) scenario.get("obiettivo"))) {
-            throw new RuntimeException("Errore durante il salvataggio dell'obiettivo didattico per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioMoulage(scenarioId, (String) scenario.get("moulage"))) {
-            throw new RuntimeException("Errore durante il salvataggio del moulage per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioLiquidi(scenarioId, (String) scenario.get("liquidi"))) {
-            throw new RuntimeException("Errore durante il salvataggio dei liquidi per lo scenario " + scenarioId);
-        }
-        if (!scenarioService.updateScenarioGenitoriInfo(scenarioId, (String) scenario.get("infoGenitore"))) {
-            throw new RuntimeException("Errore durante il salvataggio delle informazioni per il genitore per lo scenario " + scenarioId);
+        // Salva i vari campi dello scenario principale con un unico UPDATE.
+        ScenarioPatch patch = new ScenarioPatch()
+                .set(ScenarioPatch.Field.TARGET, (String) scenario.get("target"))
+                .set(ScenarioPatch.Field.DESCRIZIONE, (String) scenario.get("descrizione"))
+                .set(ScenarioPatch.Field.BRIEFING, (String) scenario.get("briefing"))
+                .set(ScenarioPatch.Field.PATTO_AULA, (String) scenario.get("patto_aula"))
+                .set(ScenarioPatch.Field.OBIETTIVO, (String) scenario.get("obiettivo"))
+                .set(ScenarioPatch.Field.MOULAGE, (String) scenario.get("moulage"))
+                .set(ScenarioPatch.Field.LIQUIDI, (String) scenario.get("liquidi"))
+                .set(ScenarioPatch.Field.INFO_GENITORE, (String) scenario.get("infoGenitore"));
+        ScenarioPatchResult patchResult = scenarioService.applyPatch(scenarioId, patch);
+        if (!patchResult.success()) {
+            throw new RuntimeException("Errore durante il salvataggio dei campi testuali per lo scenario " + scenarioId);
         }
+        logger.debug("Campi {} salvati per lo scenario {}.", patchResult.changedFields(), scenarioId);
 
         // Salva le azioni chiave.
         List<String> azioniChiaveList = (List<String>) scenarioData.get("azioniChiave");
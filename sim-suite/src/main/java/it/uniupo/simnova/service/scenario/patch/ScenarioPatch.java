@@ -0,0 +1,137 @@
+package it.uniupo.simnova.service.scenario.patch;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Insieme di modifiche ai campi testuali di uno scenario, da applicare con un unico <code>UPDATE</code>.
+ * <p>
+ * Contiene solo i campi impostati esplicitamente: quelli assenti restano invariati nel database.
+ * Un campo impostato a <code>null</code> viene invece svuotato.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class ScenarioPatch {
+
+    /**
+     * I nuovi valori dei campi impostati, nell'ordine delle colonne.
+     */
+    private final Map<Field, String> values = new EnumMap<>(Field.class);
+
+    /**
+     * Crea una modifica di un singolo campo.
+     *
+     * @param field Il campo da modificare.
+     * @param value Il nuovo valore; <code>null</code> per svuotare il campo.
+     * @return La nuova modifica.
+     */
+    public static ScenarioPatch of(Field field, String value) {
+        return new ScenarioPatch().set(field, value);
+    }
+
+    /**
+     * Imposta il nuovo valore di un campo, sostituendo quello eventualmente già impostato.
+     *
+     * @param field Il campo da modificare.
+     * @param value Il nuovo valore; <code>null</code> per svuotare il campo.
+     * @return Questa modifica, per concatenare le chiamate.
+     */
+    public ScenarioPatch set(Field field, String value) {
+        values.put(field, value);
+        return this;
+    }
+
+    /**
+     * Restituisce i campi impostati con i rispettivi valori.
+     *
+     * @return Una vista non modificabile dei valori, ordinata come {@link Field}.
+     */
+    public Map<Field, String> values() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Indica se la modifica non contiene alcun campo.
+     *
+     * @return <code>true</code> se nessun campo è stato impostato.
+     */
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Restituisce una rappresentazione testuale della modifica, con i soli nomi dei campi:
+     * i contenuti possono essere lunghi testi HTML.
+     *
+     * @return Una stringa che elenca i campi impostati.
+     */
+    @Override
+    public String toString() {
+        return "ScenarioPatch" + values.keySet();
+    }
+
+    /**
+     * Campi testuali dello scenario modificabili con una {@link ScenarioPatch}.
+     */
+    public enum Field {
+        /**
+         * Destinatari dello scenario.
+         */
+        TARGET("target"),
+        /**
+         * Descrizione dello scenario.
+         */
+        DESCRIZIONE("descrizione"),
+        /**
+         * Briefing per i partecipanti.
+         */
+        BRIEFING("briefing"),
+        /**
+         * Patto d'aula.
+         */
+        PATTO_AULA("patto_aula"),
+        /**
+         * Obiettivi didattici.
+         */
+        OBIETTIVO("obiettivo"),
+        /**
+         * Moulage.
+         */
+        MOULAGE("moulage"),
+        /**
+         * Liquidi e dosi dei farmaci.
+         */
+        LIQUIDI("liquidi"),
+        /**
+         * Informazioni dai genitori, per gli scenari pediatrici.
+         */
+        INFO_GENITORE("info_genitore");
+
+        /**
+         * Il nome della colonna nella tabella <code>Scenario</code>.
+         */
+        private final String column;
+
+        /**
+         * Associa il campo alla sua colonna.
+         *
+         * @param column Il nome della colonna.
+         */
+        Field(String column) {
+            this.column = column;
+        }
+
+        /**
+         * Restituisce il nome della colonna nella tabella <code>Scenario</code>.
+         * È una costante, quindi può essere concatenato nella query senza rischio di SQL injection.
+         *
+         * @return Il nome della colonna.
+         */
+        public String column() {
+            return column;
+        }
+    }
+}
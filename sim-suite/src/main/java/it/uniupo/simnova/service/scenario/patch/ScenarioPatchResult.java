@@ -0,0 +1,28 @@
+package it.uniupo.simnova.service.scenario.patch;
+
+import java.util.Set;
+
+/**
+ * Esito dell'applicazione di una {@link ScenarioPatch}.
+ *
+ * @param success       <code>true</code> se lo scenario esiste e la modifica è stata confermata (anche senza cambiamenti).
+ * @param changedFields I campi il cui valore è effettivamente cambiato; vuoto se nulla è cambiato o in caso di errore.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record ScenarioPatchResult(boolean success, Set<ScenarioPatch.Field> changedFields) {
+
+    /**
+     * Esito di una modifica non applicata (scenario inesistente o errore SQL).
+     */
+    public static final ScenarioPatchResult FAILED = new ScenarioPatchResult(false, Set.of());
+
+    /**
+     * Indica se almeno un campo è cambiato.
+     *
+     * @return <code>true</code> se è stato eseguito un <code>UPDATE</code>.
+     */
+    public boolean hasChanges() {
+        return !changedFields.isEmpty();
+    }
+}
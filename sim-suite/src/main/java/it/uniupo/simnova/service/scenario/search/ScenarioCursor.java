@@ -0,0 +1,14 @@
+package it.uniupo.simnova.service.scenario.search;
+
+/**
+ * Posizione in un elenco ordinato di scenari, usata per la paginazione per chiave (<em>keyset</em>):
+ * la pagina successiva contiene gli scenari che seguono questa chiave nell'ordinamento richiesto.
+ *
+ * @param sortValue Il valore del campo ordinato dell'ultimo scenario della pagina precedente;
+ *                  <code>null</code> quando si ordina per ID.
+ * @param id        L'ID dell'ultimo scenario della pagina precedente.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record ScenarioCursor(String sortValue, int id) {
+}
@@ -0,0 +1,25 @@
+package it.uniupo.simnova.service.scenario.search;
+
+/**
+ * Criteri di ricerca degli scenari, applicati lato database da
+ * {@link it.uniupo.simnova.service.scenario.ScenarioService#searchScenarios(ScenarioFilter, ScenarioSort, ScenarioCursor, int)}.
+ * Un criterio <code>null</code> o vuoto non filtra.
+ *
+ * @param tipologiaPaziente La tipologia del paziente (es. "Adulto"), confrontata senza distinzione tra maiuscole e minuscole.
+ * @param titolo            Testo contenuto nel titolo.
+ * @param autori            Testo contenuto negli autori.
+ * @param tipoScenario      Il tipo di scenario (es. "Quick Scenario"), come restituito da
+ *                          {@link it.uniupo.simnova.service.scenario.ScenarioService#getScenarioType(int)}.
+ * @param patologia         Testo contenuto nella patologia.
+ * @param testo             Parole da cercare nei contenuti tramite l'indice full-text ({@link ScenarioFullTextIndex}).
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record ScenarioFilter(String tipologiaPaziente, String titolo, String autori, String tipoScenario, String patologia,
+                             String testo) {
+
+    /**
+     * Filtro che non esclude alcuno scenario.
+     */
+    public static final ScenarioFilter NONE = new ScenarioFilter(null, null, null, null, null, null);
+}
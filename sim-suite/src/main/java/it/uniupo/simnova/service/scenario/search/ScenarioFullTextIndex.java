@@ -0,0 +1,192 @@
+package it.uniupo.simnova.service.scenario.search;
+
+import it.uniupo.simnova.utils.DBConnect;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Indice full-text dei contenuti degli scenari, basato sulla tabella virtuale FTS5 <code>ScenarioFts</code>.
+ * <p>
+ * Ogni riga dell'indice ha come <code>rowid</code> l'ID dello scenario e contiene titolo, patologia,
+ * descrizione, briefing, obiettivo, sceneggiatura e nomi delle azioni chiave come testo semplice.
+ * I trigger creati dalla migrazione dello schema registrano in <code>ScenarioFtsPending</code> gli scenari
+ * modificati; {@link #syncPending()} ne ricostruisce le righe rimuovendo i tag HTML, operazione che
+ * non è possibile eseguire in SQL. Così l'indice resta allineato anche alle modifiche dei servizi
+ * che non conoscono la ricerca.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class ScenarioFullTextIndex {
+
+    /**
+     * Carattere che precede un termine trovato negli estratti restituiti dalla ricerca.
+     */
+    public static final char HIGHLIGHT_START = '\u0002';
+
+    /**
+     * Carattere che segue un termine trovato negli estratti restituiti dalla ricerca.
+     */
+    public static final char HIGHLIGHT_END = '\u0003';
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare gli aggiornamenti dell'indice.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioFullTextIndex.class);
+
+    /**
+     * Numero massimo di scenari reindicizzati in un singolo task di scrittura,
+     * per non occupare a lungo lo scrittore durante la prima indicizzazione.
+     */
+    private static final int SYNC_BATCH_SIZE = 100;
+
+    /**
+     * Separatori tra i termini di una ricerca: tutto ciò che non è lettera o cifra.
+     */
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Query che ricostruisce il documento indicizzato di uno scenario.
+     */
+    private static final String DOCUMENT_SQL = "SELECT s.titolo, s.patologia, s.descrizione, s.briefing, s.obiettivo, p.sceneggiatura, " +
+            "(SELECT group_concat(ac.nome, ' ') FROM AzioneScenario az JOIN AzioniChiave ac ON ac.id_azione = az.id_azione " +
+            "WHERE az.id_scenario = s.id_scenario) AS azioni_chiave " +
+            "FROM Scenario s LEFT JOIN PatientSimulatedScenario p ON p.id_patient_simulated_scenario = s.id_scenario " +
+            "WHERE s.id_scenario = ?";
+
+    /**
+     * Costruttore privato: la classe espone solo metodi statici.
+     */
+    private ScenarioFullTextIndex() {
+        // Classe di utilità: non istanziabile.
+    }
+
+    /**
+     * Aggiorna l'indice per tutti gli scenari modificati dall'ultimo allineamento.
+     * Se non ci sono modifiche in attesa costa una sola lettura per chiave primaria.
+     *
+     * @return Il numero di scenari reindicizzati; <code>0</code> se non c'era nulla da aggiornare o in caso di errore.
+     */
+    public static int syncPending() {
+        try {
+            if (!hasPending()) {
+                return 0;
+            }
+            int total = 0;
+            int batch;
+            do {
+                batch = DBConnect.getInstance().write(ScenarioFullTextIndex::reindexPendingBatch);
+                total += batch;
+            } while (batch == SYNC_BATCH_SIZE);
+            logger.info("Indice full-text aggiornato per {} scenari.", total);
+            return total;
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante l'aggiornamento dell'indice full-text degli scenari: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Converte il testo digitato dall'utente in una query FTS5.
+     * Ogni parola diventa un prefisso tra virgolette, quindi gli operatori e la punteggiatura
+     * dell'utente non vengono interpretati; tutte le parole devono essere presenti.
+     *
+     * @param text Il testo da cercare.
+     * @return La query per l'operatore <code>MATCH</code>; <code>null</code> se il testo non contiene parole.
+     */
+    public static String toMatchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        for (String term : TERM_SEPARATOR.split(text)) {
+            if (!term.isEmpty()) {
+                terms.add("\"" + term + "\"*"); // I separatori escludono le virgolette: non serve alcun escape.
+            }
+        }
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+
+    /**
+     * Verifica se ci sono scenari in attesa di essere reindicizzati.
+     *
+     * @return <code>true</code> se la coda delle modifiche non è vuota.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private static boolean hasPending() throws SQLException {
+        try (Connection conn = DBConnect.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM ScenarioFtsPending LIMIT 1")) {
+            return stmt.executeQuery().next();
+        }
+    }
+
+    /**
+     * Reindicizza un blocco di scenari in attesa e li rimuove dalla coda.
+     * Eseguito dallo scrittore singolo, nella stessa transazione delle modifiche all'indice.
+     *
+     * @param conn La connessione dello scrittore.
+     * @return Il numero di scenari elaborati.
+     * @throws SQLException se la lettura dei contenuti o l'aggiornamento dell'indice falliscono.
+     */
+    private static int reindexPendingBatch(Connection conn) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id_scenario FROM ScenarioFtsPending LIMIT ?")) {
+            stmt.setInt(1, SYNC_BATCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+
+        try (PreparedStatement select = conn.prepareStatement(DOCUMENT_SQL);
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM ScenarioFts WHERE rowid = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO ScenarioFts " +
+                     "(rowid, titolo, patologia, descrizione, briefing, obiettivo, sceneggiatura, azioni_chiave) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement dequeue = conn.prepareStatement("DELETE FROM ScenarioFtsPending WHERE id_scenario = ?")) {
+
+            for (int id : ids) {
+                delete.setInt(1, id);
+                delete.executeUpdate();
+
+                select.setInt(1, id);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) { // Uno scenario eliminato resta fuori dall'indice.
+                        insert.setInt(1, id);
+                        for (int column = 1; column <= 7; column++) {
+                            insert.setString(column + 1, plainText(rs.getString(column)));
+                        }
+                        insert.executeUpdate();
+                    }
+                }
+
+                dequeue.setInt(1, id);
+                dequeue.executeUpdate();
+            }
+        }
+        logger.debug("Reindicizzati {} scenari nell'indice full-text.", ids.size());
+        return ids.size();
+    }
+
+    /**
+     * Estrae il testo semplice da un contenuto che può contenere HTML (editor di testo ricco).
+     *
+     * @param html Il contenuto da convertire.
+     * @return Il testo senza tag; una stringa vuota se il contenuto è <code>null</code>.
+     */
+    private static String plainText(String html) {
+        if (html == null || html.isBlank()) {
+            return "";
+        }
+        return Jsoup.parse(html).text();
+    }
+}
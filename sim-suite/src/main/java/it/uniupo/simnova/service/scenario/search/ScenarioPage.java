@@ -0,0 +1,34 @@
+package it.uniupo.simnova.service.scenario.search;
+
+import it.uniupo.simnova.domain.scenario.Scenario;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pagina di risultati della ricerca degli scenari.
+ *
+ * @param scenarios  Gli scenari della pagina, nell'ordine richiesto.
+ * @param nextCursor La chiave da cui prosegue la pagina successiva; <code>null</code> se questa è l'ultima.
+ * @param snippets   Gli estratti dei contenuti che corrispondono al testo cercato, per ID dello scenario;
+ *                   i termini trovati sono delimitati da {@link ScenarioFullTextIndex#HIGHLIGHT_START} e
+ *                   {@link ScenarioFullTextIndex#HIGHLIGHT_END}. Vuota se la ricerca non contiene un testo.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record ScenarioPage(List<Scenario> scenarios, ScenarioCursor nextCursor, Map<Integer, String> snippets) {
+
+    /**
+     * Pagina vuota, restituita in caso di errore.
+     */
+    public static final ScenarioPage EMPTY = new ScenarioPage(List.of(), null, Map.of());
+
+    /**
+     * Indica se esistono altri scenari dopo questa pagina.
+     *
+     * @return <code>true</code> se è disponibile una pagina successiva.
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,54 @@
+package it.uniupo.simnova.service.scenario.search;
+
+/**
+ * Ordinamento dei risultati della ricerca degli scenari.
+ * A parità di valore ordinato, gli scenari sono ordinati per ID nella stessa direzione,
+ * così che l'ordinamento sia totale e adatto alla paginazione per chiave.
+ *
+ * @param field     Il campo su cui ordinare.
+ * @param ascending <code>true</code> per l'ordine crescente; <code>false</code> per quello decrescente.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record ScenarioSort(Field field, boolean ascending) {
+
+    /**
+     * Ordinamento predefinito: dal più recente al meno recente, cioè per ID decrescente.
+     */
+    public static final ScenarioSort DEFAULT = new ScenarioSort(Field.ID, false);
+
+    /**
+     * Campi degli scenari su cui è possibile ordinare.
+     */
+    public enum Field {
+        /**
+         * Identificativo dello scenario.
+         */
+        ID,
+        /**
+         * Titolo, senza distinzione tra maiuscole e minuscole.
+         */
+        TITOLO,
+        /**
+         * Autori, senza distinzione tra maiuscole e minuscole.
+         */
+        AUTORI,
+        /**
+         * Patologia, senza distinzione tra maiuscole e minuscole.
+         */
+        PATOLOGIA,
+        /**
+         * Tipologia del paziente, senza distinzione tra maiuscole e minuscole.
+         */
+        TIPOLOGIA_PAZIENTE,
+        /**
+         * Tipo di scenario (Quick, Advanced, Patient Simulated).
+         */
+        TIPO_SCENARIO,
+        /**
+         * Pertinenza rispetto al testo cercato, dalla più alta in ordine crescente.
+         * Applicabile solo quando il filtro contiene un testo; altrimenti si usa {@link ScenarioSort#DEFAULT}.
+         */
+        RILEVANZA
+    }
+}
@@ -0,0 +1,377 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import java.util.BitSet;
+
+/**
+ * Grafo immutabile delle transizioni tra i tempi di uno scenario avanzato, prodotto da {@link TimelineCompiler}.
+ * <p>
+ * Ogni tempo è uno <em>stato</em> identificato dalla sua posizione nel {@link TimelineFrame} (indici densi da
+ * <code>0</code> a {@link #stateCount()} escluso). Le transizioni "se SI" e "se NO" sono risolte una volta sola
+ * in due tabelle di indici, quindi {@link #next(int, boolean)} costa un accesso ad array. Raggiungibilità, cicli,
+ * transizioni verso tempi inesistenti e durate minime e massime fino alla fine della simulazione sono
+ * precalcolate in fase di compilazione.
+ * </p>
+ * <p>
+ * Una transizione verso il tempo <code>0</code> indica la fine della simulazione, come nell'editor dei tempi.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class CompiledTimeline {
+
+    /**
+     * Destinazione di una transizione che termina la simulazione.
+     */
+    public static final int END = -1;
+
+    /**
+     * Destinazione di una transizione verso un tempo che non esiste nello scenario.
+     */
+    public static final int DANGLING = -2;
+
+    /**
+     * Durata restituita per gli stati da cui la fine della simulazione non è raggiungibile.
+     */
+    public static final long NO_END = -1;
+
+    /**
+     * Durata massima restituita quando un ciclo permette di prolungare la simulazione indefinitamente.
+     */
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    /**
+     * La revisione dei tempi dello scenario da cui il grafo è stato compilato.
+     */
+    private final long version;
+
+    /**
+     * I tempi compilati.
+     */
+    private final TimelineFrame frame;
+
+    /**
+     * Lo stato iniziale; {@link #END} se lo scenario non ha tempi.
+     */
+    private final int start;
+
+    /**
+     * Destinazione della transizione "se SI" di ciascuno stato.
+     */
+    private final int[] yes;
+
+    /**
+     * Destinazione della transizione "se NO" di ciascuno stato.
+     */
+    private final int[] no;
+
+    /**
+     * Stati raggiungibili dallo stato iniziale.
+     */
+    private final BitSet reachable;
+
+    /**
+     * Stati che appartengono a un ciclo.
+     */
+    private final BitSet cyclic;
+
+    /**
+     * Stati con almeno una transizione verso un tempo inesistente.
+     */
+    private final BitSet deadEnds;
+
+    /**
+     * Durata minima, in secondi, dall'ingresso in ciascuno stato alla fine della simulazione.
+     */
+    private final long[] shortestRemaining;
+
+    /**
+     * Durata massima, in secondi, dall'ingresso in ciascuno stato alla fine della simulazione.
+     */
+    private final long[] longestRemaining;
+
+    /**
+     * Componente fortemente connessa di ciascuno stato.
+     */
+    private final int[] component;
+
+    /**
+     * Numero di componenti fortemente connesse.
+     */
+    private final int componentCount;
+
+    /**
+     * Costruttore usato da {@link TimelineCompiler}.
+     *
+     * @param version           La revisione dei tempi compilati.
+     * @param frame             I tempi compilati.
+     * @param start             Lo stato iniziale.
+     * @param yes               Le transizioni "se SI".
+     * @param no                Le transizioni "se NO".
+     * @param reachable         Gli stati raggiungibili.
+     * @param cyclic            Gli stati in un ciclo.
+     * @param deadEnds          Gli stati con transizioni verso tempi inesistenti.
+     * @param shortestRemaining Le durate minime fino alla fine.
+     * @param longestRemaining  Le durate massime fino alla fine.
+     * @param component         La componente fortemente connessa di ciascuno stato.
+     * @param componentCount    Il numero di componenti.
+     */
+    CompiledTimeline(long version, TimelineFrame frame, int start, int[] yes, int[] no, BitSet reachable, BitSet cyclic,
+                     BitSet deadEnds, long[] shortestRemaining, long[] longestRemaining, int[] component, int componentCount) {
+        this.version = version;
+        this.frame = frame;
+        this.start = start;
+        this.yes = yes;
+        this.no = no;
+        this.reachable = reachable;
+        this.cyclic = cyclic;
+        this.deadEnds = deadEnds;
+        this.shortestRemaining = shortestRemaining;
+        this.longestRemaining = longestRemaining;
+        this.component = component;
+        this.componentCount = componentCount;
+    }
+
+    /**
+     * Restituisce la revisione dei tempi da cui il grafo è stato compilato.
+     * Un'esecuzione può confrontarla con quella corrente per sapere se lo scenario è stato modificato.
+     *
+     * @return La revisione.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Restituisce i tempi compilati, nella stessa indicizzazione degli stati.
+     *
+     * @return Il {@link TimelineFrame} dei tempi.
+     */
+    public TimelineFrame frame() {
+        return frame;
+    }
+
+    /**
+     * Restituisce il numero di stati.
+     *
+     * @return Il numero di tempi dello scenario.
+     */
+    public int stateCount() {
+        return yes.length;
+    }
+
+    /**
+     * Restituisce lo stato iniziale: T0 se esiste, altrimenti il tempo con l'ID minore.
+     *
+     * @return Lo stato iniziale; {@link #END} se lo scenario non ha tempi.
+     */
+    public int startState() {
+        return start;
+    }
+
+    /**
+     * Restituisce lo stato di un tempo.
+     *
+     * @param tempoId L'ID del tempo.
+     * @return Lo stato; {@link TimelineFrame#NOT_FOUND} se il tempo non esiste.
+     */
+    public int stateOf(int tempoId) {
+        return frame.indexOf(tempoId);
+    }
+
+    /**
+     * Restituisce l'ID del tempo di uno stato.
+     *
+     * @param state Lo stato.
+     * @return L'ID del tempo.
+     */
+    public int tempoIdOf(int state) {
+        return frame.idAt(state);
+    }
+
+    /**
+     * Restituisce lo stato successivo.
+     *
+     * @param state           Lo stato corrente.
+     * @param actionPerformed <code>true</code> per seguire la transizione "se SI", <code>false</code> per quella "se NO".
+     * @return Lo stato successivo, {@link #END} se la simulazione termina o {@link #DANGLING} se la transizione è invalida.
+     */
+    public int next(int state, boolean actionPerformed) {
+        return actionPerformed ? yes[state] : no[state];
+    }
+
+    /**
+     * Indica se entrambe le transizioni di uno stato terminano la simulazione.
+     *
+     * @param state Lo stato.
+     * @return <code>true</code> se lo stato è terminale.
+     */
+    public boolean isTerminal(int state) {
+        return yes[state] == END && no[state] == END;
+    }
+
+    /**
+     * Indica se uno stato è raggiungibile dallo stato iniziale.
+     *
+     * @param state Lo stato.
+     * @return <code>true</code> se esiste un percorso dallo stato iniziale.
+     */
+    public boolean isReachable(int state) {
+        return reachable.get(state);
+    }
+
+    /**
+     * Indica se uno stato appartiene a un ciclo, anche di un solo stato che torna su sé stesso.
+     *
+     * @param state Lo stato.
+     * @return <code>true</code> se lo stato può essere rivisitato.
+     */
+    public boolean isInCycle(int state) {
+        return cyclic.get(state);
+    }
+
+    /**
+     * Restituisce la componente fortemente connessa di uno stato: gli stati di un ciclo condividono la componente,
+     * ogni altro stato ne ha una propria. Le componenti sono numerate in ordine topologico inverso, quindi una
+     * transizione porta sempre in una componente con indice minore o uguale e, una volta uscita da una componente,
+     * l'esecuzione non vi rientra più.
+     *
+     * @param state Lo stato.
+     * @return L'indice della componente, da <code>0</code> a {@link #componentCount()} escluso.
+     */
+    public int componentOf(int state) {
+        return component[state];
+    }
+
+    /**
+     * Restituisce il numero di componenti fortemente connesse.
+     *
+     * @return Il numero di componenti; pari al numero di stati se lo scenario non ha cicli.
+     */
+    public int componentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Indica se uno stato ha una transizione verso un tempo inesistente.
+     *
+     * @param state Lo stato.
+     * @return <code>true</code> se l'esecuzione si bloccherebbe seguendo quella transizione.
+     */
+    public boolean isDeadEnd(int state) {
+        return deadEnds.get(state);
+    }
+
+    /**
+     * Indica se da uno stato è possibile arrivare alla fine della simulazione.
+     *
+     * @param state Lo stato.
+     * @return <code>true</code> se esiste un percorso che termina.
+     */
+    public boolean canTerminate(int state) {
+        return shortestRemaining[state] != NO_END;
+    }
+
+    /**
+     * Restituisce la durata minima dall'ingresso in uno stato alla fine della simulazione, somma dei timer attraversati.
+     *
+     * @param state Lo stato.
+     * @return La durata in secondi; {@link #NO_END} se la fine non è raggiungibile.
+     */
+    public long shortestRemaining(int state) {
+        return shortestRemaining[state];
+    }
+
+    /**
+     * Restituisce la durata massima dall'ingresso in uno stato alla fine della simulazione.
+     *
+     * @param state Lo stato.
+     * @return La durata in secondi; {@link #UNBOUNDED} se un ciclo può prolungarla, {@link #NO_END} se la fine non è raggiungibile.
+     */
+    public long longestRemaining(int state) {
+        return longestRemaining[state];
+    }
+
+    /**
+     * Restituisce la durata minima dell'intera simulazione.
+     *
+     * @return La durata in secondi dallo stato iniziale; {@link #NO_END} se la simulazione non può terminare o non ha tempi.
+     */
+    public long shortestDuration() {
+        return start >= 0 ? shortestRemaining[start] : NO_END;
+    }
+
+    /**
+     * Restituisce la durata massima dell'intera simulazione.
+     *
+     * @return La durata in secondi dallo stato iniziale; {@link #UNBOUNDED} o {@link #NO_END} come per {@link #longestRemaining(int)}.
+     */
+    public long longestDuration() {
+        return start >= 0 ? longestRemaining[start] : NO_END;
+    }
+
+    /**
+     * Indica se lo scenario contiene almeno un ciclo.
+     *
+     * @return <code>true</code> se almeno uno stato può essere rivisitato.
+     */
+    public boolean hasCycles() {
+        return !cyclic.isEmpty();
+    }
+
+    /**
+     * Restituisce il numero di stati con transizioni verso tempi inesistenti.
+     *
+     * @return Il numero di stati senza uscita.
+     */
+    public int deadEndCount() {
+        return deadEnds.cardinality();
+    }
+
+    /**
+     * Restituisce il numero di stati non raggiungibili dallo stato iniziale.
+     *
+     * @return Il numero di tempi che l'esecuzione non può visitare.
+     */
+    public int unreachableCount() {
+        return stateCount() - reachable.cardinality();
+    }
+
+    /**
+     * Indica se il grafo può essere eseguito senza blocchi: ogni stato raggiungibile ha transizioni valide
+     * e può arrivare alla fine della simulazione.
+     *
+     * @return <code>true</code> se lo scenario è eseguibile.
+     */
+    public boolean isExecutable() {
+        if (start < 0) {
+            return false;
+        }
+        for (int state = reachable.nextSetBit(0); state >= 0; state = reachable.nextSetBit(state + 1)) {
+            if (deadEnds.get(state) || !canTerminate(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompiledTimeline{scenario=%d, revisione=%d, stati=%d, non raggiungibili=%d, senza uscita=%d, cicli=%s, durata=%s..%s}",
+                frame.scenarioId(), version, stateCount(), unreachableCount(), deadEndCount(), hasCycles() ? "sì" : "no",
+                formatDuration(shortestDuration()), formatDuration(longestDuration()));
+    }
+
+    /**
+     * Formatta una durata per {@link #toString()}.
+     *
+     * @param seconds La durata in secondi, o uno dei valori speciali.
+     * @return La durata leggibile.
+     */
+    private static String formatDuration(long seconds) {
+        if (seconds == NO_END) {
+            return "∅";
+        }
+        return seconds == UNBOUNDED ? "∞" : seconds + "s";
+    }
+}
@@ -0,0 +1,50 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+/**
+ * Riepilogo delle modifiche scritte dal salvataggio incrementale dei tempi di uno scenario avanzato.
+ *
+ * @param success           <code>true</code> se il salvataggio è stato confermato (anche senza modifiche).
+ * @param tempiInserted     Numero di tempi inseriti.
+ * @param tempiUpdated      Numero di tempi aggiornati.
+ * @param tempiDeleted      Numero di tempi eliminati.
+ * @param tempiUnchanged    Numero di tempi lasciati invariati.
+ * @param parametriInserted Numero di parametri aggiuntivi inseriti.
+ * @param parametriUpdated  Numero di parametri aggiuntivi aggiornati.
+ * @param parametriDeleted  Numero di parametri aggiuntivi eliminati.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record TimelineChangeSummary(boolean success,
+                                    int tempiInserted, int tempiUpdated, int tempiDeleted, int tempiUnchanged,
+                                    int parametriInserted, int parametriUpdated, int parametriDeleted) {
+
+    /**
+     * Esito di un salvataggio non riuscito: nessuna modifica è stata confermata.
+     */
+    public static final TimelineChangeSummary FAILED = new TimelineChangeSummary(false, 0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Restituisce il numero di istruzioni di modifica eseguite sul database.
+     *
+     * @return La somma di inserimenti, aggiornamenti ed eliminazioni di tempi e parametri.
+     */
+    public int totalChanges() {
+        return tempiInserted + tempiUpdated + tempiDeleted + parametriInserted + parametriUpdated + parametriDeleted;
+    }
+
+    /**
+     * Indica se il salvataggio ha modificato almeno una riga.
+     *
+     * @return <code>true</code> se è stata scritta almeno una modifica.
+     */
+    public boolean hasChanges() {
+        return totalChanges() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TimelineChangeSummary{esito=%s, tempi +%d ~%d -%d =%d, parametri +%d ~%d -%d}",
+                success ? "ok" : "fallito", tempiInserted, tempiUpdated, tempiDeleted, tempiUnchanged,
+                parametriInserted, parametriUpdated, parametriDeleted);
+    }
+}
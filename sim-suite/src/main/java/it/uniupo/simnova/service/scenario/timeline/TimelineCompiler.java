@@ -0,0 +1,306 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.PriorityQueue;
+
+/**
+ * Compila i tempi di uno scenario avanzato nel grafo immutabile {@link CompiledTimeline}.
+ * <p>
+ * La compilazione risolve le transizioni TSi/TNo in indici di stato e calcola in un'unica passata:
+ * gli stati raggiungibili da quello iniziale, i cicli (componenti fortemente connesse), le transizioni
+ * verso tempi inesistenti e, per ogni stato, la durata minima e massima fino alla fine della simulazione
+ * sommando i <code>timer_tempo</code> attraversati. Tutti gli algoritmi sono iterativi e lineari nel numero
+ * di stati, a parte la durata minima che usa Dijkstra sul grafo inverso.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class TimelineCompiler {
+
+    /**
+     * Costruttore privato: la classe espone solo metodi statici.
+     */
+    private TimelineCompiler() {
+    }
+
+    /**
+     * Compila i tempi di uno scenario.
+     *
+     * @param frame   I tempi dello scenario.
+     * @param version La revisione dei tempi, riportata nel grafo compilato.
+     * @return Il grafo delle transizioni.
+     */
+    public static CompiledTimeline compile(TimelineFrame frame, long version) {
+        final int n = frame.size();
+        int[] yes = new int[n];
+        int[] no = new int[n];
+        BitSet deadEnds = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            yes[i] = resolve(frame, frame.tsiAt(i));
+            no[i] = resolve(frame, frame.tnoAt(i));
+            if (yes[i] == CompiledTimeline.DANGLING || no[i] == CompiledTimeline.DANGLING) {
+                deadEnds.set(i);
+            }
+        }
+
+        int start = n == 0 ? CompiledTimeline.END : Math.max(0, frame.indexOf(0)); // T0, altrimenti il primo tempo.
+        BitSet reachable = reachableFrom(start, yes, no);
+        long[] shortest = shortestRemaining(frame, yes, no);
+
+        BitSet cyclic = new BitSet(n);
+        long[] longest = new long[n];
+        int[] component = new int[n];
+        int components = longestRemaining(frame, yes, no, shortest, cyclic, longest, component);
+
+        return new CompiledTimeline(version, frame, start, yes, no, reachable, cyclic, deadEnds, shortest, longest,
+                component, components);
+    }
+
+    /**
+     * Risolve la destinazione di una transizione.
+     *
+     * @param frame   I tempi dello scenario.
+     * @param tempoId L'ID del tempo di destinazione.
+     * @return L'indice dello stato, {@link CompiledTimeline#END} per <code>0</code> o valori negativi,
+     * {@link CompiledTimeline#DANGLING} se il tempo non esiste.
+     */
+    private static int resolve(TimelineFrame frame, int tempoId) {
+        if (tempoId <= 0) {
+            return CompiledTimeline.END;
+        }
+        int state = frame.indexOf(tempoId);
+        return state == TimelineFrame.NOT_FOUND ? CompiledTimeline.DANGLING : state;
+    }
+
+    /**
+     * Visita in profondità il grafo a partire dallo stato iniziale.
+     *
+     * @param start Lo stato iniziale, o {@link CompiledTimeline#END} se non ci sono stati.
+     * @param yes   Le transizioni "se SI".
+     * @param no    Le transizioni "se NO".
+     * @return Gli stati raggiungibili.
+     */
+    private static BitSet reachableFrom(int start, int[] yes, int[] no) {
+        BitSet visited = new BitSet(yes.length);
+        if (start < 0) {
+            return visited;
+        }
+        int[] stack = new int[yes.length];
+        int top = 0;
+        stack[top++] = start;
+        visited.set(start);
+        while (top > 0) {
+            int state = stack[--top];
+            for (int next : new int[]{yes[state], no[state]}) {
+                if (next >= 0 && !visited.get(next)) {
+                    visited.set(next);
+                    stack[top++] = next;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Calcola per ogni stato la durata minima fino alla fine della simulazione con Dijkstra sul grafo inverso,
+     * partendo dagli stati che hanno una transizione di fine.
+     *
+     * @param frame I tempi dello scenario, per i timer.
+     * @param yes   Le transizioni "se SI".
+     * @param no    Le transizioni "se NO".
+     * @return Le durate minime; {@link CompiledTimeline#NO_END} per gli stati che non possono terminare.
+     */
+    private static long[] shortestRemaining(TimelineFrame frame, int[] yes, int[] no) {
+        final int n = yes.length;
+        int[][] predecessors = predecessors(yes, no);
+        long[] dist = new long[n];
+        Arrays.fill(dist, CompiledTimeline.NO_END);
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < n; i++) {
+            if (yes[i] == CompiledTimeline.END || no[i] == CompiledTimeline.END) {
+                dist[i] = timer(frame, i);
+                queue.add(new long[]{dist[i], i});
+            }
+        }
+        BitSet settled = new BitSet(n);
+        while (!queue.isEmpty()) {
+            long[] head = queue.poll();
+            int state = (int) head[1];
+            if (settled.get(state)) {
+                continue; // Voce superata da una distanza migliore.
+            }
+            settled.set(state);
+            for (int previous : predecessors[state]) {
+                long candidate = head[0] + timer(frame, previous);
+                if (dist[previous] == CompiledTimeline.NO_END || candidate < dist[previous]) {
+                    dist[previous] = candidate;
+                    queue.add(new long[]{candidate, previous});
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Individua i cicli con l'algoritmo di Tarjan e calcola per ogni stato la durata massima fino alla fine.
+     * Tarjan chiude le componenti in ordine topologico inverso, quindi ogni successore fuori dalla componente
+     * ha già la sua durata quando la componente viene chiusa.
+     *
+     * @param frame    I tempi dello scenario, per i timer.
+     * @param yes      Le transizioni "se SI".
+     * @param no       Le transizioni "se NO".
+     * @param shortest Le durate minime, per sapere quali stati possono terminare.
+     * @param cyclic    Riempito con gli stati che appartengono a un ciclo.
+     * @param longest   Riempito con le durate massime.
+     * @param component Riempito con la componente di ciascuno stato, numerate nell'ordine di chiusura.
+     * @return Il numero di componenti.
+     */
+    private static int longestRemaining(TimelineFrame frame, int[] yes, int[] no, long[] shortest, BitSet cyclic, long[] longest,
+                                        int[] component) {
+        final int n = yes.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        BitSet onStack = new BitSet(n);
+        int[] sccStack = new int[n];
+        int sccTop = 0;
+        int[] callStack = new int[n];
+        int[] edge = new int[n]; // Prossima transizione da esaminare per ogni stato sullo stack di chiamata.
+        int counter = 0;
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int callTop = 0;
+            callStack[callTop++] = root;
+            index[root] = low[root] = counter++;
+            sccStack[sccTop++] = root;
+            onStack.set(root);
+            edge[root] = 0;
+
+            while (callTop > 0) {
+                int state = callStack[callTop - 1];
+                if (edge[state] < 2) {
+                    int next = edge[state]++ == 0 ? yes[state] : no[state];
+                    if (next < 0) {
+                        continue;
+                    }
+                    if (index[next] < 0) {
+                        index[next] = low[next] = counter++;
+                        sccStack[sccTop++] = next;
+                        onStack.set(next);
+                        edge[next] = 0;
+                        callStack[callTop++] = next;
+                    } else if (onStack.get(next)) {
+                        low[state] = Math.min(low[state], index[next]);
+                    }
+                    continue;
+                }
+
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[state]);
+                }
+                if (low[state] == index[state]) {
+                    int first = sccTop;
+                    do {
+                        onStack.clear(sccStack[--first]);
+                        component[sccStack[first]] = components;
+                    } while (sccStack[first] != state);
+                    components++;
+                    closeComponent(frame, yes, no, shortest, cyclic, longest, sccStack, first, sccTop);
+                    sccTop = first;
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Assegna la durata massima agli stati di una componente fortemente connessa appena chiusa.
+     *
+     * @param frame    I tempi dello scenario.
+     * @param yes      Le transizioni "se SI".
+     * @param no       Le transizioni "se NO".
+     * @param shortest Le durate minime.
+     * @param cyclic   Gli stati che appartengono a un ciclo.
+     * @param longest  Le durate massime.
+     * @param members  Lo stack che contiene la componente.
+     * @param from     Primo elemento della componente nello stack.
+     * @param to       Limite esclusivo della componente nello stack.
+     */
+    private static void closeComponent(TimelineFrame frame, int[] yes, int[] no, long[] shortest, BitSet cyclic,
+                                       long[] longest, int[] members, int from, int to) {
+        int single = members[from];
+        boolean isCycle = to - from > 1 || yes[single] == single || no[single] == single;
+        if (isCycle) {
+            for (int k = from; k < to; k++) {
+                int state = members[k];
+                cyclic.set(state);
+                // Tutti gli stati del ciclo possono terminare o nessuno: se possono, il ciclo si ripete a piacere.
+                longest[state] = shortest[state] == CompiledTimeline.NO_END ? CompiledTimeline.NO_END : CompiledTimeline.UNBOUNDED;
+            }
+            return;
+        }
+
+        long best = CompiledTimeline.NO_END;
+        for (int next : new int[]{yes[single], no[single]}) {
+            long tail;
+            if (next == CompiledTimeline.END) {
+                tail = 0;
+            } else if (next >= 0) {
+                tail = longest[next];
+            } else {
+                continue; // Transizione verso un tempo inesistente.
+            }
+            if (tail == CompiledTimeline.UNBOUNDED) {
+                best = CompiledTimeline.UNBOUNDED;
+            } else if (tail != CompiledTimeline.NO_END && best != CompiledTimeline.UNBOUNDED) {
+                best = Math.max(best, tail + timer(frame, single));
+            }
+        }
+        longest[single] = best;
+    }
+
+    /**
+     * Costruisce per ogni stato l'elenco dei predecessori.
+     *
+     * @param yes Le transizioni "se SI".
+     * @param no  Le transizioni "se NO".
+     * @return Per ogni stato, gli stati che vi arrivano con una transizione.
+     */
+    private static int[][] predecessors(int[] yes, int[] no) {
+        final int n = yes.length;
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (yes[i] >= 0) counts[yes[i]]++;
+            if (no[i] >= 0 && no[i] != yes[i]) counts[no[i]]++;
+        }
+        int[][] result = new int[n][];
+        for (int i = 0; i < n; i++) {
+            result[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            if (yes[i] >= 0) result[yes[i]][counts[yes[i]]++] = i;
+            if (no[i] >= 0 && no[i] != yes[i]) result[no[i]][counts[no[i]]++] = i;
+        }
+        return result;
+    }
+
+    /**
+     * Restituisce il timer di uno stato, ignorando i valori negativi.
+     *
+     * @param frame I tempi dello scenario.
+     * @param state Lo stato.
+     * @return La durata del tempo in secondi.
+     */
+    private static long timer(TimelineFrame frame, int state) {
+        return Math.max(0L, frame.timerAt(state));
+    }
+}
@@ -0,0 +1,742 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enumera tutti i percorsi attraverso un {@link CompiledTimeline} e ne calcola la distribuzione delle durate,
+ * producendo un {@link TimelinePaths}.
+ * <p>
+ * I percorsi non vengono elencati uno per uno, perché il loro numero cresce in modo esponenziale con le diramazioni:
+ * per ogni stato si calcola una sola volta la distribuzione dei percorsi che partono da lì (quanti percorsi per ogni
+ * durata, quanti interrotti e quanti bloccati) e la si riusa per tutti i percorsi che vi arrivano. Il futuro di uno
+ * stato fuori dai cicli non dipende da come ci si è arrivati; dentro un ciclo dipende solo dalle visite già fatte
+ * ai tempi dello stesso ciclo, perché una volta usciti da una componente fortemente connessa non vi si rientra.
+ * La memoizzazione usa quindi come chiave lo stato insieme alle visite della sua componente.
+ * </p>
+ * <p>
+ * Le componenti sono elaborate per livelli, dalla fine della simulazione verso lo stato iniziale: le componenti
+ * di uno stesso livello dipendono solo da livelli già calcolati e vengono suddivise tra i thread del
+ * {@link ForkJoinPool} comune. Le distribuzioni non più necessarie vengono rilasciate a ogni livello.
+ * </p>
+ * <p>
+ * Conteggi, durata minima e durata massima sono esatti. La distribuzione conserva fino a {@link #MAX_BUCKETS} durate
+ * distinte per stato; oltre, le durate adiacenti vengono raggruppate nella loro media pesata sui percorsi.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimelineExplorer {
+
+    /**
+     * Numero massimo predefinito di visite di uno stesso tempo in un percorso.
+     * <p>Proprietà di sistema <code>simsuite.timeline.paths.max-visits</code>.</p>
+     */
+    public static final int MAX_VISITS = Integer.getInteger("simsuite.timeline.paths.max-visits", 2);
+
+    /**
+     * Numero massimo di nodi esplorati dentro i cicli, oltre il quale i percorsi restanti sono contati come interrotti.
+     * <p>Proprietà di sistema <code>simsuite.timeline.paths.max-nodes</code>.</p>
+     */
+    private static final long MAX_NODES = Long.getLong("simsuite.timeline.paths.max-nodes", 2_000_000L);
+
+    /**
+     * Lunghezza massima di un percorso dentro un ciclo, che limita la ricorsione sullo stack del thread.
+     */
+    private static final int MAX_DEPTH = 1024;
+
+    /**
+     * Numero massimo di durate distinte conservate per stato: oltre, le durate vicine vengono raggruppate a coppie.
+     * Senza limite una catena di migliaia di tempi accumulerebbe centinaia di migliaia di durate per stato.
+     */
+    private static final int MAX_BUCKETS = 1024;
+
+    /**
+     * Array vuoto condiviso dalle distribuzioni senza percorsi completi.
+     */
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * Costruttore privato: la classe espone solo metodi statici.
+     */
+    private TimelineExplorer() {
+    }
+
+    /**
+     * Esplora i percorsi con il limite di visite predefinito {@link #MAX_VISITS}.
+     *
+     * @param timeline        Il grafo dei tempi.
+     * @param generaleSeconds Il timer generale dello scenario in secondi; <code>0</code> se non è impostato.
+     * @return I percorsi dello scenario.
+     */
+    public static TimelinePaths explore(CompiledTimeline timeline, long generaleSeconds) {
+        return explore(timeline, generaleSeconds, MAX_VISITS);
+    }
+
+    /**
+     * Esplora i percorsi di uno scenario.
+     *
+     * @param timeline        Il grafo dei tempi.
+     * @param generaleSeconds Il timer generale dello scenario in secondi; <code>0</code> se non è impostato.
+     * @param maxVisits       Il numero massimo di visite di uno stesso tempo in un percorso, da <code>1</code> a <code>127</code>.
+     * @return I percorsi dello scenario.
+     */
+    public static TimelinePaths explore(CompiledTimeline timeline, long generaleSeconds, int maxVisits) {
+        Exploration exploration = new Exploration(timeline, Math.clamp(maxVisits, 1, Byte.MAX_VALUE));
+        Distribution result = timeline.startState() >= 0
+                ? ForkJoinPool.commonPool().invoke(exploration.new LevelsTask())
+                : Distribution.NONE;
+        return exploration.report(result, Math.max(0L, generaleSeconds));
+    }
+
+    /**
+     * Lo stato di un'esplorazione: componenti raggiungibili, livelli e distribuzioni calcolate.
+     */
+    private static final class Exploration {
+
+        /**
+         * Il grafo dei tempi.
+         */
+        private final CompiledTimeline timeline;
+
+        /**
+         * I tempi del grafo.
+         */
+        private final TimelineFrame frame;
+
+        /**
+         * Il numero massimo di visite di uno stesso tempo in un percorso.
+         */
+        private final int maxVisits;
+
+        /**
+         * Gli stati raggiungibili, raggruppati per componente.
+         */
+        private final int[] members;
+
+        /**
+         * Inizio in {@link #members} degli stati di ciascuna componente; l'ultimo elemento chiude l'ultima.
+         */
+        private final int[] memberStart;
+
+        /**
+         * Posizione di ciascuno stato tra quelli della sua componente.
+         */
+        private final int[] local;
+
+        /**
+         * Stati in cui si entra da un'altra componente, o da cui parte la simulazione.
+         */
+        private final BitSet entries;
+
+        /**
+         * Le componenti raggiungibili, raggruppate per livello.
+         */
+        private final int[] levelComponents;
+
+        /**
+         * Inizio in {@link #levelComponents} di ciascun livello; l'ultimo elemento chiude l'ultimo.
+         */
+        private final int[] levelStart;
+
+        /**
+         * Gli stati la cui distribuzione non serve più, raggruppati per livello.
+         */
+        private final int[] releases;
+
+        /**
+         * Inizio in {@link #releases} di ciascun livello.
+         */
+        private final int[] releaseStart;
+
+        /**
+         * La distribuzione dei percorsi da ciascuno stato di ingresso, finché serve.
+         */
+        private final Distribution[] dist;
+
+        /**
+         * I nodi esplorati.
+         */
+        private final AtomicLong nodes = new AtomicLong();
+
+        /**
+         * Indica se il limite di nodi è stato superato.
+         */
+        private volatile boolean exhausted;
+
+        /**
+         * Prepara l'esplorazione: componenti raggiungibili, stati di ingresso, livelli e rilasci.
+         *
+         * @param timeline  Il grafo dei tempi.
+         * @param maxVisits Il numero massimo di visite di uno stesso tempo in un percorso.
+         */
+        Exploration(CompiledTimeline timeline, int maxVisits) {
+            this.timeline = timeline;
+            this.frame = timeline.frame();
+            this.maxVisits = maxVisits;
+            final int n = timeline.stateCount();
+            final int components = timeline.componentCount();
+            this.dist = new Distribution[n];
+            this.local = new int[n];
+            this.entries = new BitSet(n);
+
+            // Raggruppa gli stati raggiungibili per componente.
+            memberStart = new int[components + 1];
+            for (int state = 0; state < n; state++) {
+                if (timeline.isReachable(state)) {
+                    memberStart[timeline.componentOf(state) + 1]++;
+                }
+            }
+            for (int c = 0; c < components; c++) {
+                memberStart[c + 1] += memberStart[c];
+            }
+            members = new int[memberStart[components]];
+            int[] cursor = Arrays.copyOf(memberStart, components);
+            for (int state = 0; state < n; state++) {
+                if (timeline.isReachable(state)) {
+                    int c = timeline.componentOf(state);
+                    local[state] = cursor[c] - memberStart[c];
+                    members[cursor[c]++] = state;
+                }
+            }
+
+            // Le componenti sono in ordine topologico inverso: i successori hanno sempre già il loro livello.
+            int[] level = new int[components];
+            int[] lastUse = new int[n];
+            Arrays.fill(lastUse, -1);
+            int levels = 0;
+            for (int c = 0; c < components; c++) {
+                int l = 0;
+                for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                    for (int next : new int[]{timeline.next(members[k], true), timeline.next(members[k], false)}) {
+                        if (next >= 0 && timeline.componentOf(next) != c) {
+                            l = Math.max(l, level[timeline.componentOf(next)] + 1);
+                            entries.set(next);
+                        }
+                    }
+                }
+                level[c] = l;
+                for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                    for (int next : new int[]{timeline.next(members[k], true), timeline.next(members[k], false)}) {
+                        if (next >= 0 && timeline.componentOf(next) != c) {
+                            lastUse[next] = Math.max(lastUse[next], l); // Serve fino al livello del predecessore più alto.
+                        }
+                    }
+                }
+                if (memberStart[c] < memberStart[c + 1]) {
+                    levels = Math.max(levels, l + 1);
+                }
+            }
+            entries.set(timeline.startState());
+
+            levelStart = new int[levels + 1];
+            for (int c = 0; c < components; c++) {
+                if (memberStart[c] < memberStart[c + 1]) {
+                    levelStart[level[c] + 1]++;
+                }
+            }
+            for (int l = 0; l < levels; l++) {
+                levelStart[l + 1] += levelStart[l];
+            }
+            levelComponents = new int[levelStart[levels]];
+            cursor = Arrays.copyOf(levelStart, levels);
+            for (int c = 0; c < components; c++) {
+                if (memberStart[c] < memberStart[c + 1]) {
+                    levelComponents[cursor[level[c]]++] = c;
+                }
+            }
+
+            releaseStart = new int[levels + 1];
+            for (int state = 0; state < n; state++) {
+                if (lastUse[state] >= 0) {
+                    releaseStart[lastUse[state] + 1]++;
+                }
+            }
+            for (int l = 0; l < levels; l++) {
+                releaseStart[l + 1] += releaseStart[l];
+            }
+            releases = new int[releaseStart[levels]];
+            cursor = Arrays.copyOf(releaseStart, levels);
+            for (int state = 0; state < n; state++) {
+                if (lastUse[state] >= 0) {
+                    releases[cursor[lastUse[state]]++] = state;
+                }
+            }
+        }
+
+        /**
+         * Calcola la distribuzione di ogni stato di ingresso di una componente.
+         *
+         * @param c La componente.
+         */
+        void exploreComponent(int c) {
+            int from = memberStart[c];
+            int size = memberStart[c + 1] - from;
+            int first = members[from];
+            if (size == 1 && !timeline.isInCycle(first)) {
+                nodes.incrementAndGet();
+                dist[first] = expand(first, c, null, null, 0);
+                return;
+            }
+            Map<VisitKey, Distribution> memo = new HashMap<>();
+            for (int k = from; k < from + size; k++) {
+                int state = members[k];
+                if (entries.get(state)) {
+                    byte[] visits = new byte[size];
+                    visits[local[state]] = 1;
+                    dist[state] = walk(state, c, visits, memo, 0);
+                }
+            }
+        }
+
+        /**
+         * Calcola la distribuzione da uno stato di un ciclo, date le visite già fatte ai tempi del ciclo.
+         *
+         * @param state  Lo stato.
+         * @param c      La componente dello stato.
+         * @param visits Le visite di ciascuno stato della componente, compresa quella corrente; non viene modificato.
+         * @param memo   Le distribuzioni già calcolate nella componente.
+         * @param depth  La lunghezza del percorso dentro la componente.
+         * @return La distribuzione.
+         */
+        private Distribution walk(int state, int c, byte[] visits, Map<VisitKey, Distribution> memo, int depth) {
+            VisitKey key = new VisitKey(state, visits);
+            Distribution result = memo.get(key);
+            if (result != null) {
+                return result;
+            }
+            if (exhausted || depth >= MAX_DEPTH || nodes.incrementAndGet() > MAX_NODES) {
+                exhausted = true;
+                result = Distribution.TRUNCATED;
+            } else {
+                result = expand(state, c, visits, memo, depth);
+            }
+            memo.put(key, result);
+            return result;
+        }
+
+        /**
+         * Unisce le distribuzioni delle due transizioni di uno stato, aggiungendo il suo timer.
+         *
+         * @param state  Lo stato.
+         * @param c      La componente dello stato.
+         * @param visits Le visite della componente; <code>null</code> se lo stato non è in un ciclo.
+         * @param memo   Le distribuzioni già calcolate nella componente; <code>null</code> se lo stato non è in un ciclo.
+         * @param depth  La lunghezza del percorso dentro la componente.
+         * @return La distribuzione.
+         */
+        private Distribution expand(int state, int c, byte[] visits, Map<VisitKey, Distribution> memo, int depth) {
+            int yes = timeline.next(state, true);
+            int no = timeline.next(state, false);
+            Distribution onYes = step(yes, c, visits, memo, depth);
+            Distribution onNo = no == yes ? null : step(no, c, visits, memo, depth); // Stessa destinazione, stesso percorso.
+            return Distribution.join(timeline.tempoIdOf(state), Math.max(0L, frame.timerAt(state)), onYes, onNo);
+        }
+
+        /**
+         * Restituisce la distribuzione dalla destinazione di una transizione.
+         *
+         * @param next   La destinazione.
+         * @param c      La componente dello stato di partenza.
+         * @param visits Le visite della componente.
+         * @param memo   Le distribuzioni già calcolate nella componente.
+         * @param depth  La lunghezza del percorso dentro la componente.
+         * @return La distribuzione.
+         */
+        private Distribution step(int next, int c, byte[] visits, Map<VisitKey, Distribution> memo, int depth) {
+            if (next == CompiledTimeline.END) {
+                return Distribution.END;
+            }
+            if (next == CompiledTimeline.DANGLING) {
+                return Distribution.BLOCKED;
+            }
+            if (timeline.componentOf(next) != c) {
+                return dist[next]; // Componente di un livello già calcolato.
+            }
+            int i = local[next];
+            if (visits[i] >= maxVisits) {
+                return Distribution.TRUNCATED;
+            }
+            byte[] nextVisits = visits.clone();
+            nextVisits[i]++;
+            return walk(next, c, nextVisits, memo, depth + 1);
+        }
+
+        /**
+         * Costruisce il riepilogo dalla distribuzione dello stato iniziale.
+         *
+         * @param result          La distribuzione dello stato iniziale.
+         * @param generaleSeconds Il timer generale in secondi.
+         * @return I percorsi dello scenario.
+         */
+        TimelinePaths report(Distribution result, long generaleSeconds) {
+            List<Integer> unreachable = new ArrayList<>();
+            List<Integer> terminal = new ArrayList<>();
+            List<Integer> deadEnds = new ArrayList<>();
+            List<Integer> untimed = new ArrayList<>();
+            for (int state = 0; state < timeline.stateCount(); state++) {
+                int tempoId = timeline.tempoIdOf(state);
+                if (!timeline.isReachable(state)) {
+                    unreachable.add(tempoId);
+                } else {
+                    if (timeline.isTerminal(state)) {
+                        terminal.add(tempoId);
+                    }
+                    if (frame.timerAt(state) <= 0) {
+                        untimed.add(tempoId);
+                    }
+                }
+                if (timeline.isDeadEnd(state)) {
+                    deadEnds.add(tempoId);
+                }
+            }
+
+            List<TimelinePaths.DurationCount> durations = new ArrayList<>(result.seconds.length);
+            long completed = 0;
+            long overGenerale = 0;
+            for (int i = 0; i < result.seconds.length; i++) {
+                durations.add(new TimelinePaths.DurationCount(result.seconds[i], result.paths[i]));
+                completed = Distribution.add(completed, result.paths[i]);
+                if (generaleSeconds > 0 && result.seconds[i] > generaleSeconds) { // Con durate raggruppate, per gruppo.
+                    overGenerale = Distribution.add(overGenerale, result.paths[i]);
+                }
+            }
+            List<Integer> longestPath = new ArrayList<>();
+            if (result.seconds.length > 0) {
+                for (PathNode node = result.longest; node != null; node = node.next) {
+                    longestPath.add(node.tempoId);
+                }
+            }
+            return new TimelinePaths(frame.scenarioId(), timeline.version(), maxVisits, completed, result.truncated,
+                    result.blocked, result.saturated || completed == Long.MAX_VALUE, exhausted, result.min, result.max,
+                    List.copyOf(durations), List.copyOf(longestPath), generaleSeconds, overGenerale, List.copyOf(unreachable), List.copyOf(terminal),
+                    List.copyOf(deadEnds), List.copyOf(untimed), nodes.get());
+        }
+
+        /**
+         * Elabora i livelli in ordine, dalla fine della simulazione allo stato iniziale.
+         */
+        final class LevelsTask extends RecursiveTask<Distribution> {
+
+            /**
+             * Elabora tutti i livelli.
+             *
+             * @return La distribuzione dello stato iniziale.
+             */
+            @Override
+            protected Distribution compute() {
+                for (int l = 0; l + 1 < levelStart.length; l++) {
+                    if (levelStart[l + 1] - levelStart[l] == 1) {
+                        exploreComponent(levelComponents[levelStart[l]]); // Una catena: niente da dividere.
+                    } else {
+                        new ComponentsTask(levelStart[l], levelStart[l + 1]).invoke();
+                    }
+                    for (int k = releaseStart[l]; k < releaseStart[l + 1]; k++) {
+                        if (releases[k] != timeline.startState()) {
+                            dist[releases[k]] = null;
+                        }
+                    }
+                }
+                return dist[timeline.startState()];
+            }
+        }
+
+        /**
+         * Elabora un intervallo di componenti dello stesso livello, dividendolo tra i thread.
+         */
+        final class ComponentsTask extends RecursiveAction {
+
+            /**
+             * Inizio dell'intervallo in {@link #levelComponents}.
+             */
+            private final int from;
+
+            /**
+             * Fine esclusiva dell'intervallo.
+             */
+            private final int to;
+
+            /**
+             * Crea il compito per un intervallo di componenti.
+             *
+             * @param from Inizio dell'intervallo.
+             * @param to   Fine esclusiva dell'intervallo.
+             */
+            ComponentsTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            /**
+             * Elabora la componente o divide l'intervallo a metà.
+             */
+            @Override
+            protected void compute() {
+                if (to - from == 1) {
+                    exploreComponent(levelComponents[from]);
+                    return;
+                }
+                int mid = (from + to) >>> 1;
+                invokeAll(new ComponentsTask(from, mid), new ComponentsTask(mid, to));
+            }
+        }
+    }
+
+    /**
+     * La distribuzione immutabile dei percorsi che partono da uno stato.
+     */
+    private static final class Distribution {
+
+        /**
+         * La fine della simulazione: un percorso completo, vuoto.
+         */
+        static final Distribution END = new Distribution(new long[]{0L}, new long[]{1L}, 0, 0, false, 0L, 0L, null);
+
+        /**
+         * Un percorso interrotto dal limite di visite o di nodi.
+         */
+        static final Distribution TRUNCATED = new Distribution(EMPTY, EMPTY, 1, 0, false, CompiledTimeline.NO_END, CompiledTimeline.NO_END, null);
+
+        /**
+         * Un percorso bloccato da una transizione verso un tempo inesistente.
+         */
+        static final Distribution BLOCKED = new Distribution(EMPTY, EMPTY, 0, 1, false, CompiledTimeline.NO_END, CompiledTimeline.NO_END, null);
+
+        /**
+         * Nessun percorso, per uno scenario senza tempi.
+         */
+        static final Distribution NONE = new Distribution(EMPTY, EMPTY, 0, 0, false, CompiledTimeline.NO_END, CompiledTimeline.NO_END, null);
+
+        /**
+         * Le durate dei percorsi completi in secondi, in ordine crescente e senza ripetizioni; raggruppate oltre {@link #MAX_BUCKETS}.
+         */
+        final long[] seconds;
+
+        /**
+         * Il numero di percorsi completi per ciascuna durata.
+         */
+        final long[] paths;
+
+        /**
+         * I percorsi interrotti.
+         */
+        final long truncated;
+
+        /**
+         * I percorsi bloccati.
+         */
+        final long blocked;
+
+        /**
+         * Indica se un conteggio è saturato.
+         */
+        final boolean saturated;
+
+        /**
+         * La durata esatta del percorso completo più breve; {@link CompiledTimeline#NO_END} se non ce ne sono.
+         */
+        final long min;
+
+        /**
+         * La durata esatta del percorso completo più lungo; {@link CompiledTimeline#NO_END} se non ce ne sono.
+         */
+        final long max;
+
+        /**
+         * Il percorso completo più lungo; <code>null</code> se è vuoto o non esiste.
+         */
+        final PathNode longest;
+
+        /**
+         * Crea una distribuzione.
+         *
+         * @param seconds   Le durate.
+         * @param paths     I percorsi per durata.
+         * @param truncated I percorsi interrotti.
+         * @param blocked   I percorsi bloccati.
+         * @param saturated Se un conteggio è saturato.
+         * @param min       La durata minima.
+         * @param max       La durata massima.
+         * @param longest   Il percorso più lungo.
+         */
+        Distribution(long[] seconds, long[] paths, long truncated, long blocked, boolean saturated, long min, long max,
+                     PathNode longest) {
+            this.seconds = seconds;
+            this.paths = paths;
+            this.truncated = truncated;
+            this.blocked = blocked;
+            this.saturated = saturated;
+            this.min = min;
+            this.max = max;
+            this.longest = longest;
+        }
+
+        /**
+         * Calcola la distribuzione di uno stato da quelle delle sue transizioni.
+         *
+         * @param tempoId L'ID del tempo dello stato.
+         * @param timer   Il timer dello stato in secondi.
+         * @param onYes   La distribuzione dalla transizione "se SI".
+         * @param onNo    La distribuzione dalla transizione "se NO"; <code>null</code> se porta allo stesso tempo.
+         * @return La distribuzione dello stato.
+         */
+        static Distribution join(int tempoId, long timer, Distribution onYes, Distribution onNo) {
+            Distribution b = onNo != null ? onNo : NONE;
+            long[] seconds = new long[onYes.seconds.length + b.seconds.length];
+            long[] paths = new long[seconds.length];
+            boolean saturated = onYes.saturated || b.saturated;
+            int i = 0;
+            int j = 0;
+            int size = 0;
+            while (i < onYes.seconds.length || j < b.seconds.length) {
+                long next;
+                long count;
+                if (j == b.seconds.length || (i < onYes.seconds.length && onYes.seconds[i] < b.seconds[j])) {
+                    next = onYes.seconds[i];
+                    count = onYes.paths[i++];
+                } else if (i == onYes.seconds.length || b.seconds[j] < onYes.seconds[i]) {
+                    next = b.seconds[j];
+                    count = b.paths[j++];
+                } else {
+                    next = onYes.seconds[i];
+                    count = add(onYes.paths[i++], b.paths[j++]);
+                }
+                saturated |= count == Long.MAX_VALUE;
+                seconds[size] = next + timer;
+                paths[size++] = count;
+            }
+            if (size > MAX_BUCKETS) {
+                size = compact(seconds, paths, size);
+            }
+            if (size < seconds.length) {
+                seconds = Arrays.copyOf(seconds, size);
+                paths = Arrays.copyOf(paths, size);
+            }
+
+            // A parità di durata massima prevale la transizione "se SI".
+            Distribution worst = b.max == CompiledTimeline.NO_END || (onYes.max != CompiledTimeline.NO_END && onYes.max >= b.max) ? onYes : b;
+            Distribution best = b.min == CompiledTimeline.NO_END || (onYes.min != CompiledTimeline.NO_END && onYes.min <= b.min) ? onYes : b;
+            long min = size > 0 ? best.min + timer : CompiledTimeline.NO_END;
+            long max = size > 0 ? worst.max + timer : CompiledTimeline.NO_END;
+            PathNode longest = size > 0 ? new PathNode(tempoId, worst.longest) : null;
+            long truncated = add(onYes.truncated, b.truncated);
+            long blocked = add(onYes.blocked, b.blocked);
+            saturated |= truncated == Long.MAX_VALUE || blocked == Long.MAX_VALUE;
+            return new Distribution(seconds, paths, truncated, blocked, saturated, min, max, longest);
+        }
+
+        /**
+         * Dimezza le durate raggruppando quelle adiacenti a coppie nella loro media pesata sul numero di percorsi.
+         *
+         * @param seconds Le durate, riscritte in posizione.
+         * @param paths   I percorsi per durata, riscritti in posizione.
+         * @param size    Il numero di durate.
+         * @return Il nuovo numero di durate.
+         */
+        private static int compact(long[] seconds, long[] paths, int size) {
+            int out = 0;
+            for (int i = 0; i < size; i += 2) {
+                if (i + 1 == size) {
+                    seconds[out] = seconds[i];
+                    paths[out++] = paths[i];
+                    continue;
+                }
+                double weight = (double) paths[i] + paths[i + 1];
+                seconds[out] = seconds[i] + Math.round((seconds[i + 1] - seconds[i]) * (paths[i + 1] / weight));
+                paths[out++] = add(paths[i], paths[i + 1]);
+            }
+            return out;
+        }
+
+        /**
+         * Somma due conteggi, fermandosi a {@link Long#MAX_VALUE}.
+         *
+         * @param a Il primo conteggio.
+         * @param b Il secondo conteggio.
+         * @return La somma saturata.
+         */
+        static long add(long a, long b) {
+            long sum = a + b;
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        }
+    }
+
+    /**
+     * Un passo del percorso più lungo; i percorsi con lo stesso seguito condividono i nodi.
+     */
+    private static final class PathNode {
+
+        /**
+         * L'ID del tempo.
+         */
+        final int tempoId;
+
+        /**
+         * Il passo successivo; <code>null</code> alla fine della simulazione.
+         */
+        final PathNode next;
+
+        /**
+         * Crea un passo.
+         *
+         * @param tempoId L'ID del tempo.
+         * @param next    Il passo successivo.
+         */
+        PathNode(int tempoId, PathNode next) {
+            this.tempoId = tempoId;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Chiave della memoizzazione dentro un ciclo: uno stato con le visite già fatte ai tempi della sua componente.
+     */
+    private static final class VisitKey {
+
+        /**
+         * Lo stato.
+         */
+        private final int state;
+
+        /**
+         * Le visite di ciascuno stato della componente.
+         */
+        private final byte[] visits;
+
+        /**
+         * L'hash, calcolato una volta.
+         */
+        private final int hash;
+
+        /**
+         * Crea la chiave.
+         *
+         * @param state  Lo stato.
+         * @param visits Le visite, che non devono essere modificate in seguito.
+         */
+        VisitKey(int state, byte[] visits) {
+            this.state = state;
+            this.visits = visits;
+            this.hash = 31 * state + Arrays.hashCode(visits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof VisitKey other && state == other.state && Arrays.equals(visits, other.visits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
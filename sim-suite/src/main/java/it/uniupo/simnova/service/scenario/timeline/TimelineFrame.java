@@ -0,0 +1,846 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
+import it.uniupo.simnova.domain.common.Tempo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rappresentazione colonnare e immutabile della sequenza dei tempi di uno scenario avanzato.
+ * <p>
+ * Invece di un oggetto {@link Tempo} per ogni passo, con parametri vitali in oggetti <code>Integer</code>/<code>Double</code>
+ * e una lista di {@link ParametroAggiuntivo}, il frame memorizza ogni colonna in un array primitivo parallelo,
+ * indicizzato dalla posizione del passo:
+ * </p>
+ * <ul>
+ *     <li>FC, RR ed EtCO2 in <code>short[]</code>, SpO2 e FiO2 in <code>byte[]</code>, T e litri di O2 in <code>double[]</code>;</li>
+ *     <li>la pressione arteriosa in due <code>short[]</code> (sistolica e diastolica), già analizzate;</li>
+ *     <li>una {@link BitSet} per ogni colonna che può essere nulla;</li>
+ *     <li>i parametri aggiuntivi in array contigui, con l'intervallo di ciascun passo in {@link #paramStart(int)}
+ *         e {@link #paramEnd(int)} e i nomi e le unità di misura internati in un'unica tabella.</li>
+ * </ul>
+ * <p>
+ * I passi sono ordinati per ID del tempo. La lettura per indice non alloca oggetti, quindi esportazione ed esecuzione
+ * possono scorrere anche sequenze lunghe senza creare garbage. {@link #of(int, List)} e {@link #toTempi()}
+ * convertono da e verso la lista di {@link Tempo} usata dal resto dell'applicazione.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimelineFrame {
+
+    /**
+     * Valore restituito dalle ricerche per ID o per nome quando l'elemento non esiste.
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * L'ID dello scenario a cui appartengono i tempi.
+     */
+    private final int scenarioId;
+
+    /**
+     * Numero di passi del frame.
+     */
+    private final int size;
+
+    /**
+     * ID dei tempi, in ordine crescente.
+     */
+    private final int[] ids;
+
+    /**
+     * Frequenza cardiaca (bpm).
+     */
+    private final short[] fc;
+
+    /**
+     * Frequenza respiratoria (atti/min).
+     */
+    private final short[] rr;
+
+    /**
+     * Saturazione di ossigeno (%).
+     */
+    private final byte[] spo2;
+
+    /**
+     * Frazione di ossigeno inspirato (%).
+     */
+    private final byte[] fio2;
+
+    /**
+     * CO2 di fine espirazione (mmHg).
+     */
+    private final short[] etco2;
+
+    /**
+     * Temperatura (°C).
+     */
+    private final double[] temperature;
+
+    /**
+     * Litri di ossigeno somministrati (L/min).
+     */
+    private final double[] litriO2;
+
+    /**
+     * Pressione sistolica (mmHg).
+     */
+    private final short[] systolic;
+
+    /**
+     * Pressione diastolica (mmHg).
+     */
+    private final short[] diastolic;
+
+    /**
+     * Passi in cui è presente la frequenza cardiaca.
+     */
+    private final BitSet hasFc;
+
+    /**
+     * Passi in cui è presente la frequenza respiratoria.
+     */
+    private final BitSet hasRr;
+
+    /**
+     * Passi in cui è presente la saturazione.
+     */
+    private final BitSet hasSpo2;
+
+    /**
+     * Passi in cui è presente la FiO2.
+     */
+    private final BitSet hasFio2;
+
+    /**
+     * Passi in cui è presente l'EtCO2.
+     */
+    private final BitSet hasEtco2;
+
+    /**
+     * Passi in cui sono presenti i litri di ossigeno.
+     */
+    private final BitSet hasLitriO2;
+
+    /**
+     * Passi in cui è presente la pressione arteriosa.
+     */
+    private final BitSet hasPa;
+
+    /**
+     * ID del tempo "se SI" di ciascun passo.
+     */
+    private final int[] tsi;
+
+    /**
+     * ID del tempo "se NO" di ciascun passo.
+     */
+    private final int[] tno;
+
+    /**
+     * Durata del timer di ciascun passo, in secondi.
+     */
+    private final long[] timer;
+
+    /**
+     * Azione di ciascun passo.
+     */
+    private final String[] azione;
+
+    /**
+     * Altri dettagli di ciascun passo.
+     */
+    private final String[] altriDettagli;
+
+    /**
+     * Ruolo del genitore di ciascun passo.
+     */
+    private final String[] ruoloGenitore;
+
+    /**
+     * Inizio dei parametri aggiuntivi di ciascun passo; l'elemento <code>size</code> è il numero totale di parametri.
+     */
+    private final int[] paramOffsets;
+
+    /**
+     * ID dei parametri aggiuntivi.
+     */
+    private final int[] paramIds;
+
+    /**
+     * Posizione del nome di ciascun parametro nella tabella {@link #names}.
+     */
+    private final int[] paramNameIds;
+
+    /**
+     * Posizione dell'unità di misura di ciascun parametro nella tabella {@link #names}; {@link #NOT_FOUND} se assente.
+     */
+    private final int[] paramUnitIds;
+
+    /**
+     * Valori dei parametri come memorizzati.
+     */
+    private final String[] paramValues;
+
+    /**
+     * Valori numerici dei parametri; <code>NaN</code> se il valore non è un numero.
+     */
+    private final double[] paramNumericValues;
+
+    /**
+     * Tabella dei nomi e delle unità di misura dei parametri, ciascuno presente una sola volta.
+     */
+    private final String[] names;
+
+    /**
+     * Posizione di ciascun nome nella tabella {@link #names}.
+     */
+    private final Map<String, Integer> nameIndex;
+
+    /**
+     * Costruisce il frame copiando i dati dei tempi indicati, già ordinati per ID.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @param sorted     I tempi ordinati per ID.
+     */
+    private TimelineFrame(int scenarioId, List<Tempo> sorted) {
+        this.scenarioId = scenarioId;
+        this.size = sorted.size();
+        this.ids = new int[size];
+        this.fc = new short[size];
+        this.rr = new short[size];
+        this.spo2 = new byte[size];
+        this.fio2 = new byte[size];
+        this.etco2 = new short[size];
+        this.temperature = new double[size];
+        this.litriO2 = new double[size];
+        this.systolic = new short[size];
+        this.diastolic = new short[size];
+        this.hasFc = new BitSet(size);
+        this.hasRr = new BitSet(size);
+        this.hasSpo2 = new BitSet(size);
+        this.hasFio2 = new BitSet(size);
+        this.hasEtco2 = new BitSet(size);
+        this.hasLitriO2 = new BitSet(size);
+        this.hasPa = new BitSet(size);
+        this.tsi = new int[size];
+        this.tno = new int[size];
+        this.timer = new long[size];
+        this.azione = new String[size];
+        this.altriDettagli = new String[size];
+        this.ruoloGenitore = new String[size];
+        this.paramOffsets = new int[size + 1];
+
+        int paramCount = 0;
+        for (Tempo tempo : sorted) {
+            paramCount += tempo.getParametriAggiuntivi() != null ? tempo.getParametriAggiuntivi().size() : 0;
+        }
+        this.paramIds = new int[paramCount];
+        this.paramNameIds = new int[paramCount];
+        this.paramUnitIds = new int[paramCount];
+        this.paramValues = new String[paramCount];
+        this.paramNumericValues = new double[paramCount];
+
+        List<String> nameTable = new ArrayList<>();
+        Map<String, Integer> index = new HashMap<>();
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            Tempo tempo = sorted.get(i);
+            ids[i] = tempo.getIdTempo();
+            if (tempo.getFC() != null) {
+                fc[i] = toShort(tempo.getFC(), "FC", ids[i]);
+                hasFc.set(i);
+            }
+            if (tempo.getRR() != null) {
+                rr[i] = toShort(tempo.getRR(), "RR", ids[i]);
+                hasRr.set(i);
+            }
+            if (tempo.getSpO2() != null) {
+                spo2[i] = tempo.getSpO2().byteValue(); // Tempo garantisce un valore tra 0 e 100.
+                hasSpo2.set(i);
+            }
+            if (tempo.getFiO2() != null) {
+                fio2[i] = tempo.getFiO2().byteValue();
+                hasFio2.set(i);
+            }
+            if (tempo.getEtCO2() != null) {
+                etco2[i] = toShort(tempo.getEtCO2(), "EtCO2", ids[i]);
+                hasEtco2.set(i);
+            }
+            if (tempo.getLitriO2() != null) {
+                litriO2[i] = tempo.getLitriO2();
+                hasLitriO2.set(i);
+            }
+            int pa = parsePressure(tempo.getPA());
+            if (pa != NOT_FOUND) {
+                systolic[i] = toShort(pa >>> 16, "PA", ids[i]);
+                diastolic[i] = toShort(pa & 0xFFFF, "PA", ids[i]);
+                hasPa.set(i);
+            }
+            temperature[i] = tempo.getT();
+            tsi[i] = tempo.getTSi();
+            tno[i] = tempo.getTNo();
+            timer[i] = tempo.getTimerTempo();
+            azione[i] = tempo.getAzione();
+            altriDettagli[i] = tempo.getAltriDettagli();
+            ruoloGenitore[i] = tempo.getRuoloGenitore();
+
+            paramOffsets[i] = p;
+            if (tempo.getParametriAggiuntivi() != null) {
+                for (ParametroAggiuntivo param : tempo.getParametriAggiuntivi()) {
+                    paramIds[p] = param.getId();
+                    paramNameIds[p] = intern(param.getNome(), nameTable, index);
+                    paramUnitIds[p] = param.getUnitaMisura() != null ? intern(param.getUnitaMisura(), nameTable, index) : NOT_FOUND;
+                    paramValues[p] = param.getValore();
+                    paramNumericValues[p] = parseNumber(param.getValore());
+                    p++;
+                }
+            }
+        }
+        paramOffsets[size] = p;
+        this.names = nameTable.toArray(String[]::new);
+        this.nameIndex = index;
+    }
+
+    /**
+     * Crea il frame di una lista di tempi. La lista non viene modificata e l'ordine dei passi segue l'ID del tempo.
+     *
+     * @param scenarioId L'ID dello scenario a cui appartengono i tempi.
+     * @param tempi      I tempi, con i relativi parametri aggiuntivi.
+     * @return Il frame corrispondente.
+     * @throws IllegalArgumentException se un parametro vitale supera l'intervallo rappresentabile o un ID compare più volte.
+     */
+    public static TimelineFrame of(int scenarioId, List<Tempo> tempi) {
+        List<Tempo> sorted = new ArrayList<>(tempi);
+        sorted.sort(Comparator.comparingInt(Tempo::getIdTempo));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).getIdTempo() == sorted.get(i - 1).getIdTempo()) {
+                throw new IllegalArgumentException("Il tempo T" + sorted.get(i).getIdTempo() + " compare più volte.");
+            }
+        }
+        return new TimelineFrame(scenarioId, sorted);
+    }
+
+    /**
+     * Ricostruisce la lista di {@link Tempo}, con i relativi parametri aggiuntivi, ordinata per ID.
+     *
+     * @return Una nuova lista modificabile di tempi equivalenti a quelli da cui il frame è stato creato.
+     */
+    public List<Tempo> toTempi() {
+        List<Tempo> tempi = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Tempo tempo = new Tempo(ids[i], scenarioId,
+                    hasPa.get(i) ? systolic[i] + "/" + diastolic[i] : null,
+                    hasFc.get(i) ? (int) fc[i] : null,
+                    hasRr.get(i) ? (int) rr[i] : null,
+                    temperature[i],
+                    hasSpo2.get(i) ? (int) spo2[i] : null,
+                    hasFio2.get(i) ? (int) fio2[i] : null,
+                    hasLitriO2.get(i) ? litriO2[i] : null,
+                    hasEtco2.get(i) ? (int) etco2[i] : null,
+                    azione[i], tsi[i], tno[i], altriDettagli[i], timer[i], ruoloGenitore[i]);
+
+            List<ParametroAggiuntivo> parametri = new ArrayList<>(paramEnd(i) - paramStart(i));
+            for (int p = paramStart(i); p < paramEnd(i); p++) {
+                parametri.add(new ParametroAggiuntivo(paramIds[p], ids[i], scenarioId, names[paramNameIds[p]], paramValues[p], paramUnit(p)));
+            }
+            tempo.setParametriAggiuntivi(parametri);
+            tempi.add(tempo);
+        }
+        return tempi;
+    }
+
+    /**
+     * Restituisce l'ID dello scenario a cui appartengono i tempi.
+     *
+     * @return L'ID dello scenario.
+     */
+    public int scenarioId() {
+        return scenarioId;
+    }
+
+    /**
+     * Restituisce il numero di passi.
+     *
+     * @return Il numero di tempi del frame.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Restituisce la posizione del tempo con l'ID indicato.
+     *
+     * @param tempoId L'ID del tempo.
+     * @return La posizione del passo; {@link #NOT_FOUND} se il tempo non esiste.
+     */
+    public int indexOf(int tempoId) {
+        int index = Arrays.binarySearch(ids, tempoId);
+        return index >= 0 ? index : NOT_FOUND;
+    }
+
+    /**
+     * Restituisce l'ID del tempo in una posizione.
+     *
+     * @param i La posizione del passo.
+     * @return L'ID del tempo.
+     */
+    public int idAt(int i) {
+        return ids[i];
+    }
+
+    /**
+     * Indica se il passo ha la frequenza cardiaca.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasFc(int i) {
+        return hasFc.get(i);
+    }
+
+    /**
+     * Restituisce la frequenza cardiaca di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La frequenza cardiaca in bpm; <code>0</code> se assente.
+     */
+    public int fcAt(int i) {
+        return fc[i];
+    }
+
+    /**
+     * Indica se il passo ha la frequenza respiratoria.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasRr(int i) {
+        return hasRr.get(i);
+    }
+
+    /**
+     * Restituisce la frequenza respiratoria di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La frequenza respiratoria in atti/min; <code>0</code> se assente.
+     */
+    public int rrAt(int i) {
+        return rr[i];
+    }
+
+    /**
+     * Indica se il passo ha la saturazione di ossigeno.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasSpo2(int i) {
+        return hasSpo2.get(i);
+    }
+
+    /**
+     * Restituisce la saturazione di ossigeno di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La saturazione in percentuale; <code>0</code> se assente.
+     */
+    public int spo2At(int i) {
+        return spo2[i];
+    }
+
+    /**
+     * Indica se il passo ha la FiO2.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasFio2(int i) {
+        return hasFio2.get(i);
+    }
+
+    /**
+     * Restituisce la FiO2 di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La FiO2 in percentuale; <code>0</code> se assente.
+     */
+    public int fio2At(int i) {
+        return fio2[i];
+    }
+
+    /**
+     * Indica se il passo ha l'EtCO2.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasEtco2(int i) {
+        return hasEtco2.get(i);
+    }
+
+    /**
+     * Restituisce l'EtCO2 di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return L'EtCO2 in mmHg; <code>0</code> se assente.
+     */
+    public int etco2At(int i) {
+        return etco2[i];
+    }
+
+    /**
+     * Restituisce la temperatura di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La temperatura in °C.
+     */
+    public double temperatureAt(int i) {
+        return temperature[i];
+    }
+
+    /**
+     * Indica se il passo ha i litri di ossigeno.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasLitriO2(int i) {
+        return hasLitriO2.get(i);
+    }
+
+    /**
+     * Restituisce i litri di ossigeno di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return I litri di ossigeno in L/min; <code>0</code> se assenti.
+     */
+    public double litriO2At(int i) {
+        return litriO2[i];
+    }
+
+    /**
+     * Indica se il passo ha la pressione arteriosa.
+     *
+     * @param i La posizione del passo.
+     * @return <code>true</code> se il valore è presente.
+     */
+    public boolean hasPa(int i) {
+        return hasPa.get(i);
+    }
+
+    /**
+     * Restituisce la pressione sistolica di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La pressione sistolica in mmHg; <code>0</code> se assente.
+     */
+    public int systolicAt(int i) {
+        return systolic[i];
+    }
+
+    /**
+     * Restituisce la pressione diastolica di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La pressione diastolica in mmHg; <code>0</code> se assente.
+     */
+    public int diastolicAt(int i) {
+        return diastolic[i];
+    }
+
+    /**
+     * Restituisce l'ID del tempo "se SI" di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return L'ID del tempo successivo se l'azione viene eseguita.
+     */
+    public int tsiAt(int i) {
+        return tsi[i];
+    }
+
+    /**
+     * Restituisce l'ID del tempo "se NO" di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return L'ID del tempo successivo se l'azione non viene eseguita.
+     */
+    public int tnoAt(int i) {
+        return tno[i];
+    }
+
+    /**
+     * Restituisce la durata del timer di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La durata in secondi.
+     */
+    public long timerAt(int i) {
+        return timer[i];
+    }
+
+    /**
+     * Restituisce l'azione di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return L'azione; può essere <code>null</code>.
+     */
+    public String azioneAt(int i) {
+        return azione[i];
+    }
+
+    /**
+     * Restituisce gli altri dettagli di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return Gli altri dettagli; può essere <code>null</code>.
+     */
+    public String altriDettagliAt(int i) {
+        return altriDettagli[i];
+    }
+
+    /**
+     * Restituisce il ruolo del genitore di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return Il ruolo del genitore; può essere <code>null</code>.
+     */
+    public String ruoloGenitoreAt(int i) {
+        return ruoloGenitore[i];
+    }
+
+    /**
+     * Restituisce la posizione del primo parametro aggiuntivo di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La posizione del primo parametro, da usare con i metodi <code>param*</code>.
+     */
+    public int paramStart(int i) {
+        return paramOffsets[i];
+    }
+
+    /**
+     * Restituisce la posizione successiva all'ultimo parametro aggiuntivo di un passo.
+     *
+     * @param i La posizione del passo.
+     * @return La fine (esclusa) dei parametri del passo.
+     */
+    public int paramEnd(int i) {
+        return paramOffsets[i + 1];
+    }
+
+    /**
+     * Restituisce il numero totale di parametri aggiuntivi.
+     *
+     * @return Il numero di parametri di tutti i passi.
+     */
+    public int paramCount() {
+        return paramOffsets[size];
+    }
+
+    /**
+     * Restituisce l'ID di un parametro aggiuntivo.
+     *
+     * @param p La posizione del parametro.
+     * @return L'ID del parametro.
+     */
+    public int paramId(int p) {
+        return paramIds[p];
+    }
+
+    /**
+     * Restituisce la posizione del nome di un parametro nella tabella dei nomi internati.
+     * Due parametri con lo stesso nome hanno la stessa posizione, quindi possono essere confrontati senza confrontare stringhe.
+     *
+     * @param p La posizione del parametro.
+     * @return La posizione del nome, da usare con {@link #name(int)}.
+     */
+    public int paramNameId(int p) {
+        return paramNameIds[p];
+    }
+
+    /**
+     * Restituisce il nome di un parametro aggiuntivo.
+     *
+     * @param p La posizione del parametro.
+     * @return Il nome del parametro.
+     */
+    public String paramName(int p) {
+        return names[paramNameIds[p]];
+    }
+
+    /**
+     * Restituisce il valore di un parametro aggiuntivo come memorizzato.
+     *
+     * @param p La posizione del parametro.
+     * @return Il valore testuale.
+     */
+    public String paramValue(int p) {
+        return paramValues[p];
+    }
+
+    /**
+     * Restituisce il valore numerico di un parametro aggiuntivo.
+     *
+     * @param p La posizione del parametro.
+     * @return Il valore; <code>NaN</code> se il valore memorizzato non è un numero.
+     */
+    public double paramNumericValue(int p) {
+        return paramNumericValues[p];
+    }
+
+    /**
+     * Restituisce l'unità di misura di un parametro aggiuntivo.
+     *
+     * @param p La posizione del parametro.
+     * @return L'unità di misura; <code>null</code> se assente.
+     */
+    public String paramUnit(int p) {
+        return paramUnitIds[p] != NOT_FOUND ? names[paramUnitIds[p]] : null;
+    }
+
+    /**
+     * Restituisce la posizione di un nome nella tabella dei nomi internati.
+     *
+     * @param name Il nome del parametro o dell'unità di misura.
+     * @return La posizione del nome; {@link #NOT_FOUND} se nessun parametro lo usa.
+     */
+    public int nameId(String name) {
+        Integer id = nameIndex.get(name);
+        return id != null ? id : NOT_FOUND;
+    }
+
+    /**
+     * Restituisce un nome della tabella dei nomi internati.
+     *
+     * @param nameId La posizione del nome.
+     * @return Il nome.
+     */
+    public String name(int nameId) {
+        return names[nameId];
+    }
+
+    /**
+     * Cerca tra i parametri di un passo quello con il nome indicato.
+     *
+     * @param i      La posizione del passo.
+     * @param nameId La posizione del nome, ottenuta con {@link #nameId(String)}.
+     * @return La posizione del parametro; {@link #NOT_FOUND} se il passo non lo contiene.
+     */
+    public int findParam(int i, int nameId) {
+        for (int p = paramOffsets[i]; p < paramOffsets[i + 1]; p++) {
+            if (paramNameIds[p] == nameId) {
+                return p;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Analizza una pressione arteriosa nel formato "sistolica/diastolica" senza usare espressioni regolari.
+     *
+     * @param pa La pressione arteriosa; spazi attorno ai numeri ammessi.
+     * @return Sistolica nei 16 bit alti e diastolica nei 16 bit bassi; {@link #NOT_FOUND} se il valore è assente o non valido.
+     */
+    static int parsePressure(String pa) {
+        if (pa == null) {
+            return NOT_FOUND;
+        }
+        int slash = pa.indexOf('/');
+        if (slash < 0) {
+            return NOT_FOUND;
+        }
+        int sys = parseDigits(pa, 0, slash);
+        int dia = parseDigits(pa, slash + 1, pa.length());
+        return sys < 0 || dia < 0 || sys > 0xFFFF || dia > 0xFFFF ? NOT_FOUND : sys << 16 | dia;
+    }
+
+    /**
+     * Legge un intero non negativo da una porzione di stringa, ignorando gli spazi iniziali e finali.
+     *
+     * @param s     La stringa.
+     * @param start L'inizio della porzione (incluso).
+     * @param end   La fine della porzione (esclusa).
+     * @return Il valore letto; <code>-1</code> se la porzione non contiene solo cifre o supera <code>0xFFFF</code>.
+     */
+    private static int parseDigits(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value > 0xFFFF) {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Converte un parametro vitale in <code>short</code>, verificando che sia rappresentabile.
+     *
+     * @param value   Il valore.
+     * @param label   Il nome del parametro, per il messaggio di errore.
+     * @param tempoId L'ID del tempo, per il messaggio di errore.
+     * @return Il valore come <code>short</code>.
+     * @throws IllegalArgumentException se il valore supera {@link Short#MAX_VALUE}.
+     */
+    private static short toShort(int value, String label, int tempoId) {
+        if (value < 0 || value > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(label + " fuori intervallo nel tempo T" + tempoId + ": " + value + ".");
+        }
+        return (short) value;
+    }
+
+    /**
+     * Converte il valore testuale di un parametro aggiuntivo in numero.
+     *
+     * @param value Il valore memorizzato.
+     * @return Il numero; <code>NaN</code> se il valore è assente o non numerico.
+     */
+    private static double parseNumber(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim().replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Restituisce la posizione di un nome nella tabella, aggiungendolo se non è ancora presente.
+     *
+     * @param name  Il nome.
+     * @param table La tabella dei nomi in costruzione.
+     * @param index La posizione dei nomi già presenti.
+     * @return La posizione del nome.
+     */
+    private static int intern(String name, List<String> table, Map<String, Integer> index) {
+        return index.computeIfAbsent(name, n -> {
+            table.add(n);
+            return table.size() - 1;
+        });
+    }
+}
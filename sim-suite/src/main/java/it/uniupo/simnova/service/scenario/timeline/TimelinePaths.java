@@ -0,0 +1,116 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import java.util.List;
+
+/**
+ * I percorsi possibili attraverso i tempi di uno scenario avanzato, calcolati da {@link TimelineExplorer}.
+ * <p>
+ * Un percorso parte dallo stato iniziale e a ogni tempo segue la transizione "se SI" o "se NO"; due transizioni
+ * verso lo stesso tempo contano come un solo percorso. La durata di un percorso è la somma dei <code>timer_tempo</code>
+ * attraversati, in secondi; i tempi senza timer contano zero. Nei cicli ogni tempo può essere visitato al più
+ * <code>maxVisits</code> volte per percorso: i percorsi che supererebbero il limite sono contati come interrotti.
+ * </p>
+ *
+ * @param scenarioId        L'ID dello scenario.
+ * @param version           La revisione dei tempi esplorati.
+ * @param maxVisits         Il numero massimo di visite di uno stesso tempo in un percorso.
+ * @param completedPaths    I percorsi che arrivano alla fine della simulazione.
+ * @param truncatedPaths    I percorsi interrotti dal limite di visite.
+ * @param blockedPaths      I percorsi che arrivano a una transizione verso un tempo inesistente.
+ * @param saturated         <code>true</code> se un conteggio ha superato {@link Long#MAX_VALUE} ed è stato fermato lì.
+ * @param exhausted         <code>true</code> se l'esplorazione di un ciclo ha superato il limite di nodi: i conteggi sono parziali.
+ * @param shortestSeconds   La durata del percorso completo più breve; {@link CompiledTimeline#NO_END} se nessun percorso termina.
+ * @param longestSeconds    La durata del percorso completo più lungo; {@link CompiledTimeline#NO_END} se nessun percorso termina.
+ * @param durations         Quanti percorsi completi hanno ciascuna durata, in ordine di durata crescente. Con molte
+ *                          durate distinte quelle vicine sono raggruppate nella loro media, quindi la distribuzione è
+ *                          approssimata; durata minima, massima e conteggi restano esatti.
+ * @param longestPath       Gli ID dei tempi del percorso completo più lungo; vuoto se nessun percorso termina.
+ * @param generaleSeconds   Il timer generale dello scenario in secondi; <code>0</code> se non è impostato.
+ * @param pathsOverGenerale I percorsi completi più lunghi del timer generale, che l'esecuzione interromperebbe;
+ *                          approssimato come la distribuzione.
+ * @param unreachable       Gli ID dei tempi non raggiungibili dallo stato iniziale.
+ * @param terminal          Gli ID dei tempi in cui entrambe le transizioni terminano la simulazione.
+ * @param deadEnds          Gli ID dei tempi con una transizione verso un tempo inesistente.
+ * @param untimed           Gli ID dei tempi raggiungibili senza timer, in cui l'esecuzione attende l'istruttore.
+ * @param exploredNodes     Gli stati esplorati, contando separatamente le visite distinte dei tempi nei cicli.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record TimelinePaths(int scenarioId, long version, int maxVisits, long completedPaths, long truncatedPaths,
+                            long blockedPaths, boolean saturated, boolean exhausted, long shortestSeconds,
+                            long longestSeconds, List<DurationCount> durations,
+                            List<Integer> longestPath, long generaleSeconds, long pathsOverGenerale,
+                            List<Integer> unreachable, List<Integer> terminal, List<Integer> deadEnds,
+                            List<Integer> untimed, long exploredNodes) {
+
+    /**
+     * Il numero di percorsi completi con una stessa durata.
+     *
+     * @param seconds La durata in secondi.
+     * @param paths   Il numero di percorsi.
+     */
+    public record DurationCount(long seconds, long paths) {
+    }
+
+    /**
+     * Restituisce la durata sotto cui si trova una frazione dei percorsi completi.
+     *
+     * @param fraction La frazione, da <code>0</code> a <code>1</code>; ad esempio <code>0.5</code> per la mediana.
+     * @return La durata in secondi; {@link CompiledTimeline#NO_END} se nessun percorso termina.
+     */
+    public long percentileSeconds(double fraction) {
+        if (durations.isEmpty()) {
+            return CompiledTimeline.NO_END;
+        }
+        double target = Math.clamp(fraction, 0.0, 1.0) * completedPaths;
+        double seen = 0;
+        for (DurationCount duration : durations) {
+            seen += duration.paths();
+            if (seen >= target) {
+                return duration.seconds();
+            }
+        }
+        return longestSeconds();
+    }
+
+    /**
+     * Indica se almeno un percorso completo dura più del timer generale.
+     *
+     * @return <code>true</code> se il timer generale è impostato e il percorso più lungo lo supera.
+     */
+    public boolean exceedsGenerale() {
+        return generaleSeconds > 0 && longestSeconds > generaleSeconds;
+    }
+
+    /**
+     * Indica se i conteggi comprendono tutti i percorsi entro il limite di visite.
+     *
+     * @return <code>true</code> se l'esplorazione non è stata fermata e nessun conteggio è saturato.
+     */
+    public boolean isComplete() {
+        return !exhausted && !saturated;
+    }
+
+    /**
+     * Restituisce il percorso più lungo in forma compatta, ad esempio <code>T0 → T1 → T3</code>.
+     *
+     * @return Il percorso; vuoto se nessun percorso termina.
+     */
+    public String longestPathSignature() {
+        StringBuilder sb = new StringBuilder();
+        for (int tempoId : longestPath) {
+            if (!sb.isEmpty()) {
+                sb.append(" → ");
+            }
+            sb.append('T').append(tempoId);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TimelinePaths{scenario=%d, revisione=%d, percorsi=%d, interrotti=%d, bloccati=%d, durata=%ds..%ds, oltre il timer generale=%d, non raggiungibili=%d, nodi=%d%s}",
+                scenarioId, version, completedPaths, truncatedPaths, blockedPaths, shortestSeconds(), longestSeconds(),
+                pathsOverGenerale, unreachable.size(), exploredNodes, isComplete() ? "" : ", parziale");
+    }
+}
@@ -2,24 +2,50 @@ package it.uniupo.simnova.service.scenario.types;
 
 import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
 import it.uniupo.simnova.domain.common.Tempo;
+import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.timeline.CompiledTimeline;
+import it.uniupo.simnova.service.scenario.timeline.TimelineChangeSummary;
+import it.uniupo.simnova.service.scenario.timeline.TimelineCompiler;
+import it.uniupo.simnova.service.scenario.timeline.TimelineExplorer;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+import it.uniupo.simnova.service.scenario.timeline.TimelinePaths;
 import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
+import it.uniupo.simnova.utils.db.IdSequence;
+import it.uniupo.simnova.utils.db.WriteBehindKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 /**
  * Servizio per la gestione degli scenari avanzati.
  * Questo servizio estende le funzionalità di {@link ScenarioService} per gestire logiche
  * e dati specifici degli scenari avanzati, come la gestione dei tempi e dei parametri aggiuntivi.
  *
+ * <p>
+ * Le modifiche puntuali degli editor in linea (azione, dettagli, parametri vitali) sono differite e accorpate;
+ * le letture e le scritture strutturali dello stesso scenario scaricano prima le modifiche in attesa.
+ * </p>
+ *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.11
  */
 @Service
 public class AdvancedScenarioService {
@@ -29,6 +55,12 @@ public class AdvancedScenarioService {
      */
     private static final Logger logger = LoggerFactory.getLogger(AdvancedScenarioService.class);
 
+    /**
+     * Revisione dei tempi di ciascuno scenario, incrementata a ogni modifica.
+     * Permette a chi conserva un {@link CompiledTimeline} di sapere se è ancora attuale.
+     */
+    private static final ConcurrentMap<Integer, AtomicLong> TIMELINE_REVISIONS = new ConcurrentHashMap<>();
+
     /**
      * Il servizio di base per la gestione degli scenari, iniettato per riutilizzare le funzionalità comuni.
      */
@@ -66,11 +98,13 @@ public class AdvancedScenarioService {
             // Se lo scenario base è stato creato con successo, aggiunge un record in AdvancedScenario.
             final String sql = "INSERT INTO AdvancedScenario (id_advanced_scenario) VALUES (?)";
 
-            try (Connection conn = DBConnect.getInstance().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setInt(1, scenarioId);
-                stmt.executeUpdate();
+            try {
+                DBConnect.getInstance().write(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setInt(1, scenarioId);
+                        return stmt.executeUpdate();
+                    }
+                });
                 logger.info("Record 'AdvancedScenario' creato con successo per lo scenario ID: {}.", scenarioId);
 
             } catch (SQLException e) {
@@ -93,12 +127,136 @@ public class AdvancedScenarioService {
      * Restituisce una lista vuota in caso di errore o se non sono presenti tempi.
      */
     public List<Tempo> getTempiByScenarioId(int scenarioId) {
+        DBConnect.getInstance().flushWriteBehind(scenarioId).join(); // La lettura deve vedere le modifiche differite.
+        try {
+            return ScenarioCache.getInstance().get(ScenarioCache.Region.TEMPI, scenarioId, () -> loadTempi(scenarioId),
+                    ScenarioCache.listCopier(Tempo::new));
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante il recupero dei tempi per lo scenario avanzato con ID {}: {}", scenarioId, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Restituisce i tempi di uno scenario avanzato nella rappresentazione colonnare {@link TimelineFrame},
+     * adatta a scorrere sequenze lunghe senza allocare un oggetto per passo.
+     *
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @return Il frame dei tempi; vuoto se lo scenario non ha tempi, in caso di errore o se i tempi non sono
+     * rappresentabili (un parametro vitale fuori intervallo o un ID ripetuto).
+     */
+    public TimelineFrame getTimelineFrame(int scenarioId) {
+        try {
+            return TimelineFrame.of(scenarioId, getTempiByScenarioId(scenarioId));
+        } catch (IllegalArgumentException e) {
+            logger.error("Tempi dello scenario avanzato con ID {} non validi: {}", scenarioId, e.getMessage(), e);
+            return TimelineFrame.of(scenarioId, List.of());
+        }
+    }
+
+    /**
+     * Restituisce il grafo compilato delle transizioni tra i tempi di uno scenario avanzato.
+     * Il grafo viene compilato alla prima richiesta e tenuto in cache finché i tempi non vengono modificati,
+     * così validazione ed esecuzione non devono ripercorrere la lista dei tempi.
+     *
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @return Il grafo delle transizioni; vuoto se lo scenario non ha tempi, in caso di errore o se i tempi
+     * non sono rappresentabili come {@link TimelineFrame}.
+     */
+    public CompiledTimeline getCompiledTimeline(int scenarioId) {
+        DBConnect.getInstance().flushWriteBehind(scenarioId).join();
+        try {
+            return ScenarioCache.getInstance().get(ScenarioCache.Region.TIMELINE_GRAPH, scenarioId, () -> {
+                long revision = getTimelineRevision(scenarioId); // Letta prima dei tempi: al più risulta già superata.
+                return TimelineCompiler.compile(getTimelineFrame(scenarioId), revision);
+            }, UnaryOperator.identity()); // Il grafo compilato è immutabile.
+        } catch (SQLException e) {
+            logger.error("Errore SQL durante la compilazione dei tempi per lo scenario avanzato con ID {}: {}", scenarioId, e.getMessage(), e);
+            return TimelineCompiler.compile(TimelineFrame.of(scenarioId, List.of()), getTimelineRevision(scenarioId));
+        }
+    }
+
+    /**
+     * Esplora tutti i percorsi attraverso i tempi di uno scenario avanzato: quanti sono, quanto durano secondo i
+     * <code>timer_tempo</code> e quanti superano il timer generale, oltre ai tempi non raggiungibili, terminali,
+     * senza uscita o senza timer. Nei cicli ogni tempo è visitato al più {@link TimelineExplorer#MAX_VISITS} volte.
+     *
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @return I percorsi dello scenario; vuoti se lo scenario non ha tempi o in caso di errore.
+     */
+    public TimelinePaths getTimelinePaths(int scenarioId) {
+        CompiledTimeline timeline = getCompiledTimeline(scenarioId);
+        Scenario scenario = scenarioService.getScenarioById(scenarioId);
+        long generaleSeconds = scenario != null ? Math.round(scenario.getTimerGenerale() * 60.0) : 0L; // Il timer generale è in minuti.
+        long start = System.nanoTime();
+        TimelinePaths paths = TimelineExplorer.explore(timeline, generaleSeconds);
+        logger.debug("Percorsi dello scenario {} esplorati in {} ms: {}", scenarioId, (System.nanoTime() - start) / 1_000_000, paths);
+        if (!paths.isComplete()) {
+            logger.warn("Esplorazione dei percorsi dello scenario {} parziale: {}", scenarioId, paths);
+        }
+        return paths;
+    }
+
+    /**
+     * Restituisce la revisione corrente dei tempi di uno scenario.
+     *
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @return La revisione; cambia a ogni modifica dei tempi o delle transizioni.
+     */
+    public long getTimelineRevision(int scenarioId) {
+        AtomicLong revision = TIMELINE_REVISIONS.get(scenarioId);
+        return revision == null ? 0L : revision.get();
+    }
+
+    /**
+     * Indica se un grafo compilato riflette ancora i tempi correnti dello scenario.
+     *
+     * @param compiled Il grafo da verificare.
+     * @return <code>true</code> se i tempi non sono stati modificati dopo la compilazione.
+     */
+    public boolean isCurrent(CompiledTimeline compiled) {
+        return compiled.version() == getTimelineRevision(compiled.frame().scenarioId());
+    }
+
+    /**
+     * Legge dal database i tempi di uno scenario avanzato con i relativi parametri aggiuntivi, senza passare dalla cache.
+     * <p>
+     * La lettura usa due sole query sulla stessa connessione, qualunque sia il numero di tempi: una per i tempi
+     * e una per tutti i parametri aggiuntivi dello scenario, poi raggruppati per tempo in memoria.
+     * </p>
+     *
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @return I tempi ordinati per <code>id_tempo</code>; una lista vuota se non ce ne sono.
+     * @throws SQLException se la lettura dei tempi o dei parametri aggiuntivi fallisce.
+     */
+    private List<Tempo> loadTempi(int scenarioId) throws SQLException {
+        try (Connection conn = DBConnect.getInstance().getConnection()) {
+            List<Tempo> tempi = readTempiRows(conn, scenarioId);
+            if (!tempi.isEmpty()) {
+                // I parametri di tempi non presenti nella tabella Tempo vengono ignorati.
+                Map<Integer, List<ParametroAggiuntivo>> parametriByTempo = readParametriAggiuntivi(conn, scenarioId);
+                for (Tempo tempo : tempi) {
+                    tempo.setParametriAggiuntivi(parametriByTempo.getOrDefault(tempo.getIdTempo(), new ArrayList<>()));
+                }
+            }
+            logger.info("Recuperati {} tempi per lo scenario avanzato con ID {}.", tempi.size(), scenarioId);
+            return tempi;
+        }
+    }
+
+    /**
+     * Legge le righe della tabella <code>Tempo</code> di uno scenario, con una lista di parametri aggiuntivi vuota.
+     *
+     * @param conn       La {@link Connection} al database.
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @return I tempi ordinati per <code>id_tempo</code>.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private List<Tempo> readTempiRows(Connection conn, int scenarioId) throws SQLException {
         final String sql = "SELECT * FROM Tempo WHERE id_advanced_scenario = ? ORDER BY id_tempo";
         List<Tempo> tempi = new ArrayList<>();
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, scenarioId);
             ResultSet rs = stmt.executeQuery();
 
@@ -122,171 +280,352 @@ public class AdvancedScenarioService {
                         rs.getInt("timer_tempo"), // Assumendo che sia INT nel DB, altrimenti usare getLong.
                         rs.getString("ruoloGenitore")
                 );
-
-                // Recupera i parametri aggiuntivi per il tempo corrente.
-                int tempoId = tempo.getIdTempo();
-                List<ParametroAggiuntivo> parametriAggiuntivi = getParametriAggiuntiviByTempoId(tempoId, scenarioId);
-                tempo.setParametriAggiuntivi(parametriAggiuntivi);
-
+                tempo.setParametriAggiuntivi(new ArrayList<>());
                 tempi.add(tempo);
             }
-            logger.info("Recuperati {} tempi per lo scenario avanzato con ID {}.", tempi.size(), scenarioId);
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante il recupero dei tempi per lo scenario avanzato con ID {}: {}", scenarioId, e.getMessage(), e);
         }
         return tempi;
     }
 
+    /**
+     * Legge tutti i parametri aggiuntivi di uno scenario con una sola query e li raggruppa per tempo.
+     *
+     * @param conn       La {@link Connection} al database.
+     * @param scenarioId L'ID dello scenario.
+     * @return I parametri aggiuntivi indicizzati per <code>tempo_id</code>, ciascun gruppo ordinato per nome.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private Map<Integer, List<ParametroAggiuntivo>> readParametriAggiuntivi(Connection conn, int scenarioId) throws SQLException {
+        final String sql = "SELECT * FROM ParametriAggiuntivi WHERE scenario_id = ? ORDER BY tempo_id, nome";
+        Map<Integer, List<ParametroAggiuntivo>> parametriByTempo = new HashMap<>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, scenarioId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                int tempoId = rs.getInt("tempo_id");
+                parametriByTempo.computeIfAbsent(tempoId, id -> new ArrayList<>()).add(mapParametroAggiuntivo(rs));
+            }
+        }
+        return parametriByTempo;
+    }
+
     /**
      * Salva una lista di oggetti {@link Tempo} associati a uno scenario avanzato specifico.
-     * L'operazione è transazionale: prima vengono eliminati tutti i tempi e i loro parametri aggiuntivi esistenti
-     * per lo scenario, quindi vengono inseriti i nuovi tempi e i loro parametri.
+     * Equivale a {@link #saveTempiChanges(int, List)}, di cui restituisce solo l'esito.
      *
      * @param scenarioId L'ID dello scenario avanzato in cui salvare i tempi.
      * @param tempi      La {@link List} di oggetti {@link Tempo} da salvare.
      * @return <code>true</code> se tutti i tempi e i loro parametri aggiuntivi sono stati salvati correttamente; <code>false</code> altrimenti.
-     * @throws IllegalArgumentException se un parametro vitale o di transizione non è valido.
      */
     public boolean saveTempi(int scenarioId, List<Tempo> tempi) {
-        Connection conn = null;
+        return saveTempiChanges(scenarioId, tempi).success();
+    }
+
+    /**
+     * Salva la lista completa dei tempi di uno scenario avanzato scrivendo solo le differenze rispetto a quelli memorizzati.
+     * <p>
+     * I tempi vengono confrontati per <code>id_tempo</code> e i parametri aggiuntivi di ciascun tempo per nome:
+     * vengono inserite le righe nuove, aggiornate quelle cambiate ed eliminate quelle non più presenti nella lista.
+     * Le righe invariate non vengono riscritte. L'intero confronto avviene in un'unica transazione.
+     * </p>
+     *
+     * @param scenarioId L'ID dello scenario avanzato in cui salvare i tempi.
+     * @param tempi      La {@link List} di oggetti {@link Tempo} che lo scenario deve contenere dopo il salvataggio.
+     * @return Il {@link TimelineChangeSummary riepilogo} delle righe scritte; {@link TimelineChangeSummary#FAILED} se un
+     * parametro non è valido o la scrittura fallisce, nel qual caso nessuna modifica viene confermata.
+     */
+    public TimelineChangeSummary saveTempiChanges(int scenarioId, List<Tempo> tempi) {
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Disabilita l'autocommit per gestire la transazione.
-
-            // 1. Elimina i tempi e i parametri aggiuntivi esistenti per lo scenario.
-            if (!deleteTempi(conn, scenarioId)) {
-                conn.rollback();
-                logger.warn("Rollback: impossibile eliminare i tempi e/o i parametri aggiuntivi esistenti per lo scenario ID {}.", scenarioId);
-                return false;
+            Set<Integer> ids = new HashSet<>();
+            for (Tempo tempo : tempi) {
+                validateTempo(tempo);
+                if (!ids.add(tempo.getIdTempo())) {
+                    throw new IllegalArgumentException("Il tempo T" + tempo.getIdTempo() + " compare più volte.");
+                }
             }
+        } catch (IllegalArgumentException e) {
+            logger.error("Errore di validazione dei dati durante il salvataggio dei tempi per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
+            return TimelineChangeSummary.FAILED;
+        }
 
-            // 2. Inserisce i nuovi tempi.
-            final String sql = "INSERT INTO Tempo (id_tempo, id_advanced_scenario, PA, FC, RR, T, SpO2, FiO2, LitriOssigeno, EtCO2, Azione, TSi_id, TNo_id, altri_dettagli, timer_tempo, RuoloGenitore) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        // La coda è FIFO: le modifiche differite vengono scritte prima del salvataggio, che le sovrascrive.
+        DBConnect.getInstance().flushWriteBehind(scenarioId);
+        try {
+            // Il confronto legge lo stato corrente nello stesso task di scrittura: nessun altro scrittore può modificarlo nel frattempo.
+            TimelineChangeSummary summary = DBConnect.getInstance().write(conn -> writeTimelineChanges(conn, scenarioId, tempi));
+            invalidateTempi(scenarioId);
+            logger.info("Tempi dello scenario ID {} salvati: {}.", scenarioId, summary);
+            return summary;
+        } catch (SQLException e) {
+            logger.error("Errore critico durante il salvataggio dei tempi per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
+            return TimelineChangeSummary.FAILED;
+        }
+    }
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                for (Tempo tempo : tempi) {
-                    // Validazione dei campi prima dell'inserimento.
-                    Integer fc = tempo.getFC();
-                    Integer rr = tempo.getRR();
-                    Integer spo2 = tempo.getSpO2();
-                    Integer fio2 = tempo.getFiO2();
-                    Double litrio2 = tempo.getLitriO2();
-                    Integer etco2 = tempo.getEtCO2();
-                    String pa = tempo.getPA();
-                    int tsi = tempo.getTSi();
-                    int tno = tempo.getTNo();
-
-                    if (fc != null && fc < 0) {
-                        logger.warn("Frequenza cardiaca non valida per tempo ID {}: {}", tempo.getIdTempo(), fc);
-                        throw new IllegalArgumentException("Frequenza cardiaca non valida.");
-                    }
-                    if (rr != null && rr < 0) {
-                        logger.warn("Frequenza respiratoria non valida per tempo ID {}: {}", tempo.getIdTempo(), rr);
-                        throw new IllegalArgumentException("Frequenza respiratoria non valida.");
-                    }
-                    if (spo2 != null && (spo2 < 0 || spo2 > 100)) {
-                        logger.warn("Saturazione di ossigeno non valida per tempo ID {}: {}", tempo.getIdTempo(), spo2);
-                        throw new IllegalArgumentException("Saturazione di ossigeno non valida, deve essere tra 0 e 100.");
-                    }
-                    if (fio2 != null && (fio2 < 0 || fio2 > 100)) {
-                        logger.warn("FiO2 non valido per tempo ID {}: {}", tempo.getIdTempo(), fio2);
-                        throw new IllegalArgumentException("FiO2 non valido, deve essere tra 0 e 100.");
-                    }
-                    if (litrio2 != null && litrio2 < 0) {
-                        logger.warn("LitriO2 non valido per tempo ID {}: {}", tempo.getIdTempo(), litrio2);
-                        throw new IllegalArgumentException("LitriO2 non valido.");
-                    }
-                    if (etco2 != null && etco2 < 0) {
-                        logger.warn("EtCO2 non valido per tempo ID {}: {}", tempo.getIdTempo(), etco2);
-                        throw new IllegalArgumentException("EtCO2 non valido.");
-                    }
-                    // La regex verifica il formato "sistolica/diastolica".
-                    if (pa != null && !pa.isEmpty() && !pa.matches("^\\s*\\d+\\s*/\\s*\\d+\\s*$")) {
-                        logger.warn("Formato della pressione arteriosa non valido per tempo ID {}: '{}'.", tempo.getIdTempo(), pa);
-                        throw new IllegalArgumentException("Formato PA non valido, atteso 'sistolica/diastolica' (es. '120/80').");
-                    }
-                    if (tsi < 0 || tno < 0) { // Gli ID delle transizioni non possono essere negativi.
-                        logger.warn("ID TSi o TNo non valido per tempo ID {}: TSi={}, TNo={}.", tempo.getIdTempo(), tsi, tno);
-                        throw new IllegalArgumentException("ID TSi o TNo non valido. Devono essere valori non negativi.");
-                    }
+    /**
+     * Confronta i tempi da salvare con quelli memorizzati ed esegue le sole istruzioni necessarie.
+     * Questo metodo è destinato a essere chiamato all'interno di un task di scrittura.
+     *
+     * @param conn       La {@link Connection} dello scrittore.
+     * @param scenarioId L'ID dello scenario avanzato.
+     * @param tempi      I tempi, già validati, che lo scenario deve contenere.
+     * @return Il riepilogo delle righe inserite, aggiornate ed eliminate.
+     * @throws SQLException se una delle istruzioni fallisce.
+     */
+    private TimelineChangeSummary writeTimelineChanges(Connection conn, int scenarioId, List<Tempo> tempi) throws SQLException {
+        final String insertTempoSql = "INSERT INTO Tempo (id_tempo, id_advanced_scenario, PA, FC, RR, T, SpO2, FiO2, LitriOssigeno, EtCO2, Azione, TSi_id, TNo_id, altri_dettagli, timer_tempo, RuoloGenitore) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        final String updateTempoSql = "UPDATE Tempo SET PA = ?, FC = ?, RR = ?, T = ?, SpO2 = ?, FiO2 = ?, LitriOssigeno = ?, EtCO2 = ?, Azione = ?, " +
+                "TSi_id = ?, TNo_id = ?, altri_dettagli = ?, timer_tempo = ?, RuoloGenitore = ? WHERE id_tempo = ? AND id_advanced_scenario = ?";
+        final String deleteTempoSql = "DELETE FROM Tempo WHERE id_tempo = ? AND id_advanced_scenario = ?";
+        final String insertParamSql = "INSERT INTO ParametriAggiuntivi (parametri_aggiuntivi_id, tempo_id, scenario_id, nome, valore, unità_misura) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+        final String updateParamSql = "UPDATE ParametriAggiuntivi SET valore = ?, unità_misura = ? WHERE parametri_aggiuntivi_id = ? AND tempo_id = ? AND scenario_id = ?";
+        final String deleteParamSql = "DELETE FROM ParametriAggiuntivi WHERE parametri_aggiuntivi_id = ? AND tempo_id = ? AND scenario_id = ?";
 
-                    // Imposta i parametri dello statement.
-                    stmt.setInt(1, tempo.getIdTempo());
-                    stmt.setInt(2, scenarioId);
-                    stmt.setString(3, pa);
-                    stmt.setObject(4, fc); // setObject gestisce i valori nulli correttamente.
-                    stmt.setObject(5, rr);
-                    stmt.setDouble(6, Math.round(tempo.getT() * 10) / 10.0); // Arrotonda a una cifra decimale.
-                    stmt.setObject(7, spo2);
-                    stmt.setObject(8, fio2);
-                    stmt.setObject(9, litrio2);
-                    stmt.setObject(10, etco2);
-                    stmt.setString(11, tempo.getAzione());
-                    stmt.setInt(12, tempo.getTSi());
-                    stmt.setInt(13, tempo.getTNo());
-                    stmt.setString(14, tempo.getAltriDettagli());
-                    stmt.setLong(15, tempo.getTimerTempo());
-                    stmt.setString(16, tempo.getRuoloGenitore());
-
-                    stmt.addBatch(); // Aggiunge l'operazione al batch.
+        Map<Integer, Tempo> storedTempi = new HashMap<>();
+        readTempiRows(conn, scenarioId).forEach(tempo -> storedTempi.put(tempo.getIdTempo(), tempo));
+        Map<Integer, List<ParametroAggiuntivo>> storedParametri = readParametriAggiuntivi(conn, scenarioId);
+
+        int tempiInserted = 0, tempiUpdated = 0, tempiDeleted = 0, tempiUnchanged = 0;
+        int parametriInserted = 0, parametriUpdated = 0, parametriDeleted = 0;
+
+        try (PreparedStatement insertTempo = conn.prepareStatement(insertTempoSql);
+             PreparedStatement updateTempo = conn.prepareStatement(updateTempoSql);
+             PreparedStatement deleteTempo = conn.prepareStatement(deleteTempoSql);
+             PreparedStatement insertParam = conn.prepareStatement(insertParamSql);
+             PreparedStatement updateParam = conn.prepareStatement(updateParamSql);
+             PreparedStatement deleteParam = conn.prepareStatement(deleteParamSql)) {
+
+            for (Tempo tempo : tempi) {
+                int tempoId = tempo.getIdTempo();
+
+                // 1. La riga del tempo: inserita se nuova, aggiornata solo se un campo è cambiato.
+                Tempo stored = storedTempi.remove(tempoId);
+                if (stored == null) {
+                    insertTempo.setInt(1, tempoId);
+                    insertTempo.setInt(2, scenarioId);
+                    bindTempoColumns(insertTempo, 3, tempo);
+                    insertTempo.executeUpdate();
+                    tempiInserted++;
+                } else if (!sameTempoRow(stored, tempo)) {
+                    bindTempoColumns(updateTempo, 1, tempo);
+                    updateTempo.setInt(15, tempoId);
+                    updateTempo.setInt(16, scenarioId);
+                    updateTempo.executeUpdate();
+                    tempiUpdated++;
+                } else {
+                    tempiUnchanged++;
                 }
 
-                int[] results = stmt.executeBatch(); // Esegue tutte le operazioni in batch.
-                // Verifica che tutte le righe siano state inserite correttamente.
-                for (int result : results) {
-                    if (result <= 0 && result != Statement.SUCCESS_NO_INFO) { // Statement.SUCCESS_NO_INFO indica successo ma senza info sul numero di righe.
-                        conn.rollback();
-                        logger.warn("Rollback: impossibile inserire uno o più tempi per lo scenario ID {}. Alcuni tempi potrebbero non essere stati salvati.", scenarioId);
-                        return false;
+                // 2. I parametri aggiuntivi del tempo, abbinati per nome a quelli memorizzati.
+                Map<String, Deque<ParametroAggiuntivo>> storedByName = new HashMap<>();
+                for (ParametroAggiuntivo param : storedParametri.getOrDefault(tempoId, List.of())) {
+                    storedByName.computeIfAbsent(param.getNome(), nome -> new ArrayDeque<>()).add(param);
+                }
+                storedParametri.remove(tempoId);
+
+                List<ParametroAggiuntivo> parametri = tempo.getParametriAggiuntivi() != null ? tempo.getParametriAggiuntivi() : List.of();
+                for (ParametroAggiuntivo param : parametri) {
+                    Deque<ParametroAggiuntivo> candidates = storedByName.get(param.getNome());
+                    ParametroAggiuntivo match = candidates != null ? candidates.poll() : null;
+                    double valore = Double.parseDouble(param.getValore().trim()); // Già verificato da validateTempo.
+
+                    if (match == null) {
+                        insertParam.setInt(1, DBConnect.getInstance().nextId(conn, IdSequence.PARAMETRI_AGGIUNTIVI));
+                        insertParam.setInt(2, tempoId);
+                        insertParam.setInt(3, scenarioId);
+                        insertParam.setString(4, param.getNome());
+                        insertParam.setDouble(5, valore);
+                        insertParam.setString(6, param.getUnitaMisura());
+                        insertParam.executeUpdate();
+                        parametriInserted++;
+                    } else if (!sameValore(match.getValore(), valore) || !Objects.equals(match.getUnitaMisura(), param.getUnitaMisura())) {
+                        updateParam.setDouble(1, valore);
+                        updateParam.setString(2, param.getUnitaMisura());
+                        updateParam.setInt(3, match.getId());
+                        updateParam.setInt(4, tempoId);
+                        updateParam.setInt(5, scenarioId);
+                        updateParam.executeUpdate();
+                        parametriUpdated++;
                     }
                 }
-                logger.info("Tempi salvati con successo per lo scenario ID {}. Totale tempi salvati: {}.", scenarioId, results.length);
-            }
 
-            // 3. Salva i parametri aggiuntivi per i tempi appena inseriti.
-            if (!saveParametriAggiuntivi(conn, scenarioId, tempi)) {
-                conn.rollback();
-                logger.warn("Rollback: impossibile salvare i parametri aggiuntivi per lo scenario ID {}. I tempi potrebbero non essere stati salvati correttamente.", scenarioId);
-                return false;
+                // 3. I parametri memorizzati che non compaiono più nel tempo.
+                for (Deque<ParametroAggiuntivo> remaining : storedByName.values()) {
+                    for (ParametroAggiuntivo param : remaining) {
+                        parametriDeleted += deleteParametro(deleteParam, param.getId(), tempoId, scenarioId);
+                    }
+                }
             }
 
-            conn.commit(); // Conferma la transazione se tutte le operazioni sono riuscite.
-            logger.info("Tutti i dati dei tempi e dei parametri aggiuntivi per lo scenario ID {} sono stati salvati con successo.", scenarioId);
-            return true;
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Esegue il rollback in caso di errore SQL.
-                    logger.error("Errore SQL durante il salvataggio dei tempi per lo scenario ID {}: {}", scenarioId, e.getMessage());
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback della transazione per lo scenario ID {}: {}", scenarioId, ex.getMessage(), ex);
+            // 4. I tempi non più presenti nella lista, con i loro parametri, e i parametri di tempi inesistenti.
+            for (Map.Entry<Integer, List<ParametroAggiuntivo>> entry : storedParametri.entrySet()) {
+                for (ParametroAggiuntivo param : entry.getValue()) {
+                    parametriDeleted += deleteParametro(deleteParam, param.getId(), entry.getKey(), scenarioId);
                 }
             }
-            logger.error("Errore critico durante il salvataggio dei tempi per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
-            return false;
-        } catch (IllegalArgumentException e) {
-            logger.error("Errore di validazione dei dati durante il salvataggio dei tempi per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback dopo IllegalArgumentException per lo scenario ID {}: {}", scenarioId, ex.getMessage(), ex);
-                }
+            for (int tempoId : storedTempi.keySet()) {
+                deleteTempo.setInt(1, tempoId);
+                deleteTempo.setInt(2, scenarioId);
+                tempiDeleted += deleteTempo.executeUpdate();
             }
-            return false;
-        } finally {
-            if (conn != null) {
+        }
+
+        return new TimelineChangeSummary(true, tempiInserted, tempiUpdated, tempiDeleted, tempiUnchanged,
+                parametriInserted, parametriUpdated, parametriDeleted);
+    }
+
+    /**
+     * Elimina un parametro aggiuntivo identificato dalla sua chiave primaria.
+     *
+     * @param deleteParam Lo statement di eliminazione già preparato.
+     * @param paramId     L'ID del parametro.
+     * @param tempoId     L'ID del tempo a cui appartiene.
+     * @param scenarioId  L'ID dello scenario.
+     * @return Il numero di righe eliminate.
+     * @throws SQLException se l'eliminazione fallisce.
+     */
+    private static int deleteParametro(PreparedStatement deleteParam, int paramId, int tempoId, int scenarioId) throws SQLException {
+        deleteParam.setInt(1, paramId);
+        deleteParam.setInt(2, tempoId);
+        deleteParam.setInt(3, scenarioId);
+        return deleteParam.executeUpdate();
+    }
+
+    /**
+     * Verifica che i parametri vitali, le transizioni e i parametri aggiuntivi di un tempo siano validi.
+     *
+     * @param tempo Il tempo da verificare.
+     * @throws IllegalArgumentException se un valore non è valido.
+     */
+    private static void validateTempo(Tempo tempo) {
+        Integer fc = tempo.getFC();
+        Integer rr = tempo.getRR();
+        Integer spo2 = tempo.getSpO2();
+        Integer fio2 = tempo.getFiO2();
+        Double litrio2 = tempo.getLitriO2();
+        Integer etco2 = tempo.getEtCO2();
+        String pa = tempo.getPA();
+        int tsi = tempo.getTSi();
+        int tno = tempo.getTNo();
+
+        if (fc != null && fc < 0) {
+            logger.warn("Frequenza cardiaca non valida per tempo ID {}: {}", tempo.getIdTempo(), fc);
+            throw new IllegalArgumentException("Frequenza cardiaca non valida.");
+        }
+        if (rr != null && rr < 0) {
+            logger.warn("Frequenza respiratoria non valida per tempo ID {}: {}", tempo.getIdTempo(), rr);
+            throw new IllegalArgumentException("Frequenza respiratoria non valida.");
+        }
+        if (spo2 != null && (spo2 < 0 || spo2 > 100)) {
+            logger.warn("Saturazione di ossigeno non valida per tempo ID {}: {}", tempo.getIdTempo(), spo2);
+            throw new IllegalArgumentException("Saturazione di ossigeno non valida, deve essere tra 0 e 100.");
+        }
+        if (fio2 != null && (fio2 < 0 || fio2 > 100)) {
+            logger.warn("FiO2 non valido per tempo ID {}: {}", tempo.getIdTempo(), fio2);
+            throw new IllegalArgumentException("FiO2 non valido, deve essere tra 0 e 100.");
+        }
+        if (litrio2 != null && litrio2 < 0) {
+            logger.warn("LitriO2 non valido per tempo ID {}: {}", tempo.getIdTempo(), litrio2);
+            throw new IllegalArgumentException("LitriO2 non valido.");
+        }
+        if (etco2 != null && etco2 < 0) {
+            logger.warn("EtCO2 non valido per tempo ID {}: {}", tempo.getIdTempo(), etco2);
+            throw new IllegalArgumentException("EtCO2 non valido.");
+        }
+        // La regex verifica il formato "sistolica/diastolica".
+        if (pa != null && !pa.isEmpty() && !pa.matches("^\\s*\\d+\\s*/\\s*\\d+\\s*$")) {
+            logger.warn("Formato della pressione arteriosa non valido per tempo ID {}: '{}'.", tempo.getIdTempo(), pa);
+            throw new IllegalArgumentException("Formato PA non valido, atteso 'sistolica/diastolica' (es. '120/80').");
+        }
+        if (tsi < 0 || tno < 0) { // Gli ID delle transizioni non possono essere negativi.
+            logger.warn("ID TSi o TNo non valido per tempo ID {}: TSi={}, TNo={}.", tempo.getIdTempo(), tsi, tno);
+            throw new IllegalArgumentException("ID TSi o TNo non valido. Devono essere valori non negativi.");
+        }
+        if (tempo.getParametriAggiuntivi() != null) {
+            for (ParametroAggiuntivo param : tempo.getParametriAggiuntivi()) {
                 try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit, indipendentemente dal successo.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione o il ripristino dell'autocommit per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
+                    Double.parseDouble(param.getValore().trim());
+                } catch (NumberFormatException | NullPointerException e) {
+                    logger.warn("Valore non numerico per il parametro aggiuntivo '{}' del tempo ID {}: '{}'.", param.getNome(), tempo.getIdTempo(), param.getValore());
+                    throw new IllegalArgumentException("Errore di formato numerico nel valore del parametro aggiuntivo '" + param.getNome() + "'.", e);
                 }
             }
         }
     }
 
+    /**
+     * Imposta i valori delle colonne di un tempo, da <code>PA</code> a <code>RuoloGenitore</code>, a partire dall'indice indicato.
+     *
+     * @param stmt  Lo statement di inserimento o aggiornamento.
+     * @param first L'indice del parametro corrispondente alla colonna <code>PA</code>.
+     * @param tempo Il tempo da scrivere.
+     * @throws SQLException se l'impostazione di un parametro fallisce.
+     */
+    private static void bindTempoColumns(PreparedStatement stmt, int first, Tempo tempo) throws SQLException {
+        stmt.setString(first, tempo.getPA());
+        stmt.setObject(first + 1, tempo.getFC()); // setObject gestisce i valori nulli correttamente.
+        stmt.setObject(first + 2, tempo.getRR());
+        stmt.setDouble(first + 3, Math.round(tempo.getT() * 10) / 10.0); // Arrotonda a una cifra decimale.
+        stmt.setObject(first + 4, tempo.getSpO2());
+        stmt.setObject(first + 5, tempo.getFiO2());
+        stmt.setObject(first + 6, tempo.getLitriO2());
+        stmt.setObject(first + 7, tempo.getEtCO2());
+        stmt.setString(first + 8, tempo.getAzione());
+        stmt.setInt(first + 9, tempo.getTSi());
+        stmt.setInt(first + 10, tempo.getTNo());
+        stmt.setString(first + 11, tempo.getAltriDettagli());
+        stmt.setLong(first + 12, tempo.getTimerTempo());
+        stmt.setString(first + 13, tempo.getRuoloGenitore());
+    }
+
+    /**
+     * Indica se due tempi hanno gli stessi valori in tutte le colonne scritte da {@link #bindTempoColumns(PreparedStatement, int, Tempo)}.
+     * La temperatura è confrontata con la stessa precisione con cui viene salvata.
+     *
+     * @param stored    Il tempo memorizzato.
+     * @param submitted Il tempo da salvare.
+     * @return <code>true</code> se la riga non deve essere aggiornata.
+     */
+    private static boolean sameTempoRow(Tempo stored, Tempo submitted) {
+        return Objects.equals(stored.getPA(), submitted.getPA())
+                && Objects.equals(stored.getFC(), submitted.getFC())
+                && Objects.equals(stored.getRR(), submitted.getRR())
+                && Math.round(stored.getT() * 10) == Math.round(submitted.getT() * 10)
+                && Objects.equals(stored.getSpO2(), submitted.getSpO2())
+                && Objects.equals(stored.getFiO2(), submitted.getFiO2())
+                && Objects.equals(stored.getLitriO2(), submitted.getLitriO2())
+                && Objects.equals(stored.getEtCO2(), submitted.getEtCO2())
+                && Objects.equals(stored.getAzione(), submitted.getAzione())
+                && stored.getTSi() == submitted.getTSi()
+                && stored.getTNo() == submitted.getTNo()
+                && Objects.equals(stored.getAltriDettagli(), submitted.getAltriDettagli())
+                && stored.getTimerTempo() == submitted.getTimerTempo()
+                && Objects.equals(stored.getRuoloGenitore(), submitted.getRuoloGenitore());
+    }
+
+    /**
+     * Confronta il valore memorizzato di un parametro aggiuntivo con quello da salvare.
+     * I valori sono salvati come numeri, quindi <code>"12"</code> e <code>"12.0"</code> coincidono.
+     *
+     * @param stored    Il valore memorizzato.
+     * @param submitted Il valore numerico da salvare.
+     * @return <code>true</code> se il valore non deve essere aggiornato.
+     */
+    private static boolean sameValore(String stored, double submitted) {
+        if (stored == null) {
+            return false;
+        }
+        try {
+            return Double.compare(Double.parseDouble(stored.trim()), submitted) == 0;
+        } catch (NumberFormatException e) {
+            return false; // Un valore non numerico viene sostituito da quello nuovo.
+        }
+    }
+
     /**
      * Recupera una lista di oggetti {@link ParametroAggiuntivo} associati a un tempo specifico
      * e a uno scenario avanzato.
@@ -299,6 +638,7 @@ public class AdvancedScenarioService {
     public List<ParametroAggiuntivo> getParametriAggiuntiviByTempoId(int tempoId, int scenarioId) {
         final String sql = "SELECT * FROM ParametriAggiuntivi WHERE tempo_id = ? AND scenario_id = ?";
         List<ParametroAggiuntivo> parametri = new ArrayList<>();
+        DBConnect.getInstance().flushWriteBehind(scenarioId).join();
 
         try (Connection conn = DBConnect.getInstance().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -308,15 +648,7 @@ public class AdvancedScenarioService {
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
-                ParametroAggiuntivo param = new ParametroAggiuntivo(
-                        rs.getInt("parametri_aggiuntivi_id"),
-                        rs.getInt("tempo_id"),
-                        rs.getInt("scenario_id"),
-                        rs.getString("nome"),
-                        rs.getString("valore"),
-                        rs.getString("unità_misura")
-                );
-                parametri.add(param);
+                parametri.add(mapParametroAggiuntivo(rs));
             }
             logger.debug("Recuperati {} parametri aggiuntivi per il tempo ID {} nello scenario ID {}.", parametri.size(), tempoId, scenarioId);
         } catch (SQLException e) {
@@ -325,71 +657,6 @@ public class AdvancedScenarioService {
         return parametri;
     }
 
-    /**
-     * Salva i {@link ParametroAggiuntivo ParametriAggiuntivi} per tutti i tempi di uno scenario.
-     * Questo metodo è destinato a essere chiamato all'interno di una transazione più ampia.
-     *
-     * @param conn       La {@link Connection} al database (gestita esternamente).
-     * @param scenarioId L'ID dello scenario a cui i parametri aggiuntivi sono associati.
-     * @param tempi      La {@link List} di oggetti {@link Tempo} che contengono i parametri aggiuntivi da salvare.
-     * @return <code>true</code> se i parametri aggiuntivi sono stati salvati correttamente; <code>false</code> altrimenti.
-     * @throws SQLException Se si verifica un errore SQL durante l'interazione con il database.
-     */
-    private boolean saveParametriAggiuntivi(Connection conn, int scenarioId, List<Tempo> tempi) throws SQLException {
-        // Query SQL per l'inserimento dei parametri aggiuntivi.
-        final String sql = "INSERT INTO ParametriAggiuntivi (parametri_aggiuntivi_id, tempo_id, scenario_id, nome, valore, unità_misura) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
-
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            // Recupera l'ID massimo corrente per i parametri aggiuntivi e lo incrementa per i nuovi ID.
-            int paramId = getMaxParamId(conn) + 1;
-            int totalParamsAdded = 0;
-
-            for (Tempo tempo : tempi) {
-                List<ParametroAggiuntivo> parametri = tempo.getParametriAggiuntivi();
-                if (parametri != null && !parametri.isEmpty()) {
-                    for (ParametroAggiuntivo param : parametri) {
-                        stmt.setInt(1, paramId++); // Assegna un nuovo ID unico.
-                        stmt.setInt(2, tempo.getIdTempo());
-                        stmt.setInt(3, scenarioId);
-                        stmt.setString(4, param.getNome());
-                        // Gestisce la conversione del valore a Double.
-                        stmt.setDouble(5, Double.parseDouble(param.getValore()));
-                        stmt.setString(6, param.getUnitaMisura());
-                        stmt.addBatch(); // Aggiunge l'operazione al batch.
-                        totalParamsAdded++;
-                    }
-                }
-            }
-
-            // Esegue il batch solo se ci sono parametri da aggiungere.
-            if (totalParamsAdded > 0) {
-                int[] results = stmt.executeBatch();
-                boolean allSuccess = true;
-                for (int result : results) {
-                    if (result <= 0 && result != Statement.SUCCESS_NO_INFO) {
-                        allSuccess = false;
-                        logger.warn("Errore nel salvataggio di alcuni parametri aggiuntivi per lo scenario ID {}. Una o più righe non sono state inserite correttamente.", scenarioId);
-                    }
-                }
-                if (allSuccess) {
-                    logger.info("Salvati {} parametri aggiuntivi totali per lo scenario ID {}.", totalParamsAdded, scenarioId);
-                }
-                return allSuccess;
-            } else {
-                logger.info("Nessun parametro aggiuntivo da aggiungere per lo scenario ID {}.", scenarioId);
-                return true; // Nessun parametro da salvare, quindi è un successo.
-            }
-
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante l'inserimento dei parametri aggiuntivi per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
-            throw e; // Rilancia l'eccezione per essere gestita dal chiamante (saveTempi).
-        } catch (NumberFormatException e) {
-            logger.error("Errore di formato numerico durante la conversione del valore di un parametro aggiuntivo per lo scenario ID {}: {}", scenarioId, e.getMessage(), e);
-            throw new SQLException("Errore di formato numerico nel valore del parametro aggiuntivo.", e); // Rilancia come SQLException.
-        }
-    }
-
     /**
      * Elimina tutti gli oggetti {@link Tempo} e i loro {@link ParametroAggiuntivo ParametriAggiuntivi}
      * associati a uno scenario avanzato specifico.
@@ -438,49 +705,32 @@ public class AdvancedScenarioService {
         }
     }
 
-    /**
-     * Recupera l'ID massimo attualmente presente nella tabella <code>ParametriAggiuntivi</code>.
-     * Utilizzato per generare nuovi ID univoci per i parametri aggiuntivi durante il salvataggio.
-     *
-     * @param conn La {@link Connection} al database.
-     * @return L'ID massimo dei parametri aggiuntivi; <code>0</code> se la tabella è vuota o in caso di errore.
-     * @throws SQLException Se si verifica un errore SQL durante l'interazione con il database.
-     */
-    private int getMaxParamId(Connection conn) throws SQLException {
-        final String sql = "SELECT MAX(parametri_aggiuntivi_id) FROM ParametriAggiuntivi";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getInt(1); // Il primo (e unico) risultato è il MAX ID.
-            }
-            return 0; // Se non ci sono righe, il MAX ID è 0.
-        }
-    }
-
     /**
      * Aggiorna il campo "Azione" di un tempo specifico in uno scenario avanzato.
      *
      * @param idTempo    L'ID del tempo da aggiornare.
      * @param scenarioId L'ID dello scenario a cui il tempo appartiene.
      * @param newValue   Il nuovo valore della stringa "Azione" da impostare.
+     *                   La scrittura è differita e accorpata alle modifiche successive dello stesso campo.
      */
     public void setAzione(int idTempo, int scenarioId, String newValue) {
         final String sql = "UPDATE Tempo SET Azione = ? WHERE id_tempo = ? AND id_advanced_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, newValue);
-            stmt.setInt(2, idTempo);
-            stmt.setInt(3, scenarioId);
-
-            int rowsUpdated = stmt.executeUpdate();
-            if (rowsUpdated > 0) {
-                logger.info("Campo 'Azione' aggiornato con successo per il tempo ID {} nello scenario ID {}.", idTempo, scenarioId);
-            } else {
-                logger.warn("Nessun campo 'Azione' aggiornato per il tempo ID {} nello scenario ID {}. Il tempo potrebbe non esistere.", idTempo, scenarioId);
+        // Scrittura differita: le modifiche ravvicinate allo stesso tempo producono un solo UPDATE.
+        CompletableFuture<Void> saved = DBConnect.getInstance().writeBehind(new WriteBehindKey(scenarioId, idTempo, "Tempo.Azione"), conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, newValue);
+                stmt.setInt(2, idTempo);
+                stmt.setInt(3, scenarioId);
+                if (stmt.executeUpdate() > 0) {
+                    logger.info("Campo 'Azione' aggiornato con successo per il tempo ID {} nello scenario ID {}.", idTempo, scenarioId);
+                } else {
+                    logger.warn("Nessun campo 'Azione' aggiornato per il tempo ID {} nello scenario ID {}. Il tempo potrebbe non esistere.", idTempo, scenarioId);
+                }
+                return null;
             }
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante l'aggiornamento del campo 'Azione' per il tempo ID {} nello scenario ID {}: {}", idTempo, scenarioId, e.getMessage(), e);
-        }
+        });
+        invalidateTempi(scenarioId);
+        saved.whenComplete((ignored, error) -> invalidateTempi(scenarioId)); // Una lettura concorrente può aver memorizzato i tempi precedenti.
     }
 
     /**
@@ -492,14 +742,16 @@ public class AdvancedScenarioService {
      */
     public void setRuoloGenitore(int idTempo, int scenarioId, String newValue) {
         final String sql = "UPDATE Tempo SET RuoloGenitore = ? WHERE id_tempo = ? AND id_advanced_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, newValue);
-            stmt.setInt(2, idTempo);
-            stmt.setInt(3, scenarioId);
-
-            int rowsUpdated = stmt.executeUpdate();
+        try {
+            int rowsUpdated = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, newValue);
+                    stmt.setInt(2, idTempo);
+                    stmt.setInt(3, scenarioId);
+                    return stmt.executeUpdate();
+                }
+            });
+            invalidateTempi(scenarioId);
             if (rowsUpdated > 0) {
                 logger.info("Campo 'RuoloGenitore' aggiornato con successo per il tempo ID {} nello scenario ID {}.", idTempo, scenarioId);
             } else {
@@ -521,15 +773,18 @@ public class AdvancedScenarioService {
      */
     public void setTransitions(int idTempo, int scenarioId, int newTSi, int newTNo) {
         final String sql = "UPDATE Tempo SET TSi_id = ?, TNo_id = ? WHERE id_tempo = ? AND id_advanced_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, newTSi);
-            stmt.setInt(2, newTNo);
-            stmt.setInt(3, idTempo);
-            stmt.setInt(4, scenarioId);
-
-            int rowsUpdated = stmt.executeUpdate();
+        DBConnect.getInstance().flushWriteBehind(scenarioId);
+        try {
+            int rowsUpdated = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, newTSi);
+                    stmt.setInt(2, newTNo);
+                    stmt.setInt(3, idTempo);
+                    stmt.setInt(4, scenarioId);
+                    return stmt.executeUpdate();
+                }
+            });
+            invalidateTempi(scenarioId);
             if (rowsUpdated > 0) {
                 logger.info("Transizioni (TSi: {}, TNo: {}) aggiornate con successo per il tempo ID {} nello scenario ID {}.", newTSi, newTNo, idTempo, scenarioId);
             } else {
@@ -546,25 +801,26 @@ public class AdvancedScenarioService {
      * @param idTempo    L'ID del tempo da aggiornare.
      * @param scenarioId L'ID dello scenario a cui il tempo appartiene.
      * @param newValue   Il nuovo valore della stringa "altri_dettagli" da impostare.
+     *                   La scrittura è differita e accorpata alle modifiche successive dello stesso campo.
      */
     public void setDettagliAggiuntivi(int idTempo, int scenarioId, String newValue) {
         final String sql = "UPDATE Tempo SET altri_dettagli = ? WHERE id_tempo = ? AND id_advanced_scenario = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, newValue);
-            stmt.setInt(2, idTempo);
-            stmt.setInt(3, scenarioId);
-
-            int rowsUpdated = stmt.executeUpdate();
-            if (rowsUpdated > 0) {
-                logger.info("Dettagli aggiuntivi aggiornati con successo per il tempo ID {} nello scenario ID {}.", idTempo, scenarioId);
-            } else {
-                logger.warn("Nessun dettaglio aggiuntivo aggiornato per il tempo ID {} nello scenario ID {}. Il tempo potrebbe non esistere.", idTempo, scenarioId);
+        // Scrittura differita: le modifiche ravvicinate allo stesso tempo producono un solo UPDATE.
+        CompletableFuture<Void> saved = DBConnect.getInstance().writeBehind(new WriteBehindKey(scenarioId, idTempo, "Tempo.altri_dettagli"), conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, newValue);
+                stmt.setInt(2, idTempo);
+                stmt.setInt(3, scenarioId);
+                if (stmt.executeUpdate() > 0) {
+                    logger.info("Dettagli aggiuntivi aggiornati con successo per il tempo ID {} nello scenario ID {}.", idTempo, scenarioId);
+                } else {
+                    logger.warn("Nessun dettaglio aggiuntivo aggiornato per il tempo ID {} nello scenario ID {}. Il tempo potrebbe non esistere.", idTempo, scenarioId);
+                }
+                return null;
             }
-        } catch (SQLException e) {
-            logger.error("Errore SQL durante l'aggiornamento dei dettagli aggiuntivi per il tempo ID {} nello scenario ID {}: {}", idTempo, scenarioId, e.getMessage(), e);
-        }
+        });
+        invalidateTempi(scenarioId);
+        saved.whenComplete((ignored, error) -> invalidateTempi(scenarioId)); // Una lettura concorrente può aver memorizzato i tempi precedenti.
     }
 
     /**
@@ -577,6 +833,7 @@ public class AdvancedScenarioService {
      * @param tempoId    L'ID del tempo a cui il parametro è associato. Usare <code>null</code> o <code>0</code> per il paziente T0 (tempo 0).
      * @param label      Il nome del parametro (es. "PA", "FC", "Temperatura", o un nome di parametro aggiuntivo).
      * @param newValue   Il nuovo valore del parametro da salvare (come stringa, la conversione sarà gestita internamente).
+     *                   La scrittura è differita: più modifiche ravvicinate dello stesso parametro producono una sola scrittura.
      */
     @SuppressWarnings("SqlSourceToSinkFlow") // Soppresso perché `colonnaReale` è validata da una mappa fissa.
     public void saveVitalSign(Integer scenarioId, Integer tempoId, String label, String newValue) {
@@ -593,12 +850,11 @@ public class AdvancedScenarioService {
         );
 
         String colonnaReale = colonneLecite.get(label);
-        Connection conn = null;
+        int actualTempoId = (tempoId == null) ? 0 : tempoId; // Il tempo 0 coincide con il paziente T0.
+        CompletableFuture<Void> saved;
         if (colonnaReale != null) {
-            try {
-                conn = DBConnect.getInstance().getConnection();
-                conn.setAutoCommit(false); // Inizia la transazione per le operazioni correlate.
-
+            // Le operazioni correlate vengono eseguite nello stesso task, quindi nella stessa transazione.
+            saved = DBConnect.getInstance().writeBehind(new WriteBehindKey(scenarioId, actualTempoId, "Tempo." + colonnaReale), conn -> {
                 if (tempoId == null || tempoId == 0) { // Se è il tempo 0 (Paziente T0).
                     // Aggiorna la tabella PazienteT0.
                     String sqlPaziente = "UPDATE PazienteT0 SET " + colonnaReale + " = ? WHERE id_paziente = ?";
@@ -623,7 +879,6 @@ public class AdvancedScenarioService {
                             }
                         }
                     }
-                    conn.commit(); // Conferma la transazione.
                     logger.info("Parametro vitale '{}' aggiornato con successo per PazienteT0 e Tempo(0) nello scenario ID {}.", label, scenarioId);
                 } else { // Se è un tempo diverso da 0.
                     String sqlTempo = "UPDATE Tempo SET " + colonnaReale + " = ? WHERE id_advanced_scenario = ? AND id_tempo = ?";
@@ -639,39 +894,13 @@ public class AdvancedScenarioService {
                             logger.warn("Nessun parametro vitale '{}' aggiornato per il tempo ID {} nello scenario ID {}. Il tempo potrebbe non esistere.", label, tempoId, scenarioId);
                         }
                     }
-                    conn.commit(); // Conferma la transazione.
-                }
-            } catch (SQLException e) {
-                logger.error("Errore SQL durante l'aggiornamento del parametro vitale '{}' per scenario ID {} e tempo ID {}: {}", label, scenarioId, tempoId, e.getMessage(), e);
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                        logger.warn("Rollback della transazione eseguito per l'aggiornamento del parametro vitale.");
-                    } catch (SQLException ex) {
-                        logger.error("Errore durante il rollback dopo l'errore SQL per l'aggiornamento del parametro vitale: {}", ex.getMessage(), ex);
-                    }
                 }
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.setAutoCommit(true); // Ripristina l'autocommit.
-                    } catch (SQLException e) {
-                        logger.error("Errore nel ripristino dell'autocommit per l'aggiornamento del parametro vitale: {}", e.getMessage(), e);
-                    }
-                    try {
-                        conn.close(); // Chiude la connessione.
-                    } catch (SQLException e) {
-                        logger.error("Errore chiusura connessione nel finally per l'aggiornamento del parametro vitale: {}", e.getMessage(), e);
-                    }
-                }
-            }
+                return null;
+            });
         } else { // Se la label non è un parametro vitale standard, si assume sia un parametro aggiuntivo.
-            // Se tempoId è null o 0, lo imposta a 0 per la tabella ParametriAggiuntivi.
-            Integer actualTempoId = (tempoId == null) ? 0 : tempoId;
-
             logger.info("Parametro '{}' riconosciuto come aggiuntivo. Verrà gestito per il tempo ID {} dello scenario ID {}.", label, actualTempoId, scenarioId);
 
-            try (Connection localConn = DBConnect.getInstance().getConnection()) {
+            saved = DBConnect.getInstance().writeBehind(new WriteBehindKey(scenarioId, actualTempoId, "ParametriAggiuntivi." + label), localConn -> {
                 // Controlla se il parametro aggiuntivo esiste già per questo tempo e scenario.
                 String checkSql = "SELECT parametri_aggiuntivi_id FROM ParametriAggiuntivi WHERE tempo_id = ? AND scenario_id = ? AND nome = ?";
                 try (PreparedStatement checkStmt = localConn.prepareStatement(checkSql)) {
@@ -698,12 +927,12 @@ public class AdvancedScenarioService {
                             }
                         } else {
                             // Se il parametro non esiste, lo inserisce.
-                            int maxId = getMaxParamId(localConn) + 1; // Genera un nuovo ID.
+                            int newId = DBConnect.getInstance().nextId(localConn, IdSequence.PARAMETRI_AGGIUNTIVI);
                             String insertSql = "INSERT INTO ParametriAggiuntivi (parametri_aggiuntivi_id, tempo_id, scenario_id, nome, valore, unità_misura) " +
                                     "VALUES (?, ?, ?, ?, ?, ?)";
 
                             try (PreparedStatement insertStmt = localConn.prepareStatement(insertSql)) {
-                                insertStmt.setInt(1, maxId);
+                                insertStmt.setInt(1, newId);
                                 insertStmt.setInt(2, actualTempoId);
                                 insertStmt.setInt(3, scenarioId);
                                 insertStmt.setString(4, label);
@@ -720,10 +949,17 @@ public class AdvancedScenarioService {
                         }
                     }
                 }
-            } catch (SQLException e) {
-                logger.error("Errore SQL durante la gestione del parametro aggiuntivo '{}' per il tempo ID {} nello scenario ID {}: {}", label, actualTempoId, scenarioId, e.getMessage(), e);
-            }
+                return null;
+            });
         }
+        Runnable invalidation = () -> {
+            invalidateTempi(scenarioId);
+            if (actualTempoId == 0) {
+                ScenarioCache.getInstance().invalidate(ScenarioCache.Region.PAZIENTE_T0, scenarioId);
+            }
+        };
+        invalidation.run();
+        saved.whenComplete((ignored, error) -> invalidation.run()); // Di nuovo dopo il COMMIT, come in setAzione.
     }
 
     /**
@@ -734,47 +970,28 @@ public class AdvancedScenarioService {
      * @param scenarioId L'ID dello scenario avanzato da cui eliminare il tempo.
      */
     public void deleteTempo(int idTempo, int scenarioId) {
-        Connection conn = null;
+        DBConnect.getInstance().flushWriteBehind(scenarioId); // Le modifiche al tempo eliminato vengono scritte prima della cancellazione.
         try {
-            conn = DBConnect.getInstance().getConnection();
-            conn.setAutoCommit(false); // Inizia la transazione.
-
-            // Prima elimina i parametri aggiuntivi associati a questo tempo.
-            deleteAdditionalParamsForTempo(conn, idTempo, scenarioId);
-
-            // Quindi elimina il tempo stesso.
-            final String sql = "DELETE FROM Tempo WHERE id_tempo = ? AND id_advanced_scenario = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, idTempo);
-                stmt.setInt(2, scenarioId);
-
-                int rowsDeleted = stmt.executeUpdate();
-                if (rowsDeleted > 0) {
-                    logger.info("Tempo con ID {} eliminato con successo dallo scenario ID {}.", idTempo, scenarioId);
-                } else {
-                    logger.warn("Nessun tempo trovato con ID {} nello scenario ID {}. Nessuna eliminazione effettuata.", idTempo, scenarioId);
+            int rowsDeleted = DBConnect.getInstance().write(conn -> {
+                // Prima elimina i parametri aggiuntivi associati a questo tempo.
+                deleteAdditionalParamsForTempo(conn, idTempo, scenarioId);
+
+                // Quindi elimina il tempo stesso.
+                final String sql = "DELETE FROM Tempo WHERE id_tempo = ? AND id_advanced_scenario = ?";
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, idTempo);
+                    stmt.setInt(2, scenarioId);
+                    return stmt.executeUpdate();
                 }
+            });
+            invalidateTempi(scenarioId);
+            if (rowsDeleted > 0) {
+                logger.info("Tempo con ID {} eliminato con successo dallo scenario ID {}.", idTempo, scenarioId);
+            } else {
+                logger.warn("Nessun tempo trovato con ID {} nello scenario ID {}. Nessuna eliminazione effettuata.", idTempo, scenarioId);
             }
-            conn.commit(); // Conferma la transazione.
         } catch (SQLException e) {
             logger.error("Errore SQL durante l'eliminazione del tempo ID {} dallo scenario ID {}: {}", idTempo, scenarioId, e.getMessage(), e);
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Esegue il rollback in caso di errore.
-                    logger.warn("Rollback della transazione eseguito per l'eliminazione del tempo ID {}.", idTempo);
-                } catch (SQLException ex) {
-                    logger.error("Errore durante il rollback dopo l'eliminazione del tempo: {}", ex.getMessage(), ex);
-                }
-            }
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Ripristina l'autocommit.
-                    conn.close(); // Chiude la connessione.
-                } catch (SQLException e) {
-                    logger.error("Errore durante la chiusura della connessione o il ripristino dell'autocommit nel finally: {}", e.getMessage(), e);
-                }
-            }
         }
     }
 
@@ -806,14 +1023,17 @@ public class AdvancedScenarioService {
      */
     public void deleteAdditionalParam(Integer scenarioId, Integer tempoId, String nome) {
         final String sql = "DELETE FROM ParametriAggiuntivi WHERE tempo_id = ? AND scenario_id = ? AND nome = ?";
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, tempoId);
-            stmt.setInt(2, scenarioId);
-            stmt.setString(3, nome);
-
-            int rowsDeleted = stmt.executeUpdate();
+        DBConnect.getInstance().flushWriteBehind(scenarioId);
+        try {
+            int rowsDeleted = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, tempoId);
+                    stmt.setInt(2, scenarioId);
+                    stmt.setString(3, nome);
+                    return stmt.executeUpdate();
+                }
+            });
+            invalidateTempi(scenarioId);
             if (rowsDeleted > 0) {
                 logger.info("Parametro aggiuntivo '{}' eliminato con successo per il tempo ID {} nello scenario ID {}.", nome, tempoId, scenarioId);
             } else {
@@ -838,21 +1058,22 @@ public class AdvancedScenarioService {
 
         // Se tempoId è null, si assume che sia per il tempo 0 (Paziente T0).
         Integer actualTempoId = (tempoId != null) ? tempoId : 0;
+        DBConnect.getInstance().flushWriteBehind(scenarioId);
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            int maxId = getMaxParamId(conn) + 1; // Genera un nuovo ID univoco per il parametro aggiuntivo.
-
-            stmt.setInt(1, maxId);
-            stmt.setInt(2, actualTempoId);
-            stmt.setInt(3, scenarioId);
-            stmt.setString(4, newParam.getNome());
-            // Il valore viene convertito in String, assumendo che ParametroAggiuntivo.getValore() restituisca già una Stringa.
-            stmt.setString(5, newParam.getValore());
-            stmt.setString(6, newParam.getUnitaMisura());
-
-            int rowsInserted = stmt.executeUpdate();
+        try {
+            int rowsInserted = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, DBConnect.getInstance().nextId(conn, IdSequence.PARAMETRI_AGGIUNTIVI));
+                    stmt.setInt(2, actualTempoId);
+                    stmt.setInt(3, scenarioId);
+                    stmt.setString(4, newParam.getNome());
+                    // Il valore viene convertito in String, assumendo che ParametroAggiuntivo.getValore() restituisca già una Stringa.
+                    stmt.setString(5, newParam.getValore());
+                    stmt.setString(6, newParam.getUnitaMisura());
+                    return stmt.executeUpdate();
+                }
+            });
+            invalidateTempi(scenarioId);
             if (rowsInserted > 0) {
                 logger.info("Parametro aggiuntivo '{}' aggiunto con successo per il tempo ID {} nello scenario ID {}.", newParam.getNome(), actualTempoId, scenarioId);
             } else {
@@ -862,4 +1083,36 @@ public class AdvancedScenarioService {
             logger.error("Errore SQL durante l'aggiunta del parametro aggiuntivo '{}' per il tempo ID {} nello scenario ID {}: {}", newParam.getNome(), actualTempoId, scenarioId, e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Costruisce un {@link ParametroAggiuntivo} dalla riga corrente di un {@link ResultSet} sulla tabella <code>ParametriAggiuntivi</code>.
+     *
+     * @param rs Il {@link ResultSet} posizionato sulla riga da leggere.
+     * @return Il parametro aggiuntivo letto.
+     * @throws SQLException se la lettura di una colonna fallisce.
+     */
+    private static ParametroAggiuntivo mapParametroAggiuntivo(ResultSet rs) throws SQLException {
+        return new ParametroAggiuntivo(
+                rs.getInt("parametri_aggiuntivi_id"),
+                rs.getInt("tempo_id"),
+                rs.getInt("scenario_id"),
+                rs.getString("nome"),
+                rs.getString("valore"),
+                rs.getString("unità_misura")
+        );
+    }
+
+    /**
+     * Invalida i tempi dello scenario e il relativo grafo compilato dopo una modifica, avanzando la revisione.
+     * Per le scritture differite basta invalidare alla registrazione: la lettura dei tempi
+     * scarica le modifiche in attesa prima di consultare la cache.
+     *
+     * @param scenarioId L'ID dello scenario modificato.
+     */
+    private static void invalidateTempi(int scenarioId) {
+        ScenarioCache cache = ScenarioCache.getInstance();
+        cache.invalidate(ScenarioCache.Region.TEMPI, scenarioId);
+        cache.invalidate(ScenarioCache.Region.TIMELINE_GRAPH, scenarioId);
+        TIMELINE_REVISIONS.computeIfAbsent(scenarioId, id -> new AtomicLong()).incrementAndGet();
+    }
+}
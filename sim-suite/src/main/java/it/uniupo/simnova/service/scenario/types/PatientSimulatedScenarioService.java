@@ -20,7 +20,7 @@ import java.util.ArrayList;
  * come la sceneggiatura.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @Service
 public class PatientSimulatedScenarioService {
@@ -74,14 +74,15 @@ public class PatientSimulatedScenarioService {
             // Se lo scenario avanzato è stato creato con successo, aggiunge un record in PatientSimulatedScenario.
             final String sql = "INSERT INTO PatientSimulatedScenario (id_patient_simulated_scenario, id_advanced_scenario, sceneggiatura) VALUES (?,?,?)";
 
-            try (Connection conn = DBConnect.getInstance().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setInt(1, scenarioId);     // L'ID dello scenario è lo stesso per la sua controparte PatientSimulatedScenario.
-                stmt.setInt(2, scenarioId);     // Riferimento all'AdvancedScenario padre.
-                stmt.setString(3, "");          // Inizializza la sceneggiatura a una stringa vuota.
-
-                stmt.executeUpdate();
+            try {
+                DBConnect.getInstance().write(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setInt(1, scenarioId);     // L'ID dello scenario è lo stesso per la sua controparte PatientSimulatedScenario.
+                        stmt.setInt(2, scenarioId);     // Riferimento all'AdvancedScenario padre.
+                        stmt.setString(3, "");          // Inizializza la sceneggiatura a una stringa vuota.
+                        return stmt.executeUpdate();
+                    }
+                });
                 logger.info("Record 'PatientSimulatedScenario' creato con successo per lo scenario ID: {}.", scenarioId);
 
             } catch (SQLException e) {
@@ -196,13 +197,14 @@ public class PatientSimulatedScenarioService {
 
         final String sql = "UPDATE PatientSimulatedScenario SET sceneggiatura = ? WHERE id_patient_simulated_scenario = ?";
 
-        try (Connection conn = DBConnect.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, sceneggiatura);
-            stmt.setInt(2, scenarioId);
-
-            int rowsUpdated = stmt.executeUpdate(); // Numero di righe modificate.
+        try {
+            int rowsUpdated = DBConnect.getInstance().write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, sceneggiatura);
+                    stmt.setInt(2, scenarioId);
+                    return stmt.executeUpdate(); // Numero di righe modificate.
+                }
+            });
             if (rowsUpdated > 0) {
                 logger.info("Sceneggiatura aggiornata con successo per lo scenario con ID {}.", scenarioId);
                 return true;
@@ -1,8 +1,21 @@
 package it.uniupo.simnova.utils;
 
+import it.uniupo.simnova.utils.db.ConnectionPool;
+import it.uniupo.simnova.utils.db.IdAllocator;
+import it.uniupo.simnova.utils.db.IdSequence;
+import it.uniupo.simnova.utils.db.PoolStats;
+import it.uniupo.simnova.utils.db.SchemaMigrator;
+import it.uniupo.simnova.utils.db.StatementCacheStats;
+import it.uniupo.simnova.utils.db.WriteBehindBuffer;
+import it.uniupo.simnova.utils.db.WriteBehindKey;
+import it.uniupo.simnova.utils.db.WriteBehindStats;
+import it.uniupo.simnova.utils.db.WriteQueue;
+import it.uniupo.simnova.utils.db.WriteStats;
+import it.uniupo.simnova.utils.db.WriteTask;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Classe di utilità per la gestione della connessione al database SQLite.
@@ -11,9 +24,24 @@ import java.sql.SQLException;
  * della connessione al database durante l'esecuzione dell'applicazione.
  * Offre metodi per ottenere e chiudere le connessioni al database SQLite.
  * </p>
+ * <p>
+ * Le connessioni non vengono più aperte a ogni chiamata: sono prelevate da un {@link ConnectionPool}
+ * limitato di connessioni a lunga durata, configurate in modalità WAL e in sola lettura. La chiusura di una
+ * connessione ottenuta da {@link #getConnection()} la restituisce al pool.
+ * </p>
+ * <p>
+ * Le scritture passano invece da una {@link WriteQueue}: un unico scrittore che raggruppa le modifiche
+ * concorrenti in un'unica transazione ({@link #submitWrite(WriteTask)}, {@link #write(WriteTask)}).
+ * Le modifiche puntuali degli editor in linea possono essere differite con {@link #writeBehind(WriteBehindKey, WriteTask)}:
+ * le modifiche ripetute allo stesso campo entro una breve finestra producono una sola scrittura.
+ * </p>
+ * <p>
+ * Gli ID generati dall'applicazione si ottengono con {@link #nextId(Connection, IdSequence)}, che li distribuisce
+ * a blocchi da un {@link IdAllocator}.
+ * </p>
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.7
  */
 public class DBConnect {
     /**
@@ -23,12 +51,63 @@ public class DBConnect {
      */
     private static final String DB_URL = "jdbc:sqlite:" + System.getProperty("user.dir") + "/database.db";
 
+    /**
+     * Numero massimo di connessioni del pool. Configurabile con la proprietà di sistema
+     * <code>simsuite.db.pool.size</code>; il valore predefinito dipende dal numero di processori.
+     */
+    private static final int POOL_SIZE = Integer.getInteger("simsuite.db.pool.size",
+            Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Tempo massimo di attesa, in millisecondi, per ottenere una connessione dal pool.
+     * Configurabile con la proprietà di sistema <code>simsuite.db.pool.timeout-ms</code>.
+     */
+    private static final long POOL_TIMEOUT_MILLIS = Long.getLong("simsuite.db.pool.timeout-ms", 30_000L);
+
+    /**
+     * Numero massimo di prepared statement in cache per ciascuna connessione.
+     * Configurabile con la proprietà di sistema <code>simsuite.db.statement-cache.size</code>; <code>0</code> la disattiva.
+     */
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("simsuite.db.statement-cache.size", 64);
+
+    /**
+     * Durata, in millisecondi, della finestra in cui le modifiche differite allo stesso campo vengono accorpate.
+     * Configurabile con la proprietà di sistema <code>simsuite.db.write-behind.delay-ms</code>.
+     */
+    private static final long WRITE_BEHIND_DELAY_MILLIS = Long.getLong("simsuite.db.write-behind.delay-ms", 500L);
+
+    /**
+     * Numero di ID riservati a ogni scrittura su una sequenza.
+     * Configurabile con la proprietà di sistema <code>simsuite.db.id-block.size</code>.
+     */
+    private static final int ID_BLOCK_SIZE = Integer.getInteger("simsuite.db.id-block.size", 64);
+
     /**
      * L'istanza Singleton di {@link DBConnect}.
      * È inizializzata a <code>null</code> e creata al primo accesso tramite {@link #getInstance()}.
      */
     private static DBConnect instance = null;
 
+    /**
+     * Il pool di connessioni a lunga durata da cui vengono servite tutte le richieste.
+     */
+    private final ConnectionPool pool;
+
+    /**
+     * La coda a scrittore singolo attraverso cui vengono serializzate le mutazioni.
+     */
+    private final WriteQueue writeQueue;
+
+    /**
+     * Il buffer delle modifiche differite, consegnate alla {@link #writeQueue} allo scadere della finestra.
+     */
+    private final WriteBehindBuffer writeBehind;
+
+    /**
+     * L'allocatore degli ID assegnati dall'applicazione.
+     */
+    private final IdAllocator idAllocator;
+
     /**
      * Costruttore privato della classe.
      * <p>
@@ -47,6 +126,10 @@ public class DBConnect {
             // Lancia una RuntimeException se il driver non è disponibile.
             throw new RuntimeException("Driver SQLite non trovato. Assicurati che la libreria JDBC SQLite sia nel classpath.", e);
         }
+        this.pool = new ConnectionPool(DB_URL, POOL_SIZE, POOL_TIMEOUT_MILLIS, STATEMENT_CACHE_SIZE);
+        this.writeQueue = new WriteQueue(pool);
+        this.writeBehind = new WriteBehindBuffer(writeQueue, WRITE_BEHIND_DELAY_MILLIS);
+        this.idAllocator = new IdAllocator(writeQueue, ID_BLOCK_SIZE);
     }
 
     /**
@@ -63,19 +146,157 @@ public class DBConnect {
     }
 
     /**
-     * Ottiene una nuova connessione al database SQLite.
-     * Ogni chiamata a questo metodo restituisce una nuova connessione, che dovrebbe essere
-     * chiusa esplicitamente dopo l'uso per rilasciare le risorse.
+     * Ottiene una connessione di sola lettura al database SQLite dal pool; le modifiche passano da {@link #write(WriteTask)}.
+     * La connessione deve essere chiusa esplicitamente dopo l'uso (tipicamente con try-with-resources):
+     * la chiusura non chiude la connessione fisica ma la restituisce al pool.
      *
      * @return Una {@link Connection} al database.
-     * @throws SQLException se si verifica un errore durante il tentativo di connessione al database.
+     * @throws SQLException se si verifica un errore durante il tentativo di connessione al database
+     *                      o se nessuna connessione si libera entro il tempo massimo di attesa.
      */
     public Connection getConnection() throws SQLException {
         try {
-            return DriverManager.getConnection(DB_URL);
+            return pool.getConnection();
         } catch (SQLException e) {
             // Lancia un'eccezione SQL personalizzata con un messaggio più descrittivo in caso di fallimento della connessione.
             throw new SQLException("Impossibile connettersi al database all'URL: " + DB_URL + ". Dettagli: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Applica le migrazioni dello schema non ancora eseguite e verifica che le query dei servizi usino gli indici.
+     * Da invocare all'avvio, prima che i servizi accedano al database.
+     *
+     * @return Il numero di migrazioni applicate.
+     * @throws SQLException se una migrazione fallisce.
+     */
+    public int migrateSchema() throws SQLException {
+        try (Connection conn = pool.openPhysicalConnection()) {
+            int applied = SchemaMigrator.migrate(conn);
+            SchemaMigrator.verifyQueryPlans(conn);
+            return applied;
+        }
+    }
+
+    /**
+     * Restituisce gli indicatori correnti del pool di connessioni (connessioni attive, libere, tempi di attesa).
+     *
+     * @return Un'istantanea {@link PoolStats} del pool.
+     */
+    public PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * Restituisce gli indicatori della cache dei prepared statement (successi, mancati, rimozioni).
+     *
+     * @return Un'istantanea {@link StatementCacheStats} della cache.
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        return pool.getStatementCacheStats();
+    }
+
+    /**
+     * Accoda una scrittura sullo scrittore singolo.
+     * Le scritture che arrivano insieme vengono confermate con un unico commit.
+     *
+     * @param task Il {@link WriteTask} da eseguire; non deve gestire la transazione né chiudere la connessione.
+     * @param <T>  Il tipo del risultato.
+     * @return Un {@link CompletableFuture} completato con il risultato dopo il commit.
+     */
+    public <T> CompletableFuture<T> submitWrite(WriteTask<T> task) {
+        return writeQueue.submit(task);
+    }
+
+    /**
+     * Esegue una scrittura sullo scrittore singolo e ne attende il commit.
+     * Se invocato da un altro task di scrittura, esegue il task subito nella stessa transazione e ne
+     * restituisce il risultato senza attendere, invece di bloccare lo scrittore.
+     *
+     * @param task Il {@link WriteTask} da eseguire; non deve gestire la transazione né chiudere la connessione.
+     * @param <T>  Il tipo del risultato.
+     * @return Il risultato del task, disponibile dopo il commit (o subito, se invocato da un task di scrittura).
+     * @throws SQLException se il task o il commit falliscono; le modifiche del task vengono annullate.
+     */
+    public <T> T write(WriteTask<T> task) throws SQLException {
+        return writeQueue.write(task);
+    }
+
+    /**
+     * Restituisce gli indicatori correnti della coda di scrittura (transazioni, dimensione dei gruppi, tempi di commit).
+     *
+     * @return Un'istantanea {@link WriteStats} della coda.
+     */
+    public WriteStats getWriteStats() {
+        return writeQueue.getStats();
+    }
+
+    /**
+     * Registra una modifica differita: viene scritta allo scadere della finestra di accorpamento,
+     * a meno che una modifica successiva con la stessa chiave la sostituisca.
+     *
+     * @param key  La chiave del dato modificato.
+     * @param task Il {@link WriteTask} che scrive il nuovo valore; non deve gestire la transazione né chiudere la connessione.
+     * @return Un futuro completato quando la modifica è confermata; fallisce se la scrittura non va a buon fine.
+     */
+    public CompletableFuture<Void> writeBehind(WriteBehindKey key, WriteTask<?> task) {
+        return writeBehind.put(key, task);
+    }
+
+    /**
+     * Accoda subito tutte le modifiche differite in attesa.
+     *
+     * @return Un futuro completato quando le modifiche sono state confermate; non fallisce mai,
+     * le scritture non riuscite sono registrate nel log.
+     */
+    public CompletableFuture<Void> flushWriteBehind() {
+        return writeBehind.flush();
+    }
+
+    /**
+     * Accoda subito le modifiche differite in attesa di uno scenario.
+     * Le scritture inviate dopo questa chiamata vengono eseguite dopo tali modifiche; per leggere i dati
+     * aggiornati occorre attendere il futuro restituito.
+     *
+     * Se invocato da un task di scrittura, le modifiche vengono eseguite nella transazione del task e il futuro
+     * restituito è già completato.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @return Un futuro completato quando le modifiche sono state confermate; non fallisce mai.
+     */
+    public CompletableFuture<Void> flushWriteBehind(int scenarioId) {
+        return writeBehind.flush(scenarioId);
+    }
+
+    /**
+     * Restituisce gli indicatori delle modifiche differite (ricevute, accorpate, scritte, fallite).
+     *
+     * @return Un'istantanea {@link WriteBehindStats} del buffer.
+     */
+    public WriteBehindStats getWriteBehindStats() {
+        return writeBehind.getStats();
+    }
+
+    /**
+     * Restituisce un nuovo ID per una tabella la cui chiave è assegnata dall'applicazione.
+     *
+     * @param conn     La connessione ricevuta dal {@link WriteTask} che inserisce la riga.
+     * @param sequence La sequenza della tabella.
+     * @return Un ID mai assegnato in precedenza.
+     * @throws SQLException          se la riserva di un nuovo blocco di ID fallisce.
+     * @throws IllegalStateException se la connessione non è quella dello scrittore.
+     */
+    public int nextId(Connection conn, IdSequence sequence) throws SQLException {
+        return idAllocator.next(conn, sequence);
+    }
+
+    /**
+     * Scrive le modifiche differite, smaltisce le scritture in coda, poi chiude il pool e tutte le connessioni libere.
+     * Da invocare allo spegnimento dell'applicazione.
+     */
+    public void shutdown() {
+        writeBehind.close();
+        writeQueue.close();
+        pool.close();
+    }
 }
\ No newline at end of file
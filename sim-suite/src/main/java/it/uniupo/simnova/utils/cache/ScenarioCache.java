@@ -0,0 +1,343 @@
+package it.uniupo.simnova.utils.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache <em>read-through</em> degli aggregati di uno scenario (scenario, paziente T0, esame fisico, tempi, materiali).
+ * <p>
+ * Le viste di creazione e di dettaglio rileggono gli stessi dati a ogni navigazione, anche se tra un clic e
+ * l'altro cambiano di rado. La cache conserva il risultato delle letture per ID dello scenario ed è limitata
+ * per peso: superato il limite vengono rimosse le voci usate meno di recente (LRU). Il peso di una voce è
+ * <code>1</code> più il numero di elementi, se il valore è una collezione.
+ * </p>
+ * <p>
+ * Ogni metodo dei servizi che modifica un aggregato invalida la voce corrispondente dopo la scrittura.
+ * Una lettura iniziata prima di un'invalidazione non viene memorizzata, così la cache non può conservare
+ * un valore letto prima della modifica. Anche i risultati assenti (<code>null</code>) vengono memorizzati;
+ * gli errori SQL invece si propagano e non vengono mai memorizzati.
+ * </p>
+ * <p>
+ * Gli oggetti del dominio sono modificabili: la cache non consegna mai l'istanza memorizzata, ma una copia
+ * profonda prodotta dal copiatore indicato dal servizio, così le modifiche del chiamante non alterano la cache.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.2
+ */
+public final class ScenarioCache {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le invalidazioni.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioCache.class);
+
+    /**
+     * Peso massimo complessivo delle voci in cache. Configurabile con la proprietà di sistema
+     * <code>simsuite.cache.scenario.max-weight</code>; <code>0</code> disattiva la cache.
+     */
+    private static final long MAX_WEIGHT = Long.getLong("simsuite.cache.scenario.max-weight", 20_000L);
+
+    /**
+     * Segnaposto memorizzato al posto di un risultato <code>null</code>.
+     */
+    private static final Object ABSENT = new Object();
+
+    /**
+     * L'istanza condivisa dall'intera applicazione.
+     */
+    private static final ScenarioCache INSTANCE = new ScenarioCache(MAX_WEIGHT);
+
+    /**
+     * Le voci in cache in ordine di accesso: la prima è quella usata meno di recente. Protetta dal monitor della cache.
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Le letture in corso, con il gettone che le identifica. Un'invalidazione rimuove il gettone,
+     * e la lettura che non lo ritrova al termine non memorizza il proprio risultato.
+     */
+    private final Map<Key, Object> loading = new HashMap<>();
+
+    /**
+     * Peso massimo complessivo delle voci.
+     */
+    private final long maxWeight;
+
+    /**
+     * Peso complessivo delle voci attualmente in cache.
+     */
+    private long weight;
+
+    /**
+     * Numero di letture servite dalla cache.
+     */
+    private long hits;
+
+    /**
+     * Numero di letture che hanno richiesto un accesso al database.
+     */
+    private long misses;
+
+    /**
+     * Numero di voci rimosse per rispettare il peso massimo.
+     */
+    private long evictions;
+
+    /**
+     * Numero di voci rimosse perché i dati sono stati modificati.
+     */
+    private long invalidations;
+
+    /**
+     * Crea una cache con il peso massimo indicato.
+     *
+     * @param maxWeight Il peso massimo complessivo delle voci; <code>0</code> per non memorizzare nulla.
+     */
+    ScenarioCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Restituisce la cache condivisa dall'applicazione.
+     *
+     * @return L'istanza di {@link ScenarioCache}.
+     */
+    public static ScenarioCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Restituisce il valore in cache per l'aggregato richiesto, leggendolo con <code>loader</code> se assente.
+     * Il chiamante riceve sempre una copia prodotta da <code>copier</code>, mai l'istanza memorizzata,
+     * quindi può modificarla senza alterare la cache.
+     *
+     * @param region     L'aggregato richiesto.
+     * @param scenarioId L'ID dello scenario.
+     * @param loader     La lettura dal database da eseguire in caso di assenza.
+     * @param copier     La copia profonda del valore; {@link UnaryOperator#identity()} solo per valori immutabili.
+     * @param <T>        Il tipo del valore.
+     * @return Il valore in cache o appena letto; può essere <code>null</code> se il loader lo restituisce.
+     * @throws SQLException se la lettura dal database fallisce; in tal caso nulla viene memorizzato.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Region region, int scenarioId, Loader<T> loader, UnaryOperator<T> copier) throws SQLException {
+        Key key = new Key(region, scenarioId);
+        Object token = new Object();
+        T value = null;
+        boolean cached = false;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                cached = true;
+                hits++;
+                value = entry.value() == ABSENT ? null : (T) entry.value();
+            } else {
+                misses++;
+                if (maxWeight > 0) {
+                    loading.put(key, token);
+                }
+            }
+        }
+
+        if (!cached) {
+            value = loader.load(); // Letta fuori dal monitor: le altre letture non attendono il database.
+            synchronized (this) {
+                if (loading.remove(key, token)) {
+                    store(key, value == null ? ABSENT : value);
+                    cached = true;
+                }
+            }
+        }
+        // La copia si fa fuori dal monitor; l'istanza memorizzata non viene mai modificata, quindi è sicuro.
+        return cached && value != null ? copier.apply(value) : value;
+    }
+
+    /**
+     * Restituisce un copiatore di liste che copia anche ogni elemento.
+     *
+     * @param elementCopier La copia di un singolo elemento; {@link UnaryOperator#identity()} per elementi immutabili.
+     * @param <E>           Il tipo degli elementi.
+     * @return Il copiatore da passare a {@link #get(Region, int, Loader, UnaryOperator)}.
+     */
+    public static <E> UnaryOperator<List<E>> listCopier(UnaryOperator<E> elementCopier) {
+        return list -> {
+            List<E> copy = new ArrayList<>(list.size());
+            for (E element : list) {
+                copy.add(element == null ? null : elementCopier.apply(element));
+            }
+            return copy;
+        };
+    }
+
+    /**
+     * Invalida un aggregato di uno scenario. Da invocare dopo che la modifica è stata confermata.
+     *
+     * @param region     L'aggregato modificato.
+     * @param scenarioId L'ID dello scenario.
+     */
+    public void invalidate(Region region, int scenarioId) {
+        invalidateMatching(key -> key.region() == region && key.scenarioId() == scenarioId);
+    }
+
+    /**
+     * Invalida tutti gli aggregati di uno scenario, ad esempio dopo la sua eliminazione.
+     *
+     * @param scenarioId L'ID dello scenario.
+     */
+    public void invalidate(int scenarioId) {
+        invalidateMatching(key -> key.scenarioId() == scenarioId);
+    }
+
+    /**
+     * Invalida un aggregato per tutti gli scenari, quando la modifica riguarda dati condivisi
+     * (ad esempio un materiale associato a più scenari).
+     *
+     * @param region L'aggregato modificato.
+     */
+    public void invalidateAll(Region region) {
+        invalidateMatching(key -> key.region() == region);
+    }
+
+    /**
+     * Restituisce gli indicatori della cache (successi, mancati, rimozioni, peso occupato).
+     *
+     * @return Un'istantanea {@link ScenarioCacheStats} della cache.
+     */
+    public synchronized ScenarioCacheStats getStats() {
+        return new ScenarioCacheStats(hits, misses, evictions, invalidations, entries.size(), weight, maxWeight);
+    }
+
+    /**
+     * Memorizza una voce e rimuove quelle usate meno di recente finché il peso rientra nel limite.
+     *
+     * @param key   La chiave della voce.
+     * @param value Il valore, già sostituito da {@link #ABSENT} se <code>null</code>.
+     */
+    private void store(Key key, Object value) {
+        long entryWeight = weigh(value);
+        if (entryWeight > maxWeight) {
+            return; // Una voce più pesante dell'intera cache non viene memorizzata.
+        }
+        Entry previous = entries.put(key, new Entry(value, entryWeight));
+        if (previous != null) {
+            weight -= previous.weight();
+        }
+        weight += entryWeight;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Rimuove le voci e annulla le letture in corso le cui chiavi soddisfano il selettore.
+     *
+     * @param selector Il criterio di selezione delle chiavi.
+     */
+    private synchronized void invalidateMatching(Predicate<Key> selector) {
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (selector.test(entry.getKey())) {
+                weight -= entry.getValue().weight();
+                iterator.remove();
+                removed++;
+            }
+        }
+        loading.keySet().removeIf(selector);
+        invalidations += removed;
+        if (removed > 0) {
+            logger.debug("Invalidate {} voci della cache degli scenari.", removed);
+        }
+    }
+
+    /**
+     * Calcola il peso di un valore.
+     *
+     * @param value Il valore da memorizzare.
+     * @return <code>1</code> più il numero di elementi se il valore è una collezione; <code>1</code> altrimenti.
+     */
+    private static long weigh(Object value) {
+        return value instanceof Collection<?> collection ? 1L + collection.size() : 1L;
+    }
+
+    /**
+     * Aggregati di uno scenario memorizzati nella cache.
+     */
+    public enum Region {
+        /**
+         * I dati principali dello scenario (tabella <code>Scenario</code>).
+         */
+        SCENARIO,
+        /**
+         * Il paziente al tempo zero, con gli accessi venosi e arteriosi.
+         */
+        PAZIENTE_T0,
+        /**
+         * L'esame fisico del paziente.
+         */
+        ESAME_FISICO,
+        /**
+         * I tempi dello scenario avanzato, con i parametri aggiuntivi.
+         */
+        TEMPI,
+        /**
+         * Il grafo compilato delle transizioni tra i tempi, derivato da {@link #TEMPI}.
+         */
+        TIMELINE_GRAPH,
+        /**
+         * I materiali necessari associati allo scenario.
+         */
+        MATERIALI
+    }
+
+    /**
+     * Lettura dal database eseguita quando la voce non è in cache.
+     *
+     * @param <T> Il tipo del valore letto.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        /**
+         * Legge il valore dal database.
+         *
+         * @return Il valore letto; <code>null</code> se il dato non esiste.
+         * @throws SQLException se la lettura fallisce.
+         */
+        T load() throws SQLException;
+    }
+
+    /**
+     * Chiave di una voce: aggregato e ID dello scenario.
+     *
+     * @param region     L'aggregato.
+     * @param scenarioId L'ID dello scenario.
+     */
+    private record Key(Region region, int scenarioId) {
+    }
+
+    /**
+     * Voce della cache: il valore memorizzato e il suo peso.
+     *
+     * @param value  Il valore, o {@link #ABSENT}.
+     * @param weight Il peso calcolato al momento della memorizzazione.
+     */
+    private record Entry(Object value, long weight) {
+    }
+}
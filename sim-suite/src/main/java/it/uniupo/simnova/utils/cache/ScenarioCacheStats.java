@@ -0,0 +1,34 @@
+package it.uniupo.simnova.utils.cache;
+
+/**
+ * Istantanea immutabile degli indicatori della {@link ScenarioCache}.
+ *
+ * @param hits          Numero di letture servite dalla cache.
+ * @param misses        Numero di letture che hanno richiesto un accesso al database.
+ * @param evictions     Numero di voci rimosse per rispettare il peso massimo.
+ * @param invalidations Numero di voci rimosse perché i dati sono stati modificati.
+ * @param size          Numero di voci attualmente in cache.
+ * @param weight        Peso complessivo delle voci attualmente in cache.
+ * @param maxWeight     Peso massimo configurato.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record ScenarioCacheStats(long hits, long misses, long evictions, long invalidations,
+                                 int size, long weight, long maxWeight) {
+
+    /**
+     * Calcola la quota di letture servite dalla cache.
+     *
+     * @return Il tasso di successo, tra <code>0</code> e <code>1</code>; <code>0</code> se non ci sono state letture.
+     */
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScenarioCacheStats{voci=%d, peso=%d/%d, successi=%d, mancati=%d, tasso=%.1f%%, rimosse=%d, invalidate=%d}",
+                size, weight, maxWeight, hits, misses, hitRate() * 100, evictions, invalidations);
+    }
+}
@@ -0,0 +1,465 @@
+package it.uniupo.simnova.utils.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool limitato di connessioni SQLite a lunga durata.
+ * <p>
+ * Ogni connessione fisica viene aperta una sola volta, configurata con journaling <strong>WAL</strong>,
+ * cache delle pagine dimensionata, memory-mapped I/O e <code>busy_timeout</code>, e poi riutilizzata.
+ * Ai servizi viene consegnato un <em>proxy</em> della connessione: la chiamata a {@link Connection#close()}
+ * non chiude la connessione fisica ma la restituisce al pool, quindi il codice esistente basato su
+ * try-with-resources continua a funzionare senza modifiche.
+ * </p>
+ * <p>
+ * Al rilascio, eventuali transazioni lasciate aperte vengono annullate e l'autocommit viene ripristinato,
+ * in modo che la connessione successiva parta sempre da uno stato pulito.
+ * </p>
+ * <p>
+ * Ogni connessione fisica ha una propria {@link StatementCache}: <code>prepareStatement(String)</code>
+ * restituisce uno statement già compilato quando lo stesso SQL è stato usato in precedenza sulla connessione.
+ * </p>
+ * <p>
+ * Le connessioni del pool servono solo le letture e sono aperte con <code>PRAGMA query_only = ON</code>: ogni
+ * modifica passa dalla {@link WriteQueue}, che usa una connessione dedicata aperta con {@link #openPhysicalConnection()}.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.2
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare apertura, rilascio ed errori delle connessioni.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Dimensione della cache delle pagine per connessione, in KiB (valore negativo secondo la convenzione di SQLite).
+     */
+    private static final int CACHE_SIZE_KIB = -16_000;
+
+    /**
+     * Dimensione massima della regione memory-mapped del file di database, in byte (256 MiB).
+     */
+    private static final long MMAP_SIZE_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Tempo massimo, in millisecondi, per cui SQLite ritenta un'operazione quando il database è bloccato.
+     */
+    private static final int BUSY_TIMEOUT_MILLIS = 5_000;
+
+    /**
+     * L'URL JDBC del database servito dal pool.
+     */
+    private final String url;
+
+    /**
+     * Configurazione SQLite applicata a ogni connessione fisica al momento dell'apertura.
+     */
+    private final SQLiteConfig config;
+
+    /**
+     * Numero massimo di connessioni fisiche che il pool può aprire.
+     */
+    private final int maxSize;
+
+    /**
+     * Tempo massimo di attesa, in millisecondi, per ottenere una connessione libera.
+     */
+    private final long acquireTimeoutMillis;
+
+    /**
+     * Numero massimo di prepared statement mantenuti in cache per ciascuna connessione fisica.
+     */
+    private final int statementCacheSize;
+
+    /**
+     * Contatori condivisi dalle cache degli statement di tutte le connessioni.
+     */
+    private final StatementCache.Metrics statementMetrics = new StatementCache.Metrics();
+
+    /**
+     * Connessioni fisiche aperte e attualmente libere. Usata come pila (LIFO) per riutilizzare
+     * per prime le connessioni "calde", con cache delle pagine già popolata.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    /**
+     * Permessi di prelievo: limitano il numero di connessioni contemporaneamente in uso a {@link #maxSize}.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Numero di connessioni fisiche attualmente aperte.
+     */
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /**
+     * Numero di connessioni attualmente consegnate ai servizi.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Numero di thread in attesa di una connessione.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Numero totale di connessioni consegnate.
+     */
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    /**
+     * Numero totale di richieste scadute.
+     */
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Tempo complessivo di attesa, in nanosecondi.
+     */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Attesa massima registrata, in nanosecondi.
+     */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Indica se il pool è stato chiuso.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Crea un nuovo pool di connessioni per il database indicato.
+     * Le connessioni vengono aperte in modo pigro, alla prima richiesta che non trova connessioni libere.
+     *
+     * @param url                  L'URL JDBC del database SQLite.
+     * @param maxSize              Il numero massimo di connessioni fisiche (almeno 1).
+     * @param acquireTimeoutMillis Il tempo massimo di attesa per ottenere una connessione, in millisecondi.
+     * @param statementCacheSize   Il numero massimo di prepared statement in cache per connessione (<code>0</code> per disattivarla).
+     * @throws IllegalArgumentException se <code>maxSize</code> è minore di 1.
+     */
+    public ConnectionPool(String url, int maxSize, long acquireTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("La dimensione del pool deve essere almeno 1, ricevuto: " + maxSize);
+        }
+        this.url = url;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(maxSize, true); // Semaforo equo: le richieste vengono servite in ordine di arrivo.
+        this.config = createConfig();
+    }
+
+    /**
+     * Costruisce la configurazione SQLite comune a tutte le connessioni del pool.
+     *
+     * @return La {@link SQLiteConfig} con WAL, cache, mmap e busy timeout impostati.
+     */
+    private static SQLiteConfig createConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL); // Lettori e scrittore non si bloccano a vicenda.
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL); // In WAL, NORMAL è sicuro e riduce gli fsync.
+        config.setCacheSize(CACHE_SIZE_KIB);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(MMAP_SIZE_BYTES));
+        config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        return config;
+    }
+
+    /**
+     * Apre una nuova connessione fisica con la configurazione del pool.
+     * Metodo riutilizzato anche da chi necessita di una connessione dedicata fuori dal pool.
+     *
+     * @return Una nuova {@link Connection} fisica configurata.
+     * @throws SQLException se l'apertura della connessione fallisce.
+     */
+    public Connection openPhysicalConnection() throws SQLException {
+        return DriverManager.getConnection(url, config.toProperties());
+    }
+
+    /**
+     * Apre una connessione fisica per il pool, in sola lettura: una scrittura fuori dalla coda fallisce subito
+     * invece di contendere il lock allo scrittore.
+     *
+     * @return Una nuova {@link Connection} fisica configurata con <code>query_only</code>.
+     * @throws SQLException se l'apertura o la configurazione della connessione falliscono.
+     */
+    private Connection openReaderConnection() throws SQLException {
+        Connection physical = openPhysicalConnection();
+        try (Statement stmt = physical.createStatement()) {
+            stmt.execute("PRAGMA query_only = ON");
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        return physical;
+    }
+
+    /**
+     * Crea una cache degli statement per una connessione fisica aperta fuori dal pool,
+     * registrandone gli indicatori insieme a quelli del pool.
+     *
+     * @param physical La connessione fisica.
+     * @return Una nuova {@link StatementCache} per la connessione.
+     */
+    StatementCache newStatementCache(Connection physical) {
+        return new StatementCache(physical, statementCacheSize, statementMetrics);
+    }
+
+    /**
+     * Preleva una connessione dal pool, aprendone una nuova se non ci sono connessioni libere
+     * e il limite {@link #maxSize} non è stato raggiunto. Se tutte le connessioni sono in uso,
+     * attende fino a {@link #acquireTimeoutMillis} millisecondi.
+     *
+     * @return Un proxy della connessione; la sua chiusura la restituisce al pool.
+     * @throws SQLException se il pool è chiuso, se l'attesa scade o se l'apertura della connessione fallisce.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Il pool di connessioni è stato chiuso.");
+        }
+
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrotto durante l'attesa di una connessione dal pool.", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        recordWait(System.nanoTime() - start);
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Nessuna connessione disponibile entro " + acquireTimeoutMillis + " ms. " + getStats());
+        }
+
+        try {
+            PooledConnection pooled = idle.pollFirst();
+            if (pooled == null || pooled.physical.isClosed()) {
+                if (pooled != null) {
+                    opened.decrementAndGet(); // La connessione libera era stata chiusa: viene scartata.
+                }
+                pooled = new PooledConnection(openReaderConnection());
+                opened.incrementAndGet();
+                logger.debug("Aperta nuova connessione SQLite nel pool ({} aperte su {}).", opened.get(), maxSize);
+            }
+            active.incrementAndGet();
+            acquisitions.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Aggiorna le statistiche sui tempi di attesa.
+     *
+     * @param waitedNanos Il tempo atteso dalla richiesta corrente, in nanosecondi.
+     */
+    private void recordWait(long waitedNanos) {
+        totalWaitNanos.addAndGet(waitedNanos);
+        maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+    }
+
+    /**
+     * Restituisce al pool una connessione precedentemente prelevata.
+     * Eventuali transazioni lasciate aperte vengono annullate e l'autocommit ripristinato.
+     *
+     * @param pooled La connessione da restituire.
+     */
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            pooled.statements.checkinAll(); // Recupera gli statement che il chiamante non ha chiuso.
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback(); // Annulla il lavoro non confermato lasciato dal chiamante.
+                pooled.physical.setAutoCommit(true);
+            }
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.warn("Connessione scartata durante il rilascio al pool: {}", e.getMessage());
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Chiude definitivamente una connessione fisica e aggiorna il conteggio delle connessioni aperte.
+     *
+     * @param pooled La connessione da chiudere.
+     */
+    private void discard(PooledConnection pooled) {
+        opened.decrementAndGet();
+        pooled.statements.close();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.warn("Errore durante la chiusura di una connessione scartata: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Restituisce un'istantanea degli indicatori del pool.
+     *
+     * @return Le {@link PoolStats} correnti.
+     */
+    public PoolStats getStats() {
+        return new PoolStats(maxSize, opened.get(), active.get(), idle.size(), waiting.get(),
+                acquisitions.get(), timeouts.get(), totalWaitNanos.get() / 1_000_000.0, maxWaitNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * Restituisce un'istantanea degli indicatori della cache dei prepared statement.
+     *
+     * @return Le {@link StatementCacheStats} correnti.
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        return statementMetrics.snapshot(statementCacheSize);
+    }
+
+    /**
+     * Chiude il pool e tutte le connessioni libere. Le connessioni in uso verranno chiuse al loro rilascio.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+        logger.info("Pool di connessioni SQLite chiuso. {} {}", getStats(), getStatementCacheStats());
+    }
+
+    /**
+     * Connessione fisica gestita dal pool.
+     * Per ogni prelievo viene creato un nuovo proxy, così un riferimento conservato dopo la chiusura
+     * non può più operare sulla connessione fisica ormai consegnata a un altro chiamante.
+     */
+    private final class PooledConnection {
+
+        /**
+         * La connessione JDBC fisica verso SQLite.
+         */
+        private final Connection physical;
+
+        /**
+         * La cache dei prepared statement di questa connessione.
+         */
+        private final StatementCache statements;
+
+        /**
+         * Crea un wrapper per la connessione fisica indicata.
+         *
+         * @param physical La connessione fisica.
+         */
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = newStatementCache(physical);
+        }
+
+        /**
+         * Crea un nuovo proxy della connessione per un singolo prelievo.
+         *
+         * @return Il proxy {@link Connection} da consegnare al chiamante.
+         */
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Lease(this));
+        }
+    }
+
+    /**
+     * Gestore delle invocazioni sul proxy di un singolo prelievo.
+     * Intercetta <code>close()</code>, <code>isClosed()</code> e <code>prepareStatement(String)</code>, servito
+     * dalla cache degli statement; tutte le altre chiamate sono delegate alla connessione fisica finché il prelievo è attivo.
+     */
+    private final class Lease implements InvocationHandler {
+
+        /**
+         * La connessione del pool a cui questo prelievo si riferisce.
+         */
+        private final PooledConnection pooled;
+
+        /**
+         * Indica se il prelievo è già stato restituito al pool.
+         */
+        private boolean released = false;
+
+        /**
+         * Crea un nuovo gestore per il prelievo della connessione indicata.
+         *
+         * @param pooled La connessione del pool.
+         */
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!released) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return released || pooled.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + pooled.physical + (released ? ", rilasciata" : "") + "]";
+                }
+                default -> {
+                    if (released) {
+                        throw new SQLException("La connessione è già stata restituita al pool.");
+                    }
+                    if (method.getName().equals("prepareStatement") && args.length == 1) {
+                        return pooled.statements.prepare((String) args[0]);
+                    }
+                    try {
+                        return method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause(); // Propaga l'eccezione originale (es. SQLException).
+                    }
+                }
+            }
+        }
+    }
+}
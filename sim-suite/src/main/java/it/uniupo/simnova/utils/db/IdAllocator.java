@@ -0,0 +1,162 @@
+package it.uniupo.simnova.utils.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Assegna gli ID delle tabelle la cui chiave è generata dall'applicazione, senza calcolare ogni volta
+ * il massimo della colonna.
+ * <p>
+ * Per ogni {@link IdSequence} l'allocatore riserva nella tabella <code>IdSequence</code> un blocco di ID
+ * consecutivi, aggiornando il primo ID libero, e poi li distribuisce dalla memoria: un inserimento costa
+ * un incremento, e solo uno ogni {@link #blockSize} richiede una scrittura sulla sequenza.
+ * </p>
+ * <p>
+ * La riserva avviene nella transazione del chiamante. Se questa viene annullata, il blocco resta comunque
+ * valido in memoria e la riserva successiva parte dal limite già distribuito, quindi gli ID non si ripetono.
+ * Dopo un arresto improvviso, alla prima riserva di ogni sequenza il primo ID libero viene riallineato
+ * al massimo presente nella tabella: gli ID dei blocchi non usati vanno persi, ma non vengono mai riassegnati.
+ * </p>
+ * <p>
+ * Per questo la riserva deve avvenire sulla connessione dello scrittore, nella stessa transazione che inserisce
+ * la riga: su un'altra connessione l'aggiornamento della sequenza non sarebbe confermato o annullato insieme
+ * all'inserimento, e contenderebbe il lock di scrittura allo scrittore. {@link #next(Connection, IdSequence)}
+ * rifiuta qualsiasi altra connessione.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class IdAllocator {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le riserve dei blocchi.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(IdAllocator.class);
+
+    /**
+     * Aggiorna la sequenza riservando un blocco a partire dal maggiore tra il primo ID libero e il limite già distribuito.
+     */
+    private static final String RESERVE_SQL = "UPDATE IdSequence SET prossimo = MAX(prossimo, ?) + ? WHERE nome = ? RETURNING prossimo";
+
+    /**
+     * La coda di scrittura, usata per verificare che le riserve avvengano sulla connessione dello scrittore.
+     */
+    private final WriteQueue queue;
+
+    /**
+     * Numero di ID riservati a ogni scrittura sulla sequenza.
+     */
+    private final int blockSize;
+
+    /**
+     * Il blocco corrente di ciascuna sequenza. Protetta dal monitor dell'allocatore.
+     */
+    private final Map<IdSequence, Block> blocks = new EnumMap<>(IdSequence.class);
+
+    /**
+     * Crea un allocatore che riserva blocchi della dimensione indicata.
+     *
+     * @param queue     La coda di scrittura, sulla cui connessione vengono riservati i blocchi.
+     * @param blockSize Il numero di ID riservati a ogni scrittura sulla sequenza; almeno <code>1</code>.
+     */
+    public IdAllocator(WriteQueue queue, int blockSize) {
+        this.queue = queue;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Restituisce un nuovo ID della sequenza, riservando un nuovo blocco se quello corrente è esaurito.
+     *
+     * @param conn     La connessione dello scrittore, all'interno del {@link WriteTask} che inserisce la riga.
+     * @param sequence La sequenza da cui prelevare l'ID.
+     * @return Un ID mai assegnato in precedenza.
+     * @throws SQLException          se la riserva del blocco fallisce.
+     * @throws IllegalStateException se il chiamante non è un task in esecuzione sullo scrittore o la connessione
+     *                               non è quella dello scrittore.
+     */
+    public synchronized int next(Connection conn, IdSequence sequence) throws SQLException {
+        if (!queue.isWriterConnection(conn)) {
+            throw new IllegalStateException("Gli ID della sequenza " + sequence.table() +
+                    " vanno richiesti con la connessione dello scrittore, all'interno di un task di scrittura.");
+        }
+        Block block = blocks.computeIfAbsent(sequence, s -> new Block());
+        if (block.next >= block.limit) {
+            reserve(conn, sequence, block);
+        }
+        return block.next++;
+    }
+
+    /**
+     * Riserva un nuovo blocco di ID per la sequenza.
+     *
+     * @param conn     La connessione dello scrittore.
+     * @param sequence La sequenza.
+     * @param block    Lo stato in memoria della sequenza, aggiornato con il nuovo blocco.
+     * @throws SQLException se la sequenza non esiste o l'aggiornamento fallisce.
+     */
+    private void reserve(Connection conn, IdSequence sequence, Block block) throws SQLException {
+        if (!block.reconciled) {
+            reconcile(conn, sequence);
+            block.reconciled = true;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(RESERVE_SQL)) {
+            stmt.setInt(1, block.limit);
+            stmt.setInt(2, blockSize);
+            stmt.setString(3, sequence.table());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Sequenza di ID non trovata: " + sequence.table() + ".");
+                }
+                block.limit = rs.getInt(1);
+                block.next = block.limit - blockSize;
+            }
+        }
+        logger.debug("Riservati gli ID [{}, {}) della sequenza {}.", block.next, block.limit, sequence.table());
+    }
+
+    /**
+     * Porta il primo ID libero della sequenza oltre il massimo presente nella tabella.
+     * La colonna è la prima della chiave primaria, quindi il massimo si legge dall'indice.
+     *
+     * @param conn     La connessione dello scrittore.
+     * @param sequence La sequenza.
+     * @throws SQLException se l'aggiornamento fallisce.
+     */
+    private static void reconcile(Connection conn, IdSequence sequence) throws SQLException {
+        // Tabella e colonna provengono dalle costanti di IdSequence, non da input esterni.
+        final String sql = "UPDATE IdSequence SET prossimo = MAX(prossimo, " +
+                "(SELECT IFNULL(MAX(" + sequence.column() + "), 0) + 1 FROM " + sequence.table() + ")) WHERE nome = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, sequence.table());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Stato in memoria di una sequenza: il blocco <code>[next, limit)</code> ancora da distribuire.
+     */
+    private static final class Block {
+        /**
+         * Il prossimo ID da distribuire.
+         */
+        private int next;
+
+        /**
+         * Il primo ID oltre il blocco corrente; è anche il limite di tutto ciò che è stato distribuito.
+         */
+        private int limit;
+
+        /**
+         * Indica se la sequenza è già stata riallineata alla tabella in questa esecuzione.
+         */
+        private boolean reconciled;
+    }
+}
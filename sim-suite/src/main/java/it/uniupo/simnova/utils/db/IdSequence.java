@@ -0,0 +1,58 @@
+package it.uniupo.simnova.utils.db;
+
+/**
+ * Le sequenze di ID gestite dall'{@link IdAllocator}: una per ogni tabella la cui chiave viene assegnata
+ * dall'applicazione invece che da SQLite.
+ * <p>
+ * Ogni sequenza corrisponde a una riga della tabella <code>IdSequence</code>, creata dalla migrazione 4,
+ * che memorizza il primo ID non ancora riservato.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public enum IdSequence {
+    /**
+     * Gli ID della tabella <code>ParametriAggiuntivi</code>.
+     */
+    PARAMETRI_AGGIUNTIVI("ParametriAggiuntivi", "parametri_aggiuntivi_id");
+
+    /**
+     * Il nome della tabella, usato anche come nome della sequenza.
+     */
+    private final String table;
+
+    /**
+     * La colonna che contiene l'ID assegnato.
+     */
+    private final String column;
+
+    /**
+     * Crea una sequenza per la colonna indicata.
+     *
+     * @param table  La tabella.
+     * @param column La colonna dell'ID.
+     */
+    IdSequence(String table, String column) {
+        this.table = table;
+        this.column = column;
+    }
+
+    /**
+     * Restituisce il nome della tabella, che identifica la sequenza nella tabella <code>IdSequence</code>.
+     *
+     * @return Il nome della tabella.
+     */
+    public String table() {
+        return table;
+    }
+
+    /**
+     * Restituisce la colonna che contiene l'ID assegnato.
+     *
+     * @return Il nome della colonna.
+     */
+    public String column() {
+        return column;
+    }
+}
@@ -0,0 +1,29 @@
+package it.uniupo.simnova.utils.db;
+
+import java.util.List;
+
+/**
+ * Migrazione dello schema del database, identificata da un numero di versione crescente.
+ * Le istruzioni vengono eseguite da {@link SchemaMigrator} in un'unica transazione,
+ * al termine della quale la versione dello schema viene aggiornata.
+ *
+ * @param version     Il numero di versione raggiunto applicando la migrazione (a partire da 1).
+ * @param description Una breve descrizione della migrazione, riportata nei log.
+ * @param statements  Le istruzioni SQL da eseguire, nell'ordine indicato.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record Migration(int version, String description, List<String> statements) {
+
+    /**
+     * Crea una migrazione a partire da un elenco di istruzioni SQL.
+     *
+     * @param version     Il numero di versione della migrazione.
+     * @param description La descrizione della migrazione.
+     * @param statements  Le istruzioni SQL da eseguire.
+     * @return La nuova {@link Migration}.
+     */
+    public static Migration of(int version, String description, String... statements) {
+        return new Migration(version, description, List.of(statements));
+    }
+}
@@ -0,0 +1,37 @@
+package it.uniupo.simnova.utils.db;
+
+/**
+ * Istantanea immutabile degli indicatori (gauge) del pool di connessioni SQLite.
+ * Viene prodotta da {@link ConnectionPool#getStats()} e può essere esposta nei log
+ * o in una vista di diagnostica senza accedere allo stato interno del pool.
+ *
+ * @param maxSize            Numero massimo di connessioni fisiche gestite dal pool.
+ * @param opened             Numero di connessioni fisiche attualmente aperte.
+ * @param active             Numero di connessioni attualmente in uso da parte dei servizi.
+ * @param idle               Numero di connessioni aperte e disponibili nel pool.
+ * @param waiting            Numero di thread in attesa di una connessione libera.
+ * @param acquisitions       Numero totale di connessioni consegnate dall'avvio.
+ * @param timeouts           Numero totale di richieste scadute senza ottenere una connessione.
+ * @param totalWaitMillis    Tempo complessivo trascorso in attesa di una connessione, in millisecondi.
+ * @param maxWaitMillis      Attesa massima registrata per una singola richiesta, in millisecondi.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record PoolStats(int maxSize, int opened, int active, int idle, int waiting,
+                        long acquisitions, long timeouts, double totalWaitMillis, double maxWaitMillis) {
+
+    /**
+     * Calcola l'attesa media per ottenere una connessione.
+     *
+     * @return L'attesa media in millisecondi; <code>0</code> se non è ancora stata consegnata alcuna connessione.
+     */
+    public double averageWaitMillis() {
+        return acquisitions == 0 ? 0 : totalWaitMillis / acquisitions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolStats{max=%d, aperte=%d, attive=%d, libere=%d, in attesa=%d, consegnate=%d, timeout=%d, attesa media=%.3f ms, attesa max=%.3f ms}",
+                maxSize, opened, active, idle, waiting, acquisitions, timeouts, averageWaitMillis(), maxWaitMillis);
+    }
+}
@@ -0,0 +1,301 @@
+package it.uniupo.simnova.utils.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applica all'avvio le migrazioni dello schema non ancora eseguite sul database.
+ * <p>
+ * La versione corrente dello schema è memorizzata in <code>PRAGMA user_version</code>: ogni {@link Migration}
+ * con versione superiore viene eseguita in una propria transazione, che aggiorna anche la versione,
+ * quindi un database già distribuito viene portato allo schema di destinazione senza riapplicare
+ * le migrazioni precedenti. Dopo aver applicato almeno una migrazione vengono aggiornate le statistiche
+ * del pianificatore con <code>ANALYZE</code>.
+ * </p>
+ * <p>
+ * {@link #verifyQueryPlans(Connection)} controlla con <code>EXPLAIN QUERY PLAN</code> che le query dei servizi
+ * che filtrano per chiave usino un indice invece di scorrere l'intera tabella.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.2
+ */
+public final class SchemaMigrator {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le migrazioni applicate e i piani di esecuzione.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /**
+     * Le migrazioni dello schema, in ordine di versione crescente.
+     */
+    static final List<Migration> MIGRATIONS = List.of(
+            Migration.of(1, "Indici per le query dei servizi",
+                    // EsameReferto: la chiave primaria inizia con id_esame, le query filtrano per scenario o per file.
+                    "CREATE INDEX IF NOT EXISTS idx_esame_referto_scenario ON EsameReferto (id_scenario, id_esame)",
+                    "CREATE INDEX IF NOT EXISTS idx_esame_referto_media ON EsameReferto (media)",
+                    // Tempo: la chiave primaria inizia con id_tempo, le query filtrano per scenario.
+                    "CREATE INDEX IF NOT EXISTS idx_tempo_scenario ON Tempo (id_advanced_scenario, id_tempo)",
+                    // ParametriAggiuntivi: copre le ricerche per (tempo, scenario), per nome e le eliminazioni per scenario.
+                    "CREATE INDEX IF NOT EXISTS idx_parametri_scenario_tempo ON ParametriAggiuntivi (scenario_id, tempo_id, nome)",
+                    // Tabelle di associazione: ricerca inversa per scenario (indici coprenti).
+                    "CREATE INDEX IF NOT EXISTS idx_azione_scenario_scenario ON AzioneScenario (id_scenario, id_azione)",
+                    "CREATE INDEX IF NOT EXISTS idx_presidio_scenario_scenario ON PresidioScenario (id_scenario, id_presidio)",
+                    "CREATE INDEX IF NOT EXISTS idx_materiale_scenario_scenario ON MaterialeScenario (id_scenario, id_materiale)",
+                    "CREATE INDEX IF NOT EXISTS idx_accesso_venoso_accesso ON AccessoVenoso (accesso_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_accesso_arterioso_accesso ON AccessoArterioso (accesso_id)",
+                    // Cataloghi consultati per nome.
+                    "CREATE INDEX IF NOT EXISTS idx_azioni_chiave_nome ON AzioniChiave (nome)",
+                    "CREATE INDEX IF NOT EXISTS idx_presidi_nome ON Presidi (nome)"),
+            Migration.of(2, "Indici per l'ordinamento della ricerca scenari",
+                    // Stesse espressioni di ordinamento della ricerca paginata per chiave in ScenarioService.
+                    "CREATE INDEX IF NOT EXISTS idx_scenario_titolo ON Scenario (IFNULL(titolo, '') COLLATE NOCASE, id_scenario)",
+                    "CREATE INDEX IF NOT EXISTS idx_scenario_autori ON Scenario (IFNULL(autori, '') COLLATE NOCASE, id_scenario)",
+                    "CREATE INDEX IF NOT EXISTS idx_scenario_patologia ON Scenario (IFNULL(patologia, '') COLLATE NOCASE, id_scenario)",
+                    "CREATE INDEX IF NOT EXISTS idx_scenario_tipologia ON Scenario (IFNULL(tipologia_paziente, '') COLLATE NOCASE, id_scenario)"),
+            Migration.of(3, "Indice full-text dei contenuti degli scenari",
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS ScenarioFts USING fts5(" +
+                            "titolo, patologia, descrizione, briefing, obiettivo, sceneggiatura, azioni_chiave, " +
+                            "tokenize = 'unicode61 remove_diacritics 2')",
+                    // Coda degli scenari da reindicizzare: l'HTML va rimosso in Java, i trigger si limitano a segnalarli.
+                    "CREATE TABLE IF NOT EXISTS ScenarioFtsPending (id_scenario INTEGER PRIMARY KEY)",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_scenario_insert AFTER INSERT ON Scenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (NEW.id_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_scenario_update AFTER UPDATE OF titolo, patologia, descrizione, briefing, obiettivo ON Scenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (NEW.id_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_scenario_delete AFTER DELETE ON Scenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (OLD.id_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_sceneggiatura_insert AFTER INSERT ON PatientSimulatedScenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (NEW.id_patient_simulated_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_sceneggiatura_update AFTER UPDATE OF sceneggiatura ON PatientSimulatedScenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (NEW.id_patient_simulated_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_sceneggiatura_delete AFTER DELETE ON PatientSimulatedScenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (OLD.id_patient_simulated_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_azione_scenario_insert AFTER INSERT ON AzioneScenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (NEW.id_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_azione_scenario_delete AFTER DELETE ON AzioneScenario BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) VALUES (OLD.id_scenario); END",
+                    "CREATE TRIGGER IF NOT EXISTS trg_fts_azioni_chiave_update AFTER UPDATE OF nome ON AzioniChiave BEGIN " +
+                            "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) " +
+                            "SELECT id_scenario FROM AzioneScenario WHERE id_azione = NEW.id_azione; END",
+                    // Prima indicizzazione di tutti gli scenari esistenti.
+                    "INSERT OR IGNORE INTO ScenarioFtsPending (id_scenario) SELECT id_scenario FROM Scenario"),
+            Migration.of(4, "Sequenze degli ID assegnati dall'applicazione",
+                    // Una riga per ogni IdSequence, con il primo ID non ancora riservato.
+                    "CREATE TABLE IF NOT EXISTS IdSequence (nome TEXT PRIMARY KEY, prossimo INTEGER NOT NULL)",
+                    "INSERT OR IGNORE INTO IdSequence (nome, prossimo) " +
+                            "SELECT 'ParametriAggiuntivi', IFNULL(MAX(parametri_aggiuntivi_id), 0) + 1 FROM ParametriAggiuntivi"),
+            Migration.of(5, "Soglie di allarme personalizzate per scenario",
+                    // Colonne NULL: resta la soglia predefinita. La chiave primaria serve la lettura per scenario.
+                    "CREATE TABLE IF NOT EXISTS SogliaAllarme (id_scenario INTEGER NOT NULL, parametro TEXT NOT NULL, " +
+                            "critico_min REAL, attenzione_min REAL, attenzione_max REAL, critico_max REAL, isteresi REAL, " +
+                            "latch INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (id_scenario, parametro))")
+    );
+
+    /**
+     * Le query dei servizi che devono essere servite da un indice, usate da {@link #verifyQueryPlans(Connection)}.
+     */
+    static final List<String> INDEXED_QUERIES = List.of(
+            "SELECT * FROM Scenario WHERE id_scenario = ?",
+            "SELECT 1 FROM AdvancedScenario WHERE id_advanced_scenario = ?",
+            "SELECT 1 FROM PatientSimulatedScenario WHERE id_patient_simulated_scenario = ?",
+            "SELECT s.id_scenario FROM Scenario s LEFT JOIN AdvancedScenario a ON a.id_advanced_scenario = s.id_scenario " +
+                    "LEFT JOIN PatientSimulatedScenario p ON p.id_patient_simulated_scenario = s.id_scenario WHERE s.id_scenario = ?",
+            "SELECT s.id_scenario FROM Scenario s WHERE s.id_scenario < ? ORDER BY s.id_scenario DESC LIMIT ?",
+            "SELECT s.id_scenario FROM Scenario s JOIN ScenarioFts ON ScenarioFts.rowid = s.id_scenario WHERE ScenarioFts MATCH ?",
+            "SELECT titolo FROM ScenarioFts WHERE rowid = ?",
+            "SELECT s.id_scenario FROM Scenario s WHERE IFNULL(s.titolo, '') COLLATE NOCASE >= ? " +
+                    "AND (IFNULL(s.titolo, '') COLLATE NOCASE > ? OR s.id_scenario > ?) ORDER BY IFNULL(s.titolo, '') COLLATE NOCASE ASC, s.id_scenario ASC LIMIT ?",
+            "SELECT * FROM Tempo WHERE id_advanced_scenario = ? ORDER BY id_tempo",
+            "DELETE FROM Tempo WHERE id_advanced_scenario = ?",
+            "DELETE FROM Tempo WHERE id_tempo = ? AND id_advanced_scenario = ?",
+            "SELECT * FROM ParametriAggiuntivi WHERE tempo_id = ? AND scenario_id = ?",
+            "SELECT * FROM ParametriAggiuntivi WHERE scenario_id = ? ORDER BY tempo_id, nome",
+            "SELECT parametri_aggiuntivi_id FROM ParametriAggiuntivi WHERE tempo_id = ? AND scenario_id = ? AND nome = ?",
+            "DELETE FROM ParametriAggiuntivi WHERE scenario_id = ?",
+            "DELETE FROM ParametriAggiuntivi WHERE parametri_aggiuntivi_id = ? AND tempo_id = ? AND scenario_id = ?",
+            "UPDATE IdSequence SET prossimo = MAX(prossimo, ?) + ? WHERE nome = ?",
+            "SELECT * FROM EsameReferto WHERE id_scenario = ? ORDER BY id_esame",
+            "SELECT media FROM EsameReferto WHERE id_scenario = ? AND media IS NOT NULL",
+            "SELECT COUNT(*) FROM EsameReferto WHERE media = ?",
+            "SELECT ac.nome FROM AzioniChiave ac JOIN AzioneScenario a ON ac.id_azione = a.id_azione WHERE a.id_scenario = ?",
+            "SELECT p.nome FROM Presidi p JOIN PresidioScenario ps ON p.id_presidio = ps.id_presidio WHERE ps.id_scenario = ?",
+            "SELECT m.id_materiale, m.nome, m.descrizione FROM MaterialeScenario sm CROSS JOIN Materiale m ON m.id_materiale = sm.id_materiale WHERE sm.id_scenario = ?",
+            "DELETE FROM AzioneScenario WHERE id_scenario = ?",
+            "DELETE FROM PresidioScenario WHERE id_scenario = ?",
+            "DELETE FROM MaterialeScenario WHERE id_scenario = ?",
+            "SELECT id_azione FROM AzioniChiave WHERE nome = ?",
+            "SELECT id_presidio FROM Presidi WHERE nome = ?",
+            "SELECT a.* FROM Accesso a JOIN AccessoVenoso av ON a.id_accesso = av.accesso_id WHERE av.paziente_t0_id = ?",
+            "SELECT a.* FROM Accesso a JOIN AccessoArterioso aa ON a.id_accesso = aa.accesso_id WHERE aa.paziente_t0_id = ?",
+            "SELECT * FROM SogliaAllarme WHERE id_scenario = ?",
+            "DELETE FROM SogliaAllarme WHERE id_scenario = ?"
+    );
+
+    /**
+     * Costruttore privato: la classe espone solo metodi statici.
+     */
+    private SchemaMigrator() {
+        // Classe di utilità: non istanziabile.
+    }
+
+    /**
+     * Porta il database alla versione di schema più recente.
+     * Ogni migrazione viene applicata in una propria transazione: se fallisce, viene annullata
+     * e le migrazioni successive non vengono eseguite.
+     *
+     * @param conn Una connessione fisica al database, in autocommit.
+     * @return Il numero di migrazioni applicate.
+     * @throws SQLException se una migrazione fallisce.
+     */
+    public static int migrate(Connection conn) throws SQLException {
+        int current = readVersion(conn);
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() <= current) {
+                continue; // Già applicata.
+            }
+            apply(conn, migration);
+            current = migration.version();
+            applied++;
+        }
+
+        if (applied > 0) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE"); // Aggiorna le statistiche usate dal pianificatore per scegliere gli indici.
+            }
+            logger.info("Schema del database aggiornato alla versione {} ({} migrazioni applicate).", current, applied);
+        } else {
+            logger.info("Schema del database già aggiornato alla versione {}.", current);
+        }
+        return applied;
+    }
+
+    /**
+     * Applica una singola migrazione in una transazione, aggiornando la versione dello schema.
+     *
+     * @param conn      La connessione al database.
+     * @param migration La migrazione da applicare.
+     * @throws SQLException se una delle istruzioni fallisce; la transazione viene annullata.
+     */
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            try {
+                for (String sql : migration.statements()) {
+                    stmt.execute(sql);
+                }
+                // PRAGMA non accetta parametri: la versione è un intero definito nel codice.
+                stmt.execute("PRAGMA user_version = " + migration.version());
+                stmt.execute("COMMIT");
+                logger.info("Migrazione {} applicata: {}.", migration.version(), migration.description());
+            } catch (SQLException e) {
+                stmt.execute("ROLLBACK");
+                throw new SQLException("Migrazione " + migration.version() + " (" + migration.description() + ") fallita: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Legge la versione corrente dello schema.
+     *
+     * @param conn La connessione al database.
+     * @return La versione dello schema; <code>0</code> per un database mai migrato.
+     * @throws SQLException se la lettura fallisce.
+     */
+    public static int readVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Verifica con <code>EXPLAIN QUERY PLAN</code> che le query in {@link #INDEXED_QUERIES} siano servite da un indice.
+     * Una query è segnalata se il piano scorre un'intera tabella (<code>SCAN</code>, escluse le tabelle virtuali
+     * interrogate tramite il proprio indice) o ordina i risultati con un B-tree temporaneo.
+     * <p>
+     * Su tabelle di poche righe, con le statistiche di <code>ANALYZE</code> SQLite preferisce legittimamente
+     * la scansione: i piani vengono quindi valutati in una transazione che nasconde le statistiche
+     * e che viene sempre annullata, così da verificare che un indice utilizzabile esista.
+     * </p>
+     *
+     * @param conn Una connessione fisica al database, in autocommit.
+     * @return Le query non servite da un indice, associate alle righe del piano che le rendono tali; vuota se tutte lo sono.
+     * @throws SQLException se una query non può essere analizzata.
+     */
+    public static Map<String, List<String>> verifyQueryPlans(Connection conn) throws SQLException {
+        Map<String, List<String>> unindexed = new LinkedHashMap<>();
+        try (Statement control = conn.createStatement()) {
+            control.execute("BEGIN IMMEDIATE");
+            try {
+                if (hasStatistics(conn)) {
+                    control.execute("DELETE FROM sqlite_stat1");
+                    control.execute("ANALYZE sqlite_schema"); // Ricarica le statistiche (ora vuote) nel pianificatore.
+                }
+                for (String sql : INDEXED_QUERIES) {
+                    List<String> offending = explain(conn, sql);
+                    if (!offending.isEmpty()) {
+                        unindexed.put(sql, offending);
+                        logger.warn("Query non servita da un indice: {} -> {}", sql, offending);
+                    }
+                }
+            } finally {
+                control.execute("ROLLBACK");
+                if (hasStatistics(conn)) {
+                    control.execute("ANALYZE sqlite_schema"); // Ripristina le statistiche reali.
+                }
+            }
+        }
+        logger.info("Verifica dei piani di esecuzione: {} query su {} servite da un indice.",
+                INDEXED_QUERIES.size() - unindexed.size(), INDEXED_QUERIES.size());
+        return unindexed;
+    }
+
+    /**
+     * Restituisce le righe del piano di esecuzione che indicano una scansione completa o un ordinamento temporaneo.
+     *
+     * @param conn La connessione al database.
+     * @param sql  La query da analizzare.
+     * @return Le righe del piano problematiche; vuota se la query è servita da un indice.
+     * @throws SQLException se la query non può essere analizzata.
+     */
+    private static List<String> explain(Connection conn, String sql) throws SQLException {
+        List<String> offending = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                String detail = rs.getString("detail");
+                boolean fullScan = detail.startsWith("SCAN") && !detail.contains("VIRTUAL TABLE INDEX"); // FTS5 risponde tramite il proprio indice.
+                if (fullScan || detail.startsWith("USE TEMP B-TREE")) {
+                    offending.add(detail);
+                }
+            }
+        }
+        return offending;
+    }
+
+    /**
+     * Indica se il database contiene la tabella delle statistiche prodotta da <code>ANALYZE</code>.
+     *
+     * @param conn La connessione al database.
+     * @return <code>true</code> se la tabella <code>sqlite_stat1</code> esiste.
+     * @throws SQLException se la verifica fallisce.
+     */
+    private static boolean hasStatistics(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'")) {
+            return rs.next();
+        }
+    }
+}
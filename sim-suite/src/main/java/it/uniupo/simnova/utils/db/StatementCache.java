@@ -0,0 +1,324 @@
+package it.uniupo.simnova.utils.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU dei {@link PreparedStatement} di una singola connessione fisica, indicizzata per testo SQL.
+ * <p>
+ * I servizi preparano sempre le stesse query a testo fisso: con la cache SQLite compila e pianifica
+ * ciascuna query una sola volta per connessione. Al chiamante viene consegnato un <em>proxy</em> dello statement:
+ * la sua chiusura non chiude lo statement fisico, ma chiude l'eventuale {@link ResultSet} aperto,
+ * azzera i parametri e lo rende di nuovo disponibile.
+ * </p>
+ * <p>
+ * Se lo stesso SQL viene richiesto mentre lo statement in cache è ancora in uso (ad esempio in una
+ * chiamata annidata), viene preparato uno statement ordinario, non condiviso.
+ * La cache non è thread-safe: una connessione viene usata da un solo thread alla volta.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+final class StatementCache {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare gli errori di chiusura degli statement.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+    /**
+     * La connessione fisica su cui vengono preparati gli statement.
+     */
+    private final Connection physical;
+
+    /**
+     * Numero massimo di statement mantenuti in cache.
+     */
+    private final int capacity;
+
+    /**
+     * I contatori condivisi da tutte le cache dello stesso pool.
+     */
+    private final Metrics metrics;
+
+    /**
+     * Gli statement in cache, in ordine di accesso (dal meno al più recentemente usato).
+     */
+    private final LinkedHashMap<String, CachedStatement> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Crea una cache per la connessione indicata.
+     *
+     * @param physical La connessione fisica.
+     * @param capacity Il numero massimo di statement in cache; con <code>0</code> la cache è disattivata.
+     * @param metrics  I contatori su cui registrare successi, mancati e rimozioni.
+     */
+    StatementCache(Connection physical, int capacity, Metrics metrics) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Restituisce uno statement per il testo SQL indicato, riutilizzando quello in cache se libero.
+     *
+     * @param sql Il testo SQL dello statement.
+     * @return Un {@link PreparedStatement}; la sua chiusura lo restituisce alla cache.
+     * @throws SQLException se la preparazione dello statement fallisce.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        if (capacity <= 0) {
+            return physical.prepareStatement(sql);
+        }
+        CachedStatement entry = entries.get(sql);
+        if (entry != null && entry.statement.isClosed()) {
+            entries.remove(sql); // Lo statement fisico è stato chiuso dall'esterno: va ripreparato.
+            metrics.cached.decrement();
+            entry = null;
+        }
+        if (entry != null) {
+            if (entry.inUse) {
+                metrics.misses.increment();
+                return physical.prepareStatement(sql); // Uso annidato dello stesso SQL: statement non condiviso.
+            }
+            metrics.hits.increment();
+            return entry.checkout();
+        }
+
+        metrics.misses.increment();
+        entry = new CachedStatement(physical.prepareStatement(sql));
+        entries.put(sql, entry);
+        metrics.cached.increment();
+        evictIfNeeded();
+        return entry.checkout();
+    }
+
+    /**
+     * Rimuove gli statement meno recentemente usati finché la cache rientra nella capacità.
+     * Uno statement rimosso mentre è in uso viene chiuso fisicamente alla sua chiusura logica.
+     */
+    private void evictIfNeeded() {
+        Iterator<CachedStatement> iterator = entries.values().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next();
+            iterator.remove();
+            metrics.cached.decrement();
+            metrics.evictions.increment();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                eldest.closePhysical();
+            }
+        }
+    }
+
+    /**
+     * Restituisce alla cache tutti gli statement lasciati aperti dal chiamante.
+     * Invocato quando la connessione torna al pool.
+     */
+    void checkinAll() {
+        List<CachedStatement> inUse = new ArrayList<>();
+        for (CachedStatement entry : entries.values()) {
+            if (entry.inUse) {
+                inUse.add(entry);
+            }
+        }
+        inUse.forEach(CachedStatement::checkin);
+    }
+
+    /**
+     * Chiude fisicamente tutti gli statement in cache. Invocato prima della chiusura della connessione.
+     */
+    void close() {
+        for (CachedStatement entry : entries.values()) {
+            entry.closePhysical();
+            metrics.cached.decrement();
+        }
+        entries.clear();
+    }
+
+    /**
+     * Statement fisico in cache, con lo stato del suo utilizzo corrente.
+     */
+    private final class CachedStatement {
+
+        /**
+         * Lo statement fisico preparato.
+         */
+        private final PreparedStatement statement;
+
+        /**
+         * Indica se lo statement è attualmente consegnato a un chiamante.
+         */
+        private boolean inUse = false;
+
+        /**
+         * Indica se lo statement è stato rimosso dalla cache mentre era in uso.
+         */
+        private boolean evicted = false;
+
+        /**
+         * L'ultimo {@link ResultSet} prodotto durante l'utilizzo corrente, da chiudere alla restituzione.
+         */
+        private ResultSet lastResultSet;
+
+        /**
+         * Il proxy consegnato al chiamante corrente.
+         */
+        private PreparedStatement handle;
+
+        /**
+         * Crea un elemento della cache per lo statement indicato.
+         *
+         * @param statement Lo statement fisico.
+         */
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        /**
+         * Consegna lo statement a un chiamante creando un nuovo proxy.
+         *
+         * @return Il proxy dello statement.
+         */
+        private PreparedStatement checkout() {
+            inUse = true;
+            handle = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> invoke(proxy, method.getName(), method, args));
+            return handle;
+        }
+
+        /**
+         * Gestisce le invocazioni sul proxy consegnato al chiamante.
+         *
+         * @param proxy  Il proxy su cui è avvenuta l'invocazione.
+         * @param name   Il nome del metodo invocato.
+         * @param method Il metodo invocato.
+         * @param args   Gli argomenti dell'invocazione.
+         * @return Il risultato dell'invocazione.
+         * @throws Throwable l'eccezione lanciata dallo statement fisico.
+         */
+        private Object invoke(Object proxy, String name, Method method, Object[] args) throws Throwable {
+            boolean current = inUse && handle == proxy;
+            switch (name) {
+                case "close" -> {
+                    if (current) {
+                        checkin();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return !current;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "CachedStatement[" + statement + "]";
+                }
+                default -> {
+                    if (!current) {
+                        throw new SQLException("Lo statement è già stato chiuso.");
+                    }
+                    try {
+                        Object result = method.invoke(statement, args);
+                        if (result instanceof ResultSet rs) {
+                            lastResultSet = rs;
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Restituisce lo statement alla cache: chiude il result set aperto e azzera parametri e batch.
+         */
+        private void checkin() {
+            inUse = false;
+            handle = null;
+            try {
+                if (lastResultSet != null && !lastResultSet.isClosed()) {
+                    lastResultSet.close(); // Reimposta lo statement e rilascia lo snapshot di lettura.
+                }
+                lastResultSet = null;
+                if (evicted) {
+                    closePhysical();
+                } else {
+                    statement.clearParameters();
+                    statement.clearBatch();
+                }
+            } catch (SQLException e) {
+                logger.warn("Statement in cache non riutilizzabile, verrà chiuso: {}", e.getMessage());
+                closePhysical();
+            }
+        }
+
+        /**
+         * Chiude definitivamente lo statement fisico.
+         */
+        private void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.warn("Errore durante la chiusura di uno statement in cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Contatori condivisi tra le cache delle connessioni di uno stesso pool.
+     */
+    static final class Metrics {
+
+        /**
+         * Richieste servite da uno statement già in cache.
+         */
+        private final LongAdder hits = new LongAdder();
+
+        /**
+         * Richieste che hanno richiesto la preparazione di un nuovo statement.
+         */
+        private final LongAdder misses = new LongAdder();
+
+        /**
+         * Statement rimossi per superamento della capacità.
+         */
+        private final LongAdder evictions = new LongAdder();
+
+        /**
+         * Statement attualmente in cache, sommati su tutte le connessioni.
+         */
+        private final LongAdder cached = new LongAdder();
+
+        /**
+         * Restituisce un'istantanea dei contatori.
+         *
+         * @param capacity La capacità configurata per ciascuna connessione.
+         * @return Le {@link StatementCacheStats} correnti.
+         */
+        StatementCacheStats snapshot(int capacity) {
+            return new StatementCacheStats(capacity, cached.sum(), hits.sum(), misses.sum(), evictions.sum());
+        }
+    }
+}
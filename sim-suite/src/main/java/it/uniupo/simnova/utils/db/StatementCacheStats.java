@@ -0,0 +1,32 @@
+package it.uniupo.simnova.utils.db;
+
+/**
+ * Istantanea immutabile degli indicatori della cache dei prepared statement,
+ * aggregati su tutte le connessioni del pool e sulla connessione di scrittura.
+ *
+ * @param capacityPerConnection Numero massimo di statement mantenuti in cache per ciascuna connessione.
+ * @param cached                Numero di statement attualmente in cache.
+ * @param hits                  Richieste servite riutilizzando uno statement già preparato.
+ * @param misses                Richieste che hanno richiesto la preparazione di un nuovo statement.
+ * @param evictions             Statement rimossi perché la cache aveva raggiunto la capacità.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record StatementCacheStats(int capacityPerConnection, long cached, long hits, long misses, long evictions) {
+
+    /**
+     * Calcola la percentuale di richieste servite dalla cache.
+     *
+     * @return Il tasso di successo, tra <code>0</code> e <code>1</code>; <code>0</code> se non ci sono ancora richieste.
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StatementCacheStats{capacità=%d, in cache=%d, successi=%d, mancati=%d, rimossi=%d, tasso=%.1f%%}",
+                capacityPerConnection, cached, hits, misses, evictions, hitRate() * 100);
+    }
+}
@@ -0,0 +1,287 @@
+package it.uniupo.simnova.utils.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Buffer di scrittura differita (<em>write-behind</em>) per le modifiche puntuali dei campi.
+ * <p>
+ * Gli editor in linea salvano un campo a ogni conferma: le modifiche vengono trattenute per una breve
+ * finestra, indicizzate per {@link WriteBehindKey}, e una modifica successiva alla stessa chiave sostituisce
+ * quella in attesa. Allo scadere della finestra le modifiche rimaste vengono accodate alla {@link WriteQueue},
+ * che le conferma insieme in un'unica transazione.
+ * </p>
+ * <p>
+ * {@link #flush(int)} e {@link #flush()} accodano subito le modifiche in attesa. Poiché la coda di scrittura
+ * è FIFO, una scrittura accodata dopo il flush viene eseguita dopo le modifiche differite; il futuro restituito
+ * si completa quando queste sono confermate, insieme a quelle già consegnate alla coda da un flush precedente
+ * (ad esempio allo scadere della finestra) e non ancora confermate. Il futuro non fallisce mai: le scritture non riuscite vengono
+ * registrate nel log e conteggiate nelle {@link WriteBehindStats}. Se il flush è invocato da un task in esecuzione
+ * sullo scrittore, le modifiche vengono eseguite nella sua transazione e il futuro restituito è già completato:
+ * attenderne la conferma bloccherebbe lo scrittore.
+ * </p>
+ * <p>
+ * Chi deve sapere se la propria modifica è stata salvata usa il futuro restituito da
+ * {@link #put(WriteBehindKey, WriteTask)}: fallisce se la scrittura che la contiene non va a buon fine.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.3
+ */
+public final class WriteBehindBuffer implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le scritture differite fallite.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    /**
+     * La coda a cui vengono consegnate le modifiche allo scadere della finestra.
+     */
+    private final WriteQueue queue;
+
+    /**
+     * Durata della finestra di accorpamento, in millisecondi, a partire dalla prima modifica in attesa.
+     */
+    private final long delayMillis;
+
+    /**
+     * Lo scheduler che esegue il flush allo scadere della finestra.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Le modifiche in attesa, nell'ordine della prima modifica di ciascuna chiave. Protetta dal monitor del buffer.
+     */
+    private final Map<WriteBehindKey, PendingEdit> pending = new LinkedHashMap<>();
+
+    /**
+     * Le scritture consegnate alla coda e non ancora confermate, con la chiave della modifica. Protetta dal monitor del buffer.
+     */
+    private final Map<CompletableFuture<Void>, WriteBehindKey> inFlight = new HashMap<>();
+
+    /**
+     * Numero di modifiche ricevute.
+     */
+    private final AtomicLong buffered = new AtomicLong();
+
+    /**
+     * Numero di modifiche sostituite prima della scrittura.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Numero di modifiche scritte con successo.
+     */
+    private final AtomicLong flushed = new AtomicLong();
+
+    /**
+     * Numero di modifiche la cui scrittura è fallita.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Il flush programmato per la finestra corrente; <code>null</code> se non ci sono modifiche in attesa.
+     */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Indica se il buffer è stato chiuso: le modifiche successive vengono accodate direttamente.
+     */
+    private boolean closed = false;
+
+    /**
+     * Crea un buffer che consegna le modifiche alla coda indicata.
+     *
+     * @param queue       La coda di scrittura.
+     * @param delayMillis La durata della finestra di accorpamento, in millisecondi.
+     */
+    public WriteBehindBuffer(WriteQueue queue, long delayMillis) {
+        this.queue = queue;
+        this.delayMillis = delayMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqlite-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registra una modifica differita, sostituendo quella in attesa con la stessa chiave.
+     *
+     * @param key  La chiave del dato modificato.
+     * @param task Il {@link WriteTask} che scrive il nuovo valore; viene eseguito dallo scrittore singolo.
+     * @return Un futuro completato quando la modifica, o quella che l'ha sostituita, è confermata;
+     * fallisce con l'errore della scrittura se questa non va a buon fine.
+     */
+    public synchronized CompletableFuture<Void> put(WriteBehindKey key, WriteTask<?> task) {
+        buffered.incrementAndGet();
+        if (closed) {
+            CompletableFuture<Void> outcome = new CompletableFuture<>();
+            track(key, queue.submit(task), outcome); // Dopo la chiusura non c'è più una finestra da attendere.
+            return outcome;
+        }
+        PendingEdit previous = pending.get(key);
+        // La modifica sostituita condivide l'esito di quella che la sostituisce: è lei a scriverne il valore.
+        CompletableFuture<Void> outcome = previous != null ? previous.outcome() : new CompletableFuture<>();
+        if (previous != null) {
+            coalesced.incrementAndGet();
+        }
+        pending.put(key, new PendingEdit(task, outcome));
+        if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flushWindow, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        return outcome;
+    }
+
+    /**
+     * Accoda subito tutte le modifiche in attesa.
+     *
+     * @return Un futuro completato quando le modifiche accodate sono state confermate o sono fallite.
+     */
+    public CompletableFuture<Void> flush() {
+        return flushMatching(key -> true);
+    }
+
+    /**
+     * Accoda subito le modifiche in attesa di uno scenario, lasciando le altre nella finestra corrente.
+     *
+     * @param scenarioId L'ID dello scenario.
+     * @return Un futuro completato quando le modifiche accodate sono state confermate o sono fallite.
+     */
+    public CompletableFuture<Void> flush(int scenarioId) {
+        return flushMatching(key -> key.scenarioId() == scenarioId);
+    }
+
+    /**
+     * Restituisce gli indicatori correnti del buffer.
+     *
+     * @return Un'istantanea {@link WriteBehindStats}.
+     */
+    public WriteBehindStats getStats() {
+        int waiting;
+        synchronized (this) {
+            waiting = pending.size();
+        }
+        return new WriteBehindStats(buffered.get(), coalesced.get(), flushed.get(), failed.get(), waiting);
+    }
+
+    /**
+     * Scrive le modifiche in attesa, ne attende la conferma e arresta lo scheduler.
+     * Da invocare prima della chiusura della {@link WriteQueue}.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush().join();
+        scheduler.shutdownNow();
+        logger.info("Buffer di scrittura differita chiuso: {}", getStats());
+    }
+
+    /**
+     * Eseguito dallo scheduler allo scadere della finestra.
+     */
+    private void flushWindow() {
+        synchronized (this) {
+            scheduledFlush = null;
+        }
+        flush();
+    }
+
+    /**
+     * Rimuove dal buffer le modifiche selezionate e le accoda alla coda di scrittura.
+     * L'accodamento avviene sotto il monitor, così l'ordine tra flush concorrenti coincide con quello nella coda.
+     * Il futuro restituito attende anche le scritture selezionate già accodate e non ancora confermate: senza di esse
+     * una lettura potrebbe trovare il buffer vuoto mentre la modifica è ancora nella coda, e leggere il valore precedente.
+     *
+     * @param selector Le chiavi da scrivere.
+     * @return Un futuro completato quando le modifiche accodate sono state confermate o sono fallite.
+     */
+    private synchronized CompletableFuture<Void> flushMatching(Predicate<WriteBehindKey> selector) {
+        List<CompletableFuture<?>> written = new ArrayList<>();
+        for (Map.Entry<CompletableFuture<Void>, WriteBehindKey> entry : inFlight.entrySet()) {
+            if (selector.test(entry.getValue())) {
+                written.add(entry.getKey());
+            }
+        }
+        Iterator<Map.Entry<WriteBehindKey, PendingEdit>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<WriteBehindKey, PendingEdit> entry = iterator.next();
+            if (selector.test(entry.getKey())) {
+                iterator.remove();
+                PendingEdit edit = entry.getValue();
+                CompletableFuture<Void> write = track(entry.getKey(), queue.submit(edit.task()), edit.outcome());
+                written.add(write);
+                if (!write.isDone()) { // Già confermata se eseguita da un task sullo scrittore.
+                    inFlight.put(write, entry.getKey());
+                    write.whenComplete((ignored, error) -> forget(write));
+                }
+            }
+        }
+        if (pending.isEmpty() && scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (queue.inWriterTransaction()) {
+            return CompletableFuture.completedFuture(null); // Eseguite nella transazione del task chiamante.
+        }
+        return CompletableFuture.allOf(written.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Rimuove una scrittura confermata, o fallita, da quelle in corso.
+     *
+     * @param write Il futuro della scrittura.
+     */
+    private synchronized void forget(CompletableFuture<Void> write) {
+        inFlight.remove(write);
+    }
+
+    /**
+     * Aggiorna gli indicatori all'esito di una scrittura differita e lo comunica a chi ha registrato la modifica.
+     *
+     * @param key     La chiave della modifica.
+     * @param result  Il futuro restituito dalla coda di scrittura.
+     * @param outcome Il futuro restituito da {@link #put(WriteBehindKey, WriteTask)}, da completare con l'esito.
+     * @return Un futuro che si completa normalmente con l'esito della scrittura.
+     */
+    private CompletableFuture<Void> track(WriteBehindKey key, CompletableFuture<?> result, CompletableFuture<Void> outcome) {
+        return result.handle((value, error) -> {
+            if (error == null) {
+                flushed.incrementAndGet();
+                outcome.complete(null);
+            } else {
+                failed.incrementAndGet();
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                logger.error("Scrittura differita fallita per {}: {}", key, cause.getMessage(), cause);
+                outcome.completeExceptionally(cause);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Modifica in attesa: il task che scrive l'ultimo valore e l'esito condiviso dalle modifiche accorpate.
+     *
+     * @param task    Il task da accodare allo scadere della finestra.
+     * @param outcome Il futuro restituito ai chiamanti di {@link #put(WriteBehindKey, WriteTask)}.
+     */
+    private record PendingEdit(WriteTask<?> task, CompletableFuture<Void> outcome) {
+    }
+}
@@ -0,0 +1,14 @@
+package it.uniupo.simnova.utils.db;
+
+/**
+ * Chiave di una modifica differita nel {@link WriteBehindBuffer}: due modifiche con la stessa chiave
+ * scrivono lo stesso dato, quindi solo l'ultima deve raggiungere il database.
+ *
+ * @param scenarioId L'ID dello scenario modificato.
+ * @param tempoId    L'ID del tempo modificato; <code>0</code> per i campi dello scenario e per il paziente T0.
+ * @param field      Il dato modificato, qualificato con la tabella (es. <code>"Tempo.Azione"</code>).
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record WriteBehindKey(int scenarioId, int tempoId, String field) {
+}
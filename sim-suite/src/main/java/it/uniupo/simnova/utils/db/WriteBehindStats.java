@@ -0,0 +1,30 @@
+package it.uniupo.simnova.utils.db;
+
+/**
+ * Istantanea immutabile degli indicatori del {@link WriteBehindBuffer}.
+ *
+ * @param buffered  Numero di modifiche ricevute dal buffer.
+ * @param coalesced Numero di modifiche sostituite da una successiva con la stessa chiave prima della scrittura.
+ * @param flushed   Numero di modifiche scritte con successo nel database.
+ * @param failed    Numero di modifiche la cui scrittura è fallita.
+ * @param pending   Numero di modifiche in attesa di essere scritte.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record WriteBehindStats(long buffered, long coalesced, long flushed, long failed, int pending) {
+
+    /**
+     * Calcola la quota di modifiche che non hanno richiesto una scrittura perché superate da una successiva.
+     *
+     * @return La quota di modifiche accorpate, tra <code>0</code> e <code>1</code>; <code>0</code> se il buffer non ha ricevuto modifiche.
+     */
+    public double coalescedRatio() {
+        return buffered == 0 ? 0 : (double) coalesced / buffered;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehindStats{ricevute=%d, accorpate=%d (%.1f%%), scritte=%d, fallite=%d, in attesa=%d}",
+                buffered, coalesced, coalescedRatio() * 100, flushed, failed, pending);
+    }
+}
@@ -0,0 +1,535 @@
+package it.uniupo.simnova.utils.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coda di scrittura a scrittore singolo per il database SQLite.
+ * <p>
+ * SQLite ammette un solo scrittore alla volta: invece di lasciare che ogni servizio apra la propria
+ * transazione (con conseguenti errori <code>SQLITE_BUSY</code> e un fsync per ogni modifica), tutte le
+ * mutazioni vengono accodate ed eseguite da un unico thread dedicato, su un'unica connessione.
+ * </p>
+ * <p>
+ * I task che arrivano insieme vengono raggruppati in una sola transazione (<em>group commit</em>):
+ * ciascun task gira dentro un proprio <code>SAVEPOINT</code>, quindi un task che fallisce annulla solo
+ * le proprie modifiche. I {@link CompletableFuture} restituiti ai chiamanti vengono completati solo
+ * dopo il <code>COMMIT</code>, cioè quando i dati sono effettivamente persistiti; vale anche per i task
+ * annidati, accodati da un altro task e quindi eseguiti nella stessa transazione.
+ * </p>
+ * <p>
+ * Un task non deve quindi attendere il future di un task annidato, che si completerebbe solo dopo la fine
+ * del task stesso: per ottenere subito il risultato di una scrittura annidata si usa {@link #write(WriteTask)},
+ * che sullo scrittore la esegue direttamente in un proprio savepoint.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.3
+ */
+public final class WriteQueue implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare errori di commit e di esecuzione dei task.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WriteQueue.class);
+
+    /**
+     * Numero massimo di task raggruppati in un'unica transazione.
+     */
+    private static final int MAX_BATCH_SIZE = 128;
+
+    /**
+     * Metodi della connessione riservati alla coda: la transazione è gestita esclusivamente dallo scrittore.
+     */
+    private static final Set<String> RESERVED_METHODS = Set.of(
+            "commit", "rollback", "setAutoCommit", "setSavepoint", "releaseSavepoint", "abort");
+
+    /**
+     * Elemento sentinella che segnala allo scrittore di terminare dopo aver smaltito la coda.
+     */
+    private final PendingWrite<Void> poisonPill = new PendingWrite<>(null);
+
+    /**
+     * Il pool da cui viene aperta la connessione fisica dedicata alla scrittura.
+     */
+    private final ConnectionPool pool;
+
+    /**
+     * I task in attesa di essere eseguiti dallo scrittore.
+     */
+    private final BlockingQueue<PendingWrite<?>> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Il thread scrittore, unico proprietario della connessione di scrittura.
+     */
+    private final Thread writer;
+
+    /**
+     * Lock condiviso da {@link #submit(WriteTask)} e {@link #close()}: nessun task può essere accodato
+     * dopo la sentinella, quindi lo scrittore li esegue tutti prima di terminare.
+     */
+    private final Object submitLock = new Object();
+
+    /**
+     * Numero di transazioni confermate.
+     */
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Numero di task eseguiti.
+     */
+    private final AtomicLong tasks = new AtomicLong();
+
+    /**
+     * Numero di task falliti.
+     */
+    private final AtomicLong failedTasks = new AtomicLong();
+
+    /**
+     * Dimensione massima di gruppo osservata.
+     */
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+
+    /**
+     * Tempo complessivo speso nei commit, in nanosecondi.
+     */
+    private final AtomicLong commitNanos = new AtomicLong();
+
+    /**
+     * La connessione fisica di scrittura; aperta in modo pigro dal thread scrittore.
+     */
+    private Connection connection;
+
+    /**
+     * La cache dei prepared statement della connessione di scrittura.
+     */
+    private StatementCache statements;
+
+    /**
+     * Il proxy della connessione consegnato ai task, che impedisce di gestire la transazione.
+     */
+    private Connection guarded;
+
+    /**
+     * Indica se lo scrittore si trova all'interno di una transazione (accesso riservato al thread scrittore).
+     */
+    private boolean inTransaction = false;
+
+    /**
+     * Contatore per generare nomi univoci dei savepoint (accesso riservato al thread scrittore).
+     */
+    private long savepointSequence = 0;
+
+    /**
+     * I task della transazione corrente, compresi quelli annidati, da completare dopo il <code>COMMIT</code>
+     * (accesso riservato al thread scrittore).
+     */
+    private List<PendingWrite<?>> transactionTasks;
+
+    /**
+     * Indica se la coda è stata chiusa e non accetta più task.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Crea e avvia la coda di scrittura.
+     *
+     * @param pool Il {@link ConnectionPool} usato per aprire la connessione di scrittura dedicata.
+     */
+    public WriteQueue(ConnectionPool pool) {
+        this.pool = pool;
+        this.writer = Thread.ofPlatform().name("sqlite-writer").daemon(true).unstarted(this::runLoop);
+        this.writer.start();
+    }
+
+    /**
+     * Accoda un task di scrittura.
+     * Se invocato dallo stesso thread scrittore (un task che richiama un altro metodo di scrittura),
+     * il task viene eseguito immediatamente all'interno della transazione corrente e il suo future viene
+     * completato insieme a quelli del gruppo, dopo il <code>COMMIT</code>: il task chiamante non deve
+     * attenderlo, perché bloccherebbe lo scrittore. In quel caso si usa {@link #write(WriteTask)}.
+     *
+     * @param task Il {@link WriteTask} da eseguire.
+     * @param <T>  Il tipo del risultato.
+     * @return Un {@link CompletableFuture} completato con il risultato dopo il commit,
+     * o eccezionalmente se il task o il commit falliscono.
+     */
+    public <T> CompletableFuture<T> submit(WriteTask<T> task) {
+        PendingWrite<T> pending = new PendingWrite<>(task);
+        if (Thread.currentThread() == writer) {
+            if (inTransaction) {
+                transactionTasks.add(pending); // Completato dopo il COMMIT, o fallito con il gruppo.
+                runInSavepoint(pending);
+            } else {
+                processBatch(List.of(pending));
+            }
+            return pending.future;
+        }
+        synchronized (submitLock) {
+            if (closed) {
+                pending.future.completeExceptionally(new SQLException("La coda di scrittura è stata chiusa."));
+                return pending.future;
+            }
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Esegue un task di scrittura e ne restituisce il risultato.
+     * Da un thread qualsiasi accoda il task e ne attende il commit. Dallo scrittore, all'interno di una
+     * transazione (un task che richiama un altro metodo di scrittura), esegue il task subito in un proprio
+     * savepoint e ne restituisce il risultato senza attendere: le modifiche vengono confermate o annullate
+     * insieme a quelle del task chiamante.
+     *
+     * @param task Il {@link WriteTask} da eseguire.
+     * @param <T>  Il tipo del risultato.
+     * @return Il risultato del task.
+     * @throws SQLException se il task o il commit falliscono; le modifiche del task vengono annullate.
+     */
+    public <T> T write(WriteTask<T> task) throws SQLException {
+        if (inWriterTransaction()) {
+            PendingWrite<T> pending = new PendingWrite<>(task);
+            runInSavepoint(pending); // Non entra in transactionTasks: il risultato viene restituito qui.
+            if (pending.error != null) {
+                throw rethrow(pending.error);
+            }
+            return pending.result;
+        }
+        try {
+            return submit(task).join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Indica se il thread corrente è lo scrittore all'interno di una transazione, cioè un task in esecuzione.
+     * In questo caso i future restituiti da {@link #submit(WriteTask)} si completano solo dopo la fine del task.
+     *
+     * @return <code>true</code> se il chiamante è un task in esecuzione sullo scrittore.
+     */
+    public boolean inWriterTransaction() {
+        return Thread.currentThread() == writer && inTransaction;
+    }
+
+    /**
+     * Indica se la connessione è quella consegnata dallo scrittore al task in esecuzione nel thread corrente.
+     * Una connessione del pool o aperta a parte non lo è, anche se usata all'interno di un task.
+     *
+     * @param conn La connessione da verificare.
+     * @return <code>true</code> se il chiamante è un task in esecuzione sullo scrittore e usa la sua connessione.
+     */
+    public boolean isWriterConnection(Connection conn) {
+        return inWriterTransaction() && conn != null && conn == guarded;
+    }
+
+    /**
+     * Ciclo principale dello scrittore: attende il primo task, raccoglie quelli già in coda
+     * e li esegue in un'unica transazione.
+     */
+    private void runLoop() {
+        boolean stop = false;
+        while (!stop) {
+            List<PendingWrite<?>> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // Lo scrittore termina solo tramite la sentinella.
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            if (batch.remove(poisonPill)) {
+                stop = true;
+                queue.drainTo(batch); // Smaltisce anche i task arrivati prima della chiusura.
+            }
+            if (!batch.isEmpty()) {
+                processBatch(batch);
+            }
+        }
+        closeConnection();
+    }
+
+    /**
+     * Esegue un gruppo di task in un'unica transazione e completa i relativi future dopo il commit.
+     *
+     * @param batch I task da eseguire.
+     */
+    private void processBatch(List<PendingWrite<?>> batch) {
+        List<PendingWrite<?>> members = new ArrayList<>(batch);
+        transactionTasks = members;
+        try {
+            ensureConnection();
+            execute("BEGIN IMMEDIATE"); // Acquisisce subito il lock di scrittura.
+            inTransaction = true;
+            for (PendingWrite<?> pending : batch) {
+                runInSavepoint(pending);
+            }
+            long start = System.nanoTime();
+            execute("COMMIT");
+            commitNanos.addAndGet(System.nanoTime() - start);
+            inTransaction = false;
+            transactionTasks = null; // I callback dei future possono aprire una nuova transazione.
+
+            batches.incrementAndGet();
+            maxBatchSize.accumulateAndGet(members.size(), Math::max);
+            members.forEach(PendingWrite::complete);
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Transazione di scrittura di {} task annullata: {}", members.size(), e.getMessage(), e);
+            rollbackQuietly();
+            transactionTasks = null;
+            for (PendingWrite<?> pending : members) {
+                if (pending.error == null) {
+                    failedTasks.incrementAndGet(); // I task già falliti nel proprio savepoint sono stati contati lì.
+                }
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Esegue un singolo task all'interno di un savepoint dedicato.
+     * Se il task lancia un'eccezione, le sue modifiche vengono annullate e l'errore memorizzato;
+     * lo stesso errore viene assegnato ai task annidati, le cui modifiche sono annullate con quelle del task.
+     *
+     * @param pending Il task da eseguire.
+     */
+    private void runInSavepoint(PendingWrite<?> pending) {
+        String savepoint = "w" + (++savepointSequence);
+        int firstNested = transactionTasks.size();
+        try {
+            execute("SAVEPOINT " + savepoint);
+            try {
+                pending.run(guarded);
+            } catch (Throwable t) {
+                pending.error = t;
+                failedTasks.incrementAndGet();
+                for (PendingWrite<?> nested : transactionTasks.subList(firstNested, transactionTasks.size())) {
+                    if (nested.error == null) {
+                        nested.error = t;
+                        failedTasks.incrementAndGet();
+                    }
+                }
+                statements.checkinAll(); // Il rollback richiede che nessuno statement sia ancora in esecuzione.
+                execute("ROLLBACK TO " + savepoint);
+            }
+            statements.checkinAll(); // Recupera gli statement che il task non ha chiuso.
+            execute("RELEASE " + savepoint);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Gestione del savepoint " + savepoint + " fallita: " + e.getMessage(), e);
+        } finally {
+            tasks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rilancia l'errore di un task come {@link SQLException} o come eccezione non controllata.
+     *
+     * @param error L'errore del task.
+     * @return Mai: il metodo lancia sempre; il tipo permette di scrivere <code>throw rethrow(error)</code>.
+     * @throws SQLException se l'errore è una {@link SQLException} o un'eccezione controllata.
+     */
+    private static SQLException rethrow(Throwable error) throws SQLException {
+        if (error instanceof SQLException sqlException) {
+            throw sqlException;
+        }
+        if (error instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (error instanceof Error fatal) {
+            throw fatal;
+        }
+        throw new SQLException("Scrittura fallita: " + error.getMessage(), error);
+    }
+
+    /**
+     * Apre la connessione di scrittura, se non già aperta.
+     *
+     * @throws SQLException se l'apertura fallisce.
+     */
+    private void ensureConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = pool.openPhysicalConnection();
+            statements = pool.newStatementCache(connection);
+            guarded = guard(connection, statements);
+        }
+    }
+
+    /**
+     * Esegue un'istruzione SQL di controllo della transazione sulla connessione di scrittura.
+     *
+     * @param sql L'istruzione da eseguire.
+     * @throws SQLException se l'esecuzione fallisce.
+     */
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Annulla la transazione corrente ignorando eventuali errori (usato nei percorsi di errore).
+     */
+    private void rollbackQuietly() {
+        if (inTransaction && connection != null) {
+            try {
+                execute("ROLLBACK");
+            } catch (SQLException e) {
+                logger.warn("Rollback della transazione di scrittura fallito: {}", e.getMessage());
+            }
+        }
+        inTransaction = false;
+    }
+
+    /**
+     * Chiude la connessione di scrittura al termine dello scrittore.
+     */
+    private void closeConnection() {
+        if (connection != null) {
+            statements.close();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Errore durante la chiusura della connessione di scrittura: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Avvolge la connessione di scrittura in un proxy che rende la chiusura un'operazione nulla,
+     * serve <code>prepareStatement(String)</code> dalla cache e vieta ai task di gestire la transazione.
+     *
+     * @param physical   La connessione fisica di scrittura.
+     * @param statements La cache degli statement della connessione.
+     * @return Il proxy da consegnare ai task.
+     */
+    private static Connection guard(Connection physical, StatementCache statements) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("close")) {
+                        return null; // La connessione appartiene allo scrittore.
+                    }
+                    if (name.equals("getAutoCommit")) {
+                        return false; // Il task si trova sempre all'interno di una transazione.
+                    }
+                    if (RESERVED_METHODS.contains(name)) {
+                        throw new SQLException("Operazione '" + name + "' non consentita: la transazione è gestita dalla coda di scrittura.");
+                    }
+                    if (name.equals("prepareStatement") && args.length == 1) {
+                        return statements.prepare((String) args[0]);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Restituisce un'istantanea degli indicatori della coda.
+     *
+     * @return Le {@link WriteStats} correnti.
+     */
+    public WriteStats getStats() {
+        return new WriteStats(batches.get(), tasks.get(), failedTasks.get(), maxBatchSize.get(),
+                queue.size(), commitNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * Chiude la coda: i task già accodati vengono eseguiti, quelli successivi vengono rifiutati.
+     * Attende la terminazione dello scrittore per un tempo limitato.
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(poisonPill); // Sotto il lock: nessun task può finire in coda dopo la sentinella.
+        }
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Coda di scrittura SQLite chiusa. {}", getStats());
+    }
+
+    /**
+     * Task accodato insieme al future da completare e all'esito della sua esecuzione.
+     *
+     * @param <T> Il tipo del risultato del task.
+     */
+    private static final class PendingWrite<T> {
+
+        /**
+         * Il task da eseguire.
+         */
+        private final WriteTask<T> task;
+
+        /**
+         * Il future consegnato al chiamante.
+         */
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * Il risultato prodotto dal task.
+         */
+        private T result;
+
+        /**
+         * L'eventuale errore lanciato dal task.
+         */
+        private Throwable error;
+
+        /**
+         * Crea un nuovo elemento della coda.
+         *
+         * @param task Il task da eseguire.
+         */
+        private PendingWrite(WriteTask<T> task) {
+            this.task = task;
+        }
+
+        /**
+         * Esegue il task sulla connessione indicata memorizzandone il risultato.
+         *
+         * @param conn La connessione di scrittura.
+         * @throws SQLException se il task fallisce.
+         */
+        private void run(Connection conn) throws SQLException {
+            result = task.execute(conn);
+        }
+
+        /**
+         * Completa il future con il risultato o con l'errore del task.
+         */
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package it.uniupo.simnova.utils.db;
+
+/**
+ * Istantanea immutabile degli indicatori della {@link WriteQueue}.
+ *
+ * @param batches          Numero di transazioni (group commit) confermate.
+ * @param tasks            Numero totale di task di scrittura eseguiti.
+ * @param failedTasks      Numero di task annullati perché hanno lanciato un'eccezione o il commit è fallito.
+ * @param maxBatchSize     Numero massimo di task raggruppati in un'unica transazione.
+ * @param pending          Numero di task in coda in attesa di esecuzione.
+ * @param totalCommitMillis Tempo complessivo speso nei commit, in millisecondi.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record WriteStats(long batches, long tasks, long failedTasks, int maxBatchSize, int pending, double totalCommitMillis) {
+
+    /**
+     * Calcola il numero medio di task raggruppati per transazione.
+     *
+     * @return La dimensione media dei gruppi; <code>0</code> se non è stato ancora eseguito alcun commit.
+     */
+    public double averageBatchSize() {
+        return batches == 0 ? 0 : (double) tasks / batches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteStats{transazioni=%d, task=%d, falliti=%d, gruppo medio=%.2f, gruppo max=%d, in coda=%d, commit totale=%.3f ms}",
+                batches, tasks, failedTasks, averageBatchSize(), maxBatchSize, pending, totalCommitMillis);
+    }
+}
@@ -0,0 +1,30 @@
+package it.uniupo.simnova.utils.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Unità di lavoro in scrittura eseguita dalla {@link WriteQueue} sull'unica connessione di scrittura.
+ * <p>
+ * Il task riceve una connessione già inserita in una transazione: non deve chiamare
+ * <code>commit()</code>, <code>rollback()</code>, <code>setAutoCommit()</code> né chiudere la connessione.
+ * Per annullare le proprie modifiche è sufficiente lanciare un'eccezione: le scritture del task
+ * vengono annullate senza coinvolgere gli altri task raggruppati nella stessa transazione.
+ * </p>
+ *
+ * @param <T> Il tipo del risultato prodotto dal task.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface WriteTask<T> {
+
+    /**
+     * Esegue le scritture del task.
+     *
+     * @param conn La {@link Connection} di scrittura, già in transazione.
+     * @return Il risultato del task, consegnato al chiamante dopo il commit.
+     * @throws SQLException se una scrittura fallisce; le modifiche del task vengono annullate.
+     */
+    T execute(Connection conn) throws SQLException;
+}
@@ -0,0 +1,94 @@
+package it.uniupo.simnova.utils.timer;
+
+/**
+ * Un insieme di timer della stessa {@link TimingWheel} che si sospendono, riprendono e avanzano insieme,
+ * ad esempio tutti i timer di una sessione di simulazione.
+ * <p>
+ * Le operazioni sul gruppo costano quanto il numero dei suoi timer, indipendentemente da quanti timer
+ * contiene la ruota.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimerGroup {
+
+    /**
+     * La ruota del gruppo.
+     */
+    final TimingWheel wheel;
+
+    /**
+     * Il primo timer in attesa del gruppo. Protetto dal monitor della ruota.
+     */
+    TimerHandle head;
+
+    /**
+     * Indica se il gruppo è sospeso. Protetto dal monitor della ruota.
+     */
+    boolean paused;
+
+    /**
+     * Crea un gruppo; usato da {@link TimingWheel#newGroup()}.
+     *
+     * @param wheel La ruota.
+     */
+    TimerGroup(TimingWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    /**
+     * Programma un timer nel gruppo. Se il gruppo è sospeso il timer parte alla ripresa.
+     *
+     * @param delayMillis Il ritardo in millisecondi.
+     * @param task        L'attività da eseguire alla scadenza, sul thread della ruota; non deve bloccare.
+     * @return L'handle per annullare il timer.
+     */
+    public TimerHandle schedule(long delayMillis, Runnable task) {
+        return wheel.schedule(this, delayMillis, task);
+    }
+
+    /**
+     * Sospende tutti i timer del gruppo, conservando il tempo mancante di ciascuno.
+     */
+    public void pause() {
+        wheel.pause(this);
+    }
+
+    /**
+     * Riprende i timer del gruppo dal tempo mancante al momento della sospensione.
+     */
+    public void resume() {
+        wheel.resume(this);
+    }
+
+    /**
+     * Anticipa tutti i timer del gruppo, anche se sospeso. I timer che scadono nell'intervallo
+     * vengono eseguiti al tick successivo.
+     *
+     * @param millis I millisecondi di cui avanzare.
+     */
+    public void fastForward(long millis) {
+        wheel.fastForward(this, millis);
+    }
+
+    /**
+     * Annulla tutti i timer del gruppo.
+     *
+     * @return Il numero di timer annullati.
+     */
+    public int cancelAll() {
+        return wheel.cancelAll(this);
+    }
+
+    /**
+     * Indica se il gruppo è sospeso.
+     *
+     * @return <code>true</code> se i timer del gruppo sono fermi.
+     */
+    public boolean isPaused() {
+        synchronized (wheel) {
+            return paused;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package it.uniupo.simnova.utils.timer;
+
+/**
+ * Un timer programmato su una {@link TimingWheel}. È anche il nodo delle liste della ruota e del suo
+ * {@link TimerGroup}, quindi programmare e annullare non allocano altro che l'handle stesso.
+ * <p>
+ * Tutti i campi sono protetti dal monitor della ruota.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimerHandle {
+
+    /**
+     * La ruota che ha programmato il timer.
+     */
+    final TimingWheel wheel;
+
+    /**
+     * Il gruppo a cui appartiene il timer.
+     */
+    final TimerGroup group;
+
+    /**
+     * L'attività da eseguire alla scadenza.
+     */
+    final Runnable task;
+
+    /**
+     * La scadenza, in tick della ruota.
+     */
+    long deadline;
+
+    /**
+     * I millisecondi mancanti alla scadenza mentre il gruppo è sospeso.
+     */
+    long remaining;
+
+    /**
+     * Lo slot della ruota che contiene il timer; <code>null</code> se non è nella ruota.
+     */
+    TimerHandle[] slotArray;
+
+    /**
+     * L'indice dello slot in {@link #slotArray}.
+     */
+    int slotIndex;
+
+    /**
+     * Nodi adiacenti nello slot della ruota.
+     */
+    TimerHandle prev, next;
+
+    /**
+     * Nodi adiacenti nella lista del gruppo.
+     */
+    TimerHandle groupPrev, groupNext;
+
+    /**
+     * Indica se il timer è ancora in attesa: diventa <code>false</code> quando scade o viene annullato.
+     */
+    boolean pending = true;
+
+    /**
+     * Crea un handle; usato dalla ruota.
+     *
+     * @param wheel La ruota.
+     * @param group Il gruppo.
+     * @param task  L'attività da eseguire.
+     */
+    TimerHandle(TimingWheel wheel, TimerGroup group, Runnable task) {
+        this.wheel = wheel;
+        this.group = group;
+        this.task = task;
+    }
+
+    /**
+     * Annulla il timer in tempo costante.
+     *
+     * @return <code>true</code> se il timer era in attesa; <code>false</code> se era già scaduto o annullato.
+     */
+    public boolean cancel() {
+        return wheel.cancel(this);
+    }
+
+    /**
+     * Indica se il timer non è ancora scaduto né stato annullato.
+     *
+     * @return <code>true</code> se il timer è in attesa.
+     */
+    public boolean isPending() {
+        synchronized (wheel) {
+            return pending;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package it.uniupo.simnova.utils.timer;
+
+/**
+ * Istantanea immutabile degli indicatori di una {@link TimingWheel}.
+ *
+ * @param active    Numero di timer in attesa, compresi quelli dei gruppi sospesi.
+ * @param scheduled Numero di timer programmati.
+ * @param fired     Numero di timer scaduti ed eseguiti.
+ * @param cancelled Numero di timer annullati.
+ * @param cascaded  Numero di spostamenti di timer da un livello della ruota a quello inferiore.
+ * @param maxLagMillis Ritardo massimo osservato del ciclo dei tick rispetto al tempo reale, in millisecondi.
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public record TimerStats(int active, long scheduled, long fired, long cancelled, long cascaded, long maxLagMillis) {
+
+    @Override
+    public String toString() {
+        return String.format("TimerStats{attivi=%d, programmati=%d, scaduti=%d, annullati=%d, spostamenti=%d, ritardo max=%d ms}",
+                active, scheduled, fired, cancelled, cascaded, maxLagMillis);
+    }
+}
@@ -0,0 +1,581 @@
+package it.uniupo.simnova.utils.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Servizio di timer a ruota gerarchica (<em>hierarchical timing wheel</em>) con risoluzione di un millisecondo.
+ * <p>
+ * La ruota ha quattro livelli di 256 slot: il primo copre i prossimi 256 ms, il secondo circa 65 secondi,
+ * il terzo circa 4,6 ore e il quarto circa 49 giorni. Un timer viene inserito nello slot del livello più basso
+ * che contiene la sua scadenza, in una lista doppiamente collegata: programmare e annullare costano tempo costante
+ * qualunque sia il numero di timer attivi. Quando il primo livello completa un giro, lo slot corrispondente del
+ * livello superiore viene ridistribuito verso il basso.
+ * </p>
+ * <p>
+ * Un unico thread fa avanzare la ruota. Il tick da elaborare è calcolato dal tempo trascorso dall'avvio e non
+ * dalla somma delle attese, quindi i ritardi di risveglio non si accumulano: se il thread arriva in ritardo
+ * elabora in una volta tutti i tick arretrati. Senza timer in attesa il thread resta fermo fino alla prossima
+ * programmazione.
+ * </p>
+ * <p>
+ * Le attività scadute vengono eseguite sul thread della ruota, fuori dal monitor: devono essere brevi e non
+ * bloccanti, ad esempio accodare un comando o consegnare il lavoro a un altro esecutore.
+ * </p>
+ * <p>
+ * Per i test esiste una ruota senza thread, con un orologio fornito dal chiamante: i tick vengono elaborati
+ * solo quando si invoca {@link #poll()}, sul thread del chiamante.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class TimingWheel implements AutoCloseable {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le attività fallite e l'arresto.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * Durata di un tick in nanosecondi.
+     */
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Bit dell'indice di slot di ciascun livello.
+     */
+    private static final int SLOT_BITS = 8;
+
+    /**
+     * Numero di slot per livello.
+     */
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * Maschera dell'indice di slot.
+     */
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Numero di livelli della ruota.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * Le teste delle liste di ciascuno slot, per livello.
+     */
+    private final TimerHandle[][] levels = new TimerHandle[LEVELS][SLOTS];
+
+    /**
+     * Il gruppo usato dai timer programmati senza gruppo esplicito.
+     */
+    private final TimerGroup defaultGroup = new TimerGroup(this);
+
+    /**
+     * Le attività scadute nel ciclo corrente, riusata tra i cicli. Usata solo dal thread della ruota.
+     */
+    private final List<TimerHandle> expired = new ArrayList<>();
+
+    /**
+     * Il nome della ruota, usato nei log e come nome del thread.
+     */
+    private final String name;
+
+    /**
+     * L'orologio della ruota, in nanosecondi.
+     */
+    private final LongSupplier nanoClock;
+
+    /**
+     * Il thread che fa avanzare la ruota; <code>null</code> per una ruota senza thread.
+     */
+    private final Thread ticker;
+
+    /**
+     * L'istante di avvio, origine dei tick.
+     */
+    private final long startNanos;
+
+    /**
+     * L'ultimo tick elaborato. Protetto dal monitor.
+     */
+    private long currentTick;
+
+    /**
+     * Timer nella ruota, esclusi quelli dei gruppi sospesi. Protetto dal monitor.
+     */
+    private int inWheel;
+
+    /**
+     * Timer in attesa, compresi quelli dei gruppi sospesi. Protetto dal monitor.
+     */
+    private int active;
+
+    // Indicatori, protetti dal monitor.
+    private long scheduledCount;
+    private long firedCount;
+    private long cancelledCount;
+    private long cascadedCount;
+    private long maxLagTicks;
+
+    /**
+     * Indica se il thread della ruota è fermo in attesa di un timer.
+     */
+    private volatile boolean idle;
+
+    /**
+     * Indica se la ruota è in funzione.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Crea e avvia una ruota.
+     *
+     * @param threadName Il nome del thread che fa avanzare la ruota.
+     */
+    public TimingWheel(String threadName) {
+        this.name = threadName;
+        this.nanoClock = System::nanoTime;
+        this.startNanos = nanoClock.getAsLong();
+        this.ticker = new Thread(this::run, threadName);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Crea una ruota senza thread, che avanza solo con {@link #poll()} secondo l'orologio indicato. Usata nei test.
+     *
+     * @param name      Il nome della ruota.
+     * @param nanoClock L'orologio in nanosecondi; il valore al momento della creazione è l'origine dei tick.
+     */
+    TimingWheel(String name, LongSupplier nanoClock) {
+        this.name = name;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.ticker = null;
+    }
+
+    /**
+     * Crea un nuovo gruppo di timer, da sospendere e riprendere insieme.
+     *
+     * @return Il gruppo.
+     */
+    public TimerGroup newGroup() {
+        return new TimerGroup(this);
+    }
+
+    /**
+     * Programma un timer fuori da qualunque gruppo.
+     *
+     * @param delayMillis Il ritardo in millisecondi; i valori non positivi scadono al tick successivo.
+     * @param task        L'attività da eseguire alla scadenza, sul thread della ruota.
+     * @return L'handle per annullare il timer.
+     */
+    public TimerHandle schedule(long delayMillis, Runnable task) {
+        return schedule(defaultGroup, delayMillis, task);
+    }
+
+    /**
+     * Restituisce gli indicatori della ruota.
+     *
+     * @return Un'istantanea delle statistiche.
+     */
+    public synchronized TimerStats getStats() {
+        return new TimerStats(active, scheduledCount, firedCount, cancelledCount, cascadedCount, maxLagTicks);
+    }
+
+    /**
+     * Ferma il thread della ruota. I timer in attesa non vengono eseguiti.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+            try {
+                ticker.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.info("Ruota dei timer {} arrestata. {}", name, getStats());
+    }
+
+    /**
+     * Programma un timer in un gruppo.
+     *
+     * @param group       Il gruppo.
+     * @param delayMillis Il ritardo in millisecondi.
+     * @param task        L'attività da eseguire.
+     * @return L'handle del timer.
+     */
+    TimerHandle schedule(TimerGroup group, long delayMillis, Runnable task) {
+        TimerHandle handle = new TimerHandle(this, group, task);
+        boolean wake;
+        synchronized (this) {
+            scheduledCount++;
+            active++;
+            linkGroup(handle);
+            if (group.paused) {
+                handle.remaining = Math.max(0L, delayMillis);
+                return handle;
+            }
+            long now = elapsedTicksCeil();
+            if (inWheel == 0) {
+                currentTick = Math.max(currentTick, now - 1); // Ruota vuota: nessun tick arretrato da elaborare.
+            }
+            handle.deadline = Math.max(currentTick, now) + Math.max(0L, delayMillis); // Riferita al tempo reale, mai in anticipo.
+            place(handle);
+            wake = idle;
+        }
+        if (wake) {
+            LockSupport.unpark(ticker);
+        }
+        return handle;
+    }
+
+    /**
+     * Annulla un timer.
+     *
+     * @param handle Il timer.
+     * @return <code>true</code> se il timer era in attesa.
+     */
+    synchronized boolean cancel(TimerHandle handle) {
+        if (!handle.pending) {
+            return false;
+        }
+        retire(handle);
+        cancelledCount++;
+        return true;
+    }
+
+    /**
+     * Sospende i timer di un gruppo.
+     *
+     * @param group Il gruppo.
+     */
+    synchronized void pause(TimerGroup group) {
+        if (group.paused) {
+            return;
+        }
+        group.paused = true;
+        long now = Math.max(currentTick, elapsedTicks());
+        for (TimerHandle h = group.head; h != null; h = h.groupNext) {
+            h.remaining = Math.max(0L, h.deadline - now);
+            unlinkSlot(h);
+        }
+    }
+
+    /**
+     * Riprende i timer di un gruppo.
+     *
+     * @param group Il gruppo.
+     */
+    void resume(TimerGroup group) {
+        boolean wake;
+        synchronized (this) {
+            if (!group.paused) {
+                return;
+            }
+            group.paused = false;
+            long now = elapsedTicksCeil();
+            if (inWheel == 0) {
+                currentTick = Math.max(currentTick, now - 1);
+            }
+            for (TimerHandle h = group.head; h != null; h = h.groupNext) {
+                h.deadline = Math.max(currentTick, now) + h.remaining;
+                place(h);
+            }
+            wake = idle && group.head != null;
+        }
+        if (wake) {
+            LockSupport.unpark(ticker);
+        }
+    }
+
+    /**
+     * Anticipa i timer di un gruppo.
+     *
+     * @param group  Il gruppo.
+     * @param millis I millisecondi di cui avanzare.
+     */
+    synchronized void fastForward(TimerGroup group, long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        for (TimerHandle h = group.head; h != null; h = h.groupNext) {
+            if (group.paused) {
+                h.remaining = Math.max(0L, h.remaining - millis);
+            } else {
+                unlinkSlot(h);
+                h.deadline = Math.max(currentTick + 1, h.deadline - millis);
+                place(h);
+            }
+        }
+    }
+
+    /**
+     * Annulla tutti i timer di un gruppo.
+     *
+     * @param group Il gruppo.
+     * @return Il numero di timer annullati.
+     */
+    synchronized int cancelAll(TimerGroup group) {
+        int count = 0;
+        while (group.head != null) {
+            retire(group.head);
+            count++;
+        }
+        cancelledCount += count;
+        return count;
+    }
+
+    /**
+     * Elabora i tick fino al tempo corrente dell'orologio ed esegue le attività scadute sul thread chiamante.
+     * Da usare solo con una ruota senza thread, creata per i test.
+     */
+    void poll() {
+        processTicks(elapsedTicks());
+    }
+
+    /**
+     * Ciclo del thread della ruota: elabora i tick fino al tempo corrente, esegue le attività scadute
+     * e attende l'inizio del tick successivo.
+     */
+    private void run() {
+        while (running) {
+            long target = elapsedTicks();
+            boolean empty = processTicks(target);
+
+            if (empty) {
+                LockSupport.park(this); // Risvegliato dalla prossima programmazione.
+            } else {
+                long next = startNanos + (target + 1) * TICK_NANOS;
+                LockSupport.parkNanos(this, next - nanoClock.getAsLong());
+            }
+        }
+    }
+
+    /**
+     * Elabora i tick fino a quello indicato ed esegue le attività scadute.
+     *
+     * @param target L'ultimo tick da elaborare.
+     * @return <code>true</code> se al termine la ruota non contiene timer.
+     */
+    private boolean processTicks(long target) {
+        boolean empty;
+        synchronized (this) {
+            if (inWheel == 0) {
+                currentTick = Math.max(currentTick, target);
+            } else {
+                maxLagTicks = Math.max(maxLagTicks, target - currentTick - 1);
+                while (currentTick < target) {
+                    advance(++currentTick);
+                }
+            }
+            empty = inWheel == 0;
+            idle = empty;
+        }
+        runExpired();
+        return empty;
+    }
+
+    /**
+     * Elabora un tick: ridistribuisce gli slot dei livelli superiori che iniziano a questo tick
+     * e raccoglie i timer dello slot corrente del primo livello.
+     *
+     * @param tick Il tick da elaborare.
+     */
+    private void advance(long tick) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                cascade(level, (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            }
+        }
+        TimerHandle[] slots = levels[0];
+        int index = (int) tick & SLOT_MASK;
+        TimerHandle h = slots[index];
+        slots[index] = null;
+        while (h != null) {
+            TimerHandle next = h.next;
+            h.slotArray = null;
+            h.prev = h.next = null;
+            inWheel--;
+            unlinkGroup(h);
+            h.pending = false;
+            active--;
+            firedCount++;
+            expired.add(h);
+            h = next;
+        }
+    }
+
+    /**
+     * Sposta i timer di uno slot di un livello superiore nei livelli inferiori.
+     *
+     * @param level Il livello.
+     * @param index Lo slot.
+     */
+    private void cascade(int level, int index) {
+        TimerHandle[] slots = levels[level];
+        TimerHandle h = slots[index];
+        slots[index] = null;
+        while (h != null) {
+            TimerHandle next = h.next;
+            h.slotArray = null;
+            h.prev = h.next = null;
+            inWheel--;
+            if (h.deadline == currentTick) {
+                insert(h, 0); // Scade in questo tick: lo slot del primo livello viene raccolto subito dopo.
+            } else {
+                place(h);
+            }
+            cascadedCount++;
+            h = next;
+        }
+    }
+
+    /**
+     * Esegue le attività scadute fuori dal monitor.
+     */
+    private void runExpired() {
+        for (TimerHandle h : expired) {
+            try {
+                h.task.run();
+            } catch (RuntimeException e) {
+                logger.error("Attività di un timer fallita sulla ruota {}.", name, e);
+            }
+        }
+        expired.clear();
+    }
+
+    /**
+     * Inserisce un timer nello slot del livello più basso che contiene la sua scadenza.
+     *
+     * @param h Il timer, con la scadenza già impostata e non ancora in uno slot.
+     */
+    private void place(TimerHandle h) {
+        long delta = h.deadline - currentTick;
+        if (delta <= 0) {
+            h.deadline = currentTick + 1;
+            delta = 1;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        insert(h, level);
+    }
+
+    /**
+     * Inserisce un timer in testa allo slot della sua scadenza nel livello indicato.
+     *
+     * @param h     Il timer, non ancora in uno slot.
+     * @param level Il livello.
+     */
+    private void insert(TimerHandle h, int level) {
+        TimerHandle[] slots = levels[level];
+        int index = (int) (h.deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+        TimerHandle head = slots[index];
+        h.next = head;
+        h.prev = null;
+        if (head != null) {
+            head.prev = h;
+        }
+        slots[index] = h;
+        h.slotArray = slots;
+        h.slotIndex = index;
+        inWheel++;
+    }
+
+    /**
+     * Rimuove un timer dal suo slot, se è nella ruota.
+     *
+     * @param h Il timer.
+     */
+    private void unlinkSlot(TimerHandle h) {
+        if (h.slotArray == null) {
+            return;
+        }
+        if (h.prev != null) {
+            h.prev.next = h.next;
+        } else {
+            h.slotArray[h.slotIndex] = h.next;
+        }
+        if (h.next != null) {
+            h.next.prev = h.prev;
+        }
+        h.slotArray = null;
+        h.prev = h.next = null;
+        inWheel--;
+    }
+
+    /**
+     * Toglie un timer in attesa dalla ruota e dal gruppo.
+     *
+     * @param h Il timer.
+     */
+    private void retire(TimerHandle h) {
+        unlinkSlot(h);
+        unlinkGroup(h);
+        h.pending = false;
+        active--;
+    }
+
+    /**
+     * Aggiunge un timer in testa alla lista del suo gruppo.
+     *
+     * @param h Il timer.
+     */
+    private static void linkGroup(TimerHandle h) {
+        TimerGroup group = h.group;
+        h.groupNext = group.head;
+        if (group.head != null) {
+            group.head.groupPrev = h;
+        }
+        group.head = h;
+    }
+
+    /**
+     * Rimuove un timer dalla lista del suo gruppo.
+     *
+     * @param h Il timer.
+     */
+    private static void unlinkGroup(TimerHandle h) {
+        if (h.groupPrev != null) {
+            h.groupPrev.groupNext = h.groupNext;
+        } else {
+            h.group.head = h.groupNext;
+        }
+        if (h.groupNext != null) {
+            h.groupNext.groupPrev = h.groupPrev;
+        }
+        h.groupPrev = h.groupNext = null;
+    }
+
+    /**
+     * Calcola i tick trascorsi dall'avvio della ruota.
+     *
+     * @return Il numero di millisecondi interi trascorsi.
+     */
+    private long elapsedTicks() {
+        return (nanoClock.getAsLong() - startNanos) / TICK_NANOS;
+    }
+
+    /**
+     * Calcola i tick trascorsi dall'avvio arrotondando per eccesso, come base delle nuove scadenze:
+     * un timer non scade mai prima del ritardo richiesto.
+     *
+     * @return Il numero di millisecondi trascorsi, arrotondato per eccesso.
+     */
+    private long elapsedTicksCeil() {
+        return Math.ceilDiv(nanoClock.getAsLong() - startNanos, TICK_NANOS);
+    }
+}
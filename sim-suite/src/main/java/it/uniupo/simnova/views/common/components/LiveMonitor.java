@@ -0,0 +1,652 @@
+package it.uniupo.simnova.views.common.components;
+
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.HasSize;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.Tag;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.dependency.JsModule;
+import com.vaadin.flow.shared.Registration;
+import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
+import it.uniupo.simnova.service.execution.waveform.SampleRing;
+import it.uniupo.simnova.service.execution.waveform.WaveformChannel;
+import it.uniupo.simnova.service.execution.waveform.WaveformGenerator;
+import it.uniupo.simnova.views.ui.helper.VitalSignsDataProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monitor dei parametri vitali aggiornato in tempo reale tramite server push.
+ * <p>
+ * A differenza di {@link it.uniupo.simnova.views.ui.helper.MonitorSupport}, che costruisce un box e una chiamata
+ * JavaScript per ogni parametro e non si aggiorna più, il monitor è un unico web component lato client
+ * (<code>sim-live-monitor</code>) che riceve un frame per intervallo ({@code simsuite.monitor.frame-ms}).
+ * Ogni frame contiene solo ciò che è cambiato dal precedente: i valori visualizzati diversi, i livelli di allarme
+ * e i campioni delle forme d'onda maturati, quantizzati a 16 bit e codificati in base64.
+ * </p>
+ * <p>
+ * Un solo thread condiviso scandisce i frame di tutti i monitor aperti; parte con il primo monitor collegato e si
+ * arresta con {@link #shutdown()} alla chiusura dell'applicazione. Per ogni client:
+ * </p>
+ * <ul>
+ *     <li>se il client non ha ancora confermato di aver applicato il frame precedente, il successivo viene saltato;</li>
+ *     <li>un secchiello di token limita i byte inviati ({@code simsuite.monitor.max-bytes-per-second}):
+ *         oltre il limite le forme d'onda del frame vengono scartate, i valori no.</li>
+ * </ul>
+ * <p>
+ * Byte inviati e tempo CPU speso nella costruzione dei frame sono misurati per monitor e in totale ({@link #getTotals()}).
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+@Tag("sim-live-monitor")
+@JsModule("./components/sim-live-monitor.ts")
+public final class LiveMonitor extends Component implements HasSize {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le statistiche dei monitor chiusi.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LiveMonitor.class);
+
+    /**
+     * Intervallo tra due frame in millisecondi, configurabile con la proprietà di sistema <code>simsuite.monitor.frame-ms</code>.
+     */
+    private static final long FRAME_MILLIS = Math.max(20L, Long.getLong("simsuite.monitor.frame-ms", 100L));
+
+    /**
+     * Byte al secondo inviabili a un client, configurabile con la proprietà di sistema <code>simsuite.monitor.max-bytes-per-second</code>.
+     */
+    private static final int MAX_BYTES_PER_SECOND = Math.max(1024, Integer.getInteger("simsuite.monitor.max-bytes-per-second", 16 * 1024));
+
+    /**
+     * Valore mostrato per i parametri non definiti, come in {@link it.uniupo.simnova.views.ui.helper.MonitorSupport}.
+     */
+    private static final String NULL_DISPLAY_VALUE = "-";
+
+    /**
+     * Etichette, unità di misura e colori dei parametri fissi, nell'ordine del monitor statico.
+     */
+    private static final String[][] FIXED_CHANNELS = {
+            {"PA", "mmHg", "var(--lumo-primary-color)"},
+            {"FC", "bpm", "var(--lumo-primary-color)"},
+            {"T", "°C", "var(--lumo-success-color)"},
+            {"RR", "rpm", "var(--lumo-tertiary-color)"},
+            {"SpO₂", "%", "var(--lumo-contrast)"},
+            {"FiO₂", "%", "var(--lumo-primary-color-50pct)"},
+            {"Litri O₂", "Litri/m", "var(--lumo-contrast-70pct)"},
+            {"EtCO₂", "mmHg", "var(--lumo-warning-color)"}
+    };
+
+    /**
+     * Colori dei parametri aggiuntivi, a rotazione.
+     */
+    private static final String[] ADDITIONAL_PARAM_COLORS = {
+            "var(--lumo-contrast-70pct)", "var(--lumo-shade-50pct)", "var(--lumo-tertiary-color)"
+    };
+
+    /**
+     * Fattore di quantizzazione a 16 bit dei campioni di ciascun canale di forma d'onda.
+     */
+    private static final float[] WAVE_SCALE = {1000f, 10000f, 100f};
+
+    /**
+     * Caratteri della codifica base64.
+     */
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /**
+     * I monitor visibili, scanditi dal thread dei frame.
+     */
+    private static final List<LiveMonitor> ATTACHED = new CopyOnWriteArrayList<>();
+
+    /**
+     * Il thread condiviso che scandisce i frame di tutti i monitor; <code>null</code> finché nessun monitor è stato
+     * collegato o dopo {@link #shutdown()}. Protetto dal monitor della classe.
+     */
+    private static ScheduledExecutorService frameClock;
+
+    // Totali di tutti i monitor, per le statistiche.
+    private static final LongAdder TOTAL_FRAMES = new LongAdder();
+    private static final LongAdder TOTAL_BYTES = new LongAdder();
+    private static final LongAdder TOTAL_CPU_NANOS = new LongAdder();
+    private static final LongAdder TOTAL_SKIPPED = new LongAdder();
+    private static final LongAdder TOTAL_DROPPED_WAVES = new LongAdder();
+
+    /**
+     * Il fornitore dei valori mostrati.
+     */
+    private final VitalSignsDataProvider dataProvider;
+
+    /**
+     * Le forme d'onda da mostrare; <code>null</code> per un monitor solo numerico.
+     */
+    private final WaveformGenerator waveforms;
+
+    /**
+     * Indica se i valori sono cambiati dall'ultimo frame.
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+
+    /**
+     * Indica se un frame è in attesa nella sessione dell'interfaccia o è stato inviato e il client non ne ha ancora
+     * confermato l'applicazione.
+     */
+    private final AtomicBoolean framePending = new AtomicBoolean();
+
+    /**
+     * Livelli di allarme da inviare, per etichetta del parametro.
+     */
+    private final Map<String, Integer> pendingAlarms = new ConcurrentHashMap<>();
+
+    /**
+     * Il frame in costruzione, riusato tra un frame e l'altro.
+     */
+    private final StringBuilder frame = new StringBuilder(1024);
+
+    /**
+     * Campioni letti da un canale di forma d'onda.
+     */
+    private final float[] samples;
+
+    /**
+     * Campioni quantizzati, da codificare.
+     */
+    private final byte[] encoded;
+
+    /**
+     * L'interfaccia a cui il monitor è collegato, letta dal thread dei frame; <code>null</code> se non visibile.
+     */
+    private volatile UI ui;
+
+    // Lo stato seguente è confinato alla sessione dell'interfaccia.
+
+    /**
+     * Etichette dei canali inviate al client, nell'ordine degli indici dei frame.
+     */
+    private final List<String> labels = new ArrayList<>();
+
+    /**
+     * Valori mostrati dal client, per indice del canale.
+     */
+    private final List<String> sentValues = new ArrayList<>();
+
+    /**
+     * Livelli di allarme mostrati dal client, per etichetta.
+     */
+    private final Map<String, Integer> sentAlarms = new HashMap<>();
+
+    /**
+     * Cursori di lettura delle forme d'onda, uno per canale; <code>null</code> se il monitor non è collegato.
+     */
+    private SampleRing.Cursor[] cursors;
+
+    /**
+     * La registrazione dell'ascoltatore dei cambiamenti dei parametri.
+     */
+    private Registration changeRegistration;
+
+    /**
+     * Numero progressivo del prossimo frame.
+     */
+    private long sequence;
+
+    /**
+     * Byte ancora inviabili secondo il limite di banda.
+     */
+    private double tokens = MAX_BYTES_PER_SECOND;
+
+    /**
+     * Istante dell'ultimo frame, per ricaricare i byte inviabili.
+     */
+    private long lastFrameNanos;
+
+    /**
+     * Istante del collegamento, per le medie al distacco.
+     */
+    private long attachedNanos;
+
+    /**
+     * Frame inviati dal collegamento.
+     */
+    private long frames;
+
+    /**
+     * Byte inviati dal collegamento.
+     */
+    private long bytes;
+
+    /**
+     * Tempo di CPU speso a costruire i frame dal collegamento, in nanosecondi.
+     */
+    private long cpuNanos;
+
+    /**
+     * Frame le cui forme d'onda sono state scartate per il limite di banda.
+     */
+    private long droppedWaves;
+
+    /**
+     * Crea un monitor in tempo reale.
+     *
+     * @param dataProvider Il fornitore dei valori; se osservabile il monitor si aggiorna a ogni cambiamento.
+     * @param waveforms    Le forme d'onda da mostrare, o <code>null</code>.
+     */
+    public LiveMonitor(VitalSignsDataProvider dataProvider, WaveformGenerator waveforms) {
+        this.dataProvider = Objects.requireNonNull(dataProvider);
+        this.waveforms = waveforms;
+        int maxSamples = 0;
+        for (WaveformChannel channel : WaveformChannel.values()) {
+            maxSamples = Math.max(maxSamples, (int) (channel.sampleRate() * FRAME_MILLIS / 1000 * 4)); // Margine per i frame in ritardo.
+        }
+        this.samples = new float[maxSamples];
+        this.encoded = new byte[maxSamples * 2];
+        getElement().getStyle().set("display", "block").set("max-width", "700px").set("margin", "0 auto");
+    }
+
+    /**
+     * Restituisce i totali di tutti i monitor dall'avvio dell'applicazione.
+     *
+     * @return Monitor aperti, frame, byte, CPU, frame saltati e forme d'onda scartate.
+     */
+    public static MonitorTotals getTotals() {
+        return new MonitorTotals(ATTACHED.size(), TOTAL_FRAMES.sum(), TOTAL_BYTES.sum(), TOTAL_CPU_NANOS.sum(),
+                TOTAL_SKIPPED.sum(), TOTAL_DROPPED_WAVES.sum());
+    }
+
+    /**
+     * Arresta il thread dei frame. Da invocare alla chiusura dell'applicazione; un monitor collegato in seguito
+     * lo riavvia.
+     */
+    public static synchronized void shutdown() {
+        if (frameClock != null) {
+            frameClock.shutdownNow();
+            frameClock = null;
+        }
+    }
+
+    /**
+     * Avvia il thread dei frame, se non è già attivo.
+     */
+    private static synchronized void startFrameClock() {
+        if (frameClock == null) {
+            frameClock = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sim-monitor-frames");
+                thread.setDaemon(true);
+                return thread;
+            });
+            frameClock.scheduleAtFixedRate(LiveMonitor::tickAll, FRAME_MILLIS, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Imposta il livello di allarme di un parametro, inviato con il frame successivo. Può essere chiamato da qualunque thread.
+     *
+     * @param label L'etichetta del parametro, come mostrata nel monitor (es. "FC").
+     * @param level <code>0</code> normale, <code>1</code> attenzione, <code>2</code> critico.
+     */
+    public void setAlarmLevel(String label, int level) {
+        pendingAlarms.put(label, level);
+    }
+
+    /**
+     * Restituisce i byte inviati al client dalla creazione del monitor. Da leggere con il lock della sessione dell'interfaccia.
+     *
+     * @return I byte dei frame inviati.
+     */
+    public long getBytesSent() {
+        return bytes;
+    }
+
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        ui = attachEvent.getUI();
+        labels.clear();
+        sentValues.clear();
+        sentAlarms.forEach(pendingAlarms::putIfAbsent); // Il client riparte senza allarmi: si reinviano.
+        sentAlarms.clear();
+        dirty.set(true);
+        framePending.set(false); // La conferma di un frame inviato prima del distacco non arriverà più.
+        if (waveforms != null) {
+            cursors = new SampleRing.Cursor[WaveformChannel.values().length];
+            for (WaveformChannel channel : WaveformChannel.values()) {
+                cursors[channel.ordinal()] = waveforms.ring(channel).newCursor();
+            }
+            sendWaveformLayout();
+        }
+        changeRegistration = dataProvider.addChangeListener(() -> dirty.set(true));
+        attachedNanos = System.nanoTime();
+        lastFrameNanos = attachedNanos;
+        ATTACHED.add(this);
+        startFrameClock();
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        ATTACHED.remove(this);
+        if (changeRegistration != null) {
+            changeRegistration.remove();
+            changeRegistration = null;
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - attachedNanos) / 1e9);
+        logger.info("Monitor chiuso dopo {} s: {} frame, {} B/s, {} µs di CPU al secondo, {} forme d'onda scartate.",
+                String.format(Locale.ROOT, "%.0f", seconds), frames, Math.round(bytes / seconds),
+                Math.round(cpuNanos / 1000.0 / seconds), droppedWaves);
+        ui = null;
+        super.onDetach(detachEvent);
+    }
+
+    /**
+     * Richiede un frame a tutti i monitor visibili. Eseguito dal thread dei frame.
+     */
+    private static void tickAll() {
+        for (LiveMonitor monitor : ATTACHED) {
+            try {
+                monitor.requestFrame();
+            } catch (RuntimeException e) {
+                logger.error("Errore durante l'invio di un frame al monitor", e); // Un'eccezione fermerebbe il thread dei frame.
+            }
+        }
+    }
+
+    /**
+     * Accoda la costruzione di un frame nella sessione dell'interfaccia, a meno che il precedente sia ancora in attesa
+     * o il client non ne abbia ancora confermato l'applicazione.
+     */
+    private void requestFrame() {
+        UI target = ui;
+        if (target == null) {
+            return;
+        }
+        if (!framePending.compareAndSet(false, true)) {
+            TOTAL_SKIPPED.increment(); // Il client o la sessione non tengono il passo: il frame successivo recupera i cambiamenti.
+            return;
+        }
+        try {
+            target.access(() -> {
+                boolean sent = false;
+                try {
+                    sent = sendFrame();
+                } finally {
+                    if (!sent) {
+                        framePending.set(false); // Nessun frame inviato: non c'è conferma da attendere.
+                    }
+                }
+            });
+        } catch (UIDetachedException e) {
+            framePending.set(false);
+        }
+    }
+
+    /**
+     * Costruisce e invia il frame con i cambiamenti dall'ultimo. Eseguito con il lock della sessione dell'interfaccia.
+     * Quando il client ha applicato il frame, o la chiamata fallisce, il monitor accetta il frame successivo.
+     *
+     * @return <code>true</code> se un frame è stato inviato; <code>false</code> se non c'era nulla da inviare.
+     */
+    private boolean sendFrame() {
+        long start = System.nanoTime();
+        tokens = Math.min(MAX_BYTES_PER_SECOND, tokens + (start - lastFrameNanos) / 1e9 * MAX_BYTES_PER_SECOND);
+        lastFrameNanos = start;
+
+        frame.setLength(0);
+        frame.append("{\"s\":").append(sequence);
+        int header = frame.length();
+        if (dirty.getAndSet(false)) {
+            appendValues();
+        }
+        appendAlarms();
+        int beforeWaves = frame.length();
+        if (waveforms != null && appendWaveforms() && frame.length() > tokens) {
+            frame.setLength(beforeWaves); // Oltre il limite di banda: si scartano le forme d'onda, non i valori.
+            frame.append(",\"g\":1");
+            droppedWaves++;
+            TOTAL_DROPPED_WAVES.increment();
+        }
+
+        boolean send = frame.length() > header;
+        if (send) {
+            frame.append('}');
+            String payload = frame.toString();
+            getElement().callJsFunction("applyFrame", payload).then(applied -> framePending.set(false), error -> {
+                framePending.set(false);
+                logger.debug("Frame non applicato dal client: {}", error);
+            });
+            sequence++;
+            frames++;
+            bytes += payload.length();
+            tokens -= payload.length();
+            TOTAL_FRAMES.increment();
+            TOTAL_BYTES.add(payload.length());
+        }
+        long spent = System.nanoTime() - start;
+        cpuNanos += spent;
+        TOTAL_CPU_NANOS.add(spent);
+        return send;
+    }
+
+    /**
+     * Aggiunge al frame i valori mostrati cambiati e, se l'elenco dei parametri è cambiato, il nuovo elenco.
+     */
+    private void appendValues() {
+        List<String[]> channels = new ArrayList<>(FIXED_CHANNELS.length + 4);
+        List<String> values = new ArrayList<>(FIXED_CHANNELS.length + 4);
+        for (String[] fixed : FIXED_CHANNELS) {
+            channels.add(fixed);
+        }
+        values.add(orNull(dataProvider.getPA()));
+        values.add(orNull(dataProvider.getFC()));
+        values.add(dataProvider.getT() != null && dataProvider.getT() > -50 ? String.format(Locale.ROOT, "%.1f", dataProvider.getT()) : NULL_DISPLAY_VALUE);
+        values.add(orNull(dataProvider.getRR()));
+        values.add(orNull(dataProvider.getSpO2()));
+        values.add(orNull(dataProvider.getFiO2()));
+        values.add(orNull(dataProvider.getLitriO2()));
+        values.add(orNull(dataProvider.getEtCO2()));
+        List<ParametroAggiuntivo> additional = dataProvider.getAdditionalParameters();
+        if (additional != null) {
+            int color = 0;
+            for (ParametroAggiuntivo param : additional) {
+                channels.add(new String[]{param.getNome(), param.getUnitaMisura() != null ? param.getUnitaMisura() : "",
+                        ADDITIONAL_PARAM_COLORS[color++ % ADDITIONAL_PARAM_COLORS.length]});
+                values.add(orNull(param.getValore()));
+            }
+        }
+
+        boolean layoutChanged = channels.size() != labels.size();
+        for (int i = 0; !layoutChanged && i < channels.size(); i++) {
+            layoutChanged = !channels.get(i)[0].equals(labels.get(i));
+        }
+        if (layoutChanged) {
+            labels.clear();
+            sentValues.clear();
+            frame.append(",\"c\":[");
+            for (int i = 0; i < channels.size(); i++) {
+                String[] channel = channels.get(i);
+                labels.add(channel[0]);
+                sentValues.add(null);
+                frame.append(i > 0 ? ",[" : "[");
+                appendString(channel[0]).append(',');
+                appendString(channel[1]).append(',');
+                appendString(channel[2]).append(']');
+            }
+            frame.append(']');
+        }
+
+        int mark = frame.length();
+        frame.append(",\"v\":{");
+        boolean any = false;
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (!value.equals(sentValues.get(i))) {
+                sentValues.set(i, value);
+                frame.append(any ? ",\"" : "\"").append(i).append("\":");
+                appendString(value);
+                any = true;
+            }
+        }
+        if (any) {
+            frame.append('}');
+        } else {
+            frame.setLength(mark);
+        }
+    }
+
+    /**
+     * Aggiunge al frame i livelli di allarme cambiati.
+     */
+    private void appendAlarms() {
+        if (pendingAlarms.isEmpty()) {
+            return;
+        }
+        int mark = frame.length();
+        frame.append(",\"a\":{");
+        boolean any = false;
+        for (Map.Entry<String, Integer> alarm : pendingAlarms.entrySet()) {
+            int channel = labels.indexOf(alarm.getKey());
+            if (channel < 0) {
+                continue; // Parametro non ancora mostrato: si riprova al frame successivo.
+            }
+            pendingAlarms.remove(alarm.getKey(), alarm.getValue());
+            if (!alarm.getValue().equals(sentAlarms.put(alarm.getKey(), alarm.getValue()))) {
+                frame.append(any ? ",\"" : "\"").append(channel).append("\":").append(alarm.getValue());
+                any = true;
+            }
+        }
+        if (any) {
+            frame.append('}');
+        } else {
+            frame.setLength(mark);
+        }
+    }
+
+    /**
+     * Aggiunge al frame i campioni delle forme d'onda pubblicati dall'ultimo frame.
+     *
+     * @return <code>true</code> se è stato aggiunto almeno un campione.
+     */
+    private boolean appendWaveforms() {
+        int mark = frame.length();
+        frame.append(",\"w\":[");
+        boolean any = false;
+        for (WaveformChannel channel : WaveformChannel.values()) {
+            int count = waveforms.ring(channel).read(cursors[channel.ordinal()], samples, 0, samples.length);
+            if (channel.ordinal() > 0) {
+                frame.append(',');
+            }
+            frame.append('"');
+            if (count > 0) {
+                float scale = WAVE_SCALE[channel.ordinal()];
+                for (int i = 0; i < count; i++) {
+                    int q = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(samples[i] * scale)));
+                    encoded[2 * i] = (byte) q;               // Little endian, come Int16Array nel browser.
+                    encoded[2 * i + 1] = (byte) (q >> 8);
+                }
+                appendBase64(encoded, 2 * count);
+                any = true;
+            }
+            frame.append('"');
+        }
+        frame.append(']');
+        if (!any) {
+            frame.setLength(mark);
+        }
+        return any;
+    }
+
+    /**
+     * Invia al client i canali delle forme d'onda: nome, frequenza, fattore di quantizzazione e unità.
+     */
+    private void sendWaveformLayout() {
+        StringBuilder layout = new StringBuilder("[");
+        for (WaveformChannel channel : WaveformChannel.values()) {
+            layout.append(channel.ordinal() > 0 ? ",[\"" : "[\"").append(channel.name()).append("\",")
+                    .append(channel.sampleRate()).append(',').append(WAVE_SCALE[channel.ordinal()]).append(",\"")
+                    .append(channel.unit()).append("\"]");
+        }
+        getElement().callJsFunction("setWaveforms", layout.append(']').toString());
+    }
+
+    /**
+     * Aggiunge al frame una stringa JSON.
+     *
+     * @param value La stringa.
+     * @return Il frame, per concatenare altre aggiunte.
+     */
+    private StringBuilder appendString(String value) {
+        frame.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                frame.append('\\').append(c);
+            } else if (c < 0x20) {
+                frame.append(String.format("\\u%04x", (int) c));
+            } else {
+                frame.append(c);
+            }
+        }
+        return frame.append('"');
+    }
+
+    /**
+     * Aggiunge al frame dei byte in base64, senza array intermedi.
+     *
+     * @param data   I byte.
+     * @param length Il numero di byte da codificare.
+     */
+    private void appendBase64(byte[] data, int length) {
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            int n = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            frame.append(BASE64[n >>> 18]).append(BASE64[n >>> 12 & 63]).append(BASE64[n >>> 6 & 63]).append(BASE64[n & 63]);
+        }
+        if (i < length) {
+            int n = (data[i] & 0xff) << 16 | (i + 1 < length ? (data[i + 1] & 0xff) << 8 : 0);
+            frame.append(BASE64[n >>> 18]).append(BASE64[n >>> 12 & 63]);
+            frame.append(i + 1 < length ? BASE64[n >>> 6 & 63] : '=').append('=');
+        }
+    }
+
+    /**
+     * Converte un valore nel testo mostrato.
+     *
+     * @param value Il valore.
+     * @return Il testo, o {@link #NULL_DISPLAY_VALUE} se il valore è assente.
+     */
+    private static String orNull(Object value) {
+        if (value == null) {
+            return NULL_DISPLAY_VALUE;
+        }
+        String text = value.toString();
+        return text.isEmpty() ? NULL_DISPLAY_VALUE : text;
+    }
+
+    /**
+     * Istantanea dei totali dei monitor in tempo reale.
+     *
+     * @param monitors     Monitor aperti.
+     * @param frames       Frame inviati.
+     * @param bytes        Byte dei frame inviati.
+     * @param cpuNanos     Tempo speso nella costruzione dei frame, in nanosecondi.
+     * @param skipped      Frame saltati perché il precedente non era ancora stato applicato.
+     * @param droppedWaves Frame le cui forme d'onda sono state scartate per il limite di banda.
+     */
+    public record MonitorTotals(int monitors, long frames, long bytes, long cpuNanos, long skipped, long droppedWaves) {
+    }
+}
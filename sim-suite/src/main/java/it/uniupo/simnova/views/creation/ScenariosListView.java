@@ -10,6 +10,7 @@ import com.vaadin.flow.component.checkbox.Checkbox;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.dialog.Dialog;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridSortOrder;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.Paragraph;
 import com.vaadin.flow.component.html.Span;
@@ -23,7 +24,11 @@ import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.component.textfield.TextField;
-import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.data.provider.CallbackDataProvider;
+import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
 import com.vaadin.flow.data.renderer.ComponentRenderer;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
@@ -39,6 +44,11 @@ import it.uniupo.simnova.service.scenario.components.MaterialeService;
 import it.uniupo.simnova.service.scenario.components.PazienteT0Service;
 import it.uniupo.simnova.service.scenario.operations.ScenarioDeletionService;
 import it.uniupo.simnova.service.scenario.operations.ScenarioImportService;
+import it.uniupo.simnova.service.scenario.search.ScenarioCursor;
+import it.uniupo.simnova.service.scenario.search.ScenarioFilter;
+import it.uniupo.simnova.service.scenario.search.ScenarioFullTextIndex;
+import it.uniupo.simnova.service.scenario.search.ScenarioPage;
+import it.uniupo.simnova.service.scenario.search.ScenarioSort;
 import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
 import it.uniupo.simnova.service.scenario.types.PatientSimulatedScenarioService;
 import it.uniupo.simnova.service.storage.FileStorageService;
@@ -48,13 +58,13 @@ import it.uniupo.simnova.views.common.utils.StyleApp;
 import it.uniupo.simnova.views.ui.helper.DialogSupport;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.jsoup.Jsoup;
 import org.slf4j.Logger;
@@ -66,10 +76,12 @@ import static it.uniupo.simnova.views.ui.helper.support.SanitizedFileName.saniti
 /**
  * Vista per la gestione e visualizzazione della lista degli scenari.
  * Permette di filtrare, cercare, esportare (PDF, ZIP) ed eliminare scenari.
+ * Filtri, ordinamento e paginazione sono eseguiti dal database: la vista mantiene in memoria
+ * solo la pagina visualizzata.
  * Utilizza Vaadin per la creazione dell'interfaccia utente.
  *
  * @author Alessandro Zappatore
- * @version 1.2
+ * @version 1.4
  */
 @SuppressWarnings({"ThisExpressionReferencesGlobalObjectJS", "JSCheckFunctionSignatures"})
 @PageTitle("Lista Scenari")
@@ -206,21 +218,42 @@ public class ScenariosListView extends Composite<VerticalLayout> {
      * Permette di filtrare gli scenari in base alla patologia associata.
      */
     private TextField searchPatologia;
+    /**
+     * Campo di ricerca full-text nei contenuti dello scenario (titolo, patologia, descrizione,
+     * briefing, obiettivo, sceneggiatura e azioni chiave).
+     */
+    private TextField searchTesto;
     /**
      * Bottone per resettare i filtri di ricerca applicati.
      * Permette di tornare alla visualizzazione completa degli scenari.
      */
     private Button resetButton;
     /**
-     * Lista di tutti gli scenari caricati.
-     * Utilizzata per applicare i filtri e popolare la griglia.
+     * Data provider della griglia: carica dal database solo la pagina corrente.
+     */
+    private final CallbackDataProvider<Scenario, Void> scenariosDataProvider =
+            DataProvider.fromCallbacks(this::fetchCurrentPage, query -> countCurrentPage());
+    /**
+     * Cursori da cui iniziano le pagine già raggiunte, indicizzati per numero di pagina.
+     * Permettono di tornare a una pagina senza ricalcolarne la posizione.
+     */
+    private final Map<Integer, ScenarioCursor> pageCursors = new HashMap<>();
+    /**
+     * Filtro applicato alla ricerca, costruito dai campi di ricerca.
+     */
+    private ScenarioFilter currentFilter = ScenarioFilter.NONE;
+    /**
+     * Ordinamento applicato alla ricerca, scelto dalle intestazioni della griglia.
      */
-    private List<Scenario> allScenarios = new ArrayList<>();
+    private ScenarioSort currentSort = ScenarioSort.DEFAULT;
     /**
-     * Lista di scenari filtrati in base ai criteri di ricerca.
-     * Utilizzata per visualizzare solo gli scenari che soddisfano i filtri applicati.
+     * Numero totale di scenari che soddisfano il filtro corrente.
      */
-    private List<Scenario> filteredScenarios = new ArrayList<>();
+    private int totalScenarios = 0;
+    /**
+     * Estratti dei contenuti corrispondenti alla ricerca full-text per gli scenari della pagina corrente.
+     */
+    private Map<Integer, String> currentSnippets = Map.of();
 
     private final Logger logger = org.slf4j.LoggerFactory.getLogger(ScenariosListView.class);
 
@@ -299,7 +332,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         customHeader.add(newScenarioButton);
 
         configureSearchFilters();
-        HorizontalLayout filterLayout = new HorizontalLayout(searchPatientType, searchTitolo, searchTipo, searchAutori, searchPatologia, resetButton);
+        HorizontalLayout filterLayout = new HorizontalLayout(searchTesto, searchPatientType, searchTitolo, searchTipo, searchAutori, searchPatologia, resetButton);
         filterLayout.setWidthFull();
         filterLayout.setPadding(true);
         filterLayout.setSpacing(true);
@@ -363,6 +396,11 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         searchPatologia.setValueChangeMode(ValueChangeMode.LAZY);
         searchPatologia.addValueChangeListener(e -> applyFiltersAndRefreshGrid());
 
+        searchTesto = FieldGenerator.createTextField("Cerca nei contenuti", "Parole chiave...", false);
+        searchTesto.setClearButtonVisible(true);
+        searchTesto.setValueChangeMode(ValueChangeMode.LAZY);
+        searchTesto.addValueChangeListener(e -> applyFiltersAndRefreshGrid());
+
         resetButton = new Button("Reset Filtri", new Icon(VaadinIcon.CLOSE_CIRCLE_O));
         resetButton.addThemeVariants(ButtonVariant.LUMO_TERTIARY);
         resetButton.getStyle().set("margin-top", "auto");
@@ -372,6 +410,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
             searchAutori.clear();
             searchTipo.setValue("Tutti");
             searchPatologia.clear();
+            searchTesto.clear();
             applyFiltersAndRefreshGrid();
         });
     }
@@ -385,29 +424,34 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         }
 
         String tipologiaPatientFilter = searchPatientType.getValue() != null ? searchPatientType.getValue() : "Tutti";
-        String titoloFilter = searchTitolo.getValue().trim().toLowerCase();
-        String autoriFilter = searchAutori.getValue().trim().toLowerCase();
+        String titoloFilter = searchTitolo.getValue().trim();
+        String autoriFilter = searchAutori.getValue().trim();
         String tipoFilter = searchTipo.getValue() != null ? searchTipo.getValue() : "Tutti";
-        String patologiaFilter = searchPatologia.getValue().trim().toLowerCase();
-
-        filteredScenarios = allScenarios.stream()
-                .filter(scenario -> "Tutti".equals(tipologiaPatientFilter) ||
-                        (scenario.getTipologia() != null && scenario.getTipologia().equalsIgnoreCase(tipologiaPatientFilter)))
-                .filter(scenario -> titoloFilter.isEmpty() ||
-                        (scenario.getTitolo() != null && scenario.getTitolo().toLowerCase().contains(titoloFilter)))
-                .filter(scenario -> autoriFilter.isEmpty() ||
-                        (scenario.getAutori() != null && scenario.getAutori().toLowerCase().contains(autoriFilter)))
-                .filter(scenario -> "Tutti".equals(tipoFilter) ||
-                        (scenarioService.getScenarioType(scenario.getId()) != null && scenarioService.getScenarioType(scenario.getId()).equalsIgnoreCase(tipoFilter)))
-                .filter(scenario -> patologiaFilter.isEmpty() ||
-                        (scenario.getPatologia() != null && scenario.getPatologia().toLowerCase().contains(patologiaFilter)))
-                .collect(Collectors.toList());
-
-        currentPage = 0;
+        String patologiaFilter = searchPatologia.getValue().trim();
+        String testoFilter = searchTesto.getValue().trim();
+
+        currentFilter = new ScenarioFilter(
+                "Tutti".equals(tipologiaPatientFilter) ? null : tipologiaPatientFilter,
+                titoloFilter,
+                autoriFilter,
+                "Tutti".equals(tipoFilter) ? null : tipoFilter,
+                patologiaFilter,
+                testoFilter);
+        totalScenarios = scenarioService.countScenarios(currentFilter);
+
+        resetPaging();
         updateGridItems();
         updatePaginationInfo();
     }
 
+    /**
+     * Torna alla prima pagina e dimentica i cursori calcolati per il filtro o l'ordinamento precedente.
+     */
+    private void resetPaging() {
+        currentPage = 0;
+        pageCursors.clear();
+    }
+
     /**
      * Configura le colonne e le proprietà della tabella (Grid) degli scenari.
      */
@@ -416,6 +460,14 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         scenariosGrid.addClassName(LumoUtility.BorderRadius.MEDIUM);
         scenariosGrid.addClassName(LumoUtility.BoxShadow.SMALL);
         scenariosGrid.getStyle().set("min-height", "400px");
+        scenariosGrid.setPageSize(PAGE_SIZE);
+        scenariosGrid.setItems(scenariosDataProvider);
+        // Un nuovo ordinamento riparte dalla prima pagina: i cursori dipendono dall'ordine.
+        scenariosGrid.addSortListener(event -> {
+            currentSort = toScenarioSort(event.getSortOrder());
+            resetPaging();
+            updatePaginationInfo();
+        });
 
         scenariosGrid.addColumn(new ComponentRenderer<>(scenario -> {
                     String patientType = scenario.getTipologia() != null ? scenario.getTipologia() : "Unknown";
@@ -459,7 +511,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                     return span;
                 })).setHeader("Tipo Paziente")
                 .setFlexGrow(0)
-                .setComparator(Comparator.comparing(Scenario::getTipologia, Comparator.nullsLast(String::compareToIgnoreCase)));
+                .setSortProperty(ScenarioSort.Field.TIPOLOGIA_PAZIENTE.name());
 
         scenariosGrid.addColumn(new ComponentRenderer<>(scenario -> {
                     String titolo = scenario.getTitolo() != null ? scenario.getTitolo() : "";
@@ -472,10 +524,10 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                 })).setHeader("Titolo")
                 .setSortable(true)
                 .setFlexGrow(1)
-                .setComparator(Comparator.comparing(Scenario::getTitolo, Comparator.nullsLast(String::compareToIgnoreCase)));
+                .setSortProperty(ScenarioSort.Field.TITOLO.name());
 
         scenariosGrid.addColumn(new ComponentRenderer<>(scenario -> {
-                    String tipo = scenarioService.getScenarioType(scenario.getId());
+                    String tipo = scenario.getScenarioType();
                     tipo = tipo != null ? tipo : "N/D";
 
                     HorizontalLayout container = new HorizontalLayout();
@@ -530,7 +582,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                 })).setHeader("Tipo")
                 .setSortable(true)
                 .setFlexGrow(2)
-                .setComparator(Comparator.comparing(s -> scenarioService.getScenarioType(s.getId()), Comparator.nullsLast(String::compareToIgnoreCase)));
+                .setSortProperty(ScenarioSort.Field.TIPO_SCENARIO.name());
 
         scenariosGrid.addColumn(new ComponentRenderer<>(scenario -> {
                     String autori = scenario.getAutori() != null ? scenario.getAutori() : "";
@@ -543,7 +595,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                 })).setHeader("Autori")
                 .setSortable(true)
                 .setFlexGrow(1)
-                .setComparator(Comparator.comparing(Scenario::getAutori, Comparator.nullsLast(String::compareToIgnoreCase)));
+                .setSortProperty(ScenarioSort.Field.AUTORI.name());
 
         scenariosGrid.addColumn(new ComponentRenderer<>(scenario -> {
                     String patologia = scenario.getPatologia() != null ? scenario.getPatologia() : "";
@@ -556,9 +608,13 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                 })).setHeader("Patologia")
                 .setSortable(true)
                 .setFlexGrow(1)
-                .setComparator(Comparator.comparing(Scenario::getPatologia, Comparator.nullsLast(String::compareToIgnoreCase)));
+                .setSortProperty(ScenarioSort.Field.PATOLOGIA.name());
 
         scenariosGrid.addColumn(new ComponentRenderer<>(scenario -> {
+                    String snippet = currentSnippets.get(scenario.getId());
+                    if (snippet != null && !snippet.isEmpty()) {
+                        return createSnippet(snippet);
+                    }
                     String descrizione = scenario.getDescrizione() != null ? scenario.getDescrizione() : "";
                     Div container = new Div();
                     container.setWidthFull();
@@ -628,6 +684,42 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         });
     }
 
+    /**
+     * Crea il componente che mostra l'estratto della ricerca full-text, evidenziando i termini trovati.
+     * L'estratto è testo semplice: ogni parte viene inserita come testo, senza interpretare HTML.
+     *
+     * @param snippet L'estratto con i termini delimitati dai marcatori di {@link ScenarioFullTextIndex}.
+     * @return Il contenitore con l'estratto.
+     */
+    private Div createSnippet(String snippet) {
+        Div container = new Div();
+        container.getStyle()
+                .set("max-width", "300px")
+                .set("white-space", "normal")
+                .set("font-size", "var(--lumo-font-size-s)");
+        int start = 0;
+        while (start < snippet.length()) {
+            int open = snippet.indexOf(ScenarioFullTextIndex.HIGHLIGHT_START, start);
+            if (open < 0) {
+                container.add(new Span(snippet.substring(start)));
+                break;
+            }
+            int close = snippet.indexOf(ScenarioFullTextIndex.HIGHLIGHT_END, open);
+            if (close < 0) {
+                close = snippet.length();
+            }
+            container.add(new Span(snippet.substring(start, open)));
+            Span match = new Span(snippet.substring(open + 1, close));
+            match.addClassNames(LumoUtility.FontWeight.BOLD, LumoUtility.Background.PRIMARY_10);
+            container.add(match);
+            start = close + 1;
+        }
+        container.getElement().setAttribute("title", snippet
+                .replace(String.valueOf(ScenarioFullTextIndex.HIGHLIGHT_START), "")
+                .replace(String.valueOf(ScenarioFullTextIndex.HIGHLIGHT_END), ""));
+        return container;
+    }
+
     /**
      * Configura i controlli di paginazione per la griglia.
      */
@@ -669,7 +761,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         });
         nextPageButton.addClickListener(e -> {
             if (!detached.get()) {
-                int totalPages = (int) Math.ceil((double) filteredScenarios.size() / PAGE_SIZE);
+                int totalPages = (int) Math.ceil((double) totalScenarios / PAGE_SIZE);
                 if (currentPage < totalPages - 1) {
                     currentPage++;
                     updateGridItems();
@@ -679,7 +771,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         });
         lastPageButton.addClickListener(e -> {
             if (!detached.get()) {
-                int totalPages = Math.max(1, (int) Math.ceil((double) filteredScenarios.size() / PAGE_SIZE));
+                int totalPages = Math.max(1, (int) Math.ceil((double) totalScenarios / PAGE_SIZE));
                 if (currentPage < totalPages - 1) {
                     currentPage = totalPages - 1;
                     updateGridItems();
@@ -699,7 +791,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         if (detached.get()) {
             return;
         }
-        int totalItems = filteredScenarios.size();
+        int totalItems = totalScenarios;
         int totalPages = Math.max(1, (int) Math.ceil((double) totalItems / PAGE_SIZE));
 
         if (totalItems == 0) {
@@ -726,15 +818,75 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         if (detached.get()) {
             return;
         }
-        int fromIndex = currentPage * PAGE_SIZE;
-        int toIndex = Math.min(fromIndex + PAGE_SIZE, filteredScenarios.size());
+        scenariosDataProvider.refreshAll();
+        getUI().ifPresent(ui -> ui.access(() -> scenariosGrid.setVisible(true)));
+    }
 
-        if (fromIndex < filteredScenarios.size() && fromIndex < toIndex) {
-            scenariosGrid.setItems(new ListDataProvider<>(filteredScenarios.subList(fromIndex, toIndex)));
-        } else {
-            scenariosGrid.setItems(new ArrayList<>());
+    /**
+     * Carica dal database la pagina corrente, proseguendo dal cursore della pagina precedente.
+     * Il cursore della pagina successiva viene memorizzato per la navigazione in avanti.
+     *
+     * @param query La richiesta della griglia, relativa alle righe della pagina corrente.
+     * @return Gli scenari richiesti dalla griglia.
+     */
+    private Stream<Scenario> fetchCurrentPage(Query<Scenario, Void> query) {
+        int offset = query.getOffset();
+        int limit = query.getLimit();
+        if (detached.get()) {
+            return Stream.empty();
         }
-        getUI().ifPresent(ui -> ui.access(() -> scenariosGrid.setVisible(true)));
+        int page = currentPage;
+        ScenarioCursor cursor = page == 0 ? null
+                : pageCursors.computeIfAbsent(page, p -> scenarioService.getCursorAt(currentFilter, searchSort(), p * PAGE_SIZE, totalScenarios));
+        if (page > 0 && cursor == null) {
+            return Stream.empty(); // La pagina non esiste più (ad esempio dopo un'eliminazione).
+        }
+        ScenarioPage result = scenarioService.searchScenarios(currentFilter, searchSort(), cursor, PAGE_SIZE);
+        if (result.hasNext()) {
+            pageCursors.put(page + 1, result.nextCursor());
+        }
+        currentSnippets = result.snippets();
+        return result.scenarios().stream().skip(offset).limit(limit);
+    }
+
+    /**
+     * Restituisce l'ordinamento della ricerca: con un testo da cercare e nessun ordinamento scelto
+     * dall'utente, i risultati più pertinenti vengono mostrati per primi.
+     *
+     * @return Lo {@link ScenarioSort} da applicare alla ricerca.
+     */
+    private ScenarioSort searchSort() {
+        if (ScenarioSort.DEFAULT.equals(currentSort) && currentFilter.testo() != null && !currentFilter.testo().isBlank()) {
+            return new ScenarioSort(ScenarioSort.Field.RILEVANZA, true);
+        }
+        return currentSort;
+    }
+
+    /**
+     * Calcola il numero di righe della pagina corrente a partire dal totale degli scenari filtrati.
+     *
+     * @return Il numero di scenari visualizzati nella pagina corrente.
+     */
+    private int countCurrentPage() {
+        return Math.max(0, Math.min(PAGE_SIZE, totalScenarios - currentPage * PAGE_SIZE));
+    }
+
+    /**
+     * Converte l'ordinamento scelto nelle intestazioni della griglia nell'ordinamento della ricerca.
+     *
+     * @param sortOrder L'ordinamento della griglia; vuoto per l'ordinamento predefinito.
+     * @return Lo {@link ScenarioSort} corrispondente.
+     */
+    private ScenarioSort toScenarioSort(List<GridSortOrder<Scenario>> sortOrder) {
+        if (sortOrder.isEmpty()) {
+            return ScenarioSort.DEFAULT;
+        }
+        GridSortOrder<Scenario> first = sortOrder.getFirst();
+        return first.getSorted().getSortOrder(first.getDirection())
+                .findFirst()
+                .map(QuerySortOrder::getSorted)
+                .map(property -> new ScenarioSort(ScenarioSort.Field.valueOf(property), first.getDirection() == SortDirection.ASCENDING))
+                .orElse(ScenarioSort.DEFAULT);
     }
 
     /**
@@ -747,7 +899,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
         if (detached.get() || scenario == null) {
             return;
         }
-        String scenarioType = scenarioService.getScenarioType(scenario.getId());
+        String scenarioType = scenario.getScenarioType();
 
         // Se lo scenario non è avanzato o simulato, esporta tutto direttamente
         if (!"Advanced Scenario".equals(scenarioType) && !"Patient Simulated Scenario".equals(scenarioType)) {
@@ -1094,22 +1246,25 @@ public class ScenariosListView extends Composite<VerticalLayout> {
             searchAutori.setEnabled(false);
             searchTipo.setEnabled(false);
             searchPatologia.setEnabled(false);
+            searchTesto.setEnabled(false);
             resetButton.setEnabled(false);
         });
 
+        ScenarioFilter filter = currentFilter;
         executorService.submit(() -> {
             try {
-                List<Scenario> fetchedScenarios = scenarioService.getAllScenarios();
-                allScenarios = (fetchedScenarios != null) ? new ArrayList<>(fetchedScenarios) : new ArrayList<>();
-                // Ordina gli scenari per ID in ordine decrescente
-                allScenarios.sort(Comparator.comparing(Scenario::getId, Comparator.nullsLast(Comparator.reverseOrder())));
+                int total = scenarioService.countScenarios(filter);
 
                 if (detached.get() || ui.isClosing()) {
                     return;
                 }
                 ui.access(() -> {
                     try {
-                        applyFiltersAndRefreshGrid(); // Applica i filtri e aggiorna la griglia
+                        // Riparte dalla prima pagina: la griglia carica solo quella.
+                        totalScenarios = total;
+                        resetPaging();
+                        updateGridItems();
+                        updatePaginationInfo();
                     } finally {
                         progressBar.setVisible(false);
                         scenariosGrid.setVisible(true);
@@ -1120,6 +1275,7 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                         searchAutori.setEnabled(true);
                         searchTipo.setEnabled(true);
                         searchPatologia.setEnabled(true);
+                        searchTesto.setEnabled(true);
                         resetButton.setEnabled(true);
                     }
                 });
@@ -1136,9 +1292,10 @@ public class ScenariosListView extends Composite<VerticalLayout> {
                         searchAutori.setEnabled(true);
                         searchTipo.setEnabled(true);
                         searchPatologia.setEnabled(true);
+                        searchTesto.setEnabled(true);
                         resetButton.setEnabled(true);
-                        allScenarios.clear();
-                        filteredScenarios.clear();
+                        totalScenarios = 0;
+                        resetPaging();
                         updateGridItems();
                         updatePaginationInfo();
                     });
@@ -17,6 +17,7 @@ import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.utils.StyleApp;
@@ -34,7 +35,7 @@ import org.vaadin.tinymce.TinyMce;
  * prima dell'inizio della simulazione. Questa vista è parte del flusso di creazione dello scenario.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Informazioni per i Genitori")
 @Route(value = "infoGenitori")
@@ -163,9 +164,9 @@ public class GenitoriView extends Composite<VerticalLayout> implements HasUrlPar
             getContent().add(progressBar); // Mostra una progress bar durante il salvataggio
 
             try {
-                boolean success = scenarioService.updateScenarioGenitoriInfo(
-                        scenarioId, genitoriEditor.getValue() // Salva il contenuto dell'editor
-                );
+                boolean success = scenarioService.applyPatch(
+                        scenarioId, ScenarioPatch.of(ScenarioPatch.Field.INFO_GENITORE, genitoriEditor.getValue()) // Salva il contenuto dell'editor
+                ).success();
 
                 // Aggiorna l'UI dopo il salvataggio
                 ui.accessSynchronously(() -> {
@@ -17,6 +17,7 @@ import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.utils.StyleApp;
@@ -34,7 +35,7 @@ import org.vaadin.tinymce.TinyMce;
  * all'inizio della simulazione (T0). Questa vista è parte del flusso di creazione dello scenario.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Liquidi e dosi farmaci")
 @Route(value = "liquidi")
@@ -173,9 +174,9 @@ public class LiquidiView extends Composite<VerticalLayout> implements HasUrlPara
             getContent().add(progressBar); // Mostra una progress bar durante il salvataggio
 
             try {
-                boolean success = scenarioService.updateScenarioLiquidi(
-                        scenarioId, liquidiEditor.getValue() // Salva il contenuto dell'editor
-                );
+                boolean success = scenarioService.applyPatch(
+                        scenarioId, ScenarioPatch.of(ScenarioPatch.Field.LIQUIDI, liquidiEditor.getValue()) // Salva il contenuto dell'editor
+                ).success();
 
                 // Aggiorna l'UI dopo il salvataggio
                 ui.accessSynchronously(() -> {
@@ -17,6 +17,7 @@ import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.utils.StyleApp;
@@ -34,7 +35,7 @@ import org.vaadin.tinymce.TinyMce;
  * da applicare al manichino/paziente simulato per lo scenario corrente.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Moulage")
 @Route(value = "moulage")
@@ -172,9 +173,9 @@ public class MoulageView extends Composite<VerticalLayout> implements HasUrlPara
             getContent().add(progressBar); // Mostra una progress bar durante il salvataggio
 
             try {
-                boolean success = scenarioService.updateScenarioMoulage(
-                        scenarioId, moulageEditor.getValue() // Salva il contenuto dell'editor
-                );
+                boolean success = scenarioService.applyPatch(
+                        scenarioId, ScenarioPatch.of(ScenarioPatch.Field.MOULAGE, moulageEditor.getValue()) // Salva il contenuto dell'editor
+                ).success();
 
                 // Aggiorna l'UI dopo il salvataggio
                 ui.accessSynchronously(() -> {
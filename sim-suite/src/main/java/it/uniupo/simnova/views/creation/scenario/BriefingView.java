@@ -13,6 +13,7 @@ import com.vaadin.flow.router.*;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.utils.StyleApp;
 import it.uniupo.simnova.views.common.utils.TinyEditor;
@@ -31,7 +32,7 @@ import java.util.Optional;
  * </p>
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Briefing")
 @Route(value = "briefing")
@@ -192,9 +193,9 @@ public class BriefingView extends Composite<VerticalLayout> implements HasUrlPar
             getContent().add(progressBar);
 
             try {
-                boolean success = scenarioService.updateScenarioBriefing(
-                        scenarioId, briefingEditor.getValue()
-                );
+                boolean success = scenarioService.applyPatch(
+                        scenarioId, ScenarioPatch.of(ScenarioPatch.Field.BRIEFING, briefingEditor.getValue())
+                ).success();
 
                 ui.accessSynchronously(() -> {
                     getContent().remove(progressBar);
@@ -13,6 +13,7 @@ import com.vaadin.flow.router.*;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.utils.StyleApp;
 import it.uniupo.simnova.views.common.utils.TinyEditor;
@@ -30,7 +31,7 @@ import java.util.Optional;
  * </p>
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Descrizione")
 @Route(value = "descrizione")
@@ -194,9 +195,9 @@ public class DescrizioneView extends Composite<VerticalLayout> implements HasUrl
 
             try {
 
-                boolean success = scenarioService.updateScenarioDescription(
-                        scenarioId, descriptionEditor.getValue()
-                );
+                boolean success = scenarioService.applyPatch(
+                        scenarioId, ScenarioPatch.of(ScenarioPatch.Field.DESCRIZIONE, descriptionEditor.getValue())
+                ).success();
 
                 ui.accessSynchronously(() -> {
                     getContent().remove(progressBar);
@@ -13,6 +13,7 @@ import com.vaadin.flow.router.*;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.utils.StyleApp;
 import it.uniupo.simnova.views.common.utils.TinyEditor;
@@ -31,7 +32,7 @@ import java.util.Optional;
  * </p>
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Patto d'Aula")
 @Route(value = "pattoaula")
@@ -212,9 +213,9 @@ public class PattoaulaView extends Composite<VerticalLayout> implements HasUrlPa
             getContent().add(progressBar);
 
             try {
-                boolean success = scenarioService.updateScenarioPattoAula(
-                        scenarioId, pattoAulaEditor.getValue()
-                );
+                boolean success = scenarioService.applyPatch(
+                        scenarioId, ScenarioPatch.of(ScenarioPatch.Field.PATTO_AULA, pattoAulaEditor.getValue())
+                ).success();
 
                 ui.accessSynchronously(() -> {
                     getContent().remove(progressBar);
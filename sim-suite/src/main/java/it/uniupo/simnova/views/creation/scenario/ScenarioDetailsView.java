@@ -19,6 +19,7 @@ import com.vaadin.flow.router.*;
 import com.vaadin.flow.theme.lumo.LumoUtility;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.domain.common.Tempo;
+import it.uniupo.simnova.service.execution.ExecutionEngine;
 import it.uniupo.simnova.service.scenario.components.*;
 import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
 import it.uniupo.simnova.service.scenario.types.PatientSimulatedScenarioService;
@@ -48,7 +49,7 @@ import static it.uniupo.simnova.views.ui.helper.TabsSupport.createTabWithIcon;
  * </p>
  *
  * @author Alessandro Zappatore
- * @version 3.0
+ * @version 3.3
  */
 @SuppressWarnings("ThisExpressionReferencesGlobalObjectJS")
 // Sopprime l'avviso per l'uso di "this" in JavaScript inline.
@@ -111,6 +112,11 @@ public class ScenarioDetailsView extends Composite<VerticalLayout> implements Ha
      */
     private final PresidiService presidiService;
 
+    /**
+     * Motore di esecuzione, usato per la prova dello scenario in tempo virtuale.
+     */
+    private final ExecutionEngine executionEngine;
+
     /**
      * L'ID dello scenario attualmente visualizzato in questa vista.
      */
@@ -175,13 +181,15 @@ public class ScenarioDetailsView extends Composite<VerticalLayout> implements Ha
      * @param esameFisicoService              Il servizio per la gestione degli esami fisici.
      * @param pazienteT0Service               Il servizio per la gestione dei pazienti T0.
      * @param presidiService                  Il servizio per la gestione dei presidi.
+     * @param executionEngine                 Il motore di esecuzione delle simulazioni.
      */
     @Autowired
     public ScenarioDetailsView(ScenarioService scenarioService, FileStorageService fileStorageService,
                                MaterialeService materialeNecessario, AdvancedScenarioService advancedScenarioService,
                                PatientSimulatedScenarioService patientSimulatedScenarioService,
                                AzioneChiaveService azionechiaveService, EsameRefertoService esameRefertoService,
-                               EsameFisicoService esameFisicoService, PazienteT0Service pazienteT0Service, PresidiService presidiService) {
+                               EsameFisicoService esameFisicoService, PazienteT0Service pazienteT0Service, PresidiService presidiService,
+                               ExecutionEngine executionEngine) {
         this.scenarioService = scenarioService;
         this.fileStorageService = fileStorageService;
         this.materialeNecessario = materialeNecessario;
@@ -192,6 +200,7 @@ public class ScenarioDetailsView extends Composite<VerticalLayout> implements Ha
         this.esameFisicoService = esameFisicoService;
         this.pazienteT0Service = pazienteT0Service;
         this.presidiService = presidiService;
+        this.executionEngine = executionEngine;
 
         // Aggiunge una classe CSS specifica al layout principale del componente.
         getContent().addClassName("scenario-details-view");
@@ -264,6 +273,20 @@ public class ScenarioDetailsView extends Composite<VerticalLayout> implements Ha
         initView(); // Inizializza i componenti dell'UI con i dati dello scenario.
     }
 
+    /**
+     * Eseguito quando la vista viene distaccata dall'UI.
+     * Scrive subito le modifiche in linea ancora in attesa, così la vista successiva le trova già salvate.
+     *
+     * @param detachEvent L'evento di distacco.
+     */
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        super.onDetach(detachEvent);
+        if (scenarioId != null) {
+            scenarioService.flushPendingEdits(scenarioId);
+        }
+    }
+
     /**
      * Inizializza i componenti dell'interfaccia utente della vista, popolandoli con i dati dello scenario.
      * Questo metodo viene chiamato dopo che lo scenario è stato caricato con successo.
@@ -461,6 +484,8 @@ public class ScenarioDetailsView extends Composite<VerticalLayout> implements Ha
             Component timelineContent = TimesSupport.createTimelineContent(tempi, scenarioId, advancedScenarioService, scenarioService.isPediatric(scenarioId));
             tabsToContent.put(tabTimeline, timelineContent);
             enhancedTabs.add(tabTimeline);
+            // La timeline può essere provata in tempo accelerato prima di eseguirla con gli studenti.
+            editButtonContainer.add(DryRunSupport.createDryRunButton(scenarioId, executionEngine, advancedScenarioService));
             logger.debug("Scheda 'Timeline' aggiunta per lo scenario ID {}.", scenarioId);
         } else {
             logger.debug("Nessun tempo trovato per lo scenario ID {}. Scheda 'Timeline' non aggiunta.", scenarioId);
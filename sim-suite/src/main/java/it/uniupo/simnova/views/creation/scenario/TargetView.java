@@ -20,6 +20,7 @@ import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.router.*;
 import it.uniupo.simnova.domain.scenario.Scenario;
 import it.uniupo.simnova.service.scenario.ScenarioService;
+import it.uniupo.simnova.service.scenario.patch.ScenarioPatch;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.views.common.components.AppHeader;
 import it.uniupo.simnova.views.common.components.CreditsComponent;
@@ -44,7 +45,7 @@ import static it.uniupo.simnova.views.constant.TargetConst.*;
  * </p>
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 @PageTitle("Target")
 @Route(value = "target")
@@ -660,7 +661,7 @@ public class TargetView extends Composite<VerticalLayout> implements HasUrlParam
         logger.info("Stringa target costruita per scenario {}: {}", scenarioId, targetString);
 
         try {
-            boolean success = scenarioService.updateScenarioTarget(scenarioId, targetString);
+            boolean success = scenarioService.applyPatch(scenarioId, ScenarioPatch.of(ScenarioPatch.Field.TARGET, targetString)).success();
 
             if (success) {
                 logger.info("Target aggiornato con successo per scenario {}", scenarioId);
@@ -674,7 +675,7 @@ public class TargetView extends Composite<VerticalLayout> implements HasUrlParam
                     ui.ifPresent(theUI -> theUI.navigate("descrizione/" + scenarioId));
                 }
             } else {
-                logger.error("Salvataggio target fallito per scenario {} tramite updateScenarioTarget.", scenarioId);
+                logger.error("Salvataggio target fallito per scenario {} tramite applyPatch.", scenarioId);
                 Notification.show("Errore durante il salvataggio dei destinatari.", 3000, Notification.Position.MIDDLE)
                         .addThemeVariants(NotificationVariant.LUMO_ERROR);
             }
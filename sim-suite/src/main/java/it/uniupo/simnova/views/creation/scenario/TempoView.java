@@ -16,6 +16,8 @@ import it.uniupo.simnova.domain.common.Tempo;
 import it.uniupo.simnova.domain.paziente.PazienteT0;
 import it.uniupo.simnova.service.scenario.ScenarioService;
 import it.uniupo.simnova.service.scenario.components.PazienteT0Service;
+import it.uniupo.simnova.service.scenario.timeline.CompiledTimeline;
+import it.uniupo.simnova.service.scenario.timeline.TimelineChangeSummary;
 import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.views.common.components.AppHeader;
@@ -42,7 +44,7 @@ import static it.uniupo.simnova.views.constant.AdditionParametersConst.CUSTOM_PA
  * </p>
  *
  * @author Alessandro Zappatore
- * @version 1.1
+ * @version 1.4
  */
 @PageTitle("Tempi Scenario")
 @Route("tempi")
@@ -309,14 +311,21 @@ public class TempoView extends Composite<VerticalLayout> implements HasUrlParame
             }
 
 
-            boolean success = advancedScenarioService.saveTempi(scenarioId, allTempi);
+            TimelineChangeSummary summary = advancedScenarioService.saveTempiChanges(scenarioId, allTempi);
 
-            if (success) {
+            if (summary.success()) {
                 if (!mode.equals("edit")) {
                     Notification.show("Tempi dello scenario salvati con successo!", 3000,
                             Notification.Position.MIDDLE).addThemeVariants(NotificationVariant.LUMO_SUCCESS);
                 }
-                logger.info("Tempi salvati con successo per scenario {}", scenarioId);
+                logger.info("Tempi salvati con successo per scenario {}: {}", scenarioId, summary);
+
+                CompiledTimeline timeline = advancedScenarioService.getCompiledTimeline(scenarioId);
+                logger.debug("Transizioni compilate per scenario {}: {}", scenarioId, timeline);
+                if (timeline.deadEndCount() > 0) {
+                    Notification.show("Attenzione: " + timeline.deadEndCount() + " tempi rimandano a un tempo inesistente.", 5000,
+                            Notification.Position.MIDDLE).addThemeVariants(NotificationVariant.LUMO_WARNING);
+                }
 
 
                 if ("create".equals(mode)) {
@@ -345,7 +354,7 @@ public class TempoView extends Composite<VerticalLayout> implements HasUrlParame
             } else {
                 Notification.show("Errore durante il salvataggio dei tempi nel database.", 5000,
                         Notification.Position.MIDDLE).addThemeVariants(NotificationVariant.LUMO_ERROR);
-                logger.error("Errore durante il salvataggio dei tempi (scenarioService.saveTempi ha restituito false) per scenario {}",
+                logger.error("Errore durante il salvataggio dei tempi (saveTempiChanges non riuscito) per scenario {}",
                         scenarioId);
             }
         } catch (Exception e) {
@@ -401,7 +410,7 @@ public class TempoView extends Composite<VerticalLayout> implements HasUrlParame
                         4000, Notification.Position.BOTTOM_START).addThemeVariants(NotificationVariant.LUMO_WARNING);
 
                 // Carica i parametri aggiuntivi specifici per T0.
-                loadAdditionalParameters(t0Section, 0);
+                loadAdditionalParameters(t0Section, 0, advancedScenarioService.getParametriAggiuntiviByTempoId(0, scenarioId));
 
             } else if (existingT0.isEmpty() && "create".equals(mode)) {
                 // Se PazienteT0 non esiste nel DB e siamo in modalità "create", aggiunge una sezione T0 vuota e modificabile.
@@ -485,8 +494,8 @@ public class TempoView extends Composite<VerticalLayout> implements HasUrlParame
                             section.timerPicker.setValue(null); // Se il timer è 0 o negativo, lo imposta a null.
                         }
 
-                        // Carica i parametri aggiuntivi per questo tempo.
-                        loadAdditionalParameters(section, tempoId);
+                        // Popola i parametri aggiuntivi, già caricati insieme ai tempi.
+                        loadAdditionalParameters(section, tempoId, tempo.getParametriAggiuntivi());
                     } else {
                         logger.error("Impossibile trovare/creare la sezione UI per il tempo T{} durante il caricamento dello scenario ID {}. Dati non visualizzati correttamente.", tempoId, scenarioId);
                     }
@@ -511,18 +520,17 @@ public class TempoView extends Composite<VerticalLayout> implements HasUrlParame
     }
 
     /**
-     * Carica i {@link ParametroAggiuntivo parametri aggiuntivi} associati a un tempo specifico
-     * (identificato da <code>tempoId</code>) e a un dato scenario (<code>scenarioId</code>) dal database.
+     * Mostra i {@link ParametroAggiuntivo parametri aggiuntivi} di un tempo specifico
+     * (identificato da <code>tempoId</code>) dello scenario corrente.
      * Aggiunge i campi di input corrispondenti per questi parametri alla {@link TimeSection} fornita,
      * popolandoli con i valori recuperati.
      *
      * @param section La {@link TimeSection} (componente UI) a cui aggiungere e visualizzare i parametri aggiuntivi.
-     * @param tempoId L'ID del tempo (0 per T0, 1 per T1, ecc.) di cui caricare i parametri aggiuntivi.
+     * @param tempoId L'ID del tempo (0 per T0, 1 per T1, ecc.) a cui appartengono i parametri.
+     * @param params  I parametri aggiuntivi del tempo; può essere <code>null</code>.
      */
-    private void loadAdditionalParameters(TimeSection section, int tempoId) {
-        List<ParametroAggiuntivo> params = advancedScenarioService.getParametriAggiuntiviByTempoId(tempoId, scenarioId);
-
-        if (!params.isEmpty()) {
+    private void loadAdditionalParameters(TimeSection section, int tempoId, List<ParametroAggiuntivo> params) {
+        if (params != null && !params.isEmpty()) {
             logger.debug("Caricamento di {} parametri aggiuntivi per il tempo T{} dello scenario ID {}.", params.size(), tempoId, scenarioId);
             for (ParametroAggiuntivo param : params) {
                 String paramName = param.getNome();
@@ -5,30 +5,63 @@ import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.router.BeforeEnterEvent;
+import com.vaadin.flow.router.BeforeEnterObserver;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import it.uniupo.simnova.service.execution.ExecutionEngine;
+import it.uniupo.simnova.service.execution.ExecutionSession;
+import it.uniupo.simnova.service.execution.alarm.AlarmEvaluator;
+import it.uniupo.simnova.service.execution.alarm.AlarmEvent;
+import it.uniupo.simnova.service.execution.trend.VitalTrend;
 import it.uniupo.simnova.service.storage.FileStorageService;
 import it.uniupo.simnova.views.common.components.AppHeader;
+import it.uniupo.simnova.views.common.components.LiveMonitor;
 import it.uniupo.simnova.views.common.utils.StyleApp;
+import it.uniupo.simnova.views.ui.helper.SessionVitalSignsProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Vista di esecuzione dell'applicazione SIM SUITE.
- * Fornisce la struttura base della pagina, indicando che la funzionalità non è ancora implementata.
+ * Con il parametro <code>session</code> nell'URL (es. <code>execution?session=3</code>) mostra il monitor
+ * in tempo reale della sessione in esecuzione, con i livelli di allarme calcolati dalla sessione;
+ * altrimenti indica che la funzionalità non è ancora implementata.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.2
  */
 @PageTitle("Execution")
 @Route("execution")
-public class ExecutionView extends Composite<VerticalLayout> {
+public class ExecutionView extends Composite<VerticalLayout> implements BeforeEnterObserver {
+
+    /**
+     * Il logger per questa classe, utilizzato per registrare le sessioni richieste e non trovate.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionView.class);
+
+    /**
+     * Il motore di esecuzione da cui recuperare la sessione da monitorare.
+     */
+    private final ExecutionEngine executionEngine;
+
+    /**
+     * Il layout del contenuto, riempito all'ingresso nella vista.
+     */
+    private final VerticalLayout contentLayout;
 
     /**
      * Costruttore della vista di esecuzione.
-     * Inizializza la pagina con header, pulsante di ritorno e un messaggio centrale.
+     * Inizializza la pagina con header, pulsante di ritorno e l'area del contenuto.
      *
      * @param fileStorageService Servizio per la gestione dei file, utilizzato per l'AppHeader.
+     * @param executionEngine    Il motore di esecuzione delle simulazioni.
      */
-    public ExecutionView(FileStorageService fileStorageService) {
+    public ExecutionView(FileStorageService fileStorageService, ExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
 
         VerticalLayout mainLayout = StyleApp.getMainLayout(getContent());
 
@@ -40,23 +73,100 @@ public class ExecutionView extends Composite<VerticalLayout> {
 
         HorizontalLayout customHeader = StyleApp.getCustomHeader(backButton, header);
 
-        VerticalLayout contentLayout = StyleApp.getContentLayout();
-
-        // Sezione dell'header specifico per questa vista con titolo e sottotitolo informativo
-        VerticalLayout headerSection = StyleApp.getTitleSubtitle(
-                "SIM EXECUTION", // Titolo della sezione
-                "Funzionalità non implementata", // Sottotitolo informativo
-                VaadinIcon.BUILDING.create(), // Icona rappresentativa
-                "var(--lumo-primary-color)" // Colore dell'icona/titolo
-        );
-
-        contentLayout.add(headerSection);
+        contentLayout = StyleApp.getContentLayout();
 
         HorizontalLayout footerSection = StyleApp.getFooterLayout(null);
 
         // Aggiunge i componenti principali al layout radice della vista
         mainLayout.add(customHeader, contentLayout, footerSection);
     }
+
+    /**
+     * Mostra il monitor della sessione indicata nell'URL, se è in esecuzione.
+     *
+     * @param event L'evento di navigazione.
+     */
+    @Override
+    public void beforeEnter(BeforeEnterEvent event) {
+        contentLayout.removeAll();
+        ExecutionSession session = findSession(event.getLocation().getQueryParameters().getParameters().get("session"));
+        if (session == null) {
+            // Sezione dell'header specifico per questa vista con titolo e sottotitolo informativo
+            contentLayout.add(StyleApp.getTitleSubtitle(
+                    "SIM EXECUTION", // Titolo della sezione
+                    "Funzionalità non implementata", // Sottotitolo informativo
+                    VaadinIcon.BUILDING.create(), // Icona rappresentativa
+                    "var(--lumo-primary-color)" // Colore dell'icona/titolo
+            ));
+            return;
+        }
+        contentLayout.add(StyleApp.getTitleSubtitle(
+                "SIM EXECUTION",
+                "Sessione " + session.getId() + " dello scenario " + session.getScenarioId(),
+                VaadinIcon.HEART.create(),
+                "var(--lumo-primary-color)"
+        ));
+        LiveMonitor monitor = new LiveMonitor(new SessionVitalSignsProvider(session), session.getWaveforms());
+        monitor.setWidthFull();
+        bindAlarms(monitor, session.getAlarms());
+        contentLayout.add(monitor);
+    }
+
+    /**
+     * Collega il monitor agli allarmi della sessione finché è visibile: a ogni collegamento riceve i livelli correnti,
+     * poi solo i cambi.
+     *
+     * @param monitor Il monitor.
+     * @param alarms  Il valutatore degli allarmi della sessione.
+     */
+    private static void bindAlarms(LiveMonitor monitor, AlarmEvaluator alarms) {
+        Consumer<AlarmEvent> onAlarm = event -> showAlarm(monitor, alarms, event.channel());
+        monitor.addAttachListener(event -> {
+            alarms.addListener(onAlarm);
+            for (int channel = 0; channel < alarms.channelCount(); channel++) {
+                showAlarm(monitor, alarms, channel);
+            }
+        });
+        monitor.addDetachListener(event -> alarms.removeListener(onAlarm));
+    }
+
+    /**
+     * Mostra nel monitor il livello di allarme di un canale. Sistolica e diastolica condividono il box "PA",
+     * che mostra il più grave dei due.
+     *
+     * @param monitor Il monitor.
+     * @param alarms  Il valutatore degli allarmi.
+     * @param channel Il canale cambiato.
+     */
+    private static void showAlarm(LiveMonitor monitor, AlarmEvaluator alarms, int channel) {
+        if (channel == VitalTrend.SYSTOLIC || channel == VitalTrend.DIASTOLIC) {
+            monitor.setAlarmLevel("PA", Math.max(alarms.level(VitalTrend.SYSTOLIC), alarms.level(VitalTrend.DIASTOLIC)));
+        } else {
+            monitor.setAlarmLevel(alarms.channelName(channel), alarms.level(channel));
+        }
+    }
+
+    /**
+     * Cerca la sessione attiva indicata dal parametro dell'URL.
+     *
+     * @param values I valori del parametro <code>session</code>, o <code>null</code>.
+     * @return La sessione, o <code>null</code> se il parametro manca, non è valido o la sessione è terminata.
+     */
+    private ExecutionSession findSession(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        try {
+            ExecutionSession session = executionEngine.getSession(Long.parseLong(values.get(0)));
+            if (session == null) {
+                logger.warn("Sessione {} non trovata o già terminata.", values.get(0));
+            }
+            return session;
+        } catch (NumberFormatException e) {
+            logger.warn("ID sessione '{}' non valido.", values.get(0));
+            return null;
+        }
+    }
 }
 
 /*
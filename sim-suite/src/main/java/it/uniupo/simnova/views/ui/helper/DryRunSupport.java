@@ -0,0 +1,366 @@
+package it.uniupo.simnova.views.ui.helper;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.dialog.Dialog;
+import com.vaadin.flow.component.html.Paragraph;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.select.Select;
+import it.uniupo.simnova.service.execution.ExecutionEngine;
+import it.uniupo.simnova.service.execution.ExecutionSession;
+import it.uniupo.simnova.service.execution.SessionSnapshot;
+import it.uniupo.simnova.service.execution.SessionStatus;
+import it.uniupo.simnova.service.execution.clock.VirtualClock;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief;
+import it.uniupo.simnova.service.scenario.timeline.TimelinePaths;
+import it.uniupo.simnova.service.scenario.types.AdvancedScenarioService;
+import it.uniupo.simnova.views.common.utils.StyleApp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Classe di supporto per la prova di uno scenario avanzato in tempo virtuale.
+ * Fornisce un bottone che apre un dialog da cui avviare la prova a una velocità scelta, seguirne l'avanzamento
+ * e leggerne il riepilogo: percorso seguito e tempo trascorso in ciascun tempo. Il dialog mostra anche l'analisi
+ * di tutti i percorsi possibili, calcolata in background all'apertura.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+public final class DryRunSupport {
+
+    /**
+     * Il logger per questa classe.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DryRunSupport.class);
+
+    /**
+     * Le velocità proposte, per etichetta.
+     */
+    private static final Map<String, Double> SPEEDS = new LinkedHashMap<>();
+
+    /**
+     * Numero massimo di tempi mostrati per il percorso più lungo.
+     */
+    private static final int MAX_PATH_SHOWN = 20;
+
+    static {
+        SPEEDS.put("10x", 10.0);
+        SPEEDS.put("100x", 100.0);
+        SPEEDS.put("1000x", 1000.0);
+        SPEEDS.put("Massima", VirtualClock.MAX_SPEED);
+    }
+
+    /**
+     * Costruttore privato per evitare istanziazioni dirette della classe.
+     */
+    private DryRunSupport() {
+        // Costruttore privato per evitare istanziazioni dirette.
+    }
+
+    /**
+     * Crea il bottone che apre il dialog di prova dello scenario.
+     *
+     * @param scenarioId              L'ID dello scenario da provare.
+     * @param executionEngine         Il motore di esecuzione delle simulazioni.
+     * @param advancedScenarioService Il servizio degli scenari avanzati, per l'analisi dei percorsi.
+     * @return Il bottone.
+     */
+    public static Button createDryRunButton(int scenarioId, ExecutionEngine executionEngine,
+                                            AdvancedScenarioService advancedScenarioService) {
+        Button dryRunButton = StyleApp.getButton("Prova", VaadinIcon.FAST_FORWARD, ButtonVariant.LUMO_CONTRAST, "var(--lumo-base-color)");
+        dryRunButton.setTooltipText("Percorri la timeline dello scenario in tempo accelerato.");
+        dryRunButton.addClickListener(e -> openDialog(scenarioId, executionEngine, advancedScenarioService));
+        return dryRunButton;
+    }
+
+    /**
+     * Apre il dialog di prova. La sessione di prova viene interrotta alla chiusura del dialog.
+     *
+     * @param scenarioId              L'ID dello scenario da provare.
+     * @param executionEngine         Il motore di esecuzione delle simulazioni.
+     * @param advancedScenarioService Il servizio degli scenari avanzati.
+     */
+    private static void openDialog(int scenarioId, ExecutionEngine executionEngine, AdvancedScenarioService advancedScenarioService) {
+        Dialog dialog = new Dialog();
+        dialog.setHeaderTitle("Prova dello scenario");
+        dialog.setWidth("600px");
+
+        Select<String> speedSelect = new Select<>();
+        speedSelect.setLabel("Velocità");
+        speedSelect.setItems(SPEEDS.keySet());
+        speedSelect.setValue("Massima");
+
+        Paragraph help = new Paragraph("Senza risposta dell'istruttore, alla scadenza di ogni tempo la prova segue la transizione \"se NO\". "
+                + "Alla velocità massima la prova termina al primo tempo senza timer.");
+        help.getStyle().set("color", "var(--lumo-secondary-text-color)").set("font-size", "var(--lumo-font-size-s)");
+
+        Span status = new Span();
+        VerticalLayout summary = new VerticalLayout();
+        summary.setPadding(false);
+        summary.setSpacing(false);
+
+        Button startButton = StyleApp.getButton("Avvia", VaadinIcon.PLAY, ButtonVariant.LUMO_PRIMARY, "var(--lumo-base-color)");
+        Button yesButton = new Button("Sì");
+        Button noButton = new Button("No");
+        Button stopButton = StyleApp.getButton("Interrompi", VaadinIcon.STOP, ButtonVariant.LUMO_ERROR, "var(--lumo-base-color)");
+        yesButton.setTooltipText("Conferma l'azione attesa nel tempo corrente.");
+        noButton.setTooltipText("Segna come mancata l'azione attesa nel tempo corrente.");
+        yesButton.setEnabled(false);
+        noButton.setEnabled(false);
+        stopButton.setEnabled(false);
+
+        AtomicReference<ExecutionSession> current = new AtomicReference<>();
+        UI ui = UI.getCurrent();
+
+        startButton.addClickListener(e -> {
+            ExecutionSession session = executionEngine.dryRun(scenarioId, SPEEDS.get(speedSelect.getValue()));
+            if (session == null) {
+                Notification.show("Impossibile avviare la prova dello scenario.", 3000, Notification.Position.MIDDLE)
+                        .addThemeVariants(NotificationVariant.LUMO_ERROR);
+                return;
+            }
+            current.set(session);
+            summary.removeAll();
+            startButton.setEnabled(false);
+            speedSelect.setEnabled(false);
+            yesButton.setEnabled(true);
+            noButton.setEnabled(true);
+            stopButton.setEnabled(true);
+            logger.info("Prova della sessione {} avviata per lo scenario ID {} a velocità {}.", session.getId(), scenarioId, speedSelect.getValue());
+
+            // Alla velocità massima le istantanee sono molte più degli aggiornamenti che il client può ricevere:
+            // si accoda un aggiornamento solo quando il precedente è stato applicato, mostrando l'ultima istantanea.
+            AtomicBoolean pending = new AtomicBoolean();
+            AtomicReference<SessionSnapshot> latest = new AtomicReference<>(session.getSnapshot());
+            session.addListener(snapshot -> {
+                latest.set(snapshot);
+                if (pending.compareAndSet(false, true)) {
+                    access(ui, () -> {
+                        pending.set(false);
+                        status.setText(describe(latest.get()));
+                    });
+                }
+            });
+            session.whenEnded().thenAccept(debrief -> access(ui, () -> {
+                if (current.get() != session) {
+                    return;
+                }
+                current.set(null);
+                status.setText(describe(session.getSnapshot()));
+                showDebrief(summary, debrief);
+                startButton.setEnabled(true);
+                speedSelect.setEnabled(true);
+                yesButton.setEnabled(false);
+                noButton.setEnabled(false);
+                stopButton.setEnabled(false);
+            }));
+        });
+        yesButton.addClickListener(e -> {
+            ExecutionSession session = current.get();
+            if (session != null) {
+                session.actionPerformed();
+            }
+        });
+        noButton.addClickListener(e -> {
+            ExecutionSession session = current.get();
+            if (session != null) {
+                session.actionMissed();
+            }
+        });
+        stopButton.addClickListener(e -> {
+            ExecutionSession session = current.get();
+            if (session != null) {
+                session.stop();
+            }
+        });
+        dialog.addOpenedChangeListener(e -> {
+            if (!e.isOpened()) {
+                // Una prova non deve sopravvivere al dialog che la mostra.
+                ExecutionSession session = current.getAndSet(null);
+                if (session != null) {
+                    session.stop();
+                }
+            }
+        });
+
+        HorizontalLayout controls = new HorizontalLayout(speedSelect, startButton, yesButton, noButton, stopButton);
+        controls.setAlignItems(HorizontalLayout.Alignment.BASELINE);
+
+        VerticalLayout paths = new VerticalLayout(new Span("Analisi dei percorsi in corso..."));
+        paths.setPadding(false);
+        paths.setSpacing(false);
+        // Su timeline grandi l'analisi può richiedere qualche secondo: il dialog si apre subito.
+        CompletableFuture.supplyAsync(() -> advancedScenarioService.getTimelinePaths(scenarioId))
+                .whenComplete((result, error) -> access(ui, () -> {
+                    if (error != null) {
+                        logger.error("Errore durante l'analisi dei percorsi dello scenario ID {}", scenarioId, error);
+                        paths.removeAll();
+                        paths.add(new Span("Analisi dei percorsi non disponibile."));
+                    } else {
+                        showPaths(paths, result);
+                    }
+                }));
+
+        dialog.add(new VerticalLayout(paths, help, controls, status, summary));
+        dialog.getFooter().add(new Button("Chiudi", e -> dialog.close()));
+        dialog.open();
+    }
+
+    /**
+     * Mostra l'analisi dei percorsi possibili dello scenario.
+     *
+     * @param layout Il layout in cui mostrarla.
+     * @param paths  I percorsi dello scenario.
+     */
+    private static void showPaths(VerticalLayout layout, TimelinePaths paths) {
+        layout.removeAll();
+        if (paths.completedPaths() == 0) {
+            layout.add(warning("Nessun percorso arriva alla fine della simulazione."));
+        } else {
+            String count = paths.completedPaths() == Long.MAX_VALUE ? "Un numero enorme di" : String.valueOf(paths.completedPaths());
+            layout.add(new Span(count + " percorsi possibili, di durata da " + formatMillis(paths.shortestSeconds() * 1000)
+                    + " a " + formatMillis(paths.longestSeconds() * 1000)
+                    + " (mediana " + formatMillis(paths.percentileSeconds(0.5) * 1000) + ")."));
+            List<Integer> longest = paths.longestPath();
+            String signature = longest.size() > MAX_PATH_SHOWN
+                    ? tempi(longest.subList(0, MAX_PATH_SHOWN), " → ") + " → …"
+                    : tempi(longest, " → ");
+            layout.add(new Span("Percorso più lungo: " + signature));
+        }
+        if (paths.exceedsGenerale()) {
+            layout.add(warning("Il percorso più lungo supera il timer generale di " + formatMillis(paths.generaleSeconds() * 1000)
+                    + ": circa " + paths.pathsOverGenerale() + " percorsi verrebbero interrotti."));
+        }
+        if (paths.truncatedPaths() > 0) {
+            layout.add(new Span(paths.truncatedPaths() + " percorsi ripassano più di " + paths.maxVisits()
+                    + " volte dallo stesso tempo e non sono stati seguiti oltre."));
+        }
+        if (paths.blockedPaths() > 0) {
+            layout.add(warning(paths.blockedPaths() + " percorsi si bloccano nei tempi " + tempi(paths.deadEnds(), ", ")
+                    + ", che rimandano a un tempo inesistente."));
+        }
+        if (!paths.unreachable().isEmpty()) {
+            layout.add(warning("Tempi non raggiungibili: " + tempi(paths.unreachable(), ", ") + "."));
+        }
+        if (!paths.untimed().isEmpty()) {
+            layout.add(new Span("Tempi senza timer, in cui si attende l'istruttore: " + tempi(paths.untimed(), ", ") + "."));
+        }
+        if (!paths.terminal().isEmpty()) {
+            layout.add(new Span("Tempi finali: " + tempi(paths.terminal(), ", ") + "."));
+        }
+        if (!paths.isComplete()) {
+            layout.add(new Span("Analisi parziale: lo scenario ha troppi percorsi per contarli tutti."));
+        }
+    }
+
+    /**
+     * Crea un messaggio di avviso.
+     *
+     * @param text Il testo.
+     * @return Lo {@link Span} colorato come avviso.
+     */
+    private static Span warning(String text) {
+        Span span = new Span(text);
+        span.getStyle().set("color", "var(--lumo-error-text-color)");
+        return span;
+    }
+
+    /**
+     * Elenca gli ID di alcuni tempi, ad esempio <code>T1, T4</code> o <code>T0 → T2</code>.
+     *
+     * @param tempoIds  Gli ID dei tempi.
+     * @param separator Il separatore tra i tempi.
+     * @return L'elenco.
+     */
+    private static String tempi(List<Integer> tempoIds, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int tempoId : tempoIds) {
+            if (!sb.isEmpty()) {
+                sb.append(separator);
+            }
+            sb.append('T').append(tempoId);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mostra il riepilogo di una prova terminata.
+     *
+     * @param summary Il layout in cui mostrarlo.
+     * @param debrief Il riepilogo; <code>null</code> se non disponibile.
+     */
+    private static void showDebrief(VerticalLayout summary, SessionDebrief debrief) {
+        summary.removeAll();
+        if (debrief == null) {
+            summary.add(new Span("Riepilogo della prova non disponibile."));
+            return;
+        }
+        summary.add(new Span("Termine: " + (debrief.endReason() != null ? debrief.endReason() : "-")
+                + " dopo " + formatMillis(debrief.elapsedMillis())));
+        summary.add(new Span("Percorso: " + debrief.pathSignature()));
+        for (SessionDebrief.TempoTime tempo : debrief.tempi()) {
+            summary.add(new Span("T" + tempo.tempoId() + ": " + formatMillis(tempo.millis())
+                    + " (" + tempo.visits() + (tempo.visits() == 1 ? " visita)" : " visite)")));
+        }
+    }
+
+    /**
+     * Descrive lo stato di una sessione di prova.
+     *
+     * @param snapshot L'istantanea della sessione.
+     * @return La descrizione.
+     */
+    private static String describe(SessionSnapshot snapshot) {
+        if (snapshot.status() == SessionStatus.ENDED) {
+            return "Prova terminata, " + snapshot.transitions() + " transizioni.";
+        }
+        String text = "T" + snapshot.tempoId() + ", trascorso " + formatMillis(snapshot.elapsedMillis());
+        if (snapshot.remainingGeneraleMillis() >= 0) {
+            text += ", timer generale " + formatMillis(snapshot.remainingGeneraleMillis());
+        }
+        return text;
+    }
+
+    /**
+     * Formatta una durata come minuti e secondi.
+     *
+     * @param millis La durata in millisecondi.
+     * @return La durata, ad esempio <code>12:05</code>.
+     */
+    private static String formatMillis(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Aggiorna l'interfaccia da un thread del motore, ignorando un'interfaccia già chiusa.
+     *
+     * @param ui      L'interfaccia.
+     * @param command L'aggiornamento.
+     */
+    private static void access(UI ui, Runnable command) {
+        if (ui == null) {
+            return;
+        }
+        try {
+            ui.access(command::run);
+        } catch (UIDetachedException e) {
+            logger.debug("Interfaccia chiusa durante una prova.");
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package it.uniupo.simnova.views.ui.helper;
 
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.html.Div;
@@ -21,6 +23,8 @@ import it.uniupo.simnova.service.scenario.components.AzioneChiaveService;
 import it.uniupo.simnova.service.scenario.components.MaterialeService;
 import it.uniupo.simnova.views.common.utils.StyleApp;
 import it.uniupo.simnova.views.common.utils.TinyEditor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.vaadin.tinymce.TinyMce;
 
 import java.util.ArrayList;
@@ -33,10 +37,15 @@ import java.util.stream.Collectors;
  * Gestisce la visualizzazione e la modifica di informazioni generali, azioni chiave e materiale necessario.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.2
  */
 public class GeneralSupport extends HorizontalLayout {
 
+    /**
+     * Il logger per questa classe, utilizzato per registrare gli aggiornamenti dell'interfaccia non recapitati.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GeneralSupport.class);
+
     /**
      * Costruttore privato per evitare istanziazioni dirette.
      */
@@ -223,57 +232,57 @@ public class GeneralSupport extends HorizontalLayout {
         // Listener per il pulsante "Salva"
         saveButton.addClickListener(e -> {
             String newContent = contentEditor.getValue();
-            boolean success;
-
-            // Aggiorna il contenuto tramite il servizio appropriato
-            switch (title) {
-                case "Descrizione":
-                    success = scenarioService.updateScenarioDescription(scenarioId, newContent);
-                    break;
-                case "Briefing":
-                    success = scenarioService.updateScenarioBriefing(scenarioId, newContent);
-                    break;
-                case "Informazioni dai genitori":
-                    success = scenarioService.updateScenarioGenitoriInfo(scenarioId, newContent);
-                    break;
-                case "Patto Aula":
-                    success = scenarioService.updateScenarioPattoAula(scenarioId, newContent);
-                    break;
-                case "Obiettivi Didattici":
-                    success = scenarioService.updateScenarioObiettiviDidattici(scenarioId, newContent);
-                    break;
-                case "Moulage":
-                    success = scenarioService.updateScenarioMoulage(scenarioId, newContent);
-                    break;
-                case "Liquidi e dosi farmaci":
-                    success = scenarioService.updateScenarioLiquidi(scenarioId, newContent);
-                    break;
-                default:
-                    Notification.show("Errore: Titolo sezione non riconosciuto.", 3000, Notification.Position.MIDDLE)
-                            .addThemeVariants(NotificationVariant.LUMO_ERROR);
-                    // Ripristina lo stato precedente
-                    contentEditor.setVisible(false);
-                    editorActions.setVisible(false);
-                    contentDisplay.setVisible(true);
-                    editButton.setVisible(true);
-                    return;
+
+            // Individua la colonna dello scenario corrispondente alla sezione
+            String fieldName = switch (title) {
+                case "Descrizione" -> "descrizione";
+                case "Briefing" -> "briefing";
+                case "Informazioni dai genitori" -> "info_genitore";
+                case "Patto Aula" -> "patto_aula";
+                case "Obiettivi Didattici" -> "obiettivo";
+                case "Moulage" -> "moulage";
+                case "Liquidi e dosi farmaci" -> "liquidi";
+                default -> null;
+            };
+            if (fieldName == null) {
+                Notification.show("Errore: Titolo sezione non riconosciuto.", 3000, Notification.Position.MIDDLE)
+                        .addThemeVariants(NotificationVariant.LUMO_ERROR);
+                // Ripristina lo stato precedente
+                contentEditor.setVisible(false);
+                editorActions.setVisible(false);
+                contentDisplay.setVisible(true);
+                editButton.setVisible(true);
+                return;
             }
 
-            if (success) {
-                // Aggiorna la visualizzazione del contenuto
-                if (newContent == null || newContent.trim().isEmpty()) {
-                    contentDisplay.setText("Sezione vuota");
-                    contentDisplay.getStyle().set("color", "var(--lumo-secondary-text-color)").set("font-style", "italic");
-                } else {
-                    contentDisplay.getElement().setProperty("innerHTML", newContent.replace("\n", "<br />"));
-                    contentDisplay.getStyle().remove("color");
-                    contentDisplay.getStyle().remove("font-style");
-                }
-                Notification.show("Sezione '" + title + "' aggiornata.", 3000, Notification.Position.BOTTOM_CENTER)
-                        .addThemeVariants(NotificationVariant.LUMO_SUCCESS);
+            // Salvataggio differito: i salvataggi ravvicinati della stessa sezione producono una sola scrittura.
+            // L'esito arriva dopo il commit: in caso di errore l'editor viene riaperto con il testo non salvato.
+            UI ui = UI.getCurrent();
+            scenarioService.updateScenarioFieldDeferred(scenarioId, fieldName, newContent)
+                    .whenComplete((saved, error) -> access(ui, () -> {
+                        if (error == null) {
+                            Notification.show("Sezione '" + title + "' aggiornata.", 3000, Notification.Position.BOTTOM_CENTER)
+                                    .addThemeVariants(NotificationVariant.LUMO_SUCCESS);
+                            return;
+                        }
+                        Notification.show("Errore durante il salvataggio della sezione '" + title + "'. Le modifiche non sono state salvate.",
+                                        5000, Notification.Position.MIDDLE)
+                                .addThemeVariants(NotificationVariant.LUMO_ERROR);
+                        contentEditor.setValue(newContent);
+                        contentDisplay.setVisible(false);
+                        contentEditor.setVisible(true);
+                        editorActions.setVisible(true);
+                        editButton.setVisible(false);
+                    }));
+
+            // Aggiorna la visualizzazione del contenuto
+            if (newContent == null || newContent.trim().isEmpty()) {
+                contentDisplay.setText("Sezione vuota");
+                contentDisplay.getStyle().set("color", "var(--lumo-secondary-text-color)").set("font-style", "italic");
             } else {
-                Notification.show("Errore durante l'aggiornamento della sezione '" + title + "'.", 3000, Notification.Position.BOTTOM_CENTER)
-                        .addThemeVariants(NotificationVariant.LUMO_ERROR);
+                contentDisplay.getElement().setProperty("innerHTML", newContent.replace("\n", "<br />"));
+                contentDisplay.getStyle().remove("color");
+                contentDisplay.getStyle().remove("font-style");
             }
             // Nasconde l'editor e mostra il display
             contentEditor.setVisible(false);
@@ -652,4 +661,21 @@ public class GeneralSupport extends HorizontalLayout {
     private static void addInfoItemIfNotEmpty(Integer scenarioId, VerticalLayout container, String title, String content, VaadinIcon iconType, ScenarioService scenarioService) {
         addInfoItemIfNotEmpty(scenarioId, container, title, content, iconType, false, scenarioService);
     }
-}
\ No newline at end of file
+
+    /**
+     * Aggiorna l'interfaccia da un thread di scrittura, ignorando un'interfaccia già chiusa.
+     *
+     * @param ui      L'interfaccia.
+     * @param command L'aggiornamento.
+     */
+    private static void access(UI ui, Runnable command) {
+        if (ui == null) {
+            return;
+        }
+        try {
+            ui.access(command::run);
+        } catch (UIDetachedException e) {
+            logger.debug("Interfaccia chiusa prima dell'esito di un salvataggio.");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package it.uniupo.simnova.views.ui.helper;
+
+import com.vaadin.flow.shared.Registration;
+import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
+import it.uniupo.simnova.service.execution.ExecutionSession;
+import it.uniupo.simnova.service.execution.SessionSnapshot;
+import it.uniupo.simnova.service.execution.trend.VitalTrend;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Implementazione di {@link VitalSignsDataProvider} per una simulazione in esecuzione.
+ * I parametri vitali sono i valori correnti del {@link VitalTrend} della sessione, che cambiano
+ * gradualmente tra un tempo e l'altro; FiO₂ e litri di O₂ sono quelli del tempo corrente.
+ * Gli ascoltatori vengono avvisati a ogni avanzamento dell'andamento e a ogni cambio di tempo.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public class SessionVitalSignsProvider implements VitalSignsDataProvider {
+
+    /**
+     * La sessione da cui leggere i valori.
+     */
+    private final ExecutionSession session;
+
+    /**
+     * L'andamento dei parametri vitali della sessione.
+     */
+    private final VitalTrend trend;
+
+    /**
+     * Crea il fornitore dei parametri vitali di una sessione.
+     *
+     * @param session La sessione in esecuzione.
+     */
+    public SessionVitalSignsProvider(ExecutionSession session) {
+        this.session = session;
+        this.trend = session.getTrend();
+    }
+
+    @Override
+    public String getPA() {
+        double systolic = trend.value(VitalTrend.SYSTOLIC);
+        double diastolic = trend.value(VitalTrend.DIASTOLIC);
+        if (Double.isNaN(systolic) || Double.isNaN(diastolic)) {
+            return null;
+        }
+        return Math.round(systolic) + "/" + Math.round(diastolic);
+    }
+
+    @Override
+    public Integer getFC() {
+        return rounded(VitalTrend.FC);
+    }
+
+    @Override
+    public Double getT() {
+        double value = trend.value(VitalTrend.TEMPERATURE);
+        return Double.isNaN(value) ? null : Math.round(value * 10) / 10.0; // Un decimale, come nel monitor.
+    }
+
+    @Override
+    public Integer getRR() {
+        return rounded(VitalTrend.RR);
+    }
+
+    @Override
+    public Integer getSpO2() {
+        return rounded(VitalTrend.SPO2);
+    }
+
+    @Override
+    public Integer getFiO2() {
+        int i = currentIndex();
+        return i != TimelineFrame.NOT_FOUND && frame().hasFio2(i) ? frame().fio2At(i) : null;
+    }
+
+    @Override
+    public Double getLitriO2() {
+        int i = currentIndex();
+        return i != TimelineFrame.NOT_FOUND && frame().hasLitriO2(i) ? frame().litriO2At(i) : null;
+    }
+
+    @Override
+    public Integer getEtCO2() {
+        return rounded(VitalTrend.ETCO2);
+    }
+
+    @Override
+    public String getAdditionalMonitorText() {
+        return session.getPatient() != null ? session.getPatient().getMonitor() : null;
+    }
+
+    @Override
+    public List<ParametroAggiuntivo> getAdditionalParameters() {
+        List<ParametroAggiuntivo> parameters = new ArrayList<>();
+        SessionSnapshot snapshot = session.getSnapshot();
+        int tempoId = snapshot != null ? snapshot.tempoId() : 0;
+        for (int c = VitalTrend.FIXED_CHANNELS; c < trend.channelCount(); c++) {
+            double value = trend.value(c);
+            if (!Double.isNaN(value)) {
+                parameters.add(new ParametroAggiuntivo(0, tempoId, session.getScenarioId(), trend.channelName(c),
+                        String.format(Locale.ITALY, "%.1f", value), trend.channelUnit(c)));
+            }
+        }
+        return parameters;
+    }
+
+    @Override
+    public Registration addChangeListener(Runnable listener) {
+        Consumer<SessionSnapshot> onSnapshot = snapshot -> listener.run(); // Il cambio di tempo aggiorna FiO₂ e litri di O₂.
+        trend.addListener(listener);
+        session.addListener(onSnapshot);
+        return () -> {
+            trend.removeListener(listener);
+            session.removeListener(onSnapshot);
+        };
+    }
+
+    /**
+     * Restituisce il valore corrente di un canale arrotondato all'intero.
+     *
+     * @param channel Il canale dell'andamento.
+     * @return Il valore, o <code>null</code> se nessun tempo lo ha specificato.
+     */
+    private Integer rounded(int channel) {
+        double value = trend.value(channel);
+        return Double.isNaN(value) ? null : (int) Math.round(value);
+    }
+
+    /**
+     * Restituisce la posizione nel frame del tempo corrente.
+     *
+     * @return La posizione; {@link TimelineFrame#NOT_FOUND} se la sessione non è ancora partita o è terminata.
+     */
+    private int currentIndex() {
+        SessionSnapshot snapshot = session.getSnapshot();
+        return snapshot != null ? frame().indexOf(snapshot.tempoId()) : TimelineFrame.NOT_FOUND;
+    }
+
+    /**
+     * Restituisce i tempi dello scenario eseguito.
+     *
+     * @return Il frame della sessione.
+     */
+    private TimelineFrame frame() {
+        return session.getTimeline().frame();
+    }
+}
@@ -37,7 +37,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * e permette la modifica in linea di tali informazioni.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 public class TimesSupport {
     /**
@@ -260,7 +260,7 @@ public class TimesSupport {
             timeCard.add(headerLayout);
 
             // Monitor dei parametri vitali per questo tempo
-            List<ParametroAggiuntivo> parametriAggiuntivi = advancedScenarioService.getParametriAggiuntiviByTempoId(tempo.getIdTempo(), scenarioId);
+            List<ParametroAggiuntivo> parametriAggiuntivi = tempo.getParametriAggiuntivi();
             VitalSignsDataProvider tempoDataProvider = new TempoVitalSignsAdapter(tempo, parametriAggiuntivi);
             Component vitalSignsMonitorComponent = MonitorSupport.createVitalSignsMonitor(tempoDataProvider, scenarioId, false, null, null, advancedScenarioService, tempo.getIdTempo());
             Div monitorWrapper = new Div(vitalSignsMonitorComponent);
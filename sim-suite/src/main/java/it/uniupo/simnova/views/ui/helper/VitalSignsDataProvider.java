@@ -1,5 +1,6 @@
 package it.uniupo.simnova.views.ui.helper;
 
+import com.vaadin.flow.shared.Registration;
 import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
 
 import java.util.List;
@@ -8,9 +9,11 @@ import java.util.List;
  * Interfaccia che definisce un contratto per i fornitori di dati dei parametri vitali.
  * Permette a diversi oggetti (es. PazienteT0, Tempo) di esporre i loro parametri vitali
  * e aggiuntivi in un formato comune, utilizzabile dal componente monitor.
+ * I fornitori i cui valori cambiano nel tempo, come una simulazione in esecuzione, avvisano i monitor
+ * tramite {@link #addChangeListener(Runnable)}.
  *
  * @author Alessandro Zappatore
- * @version 1.0
+ * @version 1.1
  */
 public interface VitalSignsDataProvider {
 
@@ -84,4 +87,18 @@ public interface VitalSignsDataProvider {
      * @return Una lista di oggetti {@link ParametroAggiuntivo}.
      */
     List<ParametroAggiuntivo> getAdditionalParameters();
-}
\ No newline at end of file
+
+    /**
+     * Registra un ascoltatore avvisato quando uno dei valori cambia.
+     * L'avviso può arrivare da qualunque thread e va solo annotato: i valori si rileggono poi con i getter.
+     * I fornitori di dati statici, come {@link it.uniupo.simnova.domain.paziente.PazienteT0} o un tempo in modifica,
+     * non cambiano mai e usano l'implementazione predefinita.
+     *
+     * @param listener L'azione da eseguire a ogni cambiamento.
+     * @return La registrazione, da rimuovere quando il monitor non è più visibile.
+     */
+    default Registration addChangeListener(Runnable listener) {
+        return () -> {
+        }; // Nessun cambiamento da segnalare.
+    }
+}
@@ -0,0 +1,126 @@
+package it.uniupo.simnova.service.execution;
+
+import it.uniupo.simnova.domain.common.Tempo;
+import it.uniupo.simnova.service.execution.alarm.AlarmBand;
+import it.uniupo.simnova.service.execution.alarm.AlarmThresholdService;
+import it.uniupo.simnova.service.execution.clock.VirtualClock;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.PathStep;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.TempoTime;
+import it.uniupo.simnova.service.execution.debrief.SessionDebrief.Transition;
+import it.uniupo.simnova.service.scenario.timeline.CompiledTimeline;
+import it.uniupo.simnova.service.scenario.timeline.TimelineCompiler;
+import it.uniupo.simnova.service.scenario.timeline.TimelineFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test della prova in tempo virtuale di {@link ExecutionEngine}: alla velocità massima, senza comandi dell'istruttore,
+ * la sessione segue le transizioni "se NO" alla scadenza di ogni timer e arriva alla fine in modo deterministico.
+ * <p>
+ * Lo scenario ha tre tempi in catena: T0 (10 s), T1 (20 s) e T2 (5 s), dopo il quale la simulazione termina.
+ * Il grafo viene passato già compilato, quindi il test non legge il database; le soglie di allarme personalizzate
+ * sono sostituite da una mappa vuota.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+class ExecutionEngineDryRunTest {
+
+    /**
+     * Il grafo dei tempi dello scenario di prova.
+     */
+    private final CompiledTimeline timeline = TimelineCompiler.compile(TimelineFrame.of(1, List.of(
+            tempo(0, 1, 1, 10),
+            tempo(1, 2, 2, 20),
+            tempo(2, 0, 0, 5))), 0);
+
+    /**
+     * Il motore sotto test, senza servizi del database.
+     */
+    private final ExecutionEngine engine = new ExecutionEngine(null, null, null, new AlarmThresholdService() {
+        @Override
+        public Map<String, AlarmBand> getOverrides(int scenarioId) {
+            return Map.of();
+        }
+    });
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void dryRunAtMaxSpeedFollowsTheTimersToTheEnd() throws Exception {
+        SessionDebrief debrief = run(0);
+
+        assertTrue(debrief.ended());
+        assertEquals("fine dei tempi", debrief.endReason());
+        assertEquals(List.of(
+                new PathStep(0, Transition.START, 0),
+                new PathStep(1, Transition.TIMEOUT, 10_000),
+                new PathStep(2, Transition.TIMEOUT, 30_000)), debrief.path());
+        assertEquals(List.of(
+                new TempoTime(0, 1, 10_000),
+                new TempoTime(1, 1, 20_000),
+                new TempoTime(2, 1, 5_000)), debrief.tempi());
+        assertEquals(35_000, debrief.elapsedMillis());
+        assertEquals(0, debrief.pathDropped());
+    }
+
+    @Test
+    void repeatedDryRunsProduceTheSameDebrief() throws Exception {
+        SessionDebrief first = run(0);
+        SessionDebrief second = run(0);
+
+        assertEquals(first.path(), second.path());
+        assertEquals(first.tempi(), second.tempi());
+        assertEquals(first.elapsedMillis(), second.elapsedMillis());
+        assertEquals(first.endReason(), second.endReason());
+    }
+
+    @Test
+    void generalTimerEndsTheDryRunBeforeTheLastTempo() throws Exception {
+        SessionDebrief debrief = run(25);
+
+        assertEquals("scadenza del timer generale", debrief.endReason());
+        assertEquals(25_000, debrief.elapsedMillis());
+        assertEquals(List.of(0, 1), debrief.path().stream().map(PathStep::tempoId).toList());
+    }
+
+    /**
+     * Esegue una prova dello scenario alla velocità massima e ne attende la fine.
+     *
+     * @param generaleSeconds Il timer generale in secondi; <code>0</code> se non è impostato.
+     * @return Il resoconto della sessione.
+     * @throws Exception se la prova non termina entro cinque secondi.
+     */
+    private SessionDebrief run(long generaleSeconds) throws Exception {
+        ExecutionSession session = engine.dryRun(timeline, null, generaleSeconds, VirtualClock.MAX_SPEED);
+        assertNotNull(session);
+        assertTrue(session.isDryRun());
+        return session.whenEnded().get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Crea un tempo con le sole transizioni e il timer.
+     *
+     * @param id      L'ID del tempo.
+     * @param si      Il tempo successivo "se SI"; <code>0</code> per terminare.
+     * @param no      Il tempo successivo "se NO"; <code>0</code> per terminare.
+     * @param seconds Il timer in secondi.
+     * @return Il tempo.
+     */
+    private static Tempo tempo(int id, int si, int no, long seconds) {
+        return new Tempo(id, 1, "120/80", 80, 16, 36.5, 98, 21, null, 35, "azione " + id, si, no, null, seconds, null);
+    }
+}
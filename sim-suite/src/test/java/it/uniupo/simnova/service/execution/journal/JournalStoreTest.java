@@ -0,0 +1,206 @@
+package it.uniupo.simnova.service.execution.journal;
+
+import it.uniupo.simnova.service.execution.ExecutionSession.CommandType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test del diario di sessione su disco: scrittura con passaggio a nuovi segmenti, riapertura dell'archivio e lettura
+ * completa con {@link JournalReader}, e recupero di un diario lasciato aperto da un'interruzione con un record troncato.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+class JournalStoreTest {
+
+    /**
+     * I nomi dei canali registrati all'avvio.
+     */
+    private static final String[] CHANNELS = {"FC", "SpO2"};
+
+    /**
+     * Eventi scritti dopo l'avvio, abbastanza per riempire più segmenti della capacità minima.
+     */
+    private static final int EVENTS = 300;
+
+    /**
+     * La cartella dei diari.
+     */
+    private Path root;
+
+    /**
+     * L'archivio sotto test.
+     */
+    private JournalStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createTempDirectory("journal-test");
+        store = new JournalStore(root, 0, "journal-test-io"); // Capacità minima: i segmenti si riempiono presto.
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void eventsSurviveRollCloseAndReopen() throws Exception {
+        SessionJournal journal = store.open(7, 42, 0);
+        List<JournalEvent> expected = writeEvents(journal);
+        journal.close();
+        store.close();
+
+        assertEquals(expected.size(), journal.getAppended());
+        assertEquals(0, journal.getDropped());
+        assertTrue(segments(journal.getDirectory()).size() > 1, "gli eventi dovrebbero occupare più segmenti");
+
+        store = new JournalStore(root, 0, "journal-test-io");
+        assertEquals(List.of(journal.getDirectory()), store.list());
+        assertEquals(expected, JournalReader.readAll(journal.getDirectory()));
+    }
+
+    @Test
+    void recoveryTruncatesATornRecordAndDropsTheUnusedSpare() throws Exception {
+        SessionJournal journal = store.open(8, 42, 0);
+        List<JournalEvent> expected = writeEvents(journal);
+        awaitSpare(journal);
+        store.close(); // Il diario resta aperto, come dopo un arresto improvviso.
+
+        List<Path> before = segments(journal.getDirectory());
+        Path last = before.get(before.size() - 2); // L'ultimo con record; dopo c'è solo la riserva.
+        long capacity = Files.size(last);
+        int end = validEnd(last);
+        writeTornRecord(last, end);
+
+        store = new JournalStore(root, 0, "journal-test-io");
+
+        List<Path> after = segments(journal.getDirectory());
+        assertEquals(before.subList(0, before.size() - 1), after);
+        assertEquals(end, Files.size(last));
+        assertTrue(end < capacity);
+        assertEquals(expected, JournalReader.readAll(journal.getDirectory()));
+    }
+
+    /**
+     * Scrive l'avvio, {@link #EVENTS} eventi di tutti i tipi e la fine della sessione, attendendo il segmento di
+     * riserva prima di ogni evento così che nessuno venga scartato.
+     *
+     * @param journal Il diario.
+     * @return Gli eventi attesi dalla lettura, nell'ordine di scrittura.
+     */
+    private static List<JournalEvent> writeEvents(SessionJournal journal) {
+        List<JournalEvent> expected = new ArrayList<>();
+        awaitSpare(journal);
+        journal.started(1_700_000_000_000L, CHANNELS, 0);
+        expected.add(new JournalEvent.Started(0, journal.sessionId(), journal.scenarioId(), 1_700_000_000_000L, List.of(CHANNELS)));
+        for (int i = 1; i <= EVENTS; i++) {
+            awaitSpare(journal);
+            long now = i * 1_000_000L;
+            switch (i % 5) {
+                case 0 -> {
+                    journal.entered(i, now);
+                    expected.add(new JournalEvent.Entered(now, i));
+                }
+                case 1 -> {
+                    journal.command(CommandType.FAST_FORWARD, -i, now);
+                    expected.add(new JournalEvent.Command(now, CommandType.FAST_FORWARD, -i));
+                }
+                case 2 -> {
+                    journal.keyAction("azione " + i, now);
+                    expected.add(new JournalEvent.KeyAction(now, "azione " + i));
+                }
+                case 3 -> {
+                    journal.vitalOverride(1, i + 0.5, now);
+                    expected.add(new JournalEvent.VitalOverride(now, 1, i + 0.5));
+                }
+                default -> {
+                    journal.alarm(0, 1, 2, i * 0.25, now);
+                    expected.add(new JournalEvent.Alarm(now, 0, 1, 2, i * 0.25));
+                }
+            }
+        }
+        awaitSpare(journal);
+        long now = (EVENTS + 1) * 1_000_000L;
+        journal.ended("fine", now);
+        expected.add(new JournalEvent.Ended(now, "fine"));
+        return expected;
+    }
+
+    /**
+     * Attende che l'archivio abbia preparato il segmento di riserva del diario.
+     *
+     * @param journal Il diario.
+     */
+    private static void awaitSpare(SessionJournal journal) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!journal.hasSpare()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Attesa scaduta.");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Elenca i segmenti di una sessione in ordine di indice.
+     *
+     * @param directory La cartella della sessione.
+     * @return I file dei segmenti.
+     * @throws IOException se la cartella non può essere letta.
+     */
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(JournalFormat.SEGMENT_SUFFIX)).sorted().toList();
+        }
+    }
+
+    /**
+     * Trova la fine dell'ultimo record integro di un segmento.
+     *
+     * @param segment Il file del segmento.
+     * @return La posizione successiva all'ultimo record integro.
+     * @throws IOException se il file non può essere letto.
+     */
+    private static int validEnd(Path segment) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(segment)).order(ByteOrder.LITTLE_ENDIAN);
+        return JournalFormat.scanValidEnd(content);
+    }
+
+    /**
+     * Scrive dopo l'ultimo record un record di cui è arrivata solo una parte: lunghezza plausibile, CRC errato.
+     *
+     * @param segment  Il file del segmento.
+     * @param position La fine dell'ultimo record integro.
+     * @throws IOException se il file non può essere scritto.
+     */
+    private static void writeTornRecord(Path segment, int position) throws IOException {
+        ByteBuffer torn = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        torn.putInt(20).putInt(0xDEADBEEF).put(JournalFormat.ENTERED).put((byte) 1).put((byte) 2).put((byte) 3);
+        torn.flip();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(torn, position);
+        }
+    }
+}
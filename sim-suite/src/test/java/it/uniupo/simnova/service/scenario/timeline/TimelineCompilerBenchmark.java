@@ -0,0 +1,125 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import it.uniupo.simnova.domain.common.Tempo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark del {@link TimelineCompiler} e della tabella delle transizioni di {@link CompiledTimeline}.
+ * <p>
+ * Compila una catena di <code>n</code> tempi (predefinito 20000) con un ritorno all'indietro ogni 10 tempi, poi segue
+ * fino a 10 milioni di transizioni casuali nella tabella, partendo da T0. Per confronto segue percorsi simili cercando
+ * ogni volta il tempo di destinazione nella lista, come facevano i consumatori prima del grafo compilato; questa misura
+ * è fatta su un centesimo dei percorsi e poi moltiplicata per cento. Si esegue dalla cartella <code>sim-suite</code> con
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=it.uniupo.simnova.service.scenario.timeline.TimelineCompilerBenchmark</code>,
+ * passando facoltativamente il numero di tempi come argomento.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimelineCompilerBenchmark {
+
+    /**
+     * Compilazioni di riscaldamento e misurate.
+     */
+    private static final int COMPILATIONS = 20;
+
+    /**
+     * Percorsi seguiti nella tabella delle transizioni.
+     */
+    private static final int WALKS = 200_000;
+
+    /**
+     * Transizioni massime di ogni percorso.
+     */
+    private static final int WALK_LENGTH = 50;
+
+    /**
+     * Rapporto tra i percorsi seguiti nella tabella e quelli seguiti scorrendo la lista.
+     */
+    private static final int LIST_SCALE = 100;
+
+    /**
+     * Costruttore privato: la classe espone solo il metodo <code>main</code>.
+     */
+    private TimelineCompilerBenchmark() {
+    }
+
+    /**
+     * Esegue il benchmark e stampa i risultati.
+     *
+     * @param args Facoltativo: il numero di tempi.
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        List<Tempo> tempi = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int tSi = i + 1 < n ? i + 1 : 0;
+            int tNo = i % 10 == 9 ? i - 5 : (i + 2 < n ? i + 2 : 0); // Un ciclo ogni 10 tempi.
+            tempi.add(new Tempo(i, 1, "120/80", 80, 16, 36.5, 98, 21, null, 35, "azione", tSi, tNo, null, 30, null));
+        }
+        TimelineFrame frame = TimelineFrame.of(1, tempi);
+
+        for (int w = 0; w < COMPILATIONS; w++) {
+            TimelineCompiler.compile(frame, 0);
+        }
+        long start = System.nanoTime();
+        CompiledTimeline timeline = null;
+        for (int r = 0; r < COMPILATIONS; r++) {
+            timeline = TimelineCompiler.compile(frame, 0);
+        }
+        System.out.printf("compilazione di %d tempi: %.2f ms  %s%n", n, (System.nanoTime() - start) / 1e6 / COMPILATIONS, timeline);
+
+        Random random = new Random(1);
+        long checksum = 0;
+        long transitions = 0;
+        start = System.nanoTime();
+        for (int walk = 0; walk < WALKS; walk++) {
+            int state = timeline.startState();
+            for (int step = 0; step < WALK_LENGTH && state >= 0; step++) {
+                state = timeline.next(state, random.nextBoolean());
+                checksum += state;
+                transitions++;
+            }
+        }
+        double tableMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        for (int walk = 0; walk < WALKS / LIST_SCALE; walk++) {
+            int tempoId = 0;
+            for (int step = 0; step < WALK_LENGTH; step++) {
+                Tempo tempo = find(tempi, tempoId);
+                if (tempo == null) {
+                    break;
+                }
+                tempoId = random.nextBoolean() ? tempo.getTSi() : tempo.getTNo();
+                checksum += tempoId;
+                if (tempoId == 0) {
+                    break; // Destinazione 0: fine della simulazione.
+                }
+            }
+        }
+        double listMillis = (System.nanoTime() - start) / 1e6 * LIST_SCALE;
+        System.out.printf("%d transizioni: tabella %.1f ms  ricerca nella lista (stimata) %.0f ms  (controllo %d)%n",
+                transitions, tableMillis, listMillis, checksum);
+    }
+
+    /**
+     * Cerca un tempo nella lista per ID.
+     *
+     * @param tempi   I tempi.
+     * @param tempoId L'ID cercato.
+     * @return Il tempo, o <code>null</code> se non esiste.
+     */
+    private static Tempo find(List<Tempo> tempi, int tempoId) {
+        for (Tempo tempo : tempi) {
+            if (tempo.getIdTempo() == tempoId) {
+                return tempo;
+            }
+        }
+        return null;
+    }
+}
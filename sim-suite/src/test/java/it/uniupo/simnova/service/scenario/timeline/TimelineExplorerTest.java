@@ -0,0 +1,183 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import it.uniupo.simnova.domain.common.Tempo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test del {@link TimelineExplorer} su un piccolo scenario con un ciclo, di cui i percorsi sono noti.
+ * <p>
+ * Lo scenario ha quattro tempi: T0 (10 s) va a T1 o a T2; T1 (20 s) va a T2 o termina; T2 (30 s) torna a T1
+ * o va a T3; T3 (5 s) termina. T1 e T2 formano un ciclo. Con al più due visite per tempo i percorsi completi sono
+ * otto, di durate 30, 45, 60, 65, 80, 95, 110 e 115 secondi, e due percorsi vengono interrotti dal limite di visite.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+class TimelineExplorerTest {
+
+    /**
+     * I tempi dello scenario di prova.
+     */
+    private final List<Tempo> tempi = List.of(
+            tempo(0, 1, 2, 10),
+            tempo(1, 2, 0, 20),
+            tempo(2, 1, 3, 30),
+            tempo(3, 0, 0, 5));
+
+    @Test
+    void cyclicScenarioHasTheKnownPathsAndDurations() {
+        TimelinePaths paths = TimelineExplorer.explore(compile(tempi), 100, 2);
+
+        assertEquals(8, paths.completedPaths());
+        assertEquals(2, paths.truncatedPaths());
+        assertEquals(0, paths.blockedPaths());
+        assertEquals(30, paths.shortestSeconds());
+        assertEquals(115, paths.longestSeconds());
+        List<TimelinePaths.DurationCount> expected = new ArrayList<>();
+        for (long seconds : new long[]{30, 45, 60, 65, 80, 95, 110, 115}) {
+            expected.add(new TimelinePaths.DurationCount(seconds, 1));
+        }
+        assertEquals(expected, paths.durations());
+        assertEquals(List.of(0, 1, 2, 1, 2, 3), paths.longestPath());
+        assertEquals(2, paths.pathsOverGenerale()); // 110 e 115 secondi superano i 100 del timer generale.
+        assertTrue(paths.exceedsGenerale());
+        assertEquals(List.of(3), paths.terminal());
+        assertTrue(paths.unreachable().isEmpty());
+        assertTrue(paths.deadEnds().isEmpty());
+        assertFalse(paths.exhausted());
+        assertTrue(paths.isComplete()); // I percorsi interrotti dal limite di visite non rendono parziale il conteggio.
+    }
+
+    @Test
+    void singleVisitAllowsOnlyThePathsWithoutRepetitions() {
+        TimelinePaths paths = TimelineExplorer.explore(compile(tempi), 0, 1);
+
+        // T0-T1, T0-T1-T2-T3, T0-T2-T3, T0-T2-T1; tornare a un tempo già visitato interrompe il percorso.
+        assertEquals(4, paths.completedPaths());
+        assertEquals(2, paths.truncatedPaths());
+        assertEquals(30, paths.shortestSeconds());
+        assertEquals(65, paths.longestSeconds());
+        assertEquals(0, paths.pathsOverGenerale());
+    }
+
+    @Test
+    void distributionMatchesAnExhaustiveEnumeration() {
+        List<Tempo> larger = new ArrayList<>(tempi);
+        larger.set(3, tempo(3, 4, 0, 5));
+        larger.add(tempo(4, 2, 0, 7)); // Un secondo ciclo, T2-T3-T4, che condivide T2 con il primo.
+        larger.add(tempo(5, 9, 0, 1)); // Non raggiungibile, con una transizione verso un tempo inesistente.
+
+        for (int maxVisits = 1; maxVisits <= 3; maxVisits++) {
+            TimelinePaths paths = TimelineExplorer.explore(compile(larger), 0, maxVisits);
+            Enumeration expected = enumerate(larger, maxVisits);
+
+            assertEquals(expected.durations.values().stream().mapToLong(Long::longValue).sum(), paths.completedPaths());
+            assertEquals(expected.truncated, paths.truncatedPaths());
+            assertEquals(expected.durations.firstKey(), paths.shortestSeconds());
+            assertEquals(expected.durations.lastKey(), paths.longestSeconds());
+            Map<Long, Long> explored = new TreeMap<>();
+            for (TimelinePaths.DurationCount count : paths.durations()) {
+                explored.put(count.seconds(), count.paths());
+            }
+            assertEquals(expected.durations, explored);
+            assertEquals(List.of(5), paths.unreachable());
+            assertEquals(List.of(5), paths.deadEnds());
+        }
+    }
+
+    /**
+     * Crea un tempo con le sole transizioni e il timer.
+     *
+     * @param id      L'ID del tempo.
+     * @param si      Il tempo successivo "se SI"; <code>0</code> per terminare.
+     * @param no      Il tempo successivo "se NO"; <code>0</code> per terminare.
+     * @param seconds Il timer in secondi.
+     * @return Il tempo.
+     */
+    private static Tempo tempo(int id, int si, int no, long seconds) {
+        return new Tempo(id, 1, "120/80", 80, 16, 36.5, 98, 21, null, 35, "azione " + id, si, no, null, seconds, null);
+    }
+
+    /**
+     * Compila i tempi nel grafo delle transizioni.
+     *
+     * @param tempi I tempi.
+     * @return Il grafo.
+     */
+    private static CompiledTimeline compile(List<Tempo> tempi) {
+        return TimelineCompiler.compile(TimelineFrame.of(1, tempi), 0);
+    }
+
+    /**
+     * Enumera uno per uno i percorsi da T0, con la stessa regola di visite dell'esploratore.
+     *
+     * @param tempi     I tempi.
+     * @param maxVisits Il numero massimo di visite di uno stesso tempo in un percorso.
+     * @return Le durate dei percorsi completi e il numero di percorsi interrotti.
+     */
+    private static Enumeration enumerate(List<Tempo> tempi, int maxVisits) {
+        Map<Integer, Tempo> byId = new HashMap<>();
+        for (Tempo tempo : tempi) {
+            byId.put(tempo.getIdTempo(), tempo);
+        }
+        Enumeration result = new Enumeration();
+        Map<Integer, Integer> visits = new HashMap<>();
+        visits.put(0, 1);
+        walk(byId, byId.get(0), visits, 0, maxVisits, result);
+        return result;
+    }
+
+    /**
+     * Segue ricorsivamente le transizioni di un tempo.
+     *
+     * @param byId      I tempi per ID.
+     * @param tempo     Il tempo corrente.
+     * @param visits    Le visite di ciascun tempo nel percorso, compresa quella corrente.
+     * @param elapsed   I secondi trascorsi prima del tempo corrente.
+     * @param maxVisits Il numero massimo di visite.
+     * @param result    Dove accumulare i percorsi.
+     */
+    private static void walk(Map<Integer, Tempo> byId, Tempo tempo, Map<Integer, Integer> visits, long elapsed,
+                             int maxVisits, Enumeration result) {
+        long total = elapsed + tempo.getTimerTempo();
+        int[] targets = tempo.getTSi() == tempo.getTNo() ? new int[]{tempo.getTSi()} : new int[]{tempo.getTSi(), tempo.getTNo()};
+        for (int target : targets) {
+            if (target <= 0) {
+                result.durations.merge(total, 1L, Long::sum);
+            } else if (visits.getOrDefault(target, 0) >= maxVisits) {
+                result.truncated++;
+            } else {
+                visits.merge(target, 1, Integer::sum);
+                walk(byId, byId.get(target), visits, total, maxVisits, result);
+                visits.merge(target, -1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Il risultato dell'enumerazione esaustiva.
+     */
+    private static final class Enumeration {
+
+        /**
+         * Il numero di percorsi completi per durata.
+         */
+        private final TreeMap<Long, Long> durations = new TreeMap<>();
+
+        /**
+         * I percorsi interrotti dal limite di visite.
+         */
+        private long truncated;
+    }
+}
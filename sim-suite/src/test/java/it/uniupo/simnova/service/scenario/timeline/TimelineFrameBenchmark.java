@@ -0,0 +1,162 @@
+package it.uniupo.simnova.service.scenario.timeline;
+
+import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
+import it.uniupo.simnova.domain.common.Tempo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark del {@link TimelineFrame} confrontato con la lista di {@link Tempo} da cui viene creato.
+ * <p>
+ * Con <code>n</code> tempi (predefinito 20000), ciascuno con 5 parametri aggiuntivi, misura la memoria occupata
+ * dalle due rappresentazioni e il costo per passo della lettura di FC e dei valori dei parametri aggiuntivi,
+ * poi verifica che {@link TimelineFrame#toTempi()} restituisca la lista di partenza. La memoria è stimata dalla
+ * differenza dello heap occupato dopo una garbage collection, quindi è indicativa. Si esegue dalla cartella
+ * <code>sim-suite</code> con
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=it.uniupo.simnova.service.scenario.timeline.TimelineFrameBenchmark</code>,
+ * passando facoltativamente il numero di tempi come argomento.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimelineFrameBenchmark {
+
+    /**
+     * I nomi dei parametri aggiuntivi di ogni tempo.
+     */
+    private static final String[] PARAM_NAMES = {"PVC", "Glicemia", "Lattati", "Hb", "Na"};
+
+    /**
+     * Letture di riscaldamento prima di quelle misurate.
+     */
+    private static final int WARMUP = 20;
+
+    /**
+     * Letture misurate per ciascuna rappresentazione.
+     */
+    private static final int REPETITIONS = 50;
+
+    /**
+     * Costruttore privato: la classe espone solo il metodo <code>main</code>.
+     */
+    private TimelineFrameBenchmark() {
+    }
+
+    /**
+     * Esegue il benchmark e stampa i risultati.
+     *
+     * @param args Facoltativo: il numero di tempi.
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        long before = usedHeap();
+        List<Tempo> tempi = createTempi(n);
+        long listBytes = usedHeap() - before;
+        before = usedHeap();
+        TimelineFrame frame = TimelineFrame.of(1, tempi);
+        long frameBytes = usedHeap() - before;
+        System.out.printf("tempi=%d parametri=%d  List<Tempo> %.1f MB  frame %.1f MB%n",
+                n, frame.paramCount(), listBytes / 1e6, frameBytes / 1e6);
+
+        double checksum = 0;
+        for (int w = 0; w < WARMUP; w++) {
+            checksum += scanList(tempi) + scanFrame(frame);
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < REPETITIONS; r++) {
+            checksum += scanList(tempi);
+        }
+        double listNs = (double) (System.nanoTime() - start) / REPETITIONS / n;
+        start = System.nanoTime();
+        for (int r = 0; r < REPETITIONS; r++) {
+            checksum += scanFrame(frame);
+        }
+        double frameNs = (double) (System.nanoTime() - start) / REPETITIONS / n;
+        System.out.printf("lettura per tempo: lista %.1f ns  frame %.1f ns  (controllo %.0f)%n", listNs, frameNs, checksum);
+
+        List<Tempo> back = frame.toTempi();
+        boolean equal = back.size() == n;
+        for (int i = 0; i < n && equal; i++) {
+            equal = back.get(i).toString().equals(tempi.get(i).toString());
+        }
+        System.out.println("toTempi() uguale alla lista di partenza: " + equal);
+    }
+
+    /**
+     * Crea una sequenza di tempi con valori variabili, alcuni parametri vitali assenti e 5 parametri aggiuntivi per tempo.
+     *
+     * @param n Il numero di tempi.
+     * @return I tempi.
+     */
+    private static List<Tempo> createTempi(int n) {
+        List<Tempo> tempi = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Tempo tempo = new Tempo(i, 1, (100 + i % 50) + "/" + (60 + i % 30), 60 + i % 100, i % 2 == 0 ? null : 16,
+                    36.5 + (i % 10) / 10.0, 95 + i % 5, 21, i % 3 == 0 ? null : 2.5, 35, "azione " + (i % 7),
+                    i + 1, 0, null, 60, null);
+            List<ParametroAggiuntivo> params = new ArrayList<>(PARAM_NAMES.length);
+            for (int p = 0; p < PARAM_NAMES.length; p++) {
+                // Una nuova stringa per nome, come quelle lette dal database.
+                params.add(new ParametroAggiuntivo(i * PARAM_NAMES.length + p, i, 1, new String(PARAM_NAMES[p]),
+                        String.valueOf(p + i % 10), "mg/dL"));
+            }
+            tempo.setParametriAggiuntivi(params);
+            tempi.add(tempo);
+        }
+        return tempi;
+    }
+
+    /**
+     * Legge FC e i valori dei parametri aggiuntivi dalla lista di tempi.
+     *
+     * @param tempi I tempi.
+     * @return La somma dei valori letti.
+     */
+    private static double scanList(List<Tempo> tempi) {
+        double sum = 0;
+        for (Tempo tempo : tempi) {
+            if (tempo.getFC() != null) {
+                sum += tempo.getFC();
+            }
+            for (ParametroAggiuntivo param : tempo.getParametriAggiuntivi()) {
+                sum += Double.parseDouble(param.getValore());
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Legge FC e i valori dei parametri aggiuntivi dal frame.
+     *
+     * @param frame Il frame.
+     * @return La somma dei valori letti.
+     */
+    private static double scanFrame(TimelineFrame frame) {
+        double sum = 0;
+        for (int i = 0; i < frame.size(); i++) {
+            if (frame.hasFc(i)) {
+                sum += frame.fcAt(i);
+            }
+            for (int p = frame.paramStart(i); p < frame.paramEnd(i); p++) {
+                sum += frame.paramNumericValue(p);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Stima lo heap occupato dopo alcune garbage collection.
+     *
+     * @return I byte occupati.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,195 @@
+package it.uniupo.simnova.service.scenario.types;
+
+import it.uniupo.simnova.domain.common.Tempo;
+import it.uniupo.simnova.utils.DBConnect;
+import it.uniupo.simnova.utils.cache.ScenarioCache;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark della lettura dei tempi di uno scenario avanzato: la lettura con due query di
+ * {@link AdvancedScenarioService#getTempiByScenarioId(int)} confrontata con una query per tempo (N+1).
+ * <p>
+ * Crea scenari con 5, 40 e 200 tempi, ciascuno con 3 parametri aggiuntivi, e misura il tempo medio di una lettura
+ * a cache svuotata. Usa il database <code>database.db</code> della cartella di lavoro, come l'applicazione, e al termine
+ * elimina gli scenari creati. Si esegue dalla cartella <code>sim-suite</code> con
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=it.uniupo.simnova.service.scenario.types.TimelineLoadBenchmark</code>.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimelineLoadBenchmark {
+
+    /**
+     * Numero di tempi degli scenari di prova.
+     */
+    private static final int[] STEPS = {5, 40, 200};
+
+    /**
+     * Parametri aggiuntivi per tempo.
+     */
+    private static final int PARAMS_PER_STEP = 3;
+
+    /**
+     * Letture di riscaldamento prima di quelle misurate.
+     */
+    private static final int WARMUP = 50;
+
+    /**
+     * Letture misurate per ogni scenario.
+     */
+    private static final int REPETITIONS = 200;
+
+    /**
+     * Costruttore privato: la classe espone solo il metodo <code>main</code>.
+     */
+    private TimelineLoadBenchmark() {
+    }
+
+    /**
+     * Esegue il benchmark e stampa i risultati.
+     *
+     * @param args Non usati.
+     * @throws SQLException se la creazione o l'eliminazione degli scenari di prova fallisce.
+     */
+    public static void main(String[] args) throws SQLException {
+        DBConnect db = DBConnect.getInstance();
+        db.migrateSchema();
+        AdvancedScenarioService service = new AdvancedScenarioService(null); // La lettura dei tempi non usa ScenarioService.
+        List<Integer> created = new ArrayList<>();
+        try {
+            for (int steps : STEPS) {
+                int scenarioId = createScenario(db, steps);
+                created.add(scenarioId);
+
+                for (int w = 0; w < WARMUP; w++) {
+                    loadBatched(service, scenarioId);
+                    loadPerTempo(service, scenarioId);
+                }
+                long start = System.nanoTime();
+                int params = 0;
+                for (int r = 0; r < REPETITIONS; r++) {
+                    params += loadBatched(service, scenarioId);
+                }
+                double batched = (System.nanoTime() - start) / 1e3 / REPETITIONS;
+                start = System.nanoTime();
+                for (int r = 0; r < REPETITIONS; r++) {
+                    loadPerTempo(service, scenarioId);
+                }
+                double perTempo = (System.nanoTime() - start) / 1e3 / REPETITIONS;
+                System.out.printf("tempi=%d parametri=%d  due query %.0f us  N+1 %.0f us  (query: 2 contro %d)%n",
+                        steps, params / REPETITIONS, batched, perTempo, steps + 1);
+            }
+        } finally {
+            for (int scenarioId : created) {
+                deleteScenario(db, scenarioId);
+            }
+            db.shutdown();
+        }
+    }
+
+    /**
+     * Legge i tempi con i parametri aggiuntivi a cache svuotata, con la lettura a due query.
+     *
+     * @param service    Il servizio.
+     * @param scenarioId L'ID dello scenario.
+     * @return Il numero di parametri aggiuntivi letti.
+     */
+    private static int loadBatched(AdvancedScenarioService service, int scenarioId) {
+        ScenarioCache.getInstance().invalidate(scenarioId);
+        int params = 0;
+        for (Tempo tempo : service.getTempiByScenarioId(scenarioId)) {
+            params += tempo.getParametriAggiuntivi().size();
+        }
+        return params;
+    }
+
+    /**
+     * Legge i tempi a cache svuotata e poi i parametri aggiuntivi con una query per tempo, come prima della lettura a due query.
+     *
+     * @param service    Il servizio.
+     * @param scenarioId L'ID dello scenario.
+     * @return Il numero di parametri aggiuntivi letti.
+     */
+    private static int loadPerTempo(AdvancedScenarioService service, int scenarioId) {
+        ScenarioCache.getInstance().invalidate(scenarioId);
+        int params = 0;
+        for (Tempo tempo : service.getTempiByScenarioId(scenarioId)) {
+            params += service.getParametriAggiuntiviByTempoId(tempo.getIdTempo(), scenarioId).size();
+        }
+        return params;
+    }
+
+    /**
+     * Crea uno scenario avanzato di prova con i tempi e i parametri aggiuntivi richiesti.
+     *
+     * @param db    La connessione al database.
+     * @param steps Il numero di tempi.
+     * @return L'ID dello scenario creato.
+     * @throws SQLException se la scrittura fallisce.
+     */
+    private static int createScenario(DBConnect db, int steps) throws SQLException {
+        return db.write(conn -> {
+            int scenarioId;
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO Scenario (titolo) VALUES ('benchmark')", Statement.RETURN_GENERATED_KEYS)) {
+                stmt.executeUpdate();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    keys.next();
+                    scenarioId = keys.getInt(1);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO AdvancedScenario (id_advanced_scenario) VALUES (?)")) {
+                stmt.setInt(1, scenarioId);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement tempo = conn.prepareStatement(
+                    "INSERT INTO Tempo (id_tempo, id_advanced_scenario, PA, FC, T, Azione) VALUES (?, ?, '120/80', 80, 36.5, ?)");
+                 PreparedStatement param = conn.prepareStatement(
+                         "INSERT INTO ParametriAggiuntivi (tempo_id, scenario_id, nome, valore, unità_misura) VALUES (?, ?, ?, '1', 'u')")) {
+                for (int i = 0; i < steps; i++) {
+                    tempo.setInt(1, i);
+                    tempo.setInt(2, scenarioId);
+                    tempo.setString(3, "azione " + i);
+                    tempo.executeUpdate();
+                    for (int p = 0; p < PARAMS_PER_STEP; p++) {
+                        param.setInt(1, i);
+                        param.setInt(2, scenarioId);
+                        param.setString(3, "P" + p);
+                        param.executeUpdate();
+                    }
+                }
+            }
+            return scenarioId;
+        });
+    }
+
+    /**
+     * Elimina uno scenario di prova con i tempi e i parametri aggiuntivi.
+     *
+     * @param db         La connessione al database.
+     * @param scenarioId L'ID dello scenario.
+     * @throws SQLException se l'eliminazione fallisce.
+     */
+    private static void deleteScenario(DBConnect db, int scenarioId) throws SQLException {
+        db.write(conn -> {
+            for (String sql : new String[]{
+                    "DELETE FROM ParametriAggiuntivi WHERE scenario_id = ?",
+                    "DELETE FROM Tempo WHERE id_advanced_scenario = ?",
+                    "DELETE FROM AdvancedScenario WHERE id_advanced_scenario = ?",
+                    "DELETE FROM Scenario WHERE id_scenario = ?"}) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, scenarioId);
+                    stmt.executeUpdate();
+                }
+            }
+            return null;
+        });
+        ScenarioCache.getInstance().invalidate(scenarioId);
+    }
+}
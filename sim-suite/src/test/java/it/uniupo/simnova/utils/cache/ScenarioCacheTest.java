@@ -0,0 +1,212 @@
+package it.uniupo.simnova.utils.cache;
+
+import it.uniupo.simnova.domain.common.Accesso;
+import it.uniupo.simnova.domain.common.ParametroAggiuntivo;
+import it.uniupo.simnova.domain.common.Tempo;
+import it.uniupo.simnova.domain.paziente.PazienteT0;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test della {@link ScenarioCache}: lettura tramite cache, copie consegnate al chiamante e invalidazione,
+ * anche quando l'invalidazione si sovrappone a una lettura in corso o precede la conferma della scrittura.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.1
+ */
+class ScenarioCacheTest {
+
+    /**
+     * La cache sotto test, separata dall'istanza condivisa.
+     */
+    private final ScenarioCache cache = new ScenarioCache(1_000);
+
+    /**
+     * Il numero di letture eseguite dai loader di prova.
+     */
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void secondReadIsServedFromCache() throws Exception {
+        cache.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(Tempo::new));
+        cache.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(Tempo::new));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().hits());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    void changesToReturnedTempiDoNotReachTheCache() throws Exception {
+        List<Tempo> first = cache.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(Tempo::new));
+        first.getFirst().setAzione("modificata");
+        first.getFirst().setFC(150);
+        first.getFirst().getParametriAggiuntivi().getFirst().setValore("99");
+        first.getFirst().getParametriAggiuntivi().clear();
+        first.clear();
+
+        List<Tempo> second = cache.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(Tempo::new));
+        assertEquals(1, loads.get());
+        assertEquals(2, second.size());
+        assertEquals("azione", second.getFirst().getAzione());
+        assertEquals(80, second.getFirst().getFC());
+        assertEquals("12", second.getFirst().getParametriAggiuntivi().getFirst().getValore());
+        assertNotSame(second.getFirst(), cache.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(Tempo::new)).getFirst());
+    }
+
+    @Test
+    void changesToReturnedPazienteDoNotReachTheCache() throws Exception {
+        ScenarioCache.Loader<PazienteT0> loader = () -> {
+            loads.incrementAndGet();
+            List<Accesso> venosi = new ArrayList<>(List.of(new Accesso(1, "Agocannula", "Cubitale", "DX", 18)));
+            return new PazienteT0(1, "120/80", 80, 16, 36.5, 98, 21, 0.0, 35, "ECG", venosi, new ArrayList<>());
+        };
+        PazienteT0 first = cache.get(ScenarioCache.Region.PAZIENTE_T0, 1, loader, PazienteT0::new);
+        first.setPA("90/60");
+        first.getAccessiVenosi().getFirst().setMisura(14);
+        first.getAccessiArteriosi().add(new Accesso(2, "Radiale", "Polso", "SX", 20));
+
+        PazienteT0 second = cache.get(ScenarioCache.Region.PAZIENTE_T0, 1, loader, PazienteT0::new);
+        assertEquals(1, loads.get());
+        assertEquals("120/80", second.getPA());
+        assertEquals(18, second.getAccessiVenosi().getFirst().getMisura());
+        assertEquals(0, second.getAccessiArteriosi().size());
+    }
+
+    @Test
+    void absentValueIsCachedAsNull() throws Exception {
+        ScenarioCache.Loader<PazienteT0> loader = () -> {
+            loads.incrementAndGet();
+            return null;
+        };
+        assertNull(cache.get(ScenarioCache.Region.PAZIENTE_T0, 7, loader, PazienteT0::new));
+        assertNull(cache.get(ScenarioCache.Region.PAZIENTE_T0, 7, loader, PazienteT0::new));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidationDuringLoadDiscardsTheResult() throws Exception {
+        List<Tempo> loaded = cache.get(ScenarioCache.Region.TEMPI, 1, () -> {
+            List<Tempo> tempi = loadTempi();
+            cache.invalidate(1); // Una modifica confermata mentre la lettura è in corso.
+            return tempi;
+        }, ScenarioCache.listCopier(Tempo::new));
+        assertEquals(2, loaded.size());
+
+        cache.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(Tempo::new));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationBetweenTheReadAndThePutFromAnotherThreadDiscardsTheStaleValue() throws Exception {
+        AtomicReference<String> database = new AtomicReference<>("v1");
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        CompletableFuture<String> reader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.get(ScenarioCache.Region.SCENARIO, 1, () -> {
+                    String value = readFrom(database);
+                    read.countDown();
+                    await(resume); // La scrittura viene confermata e invalidata prima che la lettura memorizzi il valore.
+                    return value;
+                }, UnaryOperator.identity());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        await(read);
+        database.set("v2");
+        cache.invalidate(1);
+        resume.countDown();
+
+        assertEquals("v1", reader.get(5, TimeUnit.SECONDS));
+        assertEquals("v2", cache.get(ScenarioCache.Region.SCENARIO, 1, () -> readFrom(database), UnaryOperator.identity()));
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getStats().hits());
+    }
+
+    @Test
+    void invalidationAfterTheCommitRemovesAValueReadBeforeIt() throws Exception {
+        AtomicReference<String> database = new AtomicReference<>("v1");
+        CompletableFuture<Void> commit = new CompletableFuture<>();
+        // Come i servizi: l'invalidazione è legata alla conferma della scrittura, non alla sua presa in carico.
+        CompletableFuture<Void> invalidated = commit.whenComplete((ignored, error) -> cache.invalidate(1));
+
+        cache.invalidate(1); // Un'invalidazione anticipata, prima che la scrittura sia confermata.
+        assertEquals("v1", cache.get(ScenarioCache.Region.SCENARIO, 1, () -> readFrom(database), UnaryOperator.identity()));
+        assertEquals("v1", cache.get(ScenarioCache.Region.SCENARIO, 1, () -> readFrom(database), UnaryOperator.identity()));
+        assertEquals(1, cache.getStats().hits());
+
+        database.set("v2");
+        commit.complete(null);
+        invalidated.get(5, TimeUnit.SECONDS);
+
+        assertEquals("v2", cache.get(ScenarioCache.Region.SCENARIO, 1, () -> readFrom(database), UnaryOperator.identity()));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().invalidations());
+    }
+
+    @Test
+    void entriesOverTheWeightLimitAreEvicted() throws Exception {
+        ScenarioCache small = new ScenarioCache(5);
+        small.get(ScenarioCache.Region.TEMPI, 1, this::loadTempi, ScenarioCache.listCopier(UnaryOperator.identity()));
+        small.get(ScenarioCache.Region.TEMPI, 2, this::loadTempi, ScenarioCache.listCopier(UnaryOperator.identity()));
+
+        assertEquals(1, small.getStats().evictions());
+        assertEquals(3, small.getStats().weight());
+    }
+
+    /**
+     * Loader di prova: due tempi, il primo con un parametro aggiuntivo.
+     *
+     * @return Una nuova lista di tempi.
+     */
+    private List<Tempo> loadTempi() {
+        loads.incrementAndGet();
+        Tempo t0 = new Tempo(0, 1, "120/80", 80, 16, 36.5, 98, 21, 2.0, 35, "azione", 1, 0, "", 60, null);
+        t0.setParametriAggiuntivi(new ArrayList<>(List.of(new ParametroAggiuntivo(1, 0, 1, "CVP", "12", "mmHg"))));
+        Tempo t1 = new Tempo(1, 1, "110/70", 90, 18, 37.0, 95, 21, 2.0, 38, "", 0, 0, "", 0, null);
+        t1.setParametriAggiuntivi(new ArrayList<>());
+        return new ArrayList<>(List.of(t0, t1));
+    }
+
+    /**
+     * Loader di prova: legge il valore corrente del database simulato.
+     *
+     * @param database Il database simulato.
+     * @return Il valore letto.
+     */
+    private String readFrom(AtomicReference<String> database) {
+        loads.incrementAndGet();
+        return database.get();
+    }
+
+    /**
+     * Attende un latch per al più cinque secondi.
+     *
+     * @param latch Il latch da attendere.
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Attesa scaduta.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package it.uniupo.simnova.utils.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test dell'{@link IdAllocator}: riallineamento della sequenza dopo un arresto improvviso, ID mai riassegnati dopo un
+ * blocco annullato o non usato, e rifiuto delle connessioni diverse da quella dello scrittore.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+class IdAllocatorTest {
+
+    /**
+     * Numero di ID riservati a ogni scrittura sulla sequenza.
+     */
+    private static final int BLOCK_SIZE = 10;
+
+    /**
+     * La cartella temporanea del database di prova.
+     */
+    private Path directory;
+
+    /**
+     * Il pool del database di prova.
+     */
+    private ConnectionPool pool;
+
+    /**
+     * La coda di scrittura del database di prova.
+     */
+    private WriteQueue queue;
+
+    /**
+     * Crea un database con la tabella dei parametri aggiuntivi e la sua sequenza, che parte da <code>1</code>.
+     *
+     * @throws Exception se la creazione del database fallisce.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("id-allocator");
+        pool = new ConnectionPool("jdbc:sqlite:" + directory.resolve("test.db"), 2, 1_000, 16);
+        try (Connection conn = pool.openPhysicalConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE ParametriAggiuntivi (parametri_aggiuntivi_id INTEGER PRIMARY KEY, nome TEXT NOT NULL)");
+            stmt.execute("CREATE TABLE IdSequence (nome TEXT PRIMARY KEY, prossimo INTEGER NOT NULL)");
+            stmt.execute("INSERT INTO IdSequence (nome, prossimo) VALUES ('ParametriAggiuntivi', 1)");
+        }
+        queue = new WriteQueue(pool);
+    }
+
+    /**
+     * Chiude coda e pool ed elimina il database di prova.
+     *
+     * @throws IOException se l'eliminazione dei file fallisce.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        queue.close();
+        pool.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void firstReservationAfterACrashSkipsPastTheTableMaximum() throws Exception {
+        // Righe confermate oltre la sequenza: il primo ID libero registrato è rimasto indietro.
+        queue.write(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO ParametriAggiuntivi (parametri_aggiuntivi_id, nome) VALUES (7, 'a'), (50, 'b')");
+                stmt.executeUpdate("UPDATE IdSequence SET prossimo = 10");
+            }
+            return null;
+        });
+
+        IdAllocator allocator = new IdAllocator(queue, BLOCK_SIZE);
+
+        assertEquals(51, insert(allocator, "c"));
+        assertEquals(52, insert(allocator, "d"));
+        assertEquals(51 + BLOCK_SIZE, sequence());
+        assertEquals(4, count());
+    }
+
+    @Test
+    void restartNeverReassignsTheIdsOfAnUnusedBlock() throws Exception {
+        IdAllocator before = new IdAllocator(queue, BLOCK_SIZE);
+        assertEquals(1, insert(before, "a"));
+        assertEquals(2, insert(before, "b"));
+
+        IdAllocator after = new IdAllocator(queue, BLOCK_SIZE); // Un nuovo avvio: il resto del blocco va perso.
+
+        assertEquals(1 + BLOCK_SIZE, insert(after, "c"));
+        assertEquals(1 + 2 * BLOCK_SIZE, sequence());
+    }
+
+    @Test
+    void reservationRolledBackWithItsTaskIsNotReused() throws Exception {
+        IdAllocator allocator = new IdAllocator(queue, BLOCK_SIZE);
+        int[] lost = new int[1];
+        assertThrows(SQLException.class, () -> queue.write(conn -> {
+            lost[0] = allocator.next(conn, IdSequence.PARAMETRI_AGGIUNTIVI);
+            throw new SQLException("Inserimento fallito.");
+        }));
+        assertEquals(1, sequence()); // La riserva è stata annullata con il task.
+
+        int last = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            last = insert(allocator, "p" + i); // Esaurisce il blocco in memoria e ne riserva uno nuovo.
+        }
+
+        assertEquals(1, lost[0]);
+        assertEquals(1 + BLOCK_SIZE, last); // Il nuovo blocco parte dal limite già distribuito, non dalla sequenza.
+        assertEquals(1 + 2 * BLOCK_SIZE, sequence());
+        assertEquals(BLOCK_SIZE, count());
+        assertEquals(0, countWithId(lost[0]));
+    }
+
+    @Test
+    void nextRejectsConnectionsOtherThanTheWriters() throws Exception {
+        IdAllocator allocator = new IdAllocator(queue, BLOCK_SIZE);
+
+        try (Connection conn = pool.getConnection()) {
+            assertThrows(IllegalStateException.class, () -> allocator.next(conn, IdSequence.PARAMETRI_AGGIUNTIVI));
+        }
+        try (Connection physical = pool.openPhysicalConnection()) {
+            assertThrows(IllegalStateException.class, () -> queue.write(conn ->
+                    allocator.next(physical, IdSequence.PARAMETRI_AGGIUNTIVI)));
+        }
+        assertEquals(1, sequence());
+        assertEquals(1, insert(allocator, "a"));
+    }
+
+    /**
+     * Inserisce un parametro con un ID preso dall'allocatore, in un task dello scrittore.
+     *
+     * @param allocator L'allocatore.
+     * @param nome      Il nome del parametro.
+     * @return L'ID assegnato.
+     * @throws SQLException se l'inserimento fallisce.
+     */
+    private int insert(IdAllocator allocator, String nome) throws SQLException {
+        return queue.write(conn -> {
+            int id = allocator.next(conn, IdSequence.PARAMETRI_AGGIUNTIVI);
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO ParametriAggiuntivi (parametri_aggiuntivi_id, nome) VALUES (?, ?)")) {
+                stmt.setInt(1, id);
+                stmt.setString(2, nome);
+                stmt.executeUpdate();
+            }
+            return id;
+        });
+    }
+
+    /**
+     * Legge il primo ID libero registrato nella sequenza.
+     *
+     * @return Il valore della colonna <code>prossimo</code>.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private int sequence() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT prossimo FROM IdSequence WHERE nome = 'ParametriAggiuntivi'")) {
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Conta i parametri confermati.
+     *
+     * @return Il numero di righe.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private int count() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ParametriAggiuntivi")) {
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Conta i parametri confermati con un dato ID.
+     *
+     * @param id L'ID cercato.
+     * @return Il numero di righe con quell'ID.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private int countWithId(int id) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM ParametriAggiuntivi WHERE parametri_aggiuntivi_id = ?")) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package it.uniupo.simnova.utils.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test del {@link WriteBehindBuffer}: accorpamento delle modifiche ed esito comunicato ai chiamanti.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.2
+ */
+class WriteBehindBufferTest {
+
+    /**
+     * La cartella temporanea del database di prova.
+     */
+    private Path directory;
+
+    /**
+     * Il pool del database di prova.
+     */
+    private ConnectionPool pool;
+
+    /**
+     * La coda di scrittura usata dal buffer.
+     */
+    private WriteQueue queue;
+
+    /**
+     * Il buffer sotto test, con una finestra lunga: le scritture partono solo con un flush esplicito.
+     */
+    private WriteBehindBuffer buffer;
+
+    /**
+     * Crea un database con una riga da aggiornare e avvia coda e buffer.
+     *
+     * @throws Exception se la creazione del database fallisce.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("write-behind");
+        pool = new ConnectionPool("jdbc:sqlite:" + directory.resolve("test.db"), 2, 1_000, 16);
+        try (Connection conn = pool.openPhysicalConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE righe (id INTEGER PRIMARY KEY, valore TEXT NOT NULL)");
+            stmt.execute("INSERT INTO righe (id, valore) VALUES (1, 'iniziale')");
+        }
+        queue = new WriteQueue(pool);
+        buffer = new WriteBehindBuffer(queue, 60_000);
+    }
+
+    /**
+     * Chiude buffer, coda e pool ed elimina il database di prova.
+     *
+     * @throws IOException se l'eliminazione dei file fallisce.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        buffer.close();
+        queue.close();
+        pool.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void coalescedEditsShareTheOutcomeOfTheLastWrite() throws Exception {
+        WriteBehindKey key = new WriteBehindKey(1, 0, "righe.valore");
+        CompletableFuture<Void> first = buffer.put(key, update("primo"));
+        CompletableFuture<Void> second = buffer.put(key, update("secondo"));
+        assertSame(first, second);
+        assertFalse(first.isDone());
+
+        buffer.flush(1).get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals("secondo", valore());
+        assertEquals(1, buffer.getStats().coalesced());
+        assertEquals(1, buffer.getStats().flushed());
+    }
+
+    @Test
+    void failedWriteFailsTheEditButNotTheFlush() throws Exception {
+        CompletableFuture<Void> edit = buffer.put(new WriteBehindKey(1, 0, "righe.valore"), conn -> {
+            throw new SQLException("scrittura rifiutata");
+        });
+
+        buffer.flush().get(5, TimeUnit.SECONDS); // Il flush non fallisce mai.
+        ExecutionException error = assertThrows(ExecutionException.class, () -> edit.get(5, TimeUnit.SECONDS));
+        assertEquals("scrittura rifiutata", error.getCause().getMessage());
+        assertEquals("iniziale", valore());
+        assertEquals(1, buffer.getStats().failed());
+    }
+
+    @Test
+    void scenarioFlushWaitsForEditsAlreadyHandedToTheQueue() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit(conn -> {
+            blocked.countDown();
+            await(release);
+            return null;
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        buffer.put(new WriteBehindKey(1, 0, "righe.valore"), update("in coda"));
+        CompletableFuture<Void> window = buffer.flush(); // Come allo scadere della finestra: la modifica lascia il buffer.
+        CompletableFuture<Void> read = buffer.flush(1); // Il buffer è vuoto, ma la modifica non è ancora confermata.
+        CompletableFuture<Void> otherScenario = buffer.flush(2);
+        assertFalse(read.isDone());
+        assertTrue(otherScenario.isDone());
+        assertEquals("iniziale", valore());
+
+        release.countDown();
+        read.get(5, TimeUnit.SECONDS);
+        assertEquals("in coda", valore());
+        window.get(5, TimeUnit.SECONDS);
+        assertTrue(buffer.flush(1).isDone());
+    }
+
+    @Test
+    void flushFromAWriteTaskRunsTheEditsInItsTransaction() throws Exception {
+        CompletableFuture<Void> saved = buffer.put(new WriteBehindKey(1, 0, "righe.valore"), update("differito"));
+        CompletableFuture<Boolean> flushedInline = queue.submit(conn -> {
+            CompletableFuture<Void> flush = buffer.flush(1);
+            return flush.isDone(); // Attenderlo qui bloccherebbe lo scrittore.
+        });
+
+        assertTrue(flushedInline.get(5, TimeUnit.SECONDS));
+        saved.get(5, TimeUnit.SECONDS); // L'esito si completa dopo il COMMIT, subito dopo il task.
+        assertEquals("differito", valore());
+        assertEquals(1, buffer.getStats().flushed());
+    }
+
+    /**
+     * Crea il task che aggiorna la riga di prova.
+     *
+     * @param valore Il nuovo valore.
+     * @return Il task di scrittura.
+     */
+    private static WriteTask<Void> update(String valore) {
+        return conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE righe SET valore = ? WHERE id = 1")) {
+                stmt.setString(1, valore);
+                stmt.executeUpdate();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Legge il valore confermato della riga di prova.
+     *
+     * @return Il valore.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private String valore() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT valore FROM righe WHERE id = 1")) {
+            return rs.getString(1);
+        }
+    }
+
+    /**
+     * Attende un latch senza eccezioni controllate, come serve dentro un task.
+     *
+     * @param latch Il latch da attendere.
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Attesa scaduta.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package it.uniupo.simnova.utils.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test della {@link WriteQueue}: group commit, rollback dei savepoint, task annidati, connessioni di sola lettura e chiusura.
+ *
+ * @author Alessandro Zappatore
+ * @version 1.2
+ */
+class WriteQueueTest {
+
+    /**
+     * La cartella temporanea del database di prova.
+     */
+    private Path directory;
+
+    /**
+     * Il pool del database di prova.
+     */
+    private ConnectionPool pool;
+
+    /**
+     * La coda sotto test.
+     */
+    private WriteQueue queue;
+
+    /**
+     * Crea un database vuoto con la tabella <code>righe</code> e avvia la coda.
+     *
+     * @throws Exception se la creazione del database fallisce.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("write-queue");
+        pool = new ConnectionPool("jdbc:sqlite:" + directory.resolve("test.db"), 2, 1_000, 16);
+        try (Connection conn = pool.openPhysicalConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE righe (id INTEGER PRIMARY KEY, valore TEXT NOT NULL)");
+        }
+        queue = new WriteQueue(pool);
+    }
+
+    /**
+     * Chiude coda e pool ed elimina il database di prova.
+     *
+     * @throws IOException se l'eliminazione dei file fallisce.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        queue.close();
+        pool.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void tasksQueuedTogetherShareOneTransaction() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = queue.submit(conn -> {
+            blocked.countDown();
+            await(release);
+            return null;
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Integer>> grouped = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            grouped.add(insert(i, "v" + i));
+        }
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Integer> future : grouped) {
+            assertEquals(1, future.get(5, TimeUnit.SECONDS));
+        }
+
+        WriteStats stats = queue.getStats();
+        assertEquals(2, stats.batches());
+        assertEquals(21, stats.tasks());
+        assertEquals(20, stats.maxBatchSize());
+        assertEquals(20, count());
+    }
+
+    @Test
+    void failingTaskRollsBackOnlyItsOwnChanges() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit(conn -> {
+            blocked.countDown();
+            await(release);
+            return null;
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Integer> kept = insert(1, "tenuto");
+        CompletableFuture<Integer> failed = queue.submit(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO righe (id, valore) VALUES (?, ?)")) {
+                stmt.setInt(1, 2);
+                stmt.setString(2, "annullato");
+                stmt.executeUpdate();
+            }
+            throw new SQLException("errore del task");
+        });
+        release.countDown();
+
+        assertEquals(1, kept.get(5, TimeUnit.SECONDS));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertEquals("errore del task", error.getCause().getMessage());
+        assertEquals(1, count());
+        assertEquals(1, queue.getStats().failedTasks());
+        assertEquals(2, queue.getStats().batches());
+        assertEquals(2, queue.getStats().maxBatchSize());
+    }
+
+    @Test
+    void nestedTaskCompletesOnlyAfterCommit() throws Exception {
+        AtomicReference<CompletableFuture<Integer>> nested = new AtomicReference<>();
+        AtomicBoolean doneBeforeCommit = new AtomicBoolean(true);
+        CompletableFuture<Void> outer = queue.submit(conn -> {
+            nested.set(insert(1, "annidato"));
+            doneBeforeCommit.set(nested.get().isDone());
+            return null;
+        });
+
+        outer.get(5, TimeUnit.SECONDS);
+        assertFalse(doneBeforeCommit.get());
+        assertEquals(1, nested.get().get(5, TimeUnit.SECONDS));
+        assertEquals(1, count());
+        assertEquals(1, queue.getStats().batches());
+    }
+
+    @Test
+    void nestedTaskFailsWithItsFailingParent() throws Exception {
+        AtomicReference<CompletableFuture<Integer>> nested = new AtomicReference<>();
+        CompletableFuture<Void> outer = queue.submit(conn -> {
+            nested.set(insert(1, "annidato"));
+            throw new SQLException("errore del task esterno");
+        });
+
+        assertThrows(ExecutionException.class, () -> outer.get(5, TimeUnit.SECONDS));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> nested.get().get(5, TimeUnit.SECONDS));
+        assertEquals("errore del task esterno", error.getCause().getMessage());
+        assertEquals(0, count());
+        assertEquals(2, queue.getStats().failedTasks());
+    }
+
+    @Test
+    void nestedWriteRunsInlineAndReturnsItsResult() throws Exception {
+        AtomicReference<Integer> inserted = new AtomicReference<>();
+        CompletableFuture<Void> outer = queue.submit(conn -> {
+            inserted.set(queue.write(insertTask(1, "annidato"))); // Non deve attendere il COMMIT del task esterno.
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE righe SET valore = ? WHERE id = ?")) {
+                stmt.setString(1, "aggiornato");
+                stmt.setInt(2, 1);
+                stmt.executeUpdate();
+            }
+            return null;
+        });
+
+        outer.get(5, TimeUnit.SECONDS);
+        assertEquals(1, inserted.get());
+        assertEquals(1, count());
+        assertEquals(1, queue.getStats().batches());
+        assertEquals(0, queue.getStats().failedTasks());
+    }
+
+    @Test
+    void failingNestedWriteRollsBackOnlyItsSavepoint() throws Exception {
+        AtomicReference<SQLException> nestedError = new AtomicReference<>();
+        CompletableFuture<Void> outer = queue.submit(conn -> {
+            queue.write(insertTask(1, "tenuto"));
+            try {
+                queue.write(c -> {
+                    insertTask(2, "annullato").execute(c);
+                    throw new SQLException("errore del task annidato");
+                });
+            } catch (SQLException e) {
+                nestedError.set(e);
+            }
+            return null;
+        });
+
+        outer.get(5, TimeUnit.SECONDS);
+        assertEquals("errore del task annidato", nestedError.get().getMessage());
+        assertEquals(1, count());
+        assertEquals(1, queue.getStats().failedTasks());
+    }
+
+    @Test
+    void writeFromAnotherThreadWaitsForCommit() throws Exception {
+        assertEquals(1, queue.write(insertTask(1, "v")));
+        assertEquals(1, count());
+        SQLException error = assertThrows(SQLException.class, () -> queue.write(c -> {
+            throw new SQLException("errore del task");
+        }));
+        assertEquals("errore del task", error.getMessage());
+    }
+
+    @Test
+    void poolConnectionsRejectWritesOutsideTheQueue() throws Exception {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            assertThrows(SQLException.class, () -> stmt.executeUpdate("INSERT INTO righe (id, valore) VALUES (1, 'diretto')"));
+        }
+        assertEquals(1, insert(1, "in coda").get(5, TimeUnit.SECONDS));
+        assertEquals(1, count());
+    }
+
+    @Test
+    void closeRunsQueuedTasksAndRejectsLaterOnes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit(conn -> {
+            await(release);
+            return null;
+        });
+        List<CompletableFuture<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queued.add(insert(i, "v" + i));
+        }
+        Thread closer = Thread.ofPlatform().start(queue::close);
+        release.countDown();
+        closer.join(10_000);
+
+        for (CompletableFuture<Integer> future : queued) {
+            assertTrue(future.isDone());
+            assertEquals(1, future.get());
+        }
+        CompletableFuture<Integer> rejected = insert(100, "tardivo");
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(SQLException.class, error.getCause());
+        assertEquals(10, count());
+    }
+
+    @Test
+    void concurrentSubmitsDuringCloseAllComplete() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        List<Thread> submitters = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 4; t++) {
+            int base = t * 1_000;
+            submitters.add(Thread.ofPlatform().start(() -> {
+                await(start);
+                for (int i = 0; i < 200; i++) {
+                    CompletableFuture<Integer> future = insert(base + i, "c");
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        queue.close();
+        for (Thread submitter : submitters) {
+            submitter.join(10_000);
+        }
+
+        synchronized (futures) {
+            for (CompletableFuture<Integer> future : futures) {
+                assertTrue(future.isDone(), "Ogni task accodato deve essere eseguito o rifiutato.");
+            }
+        }
+    }
+
+    /**
+     * Accoda l'inserimento di una riga.
+     *
+     * @param id     L'ID della riga.
+     * @param valore Il valore della riga.
+     * @return Il future con il numero di righe inserite.
+     */
+    private CompletableFuture<Integer> insert(int id, String valore) {
+        return queue.submit(insertTask(id, valore));
+    }
+
+    /**
+     * Crea il task che inserisce una riga.
+     *
+     * @param id     L'ID della riga.
+     * @param valore Il valore della riga.
+     * @return Il task, che restituisce il numero di righe inserite.
+     */
+    private static WriteTask<Integer> insertTask(int id, String valore) {
+        return conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO righe (id, valore) VALUES (?, ?)")) {
+                stmt.setInt(1, id);
+                stmt.setString(2, valore);
+                return stmt.executeUpdate();
+            }
+        };
+    }
+
+    /**
+     * Conta le righe confermate nella tabella di prova.
+     *
+     * @return Il numero di righe.
+     * @throws SQLException se la lettura fallisce.
+     */
+    private int count() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM righe")) {
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Attende un latch senza eccezioni controllate, come serve dentro un task.
+     *
+     * @param latch Il latch da attendere.
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Attesa scaduta.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
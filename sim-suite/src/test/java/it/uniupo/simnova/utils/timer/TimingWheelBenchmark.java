@@ -0,0 +1,114 @@
+package it.uniupo.simnova.utils.timer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della {@link TimingWheel} con molti timer attivi, confrontata con {@link ScheduledThreadPoolExecutor}.
+ * <p>
+ * Misura il costo di programmazione e annullamento con <code>n</code> timer attivi (predefinito 100000) e il ritardo
+ * di scadenza di 5000 timer brevi mentre gli altri restano in attesa. Si esegue dalla cartella <code>sim-suite</code> con
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=it.uniupo.simnova.utils.timer.TimingWheelBenchmark</code>,
+ * passando facoltativamente il numero di timer come argomento.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+public final class TimingWheelBenchmark {
+
+    /**
+     * Numero di ripetizioni di riscaldamento prima di quella misurata.
+     */
+    private static final int WARMUP = 2;
+
+    /**
+     * Numero di timer brevi di cui misurare il ritardo.
+     */
+    private static final int PROBES = 5_000;
+
+    /**
+     * Costruttore privato: la classe espone solo il metodo <code>main</code>.
+     */
+    private TimingWheelBenchmark() {
+    }
+
+    /**
+     * Esegue il benchmark e stampa i risultati.
+     *
+     * @param args Facoltativo: il numero di timer attivi.
+     * @throws InterruptedException se l'attesa delle scadenze viene interrotta.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(1);
+        long[] delays = new long[n];
+        for (int i = 0; i < n; i++) {
+            delays[i] = 1_000 + random.nextInt(59_000); // Da 1 a 60 secondi: nessun timer scade durante la misura.
+        }
+        Runnable noop = () -> {
+        };
+
+        try (TimingWheel wheel = new TimingWheel("benchmark")) {
+            for (int rep = 0; rep <= WARMUP; rep++) {
+                TimerHandle[] handles = new TimerHandle[n];
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    handles[i] = wheel.schedule(delays[i], noop);
+                }
+                long wheelSchedule = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    handles[i].cancel();
+                }
+                long wheelCancel = System.nanoTime() - start;
+
+                ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+                executor.setRemoveOnCancelPolicy(true);
+                ScheduledFuture<?>[] futures = new ScheduledFuture<?>[n];
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    futures[i] = executor.schedule(noop, delays[i], TimeUnit.MILLISECONDS);
+                }
+                long executorSchedule = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    futures[i].cancel(false);
+                }
+                long executorCancel = System.nanoTime() - start;
+                executor.shutdownNow();
+
+                if (rep == WARMUP) {
+                    System.out.printf("%d timer: ruota schedule %.0f ns/op, cancel %.0f ns/op | ScheduledThreadPoolExecutor schedule %.0f ns/op, cancel %.0f ns/op%n",
+                            n, wheelSchedule / (double) n, wheelCancel / (double) n,
+                            executorSchedule / (double) n, executorCancel / (double) n);
+                }
+            }
+
+            // Ritardo di scadenza con n timer attivi sullo sfondo.
+            for (int i = 0; i < n; i++) {
+                wheel.schedule(delays[i] + 60_000, noop);
+            }
+            long[] lateness = new long[PROBES];
+            CountDownLatch done = new CountDownLatch(PROBES);
+            for (int i = 0; i < PROBES; i++) {
+                final int k = i;
+                long delay = 50 + random.nextInt(1_500);
+                long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                wheel.schedule(delay, () -> {
+                    lateness[k] = System.nanoTime() - due;
+                    done.countDown();
+                });
+            }
+            done.await();
+            Arrays.sort(lateness);
+            System.out.printf("ritardo con %d timer attivi: min %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    n, lateness[0] / 1e6, lateness[PROBES / 2] / 1e6, lateness[PROBES * 99 / 100] / 1e6, lateness[PROBES - 1] / 1e6);
+            System.out.println(wheel.getStats());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package it.uniupo.simnova.utils.timer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test della {@link TimingWheel} con un orologio simulato: scadenze esatte ai confini tra i livelli della ruota,
+ * sospensione, ripresa, avanzamento e annullamento dei timer di un gruppo.
+ * <p>
+ * La ruota non ha thread: i test fanno avanzare l'orologio un millisecondo alla volta e invocano
+ * {@link TimingWheel#poll()}, quindi ogni timer registra il millisecondo esatto in cui è scaduto.
+ * </p>
+ *
+ * @author Alessandro Zappatore
+ * @version 1.0
+ */
+class TimingWheelTest {
+
+    /**
+     * L'orologio simulato, in nanosecondi.
+     */
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * La ruota sotto test, senza thread.
+     */
+    private final TimingWheel wheel = new TimingWheel("ruota-test", nanos::get);
+
+    /**
+     * Le scadenze registrate dai timer, come "nome@millisecondo".
+     */
+    private final List<String> fired = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    void timersAtLevelBoundariesFireOnTheirExactTick() {
+        long[] delays = {1, 255, 256, 257, 511, 512, 65_535, 65_536, 65_537, 70_000};
+        for (long delay : delays) {
+            wheel.schedule(delay, record("t" + delay));
+        }
+
+        advanceTo(70_000);
+
+        List<String> expected = new ArrayList<>();
+        for (long delay : delays) {
+            expected.add("t" + delay + "@" + delay);
+        }
+        assertEquals(expected, fired);
+        assertEquals(delays.length, wheel.getStats().fired());
+        assertEquals(0, wheel.getStats().active());
+        assertTrue(wheel.getStats().cascaded() > 0);
+    }
+
+    @Test
+    void timerOnTheFourthLevelCascadesThroughEveryLevelAndFiresOnTime() {
+        long delay = (1L << 24) + (1L << 16) + (1L << 8) + 3; // Parte dal quarto livello e scende di uno alla volta.
+        wheel.schedule(delay, record("lungo"));
+
+        jumpTo(delay - 300); // I tick saltati vengono comunque elaborati, con le ridistribuzioni.
+        assertTrue(fired.isEmpty());
+        advanceTo(delay);
+
+        assertEquals(List.of("lungo@" + delay), fired);
+        assertEquals(3, wheel.getStats().cascaded());
+    }
+
+    @Test
+    void timerScheduledLaterUsesTheCurrentTickAsOrigin() {
+        advanceTo(1_000);
+        wheel.schedule(256, record("a"));
+        wheel.schedule(300, record("b"));
+
+        advanceTo(1_300);
+
+        assertEquals(List.of("a@1256", "b@1300"), fired);
+    }
+
+    @Test
+    void pausedGroupKeepsTheRemainingTimeUntilResume() {
+        TimerGroup group = wheel.newGroup();
+        group.schedule(100, record("g"));
+        wheel.schedule(5_000, record("fuori")); // Un timer di un altro gruppo non è influenzato dalla sospensione.
+
+        advanceTo(40);
+        group.pause();
+        assertTrue(group.isPaused());
+        advanceTo(1_040);
+        assertTrue(fired.isEmpty());
+
+        group.resume();
+        assertFalse(group.isPaused());
+        advanceTo(5_000);
+
+        assertEquals(List.of("g@1100", "fuori@5000"), fired);
+    }
+
+    @Test
+    void timerScheduledInAPausedGroupStartsAtResume() {
+        TimerGroup group = wheel.newGroup();
+        group.pause();
+        group.schedule(50, record("g"));
+
+        advanceTo(500);
+        assertTrue(fired.isEmpty());
+        group.resume();
+        advanceTo(600);
+
+        assertEquals(List.of("g@550"), fired);
+    }
+
+    @Test
+    void fastForwardMovesTimersAcrossLevels() {
+        TimerGroup group = wheel.newGroup();
+        group.schedule(70_000, record("lontano")); // Terzo livello.
+        group.schedule(500, record("vicino"));
+
+        advanceTo(100);
+        group.fastForward(65_000);
+        advanceTo(5_000);
+
+        assertEquals(List.of("vicino@101", "lontano@5000"), fired);
+    }
+
+    @Test
+    void fastForwardWhilePausedShortensTheRemainingTime() {
+        TimerGroup group = wheel.newGroup();
+        group.schedule(1_000, record("g"));
+
+        advanceTo(200);
+        group.pause();
+        group.fastForward(300);
+        advanceTo(2_000);
+        assertTrue(fired.isEmpty());
+        group.resume();
+        advanceTo(3_000);
+
+        assertEquals(List.of("g@2500"), fired);
+    }
+
+    @Test
+    void cancelledTimersNeverFire() {
+        TimerGroup group = wheel.newGroup();
+        TimerHandle single = wheel.schedule(300, record("singolo"));
+        group.schedule(100, record("g1"));
+        group.schedule(70_000, record("g2"));
+        wheel.schedule(400, record("resta"));
+
+        single.cancel();
+        assertEquals(2, group.cancelAll());
+        advanceTo(70_000);
+
+        assertEquals(List.of("resta@400"), fired);
+        assertEquals(3, wheel.getStats().cancelled());
+        assertEquals(0, wheel.getStats().active());
+    }
+
+    /**
+     * Crea un'attività che registra il proprio nome e il millisecondo corrente dell'orologio simulato.
+     *
+     * @param name Il nome del timer.
+     * @return L'attività.
+     */
+    private Runnable record(String name) {
+        return () -> fired.add(name + "@" + TimeUnit.NANOSECONDS.toMillis(nanos.get()));
+    }
+
+    /**
+     * Fa avanzare l'orologio un millisecondo alla volta fino a quello indicato, elaborando ogni tick.
+     *
+     * @param millis Il millisecondo da raggiungere.
+     */
+    private void advanceTo(long millis) {
+        for (long now = TimeUnit.NANOSECONDS.toMillis(nanos.get()) + 1; now <= millis; now++) {
+            nanos.set(TimeUnit.MILLISECONDS.toNanos(now));
+            wheel.poll();
+        }
+    }
+
+    /**
+     * Porta l'orologio direttamente al millisecondo indicato e lascia alla ruota l'elaborazione dei tick arretrati.
+     *
+     * @param millis Il millisecondo da raggiungere.
+     */
+    private void jumpTo(long millis) {
+        nanos.set(TimeUnit.MILLISECONDS.toNanos(millis));
+        wheel.poll();
+    }
+}